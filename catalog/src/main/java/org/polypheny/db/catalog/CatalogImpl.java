@@ -31,6 +31,7 @@
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +40,7 @@
 import org.mapdb.DBException.SerializationError;
 import org.mapdb.DBMaker;
 import org.mapdb.HTreeMap;
+import org.mapdb.MapModificationListener;
 import org.mapdb.Serializer;
 import org.mapdb.serializer.SerializerArrayTuple;
 import org.polypheny.db.adapter.Adapter;
@@ -160,6 +162,10 @@ public class CatalogImpl extends Catalog {
 
     private static final AtomicLong physicalPositionBuilder = new AtomicLong();
 
+    // Incremented on every modification of the maps covered by the catalog snapshots
+    private static final AtomicLong version = new AtomicLong();
+    private static final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+
     Comparator<CatalogColumn> columnComparator = Comparator.comparingInt( o -> o.position );
 
 
@@ -251,6 +257,7 @@ public CatalogImpl( String fileName, boolean doInitSchema, boolean doInitInforma
 
             new CatalogValidator().startCheck();
 
+            publishSnapshot();
         }
     }
 
@@ -261,12 +268,61 @@ public void commit() throws NoTablePrimaryKeyException {
             throw new NoTablePrimaryKeyException();
         }
         db.commit();
+        if ( getSnapshot() == null ) {
+            publishSnapshot();
+        }
     }
 
 
     @Override
     public void rollback() {
+        boolean modified = getSnapshot() == null;
         db.rollback();
+        if ( modified ) {
+            // Rollbacks do not notify the modification listeners. The snapshot is rebuilt from the restored maps, readers
+            // use the maps until it has been published.
+            publishSnapshot();
+            // The observers have been notified about the discarded changes
+            listeners.firePropertyChange( "rollback", null, null );
+        }
+    }
+
+
+    private <K, V> MapModificationListener<K, V> versionListener() {
+        return ( key, oldValue, newValue, triggered ) -> version.incrementAndGet();
+    }
+
+
+    /**
+     * Builds a new snapshot of the current catalog content and publishes it. Readers only use the snapshot as long as
+     * the catalog has not been modified since; until the next snapshot is published, they read from the maps.
+     */
+    private void publishSnapshot() {
+        long currentVersion = version.get();
+        try {
+            //noinspection unchecked
+            CatalogSnapshot newSnapshot = new CatalogSnapshot(
+                    currentVersion,
+                    databases.values(),
+                    schemas.values(),
+                    tables.values(),
+                    columns.values(),
+                    columnPlacements.values(),
+                    adapters.values(),
+                    primaryKeys.values() );
+            snapshot.set( newSnapshot );
+        } catch ( RuntimeException e ) {
+            log.warn( "Unable to build catalog snapshot", e );
+        }
+    }
+
+
+    /**
+     * @return the current snapshot or null if the catalog has been modified since the last snapshot has been published
+     */
+    private CatalogSnapshot getSnapshot() {
+        CatalogSnapshot s = snapshot.get();
+        return s != null && s.getVersion() == version.get() ? s : null;
     }
 
 
@@ -311,6 +367,8 @@ private void initDBLayout( DB db ) {
             initKeysAndConstraintsInfo( db );
             initAdapterInfo( db );
             initQueryInterfaceInfo( db );
+            // The maps have been replaced, invalidate the current snapshot
+            version.incrementAndGet();
         } catch ( SerializationError e ) {
             log.error( "!!!!!!!!!!! Error while restoring the catalog !!!!!!!!!!!" );
             log.error( "This usually means that there have been changes to the internal structure of the catalog with the last update of Polypheny-DB." );
@@ -442,7 +500,7 @@ private void restoreAllIdBuilders() {
      * adapterName: adapterName -> CatalogAdapter
      */
     private void initAdapterInfo( DB db ) {
-        adapters = db.hashMap( "adapters", Serializer.INTEGER, new GenericSerializer<CatalogAdapter>() ).createOrOpen();
+        adapters = db.hashMap( "adapters", Serializer.INTEGER, new GenericSerializer<CatalogAdapter>() ).modificationListener( versionListener() ).createOrOpen();
         adapterNames = db.hashMap( "adapterNames", Serializer.STRING, new GenericSerializer<CatalogAdapter>() ).createOrOpen();
     }
 
@@ -472,7 +530,7 @@ private void initQueryInterfaceInfo( DB db ) {
     private void initKeysAndConstraintsInfo( DB db ) {
         keyColumns = db.hashMap( "keyColumns", Serializer.LONG_ARRAY, Serializer.LONG ).createOrOpen();
         keys = db.hashMap( "keys", Serializer.LONG, new GenericSerializer<CatalogKey>() ).createOrOpen();
-        primaryKeys = db.hashMap( "primaryKeys", Serializer.LONG, new GenericSerializer<CatalogPrimaryKey>() ).createOrOpen();
+        primaryKeys = db.hashMap( "primaryKeys", Serializer.LONG, new GenericSerializer<CatalogPrimaryKey>() ).modificationListener( versionListener() ).createOrOpen();
         foreignKeys = db.hashMap( "foreignKeys", Serializer.LONG, new GenericSerializer<CatalogForeignKey>() ).createOrOpen();
         constraints = db.hashMap( "constraints", Serializer.LONG, new GenericSerializer<CatalogConstraint>() ).createOrOpen();
         indexes = db.hashMap( "indexes", Serializer.LONG, new GenericSerializer<CatalogIndex>() ).createOrOpen();
@@ -500,11 +558,11 @@ private void initUserInfo( DB db ) {
      */
     private void initColumnInfo( DB db ) {
         //noinspection unchecked
-        columns = db.treeMap( "columns", Serializer.LONG, Serializer.JAVA ).createOrOpen();
+        columns = db.treeMap( "columns", Serializer.LONG, Serializer.JAVA ).modificationListener( versionListener() ).createOrOpen();
         //noinspection unchecked
         columnNames = db.treeMap( "columnNames", new SerializerArrayTuple( Serializer.LONG, Serializer.LONG, Serializer.LONG, Serializer.STRING ), Serializer.JAVA ).createOrOpen();
         //noinspection unchecked
-        columnPlacements = db.treeMap( "columnPlacement", new SerializerArrayTuple( Serializer.INTEGER, Serializer.LONG ), Serializer.JAVA ).createOrOpen();
+        columnPlacements = db.treeMap( "columnPlacement", new SerializerArrayTuple( Serializer.INTEGER, Serializer.LONG ), Serializer.JAVA ).modificationListener( versionListener() ).createOrOpen();
     }
 
 
@@ -517,7 +575,7 @@ private void initColumnInfo( DB db ) {
      */
     private void initTableInfo( DB db ) {
         //noinspection unchecked
-        tables = db.treeMap( "tables", Serializer.LONG, Serializer.JAVA ).createOrOpen();
+        tables = db.treeMap( "tables", Serializer.LONG, Serializer.JAVA ).modificationListener( versionListener() ).createOrOpen();
         tableChildren = db.hashMap( "tableChildren", Serializer.LONG, new GenericSerializer<ImmutableList<Long>>() ).createOrOpen();
         //noinspection unchecked
         tableNames = db.treeMap( "tableNames" )
@@ -542,7 +600,7 @@ private void initTableInfo( DB db ) {
      */
     private void initSchemaInfo( DB db ) {
         //noinspection unchecked
-        schemas = db.treeMap( "schemas", Serializer.LONG, Serializer.JAVA ).createOrOpen();
+        schemas = db.treeMap( "schemas", Serializer.LONG, Serializer.JAVA ).modificationListener( versionListener() ).createOrOpen();
         schemaChildren = db.hashMap( "schemaChildren", Serializer.LONG, new GenericSerializer<ImmutableList<Long>>() ).createOrOpen();
         //noinspection unchecked
         schemaNames = db.treeMap( "schemaNames", new SerializerArrayTuple( Serializer.LONG, Serializer.STRING ), Serializer.JAVA ).createOrOpen();
@@ -558,7 +616,7 @@ private void initSchemaInfo( DB db ) {
      */
     private void initDatabaseInfo( DB db ) {
         //noinspection unchecked
-        databases = db.treeMap( "databases", Serializer.LONG, Serializer.JAVA ).createOrOpen();
+        databases = db.treeMap( "databases", Serializer.LONG, Serializer.JAVA ).modificationListener( versionListener() ).createOrOpen();
         //noinspection unchecked
         databaseNames = db.treeMap( "databaseNames", Serializer.STRING, Serializer.JAVA ).createOrOpen();
         databaseChildren = db.hashMap( "databaseChildren", Serializer.LONG, new GenericSerializer<ImmutableList<Long>>() ).createOrOpen();
@@ -866,6 +924,11 @@ public List<CatalogDatabase> getDatabases( Pattern pattern ) {
      */
     @Override
     public CatalogDatabase getDatabase( String databaseName ) throws UnknownDatabaseException {
+        CatalogSnapshot s = getSnapshot();
+        CatalogDatabase cached = s == null ? null : s.getDatabase( databaseName );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( databaseNames.get( databaseName ) );
         } catch ( NullPointerException e ) {
@@ -882,6 +945,11 @@ public CatalogDatabase getDatabase( String databaseName ) throws UnknownDatabase
      */
     @Override
     public CatalogDatabase getDatabase( long databaseId ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogDatabase cached = s == null ? null : s.getDatabase( databaseId );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( databases.get( databaseId ) );
         } catch ( NullPointerException e ) {
@@ -949,6 +1017,11 @@ public List<CatalogSchema> getSchemas( long databaseId, Pattern schemaNamePatter
      */
     @Override
     public CatalogSchema getSchema( long schemaId ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogSchema cached = s == null ? null : s.getSchema( schemaId );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( schemas.get( schemaId ) );
         } catch ( NullPointerException e ) {
@@ -987,6 +1060,11 @@ public CatalogSchema getSchema( String databaseName, String schemaName ) throws
      */
     @Override
     public CatalogSchema getSchema( long databaseId, String schemaName ) throws UnknownSchemaException {
+        CatalogSnapshot s = getSnapshot();
+        CatalogSchema cached = s == null ? null : s.getSchema( databaseId, schemaName );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( schemaNames.get( new Object[]{ databaseId, schemaName } ) );
         } catch ( NullPointerException e ) {
@@ -1194,6 +1272,11 @@ public List<CatalogTable> getTables( Pattern databaseNamePattern, Pattern schema
      */
     @Override
     public CatalogTable getTable( long tableId ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogTable cached = s == null ? null : s.getTable( tableId );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( tables.get( tableId ) );
         } catch ( NullPointerException e ) {
@@ -1212,6 +1295,12 @@ public CatalogTable getTable( long tableId ) {
      */
     @Override
     public CatalogTable getTable( long schemaId, String tableName ) throws UnknownTableException {
+        CatalogSnapshot s = getSnapshot();
+        CatalogSchema cachedSchema = s == null ? null : s.getSchema( schemaId );
+        CatalogTable cached = cachedSchema == null ? null : s.getTable( cachedSchema.databaseId, schemaId, tableName );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             CatalogSchema schema = getSchema( schemaId );
             return Objects.requireNonNull( tableNames.get( new Object[]{ schema.databaseId, schemaId, tableName } ) );
@@ -1232,6 +1321,12 @@ public CatalogTable getTable( long schemaId, String tableName ) throws UnknownTa
      */
     @Override
     public CatalogTable getTable( long databaseId, String schemaName, String tableName ) throws UnknownTableException {
+        CatalogSnapshot s = getSnapshot();
+        CatalogSchema cachedSchema = s == null ? null : s.getSchema( databaseId, schemaName );
+        CatalogTable cached = cachedSchema == null ? null : s.getTable( databaseId, cachedSchema.id, tableName );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             long schemaId = Objects.requireNonNull( schemaNames.get( new Object[]{ databaseId, schemaName } ) ).id;
             return Objects.requireNonNull( tableNames.get( new Object[]{ databaseId, schemaId, tableName } ) );
@@ -1620,6 +1715,11 @@ public void deleteColumnPlacement( int adapterId, long columnId ) {
      */
     @Override
     public CatalogColumnPlacement getColumnPlacement( int adapterId, long columnId ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogColumnPlacement cached = s == null ? null : s.getColumnPlacement( adapterId, columnId );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( columnPlacements.get( new Object[]{ adapterId, columnId } ) );
         } catch ( NullPointerException e ) {
@@ -1639,6 +1739,10 @@ public CatalogColumnPlacement getColumnPlacement( int adapterId, long columnId )
      */
     @Override
     public boolean checkIfExistsColumnPlacement( int adapterId, long columnId ) {
+        CatalogSnapshot s = getSnapshot();
+        if ( s != null ) {
+            return s.getColumnPlacement( adapterId, columnId ) != null;
+        }
         CatalogColumnPlacement placement = columnPlacements.get( new Object[]{ adapterId, columnId } );
         return placement != null;
     }
@@ -1664,6 +1768,11 @@ public List<CatalogColumnPlacement> getColumnPlacementsOnAdapter( int adapterId
      */
     @Override
     public List<CatalogColumnPlacement> getColumnPlacementsOnAdapter( int adapterId, long tableId ) {
+        CatalogSnapshot s = getSnapshot();
+        List<CatalogColumnPlacement> cached = s == null ? null : s.getColumnPlacementsOnAdapter( adapterId, tableId );
+        if ( cached != null ) {
+            return new ArrayList<>( cached );
+        }
         final Comparator<CatalogColumnPlacement> columnPlacementComparator = Comparator.comparingInt( p -> getColumn( p.columnId ).position );
         return getColumnPlacementsOnAdapter( adapterId )
                 .stream()
@@ -1676,6 +1785,13 @@ public List<CatalogColumnPlacement> getColumnPlacementsOnAdapter( int adapterId,
     @Override
     public List<CatalogColumnPlacement> getColumnPlacementsOnAdapterSortedByPhysicalPosition( int adapterId, long tableId ) {
         final Comparator<CatalogColumnPlacement> columnPlacementComparator = Comparator.comparingLong( p -> p.physicalPosition );
+        CatalogSnapshot s = getSnapshot();
+        List<CatalogColumnPlacement> cached = s == null ? null : s.getColumnPlacementsOnAdapter( adapterId, tableId );
+        if ( cached != null ) {
+            List<CatalogColumnPlacement> placements = new ArrayList<>( cached );
+            placements.sort( columnPlacementComparator );
+            return placements;
+        }
         return getColumnPlacementsOnAdapter( adapterId )
                 .stream()
                 .filter( p -> p.tableId == tableId )
@@ -1686,6 +1802,11 @@ public List<CatalogColumnPlacement> getColumnPlacementsOnAdapterSortedByPhysical
 
     @Override
     public List<CatalogColumnPlacement> getColumnPlacementsByColumn( long columnId ) {
+        CatalogSnapshot s = getSnapshot();
+        List<CatalogColumnPlacement> cached = s == null ? null : s.getColumnPlacements( columnId );
+        if ( cached != null ) {
+            return new ArrayList<>( cached );
+        }
         return columnPlacements.values()
                 .stream()
                 .filter( p -> p.columnId == columnId )
@@ -1701,6 +1822,11 @@ public List<CatalogColumnPlacement> getColumnPlacementsByColumn( long columnId )
      */
     @Override
     public List<CatalogColumnPlacement> getColumnPlacements( long columnId ) {
+        CatalogSnapshot s = getSnapshot();
+        List<CatalogColumnPlacement> cached = s == null ? null : s.getColumnPlacements( columnId );
+        if ( cached != null ) {
+            return new ArrayList<>( cached );
+        }
         return columnPlacements.values()
                 .stream()
                 .filter( p -> p.columnId == columnId )
@@ -1869,6 +1995,11 @@ public void updateColumnPlacementPhysicalNames( int adapterId, long columnId, St
      */
     @Override
     public List<CatalogColumn> getColumns( long tableId ) {
+        CatalogSnapshot s = getSnapshot();
+        List<CatalogColumn> cached = s == null ? null : s.getColumns( tableId );
+        if ( cached != null ) {
+            return new ArrayList<>( cached );
+        }
         try {
             CatalogTable table = Objects.requireNonNull( tables.get( tableId ) );
             return columnNames.prefixSubMap( new Object[]{ table.databaseId, table.schemaId, table.id } ).values().stream().sorted( columnComparator ).collect( Collectors.toList() );
@@ -1913,6 +2044,11 @@ public List<CatalogColumn> getColumns( Pattern databaseNamePattern, Pattern sche
      */
     @Override
     public CatalogColumn getColumn( long columnId ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogColumn cached = s == null ? null : s.getColumn( columnId );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( columns.get( columnId ) );
         } catch ( NullPointerException e ) {
@@ -1931,6 +2067,11 @@ public CatalogColumn getColumn( long columnId ) {
      */
     @Override
     public CatalogColumn getColumn( long tableId, String columnName ) throws UnknownColumnException {
+        CatalogSnapshot s = getSnapshot();
+        CatalogColumn cached = s == null ? null : s.getColumn( tableId, columnName );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             CatalogTable table = getTable( tableId );
             return Objects.requireNonNull( columnNames.get( new Object[]{ table.databaseId, table.schemaId, table.id, columnName } ) );
@@ -2305,6 +2446,11 @@ public void deleteDefaultValue( long columnId ) {
      */
     @Override
     public CatalogPrimaryKey getPrimaryKey( long key ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogPrimaryKey cached = s == null ? null : s.getPrimaryKey( key );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( primaryKeys.get( key ) );
         } catch ( NullPointerException e ) {
@@ -2869,6 +3015,11 @@ public CatalogAdapter getAdapter( String uniqueName ) throws UnknownAdapterExcep
      */
     @Override
     public CatalogAdapter getAdapter( int adapterId ) {
+        CatalogSnapshot s = getSnapshot();
+        CatalogAdapter cached = s == null ? null : s.getAdapter( adapterId );
+        if ( cached != null ) {
+            return cached;
+        }
         try {
             return Objects.requireNonNull( adapters.get( adapterId ) );
         } catch ( NullPointerException e ) {
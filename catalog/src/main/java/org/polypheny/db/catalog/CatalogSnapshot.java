@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.catalog;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import org.polypheny.db.catalog.entity.CatalogAdapter;
+import org.polypheny.db.catalog.entity.CatalogColumn;
+import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
+import org.polypheny.db.catalog.entity.CatalogDatabase;
+import org.polypheny.db.catalog.entity.CatalogPrimaryKey;
+import org.polypheny.db.catalog.entity.CatalogSchema;
+import org.polypheny.db.catalog.entity.CatalogTable;
+
+
+/**
+ * Immutable, versioned copy of the parts of the catalog which are accessed while preparing and executing statements.
+ * The snapshot is built from the MapDB maps and provides indexes from ids and names to the catalog entities. All
+ * lookups are simple hash map reads and do not require deserializing entities.
+ */
+class CatalogSnapshot {
+
+    @Getter
+    private final long version;
+
+    private final ImmutableMap<Long, CatalogDatabase> databases;
+    private final ImmutableMap<String, CatalogDatabase> databaseNames;
+    private final ImmutableMap<Long, CatalogSchema> schemas;
+    private final ImmutableMap<List<Object>, CatalogSchema> schemaNames; // <databaseId, schemaName>
+    private final ImmutableMap<Long, CatalogTable> tables;
+    private final ImmutableMap<List<Object>, CatalogTable> tableNames; // <databaseId, schemaId, tableName>
+    private final ImmutableMap<Long, CatalogColumn> columns;
+    private final ImmutableMap<Long, ImmutableList<CatalogColumn>> columnsByTable; // Sorted by position
+    private final ImmutableMap<List<Object>, CatalogColumn> columnNames; // <tableId, columnName>
+    private final ImmutableMap<List<Object>, CatalogColumnPlacement> columnPlacements; // <adapterId, columnId>
+    private final ImmutableMap<Long, ImmutableList<CatalogColumnPlacement>> placementsByColumn;
+    private final ImmutableMap<List<Object>, ImmutableList<CatalogColumnPlacement>> placementsByAdapterAndTable; // <adapterId, tableId>, sorted by column position
+    private final ImmutableMap<Integer, CatalogAdapter> adapters;
+    private final ImmutableMap<Long, CatalogPrimaryKey> primaryKeys;
+
+
+    CatalogSnapshot(
+            long version,
+            Collection<CatalogDatabase> databases,
+            Collection<CatalogSchema> schemas,
+            Collection<CatalogTable> tables,
+            Collection<CatalogColumn> columns,
+            Collection<CatalogColumnPlacement> columnPlacements,
+            Collection<CatalogAdapter> adapters,
+            Collection<CatalogPrimaryKey> primaryKeys ) {
+        this.version = version;
+
+        ImmutableMap.Builder<Long, CatalogDatabase> databaseBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<String, CatalogDatabase> databaseNameBuilder = ImmutableMap.builder();
+        for ( CatalogDatabase database : databases ) {
+            databaseBuilder.put( database.id, database );
+            databaseNameBuilder.put( database.name, database );
+        }
+        this.databases = databaseBuilder.build();
+        this.databaseNames = databaseNameBuilder.build();
+
+        ImmutableMap.Builder<Long, CatalogSchema> schemaBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<List<Object>, CatalogSchema> schemaNameBuilder = ImmutableMap.builder();
+        for ( CatalogSchema schema : schemas ) {
+            schemaBuilder.put( schema.id, schema );
+            schemaNameBuilder.put( ImmutableList.of( schema.databaseId, schema.name ), schema );
+        }
+        this.schemas = schemaBuilder.build();
+        this.schemaNames = schemaNameBuilder.build();
+
+        ImmutableMap.Builder<Long, CatalogTable> tableBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<List<Object>, CatalogTable> tableNameBuilder = ImmutableMap.builder();
+        for ( CatalogTable table : tables ) {
+            tableBuilder.put( table.id, table );
+            tableNameBuilder.put( ImmutableList.of( table.databaseId, table.schemaId, table.name ), table );
+        }
+        this.tables = tableBuilder.build();
+        this.tableNames = tableNameBuilder.build();
+
+        ImmutableMap.Builder<Long, CatalogColumn> columnBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<List<Object>, CatalogColumn> columnNameBuilder = ImmutableMap.builder();
+        Map<Long, List<CatalogColumn>> columnsByTable = new HashMap<>();
+        for ( CatalogColumn column : columns ) {
+            columnBuilder.put( column.id, column );
+            columnNameBuilder.put( ImmutableList.of( column.tableId, column.name ), column );
+            columnsByTable.computeIfAbsent( column.tableId, k -> new ArrayList<>() ).add( column );
+        }
+        this.columns = columnBuilder.build();
+        this.columnNames = columnNameBuilder.build();
+        this.columnsByTable = sorted( columnsByTable, Comparator.comparingInt( c -> c.position ) );
+
+        ImmutableMap.Builder<List<Object>, CatalogColumnPlacement> placementBuilder = ImmutableMap.builder();
+        Map<Long, List<CatalogColumnPlacement>> placementsByColumn = new HashMap<>();
+        Map<List<Object>, List<CatalogColumnPlacement>> placementsByAdapterAndTable = new HashMap<>();
+        for ( CatalogColumnPlacement placement : columnPlacements ) {
+            placementBuilder.put( ImmutableList.of( placement.adapterId, placement.columnId ), placement );
+            placementsByColumn.computeIfAbsent( placement.columnId, k -> new ArrayList<>() ).add( placement );
+            placementsByAdapterAndTable.computeIfAbsent( ImmutableList.of( placement.adapterId, placement.tableId ), k -> new ArrayList<>() ).add( placement );
+        }
+        this.columnPlacements = placementBuilder.build();
+        this.placementsByColumn = sorted( placementsByColumn, Comparator.comparingInt( p -> p.adapterId ) );
+        this.placementsByAdapterAndTable = sorted(
+                placementsByAdapterAndTable,
+                Comparator.comparingInt( p -> this.columns.containsKey( p.columnId ) ? this.columns.get( p.columnId ).position : Integer.MAX_VALUE ) );
+
+        this.adapters = ImmutableMap.copyOf( adapters.stream().collect( Collectors.toMap( a -> a.id, a -> a ) ) );
+        this.primaryKeys = ImmutableMap.copyOf( primaryKeys.stream().collect( Collectors.toMap( k -> k.id, k -> k ) ) );
+    }
+
+
+    private static <K, V> ImmutableMap<K, ImmutableList<V>> sorted( Map<K, List<V>> map, Comparator<V> comparator ) {
+        ImmutableMap.Builder<K, ImmutableList<V>> builder = ImmutableMap.builder();
+        for ( Map.Entry<K, List<V>> entry : map.entrySet() ) {
+            entry.getValue().sort( comparator );
+            builder.put( entry.getKey(), ImmutableList.copyOf( entry.getValue() ) );
+        }
+        return builder.build();
+    }
+
+
+    CatalogDatabase getDatabase( long databaseId ) {
+        return databases.get( databaseId );
+    }
+
+
+    CatalogDatabase getDatabase( String databaseName ) {
+        return databaseNames.get( databaseName );
+    }
+
+
+    CatalogSchema getSchema( long schemaId ) {
+        return schemas.get( schemaId );
+    }
+
+
+    CatalogSchema getSchema( long databaseId, String schemaName ) {
+        return schemaNames.get( ImmutableList.of( databaseId, schemaName ) );
+    }
+
+
+    CatalogTable getTable( long tableId ) {
+        return tables.get( tableId );
+    }
+
+
+    CatalogTable getTable( long databaseId, long schemaId, String tableName ) {
+        return tableNames.get( ImmutableList.of( databaseId, schemaId, tableName ) );
+    }
+
+
+    CatalogColumn getColumn( long columnId ) {
+        return columns.get( columnId );
+    }
+
+
+    CatalogColumn getColumn( long tableId, String columnName ) {
+        return columnNames.get( ImmutableList.of( tableId, columnName ) );
+    }
+
+
+    /**
+     * @return the columns of the table ordered by their position or null if the table is unknown
+     */
+    ImmutableList<CatalogColumn> getColumns( long tableId ) {
+        if ( !tables.containsKey( tableId ) ) {
+            return null;
+        }
+        return columnsByTable.getOrDefault( tableId, ImmutableList.of() );
+    }
+
+
+    CatalogColumnPlacement getColumnPlacement( int adapterId, long columnId ) {
+        return columnPlacements.get( ImmutableList.of( adapterId, columnId ) );
+    }
+
+
+    /**
+     * @return the placements of the column or null if the column is unknown
+     */
+    ImmutableList<CatalogColumnPlacement> getColumnPlacements( long columnId ) {
+        if ( !columns.containsKey( columnId ) ) {
+            return null;
+        }
+        return placementsByColumn.getOrDefault( columnId, ImmutableList.of() );
+    }
+
+
+    /**
+     * @return the column placements of the table on the adapter ordered by the position of the columns or null if the
+     * table or the adapter is unknown
+     */
+    ImmutableList<CatalogColumnPlacement> getColumnPlacementsOnAdapter( int adapterId, long tableId ) {
+        if ( !tables.containsKey( tableId ) || !adapters.containsKey( adapterId ) ) {
+            return null;
+        }
+        return placementsByAdapterAndTable.getOrDefault( ImmutableList.of( adapterId, tableId ), ImmutableList.of() );
+    }
+
+
+    CatalogAdapter getAdapter( int adapterId ) {
+        return adapters.get( adapterId );
+    }
+
+
+    CatalogPrimaryKey getPrimaryKey( long keyId ) {
+        return primaryKeys.get( keyId );
+    }
+
+}
@@ -20,7 +20,9 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -51,9 +53,11 @@
 import org.polypheny.db.catalog.exceptions.GenericCatalogException;
 import org.polypheny.db.catalog.exceptions.UnknownAdapterException;
 import org.polypheny.db.catalog.exceptions.UnknownColumnException;
+import org.polypheny.db.catalog.exceptions.UnknownColumnIdRuntimeException;
 import org.polypheny.db.catalog.exceptions.UnknownDatabaseException;
 import org.polypheny.db.catalog.exceptions.UnknownSchemaException;
 import org.polypheny.db.catalog.exceptions.UnknownTableException;
+import org.polypheny.db.catalog.exceptions.UnknownTableIdRuntimeException;
 import org.polypheny.db.type.PolyType;
 
 
@@ -431,6 +435,68 @@ public void testKey() throws GenericCatalogException {
     }
 
 
+    @Test
+    public void testSnapshot() throws Exception {
+        int userId = catalog.addUser( "tester", "" );
+        long databaseId = catalog.addDatabase( "APP", userId, "tester", 0, "" );
+        long schemaId = catalog.addSchema( "schema1", databaseId, userId, SchemaType.RELATIONAL );
+        long tableId = catalog.addTable( "table1", schemaId, userId, TableType.TABLE, true, null );
+        long columnId = catalog.addColumn( "column1", tableId, 0, PolyType.BIGINT, null, null, null, null, null, false, null );
+        catalog.addPrimaryKey( tableId, Collections.singletonList( columnId ) );
+        catalog.commit();
+
+        // Served from the published snapshot
+        assertEquals( tableId, catalog.getTable( schemaId, "table1" ).id );
+        assertEquals( 1, catalog.getColumns( tableId ).size() );
+
+        // Modifications are visible before they are committed
+        catalog.renameTable( tableId, "table2" );
+        long columnId2 = catalog.addColumn( "column2", tableId, 1, PolyType.BIGINT, null, null, null, null, null, false, null );
+        assertEquals( "table2", catalog.getTable( tableId ).name );
+        assertEquals( tableId, catalog.getTable( databaseId, "schema1", "table2" ).id );
+        assertEquals( Arrays.asList( columnId, columnId2 ), catalog.getColumns( tableId ).stream().map( c -> c.id ).collect( Collectors.toList() ) );
+
+        // ... and after publishing the new snapshot
+        catalog.commit();
+        assertEquals( "table2", catalog.getTable( tableId ).name );
+        assertEquals( columnId2, catalog.getColumn( tableId, "column2" ).id );
+        assertEquals( Arrays.asList( columnId, columnId2 ), catalog.getColumns( tableId ).stream().map( c -> c.id ).collect( Collectors.toList() ) );
+
+        // Unknown ids are reported like without a snapshot
+        try {
+            catalog.getTable( tableId + 1000 );
+            fail( "Expected an unknown table id" );
+        } catch ( UnknownTableIdRuntimeException e ) {
+            // Expected
+        }
+        try {
+            catalog.getColumn( columnId2 + 1000 );
+            fail( "Expected an unknown column id" );
+        } catch ( UnknownColumnIdRuntimeException e ) {
+            // Expected
+        }
+
+        // A rollback without modifications keeps the snapshot
+        List<String> events = new ArrayList<>();
+        PropertyChangeListener listener = evt -> events.add( evt.getPropertyName() );
+        catalog.addObserver( listener );
+        try {
+            catalog.rollback();
+            assertTrue( events.isEmpty() );
+
+            // A rollback of modifications discards the snapshot
+            catalog.renameTable( tableId, "table3" );
+            events.clear();
+            catalog.rollback();
+            assertEquals( Collections.singletonList( "rollback" ), events );
+            assertEquals( "table2", catalog.getTable( tableId ).name );
+            assertEquals( tableId, catalog.getTable( schemaId, "table2" ).id );
+        } finally {
+            catalog.removeObserver( listener );
+        }
+    }
+
+
     @Test
     public void performanceTests() {
         int iterations = 1000;
@@ -40,6 +40,7 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import lombok.Getter;
@@ -310,6 +311,30 @@ public String getAdapterName() {
 
     public abstract void commit( PolyXid xid );
 
+
+    /**
+     * Whether concurrent commits on this adapter should be grouped, see {@link #commit(List, Consumer)}.
+     */
+    public boolean supportsGroupCommit() {
+        return false;
+    }
+
+
+    /**
+     * Commits several transactions at once. Used for group commits; adapters which can commit a group of transactions
+     * more efficiently than one by one should override this method together with {@link #supportsGroupCommit()}.
+     *
+     * @param committed receives every transaction as soon as it has been committed, so that only the remaining
+     * transactions have to be committed again if this method fails
+     */
+    public void commit( List<PolyXid> xids, Consumer<PolyXid> committed ) {
+        for ( PolyXid xid : xids ) {
+            commit( xid );
+            committed.accept( xid );
+        }
+    }
+
+
     public abstract void rollback( PolyXid xid );
 
 
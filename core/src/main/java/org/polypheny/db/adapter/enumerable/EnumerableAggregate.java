@@ -50,6 +50,7 @@
 import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
 import org.apache.calcite.linq4j.tree.Types;
+import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.adapter.enumerable.impl.AggAddContextImpl;
 import org.polypheny.db.adapter.enumerable.impl.AggResultContextImpl;
 import org.polypheny.db.adapter.java.JavaTypeFactory;
@@ -62,6 +63,7 @@
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.rel.core.Aggregate;
 import org.polypheny.db.rel.core.AggregateCall;
+import org.polypheny.db.rel.metadata.RelMdMemory;
 import org.polypheny.db.rel.type.RelDataType;
 import org.polypheny.db.rel.type.RelDataTypeField;
 import org.polypheny.db.rex.RexInputRef;
@@ -361,16 +363,21 @@ public RexToLixTranslator rowTranslator() {
         } else {
             final Expression keySelector_ = builder.append( "keySelector", inputPhysType.generateSelector( parameter, groupSet.asList(), keyPhysType.getFormat() ) );
             final Expression resultSelector_ = builder.append( "resultSelector", Expressions.lambda( Function2.class, resultBlock.toBlock(), key_, acc_ ) );
+            // The rows of the groups which exceed the memory budget of the query are written to temporary files
+            final double groupMemory = RelMdMemory.rowMemory( this, getCluster().getMetadataQuery() );
             builder.add(
                     Expressions.return_(
                             null,
                             Expressions.call(
+                                    BuiltInMethod.SPILLING_GROUP_BY.method,
                                     childExp,
-                                    BuiltInMethod.GROUP_BY2.method,
-                                    Expressions.list( keySelector_,
-                                            Expressions.call( lambdaFactory, BuiltInMethod.AGG_LAMBDA_FACTORY_ACC_INITIALIZER.method ),
-                                            Expressions.call( lambdaFactory, BuiltInMethod.AGG_LAMBDA_FACTORY_ACC_ADDER.method ),
-                                            Expressions.call( lambdaFactory, BuiltInMethod.AGG_LAMBDA_FACTORY_ACC_RESULT_SELECTOR.method, resultSelector_ ) ).appendIfNotNull( keyPhysType.comparer() ) ) ) );
+                                    keySelector_,
+                                    Expressions.call( lambdaFactory, BuiltInMethod.AGG_LAMBDA_FACTORY_ACC_INITIALIZER.method ),
+                                    Expressions.call( lambdaFactory, BuiltInMethod.AGG_LAMBDA_FACTORY_ACC_ADDER.method ),
+                                    Expressions.call( lambdaFactory, BuiltInMethod.AGG_LAMBDA_FACTORY_ACC_RESULT_SELECTOR.method, resultSelector_ ),
+                                    Util.first( keyPhysType.comparer(), Expressions.constant( null ) ),
+                                    DataContext.ROOT,
+                                    Expressions.constant( (long) groupMemory ) ) ) );
         }
         return implementor.result( physType, builder.toBlock() );
     }
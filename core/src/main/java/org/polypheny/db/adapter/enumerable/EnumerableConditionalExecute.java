@@ -39,7 +39,7 @@ public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
         final BlockBuilder builder = new BlockBuilder();
         final Result conditionResult = implementor.visitChild( this, 0, (EnumerableRel) getLeft(), pref );
         Expression call = Expressions.call(
-                builder.append( builder.newName( "condition" + System.nanoTime() ), conditionResult.block ),
+                builder.append( builder.newName( implementor.newVariableName( "condition" ) ), conditionResult.block ),
                 "count" );
 
         Expression conditionExp = null;
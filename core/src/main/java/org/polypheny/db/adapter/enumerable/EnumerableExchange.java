@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.RelCollation;
+import org.polypheny.db.rel.RelCollationTraitDef;
+import org.polypheny.db.rel.RelCollations;
+import org.polypheny.db.rel.RelDistribution;
+import org.polypheny.db.rel.RelDistributionTraitDef;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelWriter;
+import org.polypheny.db.rel.core.Exchange;
+import org.polypheny.db.rel.metadata.RelMetadataQuery;
+import org.polypheny.db.util.BuiltInMethod;
+
+
+/**
+ * Implementation of {@link Exchange} in {@link EnumerableConvention enumerable calling convention}.
+ *
+ * Exchanges delimit parallel fragments: A singleton exchange evaluates its input on {@link #getDegree() degree}
+ * threads and gathers the rows. Within the input, hash, round-robin and broadcast exchanges distribute the rows of their
+ * own inputs among these threads. The inputs of the distributing exchanges are evaluated once and outside of the
+ * fragment. Without an enclosing singleton exchange, distributing exchanges pass the rows through.
+ *
+ * @see org.polypheny.db.runtime.Enumerables#exchange
+ * @see org.polypheny.db.runtime.Enumerables#gather
+ */
+public class EnumerableExchange extends Exchange implements EnumerableRel {
+
+    private final int degree;
+
+
+    /**
+     * Creates an EnumerableExchange.
+     *
+     * Use {@link #create} unless you know what you're doing.
+     */
+    protected EnumerableExchange( RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RelDistribution distribution, int degree ) {
+        super( cluster, traitSet, input, distribution );
+        this.degree = degree;
+        assert getConvention() instanceof EnumerableConvention;
+        assert degree > 1;
+        switch ( distribution.getType() ) {
+            case SINGLETON:
+            case HASH_DISTRIBUTED:
+            case ROUND_ROBIN_DISTRIBUTED:
+            case BROADCAST_DISTRIBUTED:
+                break;
+            default:
+                throw new AssertionError( "Distribution " + distribution + " is not supported by exchanges." );
+        }
+    }
+
+
+    /**
+     * Creates an EnumerableExchange.
+     *
+     * @param input Input relational expression
+     * @param distribution Singleton to gather the rows of a parallel fragment, otherwise the distribution of the rows
+     * among the threads of the fragment
+     * @param degree Number of threads the fragment is evaluated on
+     */
+    public static EnumerableExchange create( RelNode input, RelDistribution distribution, int degree ) {
+        final RelOptCluster cluster = input.getCluster();
+        distribution = RelDistributionTraitDef.INSTANCE.canonize( distribution );
+        // The rows of the partitions are returned one after the other, any order is therefore lost
+        final RelTraitSet traitSet = input.getTraitSet()
+                .replace( EnumerableConvention.INSTANCE )
+                .replace( RelCollations.EMPTY )
+                .replace( distribution );
+        return new EnumerableExchange( cluster, traitSet, input, distribution, degree );
+    }
+
+
+    /**
+     * Whether an operator may be evaluated on several threads. This is not the case if parallel execution is disabled,
+     * if the operator is already part of a parallel fragment or if it promises a sort order, which would be lost when
+     * the rows of the threads are gathered.
+     */
+    public static boolean isParallelizable( RelNode rel, RelMetadataQuery mq ) {
+        if ( !RuntimeConfig.PARALLEL_EXECUTION.getBoolean() ) {
+            return false;
+        }
+        final Integer splitCount = mq.splitCount( rel );
+        if ( splitCount == null || splitCount > 1 ) {
+            return false;
+        }
+        final RelCollation collation = rel.getTraitSet().getTrait( RelCollationTraitDef.INSTANCE );
+        return collation == null || collation.getFieldCollations().isEmpty();
+    }
+
+
+    /**
+     * Returns the number of threads an operator with the given number of input rows is evaluated on.
+     */
+    public static int degree( double inputRowCount ) {
+        final double degree = inputRowCount / Math.max( 1, RuntimeConfig.PARALLEL_EXECUTION_MIN_ROWS.getInteger() );
+        return (int) Math.min( RuntimeConfig.PARALLEL_EXECUTION_DEGREE.getInteger(), Math.floor( degree ) );
+    }
+
+
+    /**
+     * Returns the number of threads the enclosing parallel fragment is evaluated on.
+     */
+    public int getDegree() {
+        return degree;
+    }
+
+
+    /**
+     * Whether this exchange gathers the rows of a parallel fragment. Otherwise, it distributes rows within a fragment.
+     */
+    public boolean isGather() {
+        return distribution.getType() == RelDistribution.Type.SINGLETON;
+    }
+
+
+    @Override
+    public EnumerableExchange copy( RelTraitSet traitSet, RelNode newInput, RelDistribution newDistribution ) {
+        return new EnumerableExchange( getCluster(), traitSet, newInput, newDistribution, degree );
+    }
+
+
+    @Override
+    public RelWriter explainTerms( RelWriter pw ) {
+        return super.explainTerms( pw ).item( "degree", degree );
+    }
+
+
+    @Override
+    public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
+        final BlockBuilder builder = new BlockBuilder();
+        final Result result = implementor.visitChild( this, 0, (EnumerableRel) getInput(), pref );
+        // The input is evaluated lazily: Per partition for the fragment of a gather, once for the other exchanges
+        final Expression input = Expressions.lambda( Function0.class, result.block );
+        final Expression expression;
+        if ( isGather() ) {
+            expression = Expressions.call( BuiltInMethod.GATHER.method, input, Expressions.constant( degree ) );
+        } else {
+            final Expression keySelector = distribution.getType() == RelDistribution.Type.HASH_DISTRIBUTED
+                    ? result.physType.generateAccessor( distribution.getKeys() )
+                    : Expressions.constant( null );
+            expression = Expressions.call(
+                    BuiltInMethod.EXCHANGE.method,
+                    Expressions.constant( getId() ),
+                    input,
+                    keySelector,
+                    Expressions.constant( distribution.getType() ) );
+        }
+        return implementor.result( result.physType, builder.append( expression ).toBlock() );
+    }
+
+}
@@ -151,6 +151,9 @@ static ArrayBindable getArrayBindable( ClassDeclaration expr, String s, int fiel
 
 
     static Bindable getBindable( ClassDeclaration expr, String s, int fieldCount ) throws CompileException, IOException {
+        if ( RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT.getBoolean() && !RuntimeConfig.DEBUG.getBoolean() ) {
+            return PersistentCodeCache.INSTANCE.getBindable( expr.name, s, fieldCount );
+        }
         ICompilerFactory compilerFactory;
         try {
             compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
@@ -39,11 +39,13 @@
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.plan.RelOptCluster;
 import org.polypheny.db.plan.RelOptCost;
 import org.polypheny.db.plan.RelOptPlanner;
 import org.polypheny.db.plan.RelTraitSet;
 import org.polypheny.db.rel.InvalidRelException;
+import org.polypheny.db.rel.RelCollation;
 import org.polypheny.db.rel.RelCollationTraitDef;
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.rel.RelNodes;
@@ -52,6 +54,7 @@
 import org.polypheny.db.rel.core.JoinInfo;
 import org.polypheny.db.rel.core.JoinRelType;
 import org.polypheny.db.rel.metadata.RelMdCollation;
+import org.polypheny.db.rel.metadata.RelMdMemory;
 import org.polypheny.db.rel.metadata.RelMetadataQuery;
 import org.polypheny.db.rex.RexNode;
 import org.polypheny.db.util.BuiltInMethod;
@@ -157,11 +160,33 @@ private double addEpsilon( double d ) {
     public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
         BlockBuilder builder = new BlockBuilder();
         final Result leftResult = implementor.visitChild( this, 0, (EnumerableRel) left, pref );
-        Expression leftExpression = builder.append( "left" + System.nanoTime(), leftResult.block );
+        Expression leftExpression = builder.append( implementor.newVariableName( "left" ), leftResult.block );
         final Result rightResult = implementor.visitChild( this, 1, (EnumerableRel) right, pref );
-        Expression rightExpression = builder.append( "right" + System.nanoTime(), rightResult.block );
+        Expression rightExpression = builder.append( implementor.newVariableName( "right" ), rightResult.block );
         final PhysType physType = PhysTypeImpl.of( implementor.getTypeFactory(), getRowType(), pref.preferArray() );
         final PhysType keyPhysType = leftResult.physType.project( leftKeys, JavaRowFormat.LIST );
+        final RelCollation collation = getTraitSet().getTrait( RelCollationTraitDef.INSTANCE );
+        if ( collation == null || collation.getFieldCollations().isEmpty() ) {
+            // Nobody relies on the order of the left input, the right rows can therefore be written to temporary
+            // files if they exceed the memory budget of the query.
+            final double rowMemory = RelMdMemory.rowMemory( right, getCluster().getMetadataQuery() );
+            return implementor.result(
+                    physType,
+                    builder.append(
+                            Expressions.call(
+                                    BuiltInMethod.SPILLING_HASH_JOIN.method,
+                                    leftExpression,
+                                    rightExpression,
+                                    leftResult.physType.generateAccessor( leftKeys ),
+                                    rightResult.physType.generateAccessor( rightKeys ),
+                                    EnumUtils.joinSelector( joinType, physType, ImmutableList.of( leftResult.physType, rightResult.physType ) ),
+                                    Util.first( keyPhysType.comparer(), Expressions.constant( null ) ),
+                                    Expressions.constant( joinType.generatesNullsOnLeft() ),
+                                    Expressions.constant( joinType.generatesNullsOnRight() ),
+                                    DataContext.ROOT,
+                                    Expressions.constant( (long) rowMemory ) ) )
+                            .toBlock() );
+        }
         return implementor.result(
                 physType,
                 builder.append(
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.polypheny.db.plan.RelOptRule;
+import org.polypheny.db.plan.RelOptRuleCall;
+import org.polypheny.db.rel.InvalidRelException;
+import org.polypheny.db.rel.RelCollations;
+import org.polypheny.db.rel.RelDistributions;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.core.Aggregate.Group;
+import org.polypheny.db.rel.core.AggregateCall;
+import org.polypheny.db.rel.core.RelFactories;
+import org.polypheny.db.rel.metadata.RelMetadataQuery;
+import org.polypheny.db.sql.SqlAggFunction;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
+import org.polypheny.db.util.ImmutableBitSet;
+
+
+/**
+ * Planner rule that evaluates an {@link EnumerableAggregate} on several threads.
+ *
+ * If all aggregate functions can be split, the rows are distributed round-robin and every thread computes a partial
+ * aggregation. The partial results are gathered and combined by a final aggregation. Otherwise, the rows are hash
+ * distributed by the group keys, so that every thread computes the complete aggregation of its groups.
+ *
+ * The rule is applied to the physical plan, after the cost based optimization.
+ */
+class EnumerableParallelAggregateRule extends RelOptRule {
+
+    EnumerableParallelAggregateRule() {
+        super(
+                operand( EnumerableAggregate.class, operand( RelNode.class, any() ) ),
+                RelFactories.LOGICAL_BUILDER,
+                "EnumerableParallelAggregateRule" );
+    }
+
+
+    @Override
+    public void onMatch( RelOptRuleCall call ) {
+        final EnumerableAggregate aggregate = call.rel( 0 );
+        final RelNode input = call.rel( 1 );
+        final RelMetadataQuery mq = call.getMetadataQuery();
+        if ( aggregate.getGroupType() != Group.SIMPLE || !EnumerableExchange.isParallelizable( aggregate, mq ) ) {
+            return;
+        }
+        if ( input instanceof EnumerableExchange && ((EnumerableExchange) input).isGather() ) {
+            // Either the final aggregation of an aggregation which has already been split or an aggregation of rows
+            // which have just been gathered
+            return;
+        }
+        final int degree = EnumerableExchange.degree( mq.getRowCount( input ) );
+        if ( degree < 2 ) {
+            return;
+        }
+
+        final List<AggregateCall> finalAggCalls = getFinalAggCalls( aggregate );
+        try {
+            if ( finalAggCalls != null ) {
+                final RelNode partialAggregate = aggregate.copy(
+                        aggregate.getTraitSet(),
+                        ImmutableList.of( EnumerableExchange.create( input, RelDistributions.ROUND_ROBIN_DISTRIBUTED, degree ) ) );
+                call.transformTo( new EnumerableAggregate(
+                        aggregate.getCluster(),
+                        aggregate.getTraitSet(),
+                        EnumerableExchange.create( partialAggregate, RelDistributions.SINGLETON, degree ),
+                        false,
+                        ImmutableBitSet.range( aggregate.getGroupCount() ),
+                        null,
+                        finalAggCalls ) );
+            } else if ( aggregate.getGroupCount() > 0 ) {
+                final RelNode parallelAggregate = aggregate.copy(
+                        aggregate.getTraitSet(),
+                        ImmutableList.of( EnumerableExchange.create( input, RelDistributions.hash( aggregate.getGroupSet().asList() ), degree ) ) );
+                call.transformTo( EnumerableExchange.create( parallelAggregate, RelDistributions.SINGLETON, degree ) );
+            }
+        } catch ( InvalidRelException e ) {
+            EnumerableRules.LOGGER.debug( e.toString() );
+        }
+    }
+
+
+    /**
+     * Returns the aggregate calls which combine the partial results of the aggregate calls of the given aggregate, or
+     * {@code null} if at least one of them cannot be split.
+     */
+    private static List<AggregateCall> getFinalAggCalls( EnumerableAggregate aggregate ) {
+        final int groupCount = aggregate.getGroupCount();
+        final List<AggregateCall> finalAggCalls = new ArrayList<>();
+        for ( AggregateCall aggCall : aggregate.getAggCallList() ) {
+            final SqlAggFunction finalFunction = getFinalFunction( aggCall );
+            if ( finalFunction == null ) {
+                return null;
+            }
+            finalAggCalls.add( AggregateCall.create(
+                    finalFunction,
+                    false,
+                    false,
+                    ImmutableList.of( groupCount + finalAggCalls.size() ),
+                    -1,
+                    RelCollations.EMPTY,
+                    aggCall.getType(),
+                    aggCall.getName() ) );
+        }
+        return finalAggCalls;
+    }
+
+
+    private static SqlAggFunction getFinalFunction( AggregateCall aggCall ) {
+        if ( aggCall.isDistinct() || aggCall.hasFilter() || !aggCall.getCollation().getFieldCollations().isEmpty() ) {
+            return null;
+        }
+        switch ( aggCall.getAggregation().getKind() ) {
+            case SUM:
+            case SUM0:
+            case MIN:
+            case MAX:
+                return aggCall.getAggregation();
+            case COUNT:
+                // The partial counts are summed up. In contrast to SUM, SUM0 returns 0 if there are no partial counts.
+                return SqlStdOperatorTable.SUM0;
+            default:
+                return null;
+        }
+    }
+
+}
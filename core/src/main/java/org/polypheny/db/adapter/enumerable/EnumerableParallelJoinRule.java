@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import com.google.common.collect.ImmutableList;
+import org.polypheny.db.plan.RelOptRule;
+import org.polypheny.db.plan.RelOptRuleCall;
+import org.polypheny.db.rel.RelDistribution;
+import org.polypheny.db.rel.RelDistributions;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.core.JoinRelType;
+import org.polypheny.db.rel.core.RelFactories;
+import org.polypheny.db.rel.metadata.RelMetadataQuery;
+
+
+/**
+ * Planner rule that evaluates an {@link EnumerableJoin} on several threads.
+ *
+ * If the right input is small compared to the left input, the rows of the left input are distributed round-robin and
+ * the right input is broadcast to all threads. Otherwise, the rows of both inputs are hash distributed by the join keys.
+ * In both cases, every thread joins its partitions and the results are gathered.
+ *
+ * The rule is applied to the physical plan, after the cost based optimization.
+ */
+class EnumerableParallelJoinRule extends RelOptRule {
+
+    EnumerableParallelJoinRule() {
+        super(
+                operand( EnumerableJoin.class, operand( RelNode.class, any() ), operand( RelNode.class, any() ) ),
+                RelFactories.LOGICAL_BUILDER,
+                "EnumerableParallelJoinRule" );
+    }
+
+
+    @Override
+    public void onMatch( RelOptRuleCall call ) {
+        final EnumerableJoin join = call.rel( 0 );
+        final RelNode left = call.rel( 1 );
+        final RelNode right = call.rel( 2 );
+        final RelMetadataQuery mq = call.getMetadataQuery();
+        if ( join.getLeftKeys().isEmpty() || !EnumerableExchange.isParallelizable( join, mq ) ) {
+            return;
+        }
+
+        final double leftRowCount = mq.getRowCount( left );
+        final double rightRowCount = mq.getRowCount( right );
+        final int degree = EnumerableExchange.degree( leftRowCount + rightRowCount );
+        if ( degree < 2 ) {
+            return;
+        }
+
+        // Broadcasting the right input builds its lookup table on every thread. This only pays off if it is small and
+        // if the join does not have to return the unmatched rows of the right input.
+        final boolean broadcast = (join.getJoinType() == JoinRelType.INNER || join.getJoinType() == JoinRelType.LEFT)
+                && rightRowCount * degree < leftRowCount;
+        final RelDistribution leftDistribution = broadcast ? RelDistributions.ROUND_ROBIN_DISTRIBUTED : RelDistributions.hash( join.getLeftKeys() );
+        final RelDistribution rightDistribution = broadcast ? RelDistributions.BROADCAST_DISTRIBUTED : RelDistributions.hash( join.getRightKeys() );
+
+        final RelNode parallelJoin = join.copy(
+                join.getTraitSet(),
+                ImmutableList.of(
+                        EnumerableExchange.create( left, leftDistribution, degree ),
+                        EnumerableExchange.create( right, rightDistribution, degree ) ) );
+        call.transformTo( EnumerableExchange.create( parallelJoin, RelDistributions.SINGLETON, degree ) );
+    }
+
+}
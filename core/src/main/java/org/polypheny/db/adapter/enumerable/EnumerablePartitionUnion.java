@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Ord;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.core.Union;
+import org.polypheny.db.util.BuiltInMethod;
+
+
+/**
+ * Implementation of {@link org.polypheny.db.rel.logical.LogicalPartitionUnion} in
+ * {@link EnumerableConvention enumerable calling convention}. The rows of all inputs are fetched concurrently.
+ */
+public class EnumerablePartitionUnion extends Union implements EnumerableRel {
+
+    public EnumerablePartitionUnion( RelOptCluster cluster, RelTraitSet traitSet, List<RelNode> inputs ) {
+        super( cluster, traitSet, inputs, true );
+    }
+
+
+    @Override
+    public EnumerablePartitionUnion copy( RelTraitSet traitSet, List<RelNode> inputs, boolean all ) {
+        assert all;
+        return new EnumerablePartitionUnion( getCluster(), traitSet, inputs );
+    }
+
+
+    @Override
+    public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
+        final BlockBuilder builder = new BlockBuilder();
+        final List<Expression> childExps = new ArrayList<>( inputs.size() );
+        for ( Ord<RelNode> ord : Ord.zip( inputs ) ) {
+            EnumerableRel input = (EnumerableRel) ord.e;
+            final Result result = implementor.visitChild( this, ord.i, input, pref );
+            childExps.add( builder.append( "child" + ord.i, result.block ) );
+        }
+
+        builder.add(
+                Expressions.call(
+                        BuiltInMethod.CONCURRENT_UNION_ALL.method,
+                        Expressions.constant( RuntimeConfig.PARTITION_UNION_BUFFER_SIZE.getInteger() ),
+                        Expressions.newArrayInit( Enumerable.class, childExps ) ) );
+        final PhysType physType =
+                PhysTypeImpl.of(
+                        implementor.getTypeFactory(),
+                        getRowType(),
+                        pref.prefer( JavaRowFormat.CUSTOM ) );
+        return implementor.result( physType, builder.toBlock() );
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Types;
+import org.polypheny.db.adapter.java.JavaTypeFactory;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelOptCost;
+import org.polypheny.db.plan.RelOptPlanner;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.InvalidRelException;
+import org.polypheny.db.rel.RelCollationTraitDef;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelWriter;
+import org.polypheny.db.rel.core.EquiJoin;
+import org.polypheny.db.rel.core.JoinInfo;
+import org.polypheny.db.rel.core.JoinRelType;
+import org.polypheny.db.rel.metadata.RelMdCollation;
+import org.polypheny.db.rel.metadata.RelMetadataQuery;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.type.PolyTypeUtil;
+import org.polypheny.db.util.BuiltInMethod;
+import org.polypheny.db.util.ImmutableIntList;
+import org.polypheny.db.util.Pair;
+
+
+/**
+ * Implementation of {@link org.polypheny.db.rel.logical.LogicalPlacementJoin} in
+ * {@link EnumerableConvention enumerable calling convention}. The rows of both inputs are fetched concurrently.
+ *
+ * If both inputs are sorted by the primary key, they are merged. Otherwise, a lookup table is built for the right input
+ * while the rows of the left input are buffered.
+ */
+public class EnumerablePlacementJoin extends EquiJoin implements EnumerableRel {
+
+    private final boolean merge;
+
+
+    /**
+     * Creates an EnumerablePlacementJoin.
+     *
+     * Use {@link #create} unless you know what you're doing.
+     */
+    protected EnumerablePlacementJoin( RelOptCluster cluster, RelTraitSet traits, RelNode left, RelNode right, RexNode condition, ImmutableIntList leftKeys, ImmutableIntList rightKeys, boolean merge ) throws InvalidRelException {
+        super( cluster, traits, left, right, condition, leftKeys, rightKeys, ImmutableSet.of(), JoinRelType.INNER );
+        this.merge = merge;
+    }
+
+
+    /**
+     * Creates an EnumerablePlacementJoin.
+     *
+     * @param merge Whether the inputs are sorted by their keys and can be merged
+     */
+    public static EnumerablePlacementJoin create( RelNode left, RelNode right, RexNode condition, ImmutableIntList leftKeys, ImmutableIntList rightKeys, boolean merge ) throws InvalidRelException {
+        final RelOptCluster cluster = left.getCluster();
+        final RelMetadataQuery mq = cluster.getMetadataQuery();
+        final RelTraitSet traitSet = cluster.traitSetOf( EnumerableConvention.INSTANCE ).replaceIfs(
+                RelCollationTraitDef.INSTANCE,
+                () -> merge
+                        ? RelMdCollation.mergeJoin( mq, left, right, leftKeys, rightKeys )
+                        : RelMdCollation.enumerableJoin( mq, left, right, JoinRelType.INNER ) );
+        return new EnumerablePlacementJoin( cluster, traitSet, left, right, condition, leftKeys, rightKeys, merge );
+    }
+
+
+    /**
+     * Whether the inputs can be merged if they are sorted by the given keys. This is only the case if the adapters sort
+     * the keys in the same order as Java compares them, which is not guaranteed for character types.
+     */
+    public static boolean isMergeable( RelNode input, List<Integer> keys ) {
+        for ( int key : keys ) {
+            final RelDataType type = input.getRowType().getFieldList().get( key ).getType();
+            if ( !PolyTypeUtil.isNumeric( type ) && !PolyTypeUtil.isDatetime( type ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public EnumerablePlacementJoin copy( RelTraitSet traitSet, RexNode condition, RelNode left, RelNode right, JoinRelType joinType, boolean semiJoinDone ) {
+        final JoinInfo joinInfo = JoinInfo.of( left, right, condition );
+        assert joinInfo.isEqui();
+        try {
+            return new EnumerablePlacementJoin( getCluster(), traitSet, left, right, condition, joinInfo.leftKeys, joinInfo.rightKeys, merge );
+        } catch ( InvalidRelException e ) {
+            // Semantic error not possible. Must be a bug. Convert to internal error.
+            throw new AssertionError( e );
+        }
+    }
+
+
+    @Override
+    public RelOptCost computeSelfCost( RelOptPlanner planner, RelMetadataQuery mq ) {
+        // The rows are transferred from the adapters, the cost therefore depends on the number of columns of the inputs.
+        // This favours plans which push projections into the placements. Merging is cheaper than building the lookup
+        // table for the right input, the price for sorting the inputs has already been paid.
+        final double rightRowCount = right.estimateRowCount( mq );
+        final double leftRowCount = left.estimateRowCount( mq );
+        double rowCount = mq.getRowCount( this )
+                + leftRowCount * left.getRowType().getFieldCount()
+                + rightRowCount * right.getRowType().getFieldCount();
+        if ( !merge ) {
+            rowCount += rightRowCount;
+        }
+        return planner.getCostFactory().makeCost( rowCount, 0, 0 );
+    }
+
+
+    @Override
+    public RelWriter explainTerms( RelWriter pw ) {
+        return super.explainTerms( pw ).item( "merge", merge );
+    }
+
+
+    @Override
+    public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
+        final BlockBuilder builder = new BlockBuilder();
+        final Result leftResult = implementor.visitChild( this, 0, (EnumerableRel) left, pref );
+        final Expression leftExpression = builder.append( implementor.newVariableName( "left" ), leftResult.block );
+        final Result rightResult = implementor.visitChild( this, 1, (EnumerableRel) right, pref );
+        final Expression rightExpression = builder.append( implementor.newVariableName( "right" ), rightResult.block );
+        final PhysType physType = PhysTypeImpl.of( implementor.getTypeFactory(), getRowType(), pref.preferArray() );
+        final Expression bufferSize = Expressions.constant( RuntimeConfig.PLACEMENT_JOIN_BUFFER_SIZE.getInteger() );
+        final Expression resultSelector = EnumUtils.joinSelector( joinType, physType, ImmutableList.of( leftResult.physType, rightResult.physType ) );
+
+        if ( !merge ) {
+            return implementor.result(
+                    physType,
+                    builder.append(
+                            Expressions.call(
+                                    BuiltInMethod.CONCURRENT_HASH_JOIN.method,
+                                    Expressions.list(
+                                            leftExpression,
+                                            rightExpression,
+                                            leftResult.physType.generateAccessor( leftKeys ),
+                                            rightResult.physType.generateAccessor( rightKeys ),
+                                            resultSelector,
+                                            bufferSize ) ) ).toBlock() );
+        }
+
+        // The keys are compared, they are therefore converted into comparable records
+        final ParameterExpression left_ = Expressions.parameter( leftResult.physType.getJavaRowType(), "left" );
+        final ParameterExpression right_ = Expressions.parameter( rightResult.physType.getJavaRowType(), "right" );
+        final JavaTypeFactory typeFactory = implementor.getTypeFactory();
+        final List<Expression> leftExpressions = new ArrayList<>();
+        final List<Expression> rightExpressions = new ArrayList<>();
+        for ( Pair<Integer, Integer> pair : Pair.zip( leftKeys, rightKeys ) ) {
+            final RelDataType keyType = typeFactory.leastRestrictive( ImmutableList.of( left.getRowType().getFieldList().get( pair.left ).getType(), right.getRowType().getFieldList().get( pair.right ).getType() ) );
+            final Type keyClass = typeFactory.getJavaClass( keyType );
+            leftExpressions.add( Types.castIfNecessary( keyClass, leftResult.physType.fieldReference( left_, pair.left ) ) );
+            rightExpressions.add( Types.castIfNecessary( keyClass, rightResult.physType.fieldReference( right_, pair.right ) ) );
+        }
+        final PhysType leftKeyPhysType = leftResult.physType.project( leftKeys, JavaRowFormat.LIST );
+        final PhysType rightKeyPhysType = rightResult.physType.project( rightKeys, JavaRowFormat.LIST );
+        return implementor.result(
+                physType,
+                builder.append(
+                        Expressions.call(
+                                BuiltInMethod.CONCURRENT_MERGE_JOIN.method,
+                                Expressions.list(
+                                        leftExpression,
+                                        rightExpression,
+                                        Expressions.lambda( leftKeyPhysType.record( leftExpressions ), left_ ),
+                                        Expressions.lambda( rightKeyPhysType.record( rightExpressions ), right_ ),
+                                        resultSelector,
+                                        bufferSize ) ) ).toBlock() );
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import org.polypheny.db.plan.Convention;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelOptRule;
+import org.polypheny.db.plan.RelOptRuleCall;
+import org.polypheny.db.rel.InvalidRelException;
+import org.polypheny.db.rel.RelCollation;
+import org.polypheny.db.rel.RelCollations;
+import org.polypheny.db.rel.RelFieldCollation;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.core.JoinInfo;
+import org.polypheny.db.rel.core.JoinRelType;
+import org.polypheny.db.rel.core.RelFactories;
+import org.polypheny.db.rel.logical.LogicalPlacementJoin;
+
+
+/**
+ * Planner rule that converts a {@link LogicalPlacementJoin} into an {@link EnumerablePlacementJoin}.
+ *
+ * Registers a variant which builds a lookup table and, if the key types allow it, a variant which requires both inputs
+ * to be sorted by the primary key. The latter is chosen if the adapters can return the rows in this order.
+ */
+public class EnumerablePlacementJoinRule extends RelOptRule {
+
+    public EnumerablePlacementJoinRule() {
+        super( operand( LogicalPlacementJoin.class, Convention.NONE, any() ), RelFactories.LOGICAL_BUILDER, "EnumerablePlacementJoinRule" );
+    }
+
+
+    @Override
+    public void onMatch( RelOptRuleCall call ) {
+        final LogicalPlacementJoin join = call.rel( 0 );
+        final JoinInfo info = JoinInfo.of( join.getLeft(), join.getRight(), join.getCondition() );
+        final RelNode left = convert( join.getLeft(), join.getLeft().getTraitSet().replace( EnumerableConvention.INSTANCE ) );
+        final RelNode right = convert( join.getRight(), join.getRight().getTraitSet().replace( EnumerableConvention.INSTANCE ) );
+        try {
+            if ( info.pairs().isEmpty() ) {
+                // The condition on the primary key has been removed, e.g. by constant reduction
+                call.transformTo( EnumerableThetaJoin.create( left, right, join.getCondition(), join.getVariablesSet(), JoinRelType.INNER ) );
+                return;
+            }
+            call.transformTo( create( join, info, left, right, false ) );
+
+            if ( EnumerablePlacementJoin.isMergeable( join.getLeft(), info.leftKeys ) ) {
+                final RelNode sortedLeft = convert( left, left.getTraitSet().replace( collation( info.leftKeys ) ) );
+                final RelNode sortedRight = convert( right, right.getTraitSet().replace( collation( info.rightKeys ) ) );
+                call.transformTo( create( join, info, sortedLeft, sortedRight, true ) );
+            }
+        } catch ( InvalidRelException e ) {
+            EnumerableRules.LOGGER.debug( e.toString() );
+        }
+    }
+
+
+    private RelNode create( LogicalPlacementJoin join, JoinInfo info, RelNode left, RelNode right, boolean merge ) throws InvalidRelException {
+        final RelOptCluster cluster = join.getCluster();
+        final RelNode newRel = EnumerablePlacementJoin.create(
+                left,
+                right,
+                info.getEquiCondition( left, right, cluster.getRexBuilder() ),
+                info.leftKeys,
+                info.rightKeys,
+                merge );
+        if ( !info.isEqui() ) {
+            return new EnumerableFilter( cluster, newRel.getTraitSet(), newRel, info.getRemaining( cluster.getRexBuilder() ) );
+        }
+        return newRel;
+    }
+
+
+    private static RelCollation collation( List<Integer> keys ) {
+        final List<RelFieldCollation> fieldCollations = new ArrayList<>();
+        for ( int key : keys ) {
+            fieldCollations.add( new RelFieldCollation( key, RelFieldCollation.Direction.ASCENDING, RelFieldCollation.NullDirection.LAST ) );
+        }
+        return RelCollations.of( fieldCollations );
+    }
+
+}
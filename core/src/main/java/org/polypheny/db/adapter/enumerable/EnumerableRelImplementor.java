@@ -90,6 +90,7 @@ public class EnumerableRelImplementor extends JavaRelImplementor {
     public final Map<String, Object> map;
     private final Map<String, RexToLixTranslator.InputGetter> corrVars = new HashMap<>();
     private final Map<Object, ParameterExpression> stashedParameters = new IdentityHashMap<>();
+    private int variableCounter = 0;
 
     protected final Function1<String, RexToLixTranslator.InputGetter> allCorrelateVariables = this::getCorrelVariableGetter;
 
@@ -421,6 +422,15 @@ public RexToLixTranslator.InputGetter getCorrelVariableGetter( String name ) {
     }
 
 
+    /**
+     * Returns a variable name which is unique within the generated code. The names only depend on the order in which the
+     * plan is implemented, so implementing the same plan again results in the same code.
+     */
+    public String newVariableName( String prefix ) {
+        return prefix + "_" + variableCounter++;
+    }
+
+
     public EnumerableRel.Result result( PhysType physType, BlockStatement block ) {
         return new EnumerableRel.Result( block, physType, ((PhysTypeImpl) physType).format );
     }
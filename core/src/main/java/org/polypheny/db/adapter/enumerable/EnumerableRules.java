@@ -53,8 +53,12 @@ public class EnumerableRules {
 
     public static final RelOptRule ENUMERABLE_MERGE_JOIN_RULE = new EnumerableMergeJoinRule();
 
+    public static final RelOptRule ENUMERABLE_PLACEMENT_JOIN_RULE = new EnumerablePlacementJoinRule();
+
     public static final RelOptRule ENUMERABLE_SEMI_JOIN_RULE = new EnumerableSemiJoinRule();
 
+    public static final RelOptRule ENUMERABLE_PARALLEL_JOIN_RULE = new EnumerableParallelJoinRule();
+
     public static final RelOptRule ENUMERABLE_CORRELATE_RULE = new EnumerableCorrelateRule( RelFactories.LOGICAL_BUILDER );
 
 
@@ -75,12 +79,16 @@ private EnumerableRules() {
 
     public static final EnumerableAggregateRule ENUMERABLE_AGGREGATE_RULE = new EnumerableAggregateRule();
 
+    public static final EnumerableParallelAggregateRule ENUMERABLE_PARALLEL_AGGREGATE_RULE = new EnumerableParallelAggregateRule();
+
     public static final EnumerableSortRule ENUMERABLE_SORT_RULE = new EnumerableSortRule();
 
     public static final EnumerableLimitRule ENUMERABLE_LIMIT_RULE = new EnumerableLimitRule();
 
     public static final EnumerableUnionRule ENUMERABLE_UNION_RULE = new EnumerableUnionRule();
 
+    public static final EnumerablePartitionUnionRule ENUMERABLE_PARTITION_UNION_RULE = new EnumerablePartitionUnionRule();
+
     public static final EnumerableModifyCollectRule ENUMERABLE_MODIFY_COLLECT_RULE = new EnumerableModifyCollectRule();
 
     public static final EnumerableIntersectRule ENUMERABLE_INTERSECT_RULE = new EnumerableIntersectRule();
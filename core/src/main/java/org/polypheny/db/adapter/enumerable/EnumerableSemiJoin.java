@@ -125,9 +125,9 @@ public RelOptCost computeSelfCost( RelOptPlanner planner, RelMetadataQuery mq )
     public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
         BlockBuilder builder = new BlockBuilder();
         final Result leftResult = implementor.visitChild( this, 0, (EnumerableRel) left, pref );
-        Expression leftExpression = builder.append( "left" + System.nanoTime(), leftResult.block );
+        Expression leftExpression = builder.append( implementor.newVariableName( "left" ), leftResult.block );
         final Result rightResult = implementor.visitChild( this, 1, (EnumerableRel) right, pref );
-        Expression rightExpression = builder.append( "right" + System.nanoTime(), rightResult.block );
+        Expression rightExpression = builder.append( implementor.newVariableName( "right" ), rightResult.block );
         final PhysType physType = leftResult.physType;
         return implementor.result(
                 physType,
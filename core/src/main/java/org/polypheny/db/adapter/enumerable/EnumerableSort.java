@@ -37,14 +37,17 @@
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
+import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.plan.RelOptCluster;
 import org.polypheny.db.plan.RelTraitSet;
 import org.polypheny.db.rel.RelCollation;
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.rel.core.Sort;
+import org.polypheny.db.rel.metadata.RelMdMemory;
 import org.polypheny.db.rex.RexNode;
 import org.polypheny.db.util.BuiltInMethod;
 import org.polypheny.db.util.Pair;
+import org.polypheny.db.util.Util;
 
 
 /**
@@ -91,12 +94,17 @@ public Result implement( EnumerableRelImplementor implementor, Prefer pref ) {
         PhysType inputPhysType = result.physType;
         final Pair<Expression, Expression> pair = inputPhysType.generateCollationKey( collation.getFieldCollations() );
 
+        // Sorted runs are written to temporary files if the rows exceed the memory budget of the query
+        final double rowMemory = RelMdMemory.rowMemory( getInput(), getCluster().getMetadataQuery() );
         builder.add(
                 Expressions.return_( null,
-                        Expressions.call( childExp,
-                                BuiltInMethod.ORDER_BY.method,
-                                Expressions.list( builder.append( "keySelector", pair.left ) )
-                                        .appendIfNotNull( builder.appendIfNotNull( "comparator", pair.right ) ) ) ) );
+                        Expressions.call(
+                                BuiltInMethod.SPILLING_ORDER_BY.method,
+                                childExp,
+                                builder.append( "keySelector", pair.left ),
+                                Util.first( builder.appendIfNotNull( "comparator", pair.right ), Expressions.constant( null ) ),
+                                DataContext.ROOT,
+                                Expressions.constant( (long) rowMemory ) ) ) );
         return implementor.result( physType, builder.toBlock() );
     }
 }
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.ByteArrayClassLoader;
+import org.codehaus.janino.ClassLoaderIClassLoader;
+import org.codehaus.janino.IClassLoader;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.UnitCompiler;
+import org.codehaus.janino.util.ClassFile;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.runtime.ArrayBindable;
+import org.polypheny.db.runtime.Bindable;
+import org.polypheny.db.runtime.Typed;
+import org.polypheny.db.runtime.Utilities;
+import org.polypheny.db.util.FileSystemManager;
+
+
+/**
+ * On-disk cache for the classes generated by {@link EnumerableInterpretable}. Compiling the generated code with Janino
+ * is the most expensive part of implementing a plan; this cache allows to skip it for plans which have already been
+ * implemented before a restart.
+ *
+ * Entries are keyed by a hash over the generated source code and the build of Polypheny-DB. Since the generated code
+ * contains everything derived from the plan and the catalog (e.g., the names of the physical tables), a changed plan
+ * or catalog results in a different key. The directory is only listed at startup; entries are read and validated when
+ * they are requested for the first time. Entries which fail the validation are deleted.
+ *
+ * The number of persisted entries is limited (see {@link RuntimeConfig#IMPLEMENTATION_CACHING_PERSISTENT_SIZE}); if
+ * the limit is exceeded, the least recently used entries are deleted.
+ *
+ * Optionally, the classes of the most frequently used plans of the last run are loaded in the background at startup.
+ */
+@Slf4j
+public class PersistentCodeCache {
+
+    public static final PersistentCodeCache INSTANCE = new PersistentCodeCache();
+
+    private static final int MAGIC = 0x50434331;
+    private static final String SUFFIX = ".class-cache";
+    private static final String WARM_UP_FILE = "warm-up";
+
+    private final File folder;
+    private final String buildId;
+
+    // Keys of the entries stored on disk and the time they have been used for the last time
+    private final Map<String, Long> persistedKeys = new ConcurrentHashMap<>();
+    // Entries which have been loaded or compiled in this run
+    private final Cache<String, LoadedEntry> loaded = CacheBuilder.newBuilder().softValues().build();
+    // Key of every class created by this cache
+    private final Map<Class<?>, String> keysByClass = Collections.synchronizedMap( new WeakHashMap<>() );
+
+    private final AtomicLong compiledCounter = new AtomicLong();
+    private final AtomicLong loadedCounter = new AtomicLong();
+    private final AtomicLong invalidCounter = new AtomicLong();
+
+
+    private PersistentCodeCache() {
+        this( FileSystemManager.getInstance().registerNewFolder( "codecache" ) );
+    }
+
+
+    PersistentCodeCache( File folder ) {
+        this.folder = folder;
+        buildId = computeBuildId();
+        File[] files = folder.listFiles( ( dir, name ) -> name.endsWith( SUFFIX ) );
+        if ( files != null ) {
+            for ( File file : files ) {
+                String name = file.getName();
+                persistedKeys.put( name.substring( 0, name.length() - SUFFIX.length() ), file.lastModified() );
+            }
+        }
+    }
+
+
+    /**
+     * Returns an instance of the class for the given generated code, either from the cache or by compiling it.
+     */
+    Bindable getBindable( String className, String source, int fieldCount ) throws CompileException, IOException {
+        String key = computeKey( className, source, fieldCount );
+        LoadedEntry entry = loaded.getIfPresent( key );
+        if ( entry == null && persistedKeys.containsKey( key ) ) {
+            entry = read( key );
+        }
+        if ( entry != null && entry.matches( className, source, fieldCount ) ) {
+            touch( key );
+            return entry.newInstance();
+        }
+
+        Map<String, byte[]> classes = compile( className, source, fieldCount );
+        compiledCounter.incrementAndGet();
+
+        Class<?> clazz;
+        try {
+            clazz = define( className, classes );
+        } catch ( ClassNotFoundException e ) {
+            throw new IOException( e );
+        }
+        entry = new LoadedEntry( className, source, fieldCount, clazz );
+        loaded.put( key, entry );
+        keysByClass.put( clazz, key );
+        try {
+            write( key, entry, classes );
+            evict();
+        } catch ( IOException e ) {
+            log.warn( "Unable to persist generated code", e );
+        }
+        return entry.newInstance();
+    }
+
+
+    /**
+     * @return the key of the entry the class of the specified bindable has been created from, or null if the class
+     * has not been created by this cache
+     */
+    public String getKey( Bindable bindable ) {
+        return keysByClass.get( bindable.getClass() );
+    }
+
+
+    /**
+     * Stores the keys of the entries which are loaded at the next startup.
+     */
+    public void storeWarmUpKeys( List<String> keys ) {
+        File file = new File( folder, WARM_UP_FILE );
+        try {
+            Files.write( file.toPath(), keys, StandardCharsets.UTF_8 );
+        } catch ( IOException e ) {
+            log.warn( "Unable to store warm-up list of the code cache", e );
+        }
+    }
+
+
+    /**
+     * Loads the classes of the entries listed in the warm-up list in a background thread.
+     */
+    public void warmUp() {
+        int limit = RuntimeConfig.IMPLEMENTATION_CACHING_WARM_UP.getInteger();
+        File file = new File( folder, WARM_UP_FILE );
+        if ( !RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT.getBoolean() || limit <= 0 || !file.exists() ) {
+            return;
+        }
+        Thread thread = new Thread( () -> {
+            try {
+                List<String> keys = Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 );
+                for ( String key : keys.subList( 0, Math.min( limit, keys.size() ) ) ) {
+                    if ( persistedKeys.containsKey( key ) && loaded.getIfPresent( key ) == null ) {
+                        read( key );
+                    }
+                }
+            } catch ( IOException e ) {
+                log.warn( "Unable to read warm-up list of the code cache", e );
+            }
+        }, "CodeCacheWarmUp" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+
+    /**
+     * Deletes all persisted entries.
+     */
+    public void reset() {
+        loaded.invalidateAll();
+        for ( String key : persistedKeys.keySet() ) {
+            getFile( key ).delete();
+        }
+        persistedKeys.clear();
+        compiledCounter.set( 0 );
+        loadedCounter.set( 0 );
+        invalidCounter.set( 0 );
+    }
+
+
+    public int getNumberOfEntries() {
+        return persistedKeys.size();
+    }
+
+
+    /**
+     * @return the number of classes compiled in this run
+     */
+    public long getCompiledCount() {
+        return compiledCounter.get();
+    }
+
+
+    /**
+     * @return the number of classes loaded from disk in this run
+     */
+    public long getLoadedCount() {
+        return loadedCounter.get();
+    }
+
+
+    /**
+     * @return the number of entries on disk which have been discarded because they failed the validation
+     */
+    public long getInvalidCount() {
+        return invalidCounter.get();
+    }
+
+
+    private LoadedEntry read( String key ) {
+        File file = getFile( key );
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) ) {
+            if ( in.readInt() != MAGIC || !in.readUTF().equals( buildId ) ) {
+                throw new IOException( "Entry has been written by a different build" );
+            }
+            String className = in.readUTF();
+            int fieldCount = in.readInt();
+            String source = new String( readBytes( in ), StandardCharsets.UTF_8 );
+            if ( !key.equals( computeKey( className, source, fieldCount ) ) ) {
+                throw new IOException( "Key does not match the content" );
+            }
+            int numberOfClasses = in.readInt();
+            Map<String, byte[]> classes = new HashMap<>();
+            for ( int i = 0; i < numberOfClasses; i++ ) {
+                classes.put( in.readUTF(), readBytes( in ) );
+            }
+
+            Class<?> clazz = define( className, classes );
+            if ( !Bindable.class.isAssignableFrom( clazz ) ) {
+                throw new IOException( "Unexpected class: " + clazz );
+            }
+
+            LoadedEntry entry = new LoadedEntry( className, source, fieldCount, clazz );
+            loaded.put( key, entry );
+            keysByClass.put( clazz, key );
+            loadedCounter.incrementAndGet();
+            return entry;
+        } catch ( IOException | ClassNotFoundException | LinkageError | RuntimeException e ) {
+            log.debug( "Discarding entry {} of the code cache", key, e );
+            invalidCounter.incrementAndGet();
+            persistedKeys.remove( key );
+            file.delete();
+            return null;
+        }
+    }
+
+
+    private void write( String key, LoadedEntry entry, Map<String, byte[]> classes ) throws IOException {
+        File tmp = new File( folder, key + ".tmp" );
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) ) ) {
+            out.writeInt( MAGIC );
+            out.writeUTF( buildId );
+            out.writeUTF( entry.className );
+            out.writeInt( entry.fieldCount );
+            writeBytes( out, entry.source.getBytes( StandardCharsets.UTF_8 ) );
+            out.writeInt( classes.size() );
+            for ( Map.Entry<String, byte[]> c : classes.entrySet() ) {
+                out.writeUTF( c.getKey() );
+                writeBytes( out, c.getValue() );
+            }
+        }
+        Files.move( tmp.toPath(), getFile( key ).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        persistedKeys.put( key, System.currentTimeMillis() );
+    }
+
+
+    /**
+     * Records the use of a persisted entry. The modification time of the file is updated, so that the order of use is
+     * retained across restarts.
+     */
+    private void touch( String key ) {
+        long now = System.currentTimeMillis();
+        Long previous = persistedKeys.computeIfPresent( key, ( k, time ) -> now );
+        if ( previous != null ) {
+            getFile( key ).setLastModified( now );
+        }
+    }
+
+
+    /**
+     * Deletes the least recently used entries if there are more entries than allowed. To avoid sorting the entries for
+     * every compiled class, a tenth of the entries is deleted at once.
+     */
+    private synchronized void evict() {
+        int limit = Math.max( 1, RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT_SIZE.getInteger() );
+        if ( persistedKeys.size() <= limit ) {
+            return;
+        }
+        int target = limit - limit / 10;
+        List<Map.Entry<String, Long>> entries = new ArrayList<>( persistedKeys.entrySet() );
+        entries.sort( Map.Entry.comparingByValue() );
+        for ( Map.Entry<String, Long> entry : entries.subList( 0, Math.max( 0, entries.size() - target ) ) ) {
+            persistedKeys.remove( entry.getKey() );
+            getFile( entry.getKey() ).delete();
+        }
+    }
+
+
+    /**
+     * Compiles the class body with the same settings the class body evaluator of {@link EnumerableInterpretable} uses,
+     * but keeps the byte code of the compiled classes.
+     */
+    private static Map<String, byte[]> compile( String className, String source, int fieldCount ) throws CompileException, IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "public class " ).append( className )
+                .append( " extends " ).append( Utilities.class.getCanonicalName() )
+                .append( " implements " );
+        Class<?>[] interfaces = getInterfaces( fieldCount );
+        for ( int i = 0; i < interfaces.length; i++ ) {
+            sb.append( i > 0 ? ", " : "" ).append( interfaces[i].getCanonicalName() );
+        }
+        sb.append( " {\n" ).append( source ).append( "\n}\n" );
+
+        Java.CompilationUnit unit = new Parser( new Scanner( null, new StringReader( sb.toString() ) ) ).parseCompilationUnit();
+        IClassLoader classLoader = new ClassLoaderIClassLoader( EnumerableInterpretable.class.getClassLoader() );
+        Map<String, byte[]> classes = new HashMap<>();
+        for ( ClassFile classFile : new UnitCompiler( unit, classLoader ).compileUnit( false, false, false ) ) {
+            classes.put( classFile.getThisClassName(), classFile.toByteArray() );
+        }
+        return classes;
+    }
+
+
+    private static Class<?> define( String className, Map<String, byte[]> classes ) throws ClassNotFoundException {
+        return new ByteArrayClassLoader( classes, EnumerableInterpretable.class.getClassLoader() ).loadClass( className );
+    }
+
+
+    private File getFile( String key ) {
+        return new File( folder, key + SUFFIX );
+    }
+
+
+    private String computeKey( String className, String source, int fieldCount ) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( (buildId + "\n" + className + "\n" + fieldCount + "\n").getBytes( StandardCharsets.UTF_8 ) );
+            byte[] hash = digest.digest( source.getBytes( StandardCharsets.UTF_8 ) );
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : hash ) {
+                sb.append( String.format( "%02x", b ) );
+            }
+            return sb.toString();
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    /**
+     * The generated code is linked against the runtime classes of this build. Entries written by a different build are
+     * therefore discarded.
+     */
+    private static String computeBuildId() {
+        String id = System.getProperty( "java.specification.version" );
+        try {
+            File location = new File( EnumerableInterpretable.class.getProtectionDomain().getCodeSource().getLocation().toURI() );
+            id += ":" + location.length() + ":" + location.lastModified();
+        } catch ( Exception e ) {
+            log.debug( "Unable to determine the location of the runtime classes", e );
+        }
+        return id;
+    }
+
+
+    private static Class<?>[] getInterfaces( int fieldCount ) {
+        return fieldCount == 1
+                ? new Class[]{ Bindable.class, Typed.class }
+                : new Class[]{ ArrayBindable.class };
+    }
+
+
+    private static byte[] readBytes( DataInputStream in ) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully( bytes );
+        return bytes;
+    }
+
+
+    private static void writeBytes( DataOutputStream out, byte[] bytes ) throws IOException {
+        out.writeInt( bytes.length );
+        out.write( bytes );
+    }
+
+
+    private static class LoadedEntry {
+
+        private final String className;
+        private final String source;
+        private final int fieldCount;
+        private final Class<?> clazz;
+
+
+        private LoadedEntry( String className, String source, int fieldCount, Class<?> clazz ) {
+            this.className = className;
+            this.source = source;
+            this.fieldCount = fieldCount;
+            this.clazz = clazz;
+        }
+
+
+        boolean matches( String className, String source, int fieldCount ) {
+            return this.fieldCount == fieldCount && this.className.equals( className ) && this.source.equals( source );
+        }
+
+
+        Bindable newInstance() throws IOException {
+            try {
+                return (Bindable) clazz.newInstance();
+            } catch ( InstantiationException | IllegalAccessException e ) {
+                throw new IOException( e );
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.index;
+
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+import org.polypheny.db.catalog.entity.CatalogSchema;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.rel.core.Values;
+import org.polypheny.db.rel.exceptions.ConstraintViolationException;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.rex.RexLiteral;
+import org.polypheny.db.tools.RelBuilder;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.util.Pair;
+
+
+/**
+ * Thread-safe in-memory hash index with multi-version concurrency control. Supports unique and non-unique indexes.
+ *
+ * Tuples are stored as compact {@link IndexKey}s. Every committed key references a chain of versions. A commit installs
+ * a new version for all keys modified by the transaction and then publishes its version number, which makes the whole
+ * transaction visible at once. Lookups do not acquire any locks: they read the versions visible at the published
+ * version number at the beginning of the lookup. Outdated versions are pruned right after a commit; lookups which
+ * overlapped with pruning are repeated.
+ *
+ * Like the copy-on-write indexes, changes of a transaction become visible to the transaction itself when the barrier
+ * is invoked and to all other transactions when it commits.
+ */
+class ConcurrentHashIndex extends Index {
+
+    static final String METHOD = "concurrent_hash";
+
+    // Number of lock-free attempts of a lookup before it is executed while holding the commit lock
+    private static final int MAX_OPTIMISTIC_READS = 3;
+
+    private final boolean unique;
+
+    private final ConcurrentHashMap<IndexKey, Version> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PolyXid, TransactionState> transactions = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean initialized = false;
+
+    private final Object commitLock = new Object();
+    // Written while holding the commit lock
+    private volatile long visibleVersion = 0;
+    private volatile long prunedVersion = 0;
+
+
+    ConcurrentHashIndex(
+            final long id,
+            final String name,
+            final boolean unique,
+            final CatalogSchema schema,
+            final CatalogTable table,
+            final List<String> columns,
+            final List<String> targetColumns ) {
+        this.id = id;
+        this.name = name;
+        this.unique = unique;
+        this.schema = schema;
+        this.table = table;
+        this.columns = ImmutableList.copyOf( columns );
+        this.targetColumns = ImmutableList.copyOf( targetColumns );
+    }
+
+
+    @Override
+    public String getMethod() {
+        return METHOD;
+    }
+
+
+    @Override
+    public boolean isUnique() {
+        return unique;
+    }
+
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+
+    private TransactionState begin( PolyXid xid ) {
+        TransactionState state = transactions.get( xid );
+        if ( state == null ) {
+            state = new TransactionState();
+            if ( transactions.putIfAbsent( xid, state ) == null ) {
+                IndexManager.getInstance().begin( xid, this );
+            } else {
+                state = transactions.get( xid );
+            }
+        }
+        return state;
+    }
+
+
+    @Override
+    public void barrier( PolyXid xid ) {
+        TransactionState state = transactions.get( xid );
+        if ( state == null ) {
+            return;
+        }
+        synchronized ( state ) {
+            for ( Operation operation : state.pending ) {
+                Change change = state.changes.computeIfAbsent( operation.key, k -> new Change() );
+                if ( operation.insert ) {
+                    if ( unique && visible( operation.key, change, read( snapshot -> committed( operation.key, snapshot ) ) ).length > 0 ) {
+                        throw new ConstraintViolationException(
+                                String.format( "Attempt to add duplicate key [%s] to unique index %s", operation.key, name ) );
+                    }
+                    change.add( operation.primary );
+                } else if ( operation.primary == null || unique ) {
+                    change.removeAll();
+                } else {
+                    change.remove( operation.primary );
+                }
+            }
+            state.pending.clear();
+        }
+    }
+
+
+    @Override
+    void commit( PolyXid xid ) {
+        TransactionState state = transactions.remove( xid );
+        if ( state == null ) {
+            return;
+        }
+        synchronized ( state ) {
+            if ( state.pending.size() > 0 ) {
+                throw new IllegalStateException( "Attempted index commit without invoking barrier first" );
+            }
+            apply( state.changes );
+        }
+    }
+
+
+    @Override
+    void rollback( PolyXid xid ) {
+        transactions.remove( xid );
+    }
+
+
+    /**
+     * Installs a new version for all changed keys and makes them visible.
+     */
+    private void apply( Map<IndexKey, Change> changes ) {
+        if ( changes.isEmpty() ) {
+            return;
+        }
+        synchronized ( commitLock ) {
+            final long version = visibleVersion + 1;
+            for ( Map.Entry<IndexKey, Change> entry : changes.entrySet() ) {
+                index.compute( entry.getKey(), ( key, head ) -> {
+                    IndexKey[] before = head == null ? Version.EMPTY : head.primaries;
+                    IndexKey[] after = entry.getValue().applyTo( before );
+                    size.addAndGet( (after.length > 0 ? 1 : 0) - (before.length > 0 ? 1 : 0) );
+                    return new Version( version, after, head );
+                } );
+            }
+            visibleVersion = version;
+
+            // Prune the versions which are no longer visible to new lookups
+            prunedVersion = version;
+            for ( IndexKey key : changes.keySet() ) {
+                Version head = index.get( key );
+                if ( head.primaries.length == 0 ) {
+                    index.remove( key, head );
+                } else {
+                    head.previous = null;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Executes a lookup on the committed state at a consistent version.
+     */
+    private <T> T read( LongFunction<T> lookup ) {
+        for ( int i = 0; i < MAX_OPTIMISTIC_READS; i++ ) {
+            final long snapshot = visibleVersion;
+            T result = lookup.apply( snapshot );
+            if ( prunedVersion <= snapshot ) {
+                return result;
+            }
+            // A commit has pruned versions which might have been required by the lookup
+        }
+        synchronized ( commitLock ) {
+            return lookup.apply( visibleVersion );
+        }
+    }
+
+
+    /**
+     * @return the primaries of the key committed at the specified version
+     */
+    private IndexKey[] committed( IndexKey key, long snapshot ) {
+        Version version = index.get( key );
+        while ( version != null && version.version > snapshot ) {
+            version = version.previous;
+        }
+        return version == null ? Version.EMPTY : version.primaries;
+    }
+
+
+    private static IndexKey[] visible( IndexKey key, Change change, IndexKey[] committed ) {
+        return change == null ? committed : change.applyTo( committed );
+    }
+
+
+    /**
+     * @return the changes of the transaction which are visible to itself, i.e. the changes before the last barrier
+     */
+    private Map<IndexKey, Change> getVisibleChanges( PolyXid xid ) {
+        TransactionState state = transactions.get( xid );
+        if ( state == null ) {
+            return Collections.emptyMap();
+        }
+        synchronized ( state ) {
+            Map<IndexKey, Change> copy = new HashMap<>( state.changes.size() );
+            state.changes.forEach( ( key, change ) -> copy.put( key, change.copy() ) );
+            return copy;
+        }
+    }
+
+
+    @Override
+    public boolean contains( PolyXid xid, List<Object> value ) {
+        return containsAny( xid, Collections.singletonList( value ) );
+    }
+
+
+    @Override
+    public boolean containsAny( PolyXid xid, Iterable<List<Object>> values ) {
+        final Map<IndexKey, Change> changes = getVisibleChanges( xid );
+        final List<IndexKey> keys = toKeys( values );
+        return read( snapshot -> {
+            for ( IndexKey key : keys ) {
+                if ( visible( key, changes.get( key ), committed( key, snapshot ) ).length > 0 ) {
+                    return true;
+                }
+            }
+            return false;
+        } );
+    }
+
+
+    @Override
+    public boolean containsAll( PolyXid xid, Iterable<List<Object>> values ) {
+        final Map<IndexKey, Change> changes = getVisibleChanges( xid );
+        final List<IndexKey> keys = toKeys( values );
+        return read( snapshot -> {
+            for ( IndexKey key : keys ) {
+                if ( visible( key, changes.get( key ), committed( key, snapshot ) ).length == 0 ) {
+                    return false;
+                }
+            }
+            return true;
+        } );
+    }
+
+
+    @Override
+    public Values getAsValues( PolyXid xid, RelBuilder builder, RelDataType rowType ) {
+        final Map<IndexKey, Change> changes = getVisibleChanges( xid );
+        final Map<IndexKey, Integer> counts = read( snapshot -> {
+            Map<IndexKey, Integer> result = new LinkedHashMap<>( index.size() + changes.size() );
+            for ( IndexKey key : index.keySet() ) {
+                int count = visible( key, changes.get( key ), committed( key, snapshot ) ).length;
+                if ( count > 0 ) {
+                    result.put( key, count );
+                }
+            }
+            for ( Map.Entry<IndexKey, Change> entry : changes.entrySet() ) {
+                if ( !result.containsKey( entry.getKey() ) ) {
+                    int count = visible( entry.getKey(), entry.getValue(), committed( entry.getKey(), snapshot ) ).length;
+                    if ( count > 0 ) {
+                        result.put( entry.getKey(), count );
+                    }
+                }
+            }
+            return result;
+        } );
+        return buildValues( builder, rowType, counts );
+    }
+
+
+    @Override
+    public Values getAsValues( PolyXid xid, RelBuilder builder, RelDataType rowType, List<Object> key ) {
+        final IndexKey indexKey = IndexKey.of( key );
+        final Change change = getVisibleChanges( xid ).get( indexKey );
+        final int count = read( snapshot -> visible( indexKey, change, committed( indexKey, snapshot ) ).length );
+        return buildValues( builder, rowType, Collections.singletonMap( indexKey, count ) );
+    }
+
+
+    private Values buildValues( RelBuilder builder, RelDataType rowType, Map<IndexKey, Integer> counts ) {
+        final RexBuilder rexBuilder = builder.getRexBuilder();
+        final List<ImmutableList<RexLiteral>> tuples = new ArrayList<>( counts.size() );
+        for ( Map.Entry<IndexKey, Integer> entry : counts.entrySet() ) {
+            // Non-unique indexes return a row per primary key
+            for ( int i = 0; i < entry.getValue(); i++ ) {
+                tuples.add( makeRexRow( rowType, rexBuilder, entry.getKey().toList() ) );
+            }
+        }
+        return (Values) builder.values( ImmutableList.copyOf( tuples ), rowType ).build();
+    }
+
+
+    @Override
+    Map<List<Object>, List<List<Object>>> getRaw() {
+        return read( snapshot -> {
+            Map<List<Object>, List<List<Object>>> raw = new HashMap<>();
+            for ( IndexKey key : index.keySet() ) {
+                IndexKey[] primaries = committed( key, snapshot );
+                if ( primaries.length > 0 ) {
+                    List<List<Object>> list = new ArrayList<>( primaries.length );
+                    for ( IndexKey primary : primaries ) {
+                        list.add( primary.toList() );
+                    }
+                    raw.put( key.toList(), list );
+                }
+            }
+            return raw;
+        } );
+    }
+
+
+    @Override
+    protected void clear() {
+        synchronized ( commitLock ) {
+            index.clear();
+            transactions.clear();
+            size.set( 0 );
+            initialized = false;
+        }
+    }
+
+
+    @Override
+    boolean isInitialized() {
+        return initialized;
+    }
+
+
+    @Override
+    void initialize() {
+        initialized = true;
+    }
+
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+
+    @Override
+    public void insert( PolyXid xid, List<Object> key, List<Object> primary ) {
+        insertAll( xid, Collections.singletonList( new Pair<>( key, primary ) ) );
+    }
+
+
+    @Override
+    public void insertAll( PolyXid xid, Iterable<Pair<List<Object>, List<Object>>> values ) {
+        TransactionState state = begin( xid );
+        synchronized ( state ) {
+            for ( Pair<List<Object>, List<Object>> value : values ) {
+                state.pending.add( new Operation( true, IndexKey.of( value.left ), IndexKey.of( value.right ) ) );
+            }
+        }
+    }
+
+
+    @Override
+    public void delete( PolyXid xid, List<Object> key ) {
+        deleteAll( xid, Collections.singletonList( key ) );
+    }
+
+
+    @Override
+    public void deleteAll( PolyXid xid, Iterable<List<Object>> values ) {
+        TransactionState state = begin( xid );
+        synchronized ( state ) {
+            for ( List<Object> value : values ) {
+                state.pending.add( new Operation( false, IndexKey.of( value ), null ) );
+            }
+        }
+    }
+
+
+    @Override
+    void deletePrimary( PolyXid xid, List<Object> key, List<Object> primary ) {
+        deleteAllPrimary( xid, Collections.singletonList( new Pair<>( key, primary ) ) );
+    }
+
+
+    @Override
+    public void deleteAllPrimary( PolyXid xid, Iterable<Pair<List<Object>, List<Object>>> values ) {
+        TransactionState state = begin( xid );
+        synchronized ( state ) {
+            for ( Pair<List<Object>, List<Object>> value : values ) {
+                state.pending.add( new Operation( false, IndexKey.of( value.left ), value.right == null ? null : IndexKey.of( value.right ) ) );
+            }
+        }
+    }
+
+
+    @Override
+    void insert( List<Object> key, List<Object> primary ) {
+        insertAll( Collections.singletonList( new Pair<>( key, primary ) ) );
+    }
+
+
+    @Override
+    void insertAll( Iterable<Pair<List<Object>, List<Object>>> values ) {
+        Map<IndexKey, Change> changes = new HashMap<>();
+        for ( Pair<List<Object>, List<Object>> value : values ) {
+            changes.computeIfAbsent( IndexKey.of( value.left ), k -> new Change() ).add( IndexKey.of( value.right ) );
+        }
+        apply( changes );
+    }
+
+
+    @Override
+    void delete( List<Object> key ) {
+        deleteAll( Collections.singletonList( key ) );
+    }
+
+
+    @Override
+    void deleteAll( Iterable<List<Object>> values ) {
+        Map<IndexKey, Change> changes = new HashMap<>();
+        for ( List<Object> value : values ) {
+            changes.computeIfAbsent( IndexKey.of( value ), k -> new Change() ).removeAll();
+        }
+        apply( changes );
+    }
+
+
+    @Override
+    void deletePrimary( List<Object> key, List<Object> primary ) {
+        Change change = new Change();
+        if ( unique ) {
+            change.removeAll();
+        } else {
+            change.remove( IndexKey.of( primary ) );
+        }
+        apply( Collections.singletonMap( IndexKey.of( key ), change ) );
+    }
+
+
+    private static List<IndexKey> toKeys( Iterable<List<Object>> values ) {
+        List<IndexKey> keys = new ArrayList<>();
+        for ( List<Object> value : values ) {
+            keys.add( IndexKey.of( value ) );
+        }
+        return keys;
+    }
+
+
+    /**
+     * A committed state of a key.
+     */
+    private static final class Version {
+
+        static final IndexKey[] EMPTY = new IndexKey[0];
+
+        final long version;
+        final IndexKey[] primaries;
+        volatile Version previous;
+
+
+        Version( long version, IndexKey[] primaries, Version previous ) {
+            this.version = version;
+            this.primaries = primaries;
+            this.previous = previous;
+        }
+
+    }
+
+
+    /**
+     * The changes of a transaction to the primaries of a key.
+     */
+    private static final class Change {
+
+        private boolean removeAll = false;
+        private final Set<IndexKey> removed = new LinkedHashSet<>();
+        private final Set<IndexKey> added = new LinkedHashSet<>();
+
+
+        void add( IndexKey primary ) {
+            removed.remove( primary );
+            added.add( primary );
+        }
+
+
+        void remove( IndexKey primary ) {
+            added.remove( primary );
+            removed.add( primary );
+        }
+
+
+        void removeAll() {
+            removeAll = true;
+            removed.clear();
+            added.clear();
+        }
+
+
+        IndexKey[] applyTo( IndexKey[] primaries ) {
+            Set<IndexKey> result = new LinkedHashSet<>();
+            if ( !removeAll ) {
+                result.addAll( Arrays.asList( primaries ) );
+                result.removeAll( removed );
+            }
+            result.addAll( added );
+            return result.isEmpty() ? Version.EMPTY : result.toArray( new IndexKey[0] );
+        }
+
+
+        Change copy() {
+            Change copy = new Change();
+            copy.removeAll = removeAll;
+            copy.removed.addAll( removed );
+            copy.added.addAll( added );
+            return copy;
+        }
+
+    }
+
+
+    private static final class Operation {
+
+        final boolean insert;
+        final IndexKey key;
+        final IndexKey primary; // null deletes all primaries of the key
+
+
+        Operation( boolean insert, IndexKey key, IndexKey primary ) {
+            this.insert = insert;
+            this.key = key;
+            this.primary = primary;
+        }
+
+    }
+
+
+    private static final class TransactionState {
+
+        // Operations which are not yet visible to the transaction
+        final List<Operation> pending = new ArrayList<>();
+        // Changes which are visible to the transaction
+        final Map<IndexKey, Change> changes = new HashMap<>();
+
+    }
+
+
+    static class Factory implements IndexFactory {
+
+        @Override
+        public boolean canProvide( String method, Boolean unique, Boolean persistent ) {
+            return METHOD.equals( method ) && (persistent == null || !persistent);
+        }
+
+
+        @Override
+        public Index create(
+                long id,
+                String name,
+                String method,
+                Boolean unique,
+                Boolean persistent,
+                CatalogSchema schema,
+                CatalogTable table,
+                List<String> columns,
+                List<String> targetColumns ) {
+            return new ConcurrentHashIndex( id, name, unique == null || unique, schema, table, columns, targetColumns );
+        }
+
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.index;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Compact, immutable representation of an index tuple. Tuples consisting of values of the common primitive types,
+ * strings and decimals are encoded into a single byte array. Tuples containing values of other types keep a copy of
+ * the values instead.
+ *
+ * Two keys are equal if and only if the lists they have been created from are equal.
+ */
+final class IndexKey {
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte INTEGER = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte DECIMAL = 10;
+
+    private final byte[] bytes;
+    private final Object[] values; // Only used if the tuple cannot be encoded
+    private final int hash;
+
+
+    private IndexKey( byte[] bytes, Object[] values ) {
+        this.bytes = bytes;
+        this.values = values;
+        this.hash = bytes != null ? Arrays.hashCode( bytes ) : Arrays.hashCode( values );
+    }
+
+
+    static IndexKey of( List<Object> tuple ) {
+        // Compute the size of the encoded tuple
+        int size = 0;
+        for ( Object value : tuple ) {
+            if ( value == null || value instanceof Boolean ) {
+                size += 1;
+            } else if ( value instanceof Byte ) {
+                size += 2;
+            } else if ( value instanceof Short ) {
+                size += 3;
+            } else if ( value instanceof Integer || value instanceof Float ) {
+                size += 5;
+            } else if ( value instanceof Long || value instanceof Double ) {
+                size += 9;
+            } else if ( value instanceof String ) {
+                // Upper bound, the exact length is only known after encoding
+                size += 5 + ((String) value).length() * 3;
+            } else if ( value instanceof BigDecimal ) {
+                size += 9 + ((BigDecimal) value).unscaledValue().bitLength() / 8 + 1;
+            } else {
+                return new IndexKey( null, tuple.toArray() );
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate( size );
+        for ( Object value : tuple ) {
+            if ( value == null ) {
+                buffer.put( NULL );
+            } else if ( value instanceof Boolean ) {
+                buffer.put( (Boolean) value ? TRUE : FALSE );
+            } else if ( value instanceof Byte ) {
+                buffer.put( BYTE ).put( (Byte) value );
+            } else if ( value instanceof Short ) {
+                buffer.put( SHORT ).putShort( (Short) value );
+            } else if ( value instanceof Integer ) {
+                buffer.put( INTEGER ).putInt( (Integer) value );
+            } else if ( value instanceof Long ) {
+                buffer.put( LONG ).putLong( (Long) value );
+            } else if ( value instanceof Float ) {
+                // Same semantics as Float.equals()
+                buffer.put( FLOAT ).putInt( Float.floatToIntBits( (Float) value ) );
+            } else if ( value instanceof Double ) {
+                // Same semantics as Double.equals()
+                buffer.put( DOUBLE ).putLong( Double.doubleToLongBits( (Double) value ) );
+            } else if ( value instanceof String ) {
+                byte[] string = ((String) value).getBytes( StandardCharsets.UTF_8 );
+                buffer.put( STRING ).putInt( string.length ).put( string );
+            } else {
+                // Like BigDecimal.equals(), the scale is part of the value
+                BigDecimal decimal = (BigDecimal) value;
+                byte[] unscaled = decimal.unscaledValue().toByteArray();
+                buffer.put( DECIMAL ).putInt( decimal.scale() ).putInt( unscaled.length ).put( unscaled );
+            }
+        }
+        return new IndexKey( Arrays.copyOf( buffer.array(), buffer.position() ), null );
+    }
+
+
+    /**
+     * @return the values of the tuple
+     */
+    List<Object> toList() {
+        if ( bytes == null ) {
+            return Collections.unmodifiableList( Arrays.asList( values ) );
+        }
+        List<Object> tuple = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        while ( buffer.hasRemaining() ) {
+            byte tag = buffer.get();
+            switch ( tag ) {
+                case NULL:
+                    tuple.add( null );
+                    break;
+                case FALSE:
+                    tuple.add( false );
+                    break;
+                case TRUE:
+                    tuple.add( true );
+                    break;
+                case BYTE:
+                    tuple.add( buffer.get() );
+                    break;
+                case SHORT:
+                    tuple.add( buffer.getShort() );
+                    break;
+                case INTEGER:
+                    tuple.add( buffer.getInt() );
+                    break;
+                case LONG:
+                    tuple.add( buffer.getLong() );
+                    break;
+                case FLOAT:
+                    tuple.add( Float.intBitsToFloat( buffer.getInt() ) );
+                    break;
+                case DOUBLE:
+                    tuple.add( Double.longBitsToDouble( buffer.getLong() ) );
+                    break;
+                case STRING: {
+                    byte[] string = new byte[buffer.getInt()];
+                    buffer.get( string );
+                    tuple.add( new String( string, StandardCharsets.UTF_8 ) );
+                    break;
+                }
+                case DECIMAL: {
+                    int scale = buffer.getInt();
+                    byte[] unscaled = new byte[buffer.getInt()];
+                    buffer.get( unscaled );
+                    tuple.add( new BigDecimal( new BigInteger( unscaled ), scale ) );
+                    break;
+                }
+                default:
+                    throw new IllegalStateException( "Unknown type tag: " + tag );
+            }
+        }
+        return tuple;
+    }
+
+
+    @Override
+    public boolean equals( Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !(o instanceof IndexKey) ) {
+            return false;
+        }
+        IndexKey that = (IndexKey) o;
+        return hash == that.hash && Arrays.equals( bytes, that.bytes ) && Arrays.equals( values, that.values );
+    }
+
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+}
@@ -20,11 +20,11 @@
 import com.google.common.collect.ImmutableList;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.polypheny.db.adapter.DataStore.AvailableIndexMethod;
@@ -69,12 +69,13 @@ public class IndexManager {
 
     private static final List<IndexFactory> INDEX_FACTORIES = Arrays.asList(
             new CoWHashIndex.Factory(),
-            new CowMultiHashIndex.Factory()
+            new CowMultiHashIndex.Factory(),
+            new ConcurrentHashIndex.Factory()
     );
 
-    private final Map<Long, Index> indexById = new HashMap<>();
-    private final Map<String, Index> indexByName = new HashMap<>();
-    private final Map<PolyXid, List<Index>> openTransactions = new HashMap<>();
+    private final Map<Long, Index> indexById = new ConcurrentHashMap<>();
+    private final Map<String, Index> indexByName = new ConcurrentHashMap<>();
+    private final Map<PolyXid, List<Index>> openTransactions = new ConcurrentHashMap<>();
     private TransactionManager transactionManager = null;
 
 
@@ -90,7 +91,8 @@ private IndexManager() {
 
     public static List<AvailableIndexMethod> getAvailableIndexMethods() {
         return ImmutableList.of(
-                new AvailableIndexMethod( "hash", "HASH" )
+                new AvailableIndexMethod( "hash", "HASH" ),
+                new AvailableIndexMethod( ConcurrentHashIndex.METHOD, "CONCURRENT HASH" )
         );
     }
 
@@ -101,10 +103,7 @@ public static AvailableIndexMethod getDefaultIndexMethod() {
 
 
     void begin( PolyXid xid, Index index ) {
-        if ( !openTransactions.containsKey( xid ) ) {
-            openTransactions.put( xid, new ArrayList<>() );
-        }
-        openTransactions.get( xid ).add( index );
+        openTransactions.computeIfAbsent( xid, k -> new CopyOnWriteArrayList<>() ).add( index );
     }
 
 
@@ -22,6 +22,8 @@
 import java.util.List;
 import java.util.Optional;
 import org.polypheny.db.config.Config.ConfigListener;
+import org.polypheny.db.transaction.DeadlockDetectionMode;
+import org.polypheny.db.transaction.DeadlockVictimSelection;
 import org.polypheny.db.util.background.BackgroundTask;
 
 
@@ -147,6 +149,66 @@ public enum RuntimeConfig {
             ConfigType.BOOLEAN,
             "runtimExecutionGroup" ),
 
+    PARALLEL_COMMIT( "runtime/parallelCommit",
+            "Prepare and commit the data stores involved in a transaction in parallel.",
+            true,
+            ConfigType.BOOLEAN,
+            "runtimExecutionGroup" ),
+
+    GROUP_COMMIT( "runtime/groupCommit",
+            "Coalesce concurrent commits on the same data store. Transactions waiting for a data store which supports it are committed together.",
+            false,
+            ConfigType.BOOLEAN,
+            "runtimExecutionGroup" ),
+
+    BATCH_SIZE( "runtime/batchSize",
+            "Maximum number of parameter sets of a JDBC batch which are executed together. Larger batches are split into chunks of this size.",
+            1000,
+            ConfigType.INTEGER,
+            "runtimExecutionGroup" ),
+
+    FINE_GRAINED_LOCKING( "runtime/fineGrainedLocking",
+            "Lock only the affected partitions or key ranges for data manipulation statements whose affected primary keys can be determined from the query.",
+            true,
+            ConfigType.BOOLEAN,
+            "lockingGroup" ),
+
+    LOCK_KEY_RANGES( "runtime/lockKeyRanges",
+            "Number of key ranges per table or partition used for locking individual rows.",
+            4096,
+            ConfigType.INTEGER,
+            "lockingGroup" ),
+
+    LOCK_ESCALATION_THRESHOLD( "runtime/lockEscalationThreshold",
+            "Maximum number of key ranges a statement locks on a single table. If more key ranges are affected, the whole table is locked.",
+            1000,
+            ConfigType.INTEGER,
+            "lockingGroup" ),
+
+    LOCK_WAIT_TIMEOUT( "runtime/lockWaitTimeout",
+            "Time (in milliseconds) after which a transaction waiting for a lock is aborted. 0 means infinite.",
+            0,
+            ConfigType.INTEGER,
+            "lockingGroup" ),
+
+    DEADLOCK_DETECTION_MODE( "runtime/deadlockDetectionMode",
+            "Whether deadlocks are detected by the waiting transaction before every wait or periodically by a background thread.",
+            DeadlockDetectionMode.IMMEDIATE,
+            ConfigType.ENUM,
+            "lockingGroup" ),
+
+    DEADLOCK_DETECTION_INTERVAL( "runtime/deadlockDetectionInterval",
+            "Interval (in milliseconds) in which the background deadlock detection searches for deadlocks.",
+            100,
+            ConfigType.INTEGER,
+            "lockingGroup" ),
+
+    DEADLOCK_VICTIM_SELECTION( "runtime/deadlockVictimSelection",
+            "Which transaction of a deadlock is aborted by the background deadlock detection.",
+            DeadlockVictimSelection.YOUNGEST,
+            ConfigType.ENUM,
+            "lockingGroup" ),
+
     DYNAMIC_QUERYING( "statistics/useDynamicQuerying",
             "Use statistics for query assistance.",
             true,
@@ -183,6 +245,36 @@ public enum RuntimeConfig {
             ConfigType.INTEGER,
             "statisticSettingsGroup" ),
 
+    STATISTIC_HISTOGRAM_BUCKETS( "statistics/histogramBuckets",
+            "Number of buckets of the equi-depth histograms of numerical columns.",
+            20,
+            ConfigType.INTEGER,
+            "statisticSettingsGroup" ),
+
+    STATISTIC_SAMPLE_SIZE( "statistics/sampleSize",
+            "Number of values per column sampled to determine the boundaries of the histograms.",
+            10000,
+            ConfigType.INTEGER,
+            "statisticSettingsGroup" ),
+
+    STATISTIC_SCAN_LIMIT( "statistics/scanLimit",
+            "Maximum number of rows read to reevaluate the statistics of a table. The statistics of larger tables are scaled to their row count.",
+            100000,
+            ConfigType.INTEGER,
+            "statisticSettingsGroup" ),
+
+    STATISTIC_MOST_COMMON_VALUES( "statistics/mostCommonValues",
+            "Number of most common values tracked per column.",
+            10,
+            ConfigType.INTEGER,
+            "statisticSettingsGroup" ),
+
+    STATISTICS_QUERY_OPTIMIZATION( "statistics/useForQueryOptimization",
+            "Use the collected statistics to estimate row counts and selectivities during query planning.",
+            true,
+            ConfigType.BOOLEAN,
+            "statisticSettingsGroup" ),
+
     STATISTIC_RATE( "statistics/passiveTrackingRate",
             "Rate of passive tracking of statistics.",
             BackgroundTask.TaskSchedulingType.EVERY_THIRTY_SECONDS,
@@ -245,6 +337,24 @@ public enum RuntimeConfig {
             ConfigType.INTEGER,
             "queryPlanCachingGroup" ),
 
+    QUERY_PLAN_CACHING_WEIGHT( "runtime/queryPlanCachingWeight",
+            "Maximum total weight of the query plan cache, measured in relational operators of the cached plans. If the limit is reached, the least recently used entries are removed.",
+            100000,
+            ConfigType.INTEGER,
+            "queryPlanCachingGroup" ),
+
+    REST_PLAN_CACHING( "runtime/restPlanCaching",
+            "Cache the query plans built for requests of the REST interface. Requests with the same shape but different literal values share a plan.",
+            true,
+            ConfigType.BOOLEAN,
+            "queryPlanCachingGroup" ),
+
+    REST_PLAN_CACHING_SIZE( "runtime/restPlanCachingSize",
+            "Size of the plan cache of the REST interface. If the limit is reached, the least recently used entry is removed.",
+            1000,
+            ConfigType.INTEGER,
+            "queryPlanCachingGroup" ),
+
     IMPLEMENTATION_CACHING( "runtime/implementationCaching",
             "Cache implemented query plans.",
             true,
@@ -263,6 +373,30 @@ public enum RuntimeConfig {
             ConfigType.INTEGER,
             "implementationCachingGroup" ),
 
+    IMPLEMENTATION_CACHING_WEIGHT( "runtime/implementationCachingWeight",
+            "Maximum total weight of the implementation cache, measured in relational operators of the implemented plans. If the limit is reached, the least recently used entries are removed.",
+            100000,
+            ConfigType.INTEGER,
+            "implementationCachingGroup" ),
+
+    IMPLEMENTATION_CACHING_PERSISTENT( "runtime/implementationCachingPersistent",
+            "Persist the classes generated for implemented query plans on disk to avoid compiling them again after a restart.",
+            false,
+            ConfigType.BOOLEAN,
+            "implementationCachingGroup" ),
+
+    IMPLEMENTATION_CACHING_PERSISTENT_SIZE( "runtime/implementationCachingPersistentSize",
+            "Maximum number of generated classes persisted on disk. If the limit is exceeded, the least recently used entries are deleted.",
+            5000,
+            ConfigType.INTEGER,
+            "implementationCachingGroup" ),
+
+    IMPLEMENTATION_CACHING_WARM_UP( "runtime/implementationCachingWarmUp",
+            "Number of most frequently used plans of the last run whose persisted classes are loaded in the background at startup. Set to 0 to disable the warm-up.",
+            100,
+            ConfigType.INTEGER,
+            "implementationCachingGroup" ),
+
     JOINED_TABLE_SCAN_CACHE( "runtime/joinedTableScanCache",
             "Whether to use the joined table scan caching.",
             false,
@@ -273,11 +407,76 @@ public enum RuntimeConfig {
             1000,
             ConfigType.INTEGER ),
 
+    PLACEMENT_JOIN( "runtime/placementJoin",
+            "Whether the placements of a table on different adapters are fetched concurrently and merged on the primary key. If disabled, they are combined using regular joins.",
+            true,
+            ConfigType.BOOLEAN ),
+
+    PLACEMENT_JOIN_BUFFER_SIZE( "runtime/placementJoinBufferSize",
+            "Number of rows per placement which are fetched ahead while the placements of a table are merged.",
+            1000,
+            ConfigType.INTEGER ),
+
+    PARTITION_UNION( "runtime/partitionUnion",
+            "Whether the partitions of a table which are read from different adapters are fetched concurrently. If disabled, they are combined using regular unions.",
+            true,
+            ConfigType.BOOLEAN ),
+
+    PARTITION_UNION_BUFFER_SIZE( "runtime/partitionUnionBufferSize",
+            "Number of rows per adapter which are fetched ahead while the partitions of a table are combined.",
+            1000,
+            ConfigType.INTEGER ),
+
+    SEMI_JOIN_REDUCTION_CHUNK_SIZE( "runtime/semiJoinReductionChunkSize",
+            "Maximum number of primary keys per statement if a data modification on a vertically partitioned table is restricted to the rows selected beforehand.",
+            1000,
+            ConfigType.INTEGER ),
+
+    PARALLEL_EXECUTION( "runtime/parallelExecution",
+            "Whether large joins and aggregations which are executed by Polypheny-DB itself are split up and processed on several threads.",
+            true,
+            ConfigType.BOOLEAN ),
+
+    PARALLEL_EXECUTION_DEGREE( "runtime/parallelExecutionDegree",
+            "Maximum number of threads a join or aggregation is processed on.",
+            Runtime.getRuntime().availableProcessors(),
+            ConfigType.INTEGER ),
+
+    PARALLEL_EXECUTION_MIN_ROWS( "runtime/parallelExecutionMinRows",
+            "Estimated number of input rows per thread which are required before a join or aggregation is processed on an additional thread.",
+            100000,
+            ConfigType.INTEGER ),
+
+    SPILL_TO_DISK( "runtime/spillToDisk",
+            "Whether joins, aggregations and sorts which are executed by Polypheny-DB itself write intermediate rows to temporary files if the query exceeds its memory budget.",
+            true,
+            ConfigType.BOOLEAN ),
+
+    QUERY_MEMORY_BUDGET( "runtime/queryMemoryBudget",
+            "Memory (in MB) the joins, aggregations and sorts of a single query may use before intermediate rows are written to temporary files.",
+            (int) Math.min( Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8 / 1024 / 1024 ),
+            ConfigType.INTEGER ),
+
+    QUERY_MEMORY_POOL_SIZE( "runtime/queryMemoryPoolSize",
+            "Memory (in MB) the joins, aggregations and sorts of all running queries together may use before intermediate rows are written to temporary files.",
+            (int) Math.min( Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 2 / 1024 / 1024 ),
+            ConfigType.INTEGER ),
+
     DATA_MIGRATOR_BATCH_SIZE( "runtime/dataMigratorBatchSize",
             "Batch size for data insertion on the target store.",
             1000,
             ConfigType.INTEGER ),
 
+    DATA_MIGRATOR_PARALLELISM( "runtime/dataMigratorParallelism",
+            "Number of primary key ranges which are copied in parallel when migrating data to a new placement. Only applies to tables with a single integral primary key column.",
+            1,
+            ConfigType.INTEGER ),
+
+    DATA_MIGRATOR_QUEUE_SIZE( "runtime/dataMigratorQueueSize",
+            "Maximum number of batches buffered between the threads reading from the source and writing to the target store.",
+            8,
+            ConfigType.INTEGER ),
+
     UNIQUE_CONSTRAINT_ENFORCEMENT( "runtime/uniqueConstraintEnforcement",
             "Enable enforcement of uniqueness constraints.",
             false,
@@ -309,6 +508,18 @@ public enum RuntimeConfig {
             ConfigType.INSTANCE_LIST,
             "dockerGroup" ),
 
+    FILE_SCAN_PARALLELISM( "runtime/fileScanParallelism",
+            "Number of threads reading and filtering the files of a table of the file store in parallel. Set to 1 to disable parallel scans.",
+            4,
+            ConfigType.INTEGER,
+            "runtimExecutionGroup" ),
+
+    FILE_SCAN_PARALLEL_THRESHOLD( "runtime/fileScanParallelThreshold",
+            "Minimal number of rows a scan of a table of the file store has to read to be executed in parallel. The file store keeps one file per row and column, so this is the number of files the scan reads per column.",
+            10000,
+            ConfigType.INTEGER,
+            "runtimExecutionGroup" ),
+
     FILE_HANDLE_CACHE_SIZE( "runtime/fileHandleCacheSize",
             "Size (in Bytes) up to which media files are cached in-memory instead of creating a temporary file. Needs to be >= 0 and smaller than Integer.MAX_SIZE. Setting to zero disables caching of media files.",
             0,
@@ -360,8 +571,11 @@ public enum RuntimeConfig {
                 "Settings influencing the runtime behavior of the whole system." );
         final WebUiGroup runtimExecutionGroup = new WebUiGroup( "runtimExecutionGroup", runtimePage.getId() );
         runtimExecutionGroup.withTitle( "Query Execution" );
+        final WebUiGroup lockingGroup = new WebUiGroup( "lockingGroup", runtimePage.getId() );
+        lockingGroup.withTitle( "Locking" );
         configManager.registerWebUiPage( runtimePage );
         configManager.registerWebUiGroup( runtimExecutionGroup );
+        configManager.registerWebUiGroup( lockingGroup );
 
         // Statistics and dynamic querying settings
         final WebUiPage queryStatisticsPage = new WebUiPage(
@@ -587,6 +801,11 @@ public void setString( final String value ) {
     }
 
 
+    public void setEnum( final Enum value ) {
+        configManager.getConfig( key ).setEnum( value );
+    }
+
+
     public void setList( final List<ConfigScalar> values ) {
         configManager.getConfig( key ).setList( values );
     }
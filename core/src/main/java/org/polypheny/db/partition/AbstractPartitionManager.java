@@ -23,6 +23,8 @@
 import org.polypheny.db.catalog.entity.CatalogColumn;
 import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
 import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.tools.RelBuilder;
 
 
 @Slf4j
@@ -34,6 +36,19 @@ public abstract class AbstractPartitionManager implements PartitionManager {
     public abstract long getTargetPartitionId( CatalogTable catalogTable, String columnValue );
 
 
+    // Without further knowledge about the partition function, every partition may contain values of the range
+    @Override
+    public List<Long> getTargetPartitionIds( CatalogTable catalogTable, String lowerBound, boolean lowerInclusive, String upperBound, boolean upperInclusive ) {
+        return catalogTable.partitionIds;
+    }
+
+
+    @Override
+    public RexNode getPartitionCondition( CatalogTable catalogTable, List<Long> partitionIds, RelBuilder builder, RexNode column ) {
+        return null;
+    }
+
+
     /**
      * Validates the table if the partitions are sufficiently distributed.
      * There has to be at least on columnPlacement which contains all partitions
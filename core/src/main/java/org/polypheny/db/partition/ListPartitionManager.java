@@ -17,6 +17,7 @@
 package org.polypheny.db.partition;
 
 import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,8 +29,14 @@
 import org.polypheny.db.catalog.entity.CatalogTable;
 import org.polypheny.db.partition.PartitionFunctionInfo.PartitionFunctionInfoColumn;
 import org.polypheny.db.partition.PartitionFunctionInfo.PartitionFunctionInfoColumnType;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
+import org.polypheny.db.tools.RelBuilder;
 import org.polypheny.db.type.PolyType;
 import org.polypheny.db.type.PolyTypeFamily;
+import org.polypheny.db.type.PolyTypeUtil;
 
 
 @Slf4j
@@ -79,6 +86,65 @@ public long getTargetPartitionId( CatalogTable catalogTable, String columnValue
     }
 
 
+    @Override
+    public List<Long> getTargetPartitionIds( CatalogTable catalogTable, String lowerBound, boolean lowerInclusive, String upperBound, boolean upperInclusive ) {
+        Catalog catalog = Catalog.getInstance();
+        if ( catalog.getColumn( catalogTable.partitionColumnId ).type.getFamily() != PolyTypeFamily.NUMERIC ) {
+            return super.getTargetPartitionIds( catalogTable, lowerBound, lowerInclusive, upperBound, upperInclusive );
+        }
+        double lowerValue = lowerBound == null ? Double.NEGATIVE_INFINITY : Double.parseDouble( lowerBound );
+        double upperValue = upperBound == null ? Double.POSITIVE_INFINITY : Double.parseDouble( upperBound );
+        List<Long> partitionIds = new ArrayList<>();
+
+        for ( long partitionId : catalogTable.partitionIds ) {
+            CatalogPartition catalogPartition = catalog.getPartition( partitionId );
+
+            // Values which are not listed by one of the partitions are placed on the unbound partition
+            if ( catalogPartition.isUnbound ) {
+                partitionIds.add( partitionId );
+                continue;
+            }
+            for ( String partitionQualifier : catalogPartition.partitionQualifiers ) {
+                double value = Double.parseDouble( partitionQualifier );
+                if ( (value > lowerValue || (lowerInclusive && value == lowerValue)) && (value < upperValue || (upperInclusive && value == upperValue)) ) {
+                    partitionIds.add( partitionId );
+                    break;
+                }
+            }
+        }
+        return partitionIds;
+    }
+
+
+    @Override
+    public RexNode getPartitionCondition( CatalogTable catalogTable, List<Long> partitionIds, RelBuilder builder, RexNode column ) {
+        Catalog catalog = Catalog.getInstance();
+        List<RexNode> conditions = new ArrayList<>();
+
+        for ( long partitionId : partitionIds ) {
+            CatalogPartition catalogPartition = catalog.getPartition( partitionId );
+            if ( catalogPartition.isUnbound ) {
+                // The unbound partition contains all values which are not listed by the other partitions
+                List<RexNode> notListed = new ArrayList<>();
+                for ( long otherPartitionId : catalogTable.partitionIds ) {
+                    CatalogPartition otherPartition = catalog.getPartition( otherPartitionId );
+                    if ( !otherPartition.isUnbound ) {
+                        for ( String partitionQualifier : otherPartition.partitionQualifiers ) {
+                            notListed.add( builder.call( SqlStdOperatorTable.NOT_EQUALS, column, makeValue( builder.getRexBuilder(), column, partitionQualifier ) ) );
+                        }
+                    }
+                }
+                conditions.add( builder.and( notListed ) );
+            } else {
+                for ( String partitionQualifier : catalogPartition.partitionQualifiers ) {
+                    conditions.add( builder.equals( column, makeValue( builder.getRexBuilder(), column, partitionQualifier ) ) );
+                }
+            }
+        }
+        return builder.or( conditions );
+    }
+
+
     // Needed when columnPlacements are being dropped
     @Override
     public boolean probePartitionDistributionChange( CatalogTable catalogTable, int storeId, long columnId ) {
@@ -265,4 +331,13 @@ public boolean supportsColumnOfType( PolyType type ) {
         return SUPPORTED_TYPES.contains( type );
     }
 
+
+    private RexNode makeValue( RexBuilder rexBuilder, RexNode column, String partitionQualifier ) {
+        if ( PolyTypeUtil.isNumeric( column.getType() ) ) {
+            RelDataType type = rexBuilder.getTypeFactory().createTypeWithNullability( column.getType(), false );
+            return rexBuilder.makeExactLiteral( new BigDecimal( partitionQualifier ), type );
+        }
+        return rexBuilder.makeLiteral( partitionQualifier );
+    }
+
 }
@@ -20,6 +20,8 @@
 import org.polypheny.db.catalog.entity.CatalogColumn;
 import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
 import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.tools.RelBuilder;
 import org.polypheny.db.type.PolyType;
 
 public interface PartitionManager {
@@ -29,6 +31,20 @@ public interface PartitionManager {
      */
     long getTargetPartitionId( CatalogTable catalogTable, String columnValue );
 
+    /**
+     * Returns the ids of the partitions which may contain values within the given range. A bound is null if the range is
+     * unbounded in this direction.
+     */
+    List<Long> getTargetPartitionIds( CatalogTable catalogTable, String lowerBound, boolean lowerInclusive, String upperBound, boolean upperInclusive );
+
+    /**
+     * Returns a condition which matches exactly the values of the given partitions, or null if the partition function
+     * can not be expressed as a condition.
+     *
+     * @param column Expression referencing the partition column
+     */
+    RexNode getPartitionCondition( CatalogTable catalogTable, List<Long> partitionIds, RelBuilder builder, RexNode column );
+
     boolean validatePartitionDistribution( CatalogTable table );
 
     boolean probePartitionDistributionChange( CatalogTable catalogTable, int storeId, long columnId );
@@ -17,6 +17,7 @@
 package org.polypheny.db.partition;
 
 import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -30,6 +31,11 @@
 import org.polypheny.db.catalog.entity.CatalogTable;
 import org.polypheny.db.partition.PartitionFunctionInfo.PartitionFunctionInfoColumn;
 import org.polypheny.db.partition.PartitionFunctionInfo.PartitionFunctionInfoColumnType;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
+import org.polypheny.db.tools.RelBuilder;
 import org.polypheny.db.type.PolyType;
 import org.polypheny.db.type.PolyTypeFamily;
 
@@ -78,6 +84,53 @@ public long getTargetPartitionId( CatalogTable catalogTable, String columnValue
     }
 
 
+    @Override
+    public List<Long> getTargetPartitionIds( CatalogTable catalogTable, String lowerBound, boolean lowerInclusive, String upperBound, boolean upperInclusive ) {
+        Catalog catalog = Catalog.getInstance();
+        List<Long> partitionIds = new ArrayList<>();
+
+        for ( long partitionId : catalogTable.partitionIds ) {
+            CatalogPartition catalogPartition = catalog.getPartition( partitionId );
+
+            // Values which are not covered by one of the ranges are placed on the unbound partition
+            if ( catalogPartition.isUnbound || isRangeOverlapping( lowerBound, lowerInclusive, upperBound, upperInclusive, catalogPartition ) ) {
+                partitionIds.add( partitionId );
+            }
+        }
+        return partitionIds;
+    }
+
+
+    @Override
+    public RexNode getPartitionCondition( CatalogTable catalogTable, List<Long> partitionIds, RelBuilder builder, RexNode column ) {
+        Catalog catalog = Catalog.getInstance();
+        RexBuilder rexBuilder = builder.getRexBuilder();
+        List<RexNode> conditions = new ArrayList<>();
+
+        for ( long partitionId : partitionIds ) {
+            CatalogPartition catalogPartition = catalog.getPartition( partitionId );
+            if ( catalogPartition.isUnbound ) {
+                // The unbound partition contains all values outside of the ranges of the other partitions
+                List<RexNode> outsideOfRanges = new ArrayList<>();
+                for ( long otherPartitionId : catalogTable.partitionIds ) {
+                    CatalogPartition otherPartition = catalog.getPartition( otherPartitionId );
+                    if ( !otherPartition.isUnbound ) {
+                        outsideOfRanges.add( builder.or(
+                                builder.call( SqlStdOperatorTable.LESS_THAN, column, makeBound( rexBuilder, column, otherPartition, 0 ) ),
+                                builder.call( SqlStdOperatorTable.GREATER_THAN, column, makeBound( rexBuilder, column, otherPartition, 1 ) ) ) );
+                    }
+                }
+                conditions.add( builder.and( outsideOfRanges ) );
+            } else {
+                conditions.add( builder.and(
+                        builder.call( SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, column, makeBound( rexBuilder, column, catalogPartition, 0 ) ),
+                        builder.call( SqlStdOperatorTable.LESS_THAN_OR_EQUAL, column, makeBound( rexBuilder, column, catalogPartition, 1 ) ) ) );
+            }
+        }
+        return builder.or( conditions );
+    }
+
+
     // Needed when columnPlacements are being dropped
     @Override
     public boolean probePartitionDistributionChange( CatalogTable catalogTable, int storeId, long columnId ) {
@@ -308,6 +361,32 @@ public boolean supportsColumnOfType( PolyType type ) {
     }
 
 
+    private boolean isRangeOverlapping( String lowerBound, boolean lowerInclusive, String upperBound, boolean upperInclusive, CatalogPartition catalogPartition ) {
+        int lowerPartitionBound = Integer.parseInt( catalogPartition.partitionQualifiers.get( 0 ) );
+        int upperPartitionBound = Integer.parseInt( catalogPartition.partitionQualifiers.get( 1 ) );
+
+        if ( lowerBound != null ) {
+            double lowerValue = Double.parseDouble( lowerBound );
+            if ( upperPartitionBound < lowerValue || (upperPartitionBound == lowerValue && !lowerInclusive) ) {
+                return false;
+            }
+        }
+        if ( upperBound != null ) {
+            double upperValue = Double.parseDouble( upperBound );
+            if ( lowerPartitionBound > upperValue || (lowerPartitionBound == upperValue && !upperInclusive) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private RexNode makeBound( RexBuilder rexBuilder, RexNode column, CatalogPartition catalogPartition, int index ) {
+        RelDataType type = rexBuilder.getTypeFactory().createTypeWithNullability( column.getType(), false );
+        return rexBuilder.makeExactLiteral( new BigDecimal( catalogPartition.partitionQualifiers.get( index ) ), type );
+    }
+
+
     private boolean isValueInRange( String columnValue, CatalogPartition catalogPartition ) {
         int lowerBound = Integer.parseInt( catalogPartition.partitionQualifiers.get( 0 ) );
         int upperBound = Integer.parseInt( catalogPartition.partitionQualifiers.get( 1 ) );
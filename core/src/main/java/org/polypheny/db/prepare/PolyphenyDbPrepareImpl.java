@@ -119,6 +119,7 @@
 import org.polypheny.db.rel.rules.AggregateValuesRule;
 import org.polypheny.db.rel.rules.FilterAggregateTransposeRule;
 import org.polypheny.db.rel.rules.FilterJoinRule;
+import org.polypheny.db.rel.rules.FilterPlacementJoinRule;
 import org.polypheny.db.rel.rules.FilterProjectTransposeRule;
 import org.polypheny.db.rel.rules.FilterTableScanRule;
 import org.polypheny.db.rel.rules.JoinAssociateRule;
@@ -126,6 +127,7 @@
 import org.polypheny.db.rel.rules.JoinPushExpressionsRule;
 import org.polypheny.db.rel.rules.JoinPushThroughJoinRule;
 import org.polypheny.db.rel.rules.ProjectFilterTransposeRule;
+import org.polypheny.db.rel.rules.ProjectJoinTransposeRule;
 import org.polypheny.db.rel.rules.ProjectMergeRule;
 import org.polypheny.db.rel.rules.ProjectTableScanRule;
 import org.polypheny.db.rel.rules.ProjectWindowTransposeRule;
@@ -221,6 +223,7 @@ public class PolyphenyDbPrepareImpl implements PolyphenyDbPrepare {
             ImmutableList.of(
                     EnumerableRules.ENUMERABLE_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_MERGE_JOIN_RULE,
+                    EnumerableRules.ENUMERABLE_PLACEMENT_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_SEMI_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_CORRELATE_RULE,
                     EnumerableRules.ENUMERABLE_CONDITIONAL_EXECUTE_RULE,
@@ -234,6 +237,7 @@ public class PolyphenyDbPrepareImpl implements PolyphenyDbPrepare {
                     EnumerableRules.ENUMERABLE_COLLECT_RULE,
                     EnumerableRules.ENUMERABLE_UNCOLLECT_RULE,
                     EnumerableRules.ENUMERABLE_UNION_RULE,
+                    EnumerableRules.ENUMERABLE_PARTITION_UNION_RULE,
                     EnumerableRules.ENUMERABLE_MODIFY_COLLECT_RULE,
                     EnumerableRules.ENUMERABLE_INTERSECT_RULE,
                     EnumerableRules.ENUMERABLE_MINUS_RULE,
@@ -253,6 +257,8 @@ public class PolyphenyDbPrepareImpl implements PolyphenyDbPrepare {
                     ProjectFilterTransposeRule.INSTANCE,
                     FilterProjectTransposeRule.INSTANCE,
                     FilterJoinRule.FILTER_ON_JOIN,
+                    FilterPlacementJoinRule.INSTANCE,
+                    ProjectJoinTransposeRule.PLACEMENT_JOIN,
                     JoinPushExpressionsRule.INSTANCE,
                     AggregateExpandDistinctAggregatesRule.INSTANCE,
                     AggregateReduceFunctionsRule.INSTANCE,
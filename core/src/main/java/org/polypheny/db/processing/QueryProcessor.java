@@ -34,4 +34,9 @@ public interface QueryProcessor extends ViewExpander {
 
     void resetCaches();
 
+    /**
+     * Resets only the cache entries depending on the specified table.
+     */
+    void resetCaches( long tableId );
+
 }
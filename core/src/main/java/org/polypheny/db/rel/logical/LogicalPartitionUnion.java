@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.rel.logical;
+
+
+import java.util.List;
+import org.polypheny.db.plan.Convention;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.core.Union;
+
+
+/**
+ * Union which combines the partitions of a horizontally partitioned table which are read from different adapters. The
+ * inputs are scans of the placements, each restricted to the rows of the partitions it is read for. The inputs are
+ * therefore disjoint and the union never eliminates duplicates.
+ *
+ * In contrast to a {@link LogicalUnion}, it is only converted by the
+ * {@link org.polypheny.db.adapter.enumerable.EnumerablePartitionUnionRule}, which fetches the inputs concurrently.
+ */
+public final class LogicalPartitionUnion extends Union {
+
+    /**
+     * Creates a LogicalPartitionUnion.
+     *
+     * Use {@link #create} unless you know what you're doing.
+     */
+    public LogicalPartitionUnion( RelOptCluster cluster, RelTraitSet traitSet, List<RelNode> inputs ) {
+        super( cluster, traitSet, inputs, true );
+    }
+
+
+    /**
+     * Creates a LogicalPartitionUnion.
+     *
+     * @param inputs Scans of the placements holding the partitions
+     */
+    public static LogicalPartitionUnion create( List<RelNode> inputs ) {
+        final RelOptCluster cluster = inputs.get( 0 ).getCluster();
+        return new LogicalPartitionUnion( cluster, cluster.traitSetOf( Convention.NONE ), inputs );
+    }
+
+
+    @Override
+    public LogicalPartitionUnion copy( RelTraitSet traitSet, List<RelNode> inputs, boolean all ) {
+        assert traitSet.containsIfApplicable( Convention.NONE );
+        assert all;
+        return new LogicalPartitionUnion( getCluster(), traitSet, inputs );
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.rel.logical;
+
+
+import com.google.common.collect.ImmutableSet;
+import org.polypheny.db.plan.Convention;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.core.Join;
+import org.polypheny.db.rel.core.JoinRelType;
+import org.polypheny.db.rex.RexNode;
+
+
+/**
+ * Inner join which reassembles a vertically partitioned table from its placements on different adapters. The inputs
+ * are scans of the placements, which are joined on the primary key of the table. Every row of the table is therefore
+ * contained exactly once in every input.
+ *
+ * In contrast to a {@link LogicalJoin}, it is only converted by the
+ * {@link org.polypheny.db.adapter.enumerable.EnumerablePlacementJoinRule}, which fetches the inputs concurrently.
+ */
+public final class LogicalPlacementJoin extends Join {
+
+    /**
+     * Creates a LogicalPlacementJoin.
+     *
+     * Use {@link #create} unless you know what you're doing.
+     */
+    public LogicalPlacementJoin( RelOptCluster cluster, RelTraitSet traitSet, RelNode left, RelNode right, RexNode condition ) {
+        super( cluster, traitSet, left, right, condition, ImmutableSet.of(), JoinRelType.INNER );
+    }
+
+
+    /**
+     * Creates a LogicalPlacementJoin.
+     *
+     * @param left Scan of the first placements
+     * @param right Scan of a placement on another adapter
+     * @param condition Equality of the primary key columns of both inputs
+     */
+    public static LogicalPlacementJoin create( RelNode left, RelNode right, RexNode condition ) {
+        final RelOptCluster cluster = left.getCluster();
+        return new LogicalPlacementJoin( cluster, cluster.traitSetOf( Convention.NONE ), left, right, condition );
+    }
+
+
+    @Override
+    public LogicalPlacementJoin copy( RelTraitSet traitSet, RexNode conditionExpr, RelNode left, RelNode right, JoinRelType joinType, boolean semiJoinDone ) {
+        assert traitSet.containsIfApplicable( Convention.NONE );
+        assert joinType == JoinRelType.INNER;
+        return new LogicalPlacementJoin( getCluster(), getCluster().traitSetOf( Convention.NONE ), left, right, conditionExpr );
+    }
+
+}
@@ -54,6 +54,7 @@ public class DefaultRelMetadataProvider extends ChainedRelMetadataProvider {
     protected DefaultRelMetadataProvider() {
         super(
                 ImmutableList.of(
+                        RelMdStatistics.SOURCE,
                         RelMdPercentageOriginalRows.SOURCE,
                         RelMdColumnOrigins.SOURCE,
                         RelMdExpressionLineage.SOURCE,
@@ -34,6 +34,9 @@
 package org.polypheny.db.rel.metadata;
 
 
+import org.polypheny.db.adapter.enumerable.EnumerableAggregate;
+import org.polypheny.db.adapter.enumerable.EnumerableJoin;
+import org.polypheny.db.adapter.enumerable.EnumerableSort;
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.util.BuiltInMethod;
 
@@ -57,10 +60,35 @@ public class RelMdMemory implements MetadataHandler<BuiltInMetadata.Memory> {
                     BuiltInMethod.CUMULATIVE_MEMORY_WITHIN_PHASE_SPLIT.method );
 
 
+    /**
+     * Estimated overhead (in bytes) of a row kept in memory by an operator: the array or record holding the row and
+     * the entry in the hash table or list.
+     */
+    private static final double ROW_OVERHEAD = 48;
+
+    /**
+     * Estimated overhead (in bytes) of a field of a row kept in memory, i.e. the header of the boxed value.
+     */
+    private static final double FIELD_OVERHEAD = 16;
+
+
     protected RelMdMemory() {
     }
 
 
+    /**
+     * Returns the estimated memory (in bytes) used by a single row of the given relational expression if it is kept
+     * in memory by an operator.
+     */
+    public static double rowMemory( RelNode rel, RelMetadataQuery mq ) {
+        final int fieldCount = rel.getRowType().getFieldCount();
+        final Double averageRowSize = mq.getAverageRowSize( rel );
+        return ROW_OVERHEAD
+                + fieldCount * FIELD_OVERHEAD
+                + (averageRowSize == null ? fieldCount * 8d : averageRowSize);
+    }
+
+
     @Override
     public MetadataDef<BuiltInMetadata.Memory> getDef() {
         return BuiltInMetadata.Memory.DEF;
@@ -77,6 +105,38 @@ public Double memory( RelNode rel, RelMetadataQuery mq ) {
     }
 
 
+    /**
+     * The hash join keeps the rows of its right input in memory.
+     */
+    public Double memory( EnumerableJoin rel, RelMetadataQuery mq ) {
+        return memory( rel.getRight(), mq.getRowCount( rel.getRight() ), mq );
+    }
+
+
+    /**
+     * The hash aggregation keeps one accumulator per group in memory.
+     */
+    public Double memory( EnumerableAggregate rel, RelMetadataQuery mq ) {
+        return memory( rel, mq.getRowCount( rel ), mq );
+    }
+
+
+    /**
+     * The sort keeps all rows of its input in memory.
+     */
+    public Double memory( EnumerableSort rel, RelMetadataQuery mq ) {
+        return memory( rel.getInput(), mq.getRowCount( rel.getInput() ), mq );
+    }
+
+
+    private static Double memory( RelNode rel, Double rowCount, RelMetadataQuery mq ) {
+        if ( rowCount == null ) {
+            return null;
+        }
+        return rowCount * rowMemory( rel, mq );
+    }
+
+
     /**
      * Catch-all implementation for {@link BuiltInMetadata.Memory#cumulativeMemoryWithinPhase()}, invoked using reflection.
      *
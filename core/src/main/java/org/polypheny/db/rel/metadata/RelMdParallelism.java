@@ -34,12 +34,16 @@
 package org.polypheny.db.rel.metadata;
 
 
+import org.polypheny.db.adapter.enumerable.EnumerableExchange;
+import org.polypheny.db.plan.hep.HepRelVertex;
+import org.polypheny.db.plan.volcano.RelSubset;
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.rel.core.Exchange;
 import org.polypheny.db.rel.core.TableScan;
 import org.polypheny.db.rel.core.Values;
 import org.polypheny.db.rel.metadata.BuiltInMetadata.Parallelism;
 import org.polypheny.db.util.BuiltInMethod;
+import org.polypheny.db.util.Util;
 
 
 /**
@@ -101,7 +105,46 @@ public Boolean isPhaseTransition( Exchange rel, RelMetadataQuery mq ) {
      * @see org.polypheny.db.rel.metadata.RelMetadataQuery#splitCount
      */
     public Integer splitCount( RelNode rel, RelMetadataQuery mq ) {
+        // Operators within a parallel fragment are evaluated once per partition of their inputs
+        int splitCount = 1;
+        for ( RelNode input : rel.getInputs() ) {
+            final Integer inputSplitCount = mq.splitCount( input );
+            if ( inputSplitCount != null ) {
+                splitCount = Math.max( splitCount, inputSplitCount );
+            }
+        }
+        return splitCount;
+    }
+
+
+    public Integer splitCount( TableScan rel, RelMetadataQuery mq ) {
+        return 1;
+    }
+
+
+    public Integer splitCount( Values rel, RelMetadataQuery mq ) {
+        return 1;
+    }
+
+
+    public Integer splitCount( Exchange rel, RelMetadataQuery mq ) {
         return 1;
     }
+
+
+    public Integer splitCount( EnumerableExchange rel, RelMetadataQuery mq ) {
+        return rel.isGather() ? 1 : rel.getDegree();
+    }
+
+
+    public Integer splitCount( HepRelVertex rel, RelMetadataQuery mq ) {
+        return mq.splitCount( rel.getCurrentRel() );
+    }
+
+
+    public Integer splitCount( RelSubset rel, RelMetadataQuery mq ) {
+        return mq.splitCount( Util.first( rel.getBest(), rel.getOriginal() ) );
+    }
+
 }
 
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.rel.metadata;
+
+
+import com.google.common.collect.ImmutableList;
+import javax.annotation.Nullable;
+import org.polypheny.db.plan.RelOptUtil;
+import org.polypheny.db.rel.core.Join;
+import org.polypheny.db.rel.core.TableScan;
+import org.polypheny.db.rel.metadata.StatisticsSource.ColumnStatistic;
+import org.polypheny.db.rex.RexCall;
+import org.polypheny.db.rex.RexInputRef;
+import org.polypheny.db.rex.RexLiteral;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.sql.SqlKind;
+import org.polypheny.db.util.BuiltInMethod;
+import org.polypheny.db.util.ImmutableBitSet;
+import org.polypheny.db.util.NumberUtil;
+
+
+/**
+ * RelMdStatistics supplies estimations of {@link RelMetadataQuery#getRowCount}, {@link RelMetadataQuery#getSelectivity}
+ * and {@link RelMetadataQuery#getDistinctRowCount} based on the statistics of the {@link StatisticsSource}. It handles
+ * table scans, from where the estimations are propagated by the default handlers, and equi-joins. If there are no
+ * statistics, the estimations of the default handlers are used.
+ */
+public class RelMdStatistics implements MetadataHandler<BuiltInMetadata.RowCount> {
+
+    private static final RelMdStatistics INSTANCE = new RelMdStatistics();
+
+    public static final RelMetadataProvider SOURCE =
+            ChainedRelMetadataProvider.of(
+                    ImmutableList.of(
+                            ReflectiveRelMetadataProvider.reflectiveSource( BuiltInMethod.ROW_COUNT.method, INSTANCE ),
+                            ReflectiveRelMetadataProvider.reflectiveSource( BuiltInMethod.SELECTIVITY.method, INSTANCE ),
+                            ReflectiveRelMetadataProvider.reflectiveSource( BuiltInMethod.DISTINCT_ROW_COUNT.method, INSTANCE ) ) );
+
+
+    private RelMdStatistics() {
+    }
+
+
+    @Override
+    public MetadataDef<BuiltInMetadata.RowCount> getDef() {
+        return BuiltInMetadata.RowCount.DEF;
+    }
+
+
+    public Double getRowCount( TableScan rel, RelMetadataQuery mq ) {
+        StatisticsSource source = StatisticsSource.getActiveInstance();
+        Double rowCount = source == null ? null : source.getRowCount( rel.getTable().getQualifiedName() );
+        if ( rowCount == null ) {
+            return rel.estimateRowCount( mq );
+        }
+        return Math.max( 1.0, rowCount );
+    }
+
+
+    public Double getSelectivity( TableScan rel, RelMetadataQuery mq, RexNode predicate ) {
+        if ( predicate == null || predicate.isAlwaysTrue() ) {
+            return 1.0;
+        }
+        StatisticsSource source = StatisticsSource.getActiveInstance();
+        if ( source == null ) {
+            return RelMdUtil.guessSelectivity( predicate );
+        }
+        double selectivity = estimateSelectivity( source, rel, predicate );
+        // At least one row
+        double rowCount = mq.getRowCount( rel );
+        return Math.max( selectivity, 1 / Math.max( 1.0, rowCount ) );
+    }
+
+
+    /**
+     * Estimates the selectivity of an equi-join condition as {@code 1 / max(ndv(left key), ndv(right key))}
+     * per key pair. Other conditions are guessed.
+     */
+    public Double getSelectivity( Join rel, RelMetadataQuery mq, RexNode predicate ) {
+        if ( predicate == null || predicate.isAlwaysTrue() ) {
+            return 1.0;
+        }
+        if ( StatisticsSource.getActiveInstance() == null ) {
+            return RelMdUtil.guessSelectivity( predicate );
+        }
+        final int leftCount = rel.getLeft().getRowType().getFieldCount();
+        double selectivity = 1.0;
+        for ( RexNode conjunction : RelOptUtil.conjunctions( predicate ) ) {
+            Double estimate = null;
+            if ( conjunction.isA( SqlKind.EQUALS ) ) {
+                RexNode first = stripCast( ((RexCall) conjunction).getOperands().get( 0 ) );
+                RexNode second = stripCast( ((RexCall) conjunction).getOperands().get( 1 ) );
+                if ( first instanceof RexInputRef && second instanceof RexInputRef ) {
+                    int left = Math.min( ((RexInputRef) first).getIndex(), ((RexInputRef) second).getIndex() );
+                    int right = Math.max( ((RexInputRef) first).getIndex(), ((RexInputRef) second).getIndex() );
+                    if ( left < leftCount && right >= leftCount ) {
+                        Double leftDistinct = mq.getDistinctRowCount( rel.getLeft(), ImmutableBitSet.of( left ), null );
+                        Double rightDistinct = mq.getDistinctRowCount( rel.getRight(), ImmutableBitSet.of( right - leftCount ), null );
+                        if ( leftDistinct != null && rightDistinct != null ) {
+                            estimate = 1 / Math.max( 1.0, Math.max( leftDistinct, rightDistinct ) );
+                        }
+                    }
+                }
+            }
+            selectivity *= estimate == null ? RelMdUtil.guessSelectivity( conjunction ) : estimate;
+        }
+        return selectivity;
+    }
+
+
+    public Double getDistinctRowCount( TableScan rel, RelMetadataQuery mq, ImmutableBitSet groupKey, RexNode predicate ) {
+        StatisticsSource source = StatisticsSource.getActiveInstance();
+        double distinct = 1.0;
+        for ( int column : groupKey ) {
+            ColumnStatistic statistic = source == null ? null : getColumnStatistic( source, rel, column );
+            if ( statistic == null ) {
+                // Same as the catch-all handler of RelMdDistinctRowCount
+                if ( RelMdUtil.areColumnsDefinitelyUnique( mq, rel, groupKey ) ) {
+                    return NumberUtil.multiply( mq.getRowCount( rel ), mq.getSelectivity( rel, predicate ) );
+                }
+                return null;
+            }
+            // Null counts as an additional group
+            distinct *= statistic.getDistinctCount() + (statistic.getNullFraction() > 0 ? 1 : 0);
+        }
+        double rowCount = mq.getRowCount( rel );
+        distinct = Math.min( distinct, rowCount );
+        if ( predicate != null && !predicate.isAlwaysTrue() ) {
+            return RelMdUtil.numDistinctVals( distinct, rowCount * mq.getSelectivity( rel, predicate ) );
+        }
+        return distinct;
+    }
+
+
+    private double estimateSelectivity( StatisticsSource source, TableScan rel, RexNode predicate ) {
+        double selectivity = 1.0;
+        for ( RexNode conjunction : RelOptUtil.conjunctions( predicate ) ) {
+            if ( conjunction.isA( SqlKind.OR ) ) {
+                double none = 1.0;
+                for ( RexNode disjunction : RelOptUtil.disjunctions( conjunction ) ) {
+                    none *= 1 - estimateSelectivity( source, rel, disjunction );
+                }
+                selectivity *= 1 - none;
+            } else {
+                Double estimate = estimateComparison( source, rel, conjunction );
+                selectivity *= estimate == null ? RelMdUtil.guessSelectivity( conjunction ) : estimate;
+            }
+        }
+        return selectivity;
+    }
+
+
+    /**
+     * Estimates the selectivity of a comparison of a column with a literal or parameter
+     *
+     * @return {@code null} if there are no statistics for this kind of predicate
+     */
+    @Nullable
+    private Double estimateComparison( StatisticsSource source, TableScan rel, RexNode node ) {
+        if ( !(node instanceof RexCall) ) {
+            return null;
+        }
+        RexCall call = (RexCall) node;
+        SqlKind kind = call.getKind();
+        if ( kind == SqlKind.IS_NULL || kind == SqlKind.IS_NOT_NULL ) {
+            ColumnStatistic statistic = getColumnStatistic( source, rel, call.getOperands().get( 0 ) );
+            if ( statistic == null ) {
+                return null;
+            }
+            return kind == SqlKind.IS_NULL ? statistic.getNullFraction() : 1 - statistic.getNullFraction();
+        }
+        if ( call.getOperands().size() != 2 ) {
+            return null;
+        }
+        RexNode column = stripCast( call.getOperands().get( 0 ) );
+        RexNode value = stripCast( call.getOperands().get( 1 ) );
+        if ( !(column instanceof RexInputRef) ) {
+            RexNode swap = column;
+            column = value;
+            value = swap;
+            kind = kind.reverse();
+        }
+        ColumnStatistic statistic = getColumnStatistic( source, rel, column );
+        if ( statistic == null || value instanceof RexInputRef ) {
+            return null;
+        }
+        Object literal = value instanceof RexLiteral ? ((RexLiteral) value).getValue3() : null;
+        switch ( kind ) {
+            case EQUALS:
+            case NOT_EQUALS:
+                double equal;
+                if ( literal != null ) {
+                    equal = statistic.getEqualSelectivity( literal );
+                } else if ( statistic.getDistinctCount() > 0 ) {
+                    // Parameter: assume that all values are equally frequent
+                    equal = (1 - statistic.getNullFraction()) / statistic.getDistinctCount();
+                } else {
+                    return null;
+                }
+                return kind == SqlKind.EQUALS ? equal : Math.max( 0, 1 - statistic.getNullFraction() - equal );
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                return literal instanceof Number ? statistic.getRangeSelectivity( null, ((Number) literal).doubleValue() ) : null;
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return literal instanceof Number ? statistic.getRangeSelectivity( ((Number) literal).doubleValue(), null ) : null;
+            default:
+                return null;
+        }
+    }
+
+
+    @Nullable
+    private ColumnStatistic getColumnStatistic( StatisticsSource source, TableScan rel, RexNode node ) {
+        if ( !(node instanceof RexInputRef) ) {
+            return null;
+        }
+        return getColumnStatistic( source, rel, ((RexInputRef) node).getIndex() );
+    }
+
+
+    @Nullable
+    private ColumnStatistic getColumnStatistic( StatisticsSource source, TableScan rel, int column ) {
+        return source.getColumnStatistic( rel.getTable().getQualifiedName(), rel.getRowType().getFieldNames().get( column ) );
+    }
+
+
+    private static RexNode stripCast( RexNode node ) {
+        while ( node.isA( SqlKind.CAST ) ) {
+            node = ((RexCall) node).getOperands().get( 0 );
+        }
+        return node;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.rel.metadata;
+
+
+import java.util.List;
+import javax.annotation.Nullable;
+import org.polypheny.db.config.RuntimeConfig;
+
+
+/**
+ * Statistics about the data stored in the tables, used by {@link RelMdStatistics} to estimate cardinalities. The
+ * statistics module registers its implementation on startup. Without a registered source, the default estimations
+ * of the metadata handlers are used.
+ */
+public abstract class StatisticsSource {
+
+    private static StatisticsSource INSTANCE = null;
+
+
+    public static void setInstance( StatisticsSource source ) {
+        INSTANCE = source;
+    }
+
+
+    /**
+     * @return the registered source or {@code null} if there is none or statistics are not used for query optimization
+     */
+    @Nullable
+    public static StatisticsSource getActiveInstance() {
+        if ( !RuntimeConfig.STATISTICS_QUERY_OPTIMIZATION.getBoolean() ) {
+            return null;
+        }
+        return INSTANCE;
+    }
+
+
+    /**
+     * @param qualifiedTableName qualified name of a logical or physical table
+     * @return the number of rows of the table or {@code null} if it is unknown
+     */
+    @Nullable
+    public abstract Double getRowCount( List<String> qualifiedTableName );
+
+
+    /**
+     * @param qualifiedTableName qualified name of a logical or physical table
+     * @param columnName logical name of the column
+     * @return the statistics of the column or {@code null} if there are none
+     */
+    @Nullable
+    public abstract ColumnStatistic getColumnStatistic( List<String> qualifiedTableName, String columnName );
+
+
+    /**
+     * Statistics of the values of a column
+     */
+    public interface ColumnStatistic {
+
+        long getRowCount();
+
+        double getNullFraction();
+
+        /**
+         * @return the number of distinct non-null values
+         */
+        long getDistinctCount();
+
+        /**
+         * @return the fraction of rows which are equal to the value
+         */
+        double getEqualSelectivity( Object value );
+
+        /**
+         * @return the fraction of rows within the range or {@code null} if it cannot be estimated for this column,
+         * {@code null} bounds are unbounded
+         */
+        @Nullable
+        default Double getRangeSelectivity( Double lower, Double upper ) {
+            return null;
+        }
+
+    }
+
+}
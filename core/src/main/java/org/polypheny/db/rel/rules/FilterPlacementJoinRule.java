@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.rel.rules;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.polypheny.db.plan.RelOptRule;
+import org.polypheny.db.plan.RelOptRuleCall;
+import org.polypheny.db.plan.RelOptUtil;
+import org.polypheny.db.rel.core.Filter;
+import org.polypheny.db.rel.core.JoinInfo;
+import org.polypheny.db.rel.core.RelFactories;
+import org.polypheny.db.rel.logical.LogicalPlacementJoin;
+import org.polypheny.db.rel.type.RelDataTypeField;
+import org.polypheny.db.rex.RexInputRef;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.rex.RexShuttle;
+import org.polypheny.db.rex.RexUtil;
+import org.polypheny.db.tools.RelBuilderFactory;
+import org.polypheny.db.util.ImmutableBitSet;
+import org.polypheny.db.util.mapping.IntPair;
+
+
+/**
+ * Planner rule that copies the conditions of a {@link Filter} on the primary key of a {@link LogicalPlacementJoin} to
+ * the primary key of the other input. The {@link FilterJoinRule} is then able to push the conditions into both
+ * placements, which therefore only return the matching rows.
+ *
+ * This is a special case of the {@link JoinPushTransitivePredicatesRule}, which does not find the predicates of the
+ * inputs in the Volcano planner.
+ */
+public class FilterPlacementJoinRule extends RelOptRule {
+
+    public static final FilterPlacementJoinRule INSTANCE = new FilterPlacementJoinRule( RelFactories.LOGICAL_BUILDER );
+
+
+    /**
+     * Creates a FilterPlacementJoinRule.
+     */
+    public FilterPlacementJoinRule( RelBuilderFactory relBuilderFactory ) {
+        super( operand( Filter.class, operand( LogicalPlacementJoin.class, any() ) ), relBuilderFactory, null );
+    }
+
+
+    @Override
+    public void onMatch( RelOptRuleCall call ) {
+        final Filter filter = call.rel( 0 );
+        final LogicalPlacementJoin join = call.rel( 1 );
+        final JoinInfo info = join.analyzeCondition();
+        final int leftCount = join.getLeft().getRowType().getFieldCount();
+
+        // Maps the key columns of the left input to the ones of the right input and vice versa
+        final Map<Integer, Integer> leftToRight = new HashMap<>();
+        final Map<Integer, Integer> rightToLeft = new HashMap<>();
+        for ( IntPair pair : info.pairs() ) {
+            leftToRight.put( pair.source, leftCount + pair.target );
+            rightToLeft.put( leftCount + pair.target, pair.source );
+        }
+
+        final List<RexNode> conditions = RelOptUtil.conjunctions( filter.getCondition() );
+        final List<RexNode> mirrored = new ArrayList<>();
+        for ( RexNode condition : conditions ) {
+            final ImmutableBitSet refs = RelOptUtil.InputFinder.bits( condition );
+            if ( refs.isEmpty() || !RexUtil.isDeterministic( condition ) ) {
+                continue;
+            }
+            final Map<Integer, Integer> mapping;
+            if ( leftToRight.keySet().containsAll( refs.asList() ) ) {
+                mapping = leftToRight;
+            } else if ( rightToLeft.keySet().containsAll( refs.asList() ) ) {
+                mapping = rightToLeft;
+            } else {
+                continue;
+            }
+            final List<RelDataTypeField> fields = join.getRowType().getFieldList();
+            final RexNode copy = condition.accept( new RexShuttle() {
+                @Override
+                public RexNode visitInputRef( RexInputRef inputRef ) {
+                    final int index = mapping.get( inputRef.getIndex() );
+                    return new RexInputRef( index, fields.get( index ).getType() );
+                }
+            } );
+            if ( !conditions.contains( copy ) && !mirrored.contains( copy ) ) {
+                mirrored.add( copy );
+            }
+        }
+        if ( mirrored.isEmpty() ) {
+            return;
+        }
+
+        mirrored.addAll( 0, conditions );
+        call.transformTo( call.builder().push( join ).filter( mirrored ).build() );
+    }
+
+}
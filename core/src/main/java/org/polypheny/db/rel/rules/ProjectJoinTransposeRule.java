@@ -43,6 +43,7 @@
 import org.polypheny.db.rel.core.Project;
 import org.polypheny.db.rel.core.RelFactories;
 import org.polypheny.db.rel.core.SemiJoin;
+import org.polypheny.db.rel.logical.LogicalPlacementJoin;
 import org.polypheny.db.rel.type.RelDataTypeField;
 import org.polypheny.db.rex.RexNode;
 import org.polypheny.db.tools.RelBuilderFactory;
@@ -55,6 +56,11 @@ public class ProjectJoinTransposeRule extends RelOptRule {
 
     public static final ProjectJoinTransposeRule INSTANCE = new ProjectJoinTransposeRule( expr -> true, RelFactories.LOGICAL_BUILDER );
 
+    /**
+     * Pushes projections into the placements of a vertically partitioned table.
+     */
+    public static final ProjectJoinTransposeRule PLACEMENT_JOIN = new ProjectJoinTransposeRule( LogicalPlacementJoin.class, expr -> true, RelFactories.LOGICAL_BUILDER, "ProjectJoinTransposeRule:placement" );
+
 
     /**
      * Condition for expressions that should be preserved in the projection.
@@ -68,7 +74,19 @@ public class ProjectJoinTransposeRule extends RelOptRule {
      * @param preserveExprCondition Condition for expressions that should be preserved in the projection
      */
     public ProjectJoinTransposeRule( PushProjector.ExprCondition preserveExprCondition, RelBuilderFactory relFactory ) {
-        super( operand( Project.class, operand( Join.class, any() ) ), relFactory, null );
+        this( Join.class, preserveExprCondition, relFactory, null );
+    }
+
+
+    /**
+     * Creates a ProjectJoinTransposeRule which only matches joins of the given class.
+     *
+     * @param clazz Class of the joins
+     * @param preserveExprCondition Condition for expressions that should be preserved in the projection
+     * @param description Description, or null to guess description
+     */
+    public ProjectJoinTransposeRule( Class<? extends Join> clazz, PushProjector.ExprCondition preserveExprCondition, RelBuilderFactory relFactory, String description ) {
+        super( operand( Project.class, operand( clazz, any() ) ), relFactory, description );
         this.preserveExprCondition = preserveExprCondition;
     }
 
@@ -34,10 +34,38 @@
 package org.polypheny.db.runtime;
 
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Supplier;
+import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.Lookup;
+import org.apache.calcite.linq4j.function.Function0;
 import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
 import org.polypheny.db.interpreter.Row;
+import org.polypheny.db.rel.RelDistribution;
+import org.polypheny.db.util.Util;
 
 
 /**
@@ -47,6 +75,32 @@
  */
 public class Enumerables {
 
+    /**
+     * Threads fetching the inputs of the concurrent joins and unions. The threads are blocked most of the time while
+     * waiting for the adapters, the number of threads is therefore not bounded.
+     */
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newCachedThreadPool( new FetchThreadFactory() );
+
+    /**
+     * Threads processing the partitions of parallel fragments. In contrast to the fetch threads, they are busy most of
+     * the time, the number of threads therefore matches the number of processors.
+     */
+    private static final ForkJoinPool EXCHANGE_POOL = new ForkJoinPool( Runtime.getRuntime().availableProcessors(), new ExchangeThreadFactory(), null, false );
+
+    /**
+     * Number of rows which are buffered per partition of an exchange and by a gather.
+     */
+    static final int EXCHANGE_BUFFER_SIZE = 1024;
+
+    private static final Object NULL = new Object();
+    private static final Object END = new Object();
+
+    /**
+     * Partition of the parallel fragment which is processed by the current thread, not set outside of parallel fragments.
+     */
+    private static final ThreadLocal<Fragment> FRAGMENT = new ThreadLocal<>();
+
+
     private Enumerables() {
     }
 
@@ -74,5 +128,760 @@ public static Supplier<Enumerable<Row>> toRow( final Supplier<Enumerable<Object[
         return () -> toRow( supplier.get() );
     }
 
-}
 
+    /**
+     * Returns an enumerable whose enumerators fetch the rows of the source on another thread. Up to {@code bufferSize}
+     * rows are fetched ahead of the consumer.
+     */
+    public static <E> Enumerable<E> prefetch( final Enumerable<E> source, final int bufferSize ) {
+        return new AbstractEnumerable<E>() {
+            @Override
+            public Enumerator<E> enumerator() {
+                return new PrefetchEnumerator<>( source, bufferSize );
+            }
+        };
+    }
+
+
+    /**
+     * Inner join of two inputs whose rows are fetched concurrently. The lookup table for the right input is built on
+     * another thread while the rows of the left input are prefetched. The order of the left input is preserved.
+     */
+    public static <TLeft, TRight, TKey, TResult> Enumerable<TResult> concurrentHashJoin(
+            final Enumerable<TLeft> left,
+            final Enumerable<TRight> right,
+            final Function1<TLeft, TKey> leftKeySelector,
+            final Function1<TRight, TKey> rightKeySelector,
+            final Function2<TLeft, TRight, TResult> resultSelector,
+            final int bufferSize ) {
+        return new AbstractEnumerable<TResult>() {
+            @Override
+            public Enumerator<TResult> enumerator() {
+                final Future<Lookup<TKey, TRight>> lookupFuture = FETCH_EXECUTOR.submit( () -> right.toLookup( rightKeySelector ) );
+                final Enumerator<TLeft> lefts = new PrefetchEnumerator<>( left, bufferSize );
+                return new Enumerator<TResult>() {
+                    Lookup<TKey, TRight> lookup;
+                    TLeft leftRow;
+                    Enumerator<TRight> rights = Linq4j.emptyEnumerator();
+                    TResult current;
+
+
+                    @Override
+                    public TResult current() {
+                        return current;
+                    }
+
+
+                    @Override
+                    public boolean moveNext() {
+                        if ( lookup == null ) {
+                            lookup = await( lookupFuture );
+                        }
+                        while ( true ) {
+                            if ( rights.moveNext() ) {
+                                current = resultSelector.apply( leftRow, rights.current() );
+                                return true;
+                            }
+                            if ( !lefts.moveNext() ) {
+                                return false;
+                            }
+                            leftRow = lefts.current();
+                            final TKey key = leftKeySelector.apply( leftRow );
+                            final Enumerable<TRight> matches = key == null ? null : lookup.get( key );
+                            rights = matches == null ? Linq4j.emptyEnumerator() : matches.enumerator();
+                        }
+                    }
+
+
+                    @Override
+                    public void reset() {
+                        throw new UnsupportedOperationException();
+                    }
+
+
+                    @Override
+                    public void close() {
+                        lookupFuture.cancel( true );
+                        lefts.close();
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * Inner join of two inputs which are sorted ascending by their keys and whose rows are fetched concurrently. The
+     * keys have to be unique in both inputs, as it is the case when joining on a primary key.
+     */
+    public static <TLeft, TRight, TKey extends Comparable<TKey>, TResult> Enumerable<TResult> concurrentMergeJoin(
+            final Enumerable<TLeft> left,
+            final Enumerable<TRight> right,
+            final Function1<TLeft, TKey> leftKeySelector,
+            final Function1<TRight, TKey> rightKeySelector,
+            final Function2<TLeft, TRight, TResult> resultSelector,
+            final int bufferSize ) {
+        return new AbstractEnumerable<TResult>() {
+            @Override
+            public Enumerator<TResult> enumerator() {
+                final Enumerator<TLeft> lefts = new PrefetchEnumerator<>( left, bufferSize );
+                final Enumerator<TRight> rights = new PrefetchEnumerator<>( right, bufferSize );
+                return new Enumerator<TResult>() {
+                    TResult current;
+
+
+                    @Override
+                    public TResult current() {
+                        return current;
+                    }
+
+
+                    @Override
+                    public boolean moveNext() {
+                        if ( !lefts.moveNext() || !rights.moveNext() ) {
+                            return false;
+                        }
+                        TKey leftKey = leftKeySelector.apply( lefts.current() );
+                        TKey rightKey = rightKeySelector.apply( rights.current() );
+                        while ( true ) {
+                            final int c = leftKey.compareTo( rightKey );
+                            if ( c == 0 ) {
+                                current = resultSelector.apply( lefts.current(), rights.current() );
+                                return true;
+                            } else if ( c < 0 ) {
+                                if ( !lefts.moveNext() ) {
+                                    return false;
+                                }
+                                leftKey = leftKeySelector.apply( lefts.current() );
+                            } else {
+                                if ( !rights.moveNext() ) {
+                                    return false;
+                                }
+                                rightKey = rightKeySelector.apply( rights.current() );
+                            }
+                        }
+                    }
+
+
+                    @Override
+                    public void reset() {
+                        throw new UnsupportedOperationException();
+                    }
+
+
+                    @Override
+                    public void close() {
+                        lefts.close();
+                        rights.close();
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * Union of inputs whose rows are fetched concurrently. The rows are returned input by input, while up to
+     * {@code bufferSize} rows of each of the following inputs are fetched ahead.
+     */
+    @SafeVarargs
+    public static <E> Enumerable<E> concurrentUnionAll( final int bufferSize, final Enumerable<E>... inputs ) {
+        return new AbstractEnumerable<E>() {
+            @Override
+            public Enumerator<E> enumerator() {
+                final List<Enumerator<E>> enumerators = new ArrayList<>( inputs.length );
+                for ( Enumerable<E> input : inputs ) {
+                    enumerators.add( new PrefetchEnumerator<>( input, bufferSize ) );
+                }
+                return new Enumerator<E>() {
+                    int i = 0;
+
+
+                    @Override
+                    public E current() {
+                        return enumerators.get( i ).current();
+                    }
+
+
+                    @Override
+                    public boolean moveNext() {
+                        while ( i < enumerators.size() ) {
+                            if ( enumerators.get( i ).moveNext() ) {
+                                return true;
+                            }
+                            i++;
+                        }
+                        return false;
+                    }
+
+
+                    @Override
+                    public void reset() {
+                        throw new UnsupportedOperationException();
+                    }
+
+
+                    @Override
+                    public void close() {
+                        for ( Enumerator<E> enumerator : enumerators ) {
+                            enumerator.close();
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * Distributes the rows of the input among the partitions of the enclosing parallel fragment (see {@link #gather}).
+     * The input is evaluated once per execution of the fragment and outside of it. The rows are streamed to the
+     * partitions through bounded queues, at most {@link #EXCHANGE_BUFFER_SIZE} rows per partition are held in memory.
+     * If there is no enclosing fragment, the rows of the input are passed through.
+     *
+     * @param id Identifies the exchange within the fragment
+     * @param input Input of the exchange
+     * @param keySelector Key the rows are distributed by if the distribution is hash, otherwise {@code null}
+     * @param distribution Either hash, round-robin or broadcast
+     */
+    public static <E> Enumerable<E> exchange(
+            final int id,
+            final Function0<Enumerable<E>> input,
+            final Function1<E, Object> keySelector,
+            final RelDistribution.Type distribution ) {
+        return new AbstractEnumerable<E>() {
+            @Override
+            public Enumerator<E> enumerator() {
+                final Fragment fragment = FRAGMENT.get();
+                if ( fragment == null ) {
+                    return input.apply().enumerator();
+                }
+                final Exchange exchange = fragment.execution.exchange( id, () -> new Exchange( fragment.execution, input, keySelector, distribution ) );
+                return exchange.enumerator( fragment.index );
+            }
+        };
+    }
+
+
+    /**
+     * Evaluates a parallel fragment on {@code degree} threads and returns the rows of all partitions. Every thread
+     * evaluates the whole fragment, the {@link #exchange exchanges} within the fragment return the rows of the partition
+     * processed by the thread. The rows of the partitions are streamed to the consumer through a bounded queue, their
+     * order is therefore not defined. Closing the enumerator early stops the evaluation of the fragment.
+     */
+    public static <E> Enumerable<E> gather( final Function0<Enumerable<E>> fragment, final int degree ) {
+        return new AbstractEnumerable<E>() {
+            @Override
+            public Enumerator<E> enumerator() {
+                return new GatherEnumerator<>( fragment, degree );
+            }
+        };
+    }
+
+
+    /**
+     * Returns the partition of a key. The partition is derived from the upper bits of the scrambled hash code, the
+     * hash tables which are built per partition therefore still get keys with diverse lower bits.
+     */
+    static int hashPartition( Object key, int degree ) {
+        final int hash = Objects.hashCode( key ) * 0x9E3779B9;
+        return (int) (((hash >>> 16) * (long) degree) >>> 16);
+    }
+
+
+    /**
+     * Evaluates a function with the given fragment set for the current thread and restores the previous fragment.
+     */
+    private static <T> T within( Fragment fragment, Function0<T> function ) {
+        final Fragment previous = FRAGMENT.get();
+        FRAGMENT.set( fragment );
+        try {
+            return function.apply();
+        } finally {
+            if ( previous == null ) {
+                FRAGMENT.remove();
+            } else {
+                FRAGMENT.set( previous );
+            }
+        }
+    }
+
+
+    private static <T> T await( Future<T> future ) {
+        try {
+            return future.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        } catch ( ExecutionException e ) {
+            Util.throwIfUnchecked( e.getCause() );
+            throw new RuntimeException( e.getCause() );
+        }
+    }
+
+
+    /**
+     * Puts an element into the queue of an exchange or a gather. Waiting threads of the exchange pool are compensated,
+     * so that all partitions of a fragment make progress even if the pool has less threads than the fragment.
+     *
+     * @return {@code false} if the execution has been closed before there was space in the queue
+     */
+    private static boolean put( BlockingQueue<Object> queue, Object element, Execution execution ) {
+        final boolean[] done = { false };
+        try {
+            ForkJoinPool.managedBlock( new ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    done[0] = done[0] || queue.offer( element, 100, TimeUnit.MILLISECONDS );
+                    return done[0] || execution.closed;
+                }
+
+
+                @Override
+                public boolean isReleasable() {
+                    done[0] = done[0] || queue.offer( element );
+                    return done[0] || execution.closed;
+                }
+            } );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        return done[0];
+    }
+
+
+    /**
+     * Takes an element from the queue of an exchange or a gather, see {@link #put}.
+     *
+     * @throws CancellationException if the execution has been closed
+     */
+    private static Object take( BlockingQueue<Object> queue, Execution execution ) {
+        final Object[] element = { null };
+        try {
+            ForkJoinPool.managedBlock( new ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    if ( element[0] == null ) {
+                        element[0] = queue.poll( 100, TimeUnit.MILLISECONDS );
+                    }
+                    return element[0] != null || execution.closed;
+                }
+
+
+                @Override
+                public boolean isReleasable() {
+                    if ( element[0] == null ) {
+                        element[0] = queue.poll();
+                    }
+                    return element[0] != null || execution.closed;
+                }
+            } );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        if ( element[0] == null ) {
+            throw new CancellationException( "The parallel execution has been closed." );
+        }
+        return element[0];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <E> E unwrap( Object element ) {
+        if ( element instanceof Failure ) {
+            final Throwable cause = ((Failure) element).cause;
+            Util.throwIfUnchecked( cause );
+            throw new RuntimeException( cause );
+        }
+        return element == NULL ? null : (E) element;
+    }
+
+
+    /**
+     * Enumerator which fetches the rows of an enumerable on another thread and hands them over using a bounded queue.
+     */
+    private static class PrefetchEnumerator<E> implements Enumerator<E> {
+
+        private final BlockingQueue<Object> queue;
+        private final Future<?> task;
+        private volatile boolean closed = false;
+        private boolean done = false;
+        private E current;
+
+
+        PrefetchEnumerator( Enumerable<E> source, int bufferSize ) {
+            this.queue = new ArrayBlockingQueue<>( Math.max( 1, bufferSize ) );
+            this.task = FETCH_EXECUTOR.submit( () -> {
+                try {
+                    try ( Enumerator<E> enumerator = source.enumerator() ) {
+                        while ( !closed && enumerator.moveNext() ) {
+                            final E row = enumerator.current();
+                            put( row == null ? NULL : row );
+                        }
+                    }
+                    put( END );
+                } catch ( InterruptedException e ) {
+                    // The consumer has closed the enumerator
+                } catch ( Throwable t ) {
+                    try {
+                        put( new Failure( t ) );
+                    } catch ( InterruptedException e ) {
+                        // The consumer has closed the enumerator
+                    }
+                }
+            } );
+        }
+
+
+        /**
+         * Waits until there is space in the queue. Gives up if the enumerator is closed, even if the interrupt has been
+         * swallowed by the source.
+         */
+        private void put( Object element ) throws InterruptedException {
+            while ( !closed ) {
+                if ( queue.offer( element, 100, TimeUnit.MILLISECONDS ) ) {
+                    return;
+                }
+            }
+        }
+
+
+        @Override
+        public E current() {
+            return current;
+        }
+
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean moveNext() {
+            if ( done ) {
+                return false;
+            }
+            final Object next;
+            try {
+                next = queue.take();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( e );
+            }
+            if ( next == END ) {
+                done = true;
+                return false;
+            } else if ( next instanceof Failure ) {
+                done = true;
+                final Throwable cause = ((Failure) next).cause;
+                Util.throwIfUnchecked( cause );
+                throw new RuntimeException( cause );
+            }
+            current = next == NULL ? null : (E) next;
+            return true;
+        }
+
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void close() {
+            closed = true;
+            task.cancel( true );
+        }
+
+    }
+
+
+    private static class Failure {
+
+        private final Throwable cause;
+
+
+        Failure( Throwable cause ) {
+            this.cause = cause;
+        }
+
+    }
+
+
+    /**
+     * Partition of a parallel fragment.
+     */
+    private static class Fragment {
+
+        private final int index;
+        private final Execution execution;
+
+
+        Fragment( int index, Execution execution ) {
+            this.index = index;
+            this.execution = execution;
+        }
+
+    }
+
+
+    /**
+     * An execution of a parallel fragment. The partitions of the execution share the exchanges.
+     */
+    private static class Execution {
+
+        private final int degree;
+        private final Map<Integer, Exchange> exchanges = new ConcurrentHashMap<>();
+        private volatile boolean closed = false;
+
+
+        Execution( int degree ) {
+            this.degree = degree;
+        }
+
+
+        Exchange exchange( int id, Supplier<Exchange> factory ) {
+            return exchanges.computeIfAbsent( id, i -> factory.get() );
+        }
+
+    }
+
+
+    /**
+     * Distributes the rows of the input of an exchange among the partitions of an execution. The input is evaluated on
+     * a fetch thread as soon as the first partition asks for its rows. There is a bounded queue per partition.
+     */
+    private static class Exchange {
+
+        private final Execution execution;
+        private final List<BlockingQueue<Object>> queues;
+        // Partitions which have stopped reading, their rows are dropped
+        private final AtomicReferenceArray<Boolean> abandoned;
+
+
+        <E> Exchange( Execution execution, Function0<Enumerable<E>> input, Function1<E, Object> keySelector, RelDistribution.Type distribution ) {
+            this.execution = execution;
+            this.queues = new ArrayList<>( execution.degree );
+            this.abandoned = new AtomicReferenceArray<>( execution.degree );
+            for ( int i = 0; i < execution.degree; i++ ) {
+                queues.add( new ArrayBlockingQueue<>( EXCHANGE_BUFFER_SIZE ) );
+                abandoned.set( i, false );
+            }
+            if ( distribution != RelDistribution.Type.HASH_DISTRIBUTED
+                    && distribution != RelDistribution.Type.ROUND_ROBIN_DISTRIBUTED
+                    && distribution != RelDistribution.Type.BROADCAST_DISTRIBUTED ) {
+                throw new UnsupportedOperationException( "Distribution " + distribution + " is not supported by exchanges." );
+            }
+            FETCH_EXECUTOR.submit( () -> distribute( input, keySelector, distribution ) );
+        }
+
+
+        private <E> void distribute( Function0<Enumerable<E>> input, Function1<E, Object> keySelector, RelDistribution.Type distribution ) {
+            try {
+                int next = 0;
+                try ( Enumerator<E> enumerator = input.apply().enumerator() ) {
+                    while ( enumerator.moveNext() ) {
+                        final E row = enumerator.current();
+                        final Object element = row == null ? NULL : row;
+                        switch ( distribution ) {
+                            case HASH_DISTRIBUTED:
+                                if ( !send( hashPartition( keySelector.apply( row ), execution.degree ), element ) ) {
+                                    return;
+                                }
+                                break;
+                            case ROUND_ROBIN_DISTRIBUTED:
+                                if ( !send( next, element ) ) {
+                                    return;
+                                }
+                                next = (next + 1) % execution.degree;
+                                break;
+                            default:
+                                for ( int i = 0; i < execution.degree; i++ ) {
+                                    if ( !send( i, element ) ) {
+                                        return;
+                                    }
+                                }
+                        }
+                    }
+                }
+                sendToAll( END );
+            } catch ( Throwable t ) {
+                sendToAll( new Failure( t ) );
+            }
+        }
+
+
+        /**
+         * @return {@code false} if the execution has been closed
+         */
+        private boolean send( int partition, Object element ) {
+            return abandoned.get( partition ) || put( queues.get( partition ), element, execution );
+        }
+
+
+        private void sendToAll( Object element ) {
+            for ( int i = 0; i < execution.degree; i++ ) {
+                if ( !send( i, element ) ) {
+                    return;
+                }
+            }
+        }
+
+
+        <E> Enumerator<E> enumerator( int partition ) {
+            final BlockingQueue<Object> queue = queues.get( partition );
+            return new Enumerator<E>() {
+                private boolean done = false;
+                private E current;
+
+
+                @Override
+                public E current() {
+                    return current;
+                }
+
+
+                @Override
+                public boolean moveNext() {
+                    if ( done ) {
+                        return false;
+                    }
+                    final Object element = take( queue, execution );
+                    if ( element == END ) {
+                        done = true;
+                        return false;
+                    } else if ( element instanceof Failure ) {
+                        done = true;
+                    }
+                    current = unwrap( element );
+                    return true;
+                }
+
+
+                @Override
+                public void reset() {
+                    throw new UnsupportedOperationException();
+                }
+
+
+                @Override
+                public void close() {
+                    if ( !done ) {
+                        // Do not block the other partitions
+                        abandoned.set( partition, true );
+                        queue.clear();
+                    }
+                }
+            };
+        }
+
+    }
+
+
+    /**
+     * Evaluates the partitions of a parallel fragment on the exchange pool and streams their rows to the consumer.
+     */
+    private static class GatherEnumerator<E> implements Enumerator<E> {
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>( EXCHANGE_BUFFER_SIZE );
+        private final Execution execution;
+        private int running;
+        private E current;
+
+
+        GatherEnumerator( Function0<Enumerable<E>> fragment, int degree ) {
+            this.execution = new Execution( degree );
+            this.running = degree;
+            for ( int i = 0; i < degree; i++ ) {
+                final Fragment partition = new Fragment( i, execution );
+                EXCHANGE_POOL.execute( () -> within( partition, () -> {
+                    try {
+                        try ( Enumerator<E> enumerator = fragment.apply().enumerator() ) {
+                            while ( enumerator.moveNext() ) {
+                                final E row = enumerator.current();
+                                if ( !put( queue, row == null ? NULL : row, execution ) ) {
+                                    return null;
+                                }
+                            }
+                        }
+                        put( queue, END, execution );
+                    } catch ( CancellationException e ) {
+                        // The consumer has closed the enumerator
+                    } catch ( Throwable t ) {
+                        put( queue, new Failure( t ), execution );
+                    }
+                    return null;
+                } ) );
+            }
+        }
+
+
+        @Override
+        public E current() {
+            return current;
+        }
+
+
+        @Override
+        public boolean moveNext() {
+            while ( running > 0 ) {
+                final Object element = take( queue, execution );
+                if ( element == END ) {
+                    running--;
+                    continue;
+                } else if ( element instanceof Failure ) {
+                    running = 0;
+                    execution.closed = true;
+                }
+                current = unwrap( element );
+                return true;
+            }
+            return false;
+        }
+
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void close() {
+            // Stops the partitions and the exchanges
+            execution.closed = true;
+        }
+
+    }
+
+
+    private static class FetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+
+        @Override
+        public Thread newThread( Runnable runnable ) {
+            final Thread thread = new Thread( runnable, "EnumerableFetch-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+
+    }
+
+
+    private static class ExchangeThreadFactory implements ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+
+        @Override
+        public ForkJoinWorkerThread newThread( ForkJoinPool pool ) {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( pool );
+            thread.setName( "EnumerableExchange-" + count.incrementAndGet() );
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.runtime;
+
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.information.InformationGroup;
+import org.polypheny.db.information.InformationKeyValue;
+import org.polypheny.db.information.InformationManager;
+import org.polypheny.db.information.InformationPage;
+import org.polypheny.db.information.InformationTable;
+import org.polypheny.db.transaction.Statement;
+
+
+/**
+ * Memory available to the joins, aggregations and sorts which are executed by Polypheny-DB itself. Every statement has
+ * a budget and all running statements together are bounded by the size of the pool. Operators which do not get any
+ * more memory write intermediate rows to temporary files (see {@link SpillingEnumerables}).
+ *
+ * The memory is not measured, the operators estimate it based on the average row sizes known to the planner.
+ */
+public class QueryMemoryPool {
+
+    public static final QueryMemoryPool INSTANCE = new QueryMemoryPool();
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * Memory is taken from the pool in chunks of this size, so that the operators do not contend for every row.
+     */
+    private static final long CHUNK_SIZE = MB;
+
+    private static final int MAX_FINISHED_STATEMENTS = 50;
+
+    private final AtomicLong used = new AtomicLong();
+    private final Map<Statement, StatementMemory> statements = new ConcurrentHashMap<>();
+    private final Deque<StatementMemory> finished = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean initialized = new AtomicBoolean();
+
+
+    private QueryMemoryPool() {
+    }
+
+
+    /**
+     * Deletes the spill files of the last run and registers the monitoring page. Invoked once at startup.
+     */
+    public void initialize() {
+        if ( initialized.compareAndSet( false, true ) ) {
+            SpillFile.deleteLeftovers();
+            registerMonitoringPage();
+        }
+    }
+
+
+    /**
+     * Opens a reservation for an operator of the statement the given data context belongs to. The reservation has to
+     * be closed when the operator is closed.
+     */
+    public Reservation open( DataContext dataContext ) {
+        final Statement statement = dataContext == null ? null : dataContext.getStatement();
+        if ( statement == null ) {
+            // Not related to a statement, e.g. constant reduction. The memory is not shown on the monitoring page.
+            return new Reservation( null, new StatementMemory( "-" ) );
+        }
+        final StatementMemory memory = statements.compute( statement, ( s, m ) -> {
+            if ( m == null ) {
+                m = new StatementMemory( String.valueOf( s.getTransaction().getId() ) );
+            }
+            m.operators.incrementAndGet();
+            return m;
+        } );
+        return new Reservation( statement, memory );
+    }
+
+
+    /**
+     * Returns the memory (in bytes) currently used by all statements.
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+
+    private boolean grant( StatementMemory memory, long bytes ) {
+        final boolean enforce = RuntimeConfig.SPILL_TO_DISK.getBoolean();
+        if ( memory.used.addAndGet( bytes ) > RuntimeConfig.QUERY_MEMORY_BUDGET.getInteger() * MB && enforce ) {
+            memory.used.addAndGet( -bytes );
+            return false;
+        }
+        if ( used.addAndGet( bytes ) > RuntimeConfig.QUERY_MEMORY_POOL_SIZE.getInteger() * MB && enforce ) {
+            used.addAndGet( -bytes );
+            memory.used.addAndGet( -bytes );
+            return false;
+        }
+        memory.peak.accumulateAndGet( memory.used.get(), Math::max );
+        return true;
+    }
+
+
+    private void release( StatementMemory memory, long bytes ) {
+        memory.used.addAndGet( -bytes );
+        used.addAndGet( -bytes );
+    }
+
+
+    private void closed( Statement statement, StatementMemory memory ) {
+        if ( statement == null ) {
+            return;
+        }
+        if ( statements.computeIfPresent( statement, ( s, m ) -> m.operators.decrementAndGet() > 0 ? m : null ) == null ) {
+            memory.endTime = System.nanoTime();
+            finished.addFirst( memory );
+            // Forget the oldest statements
+            int count = 0;
+            Iterator<StatementMemory> iterator = finished.iterator();
+            while ( iterator.hasNext() ) {
+                iterator.next();
+                if ( ++count > MAX_FINISHED_STATEMENTS ) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+
+    private void registerMonitoringPage() {
+        InformationManager im = InformationManager.getInstance();
+
+        InformationPage page = new InformationPage( "Query Memory" );
+        page.fullWidth();
+        im.addPage( page );
+
+        InformationGroup generalGroup = new InformationGroup( page, "General" ).setOrder( 1 );
+        im.addGroup( generalGroup );
+        InformationKeyValue generalKv = new InformationKeyValue( generalGroup );
+        im.registerInformation( generalKv );
+
+        InformationGroup statementsGroup = new InformationGroup( page, "Statements" ).setOrder( 2 );
+        im.addGroup( statementsGroup );
+        InformationTable statementsTable = new InformationTable(
+                statementsGroup,
+                Arrays.asList( "Transaction", "Status", "Operators", "Used (MB)", "Peak (MB)", "Spilled (MB)", "Spill Files", "Duration (ms)" ) );
+        im.registerInformation( statementsTable );
+
+        page.setRefreshFunction( () -> {
+            generalKv.putPair( "Spilling", RuntimeConfig.SPILL_TO_DISK.getBoolean() ? "Active" : "Disabled" );
+            generalKv.putPair( "Pool Size (MB)", String.valueOf( RuntimeConfig.QUERY_MEMORY_POOL_SIZE.getInteger() ) );
+            generalKv.putPair( "Budget per Statement (MB)", String.valueOf( RuntimeConfig.QUERY_MEMORY_BUDGET.getInteger() ) );
+            generalKv.putPair( "Used (MB)", toMegabytes( used.get() ) );
+
+            statementsTable.reset();
+            for ( StatementMemory memory : statements.values() ) {
+                addRow( statementsTable, memory, "RUNNING" );
+            }
+            for ( StatementMemory memory : finished ) {
+                addRow( statementsTable, memory, "FINISHED" );
+            }
+        } );
+    }
+
+
+    private static void addRow( InformationTable table, StatementMemory memory, String status ) {
+        final long endTime = memory.endTime == 0 ? System.nanoTime() : memory.endTime;
+        table.addRow(
+                memory.transaction,
+                status,
+                memory.operators.get(),
+                toMegabytes( memory.used.get() ),
+                toMegabytes( memory.peak.get() ),
+                toMegabytes( memory.spilledBytes.sum() ),
+                memory.spillFiles.get(),
+                TimeUnit.NANOSECONDS.toMillis( endTime - memory.startTime ) );
+    }
+
+
+    private static String toMegabytes( long bytes ) {
+        return String.format( Locale.ENGLISH, "%.1f", bytes / (double) MB );
+    }
+
+
+    /**
+     * Memory of an operator. A reservation is used by a single thread.
+     */
+    public class Reservation implements AutoCloseable {
+
+        private final Statement statement;
+        private final StatementMemory memory;
+
+        /**
+         * Memory taken from the pool
+         */
+        private long granted = 0;
+
+        /**
+         * Memory used by the operator, at most the granted memory
+         */
+        private long allocated = 0;
+
+        private boolean closed = false;
+
+
+        private Reservation( Statement statement, StatementMemory memory ) {
+            this.statement = statement;
+            this.memory = memory;
+        }
+
+
+        /**
+         * Tries to allocate memory. This fails if spilling is enabled and either the budget of the statement or the
+         * pool is exhausted.
+         *
+         * @return Whether the memory has been allocated
+         */
+        public boolean tryAllocate( long bytes ) {
+            final long missing = allocated + bytes - granted;
+            if ( missing > 0 ) {
+                if ( grant( memory, Math.max( missing, CHUNK_SIZE ) ) ) {
+                    granted += Math.max( missing, CHUNK_SIZE );
+                } else if ( missing < CHUNK_SIZE && grant( memory, missing ) ) {
+                    granted += missing;
+                } else {
+                    return false;
+                }
+            }
+            allocated += bytes;
+            return true;
+        }
+
+
+        /**
+         * Allocates memory regardless of the budget. Used by operators which cannot make any progress otherwise.
+         */
+        public void allocate( long bytes ) {
+            if ( !tryAllocate( bytes ) ) {
+                final long missing = allocated + bytes - granted;
+                memory.used.addAndGet( missing );
+                used.addAndGet( missing );
+                memory.peak.accumulateAndGet( memory.used.get(), Math::max );
+                granted += missing;
+                allocated += bytes;
+            }
+        }
+
+
+        /**
+         * Frees memory which is no longer used. Unused memory exceeding a chunk is returned to the pool.
+         */
+        public void free( long bytes ) {
+            allocated = Math.max( 0, allocated - bytes );
+            final long unused = granted - allocated;
+            if ( unused > CHUNK_SIZE ) {
+                release( memory, unused - CHUNK_SIZE );
+                granted -= unused - CHUNK_SIZE;
+            }
+        }
+
+
+        /**
+         * Records that rows have been written to a temporary file.
+         */
+        void spilled( long bytes ) {
+            memory.spilledBytes.add( bytes );
+            memory.spillFiles.incrementAndGet();
+        }
+
+
+        @Override
+        public void close() {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+            release( memory, granted );
+            granted = 0;
+            allocated = 0;
+            closed( statement, memory );
+        }
+
+    }
+
+
+    private static class StatementMemory {
+
+        private final String transaction;
+        private final long startTime = System.nanoTime();
+        private volatile long endTime = 0;
+
+        private final AtomicInteger operators = new AtomicInteger();
+        private final AtomicLong used = new AtomicLong();
+        private final AtomicLong peak = new AtomicLong();
+        private final LongAdder spilledBytes = new LongAdder();
+        private final AtomicInteger spillFiles = new AtomicInteger();
+
+
+        StatementMemory( String transaction ) {
+            this.transaction = transaction;
+        }
+
+    }
+
+}
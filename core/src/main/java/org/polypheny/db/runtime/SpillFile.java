@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.runtime;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.NoSuchElementException;
+import org.apache.calcite.linq4j.Enumerator;
+import org.polypheny.db.runtime.QueryMemoryPool.Reservation;
+import org.polypheny.db.util.FileSystemManager;
+
+
+/**
+ * Temporary file holding rows an operator could not keep in memory. The rows are written using Java serialization
+ * (the synthetic row classes are serializable) and read back exactly once, after which the file is deleted.
+ *
+ * @param <E> Element type
+ */
+class SpillFile<E> implements AutoCloseable {
+
+    private static final File SPILL_FOLDER = FileSystemManager.getInstance().registerNewFolder( "tmp/spill" );
+
+    /**
+     * The stream caches every object it has written, so it is reset regularly.
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    private final Reservation reservation;
+    private final File file;
+    private ObjectOutputStream out;
+    private ClassLoader classLoader;
+    private int count = 0;
+
+
+    SpillFile( Reservation reservation ) {
+        this.reservation = reservation;
+        try {
+            file = File.createTempFile( "spill", ".bin", SPILL_FOLDER );
+            out = new ObjectOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Unable to create temporary file", e );
+        }
+    }
+
+
+    /**
+     * Deletes the spill files left behind by a previous run which has not been shut down properly.
+     */
+    static void deleteLeftovers() {
+        final File[] files = SPILL_FOLDER.listFiles();
+        if ( files != null ) {
+            for ( File file : files ) {
+                file.delete();
+            }
+        }
+    }
+
+
+    void write( E element ) {
+        if ( out == null ) {
+            throw new IllegalStateException( "Spill file has already been finished" );
+        }
+        if ( classLoader == null ) {
+            classLoader = classLoaderOf( element );
+        }
+        try {
+            out.writeObject( element );
+            if ( ++count % RESET_INTERVAL == 0 ) {
+                out.reset();
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Unable to write to temporary file " + file, e );
+        }
+    }
+
+
+    /**
+     * Returns the class loader of the classes generated for the query, if the element contains an instance of such a
+     * class.
+     */
+    private static ClassLoader classLoaderOf( Object element ) {
+        if ( element instanceof Object[] ) {
+            for ( Object o : (Object[]) element ) {
+                final ClassLoader loader = classLoaderOf( o );
+                if ( loader != null ) {
+                    return loader;
+                }
+            }
+            return null;
+        }
+        if ( element == null ) {
+            return null;
+        }
+        final ClassLoader loader = element.getClass().getClassLoader();
+        return loader == SpillFile.class.getClassLoader() ? null : loader;
+    }
+
+
+    int size() {
+        return count;
+    }
+
+
+    /**
+     * Finishes writing. The rows are now available via {@link #read()}.
+     */
+    void finish() {
+        if ( out == null ) {
+            return;
+        }
+        try {
+            out.close();
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Unable to write to temporary file " + file, e );
+        } finally {
+            out = null;
+        }
+        reservation.spilled( file.length() );
+    }
+
+
+    /**
+     * Reads the rows in the order they have been written. Closing the enumerator deletes the file.
+     */
+    Enumerator<E> read() {
+        finish();
+        final ObjectInputStream in;
+        try {
+            in = new SpillInputStream( new BufferedInputStream( new FileInputStream( file ), 1 << 16 ), classLoader );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Unable to read temporary file " + file, e );
+        }
+        return new Enumerator<E>() {
+            private int remaining = count;
+            private E current;
+
+
+            @Override
+            public E current() {
+                return current;
+            }
+
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean moveNext() {
+                if ( remaining == 0 ) {
+                    return false;
+                }
+                try {
+                    current = (E) in.readObject();
+                } catch ( EOFException e ) {
+                    throw new NoSuchElementException( "Temporary file " + file + " has been truncated" );
+                } catch ( IOException | ClassNotFoundException e ) {
+                    throw new RuntimeException( "Unable to read temporary file " + file, e );
+                }
+                remaining--;
+                return true;
+            }
+
+
+            @Override
+            public void reset() {
+                throw new UnsupportedOperationException();
+            }
+
+
+            @Override
+            public void close() {
+                try {
+                    in.close();
+                } catch ( IOException e ) {
+                    // Ignore
+                }
+                SpillFile.this.close();
+            }
+        };
+    }
+
+
+    @Override
+    public void close() {
+        if ( out != null ) {
+            try {
+                out.close();
+            } catch ( IOException e ) {
+                // Ignore
+            }
+            out = null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+
+    /**
+     * Resolves the classes generated for a query, which are not visible to the system class loader.
+     */
+    private static class SpillInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+
+        SpillInputStream( InputStream in, ClassLoader classLoader ) throws IOException {
+            super( in );
+            this.classLoader = classLoader;
+        }
+
+
+        @Override
+        protected Class<?> resolveClass( ObjectStreamClass desc ) throws IOException, ClassNotFoundException {
+            if ( classLoader != null ) {
+                try {
+                    return Class.forName( desc.getName(), false, classLoader );
+                } catch ( ClassNotFoundException e ) {
+                    // Fall back to the default resolution
+                }
+            }
+            return super.resolveClass( desc );
+        }
+
+    }
+
+}
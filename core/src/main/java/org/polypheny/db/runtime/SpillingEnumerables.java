@@ -0,0 +1,861 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.runtime;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.runtime.QueryMemoryPool.Reservation;
+
+
+/**
+ * Joins, aggregations and sorts which write intermediate rows to temporary files if the statement exceeds its memory
+ * budget (see {@link QueryMemoryPool}). As long as the rows fit into memory, they behave like their counterparts in
+ * {@link org.apache.calcite.linq4j.EnumerableDefaults}.
+ *
+ * The memory used per row or group is estimated by the planner and passed by the generated code.
+ */
+public class SpillingEnumerables {
+
+    /**
+     * Number of partitions the rows are split into when spilling a join or an aggregation
+     */
+    private static final int PARTITION_BITS = 4;
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+
+    /**
+     * Number of times a partition is split again. The partitions at the last level are kept in memory regardless of
+     * the budget, since they only contain rows with colliding hash codes.
+     */
+    private static final int MAX_LEVEL = 4;
+
+    /**
+     * Maximum number of sorted runs which are merged at once
+     */
+    private static final int MAX_MERGE_WIDTH = 64;
+
+
+    private SpillingEnumerables() {
+        // Utility class
+    }
+
+
+    /**
+     * Sorts the rows of the source by the given key. If the rows do not fit into memory, sorted runs are written to
+     * temporary files and merged afterwards. Like {@link Enumerable#orderBy}, the sort is stable.
+     *
+     * @param comparator Comparator for the keys, or null to sort by the natural order of the keys
+     * @param rowMemory Estimated memory used by a single row (in bytes)
+     */
+    public static <TSource, TKey> Enumerable<TSource> orderBy(
+            final Enumerable<TSource> source,
+            final Function1<TSource, TKey> keySelector,
+            final Comparator<TKey> comparator,
+            final DataContext root,
+            final long rowMemory ) {
+        @SuppressWarnings("unchecked") final Comparator<TKey> keyComparator = comparator != null
+                ? comparator
+                : (Comparator<TKey>) Comparator.naturalOrder();
+        return new AbstractEnumerable<TSource>() {
+            @Override
+            public Enumerator<TSource> enumerator() {
+                final Spill spill = new Spill( root );
+                try {
+                    return spill.guard( sort( spill, source, keySelector, keyComparator, rowMemory ) );
+                } catch ( RuntimeException e ) {
+                    spill.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+
+    private static <TSource, TKey> Enumerator<TSource> sort(
+            final Spill spill,
+            final Enumerable<TSource> source,
+            final Function1<TSource, TKey> keySelector,
+            final Comparator<TKey> comparator,
+            final long rowMemory ) {
+        final Comparator<Keyed<TKey, TSource>> keyedComparator = ( a, b ) -> comparator.compare( a.key, b.key );
+        final List<SpillFile<TSource>> runs = new ArrayList<>();
+        final List<Keyed<TKey, TSource>> buffer = new ArrayList<>();
+        try ( Enumerator<TSource> rows = source.enumerator() ) {
+            while ( rows.moveNext() ) {
+                if ( !spill.reservation.tryAllocate( rowMemory ) ) {
+                    if ( !buffer.isEmpty() ) {
+                        // Write a sorted run
+                        buffer.sort( keyedComparator );
+                        final SpillFile<TSource> run = spill.newFile();
+                        for ( Keyed<TKey, TSource> keyed : buffer ) {
+                            run.write( keyed.row );
+                        }
+                        run.finish();
+                        runs.add( run );
+                        spill.reservation.free( buffer.size() * rowMemory );
+                        buffer.clear();
+                    }
+                    spill.reservation.allocate( rowMemory );
+                }
+                final TSource row = rows.current();
+                buffer.add( new Keyed<>( keySelector.apply( row ), row ) );
+            }
+        }
+        buffer.sort( keyedComparator );
+        if ( runs.isEmpty() ) {
+            return new KeyedEnumerator<>( buffer.iterator() );
+        }
+
+        // Merge runs until the remaining ones can be merged at once. The rows in memory are merged last.
+        while ( runs.size() >= MAX_MERGE_WIDTH ) {
+            final List<SpillFile<TSource>> merged = new ArrayList<>();
+            for ( int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH ) {
+                final List<Enumerator<Keyed<TKey, TSource>>> inputs = new ArrayList<>();
+                for ( SpillFile<TSource> run : runs.subList( i, Math.min( runs.size(), i + MAX_MERGE_WIDTH ) ) ) {
+                    inputs.add( keyed( run.read(), keySelector ) );
+                }
+                final SpillFile<TSource> run = spill.newFile();
+                try ( Enumerator<TSource> rows = new MergeEnumerator<>( inputs, keyedComparator ) ) {
+                    while ( rows.moveNext() ) {
+                        run.write( rows.current() );
+                    }
+                }
+                run.finish();
+                merged.add( run );
+            }
+            runs.clear();
+            runs.addAll( merged );
+        }
+        final List<Enumerator<Keyed<TKey, TSource>>> inputs = new ArrayList<>();
+        for ( SpillFile<TSource> run : runs ) {
+            inputs.add( keyed( run.read(), keySelector ) );
+        }
+        inputs.add( Linq4j.iterableEnumerator( buffer ) );
+        return new MergeEnumerator<>( inputs, keyedComparator );
+    }
+
+
+    /**
+     * Groups the rows of the source by the given key and aggregates every group. Groups are kept in memory as long as
+     * the budget allows it; the rows of groups which do not fit anymore are written to temporary files, partitioned
+     * by the hash of their key, and aggregated afterwards.
+     *
+     * @param comparer Comparer for the keys, or null to compare the keys using {@link Object#equals}
+     * @param groupMemory Estimated memory used by a single group (in bytes)
+     */
+    public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> groupBy(
+            final Enumerable<TSource> source,
+            final Function1<TSource, TKey> keySelector,
+            final Function0<TAccumulate> accumulatorInitializer,
+            final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+            final Function2<TKey, TAccumulate, TResult> resultSelector,
+            final EqualityComparer<TKey> comparer,
+            final DataContext root,
+            final long groupMemory ) {
+        return new AbstractEnumerable<TResult>() {
+            @Override
+            public Enumerator<TResult> enumerator() {
+                final Spill spill = new Spill( root );
+                try {
+                    final HashAggregate<TSource, TKey, TAccumulate, TResult> aggregate = new HashAggregate<>(
+                            spill, keySelector, accumulatorInitializer, accumulatorAdder, resultSelector, comparer, groupMemory );
+                    return spill.guard( aggregate.aggregate( source.enumerator(), 0 ) );
+                } catch ( RuntimeException e ) {
+                    spill.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Equi-join of two inputs using a hash table of the inner input. If the inner rows do not fit into memory, both
+     * inputs are written to temporary files, partitioned by the hash of their keys, and the partitions are joined
+     * one after another. In this case the order of the outer input is not preserved.
+     *
+     * Apart from the order, the result is the same as the one of {@link Enumerable#join(Enumerable, Function1,
+     * Function1, Function2, EqualityComparer, boolean, boolean)}.
+     *
+     * @param comparer Comparer for the keys, or null to compare the keys using {@link Object#equals}
+     * @param rowMemory Estimated memory used by a single inner row (in bytes)
+     */
+    public static <TSource, TInner, TKey, TResult> Enumerable<TResult> hashJoin(
+            final Enumerable<TSource> outer,
+            final Enumerable<TInner> inner,
+            final Function1<TSource, TKey> outerKeySelector,
+            final Function1<TInner, TKey> innerKeySelector,
+            final Function2<TSource, TInner, TResult> resultSelector,
+            final EqualityComparer<TKey> comparer,
+            final boolean generateNullsOnLeft,
+            final boolean generateNullsOnRight,
+            final DataContext root,
+            final long rowMemory ) {
+        return new AbstractEnumerable<TResult>() {
+            @Override
+            public Enumerator<TResult> enumerator() {
+                final Spill spill = new Spill( root );
+                try {
+                    final HashJoin<TSource, TInner, TKey, TResult> join = new HashJoin<>(
+                            spill, outerKeySelector, innerKeySelector, resultSelector, comparer, generateNullsOnLeft, generateNullsOnRight, rowMemory );
+                    return spill.guard( join.join( outer::enumerator, inner.enumerator(), 0 ) );
+                } catch ( RuntimeException e ) {
+                    spill.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Returns the partition of a hash code at the given level. Every level uses other bits of the scrambled hash code.
+     */
+    static int partition( Object key, int level ) {
+        final int hash = (key == null ? 0 : key.hashCode()) * 0x9E3779B9;
+        return (hash >>> (Integer.SIZE - PARTITION_BITS * (level + 1))) & (PARTITIONS - 1);
+    }
+
+
+    private static <TKey> Object wrap( EqualityComparer<TKey> comparer, TKey key ) {
+        return comparer == null || key == null ? key : new ComparerKey<>( comparer, key );
+    }
+
+
+    private static <TKey, TSource> Enumerator<Keyed<TKey, TSource>> keyed( final Enumerator<TSource> rows, final Function1<TSource, TKey> keySelector ) {
+        return Linq4j.transform( rows, row -> new Keyed<>( keySelector.apply( row ), row ) );
+    }
+
+
+    /**
+     * Hash aggregation, see {@link #groupBy}.
+     */
+    private static class HashAggregate<TSource, TKey, TAccumulate, TResult> {
+
+        private final Spill spill;
+        private final Function1<TSource, TKey> keySelector;
+        private final Function0<TAccumulate> accumulatorInitializer;
+        private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+        private final Function2<TKey, TAccumulate, TResult> resultSelector;
+        private final EqualityComparer<TKey> comparer;
+        private final long groupMemory;
+
+
+        HashAggregate(
+                Spill spill,
+                Function1<TSource, TKey> keySelector,
+                Function0<TAccumulate> accumulatorInitializer,
+                Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+                Function2<TKey, TAccumulate, TResult> resultSelector,
+                EqualityComparer<TKey> comparer,
+                long groupMemory ) {
+            this.spill = spill;
+            this.keySelector = keySelector;
+            this.accumulatorInitializer = accumulatorInitializer;
+            this.accumulatorAdder = accumulatorAdder;
+            this.resultSelector = resultSelector;
+            this.comparer = comparer;
+            this.groupMemory = groupMemory;
+        }
+
+
+        /**
+         * Aggregates the given rows. The rows of groups which do not fit into memory are partitioned and aggregated
+         * lazily, after the groups in memory have been returned.
+         */
+        Enumerator<TResult> aggregate( Enumerator<TSource> rows, int level ) {
+            final Map<Object, Group<TKey, TAccumulate>> groups = new HashMap<>();
+            SpillFile<TSource>[] partitions = null;
+            try {
+                while ( rows.moveNext() ) {
+                    final TSource row = rows.current();
+                    final TKey key = keySelector.apply( row );
+                    final Object wrapped = wrap( comparer, key );
+                    final Group<TKey, TAccumulate> group = groups.get( wrapped );
+                    if ( group != null ) {
+                        group.accumulator = accumulatorAdder.apply( group.accumulator, row );
+                    } else if ( partitions == null && allocate( level ) ) {
+                        groups.put( wrapped, new Group<>( key, accumulatorAdder.apply( accumulatorInitializer.apply(), row ) ) );
+                    } else {
+                        // Once the first group has been spilled, no new groups are added to the memory. Otherwise,
+                        // the rows of a group could end up both in memory and on disk.
+                        if ( partitions == null ) {
+                            partitions = spill.newPartitions();
+                        }
+                        partitions[partition( wrapped, level )].write( row );
+                    }
+                }
+            } finally {
+                rows.close();
+            }
+
+            final List<Function0<Enumerator<TResult>>> stages = new ArrayList<>();
+            stages.add( () -> Linq4j.transform(
+                    Linq4j.iterableEnumerator( groups.values() ),
+                    group -> resultSelector.apply( group.key, group.accumulator ) ) );
+            stages.add( () -> {
+                spill.reservation.free( groups.size() * groupMemory );
+                groups.clear();
+                return Linq4j.emptyEnumerator();
+            } );
+            if ( partitions != null ) {
+                for ( SpillFile<TSource> partition : partitions ) {
+                    if ( partition.size() > 0 ) {
+                        stages.add( () -> aggregate( partition.read(), level + 1 ) );
+                    } else {
+                        partition.close();
+                    }
+                }
+            }
+            return new ConcatEnumerator<>( stages );
+        }
+
+
+        private boolean allocate( int level ) {
+            if ( level < MAX_LEVEL ) {
+                return spill.reservation.tryAllocate( groupMemory );
+            }
+            spill.reservation.allocate( groupMemory );
+            return true;
+        }
+
+    }
+
+
+    /**
+     * Grace hash join, see {@link #hashJoin}.
+     */
+    private static class HashJoin<TSource, TInner, TKey, TResult> {
+
+        private final Spill spill;
+        private final Function1<TSource, TKey> outerKeySelector;
+        private final Function1<TInner, TKey> innerKeySelector;
+        private final Function2<TSource, TInner, TResult> resultSelector;
+        private final EqualityComparer<TKey> comparer;
+        private final boolean generateNullsOnLeft;
+        private final boolean generateNullsOnRight;
+        private final long rowMemory;
+
+
+        HashJoin(
+                Spill spill,
+                Function1<TSource, TKey> outerKeySelector,
+                Function1<TInner, TKey> innerKeySelector,
+                Function2<TSource, TInner, TResult> resultSelector,
+                EqualityComparer<TKey> comparer,
+                boolean generateNullsOnLeft,
+                boolean generateNullsOnRight,
+                long rowMemory ) {
+            this.spill = spill;
+            this.outerKeySelector = outerKeySelector;
+            this.innerKeySelector = innerKeySelector;
+            this.resultSelector = resultSelector;
+            this.comparer = comparer;
+            this.generateNullsOnLeft = generateNullsOnLeft;
+            this.generateNullsOnRight = generateNullsOnRight;
+            this.rowMemory = rowMemory;
+        }
+
+
+        /**
+         * Joins the given inputs. The outer input is only opened after the inner rows have been read.
+         */
+        Enumerator<TResult> join( Function0<Enumerator<TSource>> outers, Enumerator<TInner> inners, int level ) {
+            final Map<Object, List<TInner>> lookup = new HashMap<>();
+            long allocated = 0;
+            SpillFile<TInner>[] innerPartitions = null;
+            try {
+                while ( inners.moveNext() ) {
+                    final TInner inner = inners.current();
+                    final Object key = wrap( comparer, innerKeySelector.apply( inner ) );
+                    if ( innerPartitions == null && allocate( level ) ) {
+                        lookup.computeIfAbsent( key, k -> new ArrayList<>() ).add( inner );
+                        allocated += rowMemory;
+                        continue;
+                    }
+                    if ( innerPartitions == null ) {
+                        // Move the rows read so far to disk
+                        innerPartitions = spill.newPartitions();
+                        for ( Entry<Object, List<TInner>> entry : lookup.entrySet() ) {
+                            final SpillFile<TInner> partition = innerPartitions[partition( entry.getKey(), level )];
+                            for ( TInner row : entry.getValue() ) {
+                                partition.write( row );
+                            }
+                        }
+                        lookup.clear();
+                        spill.reservation.free( allocated );
+                    }
+                    innerPartitions[partition( key, level )].write( inner );
+                }
+            } finally {
+                inners.close();
+            }
+            if ( innerPartitions == null ) {
+                final long memory = allocated;
+                final List<Function0<Enumerator<TResult>>> stages = new ArrayList<>();
+                stages.add( () -> probe( outers.apply(), lookup ) );
+                stages.add( () -> {
+                    spill.reservation.free( memory );
+                    lookup.clear();
+                    return Linq4j.emptyEnumerator();
+                } );
+                return new ConcatEnumerator<>( stages );
+            }
+
+            final SpillFile<TSource>[] outerPartitions = spill.newPartitions();
+            try ( Enumerator<TSource> rows = outers.apply() ) {
+                while ( rows.moveNext() ) {
+                    final TSource outer = rows.current();
+                    final Object key = outer == null ? null : wrap( comparer, outerKeySelector.apply( outer ) );
+                    outerPartitions[partition( key, level )].write( outer );
+                }
+            }
+            final List<Function0<Enumerator<TResult>>> stages = new ArrayList<>();
+            for ( int i = 0; i < PARTITIONS; i++ ) {
+                final SpillFile<TSource> outerPartition = outerPartitions[i];
+                final SpillFile<TInner> innerPartition = innerPartitions[i];
+                if ( (outerPartition.size() == 0 && !generateNullsOnLeft)
+                        || (innerPartition.size() == 0 && !generateNullsOnRight)
+                        || (outerPartition.size() == 0 && innerPartition.size() == 0) ) {
+                    // Nothing to join
+                    outerPartition.close();
+                    innerPartition.close();
+                    continue;
+                }
+                stages.add( () -> join( outerPartition::read, innerPartition.read(), level + 1 ) );
+            }
+            return new ConcatEnumerator<>( stages );
+        }
+
+
+        private boolean allocate( int level ) {
+            if ( level < MAX_LEVEL ) {
+                return spill.reservation.tryAllocate( rowMemory );
+            }
+            spill.reservation.allocate( rowMemory );
+            return true;
+        }
+
+
+        /**
+         * Joins the outer rows with the inner rows in memory, in the same way as {@link
+         * org.apache.calcite.linq4j.EnumerableDefaults#join}.
+         */
+        private Enumerator<TResult> probe( final Enumerator<TSource> outers, final Map<Object, List<TInner>> lookup ) {
+            final Set<Object> unmatchedKeys = generateNullsOnLeft ? new HashSet<>( lookup.keySet() ) : null;
+            return new Enumerator<TResult>() {
+                private Enumerator<TSource> outerRows = outers;
+                private Iterator<TInner> innerRows = Collections.emptyIterator();
+                private boolean unmatched = false;
+                private TResult current;
+
+
+                @Override
+                public TResult current() {
+                    return current;
+                }
+
+
+                @Override
+                public boolean moveNext() {
+                    while ( true ) {
+                        if ( innerRows.hasNext() ) {
+                            current = resultSelector.apply( unmatched ? null : outerRows.current(), innerRows.next() );
+                            return true;
+                        }
+                        if ( unmatched ) {
+                            return false;
+                        }
+                        if ( !outerRows.moveNext() ) {
+                            if ( unmatchedKeys == null ) {
+                                return false;
+                            }
+                            // Inner rows which have not been matched by any outer row
+                            final List<TInner> rows = new ArrayList<>();
+                            for ( Object key : unmatchedKeys ) {
+                                rows.addAll( lookup.get( key ) );
+                            }
+                            innerRows = rows.iterator();
+                            unmatched = true;
+                            continue;
+                        }
+                        final TSource outer = outerRows.current();
+                        List<TInner> matches = null;
+                        if ( outer != null ) {
+                            final TKey outerKey = outerKeySelector.apply( outer );
+                            if ( outerKey != null ) {
+                                final Object key = wrap( comparer, outerKey );
+                                if ( unmatchedKeys != null ) {
+                                    unmatchedKeys.remove( key );
+                                }
+                                matches = lookup.get( key );
+                            }
+                        }
+                        if ( matches != null ) {
+                            innerRows = matches.iterator();
+                        } else if ( generateNullsOnRight ) {
+                            current = resultSelector.apply( outer, null );
+                            return true;
+                        }
+                    }
+                }
+
+
+                @Override
+                public void reset() {
+                    throw new UnsupportedOperationException();
+                }
+
+
+                @Override
+                public void close() {
+                    outerRows.close();
+                }
+            };
+        }
+
+    }
+
+
+    /**
+     * Memory and temporary files of an operator.
+     */
+    private static class Spill implements AutoCloseable {
+
+        private final Reservation reservation;
+        private final List<SpillFile<?>> files = new ArrayList<>();
+
+
+        Spill( DataContext root ) {
+            this.reservation = QueryMemoryPool.INSTANCE.open( root );
+        }
+
+
+        <E> SpillFile<E> newFile() {
+            final SpillFile<E> file = new SpillFile<>( reservation );
+            files.add( file );
+            return file;
+        }
+
+
+        @SuppressWarnings("unchecked")
+        <E> SpillFile<E>[] newPartitions() {
+            final SpillFile<E>[] partitions = new SpillFile[PARTITIONS];
+            for ( int i = 0; i < PARTITIONS; i++ ) {
+                partitions[i] = newFile();
+            }
+            return partitions;
+        }
+
+
+        /**
+         * Returns an enumerator which releases the memory and deletes the temporary files as soon as it is closed or
+         * has no more elements.
+         */
+        <E> Enumerator<E> guard( final Enumerator<E> enumerator ) {
+            return new Enumerator<E>() {
+                @Override
+                public E current() {
+                    return enumerator.current();
+                }
+
+
+                @Override
+                public boolean moveNext() {
+                    if ( enumerator.moveNext() ) {
+                        return true;
+                    }
+                    Spill.this.close();
+                    return false;
+                }
+
+
+                @Override
+                public void reset() {
+                    throw new UnsupportedOperationException();
+                }
+
+
+                @Override
+                public void close() {
+                    try {
+                        enumerator.close();
+                    } finally {
+                        Spill.this.close();
+                    }
+                }
+            };
+        }
+
+
+        @Override
+        public void close() {
+            for ( SpillFile<?> file : files ) {
+                file.close();
+            }
+            files.clear();
+            reservation.close();
+        }
+
+    }
+
+
+    /**
+     * Concatenation of enumerators which are only created once the previous ones have been exhausted.
+     */
+    private static class ConcatEnumerator<E> implements Enumerator<E> {
+
+        private final Iterator<Function0<Enumerator<E>>> stages;
+        private Enumerator<E> current = Linq4j.emptyEnumerator();
+
+
+        ConcatEnumerator( List<Function0<Enumerator<E>>> stages ) {
+            this.stages = stages.iterator();
+        }
+
+
+        @Override
+        public E current() {
+            return current.current();
+        }
+
+
+        @Override
+        public boolean moveNext() {
+            while ( !current.moveNext() ) {
+                current.close();
+                if ( !stages.hasNext() ) {
+                    current = Linq4j.emptyEnumerator();
+                    return false;
+                }
+                current = stages.next().apply();
+            }
+            return true;
+        }
+
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void close() {
+            current.close();
+        }
+
+    }
+
+
+    /**
+     * K-way merge of sorted inputs. Rows with equal keys are returned in the order of the inputs.
+     */
+    private static class MergeEnumerator<TKey, TSource> implements Enumerator<TSource> {
+
+        private final List<Enumerator<Keyed<TKey, TSource>>> inputs;
+        private final PriorityQueue<Head<TKey, TSource>> heads;
+        private TSource current;
+
+
+        MergeEnumerator( List<Enumerator<Keyed<TKey, TSource>>> inputs, Comparator<Keyed<TKey, TSource>> comparator ) {
+            this.inputs = inputs;
+            this.heads = new PriorityQueue<>( inputs.size(), ( a, b ) -> {
+                final int c = comparator.compare( a.keyed, b.keyed );
+                return c != 0 ? c : Integer.compare( a.input, b.input );
+            } );
+            for ( int i = 0; i < inputs.size(); i++ ) {
+                advance( i );
+            }
+        }
+
+
+        private void advance( int input ) {
+            final Enumerator<Keyed<TKey, TSource>> enumerator = inputs.get( input );
+            if ( enumerator.moveNext() ) {
+                heads.add( new Head<>( enumerator.current(), input ) );
+            } else {
+                enumerator.close();
+            }
+        }
+
+
+        @Override
+        public TSource current() {
+            return current;
+        }
+
+
+        @Override
+        public boolean moveNext() {
+            final Head<TKey, TSource> head = heads.poll();
+            if ( head == null ) {
+                return false;
+            }
+            current = head.keyed.row;
+            advance( head.input );
+            return true;
+        }
+
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void close() {
+            for ( Enumerator<Keyed<TKey, TSource>> input : inputs ) {
+                input.close();
+            }
+        }
+
+    }
+
+
+    private static class KeyedEnumerator<TKey, TSource> implements Enumerator<TSource> {
+
+        private final Iterator<Keyed<TKey, TSource>> iterator;
+        private TSource current;
+
+
+        KeyedEnumerator( Iterator<Keyed<TKey, TSource>> iterator ) {
+            this.iterator = iterator;
+        }
+
+
+        @Override
+        public TSource current() {
+            return current;
+        }
+
+
+        @Override
+        public boolean moveNext() {
+            if ( iterator.hasNext() ) {
+                current = iterator.next().row;
+                return true;
+            }
+            return false;
+        }
+
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void close() {
+            // Nothing to do
+        }
+
+    }
+
+
+    private static class Keyed<TKey, TSource> {
+
+        private final TKey key;
+        private final TSource row;
+
+
+        Keyed( TKey key, TSource row ) {
+            this.key = key;
+            this.row = row;
+        }
+
+    }
+
+
+    private static class Head<TKey, TSource> {
+
+        private final Keyed<TKey, TSource> keyed;
+        private final int input;
+
+
+        Head( Keyed<TKey, TSource> keyed, int input ) {
+            this.keyed = keyed;
+            this.input = input;
+        }
+
+    }
+
+
+    private static class Group<TKey, TAccumulate> {
+
+        private final TKey key;
+        private TAccumulate accumulator;
+
+
+        Group( TKey key, TAccumulate accumulator ) {
+            this.key = key;
+            this.accumulator = accumulator;
+        }
+
+    }
+
+
+    /**
+     * Key which is compared using an {@link EqualityComparer}.
+     */
+    private static class ComparerKey<TKey> {
+
+        private final EqualityComparer<TKey> comparer;
+        private final TKey key;
+
+
+        ComparerKey( EqualityComparer<TKey> comparer, TKey key ) {
+            this.comparer = comparer;
+            this.key = key;
+        }
+
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean equals( Object o ) {
+            return o instanceof ComparerKey && comparer.equal( key, ((ComparerKey<TKey>) o).key );
+        }
+
+
+        @Override
+        public int hashCode() {
+            return comparer.hashCode( key );
+        }
+
+    }
+
+}
@@ -109,6 +109,14 @@ public class Programs {
                     FilterCalcMergeRule.INSTANCE,
                     ProjectCalcMergeRule.INSTANCE );
 
+    /**
+     * Rules which split up large joins and aggregations of the physical plan into parallel fragments.
+     */
+    public static final ImmutableList<RelOptRule> PARALLEL_RULES =
+            ImmutableList.of(
+                    EnumerableRules.ENUMERABLE_PARALLEL_JOIN_RULE,
+                    EnumerableRules.ENUMERABLE_PARALLEL_AGGREGATE_RULE );
+
     /**
      * Program that converts filters and projects to {@link Calc}s.
      */
@@ -123,6 +131,7 @@ public class Programs {
             ImmutableSet.of(
                     EnumerableRules.ENUMERABLE_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_MERGE_JOIN_RULE,
+                    EnumerableRules.ENUMERABLE_PLACEMENT_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_SEMI_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_CORRELATE_RULE,
                     EnumerableRules.ENUMERABLE_CONDITIONAL_EXECUTE_RULE,
@@ -134,6 +143,7 @@ public class Programs {
                     EnumerableRules.ENUMERABLE_SORT_RULE,
                     EnumerableRules.ENUMERABLE_LIMIT_RULE,
                     EnumerableRules.ENUMERABLE_UNION_RULE,
+                    EnumerableRules.ENUMERABLE_PARTITION_UNION_RULE,
                     EnumerableRules.ENUMERABLE_MODIFY_COLLECT_RULE,
                     EnumerableRules.ENUMERABLE_INTERSECT_RULE,
                     EnumerableRules.ENUMERABLE_MINUS_RULE,
@@ -294,6 +304,16 @@ public static Program calc( RelMetadataProvider metadataProvider ) {
     }
 
 
+    /**
+     * Program that evaluates large joins and aggregations of the physical plan on several threads.
+     *
+     * @see org.polypheny.db.adapter.enumerable.EnumerableExchange
+     */
+    public static Program parallelize( RelMetadataProvider metadataProvider ) {
+        return hep( PARALLEL_RULES, true, metadataProvider );
+    }
+
+
     public static Program subQuery( RelMetadataProvider metadataProvider ) {
         return hep(
                 ImmutableList.of(
@@ -345,7 +365,10 @@ public static Program standard( RelMetadataProvider metadataProvider ) {
                 program1,
 
                 // Second planner pass to do physical "tweaks". This the first time that EnumerableCalcRel is introduced.
-                calc( metadataProvider ) );
+                calc( metadataProvider ),
+
+                // Third planner pass which splits up large joins and aggregations into parallel fragments.
+                parallelize( metadataProvider ) );
     }
 
 
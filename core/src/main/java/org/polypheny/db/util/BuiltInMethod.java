@@ -80,6 +80,7 @@
 import org.polypheny.db.interpreter.Context;
 import org.polypheny.db.interpreter.Row;
 import org.polypheny.db.interpreter.Scalar;
+import org.polypheny.db.rel.RelDistribution;
 import org.polypheny.db.rel.metadata.BuiltInMetadata.AllPredicates;
 import org.polypheny.db.rel.metadata.BuiltInMetadata.Collation;
 import org.polypheny.db.rel.metadata.BuiltInMetadata.ColumnOrigin;
@@ -112,6 +113,7 @@
 import org.polypheny.db.runtime.FlatLists;
 import org.polypheny.db.runtime.RandomFunction;
 import org.polypheny.db.runtime.SortedMultiMap;
+import org.polypheny.db.runtime.SpillingEnumerables;
 import org.polypheny.db.runtime.SqlFunctions;
 import org.polypheny.db.runtime.SqlFunctions.FlatProductInputType;
 import org.polypheny.db.runtime.Utilities;
@@ -160,6 +162,12 @@ public enum BuiltInMethod {
     ROW_AS_COPY( Row.class, "asCopy", Object[].class ),
     JOIN( ExtendedEnumerable.class, "join", Enumerable.class, Function1.class, Function1.class, Function2.class ),
     MERGE_JOIN( EnumerableDefaults.class, "mergeJoin", Enumerable.class, Enumerable.class, Function1.class, Function1.class, Function2.class, boolean.class, boolean.class ),
+    CONCURRENT_HASH_JOIN( Enumerables.class, "concurrentHashJoin", Enumerable.class, Enumerable.class, Function1.class, Function1.class, Function2.class, int.class ),
+    CONCURRENT_MERGE_JOIN( Enumerables.class, "concurrentMergeJoin", Enumerable.class, Enumerable.class, Function1.class, Function1.class, Function2.class, int.class ),
+    CONCURRENT_UNION_ALL( Enumerables.class, "concurrentUnionAll", int.class, Enumerable[].class ),
+    EXCHANGE( Enumerables.class, "exchange", int.class, Function0.class, Function1.class, RelDistribution.Type.class ),
+    GATHER( Enumerables.class, "gather", Function0.class, int.class ),
+    SPILLING_HASH_JOIN( SpillingEnumerables.class, "hashJoin", Enumerable.class, Enumerable.class, Function1.class, Function1.class, Function2.class, EqualityComparer.class, boolean.class, boolean.class, DataContext.class, long.class ),
     SLICE0( Enumerables.class, "slice0", Enumerable.class ),
     SEMI_JOIN( EnumerableDefaults.class, "semiJoin", Enumerable.class, Enumerable.class, Function1.class, Function1.class ),
     THETA_JOIN( EnumerableDefaults.class, "thetaJoin", Enumerable.class, Enumerable.class, Predicate2.class, Function2.class, boolean.class, boolean.class ),
@@ -173,9 +181,11 @@ public enum BuiltInMethod {
     DISTINCT2( ExtendedEnumerable.class, "distinct", EqualityComparer.class ),
     GROUP_BY( ExtendedEnumerable.class, "groupBy", Function1.class ),
     GROUP_BY2( ExtendedEnumerable.class, "groupBy", Function1.class, Function0.class, Function2.class, Function2.class ),
+    SPILLING_GROUP_BY( SpillingEnumerables.class, "groupBy", Enumerable.class, Function1.class, Function0.class, Function2.class, Function2.class, EqualityComparer.class, DataContext.class, long.class ),
     GROUP_BY_MULTIPLE( EnumerableDefaults.class, "groupByMultiple", Enumerable.class, List.class, Function0.class, Function2.class, Function2.class ),
     AGGREGATE( ExtendedEnumerable.class, "aggregate", Object.class, Function2.class, Function1.class ),
     ORDER_BY( ExtendedEnumerable.class, "orderBy", Function1.class, Comparator.class ),
+    SPILLING_ORDER_BY( SpillingEnumerables.class, "orderBy", Enumerable.class, Function1.class, Comparator.class, DataContext.class, long.class ),
     UNION( ExtendedEnumerable.class, "union", Enumerable.class ),
     CONCAT( ExtendedEnumerable.class, "concat", Enumerable.class ),
     INTERSECT( ExtendedEnumerable.class, "intersect", Enumerable.class ),
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.calcite.linq4j.Enumerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.polypheny.db.adapter.DataContext.SlimDataContext;
+import org.polypheny.db.adapter.java.JavaTypeFactory;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.jdbc.ContextImpl;
+import org.polypheny.db.jdbc.JavaTypeFactoryImpl;
+import org.polypheny.db.plan.ConventionTraitDef;
+import org.polypheny.db.plan.RelOptUtil;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelRoot;
+import org.polypheny.db.rel.metadata.DefaultRelMetadataProvider;
+import org.polypheny.db.runtime.ArrayBindable;
+import org.polypheny.db.schema.PolyphenyDbSchema;
+import org.polypheny.db.schema.SchemaPlus;
+import org.polypheny.db.schemas.HrClusteredSchema;
+import org.polypheny.db.sql.parser.SqlParser.SqlParserConfig;
+import org.polypheny.db.tools.FrameworkConfig;
+import org.polypheny.db.tools.Frameworks;
+import org.polypheny.db.tools.Planner;
+import org.polypheny.db.tools.Programs;
+import org.polypheny.db.tools.RuleSets;
+
+
+/**
+ * Tests the {@link EnumerableParallelJoinRule} and the {@link EnumerableParallelAggregateRule}. Every query is planned
+ * and executed with and without parallel execution; the results have to be the same.
+ */
+public class EnumerableParallelRulesTest {
+
+    private boolean oldParallelExecution;
+    private int oldDegree;
+    private int oldMinRows;
+
+
+    @Before
+    public void setUp() {
+        oldParallelExecution = RuntimeConfig.PARALLEL_EXECUTION.getBoolean();
+        oldDegree = RuntimeConfig.PARALLEL_EXECUTION_DEGREE.getInteger();
+        oldMinRows = RuntimeConfig.PARALLEL_EXECUTION_MIN_ROWS.getInteger();
+        // The tables of the HR schema only have a few rows
+        RuntimeConfig.PARALLEL_EXECUTION_DEGREE.setInteger( 4 );
+        RuntimeConfig.PARALLEL_EXECUTION_MIN_ROWS.setInteger( 1 );
+    }
+
+
+    @After
+    public void tearDown() {
+        RuntimeConfig.PARALLEL_EXECUTION.setBoolean( oldParallelExecution );
+        RuntimeConfig.PARALLEL_EXECUTION_DEGREE.setInteger( oldDegree );
+        RuntimeConfig.PARALLEL_EXECUTION_MIN_ROWS.setInteger( oldMinRows );
+    }
+
+
+    private static SchemaPlus createRootSchema() {
+        final SchemaPlus rootSchema = Frameworks.createRootSchema( true );
+        rootSchema.add( "hr", new HrClusteredSchema() );
+        return rootSchema;
+    }
+
+
+    private static RelNode plan( SchemaPlus rootSchema, String sql, boolean parallel ) throws Exception {
+        RuntimeConfig.PARALLEL_EXECUTION.setBoolean( parallel );
+        final FrameworkConfig config = Frameworks.newConfigBuilder()
+                .parserConfig( SqlParserConfig.DEFAULT )
+                .defaultSchema( rootSchema.getSubSchema( "hr" ) )
+                .traitDefs( ConventionTraitDef.INSTANCE )
+                .programs( Programs.sequence(
+                        Programs.of( RuleSets.ofList(
+                                EnumerableRules.ENUMERABLE_JOIN_RULE,
+                                EnumerableRules.ENUMERABLE_AGGREGATE_RULE,
+                                EnumerableRules.ENUMERABLE_PROJECT_RULE,
+                                EnumerableRules.ENUMERABLE_FILTER_RULE,
+                                EnumerableRules.ENUMERABLE_PROJECT_TO_CALC_RULE,
+                                EnumerableRules.ENUMERABLE_FILTER_TO_CALC_RULE,
+                                EnumerableRules.ENUMERABLE_TABLE_SCAN_RULE ) ),
+                        Programs.parallelize( DefaultRelMetadataProvider.INSTANCE ) ) )
+                .prepareContext( new ContextImpl(
+                        PolyphenyDbSchema.from( rootSchema ),
+                        new TestDataContext( rootSchema ),
+                        "",
+                        0,
+                        0,
+                        null ) )
+                .build();
+        Planner planner = Frameworks.getPlanner( config );
+        RelRoot root = planner.rel( planner.validate( planner.parse( sql ) ) );
+        RelTraitSet desiredTraits = root.rel.getTraitSet().replace( EnumerableConvention.INSTANCE ).simplify();
+        return planner.transform( 0, desiredTraits, root.rel );
+    }
+
+
+    private static List<String> execute( SchemaPlus rootSchema, RelNode rel ) {
+        final ArrayBindable bindable = EnumerableInterpretable.box( EnumerableInterpretable.toBindable(
+                new HashMap<>(),
+                null,
+                (EnumerableRel) rel,
+                EnumerableRel.Prefer.ARRAY,
+                null ) );
+        final List<String> rows = new ArrayList<>();
+        try ( Enumerator<Object[]> enumerator = bindable.bind( new TestDataContext( rootSchema ) ).enumerator() ) {
+            while ( enumerator.moveNext() ) {
+                rows.add( Arrays.toString( enumerator.current() ) );
+            }
+        }
+        // Gathering does not preserve the order of the rows
+        Collections.sort( rows );
+        return rows;
+    }
+
+
+    /**
+     * Plans and executes the query with and without parallel execution, checks that the results are equal and returns
+     * the parallel plan.
+     */
+    private static String check( String sql, String... expectedRows ) throws Exception {
+        final SchemaPlus rootSchema = createRootSchema();
+        final RelNode sequential = plan( rootSchema, sql, false );
+        assertThat( RelOptUtil.toString( sequential ), not( containsString( "EnumerableExchange" ) ) );
+        final RelNode parallel = plan( rootSchema, sql, true );
+
+        final List<String> expected = Arrays.asList( expectedRows );
+        Collections.sort( expected );
+        assertEquals( expected, execute( rootSchema, sequential ) );
+        assertEquals( expected, execute( rootSchema, parallel ) );
+        return RelOptUtil.toString( parallel );
+    }
+
+
+    @Test
+    public void joinTest() throws Exception {
+        final String plan = check(
+                "select e.\"empid\", d.\"name\" from \"emps\" e join \"depts\" d on e.\"deptno\" = d.\"deptno\"",
+                "[100, Sales]",
+                "[110, Sales]",
+                "[150, Sales]" );
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[single], degree=[4])" ) );
+        assertThat( plan, containsString( "EnumerableJoin" ) );
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[hash[1]], degree=[4])" ) );
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[hash[0]], degree=[4])" ) );
+    }
+
+
+    @Test
+    public void splitAggregateTest() throws Exception {
+        final String plan = check(
+                "select \"deptno\", count(*), sum(\"salary\"), min(\"empid\") from \"emps\" group by \"deptno\"",
+                "[10, 3, 28500, 100]",
+                "[20, 1, 8000, 200]" );
+        // The partial counts are summed up by the final aggregation
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[rr], degree=[4])" ) );
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[single], degree=[4])" ) );
+        assertThat( plan, containsString( "$SUM0(" ) );
+    }
+
+
+    @Test
+    public void emptyGlobalAggregateTest() throws Exception {
+        // Every partition returns a row with a count of zero, the final aggregation has to return exactly one row
+        final String plan = check(
+                "select count(*), sum(\"salary\") from \"emps\" where \"salary\" > 100000",
+                "[0, null]" );
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[rr]" ) );
+        assertThat( plan, containsString( "$SUM0(" ) );
+    }
+
+
+    @Test
+    public void hashAggregateTest() throws Exception {
+        // Aggregate calls with a filter cannot be split, the rows are therefore distributed by the group keys
+        final String plan = check(
+                "select \"deptno\", count(*) filter (where \"salary\" > 8000) from \"emps\" group by \"deptno\"",
+                "[10, 2]",
+                "[20, 0]" );
+        assertThat( plan, containsString( "EnumerableExchange(distribution=[hash[0]], degree=[4])" ) );
+        assertThat( plan, not( containsString( "$SUM0(" ) ) );
+    }
+
+
+    @Test
+    public void smallInputTest() throws Exception {
+        // Not enough rows for a second thread
+        RuntimeConfig.PARALLEL_EXECUTION_MIN_ROWS.setInteger( 100 );
+        final String plan = check(
+                "select count(*) from \"emps\"",
+                "[4]" );
+        assertThat( plan, not( containsString( "EnumerableExchange" ) ) );
+    }
+
+
+    private static class TestDataContext extends SlimDataContext {
+
+        private final SchemaPlus rootSchema;
+
+
+        TestDataContext( SchemaPlus rootSchema ) {
+            this.rootSchema = rootSchema;
+        }
+
+
+        @Override
+        public SchemaPlus getRootSchema() {
+            return rootSchema;
+        }
+
+
+        @Override
+        public JavaTypeFactory getTypeFactory() {
+            return new JavaTypeFactoryImpl();
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.enumerable;
+
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.polypheny.db.adapter.DataContext.SlimDataContext;
+import org.polypheny.db.adapter.java.JavaTypeFactory;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.jdbc.ContextImpl;
+import org.polypheny.db.jdbc.JavaTypeFactoryImpl;
+import org.polypheny.db.plan.ConventionTraitDef;
+import org.polypheny.db.plan.RelOptUtil;
+import org.polypheny.db.plan.RelTraitSet;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelRoot;
+import org.polypheny.db.runtime.ArrayBindable;
+import org.polypheny.db.runtime.Bindable;
+import org.polypheny.db.schema.PolyphenyDbSchema;
+import org.polypheny.db.schema.SchemaPlus;
+import org.polypheny.db.schemas.HrClusteredSchema;
+import org.polypheny.db.sql.parser.SqlParser.SqlParserConfig;
+import org.polypheny.db.tools.FrameworkConfig;
+import org.polypheny.db.tools.Frameworks;
+import org.polypheny.db.tools.Planner;
+import org.polypheny.db.tools.Programs;
+import org.polypheny.db.tools.RuleSets;
+
+
+/**
+ * Tests the {@link PersistentCodeCache}. A restart is simulated by creating a new cache on the same folder.
+ */
+public class PersistentCodeCacheTest {
+
+    private static final String SQL = "select e.\"empid\", d.\"deptno\" + 1 from \"hr\".\"emps\" e join \"hr\".\"depts\" d on e.\"deptno\" = d.\"deptno\" where e.\"salary\" > 5000";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private int oldSize;
+
+
+    @Before
+    public void setUp() {
+        oldSize = RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT_SIZE.getInteger();
+    }
+
+
+    @After
+    public void tearDown() {
+        RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT_SIZE.setInteger( oldSize );
+    }
+
+
+    private static RelNode plan() throws Exception {
+        final SchemaPlus rootSchema = Frameworks.createRootSchema( true );
+        final SchemaPlus defSchema = rootSchema.add( "hr", new HrClusteredSchema() );
+        final FrameworkConfig config = Frameworks.newConfigBuilder()
+                .parserConfig( SqlParserConfig.DEFAULT )
+                .defaultSchema( defSchema )
+                .traitDefs( ConventionTraitDef.INSTANCE )
+                .programs( Programs.of( RuleSets.ofList(
+                        EnumerableRules.ENUMERABLE_JOIN_RULE,
+                        EnumerableRules.ENUMERABLE_PROJECT_RULE,
+                        EnumerableRules.ENUMERABLE_FILTER_RULE,
+                        EnumerableRules.ENUMERABLE_PROJECT_TO_CALC_RULE,
+                        EnumerableRules.ENUMERABLE_FILTER_TO_CALC_RULE,
+                        EnumerableRules.ENUMERABLE_TABLE_SCAN_RULE ) ) )
+                .prepareContext( new ContextImpl(
+                        PolyphenyDbSchema.from( rootSchema ),
+                        new SlimDataContext() {
+                            @Override
+                            public JavaTypeFactory getTypeFactory() {
+                                return new JavaTypeFactoryImpl();
+                            }
+                        },
+                        "",
+                        0,
+                        0,
+                        null ) )
+                .build();
+        Planner planner = Frameworks.getPlanner( config );
+        RelRoot root = planner.rel( planner.validate( planner.parse( SQL ) ) );
+        RelTraitSet desiredTraits = root.rel.getTraitSet().replace( EnumerableConvention.INSTANCE ).simplify();
+        return planner.transform( 0, desiredTraits, root.rel );
+    }
+
+
+    private static String generate( RelNode rel ) {
+        EnumerableRelImplementor implementor = new EnumerableRelImplementor( rel.getCluster().getRexBuilder(), new HashMap<>() );
+        ClassDeclaration expr = implementor.implementRoot( (EnumerableRel) rel, EnumerableRel.Prefer.ARRAY );
+        return Expressions.toString( expr.memberDeclarations, "\n", false );
+    }
+
+
+    private static String arrayBindableSource( String comment ) {
+        return "// " + comment + "\n"
+                + "public org.apache.calcite.linq4j.Enumerable bind(final org.polypheny.db.adapter.DataContext root) {\n"
+                + "  return org.apache.calcite.linq4j.Linq4j.emptyEnumerable();\n"
+                + "}\n"
+                + "public Class getElementType() {\n"
+                + "  return java.lang.Object[].class;\n"
+                + "}\n";
+    }
+
+
+    @Test
+    public void deterministicCodeTest() throws Exception {
+        // Planning and implementing the same query again, like after a restart, results in the same code
+        RelNode first = plan();
+        assertThat( RelOptUtil.toString( first ), containsString( "EnumerableJoin" ) );
+        String code = generate( first );
+        assertEquals( code, generate( plan() ) );
+
+        File folder = temporaryFolder.newFolder();
+        PersistentCodeCache cache = new PersistentCodeCache( folder );
+        int fieldCount = first.getRowType().getFieldCount();
+        assertTrue( cache.getBindable( "Baz", code, fieldCount ) instanceof ArrayBindable );
+        assertEquals( 1, cache.getCompiledCount() );
+        assertEquals( 1, cache.getNumberOfEntries() );
+
+        PersistentCodeCache restarted = new PersistentCodeCache( folder );
+        Bindable bindable = restarted.getBindable( "Baz", generate( plan() ), fieldCount );
+        assertTrue( bindable instanceof ArrayBindable );
+        assertEquals( 0, restarted.getCompiledCount() );
+        assertEquals( 1, restarted.getLoadedCount() );
+        assertEquals( restarted.getKey( bindable ), cache.getKey( cache.getBindable( "Baz", code, fieldCount ) ) );
+    }
+
+
+    @Test
+    public void invalidEntryTest() throws Exception {
+        File folder = temporaryFolder.newFolder();
+        PersistentCodeCache cache = new PersistentCodeCache( folder );
+        Bindable bindable = cache.getBindable( "Baz", arrayBindableSource( "invalid" ), 2 );
+        File entry = new File( folder, cache.getKey( bindable ) + ".class-cache" );
+        assertTrue( entry.exists() );
+        Files.write( entry.toPath(), "corrupted".getBytes( StandardCharsets.UTF_8 ) );
+
+        // The corrupted entry is discarded and the class is compiled again
+        PersistentCodeCache restarted = new PersistentCodeCache( folder );
+        assertTrue( restarted.getBindable( "Baz", arrayBindableSource( "invalid" ), 2 ) instanceof ArrayBindable );
+        assertEquals( 1, restarted.getInvalidCount() );
+        assertEquals( 1, restarted.getCompiledCount() );
+        assertEquals( 1, restarted.getNumberOfEntries() );
+    }
+
+
+    @Test
+    public void evictionTest() throws Exception {
+        RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT_SIZE.setInteger( 2 );
+        File folder = temporaryFolder.newFolder();
+        PersistentCodeCache cache = new PersistentCodeCache( folder );
+
+        String firstKey = cache.getKey( cache.getBindable( "Baz", arrayBindableSource( "first" ), 2 ) );
+        Thread.sleep( 10 );
+        String secondKey = cache.getKey( cache.getBindable( "Baz", arrayBindableSource( "second" ), 2 ) );
+        Thread.sleep( 10 );
+        // Using the first entry again makes the second one the least recently used entry
+        cache.getBindable( "Baz", arrayBindableSource( "first" ), 2 );
+        Thread.sleep( 10 );
+        cache.getBindable( "Baz", arrayBindableSource( "third" ), 2 );
+
+        assertEquals( 2, cache.getNumberOfEntries() );
+        assertTrue( new File( folder, firstKey + ".class-cache" ).exists() );
+        assertFalse( new File( folder, secondKey + ".class-cache" ).exists() );
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.index;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import org.polypheny.db.rel.exceptions.ConstraintViolationException;
+import org.polypheny.db.transaction.PUID;
+import org.polypheny.db.transaction.PUID.Type;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.util.Pair;
+
+
+public class ConcurrentHashIndexTest {
+
+    private static PolyXid newXid() {
+        return PolyXid.generateLocalTransactionIdentifier( PUID.randomPUID( Type.NODE ), PUID.randomPUID( Type.TRANSACTION ) );
+    }
+
+
+    @Test
+    public void testIsolation() {
+        ConcurrentHashIndex idx = new ConcurrentHashIndex( 42L, "idx_test", true, null, null, Collections.emptyList(), Collections.emptyList() );
+        PolyXid xid1 = newXid();
+        PolyXid xid2 = newXid();
+        Assert.assertEquals( 0, idx.getRaw().size() );
+        // Insert and delete some values as xid1
+        idx.insert( xid1, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 1 ) );
+        idx.insertAll( xid1, Arrays.asList(
+                Pair.of( Arrays.asList( 2, 3, 4 ), Collections.singletonList( 2 ) ),
+                Pair.of( Arrays.asList( 3, 4, 5 ), Collections.singletonList( 3 ) ),
+                Pair.of( Arrays.asList( 4, 5, 6 ), Collections.singletonList( 4 ) )
+        ) );
+        idx.delete( xid1, Arrays.asList( 2, 3, 4 ) );
+        // Make sure the values are not yet visible by either transaction
+        Assert.assertFalse( idx.contains( xid1, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertFalse( idx.contains( xid1, Arrays.asList( 3, 4, 5 ) ) );
+        Assert.assertFalse( idx.contains( xid2, Arrays.asList( 1, 2, 3 ) ) );
+        // Invoke atom isolation barrier
+        idx.barrier( xid1 );
+        // Make sure the values are only visible by transaction 1
+        Assert.assertTrue( idx.contains( xid1, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertFalse( idx.contains( xid1, Arrays.asList( 2, 3, 4 ) ) );
+        Assert.assertTrue( idx.contains( xid1, Arrays.asList( 3, 4, 5 ) ) );
+        Assert.assertFalse( idx.contains( xid2, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertFalse( idx.contains( xid2, Arrays.asList( 3, 4, 5 ) ) );
+        Assert.assertEquals( 0, idx.size() );
+        // Commit
+        idx.commit( xid1 );
+        // Make sure the values are visible by both transactions
+        Assert.assertTrue( idx.contains( xid2, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertFalse( idx.contains( xid2, Arrays.asList( 2, 3, 4 ) ) );
+        Assert.assertTrue( idx.contains( xid2, Arrays.asList( 3, 4, 5 ) ) );
+        Assert.assertEquals( 3, idx.size() );
+        Assert.assertEquals( Collections.singletonList( Collections.singletonList( 3 ) ), idx.getRaw().get( Arrays.asList( 3, 4, 5 ) ) );
+        // Delete, then rollback
+        idx.delete( xid1, Arrays.asList( 1, 2, 3 ) );
+        idx.barrier( xid1 );
+        Assert.assertFalse( idx.contains( xid1, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertTrue( idx.contains( xid2, Arrays.asList( 1, 2, 3 ) ) );
+        idx.rollback( xid1 );
+        Assert.assertTrue( idx.contains( xid1, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertEquals( 3, idx.size() );
+    }
+
+
+    @Test
+    public void testDuplicateDetection() {
+        ConcurrentHashIndex idx = new ConcurrentHashIndex( 42L, "idx_test", true, null, null, Collections.emptyList(), Collections.emptyList() );
+        PolyXid xid1 = newXid();
+        idx.insert( xid1, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 1 ) );
+        idx.insert( xid1, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 2 ) );
+        try {
+            idx.barrier( xid1 );
+            Assert.fail( "Expected ConstraintViolationException not thrown!" );
+        } catch ( ConstraintViolationException ignored ) {
+            // pass
+        }
+        // Attempt to commit, should fail, as barrier could not complete
+        try {
+            idx.commit( xid1 );
+            Assert.fail( "Expected IllegalStateException not thrown!" );
+        } catch ( IllegalStateException ignored ) {
+            // pass
+        }
+        Assert.assertEquals( 0, idx.size() );
+
+        // Duplicates of committed keys are detected as well, unless the key has been deleted before
+        PolyXid xid2 = newXid();
+        idx.insert( xid2, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 1 ) );
+        idx.barrier( xid2 );
+        idx.commit( xid2 );
+        PolyXid xid3 = newXid();
+        idx.insert( xid3, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 2 ) );
+        try {
+            idx.barrier( xid3 );
+            Assert.fail( "Expected ConstraintViolationException not thrown!" );
+        } catch ( ConstraintViolationException ignored ) {
+            // pass
+        }
+        idx.rollback( xid3 );
+        PolyXid xid4 = newXid();
+        idx.delete( xid4, Arrays.asList( 1, 2, 3 ) );
+        idx.insert( xid4, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 2 ) );
+        idx.barrier( xid4 );
+        idx.commit( xid4 );
+        Assert.assertEquals( Collections.singletonList( Collections.singletonList( 2 ) ), idx.getRaw().get( Arrays.asList( 1, 2, 3 ) ) );
+    }
+
+
+    @Test
+    public void testMultipleValues() {
+        ConcurrentHashIndex idx = new ConcurrentHashIndex( 42L, "idx_test", false, null, null, Collections.emptyList(), Collections.emptyList() );
+        PolyXid xid1 = newXid();
+        idx.insertAll( xid1, Arrays.asList(
+                Pair.of( Arrays.asList( 1, 2, 3 ), Collections.singletonList( 1 ) ),
+                Pair.of( Arrays.asList( 1, 2, 3 ), Collections.singletonList( 2 ) ),
+                Pair.of( Arrays.asList( 3, 4, 5 ), Collections.singletonList( 3 ) )
+        ) );
+        idx.barrier( xid1 );
+        idx.commit( xid1 );
+        Assert.assertEquals( 2, idx.size() );
+        Assert.assertEquals( 2, idx.getRaw().get( Arrays.asList( 1, 2, 3 ) ).size() );
+
+        PolyXid xid2 = newXid();
+        idx.deletePrimary( xid2, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 1 ) );
+        idx.barrier( xid2 );
+        idx.commit( xid2 );
+        Assert.assertEquals( Collections.singletonList( Collections.singletonList( 2 ) ), idx.getRaw().get( Arrays.asList( 1, 2, 3 ) ) );
+
+        PolyXid xid3 = newXid();
+        idx.deletePrimary( xid3, Arrays.asList( 1, 2, 3 ), Collections.singletonList( 2 ) );
+        idx.barrier( xid3 );
+        Assert.assertFalse( idx.contains( xid3, Arrays.asList( 1, 2, 3 ) ) );
+        Assert.assertTrue( idx.containsAll( xid3, Collections.singletonList( Arrays.asList( 3, 4, 5 ) ) ) );
+        idx.commit( xid3 );
+        Assert.assertEquals( 1, idx.size() );
+    }
+
+
+    @Test
+    public void testConcurrentCommits() throws InterruptedException {
+        ConcurrentHashIndex idx = new ConcurrentHashIndex( 42L, "idx_test", true, null, null, Collections.emptyList(), Collections.emptyList() );
+        final int threads = 4;
+        final int transactions = 500;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for ( int t = 0; t < threads; t++ ) {
+            final int offset = t * transactions;
+            writers.add( new Thread( () -> {
+                try {
+                    for ( int i = offset; i < offset + transactions; i++ ) {
+                        // Every transaction atomically moves a key, readers must never observe both or none
+                        PolyXid xid = newXid();
+                        idx.insert( xid, Arrays.asList( i, "a" ), Collections.singletonList( i ) );
+                        idx.barrier( xid );
+                        idx.commit( xid );
+                        xid = newXid();
+                        idx.delete( xid, Arrays.asList( i, "a" ) );
+                        idx.insert( xid, Arrays.asList( i, "b" ), Collections.singletonList( i ) );
+                        idx.barrier( xid );
+                        idx.commit( xid );
+                        PolyXid reader = newXid();
+                        for ( int j = offset; j <= i; j++ ) {
+                            if ( idx.contains( reader, Arrays.asList( j, "a" ) ) == idx.contains( reader, Arrays.asList( j, "b" ) ) ) {
+                                throw new AssertionError( "Inconsistent state of key " + j );
+                            }
+                        }
+                    }
+                } catch ( Throwable e ) {
+                    failure.compareAndSet( null, e );
+                }
+            } ) );
+        }
+        for ( Thread writer : writers ) {
+            writer.start();
+        }
+        for ( Thread writer : writers ) {
+            writer.join();
+        }
+        Assert.assertNull( failure.get() );
+        Assert.assertEquals( threads * transactions, idx.size() );
+    }
+
+
+    @Test
+    public void testIndexKey() {
+        List<Object> tuple = Arrays.asList( null, true, (byte) 1, (short) 2, 3, 4L, 5.5f, 6.5, "späť", new BigDecimal( "-12345678901234567890.123" ) );
+        IndexKey key = IndexKey.of( tuple );
+        Assert.assertEquals( tuple, key.toList() );
+        Assert.assertEquals( key, IndexKey.of( new ArrayList<>( tuple ) ) );
+        Assert.assertEquals( key.hashCode(), IndexKey.of( new ArrayList<>( tuple ) ).hashCode() );
+        Assert.assertNotEquals( IndexKey.of( Collections.singletonList( 1 ) ), IndexKey.of( Collections.singletonList( 1L ) ) );
+        Assert.assertNotEquals( IndexKey.of( Arrays.asList( "ab", "c" ) ), IndexKey.of( Arrays.asList( "a", "bc" ) ) );
+        // Values of other types are kept as they are
+        List<Object> other = Arrays.asList( 1, new java.sql.Date( 0 ) );
+        Assert.assertEquals( other, IndexKey.of( other ).toList() );
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.rel.metadata;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.plan.hep.HepPlanner;
+import org.polypheny.db.plan.hep.HepProgramBuilder;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.rules.FilterJoinRule;
+import org.polypheny.db.test.SqlToRelTestBase;
+import org.polypheny.db.util.Benchmark;
+
+
+/**
+ * Tests for {@link RelMdStatistics}.
+ */
+@Slf4j
+public class RelMdStatisticsTest extends SqlToRelTestBase {
+
+    private static final double DELTA = 0.01;
+
+
+    @Before
+    public void registerStatistics() {
+        Map<Integer, Long> deptNos = new HashMap<>();
+        // Skewed: most employees work in department 10
+        deptNos.put( 10, 900L );
+        for ( int i = 2; i <= 11; i++ ) {
+            deptNos.put( i * 10, 10L );
+        }
+        MockStatisticsSource source = new MockStatisticsSource();
+        source.columns.put( "EMP.DEPTNO", new MockColumnStatistic( deptNos, 1000, 0, 1000 ) );
+        source.columns.put( "EMP.SAL", new MockColumnStatistic( new HashMap<>(), 1000, 0, 1000 ) );
+        source.columns.put( "EMP.MGR", new MockColumnStatistic( new HashMap<>(), 1000, 100, 1000 ) );
+        Map<Integer, Long> depts = new HashMap<>();
+        for ( int i = 1; i <= 20; i++ ) {
+            depts.put( i * 10, 1L );
+        }
+        source.columns.put( "DEPT.DEPTNO", new MockColumnStatistic( depts, 20, 0, 200 ) );
+        StatisticsSource.setInstance( source );
+    }
+
+
+    @After
+    public void resetStatistics() {
+        StatisticsSource.setInstance( null );
+        RuntimeConfig.STATISTICS_QUERY_OPTIMIZATION.setBoolean( true );
+    }
+
+
+    private double rowCount( String sql ) {
+        RelNode rel = tester.convertSqlToRel( sql ).rel;
+        return rel.getCluster().getMetadataQuery().getRowCount( rel );
+    }
+
+
+    /**
+     * Estimates the row count of the plan after the filters have been pushed into the join and below it
+     */
+    private double optimizedRowCount( String sql ) {
+        HepPlanner planner = new HepPlanner( new HepProgramBuilder().addRuleInstance( FilterJoinRule.FILTER_ON_JOIN ).build() );
+        planner.setRoot( tester.convertSqlToRel( sql ).rel );
+        RelNode rel = planner.findBestExp();
+        return rel.getCluster().getMetadataQuery().getRowCount( rel );
+    }
+
+
+    @Test
+    public void testTableRowCount() {
+        assertEquals( 1000, rowCount( "select * from emp" ), DELTA );
+    }
+
+
+    @Test
+    public void testSkewedEquality() {
+        assertEquals( 900, rowCount( "select * from emp where deptno = 10" ), DELTA );
+        assertEquals( 10, rowCount( "select * from emp where deptno = 20" ), DELTA );
+        assertEquals( 100, rowCount( "select * from emp where deptno <> 10" ), DELTA );
+    }
+
+
+    @Test
+    public void testRangeAndNull() {
+        assertEquals( 250, rowCount( "select * from emp where sal < 250" ), DELTA );
+        assertEquals( 250, rowCount( "select * from emp where 750 < sal" ), DELTA );
+        assertEquals( 100, rowCount( "select * from emp where mgr is null" ), DELTA );
+        assertEquals( 225, rowCount( "select * from emp where deptno = 10 and sal < 250" ), DELTA );
+        assertEquals( 902.5, rowCount( "select * from emp where deptno = 10 or sal < 25" ), DELTA );
+    }
+
+
+    @Test
+    public void testEquiJoin() {
+        // 1000 * 20 / max(11, 20)
+        assertEquals( 1000, rowCount( "select * from emp join dept on emp.deptno = dept.deptno" ), DELTA );
+    }
+
+
+    @Test
+    public void testSkewedJoinPlan() {
+        String sql = "select * from emp join dept on emp.deptno = dept.deptno where emp.deptno = ";
+        double skewed = optimizedRowCount( sql + 10 );
+        double rare = optimizedRowCount( sql + 20 );
+        // The estimates of the plan follow the distribution of the data
+        assertEquals( 900, skewed, 1 );
+        assertEquals( 10, rare, 1 );
+
+        RuntimeConfig.STATISTICS_QUERY_OPTIMIZATION.setBoolean( false );
+        double defaultSkewed = optimizedRowCount( sql + 10 );
+        double defaultRare = optimizedRowCount( sql + 20 );
+        // Without statistics, all departments are estimated the same
+        assertEquals( defaultSkewed, defaultRare, DELTA );
+        assertTrue( skewed > 10 * defaultSkewed );
+    }
+
+
+    @Test
+    public void testDisabled() {
+        RuntimeConfig.STATISTICS_QUERY_OPTIMIZATION.setBoolean( false );
+        // Row count of the mock table
+        assertEquals( 14, rowCount( "select * from emp" ), DELTA );
+    }
+
+
+    @Test
+    public void testEstimationTime() {
+        if ( !Benchmark.enabled() ) {
+            return;
+        }
+        new Benchmark( "estimate filtered join with statistics", statistician -> {
+            long start = System.currentTimeMillis();
+            for ( int i = 0; i < 100; i++ ) {
+                rowCount( "select * from emp join dept on emp.deptno = dept.deptno where emp.deptno = " + (i % 11 + 1) * 10 );
+            }
+            statistician.record( start );
+            return null;
+        }, 10 ).run();
+    }
+
+
+    private static class MockStatisticsSource extends StatisticsSource {
+
+        private final Map<String, MockColumnStatistic> columns = new HashMap<>();
+
+
+        @Override
+        public Double getRowCount( List<String> qualifiedTableName ) {
+            String table = qualifiedTableName.get( qualifiedTableName.size() - 1 );
+            return columns.entrySet().stream()
+                    .filter( e -> e.getKey().startsWith( table + "." ) )
+                    .map( e -> (double) e.getValue().getRowCount() )
+                    .findFirst()
+                    .orElse( null );
+        }
+
+
+        @Override
+        public ColumnStatistic getColumnStatistic( List<String> qualifiedTableName, String columnName ) {
+            return columns.get( qualifiedTableName.get( qualifiedTableName.size() - 1 ) + "." + columnName );
+        }
+
+    }
+
+
+    /**
+     * Statistics of a column with exact value counts and uniformly distributed values between 0 and max
+     */
+    private static class MockColumnStatistic implements StatisticsSource.ColumnStatistic {
+
+        private final Map<Integer, Long> counts;
+        private final long rowCount;
+        private final long nullCount;
+        private final double max;
+
+
+        MockColumnStatistic( Map<Integer, Long> counts, long rowCount, long nullCount, double max ) {
+            this.counts = counts;
+            this.rowCount = rowCount;
+            this.nullCount = nullCount;
+            this.max = max;
+        }
+
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+
+        @Override
+        public double getNullFraction() {
+            return (double) nullCount / rowCount;
+        }
+
+
+        @Override
+        public long getDistinctCount() {
+            return counts.isEmpty() ? rowCount - nullCount : counts.size();
+        }
+
+
+        @Override
+        public double getEqualSelectivity( Object value ) {
+            Long count = counts.get( ((Number) value).intValue() );
+            return count == null ? 0 : (double) count / rowCount;
+        }
+
+
+        @Override
+        public Double getRangeSelectivity( Double lower, Double upper ) {
+            double from = lower == null ? 0 : lower;
+            double to = upper == null ? max : upper;
+            return Math.max( 0, to - from ) / max * (1 - getNullFraction());
+        }
+
+    }
+
+}
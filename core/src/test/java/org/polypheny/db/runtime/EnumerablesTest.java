@@ -37,18 +37,24 @@
 import static com.google.common.collect.Lists.newArrayList;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.EnumerableDefaults;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.function.Functions;
 import org.apache.calcite.linq4j.function.Predicate2;
 import org.junit.Test;
+import org.polypheny.db.rel.RelDistribution;
 
 
 /**
@@ -222,6 +228,92 @@ public void testThetaFullJoinBothEmpty() {
     }
 
 
+    @Test
+    public void testConcurrentHashJoin() {
+        assertThat(
+                Enumerables.concurrentHashJoin( EMPS, DEPTS, e -> e.deptno, d -> d.deptno, EMP_DEPT_TO_STRING, 1 ).toList().toString(),
+                equalTo( "[{Theodore, 20, 20, Sales}, {Sebastian, 20, 20, Sales}]" ) );
+    }
+
+
+    @Test
+    public void testConcurrentMergeJoin() {
+        // Unique keys, as they are produced by the placements of a table
+        assertThat(
+                Enumerables.concurrentMergeJoin(
+                        Linq4j.asEnumerable( Lists.newArrayList( 0, 1, 3, 4, 5 ) ),
+                        Linq4j.asEnumerable( Lists.newArrayList( 1, 2, 4, 5, 6 ) ),
+                        Functions.identitySelector(),
+                        Functions.identitySelector(),
+                        ( v0, v1 ) -> v0 + ":" + v1,
+                        2 ).toList().toString(),
+                equalTo( "[1:1, 4:4, 5:5]" ) );
+        assertThat(
+                Enumerables.concurrentMergeJoin(
+                        Linq4j.asEnumerable( new ArrayList<Integer>() ),
+                        Linq4j.asEnumerable( Lists.newArrayList( 1, 2 ) ),
+                        Functions.identitySelector(),
+                        Functions.identitySelector(),
+                        ( v0, v1 ) -> v0,
+                        2 ).toList().toString(),
+                equalTo( "[]" ) );
+    }
+
+
+    @Test
+    public void testPrefetchPropagatesFailure() {
+        final Enumerable<Integer> failing = Linq4j.asEnumerable( Lists.newArrayList( 1, 2, 3 ) ).select( i -> {
+            if ( i == 3 ) {
+                throw new IllegalStateException( "Adapter failed" );
+            }
+            return i;
+        } );
+        final Enumerator<Integer> enumerator = Enumerables.prefetch( failing, 1 ).enumerator();
+        assertThat( enumerator.moveNext(), equalTo( true ) );
+        assertThat( enumerator.moveNext(), equalTo( true ) );
+        try {
+            enumerator.moveNext();
+            fail( "Expected the failure of the source to be rethrown" );
+        } catch ( IllegalStateException e ) {
+            assertThat( e.getMessage(), equalTo( "Adapter failed" ) );
+        } finally {
+            enumerator.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentUnionAll() {
+        final Enumerable<Integer> first = Linq4j.asEnumerable( Lists.newArrayList( 1, 2, 3 ) );
+        final Enumerable<Integer> second = Linq4j.asEnumerable( Lists.<Integer>newArrayList() );
+        final Enumerable<Integer> third = Linq4j.asEnumerable( Lists.newArrayList( 4, 5 ) );
+        assertThat(
+                Enumerables.concurrentUnionAll( 1, first, second, third ).toList().toString(),
+                equalTo( "[1, 2, 3, 4, 5]" ) );
+    }
+
+
+    @Test
+    public void testExchangeGather() {
+        final Enumerable<Integer> input = Linq4j.asEnumerable( ContiguousSet.create( Range.closedOpen( 0, 100 ), DiscreteDomain.integers() ) );
+
+        // Every key is processed by exactly one partition
+        final Enumerable<Integer> keys = Enumerables.gather(
+                () -> Enumerables.exchange( 1, () -> input, x -> x % 10, RelDistribution.Type.HASH_DISTRIBUTED ).select( x -> x % 10 ).distinct(),
+                4 );
+        assertThat( keys.orderBy( x -> x ).toList().toString(), equalTo( "[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]" ) );
+
+        assertThat(
+                Enumerables.gather( () -> Linq4j.singletonEnumerable( Enumerables.exchange( 1, () -> input, null, RelDistribution.Type.ROUND_ROBIN_DISTRIBUTED ).count() ), 4 ).toList().toString(),
+                equalTo( "[25, 25, 25, 25]" ) );
+        assertThat(
+                Enumerables.gather( () -> Linq4j.singletonEnumerable( Enumerables.exchange( 1, () -> input, null, RelDistribution.Type.BROADCAST_DISTRIBUTED ).count() ), 3 ).toList().toString(),
+                equalTo( "[100, 100, 100]" ) );
+
+        // Outside of a parallel fragment, the rows are passed through
+        assertThat( Enumerables.exchange( 1, () -> input, null, RelDistribution.Type.ROUND_ROBIN_DISTRIBUTED ).count(), equalTo( 100 ) );
+    }
+
+
     /**
      * Employee record.
      */
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.runtime;
+
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.EnumerableDefaults;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.polypheny.db.config.RuntimeConfig;
+
+
+/**
+ * Unit tests for {@link SpillingEnumerables}. The memory budget is set to one megabyte and the rows are pretended to be
+ * large, so that only a few rows fit into memory.
+ */
+public class SpillingEnumerablesTest {
+
+    private static final long ROW_MEMORY = 100 * 1024;
+
+    private static final Function1<Object[], Integer> KEY = row -> (Integer) row[0];
+
+    private static final Function2<Object[], Object[], String> JOIN_SELECTOR = ( left, right ) -> Arrays.toString( left ) + Arrays.toString( right );
+
+    private static int oldBudget;
+    private static boolean oldSpillToDisk;
+
+
+    @BeforeClass
+    public static void setUp() {
+        oldBudget = RuntimeConfig.QUERY_MEMORY_BUDGET.getInteger();
+        oldSpillToDisk = RuntimeConfig.SPILL_TO_DISK.getBoolean();
+        RuntimeConfig.QUERY_MEMORY_BUDGET.setInteger( 1 );
+        RuntimeConfig.SPILL_TO_DISK.setBoolean( true );
+    }
+
+
+    @AfterClass
+    public static void tearDown() {
+        RuntimeConfig.QUERY_MEMORY_BUDGET.setInteger( oldBudget );
+        RuntimeConfig.SPILL_TO_DISK.setBoolean( oldSpillToDisk );
+    }
+
+
+    private static List<Object[]> rows( int count, int keys, long seed ) {
+        final Random random = new Random( seed );
+        final List<Object[]> rows = new ArrayList<>();
+        for ( int i = 0; i < count; i++ ) {
+            // Some rows have no key
+            final Integer key = random.nextInt( 20 ) == 0 ? null : random.nextInt( keys );
+            rows.add( new Object[]{ key, "row" + i } );
+        }
+        return rows;
+    }
+
+
+    private static <E> List<String> sorted( Enumerable<E> enumerable ) {
+        final List<String> list = new ArrayList<>();
+        for ( E e : enumerable ) {
+            list.add( e instanceof Object[] ? Arrays.toString( (Object[]) e ) : String.valueOf( e ) );
+        }
+        Collections.sort( list );
+        return list;
+    }
+
+
+    @Test
+    public void testOrderBy() {
+        final List<Object[]> rows = new ArrayList<>( rows( 2000, 100, 1 ) );
+        rows.removeIf( row -> row[0] == null );
+        final Enumerable<Object[]> expected = Linq4j.asEnumerable( rows ).orderBy( KEY );
+        final Enumerable<Object[]> actual = SpillingEnumerables.orderBy( Linq4j.asEnumerable( rows ), KEY, null, null, ROW_MEMORY );
+        // The sort is stable, the rows with the same key remain in the order of the input
+        assertThat( actual.select( Arrays::toString ).toList(), equalTo( expected.select( Arrays::toString ).toList() ) );
+    }
+
+
+    @Test
+    public void testOrderByInMemory() {
+        final List<Object[]> rows = rows( 10, 5, 2 );
+        final Enumerable<Object[]> expected = Linq4j.asEnumerable( rows ).orderBy( KEY, NullsFirstComparator.INSTANCE );
+        final Enumerable<Object[]> actual = SpillingEnumerables.orderBy( Linq4j.asEnumerable( rows ), KEY, NullsFirstComparator.INSTANCE, null, 1 );
+        assertThat( actual.select( Arrays::toString ).toList(), equalTo( expected.select( Arrays::toString ).toList() ) );
+    }
+
+
+    @Test
+    public void testGroupBy() {
+        final List<Object[]> rows = rows( 2000, 300, 3 );
+        final Enumerable<String> expected = Linq4j.asEnumerable( rows ).groupBy(
+                KEY,
+                () -> 0,
+                ( count, row ) -> count + 1,
+                ( key, count ) -> key + ":" + count );
+        final Enumerable<String> actual = SpillingEnumerables.groupBy(
+                Linq4j.asEnumerable( rows ),
+                KEY,
+                () -> 0,
+                ( count, row ) -> count + 1,
+                ( key, count ) -> key + ":" + count,
+                null,
+                null,
+                ROW_MEMORY );
+        assertThat( sorted( actual ), equalTo( sorted( expected ) ) );
+    }
+
+
+    @Test
+    public void testHashJoin() {
+        final List<Object[]> left = rows( 500, 200, 4 );
+        final List<Object[]> right = rows( 700, 300, 5 );
+        for ( boolean generateNullsOnLeft : new boolean[]{ false, true } ) {
+            for ( boolean generateNullsOnRight : new boolean[]{ false, true } ) {
+                final Enumerable<String> expected = EnumerableDefaults.join(
+                        Linq4j.asEnumerable( left ), Linq4j.asEnumerable( right ), KEY, KEY, JOIN_SELECTOR, null, generateNullsOnLeft, generateNullsOnRight );
+                final Enumerable<String> actual = SpillingEnumerables.hashJoin(
+                        Linq4j.asEnumerable( left ), Linq4j.asEnumerable( right ), KEY, KEY, JOIN_SELECTOR, null, generateNullsOnLeft, generateNullsOnRight, null, ROW_MEMORY );
+                assertThat( sorted( actual ), equalTo( sorted( expected ) ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testHashJoinSkewed() {
+        // All rows have the same key and cannot be partitioned
+        final List<Object[]> left = rows( 50, 1, 6 );
+        final List<Object[]> right = rows( 100, 1, 7 );
+        final Enumerable<String> expected = EnumerableDefaults.join(
+                Linq4j.asEnumerable( left ), Linq4j.asEnumerable( right ), KEY, KEY, JOIN_SELECTOR, null, true, true );
+        final Enumerable<String> actual = SpillingEnumerables.hashJoin(
+                Linq4j.asEnumerable( left ), Linq4j.asEnumerable( right ), KEY, KEY, JOIN_SELECTOR, null, true, true, null, ROW_MEMORY );
+        assertThat( sorted( actual ), equalTo( sorted( expected ) ) );
+    }
+
+
+    @Test
+    public void testPartition() {
+        // Keys which collide at one level are split at the next one
+        final List<Integer> keys = new ArrayList<>();
+        for ( int i = 0; i < 10000 && keys.size() < 100; i++ ) {
+            if ( SpillingEnumerables.partition( i, 0 ) == 3 ) {
+                keys.add( i );
+            }
+        }
+        assertThat( keys.size(), equalTo( 100 ) );
+        assertThat( Linq4j.asEnumerable( keys ).select( key -> SpillingEnumerables.partition( key, 1 ) ).distinct().count() > 1, equalTo( true ) );
+    }
+
+
+    /**
+     * Compares integers, null is smaller than any other value.
+     */
+    private enum NullsFirstComparator implements java.util.Comparator<Integer> {
+        INSTANCE;
+
+
+        @Override
+        public int compare( Integer a, Integer b ) {
+            if ( a == null ) {
+                return b == null ? 0 : -1;
+            }
+            return b == null ? 1 : Integer.compare( a, b );
+        }
+    }
+
+}
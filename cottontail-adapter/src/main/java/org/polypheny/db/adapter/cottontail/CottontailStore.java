@@ -18,6 +18,7 @@
 
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.gson.annotations.Expose;
 import io.grpc.ManagedChannel;
 import io.grpc.netty.NettyChannelBuilder;
@@ -304,7 +305,6 @@ public void addColumn( Context context, CatalogTable catalogTable, CatalogColumn
 
         Iterator<QueryResponseMessage> queryResponse = this.wrapper.query( QueryMessage.newBuilder().setQuery( query ).build() );
 
-        List<InsertMessage> inserts = new ArrayList<>();
         From from = From.newBuilder().setEntity( newTableEntity ).build();
 
         PolyType actualDefaultType;
@@ -318,14 +318,15 @@ public void addColumn( Context context, CatalogTable catalogTable, CatalogColumn
         }
         CottontailGrpc.Data defaultData = CottontailTypeUtil.toData( defaultValue, actualDefaultType );
 
-        queryResponse.forEachRemaining( queryResponseMessage -> {
-            for ( Tuple tuple : queryResponseMessage.getResultsList() ) {
-                Map<String, Data> dataMap = new HashMap<>( tuple.getDataMap() );
-                dataMap.put( newPhysicalColumnName, defaultData );
-
-                inserts.add( InsertMessage.newBuilder().setTuple( Tuple.newBuilder().putAllData( dataMap ).build() ).setFrom( from ).build() );
-            }
-        } );
+        // The rows are inserted into the new entity while they are read from the old one
+        Iterator<Tuple> tuples = Iterators.concat( Iterators.transform( queryResponse, page -> page.getResultsList().iterator() ) );
+        Iterator<InsertMessage> inserts = Iterators.transform(
+                tuples,
+                tuple -> {
+                    Map<String, Data> dataMap = new HashMap<>( tuple.getDataMap() );
+                    dataMap.put( newPhysicalColumnName, defaultData );
+                    return InsertMessage.newBuilder().setTuple( Tuple.newBuilder().putAllData( dataMap ).build() ).setFrom( from ).build();
+                } );
 
         if ( !this.wrapper.insert( inserts ) ) {
             throw new RuntimeException( "Unable to migrate data." );
@@ -374,17 +375,17 @@ public void dropColumn( Context context, CatalogColumnPlacement columnPlacement
 
         Iterator<QueryResponseMessage> queryResponse = this.wrapper.query( QueryMessage.newBuilder().setQuery( query ).build() );
 
-        List<InsertMessage> inserts = new ArrayList<>();
         From from = From.newBuilder().setEntity( newTableEntity ).build();
 
-        queryResponse.forEachRemaining( queryResponseMessage -> {
-            for ( Tuple tuple : queryResponseMessage.getResultsList() ) {
-                Map<String, Data> dataMap = new HashMap<>( tuple.getDataMap() );
-                dataMap.remove( oldPhysicalColumnName );
-
-                inserts.add( InsertMessage.newBuilder().setTuple( Tuple.newBuilder().putAllData( dataMap ).build() ).setFrom( from ).build() );
-            }
-        } );
+        // The rows are inserted into the new entity while they are read from the old one
+        Iterator<Tuple> tuples = Iterators.concat( Iterators.transform( queryResponse, page -> page.getResultsList().iterator() ) );
+        Iterator<InsertMessage> inserts = Iterators.transform(
+                tuples,
+                tuple -> {
+                    Map<String, Data> dataMap = new HashMap<>( tuple.getDataMap() );
+                    dataMap.remove( oldPhysicalColumnName );
+                    return InsertMessage.newBuilder().setTuple( Tuple.newBuilder().putAllData( dataMap ).build() ).setFrom( from ).build();
+                } );
 
         if ( !this.wrapper.insert( inserts ) ) {
             throw new RuntimeException( "Unable to migrate data." );
@@ -506,33 +507,29 @@ public void updateColumnType( Context context, CatalogColumnPlacement columnPlac
 
         Iterator<QueryResponseMessage> queryResponse = this.wrapper.query( QueryMessage.newBuilder().setQuery( query ).build() );
 
-        List<InsertMessage> inserts = new ArrayList<>();
         From from = From.newBuilder().setEntity( newTableEntity ).build();
 
-        queryResponse.forEachRemaining( queryResponseMessage -> {
-            for ( Tuple tuple : queryResponseMessage.getResultsList() ) {
-                Map<String, Data> dataMap = new HashMap<>( tuple.getDataMap() );
-                Object o = PolyTypeConversionUtil.convertValue(
-                        CottontailTypeUtil.dataToValue( dataMap.get( columnPlacement.physicalColumnName ), oldType ),
-                        oldType,
-                        catalogColumn.type );
-
-                dataMap.put( columnPlacement.physicalColumnName, CottontailTypeUtil.toData( o, catalogColumn.type ) );
-
-                InsertMessage insertMessage = InsertMessage.newBuilder()
-                        .setTuple( Tuple.newBuilder().putAllData( dataMap ).build() )
-                        .setFrom( from )
-                        .build();
-                inserts.add( insertMessage );
+        // The converted rows are inserted into the new entity while they are read from the old one
+        Iterator<Tuple> tuples = Iterators.concat( Iterators.transform( queryResponse, page -> page.getResultsList().iterator() ) );
+        Iterator<InsertMessage> inserts = Iterators.transform(
+                tuples,
+                tuple -> {
+                    Map<String, Data> dataMap = new HashMap<>( tuple.getDataMap() );
+                    Object o = PolyTypeConversionUtil.convertValue(
+                            CottontailTypeUtil.dataToValue( dataMap.get( columnPlacement.physicalColumnName ), oldType ),
+                            oldType,
+                            catalogColumn.type );
+
+                    dataMap.put( columnPlacement.physicalColumnName, CottontailTypeUtil.toData( o, catalogColumn.type ) );
+
+                    return InsertMessage.newBuilder()
+                            .setTuple( Tuple.newBuilder().putAllData( dataMap ).build() )
+                            .setFrom( from )
+                            .build();
+                } );
 
-                if ( inserts.size() > 100 ) {
-                    this.wrapper.insert( inserts );
-                }
-            }
-        } );
-
-        if ( inserts.size() > 0 ) {
-            this.wrapper.insert( inserts );
+        if ( !this.wrapper.insert( inserts ) ) {
+            throw new RuntimeException( "Unable to migrate data." );
         }
 
         for ( CatalogColumnPlacement ccp : placements ) {
@@ -21,6 +21,7 @@
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -61,7 +62,6 @@
 import org.polypheny.db.util.BuiltInMethod;
 import org.polypheny.db.util.Pair;
 import org.vitrivr.cottontail.grpc.CottontailGrpc;
-import org.vitrivr.cottontail.grpc.CottontailGrpc.BatchedQueryMessage;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.Entity;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.From;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.Knn;
@@ -462,7 +462,7 @@ public static CottontailQueryEnumerable<Object> query(
                     QueryMessage.newBuilder().setQuery( query ).build() );
 
         } else {
-            BatchedQueryMessage.Builder batchedQueryMessageBuilder = BatchedQueryMessage.newBuilder();
+            List<QueryMessage> queries = new ArrayList<>( dataContext.getParameterValues().size() );
             for ( Map parameterValues : dataContext.getParameterValues() ) {
                 Query query = Query.newBuilder()
                         .setFrom( From.newBuilder().setEntity( Entity.newBuilder().setName( from ).build() ).build() )
@@ -472,10 +472,10 @@ public static CottontailQueryEnumerable<Object> query(
                         .setProjection( Projection.newBuilder().putAllAttributes( (Map<String, String>) projection ).build() )
                         .setWhere( (Where) whereBuilder.apply( parameterValues ) )
                         .build();
-                batchedQueryMessageBuilder.addQueries( query );
+                queries.add( QueryMessage.newBuilder().setQuery( query ).build() );
             }
 
-            queryResponseIterator = wrapper.batchedQuery( batchedQueryMessageBuilder.build() );
+            queryResponseIterator = wrapper.query( queries );
         }
         return new CottontailQueryEnumerable<>( queryResponseIterator, rowParser );
     }
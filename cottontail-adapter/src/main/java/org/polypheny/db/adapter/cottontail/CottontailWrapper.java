@@ -21,10 +21,16 @@
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,6 +43,7 @@
 import org.vitrivr.cottontail.grpc.CottonDMLGrpc.CottonDMLStub;
 import org.vitrivr.cottontail.grpc.CottonDQLGrpc;
 import org.vitrivr.cottontail.grpc.CottonDQLGrpc.CottonDQLBlockingStub;
+import org.vitrivr.cottontail.grpc.CottonDQLGrpc.CottonDQLStub;
 import org.vitrivr.cottontail.grpc.CottontailGrpc;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.BatchedQueryMessage;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.DeleteMessage;
@@ -65,6 +72,9 @@ public class CottontailWrapper implements AutoCloseable {
     public static final int maxMessageSize = 150_000_000;
     private static final long MAX_QUERY_CALL_TIMEOUT = 300_000; // TODO expose to config
     private static final long MAX_CALL_TIMEOUT = 5000; // TODO expose to config
+    private static final long INSERT_READY_TIMEOUT = 100;
+    private static final int QUERY_PREFETCH_PAGES = 4; // Number of response pages requested ahead of the consumer
+    private static final int MAX_CONCURRENT_QUERIES = 4; // Number of queries of a batch executed concurrently
 
 
     public CottontailWrapper( ManagedChannel channel ) {
@@ -258,9 +268,33 @@ public void onCompleted() {
 
 
     public boolean insert( List<InsertMessage> messages ) {
+        return insert( messages.iterator() );
+    }
+
+
+    /**
+     * Streams the messages to Cottontail DB in a single call, which inserts them in one transaction. The messages are
+     * only taken from the iterator while the transport is ready to send them. This bounds the amount of data which is
+     * buffered for the call and allows to produce the messages lazily.
+     *
+     * @return True on success, false otherwise.
+     */
+    public boolean insert( Iterator<InsertMessage> messages ) {
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final AtomicBoolean errored = new AtomicBoolean( false );
+        final Object ready = new Object();
+
+        final ClientResponseObserver<InsertMessage, CottontailGrpc.Status> observer = new ClientResponseObserver<InsertMessage, CottontailGrpc.Status>() {
+
+            @Override
+            public void beforeStart( ClientCallStreamObserver<InsertMessage> requestStream ) {
+                requestStream.setOnReadyHandler( () -> {
+                    synchronized ( ready ) {
+                        ready.notifyAll();
+                    }
+                } );
+            }
 
-        final boolean[] status = { false, false }; /* {done, error}. */
-        final StreamObserver<CottontailGrpc.Status> observer = new StreamObserver<CottontailGrpc.Status>() {
 
             @Override
             public void onNext( CottontailGrpc.Status value ) {
@@ -270,34 +304,55 @@ public void onNext( CottontailGrpc.Status value ) {
 
             @Override
             public void onError( Throwable t ) {
-                status[0] = true;
-                status[1] = true;
+                errored.set( true );
                 log.error( "Error during insert. Everything was rolled back: {}", t.getMessage() );
+                done.countDown();
+                synchronized ( ready ) {
+                    ready.notifyAll();
+                }
             }
 
 
             @Override
             public void onCompleted() {
-                status[0] = true;
                 log.trace( "Insert successful. Changes were committed!" );
+                done.countDown();
             }
         };
 
+        ClientCallStreamObserver<InsertMessage> sink = null;
         try {
             /* Start data transfer. */
-            final StreamObserver<InsertMessage> sink = this.managementStub.insert( observer );
-            for ( InsertMessage message : messages ) {
-                sink.onNext( message );
+            sink = (ClientCallStreamObserver<InsertMessage>) this.insertStub.insert( observer );
+            while ( messages.hasNext() && done.getCount() > 0 ) {
+                synchronized ( ready ) {
+                    // The timeout only guards against missed notifications
+                    while ( !sink.isReady() && done.getCount() > 0 ) {
+                        ready.wait( INSERT_READY_TIMEOUT );
+                    }
+                }
+                if ( done.getCount() > 0 ) {
+                    sink.onNext( messages.next() );
+                }
             }
-            sink.onCompleted(); /* Send commit message. */
-
-            while ( !status[0] ) {
-                Thread.yield();
+            if ( done.getCount() > 0 ) {
+                sink.onCompleted(); /* Send commit message. */
+            }
+            done.await();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            errored.set( true );
+            if ( sink != null ) {
+                sink.cancel( "Insert was interrupted", e );
             }
         } catch ( Exception e ) {
             log.error( "Caught exception", e );
+            errored.set( true );
+            if ( sink != null ) {
+                sink.cancel( "Insert has failed", e );
+            }
         }
-        return !status[1];
+        return !errored.get();
     }
 
 
@@ -313,22 +368,35 @@ public void onCompleted() {
 
 
     /**
-     * Issues a single query to the Cottontail DB endpoint in a blocking fashion.
+     * Issues a single query to the Cottontail DB endpoint. The results are streamed, the returned iterator prefetches
+     * response pages while the previous ones are processed.
      *
      * @return The query results (unprocessed).
      */
     public Iterator<QueryResponseMessage> query( QueryMessage query ) {
-        final CottonDQLBlockingStub stub = CottonDQLGrpc.newBlockingStub( this.channel ).withDeadlineAfter( MAX_QUERY_CALL_TIMEOUT, TimeUnit.MILLISECONDS );
-        try {
-            return stub.query( query );
-        } catch ( StatusRuntimeException e ) {
-            if ( e.getStatus() == Status.DEADLINE_EXCEEDED ) {
-                log.error( "CottontailWrapper.batchedQuery has timed out (timeout = {}ms).", MAX_QUERY_CALL_TIMEOUT );
-            } else {
-                log.error( "Error occurred during invocation of CottontailWrapper.batchedQuery: {}", e.getMessage() );
-            }
-            throw new RuntimeException( e );
+        return startQuery( query );
+    }
+
+
+    private PrefetchingQueryIterator startQuery( QueryMessage query ) {
+        final CottonDQLStub stub = CottonDQLGrpc.newStub( this.channel ).withDeadlineAfter( MAX_QUERY_CALL_TIMEOUT, TimeUnit.MILLISECONDS );
+        final PrefetchingQueryIterator iterator = new PrefetchingQueryIterator( QUERY_PREFETCH_PAGES );
+        stub.query( query, iterator );
+        return iterator;
+    }
+
+
+    /**
+     * Issues multiple queries to the Cottontail DB endpoint. Up to {@link #MAX_CONCURRENT_QUERIES} queries are executed
+     * concurrently, their results are returned in the order of the queries.
+     *
+     * @return The query results (unprocessed).
+     */
+    public Iterator<QueryResponseMessage> query( List<QueryMessage> queries ) {
+        if ( queries.size() == 1 ) {
+            return query( queries.get( 0 ) );
         }
+        return new ConcurrentQueryIterator( queries );
     }
 
 
@@ -402,4 +470,68 @@ public void close() {
         this.channel.shutdown();
     }
 
+
+    /**
+     * Concatenates the results of multiple queries. The next queries are issued while the results of the current one
+     * are consumed.
+     */
+    private class ConcurrentQueryIterator implements Iterator<QueryResponseMessage>, AutoCloseable {
+
+        private final Iterator<QueryMessage> pending;
+        private final Deque<PrefetchingQueryIterator> running = new ArrayDeque<>();
+        private RuntimeException failure = null;
+
+
+        ConcurrentQueryIterator( List<QueryMessage> queries ) {
+            this.pending = queries.iterator();
+            while ( running.size() < MAX_CONCURRENT_QUERIES && pending.hasNext() ) {
+                running.add( startQuery( pending.next() ) );
+            }
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            if ( failure != null ) {
+                throw failure;
+            }
+            try {
+                while ( !running.isEmpty() ) {
+                    if ( running.peekFirst().hasNext() ) {
+                        return true;
+                    }
+                    running.removeFirst();
+                    if ( pending.hasNext() ) {
+                        running.add( startQuery( pending.next() ) );
+                    }
+                }
+            } catch ( RuntimeException e ) {
+                // The result is incomplete, the other queries are not needed anymore
+                failure = e;
+                close();
+                throw e;
+            }
+            return false;
+        }
+
+
+        @Override
+        public QueryResponseMessage next() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            return running.peekFirst().next();
+        }
+
+
+        @Override
+        public void close() {
+            for ( PrefetchingQueryIterator iterator : running ) {
+                iterator.close();
+            }
+            running.clear();
+        }
+
+    }
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.adapter.cottontail;
+
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.QueryMessage;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.QueryResponseMessage;
+
+
+/**
+ * Iterator over the response pages of a query issued on the asynchronous stub. Pages are received in the background
+ * while the previous ones are processed. Inbound flow control limits the number of pages which have been requested but
+ * not yet consumed to the prefetch size, so a slow consumer does not cause the whole result to be buffered.
+ */
+@Slf4j
+class PrefetchingQueryIterator implements Iterator<QueryResponseMessage>, ClientResponseObserver<QueryMessage, QueryResponseMessage>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final int prefetch;
+    // Contains response pages followed by either END or the throwable which has terminated the call
+    private final BlockingQueue<Object> pages = new LinkedBlockingQueue<>();
+
+    private volatile ClientCallStreamObserver<QueryMessage> requestStream;
+    private boolean firstPageReceived = false; // Only accessed by the gRPC callbacks
+    private Object next;
+    private boolean done = false;
+    private RuntimeException failure = null; // Rethrown on every further access, the result must not appear to be complete
+
+
+    PrefetchingQueryIterator( int prefetch ) {
+        this.prefetch = Math.max( 1, prefetch );
+    }
+
+
+    @Override
+    public void beforeStart( ClientCallStreamObserver<QueryMessage> requestStream ) {
+        this.requestStream = requestStream;
+        // The first page is requested when the call is started
+        requestStream.disableAutoInboundFlowControl();
+    }
+
+
+    @Override
+    public void onNext( QueryResponseMessage value ) {
+        pages.add( value );
+        if ( !firstPageReceived ) {
+            firstPageReceived = true;
+            if ( prefetch > 1 ) {
+                requestStream.request( prefetch - 1 );
+            }
+        }
+    }
+
+
+    @Override
+    public void onError( Throwable t ) {
+        pages.add( t );
+    }
+
+
+    @Override
+    public void onCompleted() {
+        pages.add( END );
+    }
+
+
+    /**
+     * @throws RuntimeException if the call has failed, e.g. because of an error in Cottontail DB or an exceeded deadline
+     */
+    @Override
+    public boolean hasNext() {
+        if ( failure != null ) {
+            throw failure;
+        }
+        if ( done ) {
+            return false;
+        }
+        if ( next == null ) {
+            try {
+                next = pages.take();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException( "Interrupted while waiting for the results of Cottontail DB", e );
+            }
+        }
+        if ( next == END ) {
+            done = true;
+            return false;
+        } else if ( next instanceof Throwable ) {
+            done = true;
+            log.error( "Error occurred during invocation of CottontailWrapper.query: {}", ((Throwable) next).getMessage() );
+            failure = new RuntimeException( "Query on Cottontail DB has failed", (Throwable) next );
+            throw failure;
+        }
+        return true;
+    }
+
+
+    @Override
+    public QueryResponseMessage next() {
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        QueryResponseMessage page = (QueryResponseMessage) next;
+        next = null;
+        // Replace the consumed page
+        requestStream.request( 1 );
+        return page;
+    }
+
+
+    /**
+     * Cancels the call if the result has not been consumed completely.
+     */
+    @Override
+    public void close() {
+        if ( !done ) {
+            done = true;
+            if ( requestStream != null ) {
+                requestStream.cancel( "Result is not consumed anymore", null );
+            }
+        }
+    }
+
+}
@@ -124,16 +124,26 @@ public T current() {
         }
 
 
+        /**
+         * Executes the messages of all parameter sets and reports the total number of changed rows as a single row,
+         * like the other stores do for a batch.
+         */
         @Override
         public boolean moveNext() {
-            if ( deleteMessageIterator.hasNext() ) {
+            if ( !deleteMessageIterator.hasNext() ) {
+                return false;
+            }
+            long total = 0;
+            while ( deleteMessageIterator.hasNext() ) {
                 DeleteMessage deleteMessage = deleteMessageIterator.next();
-
-                this.currentResult = wrapper.delete( deleteMessage );
-
-                return !this.currentResult.equals( -1L );
+                long result = wrapper.delete( deleteMessage );
+                if ( result == -1L ) {
+                    return false;
+                }
+                total += result;
             }
-            return false;
+            this.currentResult = total;
+            return true;
         }
 
 
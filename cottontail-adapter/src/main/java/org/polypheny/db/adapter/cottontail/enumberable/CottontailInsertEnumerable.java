@@ -17,10 +17,11 @@
 package org.polypheny.db.adapter.cottontail.enumberable;
 
 
+import com.google.common.collect.Iterators;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import org.apache.calcite.linq4j.AbstractEnumerable;
@@ -50,13 +51,24 @@
             "fromPreparedStatements",
             String.class, String.class, Function1.class, DataContext.class, CottontailWrapper.class );
 
-    private final List<InsertMessage> inserts;
+    private final Iterable<InsertMessage> inserts;
+    private final int count;
     private final CottontailWrapper wrapper;
     private final boolean fromPrepared;
 
 
     public CottontailInsertEnumerable( List<InsertMessage> inserts, DataContext dataContext, CottontailWrapper wrapper, boolean fromPrepared ) {
+        this( inserts, inserts.size(), wrapper, fromPrepared );
+    }
+
+
+    /**
+     * @param inserts the messages to insert, which may be created lazily while they are sent
+     * @param count the number of messages
+     */
+    private CottontailInsertEnumerable( Iterable<InsertMessage> inserts, int count, CottontailWrapper wrapper, boolean fromPrepared ) {
         this.inserts = inserts;
+        this.count = count;
         this.wrapper = wrapper;
         this.fromPrepared = fromPrepared;
     }
@@ -95,36 +107,37 @@ public static CottontailInsertEnumerable<Object> fromPreparedStatements(
             CottontailWrapper wrapper
     ) {
         CottontailGrpc.From from_ = CottontailTypeUtil.fromFromTableAndSchema( from, schema );
-        List<InsertMessage> insertMessages = new ArrayList<>();
 
+        final List<Map<Long, Object>> parameterSets;
         if ( dataContext.getParameterValues().size() == 0 ) {
-            Map<Long, Object> parameterValues = new HashMap<>();
-            Tuple tuple = Tuple.newBuilder().putAllData( tupleBuilder.apply( parameterValues ) ).build();
-            insertMessages.add(
-                    InsertMessage.newBuilder().setFrom( from_ ).setTuple( tuple ).build() );
+            parameterSets = Collections.singletonList( new HashMap<>() );
         } else {
-            for ( Map<Long, Object> parameterValues : dataContext.getParameterValues() ) {
-                Tuple tuple = Tuple.newBuilder().putAllData( tupleBuilder.apply( parameterValues ) ).build();
-                insertMessages.add(
-                        InsertMessage.newBuilder().setFrom( from_ ).setTuple( tuple ).build() );
-            }
+            parameterSets = dataContext.getParameterValues();
         }
 
-        return new CottontailInsertEnumerable<>( insertMessages, dataContext, wrapper, true );
+        // The messages are built while they are sent, instead of building the messages for all parameter sets upfront
+        Iterable<InsertMessage> insertMessages = () -> Iterators.transform(
+                parameterSets.iterator(),
+                parameterValues -> InsertMessage.newBuilder()
+                        .setFrom( from_ )
+                        .setTuple( Tuple.newBuilder().putAllData( tupleBuilder.apply( parameterValues ) ) )
+                        .build() );
+
+        return new CottontailInsertEnumerable<>( insertMessages, parameterSets.size(), wrapper, true );
     }
 
 
     @Override
     public Enumerator<T> enumerator() {
-        return new CottontailInsertResultEnumerator<>( inserts, wrapper, fromPrepared );
+        return new CottontailInsertResultEnumerator<>( inserts, count, wrapper, fromPrepared );
     }
 
 
     private static class CottontailInsertResultEnumerator<T> implements Enumerator<T> {
 
-        private List<InsertMessage> inserts;
+        private Iterable<InsertMessage> inserts;
+        private int count;
         private CottontailWrapper wrapper;
-        private Iterator<InsertMessage> insertMessageIterator;
 
         private boolean wasSuccessful;
         private boolean executed;
@@ -132,10 +145,10 @@ public Enumerator<T> enumerator() {
         private boolean fromPrepared;
 
 
-        public CottontailInsertResultEnumerator( List<InsertMessage> inserts, CottontailWrapper wrapper, boolean fromPrepared ) {
+        public CottontailInsertResultEnumerator( Iterable<InsertMessage> inserts, int count, CottontailWrapper wrapper, boolean fromPrepared ) {
             this.inserts = inserts;
+            this.count = count;
             this.wrapper = wrapper;
-            this.insertMessageIterator = inserts.iterator();
             this.checkCount = 0;
             this.fromPrepared = fromPrepared;
         }
@@ -145,7 +158,7 @@ public CottontailInsertResultEnumerator( List<InsertMessage> inserts, Cottontail
         @Override
         public T current() {
             if ( this.wasSuccessful ) {
-                return (T) Integer.valueOf( this.inserts.size() );
+                return (T) Integer.valueOf( this.count );
             } else {
                 return (T) Integer.valueOf( -1 );
             }
@@ -155,9 +168,7 @@ public T current() {
         @Override
         public boolean moveNext() {
             if ( !this.executed ) {
-//            if ( this.insertMessageIterator.hasNext() ) {
-                this.wasSuccessful = this.wrapper.insert( this.inserts );
-//                this.wasSuccessful = this.wrapper.insert( ImmutableList.of( this.insertMessageIterator.next() ) );
+                this.wasSuccessful = this.wrapper.insert( this.inserts.iterator() );
                 executed = true;
                 this.checkCount += 1;
                 return this.wasSuccessful;
@@ -165,7 +176,7 @@ public boolean moveNext() {
                 if ( !this.fromPrepared ) {
                     return false;
                 }
-                if ( this.checkCount < this.inserts.size() ) {
+                if ( this.checkCount < this.count ) {
                     this.checkCount += 1;
                     return true;
                 } else {
@@ -19,6 +19,7 @@
 
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -36,7 +37,6 @@
 import org.polypheny.db.sql.fun.SqlArrayValueConstructor;
 import org.polypheny.db.type.ArrayType;
 import org.vitrivr.cottontail.grpc.CottontailGrpc;
-import org.vitrivr.cottontail.grpc.CottontailGrpc.BatchedQueryMessage;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.Data;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.Entity;
 import org.vitrivr.cottontail.grpc.CottontailGrpc.From;
@@ -130,7 +130,8 @@ public static CottontailQueryEnumerable<Object> query(
             queryResponseIterator = wrapper.query( QueryMessage.newBuilder().setQuery( query ).build() );
 
         } else {
-            BatchedQueryMessage.Builder batchedQueryMessageBuilder = BatchedQueryMessage.newBuilder();
+            // One query per parameter set, the wrapper executes them concurrently
+            List<QueryMessage> queries = new ArrayList<>( dataContext.getParameterValues().size() );
             for ( Map<Long, Object> parameterValues : dataContext.getParameterValues() ) {
 
                 Integer limit = null;
@@ -144,10 +145,10 @@ public static CottontailQueryEnumerable<Object> query(
                 }
 
                 Query query = buildSingleQuery( from, schema, projection, whereBuilder, knnBuilder, limit, offset, parameterValues );
-                batchedQueryMessageBuilder.addQueries( query );
+                queries.add( QueryMessage.newBuilder().setQuery( query ).build() );
             }
 
-            queryResponseIterator = wrapper.batchedQuery( batchedQueryMessageBuilder.build() );
+            queryResponseIterator = wrapper.query( queries );
         }
 
         return new CottontailQueryEnumerable<Object>( queryResponseIterator, rowParser );
@@ -289,7 +290,14 @@ public void reset() {
 
         @Override
         public void close() {
-            // TODO js(ct): do we need to do something here?
+            // Cancels the query if the result has not been consumed completely
+            if ( this.queryIterator instanceof AutoCloseable ) {
+                try {
+                    ((AutoCloseable) this.queryIterator).close();
+                } catch ( Exception e ) {
+                    throw new RuntimeException( e );
+                }
+            }
         }
 
     }
@@ -137,16 +137,26 @@ public T current() {
         }
 
 
+        /**
+         * Executes the messages of all parameter sets and reports the total number of changed rows as a single row,
+         * like the other stores do for a batch.
+         */
         @Override
         public boolean moveNext() {
-            if ( updateMessageIterator.hasNext() ) {
+            if ( !updateMessageIterator.hasNext() ) {
+                return false;
+            }
+            long total = 0;
+            while ( updateMessageIterator.hasNext() ) {
                 UpdateMessage updateMessage = updateMessageIterator.next();
-
-                this.currentResult = wrapper.update( updateMessage );
-
-                return !this.currentResult.equals( -1L );
+                long result = wrapper.update( updateMessage );
+                if ( result == -1L ) {
+                    return false;
+                }
+                total += result;
             }
-            return false;
+            this.currentResult = total;
+            return true;
         }
 
 
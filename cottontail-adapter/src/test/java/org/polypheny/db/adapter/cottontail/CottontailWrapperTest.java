@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.cottontail;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.calcite.linq4j.Enumerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.polypheny.db.adapter.cottontail.enumberable.CottontailQueryEnumerable;
+import org.vitrivr.cottontail.grpc.CottonDMLGrpc.CottonDMLImplBase;
+import org.vitrivr.cottontail.grpc.CottonDQLGrpc.CottonDQLImplBase;
+import org.vitrivr.cottontail.grpc.CottontailGrpc;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.Data;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.InsertMessage;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.QueryMessage;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.QueryResponseMessage;
+import org.vitrivr.cottontail.grpc.CottontailGrpc.Tuple;
+
+
+/**
+ * Tests the streaming calls of the wrapper against an in-process server standing in for Cottontail DB.
+ */
+public class CottontailWrapperTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private final AtomicInteger inserted = new AtomicInteger();
+    private final CountDownLatch cancelled = new CountDownLatch( 1 );
+
+    // Number of pages the query service sends, followed by an error if failAfterPages is set
+    private volatile int pages = 3;
+    private volatile boolean failAfterPages = false;
+    private volatile boolean failInsert = false;
+
+    private Server server;
+    private CottontailWrapper wrapper;
+
+
+    @Before
+    public void startServer() throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName( name )
+                .addService( new InsertService() )
+                .addService( new QueryService() )
+                .build()
+                .start();
+        wrapper = new CottontailWrapper( InProcessChannelBuilder.forName( name ).build() );
+    }
+
+
+    @After
+    public void stopServer() throws InterruptedException {
+        wrapper.close();
+        server.shutdownNow().awaitTermination( 10, TimeUnit.SECONDS );
+    }
+
+
+    private static QueryResponseMessage page( int number ) {
+        QueryResponseMessage.Builder builder = QueryResponseMessage.newBuilder();
+        for ( int i = 0; i < PAGE_SIZE; i++ ) {
+            builder.addResults( Tuple.newBuilder().putData( "id", Data.newBuilder().setLongData( (long) number * PAGE_SIZE + i ).build() ) );
+        }
+        return builder.build();
+    }
+
+
+    private static Iterator<InsertMessage> insertMessages( int count ) {
+        return Collections.nCopies( count, InsertMessage.getDefaultInstance() ).iterator();
+    }
+
+
+    private static Enumerator<Object> enumerator( Iterator<QueryResponseMessage> iterator ) {
+        return new CottontailQueryEnumerable<Object>( iterator, data -> data.get( "id" ).getLongData() ).enumerator();
+    }
+
+
+    @Test
+    public void insertTest() {
+        // Many more messages than fit into the flow control window of the call
+        assertTrue( wrapper.insert( insertMessages( 20_000 ) ) );
+        assertEquals( 20_000, inserted.get() );
+
+        assertTrue( wrapper.insert( insertMessages( 100 ) ) );
+        assertEquals( 20_100, inserted.get() );
+    }
+
+
+    @Test
+    public void failedInsertTest() {
+        failInsert = true;
+        assertFalse( wrapper.insert( insertMessages( 5_000 ) ) );
+    }
+
+
+    @Test
+    public void queryTest() {
+        pages = 5;
+        List<Long> ids = new ArrayList<>();
+        Enumerator<Object> enumerator = enumerator( wrapper.query( QueryMessage.getDefaultInstance() ) );
+        while ( enumerator.moveNext() ) {
+            ids.add( (Long) enumerator.current() );
+        }
+        enumerator.close();
+        assertEquals( 5 * PAGE_SIZE, ids.size() );
+        for ( int i = 0; i < ids.size(); i++ ) {
+            assertEquals( i, (long) ids.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void batchedQueryTest() {
+        // More queries than are executed concurrently, the results are returned in the order of the queries
+        pages = 1;
+        int count = 0;
+        Enumerator<Object> enumerator = enumerator( wrapper.query( Collections.nCopies( 7, QueryMessage.getDefaultInstance() ) ) );
+        while ( enumerator.moveNext() ) {
+            assertEquals( count % PAGE_SIZE, (long) (Long) enumerator.current() );
+            count++;
+        }
+        enumerator.close();
+        assertEquals( 7 * PAGE_SIZE, count );
+    }
+
+
+    @Test
+    public void failedQueryTest() {
+        pages = 2;
+        failAfterPages = true;
+        Enumerator<Object> enumerator = enumerator( wrapper.query( QueryMessage.getDefaultInstance() ) );
+        int rows = 0;
+        try {
+            while ( enumerator.moveNext() ) {
+                rows++;
+            }
+            fail( "The failure of the query has not been reported" );
+        } catch ( RuntimeException e ) {
+            // Expected
+        }
+        assertEquals( 2 * PAGE_SIZE, rows );
+
+        // The result must not appear to be complete afterwards
+        try {
+            enumerator.moveNext();
+            fail( "The failure of the query has not been reported again" );
+        } catch ( RuntimeException e ) {
+            // Expected
+        }
+        enumerator.close();
+    }
+
+
+    @Test
+    public void failedBatchedQueryTest() {
+        pages = 1;
+        failAfterPages = true;
+        Enumerator<Object> enumerator = enumerator( wrapper.query( Collections.nCopies( 3, QueryMessage.getDefaultInstance() ) ) );
+        try {
+            while ( enumerator.moveNext() ) {
+                // Consume
+            }
+            fail( "The failure of the query has not been reported" );
+        } catch ( RuntimeException e ) {
+            // Expected
+        }
+        try {
+            enumerator.moveNext();
+            fail( "The failure of the query has not been reported again" );
+        } catch ( RuntimeException e ) {
+            // Expected
+        }
+        enumerator.close();
+    }
+
+
+    @Test
+    public void closeQueryTest() throws InterruptedException {
+        // The service keeps the call open until it is cancelled
+        pages = -1;
+        Enumerator<Object> enumerator = enumerator( wrapper.query( QueryMessage.getDefaultInstance() ) );
+        assertTrue( enumerator.moveNext() );
+        assertEquals( 0L, enumerator.current() );
+        enumerator.close();
+        assertTrue( "The query has not been cancelled", cancelled.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+    private class InsertService extends CottonDMLImplBase {
+
+        @Override
+        public StreamObserver<InsertMessage> insert( StreamObserver<CottontailGrpc.Status> responseObserver ) {
+            return new StreamObserver<InsertMessage>() {
+                private int received = 0;
+
+
+                @Override
+                public void onNext( InsertMessage value ) {
+                    received++;
+                    if ( failInsert && received == 1_000 ) {
+                        responseObserver.onError( Status.INTERNAL.withDescription( "Insert failed" ).asRuntimeException() );
+                    }
+                }
+
+
+                @Override
+                public void onError( Throwable t ) {
+                    // The client has cancelled the call
+                }
+
+
+                @Override
+                public void onCompleted() {
+                    inserted.addAndGet( received );
+                    responseObserver.onNext( CottontailGrpc.Status.newBuilder().setSuccess( true ).build() );
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+
+    }
+
+
+    private class QueryService extends CottonDQLImplBase {
+
+        @Override
+        public void query( QueryMessage request, StreamObserver<QueryResponseMessage> responseObserver ) {
+            if ( pages < 0 ) {
+                ServerCallStreamObserver<QueryResponseMessage> observer = (ServerCallStreamObserver<QueryResponseMessage>) responseObserver;
+                observer.setOnCancelHandler( cancelled::countDown );
+                observer.onNext( page( 0 ) );
+                observer.onNext( page( 1 ) );
+                return;
+            }
+            for ( int i = 0; i < pages; i++ ) {
+                responseObserver.onNext( page( i ) );
+            }
+            if ( failAfterPages ) {
+                responseObserver.onError( Status.INTERNAL.withDescription( "Query failed" ).asRuntimeException() );
+            } else {
+                responseObserver.onCompleted();
+            }
+        }
+
+    }
+
+}
@@ -24,6 +24,7 @@
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.polypheny.db.adapter.AdapterManager;
+import org.polypheny.db.adapter.enumerable.PersistentCodeCache;
 import org.polypheny.db.adapter.index.IndexManager;
 import org.polypheny.db.catalog.Catalog;
 import org.polypheny.db.catalog.CatalogImpl;
@@ -44,6 +45,8 @@
 import org.polypheny.db.information.HostInformation;
 import org.polypheny.db.information.JavaInformation;
 import org.polypheny.db.processing.AuthenticatorImpl;
+import org.polypheny.db.processing.ImplementationCache;
+import org.polypheny.db.runtime.QueryMemoryPool;
 import org.polypheny.db.statistic.StatisticQueryProcessor;
 import org.polypheny.db.statistic.StatisticsManager;
 import org.polypheny.db.transaction.PUID;
@@ -255,6 +258,13 @@ public void join( final long millis ) throws InterruptedException {
         // Call DockerManager once to remove old containers
         DockerManager.getInstance();
 
+        // Load the persisted code of the most frequently used plans of the last run and remember the current ones on shutdown
+        PersistentCodeCache.INSTANCE.warmUp();
+        Runtime.getRuntime().addShutdownHook( new Thread( ImplementationCache.INSTANCE::storeWarmUpList, "CodeCacheWarmUpList" ) );
+
+        // Remove the spill files of the last run and show the query memory page before the first query spills
+        QueryMemoryPool.INSTANCE.initialize();
+
         final ExploreQueryProcessor exploreQueryProcessor = new ExploreQueryProcessor( transactionManager, authenticator ); // Explore-by-Example
         ExploreManager explore = ExploreManager.getInstance();
         explore.setExploreQueryProcessor( exploreQueryProcessor );
@@ -395,7 +395,7 @@ public void addColumnToSourceTable( CatalogTable catalogTable, String columnPhys
         catalog.updateColumnPlacementPhysicalPosition( adapterId, columnId, exportedColumn.physicalPosition );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -468,7 +468,7 @@ public void addColumn( String columnName, CatalogTable catalogTable, String befo
         }
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -805,7 +805,7 @@ public void dropColumn( CatalogTable catalogTable, String columnName, Statement
         }
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -938,7 +938,7 @@ public void setColumnType( CatalogTable catalogTable, String columnName, ColumnT
         }
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -952,7 +952,7 @@ public void setColumnNullable( CatalogTable catalogTable, String columnName, boo
         catalog.setNullable( catalogColumn.id, nullable );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1000,7 +1000,7 @@ public void setColumnPosition( CatalogTable catalogTable, String columnName, Str
         // Do nothing
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1014,7 +1014,7 @@ public void setColumnCollation( CatalogTable catalogTable, String columnName, Co
         catalog.setCollation( catalogColumn.id, collation );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1025,7 +1025,7 @@ public void setDefaultValue( CatalogTable catalogTable, String columnName, Strin
         addDefaultValue( defaultValue, catalogColumn.id );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1036,7 +1036,7 @@ public void dropDefaultValue( CatalogTable catalogTable, String columnName, Stat
         catalog.deleteDefaultValue( catalogColumn.id );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1251,7 +1251,7 @@ public void renameTable( CatalogTable catalogTable, String newTableName, Stateme
         catalog.renameTable( catalogTable.id, newTableName );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1266,7 +1266,7 @@ public void renameColumn( CatalogTable catalogTable, String columnName, String n
         catalog.renameColumn( catalogColumn.id, newColumnName );
 
         // Rest plan cache and implementation cache (not sure if required in this case)
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
@@ -1602,7 +1602,7 @@ public void dropTable( CatalogTable catalogTable, Statement statement ) throws D
         catalog.deleteTable( catalogTable.id );
 
         // Rest plan cache and implementation cache
-        statement.getQueryProcessor().resetCaches();
+        statement.getQueryProcessor().resetCaches( catalogTable.id );
     }
 
 
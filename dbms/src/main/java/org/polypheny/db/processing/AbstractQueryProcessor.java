@@ -32,6 +32,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
@@ -41,6 +42,9 @@
 import org.apache.calcite.avatica.Meta.CursorFactory;
 import org.apache.calcite.avatica.Meta.StatementType;
 import org.apache.calcite.avatica.MetaImpl;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.commons.lang3.time.StopWatch;
 import org.polypheny.db.adapter.DataContext;
@@ -104,6 +108,7 @@
 import org.polypheny.db.rel.type.RelDataTypeFactory;
 import org.polypheny.db.rel.type.RelDataTypeField;
 import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.rex.RexCall;
 import org.polypheny.db.rex.RexDynamicParam;
 import org.polypheny.db.rex.RexInputRef;
 import org.polypheny.db.rex.RexLiteral;
@@ -117,16 +122,15 @@
 import org.polypheny.db.sql.SqlKind;
 import org.polypheny.db.sql.validate.SqlConformance;
 import org.polypheny.db.sql2rel.RelStructuredTypeFlattener;
+import org.polypheny.db.statistic.StatisticsManager;
 import org.polypheny.db.tools.Program;
 import org.polypheny.db.tools.Programs;
 import org.polypheny.db.tools.RelBuilder;
 import org.polypheny.db.transaction.DeadlockException;
-import org.polypheny.db.transaction.Lock.LockMode;
 import org.polypheny.db.transaction.LockManager;
+import org.polypheny.db.transaction.PolyXid;
 import org.polypheny.db.transaction.Statement;
 import org.polypheny.db.transaction.TableAccessMap;
-import org.polypheny.db.transaction.TableAccessMap.Mode;
-import org.polypheny.db.transaction.TableAccessMap.TableIdentifier;
 import org.polypheny.db.transaction.TransactionImpl;
 import org.polypheny.db.type.ArrayType;
 import org.polypheny.db.type.ExtraPolyTypes;
@@ -187,6 +191,9 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
                         : EnumerableConvention.INSTANCE;
 
         RelRoot routedRoot;
+        // Plan on the logical tables; used to determine the tables cached plans depend on
+        RelNode dependencyNode = logicalRoot.rel;
+        LongConsumer statisticUpdate = null;
         if ( !isRouted ) {
             if ( lock ) {
                 // Locking
@@ -194,18 +201,10 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
                     statement.getDuration().start( "Locking" );
                 }
                 try {
-                    // Get a shared global schema lock (only DDLs acquire a exclusive global schema lock)
-                    LockManager.INSTANCE.lock( LockManager.GLOBAL_LOCK, (TransactionImpl) statement.getTransaction(), LockMode.SHARED );
-                    // Get locks for individual tables
-                    TableAccessMap accessMap = new TableAccessMap( logicalRoot.rel );
-                    for ( TableIdentifier tableIdentifier : accessMap.getTablesAccessed() ) {
-                        Mode mode = accessMap.getTableAccessMode( tableIdentifier );
-                        if ( mode == Mode.READ_ACCESS ) {
-                            LockManager.INSTANCE.lock( tableIdentifier, (TransactionImpl) statement.getTransaction(), LockMode.SHARED );
-                        } else if ( mode == Mode.WRITE_ACCESS || mode == Mode.READWRITE_ACCESS ) {
-                            LockManager.INSTANCE.lock( tableIdentifier, (TransactionImpl) statement.getTransaction(), LockMode.EXCLUSIVE );
-                        }
-                    }
+                    // Get locks for individual tables, partitions and key ranges. This implicitly acquires intention locks
+                    // on the global schema lock (only DDLs acquire an exclusive global schema lock).
+                    TableAccessMap accessMap = new TableAccessMap( logicalRoot.rel, statement.getDataContext().getParameterValues() );
+                    LockManager.INSTANCE.lock( accessMap.getLockRequests(), (TransactionImpl) statement.getTransaction() );
                 } catch ( DeadlockException e ) {
                     throw new RuntimeException( e );
                 }
@@ -221,6 +220,9 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
                 IndexManager.getInstance().barrier( statement.getTransaction().getXid() );
                 indexUpdateRoot = indexUpdate( indexUpdateRoot, statement, parameterRowType );
             }
+            if ( RuntimeConfig.ACTIVE_TRACKING.getBoolean() && RuntimeConfig.DYNAMIC_QUERYING.getBoolean() ) {
+                statisticUpdate = statisticUpdate( indexUpdateRoot, statement );
+            }
 
             // Constraint Enforcement Rewrite
             if ( isAnalyze ) {
@@ -247,6 +249,9 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
                 statement.getDuration().stop( "Index Lookup Rewrite" );
                 statement.getDuration().start( "Routing" );
             }
+            // The index lookup rewrite replaces scans by the content of indexes, the dependencies are therefore
+            // determined on the plan before this rewrite. It includes the tables accessed by the constraint checks.
+            dependencyNode = constraintsRoot.rel;
             routedRoot = route( indexLookupRoot, statement, executionTimeMonitor );
 
             RelStructuredTypeFlattener typeFlattener = new RelStructuredTypeFlattener(
@@ -272,6 +277,7 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
             statement.getDuration().start( "Implementation Caching" );
         }
         RelRoot parameterizedRoot = null;
+        PlanFingerprint fingerprint = null;
         if ( RuntimeConfig.IMPLEMENTATION_CACHING.getBoolean() && (!routedRoot.kind.belongsTo( SqlKind.DML ) || RuntimeConfig.IMPLEMENTATION_CACHING_DML.getBoolean() || statement.getDataContext().getParameterValues().size() > 0) ) {
             if ( statement.getDataContext().getParameterValues().size() == 0 ) {
                 Pair<RelRoot, RelDataType> parameterized = parameterize( routedRoot, parameterRowType );
@@ -281,9 +287,10 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
                 // This query is an execution of a prepared statement
                 parameterizedRoot = routedRoot;
             }
-            PreparedResult preparedResult = ImplementationCache.INSTANCE.getIfPresent( parameterizedRoot.rel );
+            fingerprint = PlanFingerprint.of( parameterizedRoot.rel, dependencyNode );
+            PreparedResult preparedResult = ImplementationCache.INSTANCE.getIfPresent( fingerprint );
             if ( preparedResult != null ) {
-                PolyphenyDbSignature signature = createSignature( preparedResult, routedRoot, resultConvention, executionTimeMonitor );
+                PolyphenyDbSignature signature = createSignature( preparedResult, routedRoot, resultConvention, executionTimeMonitor, statisticUpdate );
                 if ( isAnalyze ) {
                     statement.getDuration().stop( "Implementation Caching" );
                 }
@@ -309,7 +316,10 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
                     parameterizedRoot = routedRoot;
                 }
             }
-            optimalNode = QueryPlanCache.INSTANCE.getIfPresent( parameterizedRoot.rel );
+            if ( fingerprint == null ) {
+                fingerprint = PlanFingerprint.of( parameterizedRoot.rel, dependencyNode );
+            }
+            optimalNode = QueryPlanCache.INSTANCE.getIfPresent( fingerprint );
         } else {
             parameterizedRoot = routedRoot;
             optimalNode = null;
@@ -331,7 +341,7 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
             //}
 
             if ( RuntimeConfig.QUERY_PLAN_CACHING.getBoolean() && (!routedRoot.kind.belongsTo( SqlKind.DML ) || RuntimeConfig.QUERY_PLAN_CACHING_DML.getBoolean() || statement.getDataContext().getParameterValues().size() > 0) ) {
-                QueryPlanCache.INSTANCE.put( parameterizedRoot.rel, optimalNode );
+                QueryPlanCache.INSTANCE.put( fingerprint, optimalNode );
             }
         }
 
@@ -351,13 +361,13 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
         // Cache implementation
         if ( RuntimeConfig.IMPLEMENTATION_CACHING.getBoolean() && (!routedRoot.kind.belongsTo( SqlKind.DML ) || RuntimeConfig.IMPLEMENTATION_CACHING_DML.getBoolean() || statement.getDataContext().getParameterValues().size() > 0) ) {
             if ( optimalRoot.rel.isImplementationCacheable() ) {
-                ImplementationCache.INSTANCE.put( parameterizedRoot.rel, preparedResult );
+                ImplementationCache.INSTANCE.put( fingerprint, optimalRoot.rel, preparedResult );
             } else {
                 ImplementationCache.INSTANCE.countUncacheable();
             }
         }
 
-        PolyphenyDbSignature signature = createSignature( preparedResult, optimalRoot, resultConvention, executionTimeMonitor );
+        PolyphenyDbSignature signature = createSignature( preparedResult, optimalRoot, resultConvention, executionTimeMonitor, statisticUpdate );
 
         if ( isAnalyze ) {
             statement.getDuration().stop( "Implementation" );
@@ -372,6 +382,248 @@ protected PolyphenyDbSignature prepareQuery( RelRoot logicalRoot, RelDataType pa
     }
 
 
+    /**
+     * @return the schema and the table modified by the table modify
+     */
+    private Pair<CatalogSchema, CatalogTable> getModifiedTable( LogicalTableModify ltm, Statement statement ) {
+        final Catalog catalog = Catalog.getInstance();
+        try {
+            final CatalogSchema schema;
+            final String tableName;
+            if ( ltm.getTable().getQualifiedName().size() == 3 ) { // DatabaseName.SchemaName.TableName
+                schema = catalog.getSchema( ltm.getTable().getQualifiedName().get( 0 ), ltm.getTable().getQualifiedName().get( 1 ) );
+                tableName = ltm.getTable().getQualifiedName().get( 2 );
+            } else if ( ltm.getTable().getQualifiedName().size() == 2 ) { // SchemaName.TableName
+                schema = catalog.getSchema( statement.getPrepareContext().getDatabaseId(), ltm.getTable().getQualifiedName().get( 0 ) );
+                tableName = ltm.getTable().getQualifiedName().get( 1 );
+            } else { // TableName
+                schema = catalog.getSchema( statement.getPrepareContext().getDatabaseId(), statement.getPrepareContext().getDefaultSchemaName() );
+                tableName = ltm.getTable().getQualifiedName().get( 0 );
+            }
+            return new Pair<>( schema, catalog.getTable( schema.id, tableName ) );
+        } catch ( UnknownTableException | UnknownDatabaseException | UnknownSchemaException e ) {
+            // This really should not happen
+            log.error( "Table not found: {}", ltm.getTable().getQualifiedName().get( 0 ), e );
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    /**
+     * Determines how a DML statement changes the statistics of the modified tables. The changes are only passed to the
+     * statistics once the statement has been executed successfully, see {@link #afterExecution}. They are merged into
+     * the statistics on commit.
+     *
+     * The values of inserted rows are added to the statistics. Deleted rows are removed from the row counts, and the
+     * values assigned by UPDATEs replace the values of the updated rows. Since deleted and overwritten values are not
+     * part of the plan, the distinct values and histograms are only corrected by the next reevaluation. Tables filled
+     * by an INSERT with a query are reevaluated after the commit.
+     *
+     * @return the action passing the changes for the number of changed rows, {@code null} if the statement is no DML
+     */
+    private LongConsumer statisticUpdate( RelRoot root, Statement statement ) {
+        if ( !root.kind.belongsTo( SqlKind.DML ) ) {
+            return null;
+        }
+        final PolyXid xid = statement.getTransaction().getXid();
+        final List<LongConsumer> updates = new ArrayList<>();
+        root.rel.accept( new RelShuttleImpl() {
+            @Override
+            public RelNode visit( RelNode node ) {
+                if ( node instanceof LogicalTableModify ) {
+                    final LogicalTableModify ltm = (LogicalTableModify) node;
+                    final Pair<CatalogSchema, CatalogTable> modifiedTable = getModifiedTable( ltm, statement );
+                    final String schemaName = modifiedTable.left.name;
+                    final String tableName = modifiedTable.right.name;
+                    final List<RelDataTypeField> fields = ltm.getTable().getRowType().getFieldList();
+                    final StatisticsManager<?> statisticsManager = StatisticsManager.getInstance();
+                    if ( ltm.isInsert() ) {
+                        final List<Object[]> rows = getInsertedRows( ltm.getInput(), statement );
+                        if ( rows != null ) {
+                            updates.add( changedRows -> statisticsManager.insert(
+                                    xid,
+                                    schemaName,
+                                    tableName,
+                                    fields.stream().map( RelDataTypeField::getName ).collect( Collectors.toList() ),
+                                    fields.stream().map( f -> f.getType().getPolyType() ).collect( Collectors.toList() ),
+                                    rows ) );
+                        } else {
+                            updates.add( changedRows -> statement.getTransaction().addChangedTable( "\"" + schemaName + "\".\"" + tableName + "\"" ) );
+                        }
+                    } else if ( ltm.isDelete() ) {
+                        updates.add( changedRows -> statisticsManager.delete( xid, schemaName, tableName, changedRows ) );
+                    } else if ( ltm.isUpdate() ) {
+                        final List<String> columnNames = new ArrayList<>();
+                        final List<PolyType> types = new ArrayList<>();
+                        final List<RexNode> sources = new ArrayList<>();
+                        for ( int i = 0; i < ltm.getUpdateColumnList().size(); i++ ) {
+                            final String columnName = ltm.getUpdateColumnList().get( i );
+                            columnNames.add( columnName );
+                            types.add( ltm.getTable().getRowType().getField( columnName, true, false ).getType().getPolyType() );
+                            sources.add( ltm.getSourceExpressionList().get( i ) );
+                        }
+                        // One array of assigned values per set of parameter values
+                        final List<Object[]> values = getValues( sources, Collections.emptyList(), statement );
+                        if ( values != null ) {
+                            updates.add( changedRows -> statisticsManager.update( xid, schemaName, tableName, columnNames, types, values, changedRows ) );
+                        }
+                    }
+                }
+                return super.visit( node );
+            }
+        } );
+        if ( updates.isEmpty() ) {
+            return null;
+        }
+        return changedRows -> updates.forEach( update -> update.accept( changedRows ) );
+    }
+
+
+    /**
+     * Runs the action with the number of changed rows once the statement has been executed without errors, i.e., once
+     * its result has been consumed completely or has been closed after reading it.
+     *
+     * Every placement reports the number of rows it has changed for all parameter sets as one row. Since all placements
+     * of a table change the same rows, the number of changed rows is the maximum of these rows.
+     */
+    private static Bindable<Object> afterExecution( final Bindable<Object> bindable, final LongConsumer action ) {
+        return dataContext -> {
+            final Enumerable<Object> enumerable = bindable.bind( dataContext );
+            return new AbstractEnumerable<Object>() {
+                @Override
+                public Enumerator<Object> enumerator() {
+                    final Enumerator<Object> enumerator = enumerable.enumerator();
+                    return new Enumerator<Object>() {
+                        private long changedRows = 0;
+                        private boolean started = false;
+                        private boolean failed = false;
+                        private boolean executed = false;
+
+
+                        @Override
+                        public Object current() {
+                            return enumerator.current();
+                        }
+
+
+                        @Override
+                        public boolean moveNext() {
+                            final boolean hasNext;
+                            try {
+                                hasNext = enumerator.moveNext();
+                            } catch ( RuntimeException | Error e ) {
+                                failed = true;
+                                throw e;
+                            }
+                            started = true;
+                            if ( hasNext ) {
+                                Object current = enumerator.current();
+                                if ( current != null && current.getClass().isArray() ) {
+                                    current = ((Object[]) current)[0];
+                                }
+                                if ( current instanceof Number ) {
+                                    changedRows = Math.max( changedRows, ((Number) current).longValue() );
+                                }
+                                return true;
+                            }
+                            executed();
+                            return false;
+                        }
+
+
+                        private void executed() {
+                            if ( !executed && !failed ) {
+                                executed = true;
+                                action.accept( changedRows );
+                            }
+                        }
+
+
+                        @Override
+                        public void reset() {
+                            enumerator.reset();
+                            changedRows = 0;
+                        }
+
+
+                        @Override
+                        public void close() {
+                            enumerator.close();
+                            // The result of a statement which has been executed does not have to be read completely
+                            if ( started ) {
+                                executed();
+                            }
+                        }
+                    };
+                }
+            };
+        };
+    }
+
+
+    /**
+     * Determines the rows inserted by a table modify with literal values or values of dynamic parameters.
+     *
+     * @return {@code null} if the values cannot be determined from the plan
+     */
+    private List<Object[]> getInsertedRows( RelNode input, Statement statement ) {
+        final List<Object[]> rows = new ArrayList<>();
+        if ( input instanceof Values ) {
+            for ( List<RexLiteral> tuple : ((Values) input).getTuples() ) {
+                rows.add( tuple.stream().map( RexLiteral::getValue3 ).toArray() );
+            }
+            return rows;
+        }
+        if ( !(input instanceof LogicalProject) || !(((LogicalProject) input).getInput() instanceof Values) ) {
+            return null;
+        }
+        final List<RexNode> projects = ((LogicalProject) input).getProjects();
+        for ( List<RexLiteral> tuple : ((Values) ((LogicalProject) input).getInput()).getTuples() ) {
+            final List<Object[]> tupleRows = getValues( projects, tuple, statement );
+            if ( tupleRows == null ) {
+                return null;
+            }
+            rows.addAll( tupleRows );
+        }
+        return rows;
+    }
+
+
+    /**
+     * Evaluates the expressions for every set of parameter values. The expressions may be literals, references to the
+     * given tuple or dynamic parameters, optionally casted.
+     *
+     * @return {@code null} if at least one expression cannot be evaluated
+     */
+    private List<Object[]> getValues( List<RexNode> expressions, List<RexLiteral> tuple, Statement statement ) {
+        List<Map<Long, Object>> parameterSets = statement.getDataContext().getParameterValues();
+        if ( parameterSets.isEmpty() ) {
+            parameterSets = Collections.singletonList( Collections.emptyMap() );
+        }
+        final List<Object[]> rows = new ArrayList<>();
+        for ( Map<Long, Object> parameters : parameterSets ) {
+            Object[] row = new Object[expressions.size()];
+            for ( int i = 0; i < expressions.size(); i++ ) {
+                RexNode node = expressions.get( i );
+                while ( node.isA( SqlKind.CAST ) ) {
+                    node = ((RexCall) node).getOperands().get( 0 );
+                }
+                if ( node instanceof RexLiteral ) {
+                    row[i] = ((RexLiteral) node).getValue3();
+                } else if ( node instanceof RexInputRef && ((RexInputRef) node).getIndex() < tuple.size() ) {
+                    row[i] = tuple.get( ((RexInputRef) node).getIndex() ).getValue3();
+                } else if ( node instanceof RexDynamicParam && parameters.containsKey( (long) ((RexDynamicParam) node).getIndex() ) ) {
+                    row[i] = parameters.get( (long) ((RexDynamicParam) node).getIndex() );
+                } else {
+                    return null;
+                }
+            }
+            rows.add( row );
+        }
+        return rows;
+    }
+
+
     private RelRoot indexUpdate( RelRoot root, Statement statement, RelDataType parameterRowType ) {
         if ( root.kind.belongsTo( SqlKind.DML ) ) {
             final RelShuttle shuttle = new RelShuttleImpl() {
@@ -380,28 +632,10 @@ private RelRoot indexUpdate( RelRoot root, Statement statement, RelDataType para
                 public RelNode visit( RelNode node ) {
                     RexBuilder rexBuilder = new RexBuilder( statement.getTransaction().getTypeFactory() );
                     if ( node instanceof LogicalTableModify ) {
-                        final Catalog catalog = Catalog.getInstance();
                         final LogicalTableModify ltm = (LogicalTableModify) node;
-                        final CatalogTable table;
-                        final CatalogSchema schema;
-                        try {
-                            String tableName;
-                            if ( ltm.getTable().getQualifiedName().size() == 3 ) { // DatabaseName.SchemaName.TableName
-                                schema = catalog.getSchema( ltm.getTable().getQualifiedName().get( 0 ), ltm.getTable().getQualifiedName().get( 1 ) );
-                                tableName = ltm.getTable().getQualifiedName().get( 2 );
-                            } else if ( ltm.getTable().getQualifiedName().size() == 2 ) { // SchemaName.TableName
-                                schema = catalog.getSchema( statement.getPrepareContext().getDatabaseId(), ltm.getTable().getQualifiedName().get( 0 ) );
-                                tableName = ltm.getTable().getQualifiedName().get( 1 );
-                            } else { // TableName
-                                schema = catalog.getSchema( statement.getPrepareContext().getDatabaseId(), statement.getPrepareContext().getDefaultSchemaName() );
-                                tableName = ltm.getTable().getQualifiedName().get( 0 );
-                            }
-                            table = catalog.getTable( schema.id, tableName );
-                        } catch ( UnknownTableException | UnknownDatabaseException | UnknownSchemaException e ) {
-                            // This really should not happen
-                            log.error( "Table not found: {}", ltm.getTable().getQualifiedName().get( 0 ), e );
-                            throw new RuntimeException( e );
-                        }
+                        final Pair<CatalogSchema, CatalogTable> modifiedTable = getModifiedTable( ltm, statement );
+                        final CatalogSchema schema = modifiedTable.left;
+                        final CatalogTable table = modifiedTable.right;
                         final List<Index> indices = IndexManager.getInstance().getIndices( schema, table );
 
                         // Check if there are any indexes effected by this table modify
@@ -805,7 +1039,7 @@ public int size() {
     }
 
 
-    private PolyphenyDbSignature createSignature( PreparedResult preparedResult, RelRoot optimalRoot, Convention resultConvention, ExecutionTimeMonitor executionTimeMonitor ) {
+    private PolyphenyDbSignature createSignature( PreparedResult preparedResult, RelRoot optimalRoot, Convention resultConvention, ExecutionTimeMonitor executionTimeMonitor, LongConsumer statisticUpdate ) {
         final RelDataType jdbcType = makeStruct( optimalRoot.rel.getCluster().getTypeFactory(), optimalRoot.validatedRowType );
         final List<AvaticaParameter> parameters = new ArrayList<>();
         for ( RelDataTypeField field : preparedResult.getParameterRowType().getFieldList() ) {
@@ -846,7 +1080,9 @@ private PolyphenyDbSignature createSignature( PreparedResult preparedResult, Rel
                 resultConvention == BindableConvention.INSTANCE
                         ? CursorFactory.ARRAY
                         : CursorFactory.deduce( columns, resultClazz );
-        final Bindable bindable = preparedResult.getBindable( cursorFactory );
+        //noinspection unchecked
+        final Bindable<Object> preparedBindable = preparedResult.getBindable( cursorFactory );
+        final Bindable<Object> bindable = statisticUpdate == null ? preparedBindable : afterExecution( preparedBindable, statisticUpdate );
 
         return new PolyphenyDbSignature<Object[]>(
                 "",
@@ -1257,4 +1493,12 @@ public void resetCaches() {
         statement.getRouter().resetCaches();
     }
 
+
+    @Override
+    public void resetCaches( long tableId ) {
+        ImplementationCache.INSTANCE.invalidate( tableId );
+        QueryPlanCache.INSTANCE.invalidate( tableId );
+        statement.getRouter().resetCaches();
+    }
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.processing;
+
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import org.polypheny.db.information.InformationGroup;
+import org.polypheny.db.information.InformationManager;
+import org.polypheny.db.information.InformationPage;
+import org.polypheny.db.information.InformationTable;
+
+
+/**
+ * Keeps track of running and recently finished data migrations and reports their progress and throughput on an
+ * information page.
+ */
+public class DataMigrationMonitor {
+
+    public static final DataMigrationMonitor INSTANCE = new DataMigrationMonitor();
+
+    private static final int MAX_FINISHED_MIGRATIONS = 50;
+
+    private final Deque<Migration> migrations = new ConcurrentLinkedDeque<>();
+
+
+    private DataMigrationMonitor() {
+        registerMonitoringPage();
+    }
+
+
+    Migration start( String tableName, String targetAdapter, int keyRanges ) {
+        Migration migration = new Migration( tableName, targetAdapter, keyRanges );
+        migrations.addFirst( migration );
+
+        // Forget the oldest finished migrations
+        int count = 0;
+        Iterator<Migration> iterator = migrations.iterator();
+        while ( iterator.hasNext() ) {
+            Migration m = iterator.next();
+            if ( m.getStatus() != Status.RUNNING && ++count > MAX_FINISHED_MIGRATIONS ) {
+                iterator.remove();
+            }
+        }
+        return migration;
+    }
+
+
+    private void registerMonitoringPage() {
+        InformationManager im = InformationManager.getInstance();
+
+        InformationPage page = new InformationPage( "Data Migration" );
+        page.fullWidth();
+        im.addPage( page );
+
+        InformationGroup migrationsGroup = new InformationGroup( page, "Migrations" );
+        im.addGroup( migrationsGroup );
+        InformationTable migrationsTable = new InformationTable(
+                migrationsGroup,
+                Arrays.asList( "Table", "Target Store", "Status", "Key Ranges", "Rows Read", "Rows Written", "Rows/s", "Duration (ms)" ) );
+        im.registerInformation( migrationsTable );
+
+        page.setRefreshFunction( () -> {
+            migrationsTable.reset();
+            for ( Migration m : migrations ) {
+                long duration = m.getDuration();
+                long rowsWritten = m.rowsWritten.sum();
+                migrationsTable.addRow(
+                        m.getTableName(),
+                        m.getTargetAdapter(),
+                        m.getStatus().name(),
+                        m.getKeyRanges(),
+                        m.rowsRead.sum(),
+                        rowsWritten,
+                        duration == 0 ? 0 : rowsWritten * 1000 / duration,
+                        duration );
+            }
+        } );
+    }
+
+
+    enum Status {
+        RUNNING,
+        FINISHED,
+        FAILED
+    }
+
+
+    static class Migration {
+
+        @Getter
+        private final String tableName;
+        @Getter
+        private final String targetAdapter;
+        @Getter
+        private final int keyRanges;
+        @Getter
+        private volatile Status status = Status.RUNNING;
+
+        private final long startTime = System.nanoTime();
+        private volatile long endTime;
+
+        final LongAdder rowsRead = new LongAdder();
+        final LongAdder rowsWritten = new LongAdder();
+
+
+        private Migration( String tableName, String targetAdapter, int keyRanges ) {
+            this.tableName = tableName;
+            this.targetAdapter = targetAdapter;
+            this.keyRanges = keyRanges;
+        }
+
+
+        void finish( boolean successful ) {
+            endTime = System.nanoTime();
+            status = successful ? Status.FINISHED : Status.FAILED;
+        }
+
+
+        /**
+         * @return the duration of the migration in milliseconds
+         */
+        long getDuration() {
+            long end = status == Status.RUNNING ? System.nanoTime() : endTime;
+            return TimeUnit.NANOSECONDS.toMillis( end - startTime );
+        }
+
+    }
+
+}
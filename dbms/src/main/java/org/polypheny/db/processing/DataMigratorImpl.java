@@ -17,17 +17,36 @@
 package org.polypheny.db.processing;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.calcite.avatica.ColumnMetaData;
 import org.apache.calcite.avatica.MetaImpl;
 import org.apache.calcite.linq4j.Enumerable;
+import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.catalog.Catalog;
 import org.polypheny.db.catalog.entity.CatalogAdapter;
 import org.polypheny.db.catalog.entity.CatalogColumn;
@@ -43,6 +62,7 @@
 import org.polypheny.db.rel.RelRoot;
 import org.polypheny.db.rel.core.TableModify.Operation;
 import org.polypheny.db.rel.logical.LogicalValues;
+import org.polypheny.db.rel.type.RelDataType;
 import org.polypheny.db.rel.type.RelDataTypeFactory;
 import org.polypheny.db.rel.type.RelDataTypeSystem;
 import org.polypheny.db.rex.RexBuilder;
@@ -51,23 +71,54 @@
 import org.polypheny.db.schema.ModifiableTable;
 import org.polypheny.db.schema.PolySchemaBuilder;
 import org.polypheny.db.sql.SqlKind;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
 import org.polypheny.db.sql2rel.RelStructuredTypeFlattener;
 import org.polypheny.db.tools.RelBuilder;
 import org.polypheny.db.transaction.Statement;
 import org.polypheny.db.transaction.Transaction;
+import org.polypheny.db.type.PolyType;
 import org.polypheny.db.type.PolyTypeFactoryImpl;
 import org.polypheny.db.util.LimitIterator;
+import org.polypheny.db.util.Pair;
 
 @Slf4j
 public class DataMigratorImpl implements DataMigrator {
 
 
-    @Override
-    public void copyData( Transaction transaction, CatalogAdapter store, List<CatalogColumn> columns ) {
+    /**
+     * Executes the readers and writers of all migrations. The number of threads is bounded, further tasks are queued.
+     */
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        int threads = Math.max( 2, Runtime.getRuntime().availableProcessors() );
+        EXECUTOR = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread thread = new Thread( r, "DataMigrator-" + counter.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        EXECUTOR.allowCoreThreadTimeOut( true );
+    }
 
-        Statement sourceStatement = transaction.createStatement();
-        Statement targetStatement = transaction.createStatement();
 
+    /**
+     * Copies the data of the given columns to the placements on the specified store. The data is copied in a pipeline:
+     * reader tasks scan the source placements and hand over columnar batches through a bounded queue to writers
+     * inserting them into the target placements. Tables with a single integral primary key column are split into key
+     * ranges which are read by separate readers (see {@link RuntimeConfig#DATA_MIGRATOR_PARALLELISM}).
+     *
+     * All workers run in the migrating transaction and therefore share the connection of an adapter. Every worker has
+     * its own statement, but the access to an adapter is serialized (see {@link AdapterLocks}). The calling thread is
+     * always one of the writers, so the pipeline makes progress even if all threads of the shared executor are busy.
+     */
+    @Override
+    public void copyData( Transaction transaction, CatalogAdapter store, List<CatalogColumn> columns ) {
         // Check Lists
         List<CatalogColumnPlacement> columnPlacements = new LinkedList<>();
         for ( CatalogColumn catalogColumn : columns ) {
@@ -86,62 +137,319 @@ public void copyData( Transaction transaction, CatalogAdapter store, List<Catalo
             }
         }
 
-        RelRoot sourceRel = getSourceIterator( sourceStatement, selectSourcePlacements( table, selectColumnList, columnPlacements.get( 0 ).adapterId ) );
-        RelRoot targetRel;
-        if ( Catalog.getInstance().getColumnPlacementsOnAdapter( store.id, table.id ).size() == columns.size() ) {
-            // There have been no placements for this table on this store before. Build insert statement
-            targetRel = buildInsertStatement( targetStatement, columnPlacements );
+        List<CatalogColumnPlacement> sourcePlacements = selectSourcePlacements( table, selectColumnList, columnPlacements.get( 0 ).adapterId );
+        // There have been no placements for this table on this store before if all columns are new. In this case the
+        // data is inserted, otherwise the existing rows are updated.
+        boolean insert = Catalog.getInstance().getColumnPlacementsOnAdapter( store.id, table.id ).size() == columns.size();
+
+        int parallelism = Math.max( 1, RuntimeConfig.DATA_MIGRATOR_PARALLELISM.getInteger() );
+        List<Pair<Long, Long>> keyRanges = null;
+        if ( parallelism > 1 && primaryKey.columnIds.size() == 1 ) {
+            CatalogColumn keyColumn = Catalog.getInstance().getColumn( primaryKey.columnIds.get( 0 ) );
+            if ( PolyType.INT_TYPES.contains( keyColumn.type ) ) {
+                keyRanges = getKeyRanges( transaction.createStatement(), sourcePlacements, keyColumn, parallelism );
+            }
+        }
+
+        DataMigrationMonitor.Migration migration = DataMigrationMonitor.INSTANCE.start( table.name, store.uniqueName, keyRanges == null ? 1 : keyRanges.size() );
+        AtomicBoolean aborted = new AtomicBoolean( false );
+        BlockingQueue<ColumnBatch> queue = new ArrayBlockingQueue<>( Math.max( 1, RuntimeConfig.DATA_MIGRATOR_QUEUE_SIZE.getInteger() ) );
+        AdapterLocks adapterLocks = new AdapterLocks();
+        Set<Integer> sourceAdapters = sourcePlacements.stream().map( p -> p.adapterId ).collect( Collectors.toSet() );
+        Set<Integer> targetAdapters = ImmutableSet.of( store.id );
+
+        // Statements and plans are created upfront, the workers only prepare and execute them
+        List<Statement> sourceStatements = new ArrayList<>();
+        List<RelRoot> sourceRels = new ArrayList<>();
+        if ( keyRanges == null ) {
+            Statement sourceStatement = transaction.createStatement();
+            sourceStatements.add( sourceStatement );
+            sourceRels.add( getSourceIterator( sourceStatement, sourcePlacements ) );
         } else {
-            // Build update statement
-            targetRel = buildUpdateStatement( targetStatement, columnPlacements );
+            CatalogColumn keyColumn = Catalog.getInstance().getColumn( primaryKey.columnIds.get( 0 ) );
+            for ( Pair<Long, Long> keyRange : keyRanges ) {
+                Statement sourceStatement = transaction.createStatement();
+                sourceStatements.add( sourceStatement );
+                sourceRels.add( filterKeyRange( sourceStatement, getSourceIterator( sourceStatement, sourcePlacements ), keyColumn, keyRange ) );
+            }
+        }
+        int numberOfWriters = Math.min( parallelism, sourceRels.size() );
+        AtomicInteger runningReaders = new AtomicInteger( sourceRels.size() );
+        List<Callable<Void>> readers = new ArrayList<>();
+        for ( int i = 0; i < sourceRels.size(); i++ ) {
+            readers.add( reader( sourceStatements.get( i ), sourceRels.get( i ), selectColumnList, sourceAdapters, adapterLocks, queue, aborted, runningReaders, numberOfWriters, migration ) );
+        }
+        List<Callable<Void>> writers = new ArrayList<>();
+        for ( int i = 0; i < numberOfWriters; i++ ) {
+            Statement targetStatement = transaction.createStatement();
+            RelRoot targetRel = insert ? buildInsertStatement( targetStatement, columnPlacements ) : buildUpdateStatement( targetStatement, columnPlacements );
+            writers.add( writer( targetStatement, targetRel, sourceRels.get( 0 ).validatedRowType, selectColumnList, targetAdapters, adapterLocks, queue, aborted, migration ) );
         }
 
-        // Execute Query
+        // Readers are submitted first, so that they are not queued behind the writers
+        List<Future<Void>> futures = new ArrayList<>();
+        for ( Callable<Void> reader : readers ) {
+            futures.add( EXECUTOR.submit( reader ) );
+        }
+        for ( Callable<Void> writer : writers.subList( 1, writers.size() ) ) {
+            futures.add( EXECUTOR.submit( writer ) );
+        }
+        Throwable failure = null;
         try {
-            PolyphenyDbSignature signature = sourceStatement.getQueryProcessor().prepareQuery( sourceRel, sourceRel.rel.getCluster().getTypeFactory().builder().build(), true );
-            final Enumerable enumerable = signature.enumerable( sourceStatement.getDataContext() );
-            //noinspection unchecked
-            Iterator<Object> sourceIterator = enumerable.iterator();
-
-            Map<Long, Integer> resultColMapping = new HashMap<>();
-            for ( CatalogColumn catalogColumn : selectColumnList ) {
-                int i = 0;
-                for ( ColumnMetaData metaData : signature.columns ) {
-                    if ( metaData.columnName.equalsIgnoreCase( catalogColumn.name ) ) {
-                        resultColMapping.put( catalogColumn.id, i );
-                    }
-                    i++;
+            writers.get( 0 ).call();
+        } catch ( Throwable t ) {
+            failure = t;
+        }
+        // Wait for all workers, none of them may use the transaction after the migration has finished
+        boolean interrupted = false;
+        for ( Future<Void> future : futures ) {
+            if ( failure != null ) {
+                aborted.set( true );
+            }
+            while ( true ) {
+                try {
+                    future.get();
+                    break;
+                } catch ( ExecutionException e ) {
+                    failure = failure == null ? e.getCause() : failure;
+                    break;
+                } catch ( InterruptedException e ) {
+                    interrupted = true;
+                    aborted.set( true );
                 }
             }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+        if ( failure == null && aborted.get() ) {
+            failure = new InterruptedException( "The data migration has been interrupted" );
+        }
+        migration.finish( failure == null );
+        if ( failure != null ) {
+            throw new RuntimeException( failure );
+        }
+    }
+
 
-            int batchSize = RuntimeConfig.DATA_MIGRATOR_BATCH_SIZE.getInteger();
-            while ( sourceIterator.hasNext() ) {
-                List<List<Object>> rows = MetaImpl.collect( signature.cursorFactory, LimitIterator.of( sourceIterator, batchSize ), new ArrayList<>() );
-                Map<Long, List<Object>> values = new HashMap<>();
-                for ( List<Object> list : rows ) {
-                    for ( Map.Entry<Long, Integer> entry : resultColMapping.entrySet() ) {
-                        if ( !values.containsKey( entry.getKey() ) ) {
-                            values.put( entry.getKey(), new LinkedList<>() );
+    private Callable<Void> reader(
+            Statement statement,
+            RelRoot sourceRel,
+            List<CatalogColumn> selectColumnList,
+            Set<Integer> adapters,
+            AdapterLocks adapterLocks,
+            BlockingQueue<ColumnBatch> queue,
+            AtomicBoolean aborted,
+            AtomicInteger runningReaders,
+            int numberOfWriters,
+            DataMigrationMonitor.Migration migration ) {
+        return () -> {
+            try {
+                PolyphenyDbSignature signature = statement.getQueryProcessor().prepareQuery( sourceRel, sourceRel.rel.getCluster().getTypeFactory().builder().build(), true );
+                final Enumerable enumerable = signature.enumerable( statement.getDataContext() );
+                //noinspection unchecked
+                Iterator<Object> sourceIterator = adapterLocks.withAdapters( adapters, () -> enumerable.iterator() );
+
+                // Position of the columns in the result of the source query
+                int[] resultColMapping = new int[selectColumnList.size()];
+                for ( int c = 0; c < selectColumnList.size(); c++ ) {
+                    int i = 0;
+                    for ( ColumnMetaData metaData : signature.columns ) {
+                        if ( metaData.columnName.equalsIgnoreCase( selectColumnList.get( c ).name ) ) {
+                            resultColMapping[c] = i;
                         }
-                        values.get( entry.getKey() ).add( list.get( entry.getValue() ) );
+                        i++;
                     }
                 }
-                for ( Map.Entry<Long, List<Object>> v : values.entrySet() ) {
-                    targetStatement.getDataContext().addParameterValues( v.getKey(), null, v.getValue() );
+
+                int batchSize = RuntimeConfig.DATA_MIGRATOR_BATCH_SIZE.getInteger();
+                while ( !aborted.get() ) {
+                    List<List<Object>> rows = adapterLocks.withAdapters(
+                            adapters,
+                            () -> MetaImpl.collect( signature.cursorFactory, LimitIterator.of( sourceIterator, batchSize ), new ArrayList<>() ) );
+                    if ( rows.isEmpty() ) {
+                        break;
+                    }
+                    ColumnBatch batch = new ColumnBatch( selectColumnList.size(), rows.size() );
+                    for ( List<Object> row : rows ) {
+                        for ( int c = 0; c < resultColMapping.length; c++ ) {
+                            batch.columns[c][batch.size] = row.get( resultColMapping[c] );
+                        }
+                        batch.size++;
+                    }
+                    migration.rowsRead.add( batch.size );
+                    put( queue, batch, aborted );
                 }
-                Iterator iterator = targetStatement.getQueryProcessor()
-                        .prepareQuery( targetRel, sourceRel.validatedRowType, true )
-                        .enumerable( targetStatement.getDataContext() )
-                        .iterator();
-                //noinspection WhileLoopReplaceableByForEach
-                while ( iterator.hasNext() ) {
-                    iterator.next();
+                if ( runningReaders.decrementAndGet() == 0 ) {
+                    // The last reader signals the writers that all data has been read
+                    for ( int i = 0; i < numberOfWriters; i++ ) {
+                        put( queue, ColumnBatch.END, aborted );
+                    }
+                }
+                return null;
+            } catch ( Throwable t ) {
+                aborted.set( true );
+                throw t;
+            }
+        };
+    }
+
+
+    private Callable<Void> writer(
+            Statement statement,
+            RelRoot targetRel,
+            RelDataType parameterRowType,
+            List<CatalogColumn> selectColumnList,
+            Set<Integer> adapters,
+            AdapterLocks adapterLocks,
+            BlockingQueue<ColumnBatch> queue,
+            AtomicBoolean aborted,
+            DataMigrationMonitor.Migration migration ) {
+        return () -> {
+            try {
+                DataContext dataContext = statement.getDataContext();
+                PolyphenyDbSignature signature = null;
+                while ( true ) {
+                    ColumnBatch batch = queue.poll( 100, TimeUnit.MILLISECONDS );
+                    if ( batch == ColumnBatch.END || aborted.get() ) {
+                        return null;
+                    } else if ( batch == null ) {
+                        continue;
+                    }
+                    for ( int c = 0; c < selectColumnList.size(); c++ ) {
+                        dataContext.addParameterValues( selectColumnList.get( c ).id, null, Arrays.asList( batch.columns[c] ) );
+                    }
+                    if ( signature == null ) {
+                        // The target plan does not depend on the parameter values, prepare it once and reuse it for all batches
+                        signature = statement.getQueryProcessor().prepareQuery( targetRel, parameterRowType, true );
+                    }
+                    final Enumerable enumerable = signature.enumerable( dataContext );
+                    adapterLocks.withAdapters( adapters, () -> {
+                        Iterator iterator = enumerable.iterator();
+                        //noinspection WhileLoopReplaceableByForEach
+                        while ( iterator.hasNext() ) {
+                            iterator.next();
+                        }
+                        return null;
+                    } );
+                    dataContext.resetParameterValues();
+                    migration.rowsWritten.add( batch.size );
+                }
+            } catch ( Throwable t ) {
+                aborted.set( true );
+                throw t;
+            }
+        };
+    }
+
+
+    private static void put( BlockingQueue<ColumnBatch> queue, ColumnBatch batch, AtomicBoolean aborted ) throws InterruptedException {
+        while ( !queue.offer( batch, 100, TimeUnit.MILLISECONDS ) ) {
+            if ( aborted.get() ) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Splits the key space of the primary key column into contiguous ranges of equal width.
+     *
+     * @return the ranges as pairs of inclusive lower and exclusive upper bound or null if the source is empty
+     */
+    private List<Pair<Long, Long>> getKeyRanges( Statement statement, List<CatalogColumnPlacement> placements, CatalogColumn keyColumn, int numberOfRanges ) {
+        RelRoot sourceRel = getSourceIterator( statement, placements );
+        RelBuilder builder = RelBuilder.create( statement, sourceRel.rel.getCluster() );
+        builder.push( sourceRel.rel );
+        builder.aggregate( builder.groupKey(), builder.min( builder.field( keyColumn.name ) ), builder.max( builder.field( keyColumn.name ) ) );
+        RelRoot boundsRel = RelRoot.of( builder.build(), SqlKind.SELECT );
+
+        PolyphenyDbSignature signature = statement.getQueryProcessor().prepareQuery( boundsRel, boundsRel.rel.getCluster().getTypeFactory().builder().build(), true );
+        //noinspection unchecked
+        Iterator<Object> iterator = signature.enumerable( statement.getDataContext() ).iterator();
+        Object[] bounds = (Object[]) iterator.next();
+        if ( bounds[0] == null || bounds[1] == null ) {
+            return null;
+        }
+        long min = ((Number) bounds[0]).longValue();
+        long max = ((Number) bounds[1]).longValue();
+
+        // Avoid overflows for huge key spaces
+        long width = Math.max( 1, (max / numberOfRanges) - (min / numberOfRanges) + 1 );
+        List<Pair<Long, Long>> ranges = new ArrayList<>();
+        for ( long lower = min; lower <= max; lower += width ) {
+            long remaining = max - lower; // Negative in case of an overflow
+            long upper = remaining >= 0 && remaining < width ? Long.MAX_VALUE : lower + width;
+            ranges.add( new Pair<>( ranges.isEmpty() ? Long.MIN_VALUE : lower, upper ) );
+            if ( upper == Long.MAX_VALUE ) {
+                break;
+            }
+        }
+        return ranges;
+    }
+
+
+    private RelRoot filterKeyRange( Statement statement, RelRoot sourceRel, CatalogColumn keyColumn, Pair<Long, Long> keyRange ) {
+        RelBuilder builder = RelBuilder.create( statement, sourceRel.rel.getCluster() );
+        builder.push( sourceRel.rel );
+        List<RexNode> conditions = new ArrayList<>();
+        if ( keyRange.left != Long.MIN_VALUE ) {
+            conditions.add( builder.call( SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, builder.field( keyColumn.name ), builder.literal( keyRange.left ) ) );
+        }
+        if ( keyRange.right != Long.MAX_VALUE ) {
+            conditions.add( builder.call( SqlStdOperatorTable.LESS_THAN, builder.field( keyColumn.name ), builder.literal( keyRange.right ) ) );
+        }
+        builder.filter( conditions );
+        return RelRoot.of( builder.build(), SqlKind.SELECT );
+    }
+
+
+    /**
+     * Serializes the access of the workers of a migration to the adapters. All statements of the transaction share the
+     * connection of an adapter (e.g. the JDBC connection bound to the transaction), which must not be used by several
+     * threads at the same time. Readers and writers use different adapters, so reading and writing still overlap.
+     */
+    private static class AdapterLocks {
+
+        private final Map<Integer, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+
+        <T> T withAdapters( Set<Integer> adapterIds, Callable<T> action ) throws Exception {
+            List<ReentrantLock> acquired = new ArrayList<>();
+            try {
+                // The locks are always acquired in the same order
+                for ( int adapterId : new TreeSet<>( adapterIds ) ) {
+                    ReentrantLock lock = locks.computeIfAbsent( adapterId, id -> new ReentrantLock() );
+                    lock.lockInterruptibly();
+                    acquired.add( lock );
+                }
+                return action.call();
+            } finally {
+                for ( ReentrantLock lock : acquired ) {
+                    lock.unlock();
                 }
-                targetStatement.getDataContext().resetParameterValues();
             }
-        } catch ( Throwable t ) {
-            throw new RuntimeException( t );
         }
+
+    }
+
+
+    /**
+     * A batch of rows stored column-wise in the order of the selected columns.
+     */
+    private static class ColumnBatch {
+
+        // Marks the end of the data
+        static final ColumnBatch END = new ColumnBatch( 0, 0 );
+
+        final Object[][] columns;
+        int size = 0;
+
+
+        ColumnBatch( int numberOfColumns, int capacity ) {
+            columns = new Object[numberOfColumns][capacity];
+        }
+
     }
 
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.processing;
+
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelVisitor;
+import org.polypheny.db.util.Pair;
+
+
+/**
+ * LRU cache keyed by {@link PlanFingerprint}s. The cache is bounded by the number of entries as well as by the total
+ * weight of the entries. Entries are indexed by the catalog tables they depend on, which allows to invalidate only
+ * the plans affected by a schema change.
+ *
+ * The entries are distributed over segments by the hash code of their fingerprint. Every segment has its own lock and
+ * evicts its least recently used entries once it exceeds its share of the bounds, so lookups of different plans do not
+ * contend on a single lock. The bounds and the LRU order are therefore only approximately enforced for the whole cache.
+ *
+ * @param <V> type of the cached values
+ */
+class FingerprintCache<V> {
+
+    static final int SEGMENTS = 16;
+
+    private final IntSupplier maximumSize;
+    private final IntSupplier maximumWeight;
+
+    private final List<Segment> segments = new ArrayList<>( SEGMENTS );
+    private final Map<Long, Set<PlanFingerprint>> dependents = new ConcurrentHashMap<>();
+    private final Set<PlanFingerprint> unknownDependencies = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+
+    FingerprintCache( IntSupplier maximumSize, IntSupplier maximumWeight ) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        for ( int i = 0; i < SEGMENTS; i++ ) {
+            segments.add( new Segment() );
+        }
+    }
+
+
+    private Segment segmentFor( PlanFingerprint fingerprint ) {
+        int hash = fingerprint.hashCode();
+        return segments.get( (hash ^ (hash >>> 16)) & (SEGMENTS - 1) );
+    }
+
+
+    V getIfPresent( PlanFingerprint fingerprint ) {
+        Segment segment = segmentFor( fingerprint );
+        synchronized ( segment ) {
+            Entry<V> entry = segment.entries.get( fingerprint );
+            if ( entry == null ) {
+                return null;
+            }
+            entry.hits++;
+            entry.lastHit = System.currentTimeMillis();
+            return entry.value;
+        }
+    }
+
+
+    /**
+     * Like {@link #getIfPresent(PlanFingerprint)} but without counting a hit.
+     */
+    V peek( PlanFingerprint fingerprint ) {
+        Segment segment = segmentFor( fingerprint );
+        synchronized ( segment ) {
+            Entry<V> entry = segment.entries.get( fingerprint );
+            return entry == null ? null : entry.value;
+        }
+    }
+
+
+    void put( PlanFingerprint fingerprint, V value, int weight ) {
+        Segment segment = segmentFor( fingerprint );
+        synchronized ( segment ) {
+            segment.remove( fingerprint );
+            segment.entries.put( fingerprint, new Entry<>( fingerprint, value, weight ) );
+            if ( fingerprint.isUnknownDependencies() ) {
+                unknownDependencies.add( fingerprint );
+            }
+            for ( long tableId : fingerprint.getTableIds() ) {
+                dependents.compute( tableId, ( k, set ) -> {
+                    if ( set == null ) {
+                        set = ConcurrentHashMap.newKeySet();
+                    }
+                    set.add( fingerprint );
+                    return set;
+                } );
+            }
+            segment.weight += weight;
+            segment.evict();
+        }
+    }
+
+
+    /**
+     * Removes all entries depending on the specified table.
+     *
+     * @return the number of removed entries
+     */
+    int invalidate( long tableId ) {
+        List<PlanFingerprint> affected = new ArrayList<>( unknownDependencies );
+        Set<PlanFingerprint> tableDependents = dependents.get( tableId );
+        if ( tableDependents != null ) {
+            affected.addAll( tableDependents );
+        }
+        int count = 0;
+        for ( PlanFingerprint fingerprint : affected ) {
+            Segment segment = segmentFor( fingerprint );
+            synchronized ( segment ) {
+                if ( segment.remove( fingerprint ) ) {
+                    count++;
+                }
+            }
+        }
+        invalidations.addAndGet( count );
+        return count;
+    }
+
+
+    void invalidateAll() {
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                for ( Entry<V> entry : new ArrayList<>( segment.entries.values() ) ) {
+                    segment.remove( entry.fingerprint );
+                }
+            }
+        }
+        evictions.set( 0 );
+        invalidations.set( 0 );
+    }
+
+
+    int size() {
+        int size = 0;
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+
+    long getWeight() {
+        long weight = 0;
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+
+    long getInvalidations() {
+        return invalidations.get();
+    }
+
+
+    /**
+     * @return a snapshot of the most frequently hit entries
+     */
+    List<Entry<V>> getMostFrequent( int limit ) {
+        // The hits are read once, they could otherwise change while sorting
+        List<Pair<Long, Entry<V>>> list = new ArrayList<>();
+        for ( Segment segment : segments ) {
+            synchronized ( segment ) {
+                for ( Entry<V> entry : segment.entries.values() ) {
+                    list.add( Pair.of( entry.hits, entry ) );
+                }
+            }
+        }
+        list.sort( Comparator.comparingLong( ( Pair<Long, Entry<V>> p ) -> p.left ).reversed() );
+        return list.stream().limit( limit ).map( p -> p.right ).collect( Collectors.toList() );
+    }
+
+
+    /**
+     * A part of the cache guarded by its own monitor.
+     */
+    private class Segment {
+
+        // Access ordered, the first entry is the least recently used one
+        private final LinkedHashMap<PlanFingerprint, Entry<V>> entries = new LinkedHashMap<>( 16, 0.75f, true );
+        private long weight = 0;
+
+
+        private boolean remove( PlanFingerprint fingerprint ) {
+            Entry<V> entry = entries.remove( fingerprint );
+            if ( entry == null ) {
+                return false;
+            }
+            unindex( entry );
+            return true;
+        }
+
+
+        private void unindex( Entry<V> entry ) {
+            PlanFingerprint fingerprint = entry.fingerprint;
+            unknownDependencies.remove( fingerprint );
+            for ( long tableId : fingerprint.getTableIds() ) {
+                dependents.computeIfPresent( tableId, ( k, set ) -> {
+                    set.remove( fingerprint );
+                    return set.isEmpty() ? null : set;
+                } );
+            }
+            weight -= entry.weight;
+        }
+
+
+        private void evict() {
+            // Every segment gets its share of the bounds, rounded up
+            int segmentSize = (maximumSize.getAsInt() + SEGMENTS - 1) / SEGMENTS;
+            long segmentWeight = ((long) maximumWeight.getAsInt() + SEGMENTS - 1) / SEGMENTS;
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while ( iterator.hasNext() && (entries.size() > segmentSize || weight > segmentWeight) ) {
+                Entry<V> entry = iterator.next();
+                iterator.remove();
+                unindex( entry );
+                evictions.incrementAndGet();
+            }
+        }
+
+    }
+
+
+    /**
+     * @return the number of relational operators of the specified plan, used as weight of cache entries
+     */
+    static int weigh( RelNode node ) {
+        int[] count = { 0 };
+        new RelVisitor() {
+            @Override
+            public void visit( RelNode node, int ordinal, RelNode parent ) {
+                count[0]++;
+                super.visit( node, ordinal, parent );
+            }
+        }.go( node );
+        return count[0];
+    }
+
+
+    static class Entry<V> {
+
+        @Getter
+        private final PlanFingerprint fingerprint;
+        @Getter
+        private final V value;
+        @Getter
+        private final int weight;
+        @Getter
+        private final long created = System.currentTimeMillis();
+
+        // Only updated by the segment of the cache holding the entry
+        private volatile long hits = 0;
+        private volatile long lastHit = 0;
+
+
+        private Entry( PlanFingerprint fingerprint, V value, int weight ) {
+            this.fingerprint = fingerprint;
+            this.value = value;
+            this.weight = weight;
+        }
+
+
+        long getHits() {
+            return hits;
+        }
+
+
+        long getLastHit() {
+            return lastHit;
+        }
+
+    }
+
+}
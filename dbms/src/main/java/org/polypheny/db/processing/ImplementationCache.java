@@ -16,12 +16,14 @@
 
 package org.polypheny.db.processing;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import org.polypheny.db.adapter.enumerable.PersistentCodeCache;
 import org.polypheny.db.config.RuntimeConfig;
 import org.polypheny.db.information.InformationAction;
 import org.polypheny.db.information.InformationGraph;
@@ -33,6 +35,7 @@
 import org.polypheny.db.information.InformationPage;
 import org.polypheny.db.information.InformationTable;
 import org.polypheny.db.information.InformationText;
+import org.polypheny.db.processing.FingerprintCache.Entry;
 import org.polypheny.db.prepare.Prepare.PreparedResult;
 import org.polypheny.db.rel.RelNode;
 
@@ -40,7 +43,9 @@ public class ImplementationCache {
 
     public static final ImplementationCache INSTANCE = new ImplementationCache();
 
-    private final Cache<String, PreparedResult> implementationCache;
+    private static final int MAX_LISTED_ENTRIES = 50;
+
+    private final FingerprintCache<PreparedResult> implementationCache;
 
     private final AtomicLong hitsCounter = new AtomicLong(); // Number of requests for which the cache contained the value
     private final AtomicLong missesCounter = new AtomicLong(); // Number of requests for which the cache hasn't contained the value
@@ -48,16 +53,15 @@ public class ImplementationCache {
 
 
     public ImplementationCache() {
-        implementationCache = CacheBuilder.newBuilder()
-                .maximumSize( RuntimeConfig.IMPLEMENTATION_CACHING_SIZE.getInteger() )
-                //  .expireAfterWrite(10, TimeUnit.MINUTES)
-                .build();
+        implementationCache = new FingerprintCache<>(
+                RuntimeConfig.IMPLEMENTATION_CACHING_SIZE::getInteger,
+                RuntimeConfig.IMPLEMENTATION_CACHING_WEIGHT::getInteger );
         registerMonitoringPage();
     }
 
 
-    public PreparedResult getIfPresent( RelNode parameterizedNode ) {
-        PreparedResult preparedResult = implementationCache.getIfPresent( parameterizedNode.relCompareString() );
+    public PreparedResult getIfPresent( PlanFingerprint fingerprint ) {
+        PreparedResult preparedResult = implementationCache.getIfPresent( fingerprint );
         if ( preparedResult == null ) {
             missesCounter.incrementAndGet();
         } else {
@@ -67,8 +71,41 @@ public PreparedResult getIfPresent( RelNode parameterizedNode ) {
     }
 
 
-    public void put( RelNode parameterizedNode, PreparedResult preparedResult ) {
-        implementationCache.put( parameterizedNode.relCompareString(), preparedResult );
+    /**
+     * @param optimalNode the implemented plan, used to weigh the entry
+     */
+    public void put( PlanFingerprint fingerprint, RelNode optimalNode, PreparedResult preparedResult ) {
+        implementationCache.put( fingerprint, preparedResult, FingerprintCache.weigh( optimalNode ) );
+    }
+
+
+    /**
+     * Removes all implementations depending on the specified table.
+     */
+    public void invalidate( long tableId ) {
+        implementationCache.invalidate( tableId );
+    }
+
+
+    /**
+     * Stores the persisted code of the implementations of the most frequently used plans of the query plan cache.
+     * This code is loaded at the next startup.
+     */
+    public void storeWarmUpList() {
+        if ( !RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT.getBoolean() ) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        for ( PlanFingerprint fingerprint : QueryPlanCache.INSTANCE.getMostFrequent( RuntimeConfig.IMPLEMENTATION_CACHING_WARM_UP.getInteger() ) ) {
+            PreparedResult preparedResult = implementationCache.peek( fingerprint );
+            if ( preparedResult != null ) {
+                String key = PersistentCodeCache.INSTANCE.getKey( preparedResult.getBindable( null ) );
+                if ( key != null ) {
+                    keys.add( key );
+                }
+            }
+        }
+        PersistentCodeCache.INSTANCE.storeWarmUpKeys( keys );
     }
 
 
@@ -101,6 +138,15 @@ private void registerMonitoringPage() {
             generalKv.putPair( "Status", RuntimeConfig.IMPLEMENTATION_CACHING.getBoolean() ? "Active" : "Disabled" );
             generalKv.putPair( "Current Cache Size", implementationCache.size() + "" );
             generalKv.putPair( "Maximum Cache Size", RuntimeConfig.IMPLEMENTATION_CACHING_SIZE.getInteger() + "" );
+            generalKv.putPair( "Current Cache Weight", implementationCache.getWeight() + "" );
+            generalKv.putPair( "Maximum Cache Weight", RuntimeConfig.IMPLEMENTATION_CACHING_WEIGHT.getInteger() + "" );
+            generalKv.putPair( "Evictions", implementationCache.getEvictions() + "" );
+            generalKv.putPair( "Invalidations", implementationCache.getInvalidations() + "" );
+            generalKv.putPair( "Persistent Code Cache", RuntimeConfig.IMPLEMENTATION_CACHING_PERSISTENT.getBoolean() ? "Active" : "Disabled" );
+            generalKv.putPair( "Persisted Entries", PersistentCodeCache.INSTANCE.getNumberOfEntries() + "" );
+            generalKv.putPair( "Classes Compiled", PersistentCodeCache.INSTANCE.getCompiledCount() + "" );
+            generalKv.putPair( "Classes Loaded from Disk", PersistentCodeCache.INSTANCE.getLoadedCount() + "" );
+            generalKv.putPair( "Discarded Entries", PersistentCodeCache.INSTANCE.getInvalidCount() + "" );
         } );
 
         // Hit ratio
@@ -146,8 +192,31 @@ private void registerMonitoringPage() {
             hitInfoTable.addRow( "Uncacheable", df.format( total == 0 ? 0 : (uncacheablePercent * 100) ) + " %", uncacheable );
         } );
 
+        // Entries
+        InformationGroup entriesGroup = new InformationGroup( page, "Most Frequently Used Implementations" ).setOrder( 3 );
+        im.addGroup( entriesGroup );
+
+        InformationTable entriesTable = new InformationTable(
+                entriesGroup,
+                Arrays.asList( "Plan", "Tables", "Weight", "Hits", "Last Hit" )
+        );
+        im.registerInformation( entriesTable );
+
+        entriesGroup.setRefreshFunction( () -> {
+            entriesTable.reset();
+            for ( Entry<PreparedResult> entry : implementationCache.getMostFrequent( MAX_LISTED_ENTRIES ) ) {
+                PlanFingerprint fingerprint = entry.getFingerprint();
+                entriesTable.addRow(
+                        fingerprint.getKey(),
+                        fingerprint.isUnknownDependencies() ? "unknown" : fingerprint.getTableIds().toString(),
+                        entry.getWeight(),
+                        entry.getHits(),
+                        entry.getLastHit() == 0 ? "-" : new Date( entry.getLastHit() ).toString() );
+            }
+        } );
+
         // Invalidate cache
-        InformationGroup invalidateGroup = new InformationGroup( page, "Invalidate" ).setOrder( 3 );
+        InformationGroup invalidateGroup = new InformationGroup( page, "Invalidate" ).setOrder( 4 );
         im.addGroup( invalidateGroup );
 
         InformationText invalidateText = new InformationText( invalidateGroup, "Invalidate the implementation cache including the hit and miss counters." );
@@ -158,9 +227,18 @@ private void registerMonitoringPage() {
             reset();
             generalGroup.refresh();
             hitRatioGroup.refresh();
+            entriesGroup.refresh();
             return "Successfully invalidated the implementation cache!";
         } );
         invalidateAction.setOrder( 2 );
         im.registerInformation( invalidateAction );
+
+        InformationAction deletePersistedAction = new InformationAction( invalidateGroup, "Delete Persisted Code", parameters -> {
+            PersistentCodeCache.INSTANCE.reset();
+            generalGroup.refresh();
+            return "Successfully deleted the persisted code!";
+        } );
+        deletePersistedAction.setOrder( 3 );
+        im.registerInformation( deletePersistedAction );
     }
 }
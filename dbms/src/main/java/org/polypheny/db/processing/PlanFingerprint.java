@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.processing;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.Getter;
+import org.polypheny.db.plan.RelOptTable;
+import org.polypheny.db.prepare.RelOptTableImpl;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelVisitor;
+import org.polypheny.db.rel.RelWriter;
+import org.polypheny.db.rex.RexDynamicParam;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.rex.RexVisitorImpl;
+import org.polypheny.db.schema.LogicalTable;
+import org.polypheny.db.sql.SqlExplainLevel;
+import org.polypheny.db.util.Pair;
+
+
+/**
+ * Structural fingerprint of a parameterized query plan. The fingerprint is computed once per prepared query and used
+ * as key for the query plan cache and the implementation cache. Besides the key, it records the catalog tables the
+ * plan depends on. This allows to invalidate only the affected cache entries if a table is altered.
+ *
+ * The key is a canonical description of the plan: the type, the attributes and the row type of every operator and the
+ * types of the dynamic parameters. Unlike {@link RelNode#relCompareString()}, it does not depend on hash codes of
+ * expressions and is therefore free of collisions.
+ */
+public class PlanFingerprint {
+
+    @Getter
+    private final String key;
+    @Getter
+    private final ImmutableSet<Long> tableIds;
+    // True if the plan accesses tables which could not be mapped to catalog tables (e.g. plans which have been routed
+    // by the caller). Such plans are invalidated by any schema change.
+    @Getter
+    private final boolean unknownDependencies;
+
+
+    PlanFingerprint( String key, ImmutableSet<Long> tableIds, boolean unknownDependencies ) {
+        this.key = key;
+        this.tableIds = tableIds;
+        this.unknownDependencies = unknownDependencies;
+    }
+
+
+    /**
+     * @param parameterizedNode the parameterized (routed) plan
+     * @param logicalNode the corresponding plan on the logical tables which is used to determine the dependencies
+     */
+    public static PlanFingerprint of( RelNode parameterizedNode, RelNode logicalNode ) {
+        Set<Long> tableIds = new HashSet<>();
+        boolean[] unknownDependencies = { false };
+        new RelVisitor() {
+            @Override
+            public void visit( RelNode node, int ordinal, RelNode parent ) {
+                super.visit( node, ordinal, parent );
+                RelOptTable table = node.getTable();
+                if ( table == null ) {
+                    return;
+                }
+                if ( table instanceof RelOptTableImpl && ((RelOptTableImpl) table).getTable() instanceof LogicalTable ) {
+                    tableIds.add( ((LogicalTable) ((RelOptTableImpl) table).getTable()).getTableId() );
+                } else {
+                    unknownDependencies[0] = true;
+                }
+            }
+        }.go( logicalNode );
+        return new PlanFingerprint( describe( parameterizedNode ), ImmutableSet.copyOf( tableIds ), unknownDependencies[0] );
+    }
+
+
+    /**
+     * @return the canonical description of the structure of the specified plan
+     */
+    static String describe( RelNode node ) {
+        StructureWriter writer = new StructureWriter();
+        node.explain( writer );
+        return writer.builder.toString();
+    }
+
+
+    public boolean dependsOn( long tableId ) {
+        return unknownDependencies || tableIds.contains( tableId );
+    }
+
+
+    @Override
+    public boolean equals( Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !(o instanceof PlanFingerprint) ) {
+            return false;
+        }
+        return key.equals( ((PlanFingerprint) o).key );
+    }
+
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+
+
+    /**
+     * Writes the operators of a plan in pre-order. Inputs are enclosed in brackets following the attributes and the
+     * row type of an operator. The ids of the operators are omitted.
+     */
+    private static class StructureWriter implements RelWriter {
+
+        private final StringBuilder builder = new StringBuilder();
+        private final List<Pair<String, Object>> values = new ArrayList<>();
+
+
+        @Override
+        public void explain( RelNode rel, List<Pair<String, Object>> valueList ) {
+            builder.append( rel.getRelTypeName() ).append( '(' );
+            for ( Pair<String, Object> value : valueList ) {
+                if ( value.right instanceof RelNode ) {
+                    continue;
+                }
+                builder.append( value.left ).append( "=[" ).append( value.right ).append( ']' );
+                appendParameterTypes( value.right );
+                builder.append( ',' );
+            }
+            builder.append( "):" ).append( rel.getRowType().getFullTypeString() ).append( '[' );
+            for ( RelNode input : rel.getInputs() ) {
+                input.explain( this );
+                builder.append( ',' );
+            }
+            builder.append( ']' );
+        }
+
+
+        /**
+         * The digest of a dynamic parameter only consists of its index, the type is therefore added separately.
+         */
+        private void appendParameterTypes( Object value ) {
+            if ( value instanceof RexNode ) {
+                ((RexNode) value).accept( new RexVisitorImpl<Void>( true ) {
+                    @Override
+                    public Void visitDynamicParam( RexDynamicParam dynamicParam ) {
+                        builder.append( '{' ).append( dynamicParam.getIndex() ).append( ':' ).append( dynamicParam.getType().getFullTypeString() ).append( '}' );
+                        return null;
+                    }
+                } );
+            } else if ( value instanceof Iterable ) {
+                for ( Object element : (Iterable<?>) value ) {
+                    appendParameterTypes( element );
+                }
+            }
+        }
+
+
+        @Override
+        public SqlExplainLevel getDetailLevel() {
+            return SqlExplainLevel.DIGEST_ATTRIBUTES;
+        }
+
+
+        @Override
+        public RelWriter input( String term, RelNode input ) {
+            values.add( Pair.of( term, (Object) input ) );
+            return this;
+        }
+
+
+        @Override
+        public RelWriter item( String term, Object value ) {
+            values.add( Pair.of( term, value ) );
+            return this;
+        }
+
+
+        @Override
+        public RelWriter itemIf( String term, Object value, boolean condition ) {
+            if ( condition ) {
+                item( term, value );
+            }
+            return this;
+        }
+
+
+        @Override
+        public RelWriter done( RelNode node ) {
+            List<Pair<String, Object>> valuesCopy = ImmutableList.copyOf( values );
+            values.clear();
+            explain( node, valuesCopy );
+            return this;
+        }
+
+
+        @Override
+        public boolean nest() {
+            return false;
+        }
+
+    }
+
+}
@@ -16,12 +16,13 @@
 
 package org.polypheny.db.processing;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import org.polypheny.db.config.RuntimeConfig;
 import org.polypheny.db.information.InformationAction;
 import org.polypheny.db.information.InformationGraph;
@@ -33,29 +34,31 @@
 import org.polypheny.db.information.InformationPage;
 import org.polypheny.db.information.InformationTable;
 import org.polypheny.db.information.InformationText;
+import org.polypheny.db.processing.FingerprintCache.Entry;
 import org.polypheny.db.rel.RelNode;
 
 public class QueryPlanCache {
 
     public static final QueryPlanCache INSTANCE = new QueryPlanCache();
 
-    private final Cache<String, RelNode> planCache;
+    private static final int MAX_LISTED_ENTRIES = 50;
+
+    private final FingerprintCache<RelNode> planCache;
 
     private final AtomicLong hitsCounter = new AtomicLong(); // Number of requests for which the cache contained the value
     private final AtomicLong missesCounter = new AtomicLong(); // Number of requests for which the cache hasn't contained the value
 
 
     public QueryPlanCache() {
-        planCache = CacheBuilder.newBuilder()
-                .maximumSize( RuntimeConfig.QUERY_PLAN_CACHING_SIZE.getInteger() )
-                //  .expireAfterWrite(10, TimeUnit.MINUTES)
-                .build();
+        planCache = new FingerprintCache<>(
+                RuntimeConfig.QUERY_PLAN_CACHING_SIZE::getInteger,
+                RuntimeConfig.QUERY_PLAN_CACHING_WEIGHT::getInteger );
         registerMonitoringPage();
     }
 
 
-    public RelNode getIfPresent( RelNode parameterizedNode ) {
-        RelNode node = planCache.getIfPresent( parameterizedNode.relCompareString() );
+    public RelNode getIfPresent( PlanFingerprint fingerprint ) {
+        RelNode node = planCache.getIfPresent( fingerprint );
         if ( node == null ) {
             missesCounter.incrementAndGet();
         } else {
@@ -65,8 +68,24 @@ public RelNode getIfPresent( RelNode parameterizedNode ) {
     }
 
 
-    public void put( RelNode parameterizedNode, RelNode optimalNode ) {
-        planCache.put( parameterizedNode.relCompareString(), optimalNode );
+    public void put( PlanFingerprint fingerprint, RelNode optimalNode ) {
+        planCache.put( fingerprint, optimalNode, FingerprintCache.weigh( optimalNode ) );
+    }
+
+
+    /**
+     * Removes all plans depending on the specified table.
+     */
+    public void invalidate( long tableId ) {
+        planCache.invalidate( tableId );
+    }
+
+
+    /**
+     * @return the fingerprints of the most frequently used plans, ordered by the number of hits
+     */
+    public List<PlanFingerprint> getMostFrequent( int limit ) {
+        return planCache.getMostFrequent( limit ).stream().map( Entry::getFingerprint ).collect( Collectors.toList() );
     }
 
 
@@ -93,6 +112,10 @@ private void registerMonitoringPage() {
             generalKv.putPair( "Status", RuntimeConfig.QUERY_PLAN_CACHING.getBoolean() ? "Active" : "Disabled" );
             generalKv.putPair( "Current Cache Size", planCache.size() + "" );
             generalKv.putPair( "Maximum Cache Size", RuntimeConfig.QUERY_PLAN_CACHING_SIZE.getInteger() + "" );
+            generalKv.putPair( "Current Cache Weight", planCache.getWeight() + "" );
+            generalKv.putPair( "Maximum Cache Weight", RuntimeConfig.QUERY_PLAN_CACHING_WEIGHT.getInteger() + "" );
+            generalKv.putPair( "Evictions", planCache.getEvictions() + "" );
+            generalKv.putPair( "Invalidations", planCache.getInvalidations() + "" );
         } );
 
         // Hit ratio
@@ -134,8 +157,31 @@ private void registerMonitoringPage() {
             hitInfoTable.addRow( "Misses", df.format( total == 0 ? 0 : (missesPercent * 100) ) + " %", misses );
         } );
 
+        // Entries
+        InformationGroup entriesGroup = new InformationGroup( page, "Most Frequently Used Plans" ).setOrder( 3 );
+        im.addGroup( entriesGroup );
+
+        InformationTable entriesTable = new InformationTable(
+                entriesGroup,
+                Arrays.asList( "Plan", "Tables", "Weight", "Hits", "Last Hit" )
+        );
+        im.registerInformation( entriesTable );
+
+        entriesGroup.setRefreshFunction( () -> {
+            entriesTable.reset();
+            for ( Entry<RelNode> entry : planCache.getMostFrequent( MAX_LISTED_ENTRIES ) ) {
+                PlanFingerprint fingerprint = entry.getFingerprint();
+                entriesTable.addRow(
+                        fingerprint.getKey(),
+                        fingerprint.isUnknownDependencies() ? "unknown" : fingerprint.getTableIds().toString(),
+                        entry.getWeight(),
+                        entry.getHits(),
+                        entry.getLastHit() == 0 ? "-" : new Date( entry.getLastHit() ).toString() );
+            }
+        } );
+
         // Invalidate cache
-        InformationGroup invalidateGroup = new InformationGroup( page, "Invalidate" ).setOrder( 3 );
+        InformationGroup invalidateGroup = new InformationGroup( page, "Invalidate" ).setOrder( 4 );
         im.addGroup( invalidateGroup );
 
         InformationText invalidateText = new InformationText( invalidateGroup, "Invalidate the query plan cache including the hit and miss counters." );
@@ -146,6 +192,7 @@ private void registerMonitoringPage() {
             reset();
             generalGroup.refresh();
             hitRatioGroup.refresh();
+            entriesGroup.refresh();
             return "Successfully invalidated the query plan cache!";
         } );
         invalidateAction.setOrder( 2 );
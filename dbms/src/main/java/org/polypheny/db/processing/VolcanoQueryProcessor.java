@@ -40,6 +40,7 @@
 import org.polypheny.db.rel.rules.AggregateValuesRule;
 import org.polypheny.db.rel.rules.FilterAggregateTransposeRule;
 import org.polypheny.db.rel.rules.FilterJoinRule;
+import org.polypheny.db.rel.rules.FilterPlacementJoinRule;
 import org.polypheny.db.rel.rules.FilterProjectTransposeRule;
 import org.polypheny.db.rel.rules.FilterTableScanRule;
 import org.polypheny.db.rel.rules.JoinAssociateRule;
@@ -47,6 +48,7 @@
 import org.polypheny.db.rel.rules.JoinPushExpressionsRule;
 import org.polypheny.db.rel.rules.JoinPushThroughJoinRule;
 import org.polypheny.db.rel.rules.ProjectFilterTransposeRule;
+import org.polypheny.db.rel.rules.ProjectJoinTransposeRule;
 import org.polypheny.db.rel.rules.ProjectMergeRule;
 import org.polypheny.db.rel.rules.ProjectTableScanRule;
 import org.polypheny.db.rel.rules.ProjectWindowTransposeRule;
@@ -72,6 +74,7 @@ public class VolcanoQueryProcessor extends AbstractQueryProcessor {
             ImmutableList.of(
                     EnumerableRules.ENUMERABLE_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_MERGE_JOIN_RULE,
+                    EnumerableRules.ENUMERABLE_PLACEMENT_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_SEMI_JOIN_RULE,
                     EnumerableRules.ENUMERABLE_CORRELATE_RULE,
                     EnumerableRules.ENUMERABLE_CONDITIONAL_EXECUTE_RULE,
@@ -85,6 +88,7 @@ public class VolcanoQueryProcessor extends AbstractQueryProcessor {
                     EnumerableRules.ENUMERABLE_COLLECT_RULE,
                     EnumerableRules.ENUMERABLE_UNCOLLECT_RULE,
                     EnumerableRules.ENUMERABLE_UNION_RULE,
+                    EnumerableRules.ENUMERABLE_PARTITION_UNION_RULE,
                     EnumerableRules.ENUMERABLE_MODIFY_COLLECT_RULE,
                     EnumerableRules.ENUMERABLE_INTERSECT_RULE,
                     EnumerableRules.ENUMERABLE_MINUS_RULE,
@@ -104,6 +108,8 @@ public class VolcanoQueryProcessor extends AbstractQueryProcessor {
                     ProjectFilterTransposeRule.INSTANCE,
                     FilterProjectTransposeRule.INSTANCE,
                     FilterJoinRule.FILTER_ON_JOIN,
+                    FilterPlacementJoinRule.INSTANCE,
+                    ProjectJoinTransposeRule.PLACEMENT_JOIN,
                     JoinPushExpressionsRule.INSTANCE,
                     AggregateExpandDistinctAggregatesRule.INSTANCE,
                     AggregateReduceFunctionsRule.INSTANCE,
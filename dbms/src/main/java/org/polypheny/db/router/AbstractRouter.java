@@ -19,19 +19,26 @@
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.calcite.avatica.MetaImpl;
+import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.catalog.Catalog;
 import org.polypheny.db.catalog.Catalog.TableType;
 import org.polypheny.db.catalog.entity.CatalogColumn;
@@ -43,16 +50,19 @@
 import org.polypheny.db.information.InformationManager;
 import org.polypheny.db.information.InformationPage;
 import org.polypheny.db.information.InformationTable;
+import org.polypheny.db.jdbc.PolyphenyDbSignature;
 import org.polypheny.db.partition.PartitionManager;
 import org.polypheny.db.partition.PartitionManagerFactory;
 import org.polypheny.db.plan.RelOptCluster;
 import org.polypheny.db.plan.RelOptTable;
+import org.polypheny.db.plan.RelOptUtil;
 import org.polypheny.db.prepare.Prepare.CatalogReader;
 import org.polypheny.db.prepare.RelOptTableImpl;
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.rel.RelRoot;
 import org.polypheny.db.rel.RelShuttleImpl;
 import org.polypheny.db.rel.core.ConditionalExecute;
+import org.polypheny.db.rel.core.Join;
 import org.polypheny.db.rel.core.JoinRelType;
 import org.polypheny.db.rel.core.SetOp;
 import org.polypheny.db.rel.core.TableModify;
@@ -60,10 +70,13 @@
 import org.polypheny.db.rel.logical.LogicalConditionalExecute;
 import org.polypheny.db.rel.logical.LogicalFilter;
 import org.polypheny.db.rel.logical.LogicalModifyCollect;
+import org.polypheny.db.rel.logical.LogicalPartitionUnion;
+import org.polypheny.db.rel.logical.LogicalPlacementJoin;
 import org.polypheny.db.rel.logical.LogicalProject;
 import org.polypheny.db.rel.logical.LogicalTableModify;
 import org.polypheny.db.rel.logical.LogicalTableScan;
 import org.polypheny.db.rel.logical.LogicalValues;
+import org.polypheny.db.rel.type.RelDataType;
 import org.polypheny.db.rel.type.RelDataTypeField;
 import org.polypheny.db.rex.RexCall;
 import org.polypheny.db.rex.RexDynamicParam;
@@ -81,6 +94,8 @@
 import org.polypheny.db.sql.fun.SqlStdOperatorTable;
 import org.polypheny.db.tools.RelBuilder;
 import org.polypheny.db.transaction.Statement;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.util.Pair;
 
 
 @Slf4j
@@ -93,7 +108,8 @@ public abstract class AbstractRouter implements Router {
     final Catalog catalog = Catalog.getInstance();
 
 
-    private final Map<Integer, List<String>> filterMap = new HashMap<>();
+    // Partitions which may contain rows satisfying the condition on top of a table scan, by id of the scan
+    private final Map<Integer, List<Long>> partitionMap = new HashMap<>();
     private static final Cache<Integer, RelNode> joinedTableScanCache = CacheBuilder.newBuilder()
             .maximumSize( RuntimeConfig.JOINED_TABLE_SCAN_CACHE_SIZE.getInteger() )
             .build();
@@ -186,32 +202,17 @@ protected RelBuilder buildSelect( RelNode node, RelBuilder builder, Statement st
                     CatalogTable catalogTable;
                     catalogTable = Catalog.getInstance().getTable( t.getTableId() );
                     if ( catalogTable.isPartitioned ) {
-                        WhereClauseVisitor whereClauseVisitor = new WhereClauseVisitor( statement, catalogTable.columnIds.indexOf( catalogTable.partitionColumnId ) );
-                        node.accept( new RelShuttleImpl() {
-                            @Override
-                            public RelNode visit( LogicalFilter filter ) {
-                                super.visit( filter );
-                                filter.accept( whereClauseVisitor );
-                                return filter;
-                            }
-                        } );
+                        PartitionManagerFactory partitionManagerFactory = new PartitionManagerFactory();
+                        PartitionManager partitionManager = partitionManagerFactory.getInstance( catalogTable.partitionType );
+                        PartitionPruner partitionPruner = new PartitionPruner( catalogTable, partitionManager, statement.getDataContext() );
+                        Set<Long> partitionIds = partitionPruner.prune( ((LogicalFilter) node).getCondition() );
 
-                        if ( whereClauseVisitor.valueIdentified ) {
-                            List<Object> values = whereClauseVisitor.getValues().stream()
-                                    .map( Object::toString )
-                                    .collect( Collectors.toList() );
-                            int scanId = 0;
-                            if ( !values.isEmpty() ) {
-                                scanId = ((LogicalFilter) node).getInput().getId();
-                                filterMap.put( scanId, whereClauseVisitor.getValues().stream()
-                                        .map( Object::toString )
-                                        .collect( Collectors.toList() ) );
-                            }
-                            buildDql( node.getInput( i ), builder, statement, cluster );
-                            filterMap.remove( scanId );
-                        } else {
-                            buildDql( node.getInput( i ), builder, statement, cluster );
+                        int scanId = ((LogicalFilter) node).getInput().getId();
+                        if ( partitionIds != null ) {
+                            partitionMap.put( scanId, new ArrayList<>( partitionIds ) );
                         }
+                        buildDql( node.getInput( i ), builder, statement, cluster );
+                        partitionMap.remove( scanId );
                     } else {
                         buildDql( node.getInput( i ), builder, statement, cluster );
                     }
@@ -237,31 +238,24 @@ public RelNode visit( LogicalFilter filter ) {
                     //  routing strategies, especially when we also get rid of the worst-case routing.
 
                     if ( log.isDebugEnabled() ) {
-                        log.debug( "VALUE from Map: {} id: {}", filterMap.get( node.getId() ), node.getId() );
+                        log.debug( "Partitions from Map: {} id: {}", partitionMap.get( node.getId() ), node.getId() );
                     }
-                    List<String> partitionValues = filterMap.get( node.getId() );
+                    List<Long> partitionIds = partitionMap.get( node.getId() );
 
                     PartitionManagerFactory partitionManagerFactory = new PartitionManagerFactory();
                     PartitionManager partitionManager = partitionManagerFactory.getInstance( catalogTable.partitionType );
-                    if ( partitionValues != null ) {
+                    if ( partitionIds != null ) {
                         if ( log.isDebugEnabled() ) {
                             log.debug( "TableID: {} is partitioned on column: {} - {}",
                                     t.getTableId(),
                                     catalogTable.partitionColumnId,
                                     catalog.getColumn( catalogTable.partitionColumnId ).name );
                         }
-                        if ( partitionValues.size() == 1 ) {
-                            List<Long> identPartitions = new ArrayList<>();
-                            for ( String partitionValue : partitionValues ) {
-                                log.debug( "Extracted PartitionValue: {}", partitionValue );
-                                long identPart = partitionManager.getTargetPartitionId( catalogTable, partitionValue );
-                                identPartitions.add( identPart );
-                                log.debug( "Identified PartitionId: {} for value: {}", identPart, partitionValue );
-                            }
-                            placements = partitionManager.getRelevantPlacements( catalogTable, identPartitions );
-                        } else {
-                            placements = partitionManager.getRelevantPlacements( catalogTable, null );
+                        if ( partitionIds.isEmpty() ) {
+                            // No partition contains matching rows, no placement has to be read
+                            return builder.values( node.getRowType() );
                         }
+                        return builder.push( buildPartitionedTableScan( statement, cluster, catalogTable, partitionManager, partitionIds ) );
                     } else {
                         // TODO Change to worst-case
                         placements = partitionManager.getRelevantPlacements( catalogTable, null );
@@ -286,6 +280,44 @@ public RelNode visit( LogicalFilter filter ) {
     }
 
 
+    /**
+     * Builds the scan of the given partitions of a horizontally partitioned table. Partitions which are read from the
+     * same placements are scanned together, the scans of different placements are combined by a union.
+     *
+     * @param partitionIds The partitions to scan, must not be empty
+     */
+    protected RelNode buildPartitionedTableScan( Statement statement, RelOptCluster cluster, CatalogTable catalogTable, PartitionManager partitionManager, List<Long> partitionIds ) {
+        // Group the partitions by the placements they are read from
+        Map<List<CatalogColumnPlacement>, List<Long>> partitionsByPlacements = new LinkedHashMap<>();
+        for ( long partitionId : partitionIds ) {
+            List<CatalogColumnPlacement> placements = partitionManager.getRelevantPlacements( catalogTable, ImmutableList.of( partitionId ) );
+            partitionsByPlacements.computeIfAbsent( placements, k -> new ArrayList<>() ).add( partitionId );
+        }
+        if ( partitionsByPlacements.size() == 1 ) {
+            return buildJoinedTableScan( statement, cluster, partitionsByPlacements.keySet().iterator().next() );
+        }
+
+        RelBuilder builder = RelBuilder.create( statement, cluster );
+        String partitionColumnName = catalog.getColumn( catalogTable.partitionColumnId ).name;
+        List<RelNode> scans = new ArrayList<>( partitionsByPlacements.size() );
+        for ( Entry<List<CatalogColumnPlacement>, List<Long>> entry : partitionsByPlacements.entrySet() ) {
+            builder.push( buildJoinedTableScan( statement, cluster, entry.getKey() ) );
+            // A placement may also contain rows of other partitions, which are read from their own placements
+            RexNode condition = partitionManager.getPartitionCondition( catalogTable, entry.getValue(), builder, builder.field( partitionColumnName ) );
+            if ( condition == null ) {
+                // The partitions can not be told apart, read them from placements holding all partitions
+                return buildJoinedTableScan( statement, cluster, partitionManager.getRelevantPlacements( catalogTable, null ) );
+            }
+            scans.add( builder.filter( condition ).build() );
+        }
+        if ( RuntimeConfig.PARTITION_UNION.getBoolean() ) {
+            // Fetch the partitions concurrently
+            return LogicalPartitionUnion.create( scans );
+        }
+        return builder.pushAll( scans ).union( true, scans.size() ).build();
+    }
+
+
     protected RelBuilder buildSetOp( RelNode node, RelBuilder builder, Statement statement, RelOptCluster cluster ) {
         buildDql( node.getInput( 0 ), builder, statement, cluster );
 
@@ -362,8 +394,23 @@ protected RelNode routeDml( RelNode node, Statement statement ) {
                     }
                 }
 
+                // Conditions on columns which are not placed on every adapter are evaluated beforehand. The data
+                // modification is then restricted to the primary keys of the selected rows (semi-join reduction).
+                List<List<RexDynamicParam>> affectedKeys = null;
+                LogicalFilter reducibleFilter = getSemiJoinReducibleFilter( (LogicalTableModify) node, catalogTable, pkPlacements );
+                if ( reducibleFilter != null ) {
+                    affectedKeys = bindAffectedKeys( reducibleFilter, catalogTable, updatesPrimaryKey( catalogTable, ((LogicalTableModify) node).getUpdateColumnList() ), statement );
+                    if ( affectedKeys.isEmpty() ) {
+                        log.debug( "Semi-join reduction: no rows of table '{}' are affected", catalogTable.name );
+                        RelDataType rowType = node.getRowType();
+                        return RelBuilder.create( statement, cluster )
+                                .values( ImmutableList.of( ImmutableList.of( cluster.getRexBuilder().makeExactLiteral( BigDecimal.ZERO, rowType.getFieldList().get( 0 ).getType() ) ) ), rowType )
+                                .build();
+                    }
+                }
+
                 // Execute on all primary key placements
-                List<TableModify> modifies = new ArrayList<>( pkPlacements.size() );
+                List<RelNode> modifies = new ArrayList<>( pkPlacements.size() );
                 for ( CatalogColumnPlacement pkPlacement : pkPlacements ) {
                     CatalogReader catalogReader = statement.getTransaction().getCatalogReader();
 
@@ -374,7 +421,6 @@ protected RelNode routeDml( RelNode node, Statement statement ) {
                                     pkPlacement.physicalSchemaName ),
                             t.getLogicalTableName() );
                     RelOptTable physical = catalogReader.getTableForMember( qualifiedTableName );
-                    ModifiableTable modifiableTable = physical.unwrap( ModifiableTable.class );
 
                     // Get placements on store
                     List<CatalogColumnPlacement> placementsOnAdapter = catalog.getColumnPlacementsOnAdapter( pkPlacement.adapterId, catalogTable.id );
@@ -579,37 +625,25 @@ public RelNode visit( LogicalFilter filter ) {
                     }
 
                     // Build DML
-                    TableModify modify;
-                    RelNode input = buildDml(
-                            recursiveCopy( node.getInput( 0 ) ),
-                            RelBuilder.create( statement, cluster ),
-                            catalogTable,
-                            placementsOnAdapter,
-                            statement,
-                            cluster ).build();
-                    if ( modifiableTable != null && modifiableTable == physical.unwrap( Table.class ) ) {
-                        modify = modifiableTable.toModificationRel(
-                                cluster,
-                                physical,
-                                catalogReader,
-                                input,
-                                ((LogicalTableModify) node).getOperation(),
-                                updateColumnList,
-                                sourceExpressionList,
-                                ((LogicalTableModify) node).isFlattened()
-                        );
+                    if ( affectedKeys == null ) {
+                        modifies.add( buildModify( (LogicalTableModify) node, catalogTable, placementsOnAdapter, physical, catalogReader, updateColumnList, sourceExpressionList, null, statement, cluster ) );
                     } else {
-                        modify = LogicalTableModify.create(
-                                physical,
-                                catalogReader,
-                                input,
-                                ((LogicalTableModify) node).getOperation(),
-                                updateColumnList,
-                                sourceExpressionList,
-                                ((LogicalTableModify) node).isFlattened()
-                        );
+                        // The keys are shipped in bounded chunks. Updates of the primary key never exceed one chunk,
+                        // see bindAffectedKeys().
+                        List<RelNode> chunkModifies = new ArrayList<>();
+                        for ( List<List<RexDynamicParam>> chunk : Lists.partition( affectedKeys, RuntimeConfig.SEMI_JOIN_REDUCTION_CHUNK_SIZE.getInteger() ) ) {
+                            chunkModifies.add( buildModify( (LogicalTableModify) node, catalogTable, placementsOnAdapter, physical, catalogReader, updateColumnList, sourceExpressionList, chunk, statement, cluster ) );
+                        }
+                        if ( chunkModifies.size() == 1 ) {
+                            modifies.add( chunkModifies.get( 0 ) );
+                        } else {
+                            // Sum up the number of modified rows of the chunks
+                            RelBuilder builder = RelBuilder.create( statement, cluster );
+                            builder.push( LogicalModifyCollect.create( chunkModifies, true ) );
+                            builder.aggregate( builder.groupKey(), builder.sum( false, node.getRowType().getFieldNames().get( 0 ), builder.field( 0 ) ) );
+                            modifies.add( builder.build() );
+                        }
                     }
-                    modifies.add( modify );
                 }
                 if ( modifies.size() == 1 ) {
                     return modifies.get( 0 );
@@ -635,9 +669,222 @@ public RelNode visit( LogicalFilter filter ) {
     }
 
 
-    protected RelBuilder buildDml( RelNode node, RelBuilder builder, CatalogTable catalogTable, List<CatalogColumnPlacement> placements, Statement statement, RelOptCluster cluster ) {
+    /**
+     * @param semiJoinKeys dynamic parameters holding the primary keys of the rows to modify if the condition of the
+     * statement has been evaluated beforehand, {@code null} otherwise
+     */
+    private TableModify buildModify(
+            LogicalTableModify node,
+            CatalogTable catalogTable,
+            List<CatalogColumnPlacement> placementsOnAdapter,
+            RelOptTable physical,
+            CatalogReader catalogReader,
+            List<String> updateColumnList,
+            List<RexNode> sourceExpressionList,
+            List<List<RexDynamicParam>> semiJoinKeys,
+            Statement statement,
+            RelOptCluster cluster ) {
+        ModifiableTable modifiableTable = physical.unwrap( ModifiableTable.class );
+        RelNode input = buildDml(
+                recursiveCopy( node.getInput( 0 ) ),
+                RelBuilder.create( statement, cluster ),
+                catalogTable,
+                placementsOnAdapter,
+                semiJoinKeys,
+                statement,
+                cluster ).build();
+        if ( modifiableTable != null && modifiableTable == physical.unwrap( Table.class ) ) {
+            return modifiableTable.toModificationRel(
+                    cluster,
+                    physical,
+                    catalogReader,
+                    input,
+                    node.getOperation(),
+                    updateColumnList,
+                    sourceExpressionList,
+                    node.isFlattened()
+            );
+        } else {
+            return LogicalTableModify.create(
+                    physical,
+                    catalogReader,
+                    input,
+                    node.getOperation(),
+                    updateColumnList,
+                    sourceExpressionList,
+                    node.isFlattened()
+            );
+        }
+    }
+
+
+    /**
+     * Returns the filter of an UPDATE or DELETE statement if its condition references columns which are not placed on
+     * every adapter holding the primary key. Only filters directly on top of the scan of the modified table are
+     * considered, other conditions are left to {@link #dmlConditionCheck}.
+     */
+    private LogicalFilter getSemiJoinReducibleFilter( LogicalTableModify modify, CatalogTable catalogTable, List<CatalogColumnPlacement> pkPlacements ) {
+        if ( modify.getOperation() != Operation.UPDATE && modify.getOperation() != Operation.DELETE ) {
+            return null;
+        }
+        RelNode input = modify.getInput();
+        while ( !(input instanceof LogicalFilter) && input.getInputs().size() == 1 ) {
+            input = input.getInput( 0 );
+        }
+        if ( !(input instanceof LogicalFilter) || !(((LogicalFilter) input).getInput() instanceof LogicalTableScan) ) {
+            return null;
+        }
+        LogicalFilter filter = (LogicalFilter) input;
+        RelOptTableImpl table = (RelOptTableImpl) filter.getInput().getTable();
+        if ( !(table.getTable() instanceof LogicalTable) || ((LogicalTable) table.getTable()).getTableId() != catalogTable.id ) {
+            return null;
+        }
+        for ( int index : RelOptUtil.InputFinder.bits( filter.getCondition() ) ) {
+            long columnId = catalogTable.columnIds.get( index );
+            for ( CatalogColumnPlacement pkPlacement : pkPlacements ) {
+                if ( !catalog.checkIfExistsColumnPlacement( pkPlacement.adapterId, columnId ) ) {
+                    return filter;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Selects the primary keys of the rows matching the condition of the given filter and binds them to new dynamic
+     * parameters of the statement. The keys are selected for every set of parameter values, so batches are reduced
+     * set by set. The number of keys is padded with NULL values, which never match, to the next power of two (or the
+     * next multiple of the chunk size), so that statements affecting a similar number of rows share the same plan.
+     *
+     * Updates of the primary key are rejected if they affect more rows than fit into one chunk: A later chunk could
+     * match the new keys of rows which have already been updated by a previous chunk.
+     *
+     * @return the dynamic parameters of the keys, or an empty list if no row is affected
+     */
+    private List<List<RexDynamicParam>> bindAffectedKeys( LogicalFilter filter, CatalogTable catalogTable, boolean updatesPrimaryKey, Statement statement ) {
+        DataContext dataContext = statement.getDataContext();
+        List<Map<Long, Object>> parameterSets = dataContext.getParameterValues();
+        List<List<List<Object>>> keysPerSet = new ArrayList<>();
+        if ( parameterSets.isEmpty() ) {
+            keysPerSet.add( selectAffectedKeys( filter, catalogTable, Collections.emptyMap(), statement ) );
+        } else {
+            for ( Map<Long, Object> parameterSet : parameterSets ) {
+                keysPerSet.add( selectAffectedKeys( filter, catalogTable, parameterSet, statement ) );
+            }
+        }
+        int maxKeys = keysPerSet.stream().mapToInt( List::size ).max().orElse( 0 );
+        log.debug( "Semi-join reduction: up to {} rows of table '{}' are affected per parameter set", maxKeys, catalogTable.name );
+        if ( maxKeys == 0 ) {
+            return Collections.emptyList();
+        }
+
+        int chunkSize = RuntimeConfig.SEMI_JOIN_REDUCTION_CHUNK_SIZE.getInteger();
+        if ( updatesPrimaryKey && maxKeys > chunkSize ) {
+            throw new RuntimeException( "Updating the primary key of " + maxKeys + " rows of the vertically partitioned table '" + catalogTable.name
+                    + "' exceeds the limit of " + chunkSize + " rows per statement (runtime/semiJoinReductionChunkSize). Update the rows in smaller groups." );
+        }
+        int slots = Integer.highestOneBit( maxKeys ) == maxKeys ? maxKeys : Integer.highestOneBit( maxKeys ) << 1;
+        if ( slots > chunkSize ) {
+            slots = (maxKeys + chunkSize - 1) / chunkSize * chunkSize;
+        }
+
+        // The keys are bound to the indexes following the ones of the parameters of the statement
+        long offset = parameterSets.isEmpty() ? 0 : parameterSets.get( 0 ).keySet().stream().mapToLong( Long::longValue ).max().orElse( -1 ) + 1;
+        List<String> keyColumns = catalog.getPrimaryKey( catalogTable.primaryKey ).getColumnNames();
+        List<RelDataType> keyTypes = keyColumns.stream()
+                .map( c -> filter.getCluster().getTypeFactory().createTypeWithNullability( filter.getInput().getRowType().getField( c, true, false ).getType(), true ) )
+                .collect( Collectors.toList() );
+        List<List<RexDynamicParam>> parameters = new ArrayList<>( slots );
+        for ( int slot = 0; slot < slots; slot++ ) {
+            List<RexDynamicParam> key = new ArrayList<>( keyColumns.size() );
+            for ( int i = 0; i < keyColumns.size(); i++ ) {
+                long index = offset + (long) slot * keyColumns.size() + i;
+                List<Object> values = new ArrayList<>( keysPerSet.size() );
+                for ( List<List<Object>> keys : keysPerSet ) {
+                    values.add( slot < keys.size() ? keys.get( slot ).get( i ) : null );
+                }
+                dataContext.addParameterValues( index, keyTypes.get( i ), values );
+                key.add( filter.getCluster().getRexBuilder().makeDynamicParam( keyTypes.get( i ), (int) index ) );
+            }
+            parameters.add( key );
+        }
+        return parameters;
+    }
+
+
+    /**
+     * Selects the primary keys of the rows matching the condition of the given filter for one set of parameter values.
+     * The query is routed like any other query, the condition is therefore evaluated on the adapters holding the
+     * referenced columns.
+     */
+    private List<List<Object>> selectAffectedKeys( LogicalFilter filter, CatalogTable catalogTable, Map<Long, Object> parameterValues, Statement statement ) {
+        // The query is executed within the same transaction. Values of dynamic parameters are required for the condition.
+        Statement keyStatement = statement.getTransaction().createStatement();
+        for ( Entry<Long, Object> entry : parameterValues.entrySet() ) {
+            keyStatement.getDataContext().addParameterValues(
+                    entry.getKey(),
+                    statement.getDataContext().getParameterType( entry.getKey() ),
+                    Collections.singletonList( entry.getValue() ) );
+        }
+
+        List<String> keyColumns = catalog.getPrimaryKey( catalogTable.primaryKey ).getColumnNames();
+        RelBuilder builder = RelBuilder.create( keyStatement );
+        RelNode query = builder
+                .scan( ImmutableList.of( catalogTable.getSchemaName(), catalogTable.name ) )
+                .filter( filter.getCondition() )
+                .project( keyColumns.stream().map( builder::field ).collect( Collectors.toList() ) )
+                .build();
+        PolyphenyDbSignature signature = keyStatement.getQueryProcessor().prepareQuery( RelRoot.of( query, SqlKind.SELECT ) );
+        Iterator<Object> iterator = signature.enumerable( keyStatement.getDataContext() ).iterator();
+        List<List<Object>> rows = MetaImpl.collect( signature.cursorFactory, iterator, new ArrayList<>() );
+
+        // Convert the keys into the representation used for parameter values of the types of the modified table
+        List<RelDataType> keyTypes = keyColumns.stream()
+                .map( c -> filter.getInput().getRowType().getField( c, true, false ).getType() )
+                .collect( Collectors.toList() );
+        List<List<Object>> keys = new ArrayList<>( rows.size() );
+        for ( List<Object> row : rows ) {
+            List<Object> key = new ArrayList<>( row.size() );
+            for ( int i = 0; i < row.size(); i++ ) {
+                Pair<Comparable, PolyType> converted = RexLiteral.convertType( (Comparable) row.get( i ), keyTypes.get( i ) );
+                key.add( new RexLiteral( converted.left, keyTypes.get( i ), converted.right ).getValueForQueryParameterizer() );
+            }
+            keys.add( key );
+        }
+        return keys;
+    }
+
+
+    private boolean updatesPrimaryKey( CatalogTable catalogTable, List<String> updateColumnList ) {
+        if ( updateColumnList == null ) {
+            return false;
+        }
+        List<String> keyColumns = catalog.getPrimaryKey( catalogTable.primaryKey ).getColumnNames();
+        return updateColumnList.stream().anyMatch( keyColumns::contains );
+    }
+
+
+    /**
+     * Creates a condition which matches the rows with the primary keys bound to the given dynamic parameters.
+     */
+    private RexNode buildKeyCondition( RelBuilder builder, CatalogTable catalogTable, List<List<RexDynamicParam>> keys ) {
+        List<String> keyColumns = catalog.getPrimaryKey( catalogTable.primaryKey ).getColumnNames();
+        List<RexNode> disjunctions = new ArrayList<>( keys.size() );
+        for ( List<RexDynamicParam> key : keys ) {
+            List<RexNode> conjunctions = new ArrayList<>( key.size() );
+            for ( int i = 0; i < key.size(); i++ ) {
+                conjunctions.add( builder.equals( builder.field( keyColumns.get( i ) ), key.get( i ) ) );
+            }
+            disjunctions.add( builder.and( conjunctions ) );
+        }
+        return builder.or( disjunctions );
+    }
+
+
+    protected RelBuilder buildDml( RelNode node, RelBuilder builder, CatalogTable catalogTable, List<CatalogColumnPlacement> placements, List<List<RexDynamicParam>> semiJoinKeys, Statement statement, RelOptCluster cluster ) {
         for ( int i = 0; i < node.getInputs().size(); i++ ) {
-            buildDml( node.getInput( i ), builder, catalogTable, placements, statement, cluster );
+            buildDml( node.getInput( i ), builder, catalogTable, placements, semiJoinKeys, statement, cluster );
         }
 
         if ( log.isDebugEnabled() ) {
@@ -705,6 +952,10 @@ protected RelBuilder buildDml( RelNode node, RelBuilder builder, CatalogTable ca
                 }
             }
         } else if ( node instanceof LogicalFilter ) {
+            if ( semiJoinKeys != null && ((LogicalFilter) node).getInput() instanceof LogicalTableScan ) {
+                // The condition has already been evaluated, restrict the modification to the selected rows
+                return builder.filter( buildKeyCondition( builder, catalogTable, semiJoinKeys ) );
+            }
             if ( catalogTable.columnIds.size() != placements.size() ) { // partitioned, check if there is a illegal condition
                 RexCall call = ((RexCall) ((LogicalFilter) node).getCondition());
 
@@ -751,8 +1002,6 @@ private void dmlConditionCheck( LogicalFilter node, CatalogTable catalogTable, L
             }
             if ( !Catalog.getInstance().checkIfExistsColumnPlacement( placements.get( 0 ).adapterId, column.id ) ) {
                 throw new RuntimeException( "Current implementation of vertical partitioning does not allow conditions on partitioned columns. " );
-                // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-                // TODO: Use indexes
             }
         } else if ( operand instanceof RexCall ) {
             for ( RexNode o : ((RexCall) operand).operands ) {
@@ -856,6 +1105,11 @@ public RelNode buildJoinedTableScan( Statement statement, RelOptCluster cluster,
                                 builder.field( 2, ccps.get( 0 ).getLogicalTableName(), queue.removeFirst() ) ) );
                     }
                     builder.join( JoinRelType.INNER, joinConditions );
+                    if ( RuntimeConfig.PLACEMENT_JOIN.getBoolean() ) {
+                        // Fetch the placements concurrently and merge them on the primary key
+                        Join join = (Join) builder.peek();
+                        builder.replaceTop( LogicalPlacementJoin.create( join.getLeft(), join.getRight(), join.getCondition() ) );
+                    }
 
                 }
             }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.router;
+
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.partition.PartitionManager;
+import org.polypheny.db.rex.RexCall;
+import org.polypheny.db.rex.RexDynamicParam;
+import org.polypheny.db.rex.RexInputRef;
+import org.polypheny.db.rex.RexLiteral;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.sql.SqlKind;
+
+
+/**
+ * Determines the partitions of a table which may contain rows satisfying a condition. Equalities and ranges on the
+ * partition column are evaluated by the partition manager, IN-lists are covered since they are expanded into
+ * disjunctions of equalities. Values of dynamic parameters are taken from the data context, the partitions are
+ * therefore pruned whenever a prepared statement is executed.
+ */
+@Slf4j
+class PartitionPruner {
+
+    private final CatalogTable catalogTable;
+    private final PartitionManager partitionManager;
+    private final int partitionColumnIndex;
+    private final DataContext dataContext;
+
+
+    PartitionPruner( CatalogTable catalogTable, PartitionManager partitionManager, DataContext dataContext ) {
+        this.catalogTable = catalogTable;
+        this.partitionManager = partitionManager;
+        this.partitionColumnIndex = catalogTable.columnIds.indexOf( catalogTable.partitionColumnId );
+        this.dataContext = dataContext;
+    }
+
+
+    /**
+     * Returns the ids of the partitions which may contain rows satisfying the condition, or null if no partition can
+     * be excluded. The condition has to reference the columns of the table in the order of the catalog.
+     */
+    Set<Long> prune( RexNode condition ) {
+        switch ( condition.getKind() ) {
+            case AND:
+                Set<Long> intersection = null;
+                for ( RexNode operand : ((RexCall) condition).getOperands() ) {
+                    Set<Long> partitionIds = prune( operand );
+                    if ( partitionIds == null ) {
+                        continue;
+                    }
+                    if ( intersection == null ) {
+                        intersection = new LinkedHashSet<>( partitionIds );
+                    } else {
+                        intersection.retainAll( partitionIds );
+                    }
+                }
+                return intersection;
+            case OR:
+                Set<Long> union = new LinkedHashSet<>();
+                for ( RexNode operand : ((RexCall) condition).getOperands() ) {
+                    Set<Long> partitionIds = prune( operand );
+                    if ( partitionIds == null ) {
+                        return null;
+                    }
+                    union.addAll( partitionIds );
+                }
+                return union;
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return pruneComparison( (RexCall) condition );
+            default:
+                return null;
+        }
+    }
+
+
+    private Set<Long> pruneComparison( RexCall call ) {
+        SqlKind kind = call.getKind();
+        RexNode column = call.getOperands().get( 0 );
+        RexNode value = call.getOperands().get( 1 );
+        if ( !isPartitionColumn( column ) ) {
+            // Compare the value to the column instead
+            kind = kind.reverse();
+            column = call.getOperands().get( 1 );
+            value = call.getOperands().get( 0 );
+        }
+        if ( !isPartitionColumn( column ) ) {
+            return null;
+        }
+        String columnValue = getValue( value );
+        if ( columnValue == null ) {
+            return null;
+        }
+
+        Set<Long> partitionIds = new LinkedHashSet<>();
+        switch ( kind ) {
+            case EQUALS:
+                partitionIds.add( partitionManager.getTargetPartitionId( catalogTable, columnValue ) );
+                break;
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                partitionIds.addAll( partitionManager.getTargetPartitionIds( catalogTable, null, false, columnValue, kind == SqlKind.LESS_THAN_OR_EQUAL ) );
+                break;
+            default:
+                partitionIds.addAll( partitionManager.getTargetPartitionIds( catalogTable, columnValue, kind == SqlKind.GREATER_THAN_OR_EQUAL, null, false ) );
+        }
+        if ( log.isDebugEnabled() ) {
+            log.debug( "Condition {} restricts table '{}' to partitions {}", call, catalogTable.name, partitionIds );
+        }
+        return partitionIds;
+    }
+
+
+    private boolean isPartitionColumn( RexNode node ) {
+        return node instanceof RexInputRef && ((RexInputRef) node).getIndex() == partitionColumnIndex;
+    }
+
+
+    /**
+     * Returns the value of a literal or dynamic parameter in the representation used for the partition function, or
+     * null if the value is not known.
+     */
+    private String getValue( RexNode node ) {
+        if ( node.getKind() == SqlKind.CAST ) {
+            return getValue( ((RexCall) node).getOperands().get( 0 ) );
+        }
+        Object value = null;
+        if ( node instanceof RexLiteral ) {
+            value = ((RexLiteral) node).getValueForQueryParameterizer();
+        } else if ( node instanceof RexDynamicParam && dataContext.getParameterValues().size() == 1 ) {
+            value = dataContext.getParameterValue( ((RexDynamicParam) node).getIndex() );
+        }
+        return value == null ? null : value.toString();
+    }
+
+}
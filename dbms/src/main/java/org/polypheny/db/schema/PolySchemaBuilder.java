@@ -19,24 +19,27 @@
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
 import org.polypheny.db.adapter.Adapter;
 import org.polypheny.db.adapter.AdapterManager;
 import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.catalog.Catalog;
-import org.polypheny.db.catalog.entity.CatalogAdapter;
 import org.polypheny.db.catalog.entity.CatalogColumn;
 import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
 import org.polypheny.db.catalog.entity.CatalogDatabase;
+import org.polypheny.db.catalog.entity.CatalogPartition;
 import org.polypheny.db.catalog.entity.CatalogSchema;
 import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.catalog.exceptions.UnknownTableIdRuntimeException;
 import org.polypheny.db.config.RuntimeConfig;
 import org.polypheny.db.rel.type.RelDataTypeFactory;
 import org.polypheny.db.rel.type.RelDataTypeImpl;
@@ -44,13 +47,29 @@
 import org.polypheny.db.schema.impl.AbstractSchema;
 import org.polypheny.db.type.PolyTypeFactoryImpl;
 import org.polypheny.db.util.BuiltInMethod;
+import org.polypheny.db.util.Pair;
 
 
+/**
+ * Builds the schema tree used for planning queries. The tree consists of the logical schemas and tables as well as the
+ * physical schemas and tables of the adapters.
+ *
+ * The building blocks of the tree (logical tables, adapter schemas and adapter tables) are kept between builds. A change
+ * of the catalog only rebuilds the entries of the affected tables. The tree itself is never modified once it has been
+ * published; a new tree referencing the kept building blocks is assembled and atomically replaces the current one.
+ * Concurrent readers therefore never observe a partially built schema and are never blocked by a rebuild.
+ */
 public class PolySchemaBuilder implements PropertyChangeListener {
 
     private final static PolySchemaBuilder INSTANCE = new PolySchemaBuilder();
 
-    private AbstractPolyphenyDbSchema current;
+    private final AtomicReference<AbstractPolyphenyDbSchema> current = new AtomicReference<>();
+
+    // Building blocks of the schema tree, guarded by this
+    private final Map<Long, Map<Long, LogicalTable>> logicalTables = new HashMap<>(); // schemaId -> tableId -> table
+    private final Map<String, PhysicalSchema> physicalSchemas = new HashMap<>(); // adapter schema name -> schema
+    private final Set<Long> changedTables = new HashSet<>();
+    private boolean rebuildAll = true;
 
 
     private PolySchemaBuilder() {
@@ -65,48 +84,66 @@ public static PolySchemaBuilder getInstance() {
 
     public AbstractPolyphenyDbSchema getCurrent() {
         if ( !RuntimeConfig.SCHEMA_CACHING.getBoolean() ) {
-            return buildSchema();
+            synchronized ( this ) {
+                rebuildAll = true;
+                return buildSchema();
+            }
         }
-        if ( current == null ) {
-            current = buildSchema();
+        AbstractPolyphenyDbSchema schema = current.get();
+        if ( schema == null ) {
+            synchronized ( this ) {
+                schema = current.get();
+                if ( schema == null ) {
+                    schema = buildSchema();
+                    current.set( schema );
+                }
+            }
         }
-        return current;
+        return schema;
     }
 
 
+    /**
+     * Applies the recorded changes to the building blocks and assembles a new schema tree.
+     */
     private synchronized AbstractPolyphenyDbSchema buildSchema() {
         final Schema schema = new RootSchema();
         final AbstractPolyphenyDbSchema polyphenyDbSchema = new SimplePolyphenyDbSchema( null, schema, "" );
 
         SchemaPlus rootSchema = polyphenyDbSchema.plus();
         Catalog catalog = Catalog.getInstance();
-        //
-        // Build logical schema
         CatalogDatabase catalogDatabase = catalog.getDatabase( 1 );
+
+        try {
+            if ( rebuildAll ) {
+                logicalTables.clear();
+                physicalSchemas.clear();
+                changedTables.clear();
+                for ( CatalogSchema catalogSchema : catalog.getSchemas( catalogDatabase.id, null ) ) {
+                    for ( CatalogTable catalogTable : catalog.getTables( catalogSchema.id, null ) ) {
+                        changedTables.add( catalogTable.id );
+                    }
+                }
+                rebuildAll = false;
+            }
+            if ( !changedTables.isEmpty() ) {
+                updateTables( rootSchema, catalogDatabase, changedTables );
+                changedTables.clear();
+            }
+        } catch ( RuntimeException e ) {
+            // The building blocks might be inconsistent, start from scratch next time
+            rebuildAll = true;
+            throw e;
+        }
+
+        //
+        // Assemble logical schema
         for ( CatalogSchema catalogSchema : catalog.getSchemas( catalogDatabase.id, null ) ) {
             Map<String, LogicalTable> tableMap = new HashMap<>();
             SchemaPlus s = new SimplePolyphenyDbSchema( polyphenyDbSchema, new AbstractSchema(), catalogSchema.name ).plus();
-            for ( CatalogTable catalogTable : catalog.getTables( catalogSchema.id, null ) ) {
-                List<String> columnNames = new LinkedList<>();
-                final RelDataTypeFactory typeFactory = new PolyTypeFactoryImpl( RelDataTypeSystem.DEFAULT );
-                final RelDataTypeFactory.Builder fieldInfo = typeFactory.builder();
-                for ( CatalogColumn catalogColumn : catalog.getColumns( catalogTable.id ) ) {
-                    columnNames.add( catalogColumn.name );
-                    fieldInfo.add( catalogColumn.name, null, catalogColumn.getRelDataType( typeFactory ) );
-                    fieldInfo.nullable( catalogColumn.nullable );
-                }
-                List<Long> columnIds = new LinkedList<>();
-                catalog.getColumns( catalogTable.id ).forEach( c -> columnIds.add( c.id ) );
-                LogicalTable table = new LogicalTable(
-                        catalogTable.id,
-                        catalogTable.getSchemaName(),
-                        catalogTable.name,
-                        columnIds,
-                        columnNames,
-                        RelDataTypeImpl.proto( fieldInfo.build() ) );
-                s.add( catalogTable.name, table );
-                tableMap.put( catalogTable.name, table );
-
+            for ( LogicalTable table : logicalTables.getOrDefault( catalogSchema.id, Collections.emptyMap() ).values() ) {
+                s.add( table.getLogicalTableName(), table );
+                tableMap.put( table.getLogicalTableName(), table );
             }
             rootSchema.add( catalogSchema.name, s );
             tableMap.forEach( rootSchema.getSubSchema( catalogSchema.name )::add );
@@ -117,40 +154,120 @@ private synchronized AbstractPolyphenyDbSchema buildSchema() {
         }
 
         //
-        // Build adapter schema (physical schema)
-        List<CatalogAdapter> adapters = Catalog.getInstance().getAdapters();
-        for ( CatalogSchema catalogSchema : catalog.getSchemas( catalogDatabase.id, null ) ) {
-            for ( CatalogAdapter catalogAdapter : adapters ) {
-                // Get list of tables on this adapter
-                Map<String, Set<Long>> tableIdsPerSchema = new HashMap<>();
-                for ( CatalogColumnPlacement placement : Catalog.getInstance().getColumnPlacementsOnAdapterAndSchema( catalogAdapter.id, catalogSchema.id ) ) {
-                    tableIdsPerSchema.putIfAbsent( placement.physicalSchemaName, new HashSet<>() );
-                    tableIdsPerSchema.get( placement.physicalSchemaName ).add( placement.tableId );
-                }
+        // Assemble adapter schema (physical schema)
+        for ( PhysicalSchema physicalSchema : physicalSchemas.values() ) {
+            SchemaPlus s = new SimplePolyphenyDbSchema( polyphenyDbSchema, physicalSchema.schema, physicalSchema.name ).plus();
+            for ( Pair<String, Table> table : physicalSchema.tables.values() ) {
+                s.add( table.left, table.right );
+            }
+            rootSchema.add( physicalSchema.name, s );
+            physicalSchema.tables.values().forEach( t -> rootSchema.getSubSchema( physicalSchema.name ).add( t.left, t.right ) );
+            rootSchema.getSubSchema( physicalSchema.name ).polyphenyDbSchema().setSchema( physicalSchema.schema );
+        }
 
-                for ( String physicalSchemaName : tableIdsPerSchema.keySet() ) {
-                    Set<Long> tableIds = tableIdsPerSchema.get( physicalSchemaName );
-                    Map<String, Table> physicalTables = new HashMap<>();
-                    Adapter adapter = AdapterManager.getInstance().getAdapter( catalogAdapter.id );
-                    final String schemaName = buildAdapterSchemaName( catalogAdapter.uniqueName, catalogSchema.name, physicalSchemaName );
-                    adapter.createNewSchema( rootSchema, schemaName );
-                    SchemaPlus s = new SimplePolyphenyDbSchema( polyphenyDbSchema, adapter.getCurrentSchema(), schemaName ).plus();
-                    for ( long tableId : tableIds ) {
-                        CatalogTable catalogTable = catalog.getTable( tableId );
-                        Table table = adapter.createTableSchema(
-                                catalogTable,
-                                Catalog.getInstance().getColumnPlacementsOnAdapterSortedByPhysicalPosition( adapter.getAdapterId(), catalogTable.id ) );
-                        physicalTables.put( catalog.getTable( tableId ).name, table );
-                        s.add( catalog.getTable( tableId ).name, table );
-                    }
-                    rootSchema.add( schemaName, s );
-                    physicalTables.forEach( rootSchema.getSubSchema( schemaName )::add );
-                    rootSchema.getSubSchema( schemaName ).polyphenyDbSchema().setSchema( adapter.getCurrentSchema() );
+        return polyphenyDbSchema;
+    }
+
+
+    /**
+     * Rebuilds the logical table and the adapter tables of the specified tables. Tables which no longer exist are
+     * removed.
+     */
+    private void updateTables( SchemaPlus rootSchema, CatalogDatabase catalogDatabase, Set<Long> tableIds ) {
+        Catalog catalog = Catalog.getInstance();
+
+        // Remove the outdated entries
+        Set<String> affectedSchemas = new HashSet<>();
+        for ( Map<Long, LogicalTable> tables : logicalTables.values() ) {
+            tables.keySet().removeAll( tableIds );
+        }
+        for ( PhysicalSchema physicalSchema : physicalSchemas.values() ) {
+            if ( physicalSchema.tables.keySet().removeAll( tableIds ) ) {
+                affectedSchemas.add( physicalSchema.name );
+            }
+        }
+
+        // Build the logical tables and collect the adapter schemas the tables are placed on
+        Map<String, Set<Long>> addedTables = new HashMap<>();
+        Map<String, Integer> adapterIds = new HashMap<>();
+        for ( long tableId : tableIds ) {
+            CatalogTable catalogTable;
+            try {
+                catalogTable = catalog.getTable( tableId );
+            } catch ( UnknownTableIdRuntimeException e ) {
+                // The table has been dropped
+                continue;
+            }
+            if ( catalogTable.databaseId != catalogDatabase.id ) {
+                continue;
+            }
+            logicalTables.computeIfAbsent( catalogTable.schemaId, k -> new HashMap<>() ).put( tableId, buildLogicalTable( catalogTable ) );
+
+            for ( CatalogColumn catalogColumn : catalog.getColumns( tableId ) ) {
+                for ( CatalogColumnPlacement placement : catalog.getColumnPlacements( catalogColumn.id ) ) {
+                    final String schemaName = buildAdapterSchemaName(
+                            catalog.getAdapter( placement.adapterId ).uniqueName,
+                            catalogTable.getSchemaName(),
+                            placement.physicalSchemaName );
+                    addedTables.computeIfAbsent( schemaName, k -> new HashSet<>() ).add( tableId );
+                    adapterIds.put( schemaName, placement.adapterId );
                 }
             }
         }
+        affectedSchemas.addAll( addedTables.keySet() );
 
-        return polyphenyDbSchema;
+        // Update the affected adapter schemas
+        for ( String schemaName : affectedSchemas ) {
+            Set<Long> added = addedTables.getOrDefault( schemaName, Collections.emptySet() );
+            PhysicalSchema physicalSchema = physicalSchemas.get( schemaName );
+            if ( physicalSchema == null ) {
+                physicalSchema = new PhysicalSchema( schemaName, adapterIds.get( schemaName ) );
+                physicalSchemas.put( schemaName, physicalSchema );
+            }
+            if ( physicalSchema.tables.isEmpty() && added.isEmpty() ) {
+                physicalSchemas.remove( schemaName );
+                continue;
+            }
+
+            Adapter adapter = AdapterManager.getInstance().getAdapter( physicalSchema.adapterId );
+            Set<Long> tablesToCreate = new HashSet<>( added );
+            if ( physicalSchema.schema == null || adapter.getCurrentSchema() != physicalSchema.schema ) {
+                // Adapters create their tables in the schema they have created last. If this is not the schema of
+                // this entry anymore, a new schema is required and all its tables have to be created again.
+                adapter.createNewSchema( rootSchema, schemaName );
+                physicalSchema.schema = adapter.getCurrentSchema();
+                tablesToCreate.addAll( physicalSchema.tables.keySet() );
+            }
+            for ( long tableId : tablesToCreate ) {
+                CatalogTable catalogTable = catalog.getTable( tableId );
+                Table table = adapter.createTableSchema(
+                        catalogTable,
+                        catalog.getColumnPlacementsOnAdapterSortedByPhysicalPosition( adapter.getAdapterId(), catalogTable.id ) );
+                physicalSchema.tables.put( tableId, Pair.of( catalogTable.name, table ) );
+            }
+        }
+    }
+
+
+    private LogicalTable buildLogicalTable( CatalogTable catalogTable ) {
+        Catalog catalog = Catalog.getInstance();
+        List<String> columnNames = new LinkedList<>();
+        List<Long> columnIds = new LinkedList<>();
+        final RelDataTypeFactory typeFactory = new PolyTypeFactoryImpl( RelDataTypeSystem.DEFAULT );
+        final RelDataTypeFactory.Builder fieldInfo = typeFactory.builder();
+        for ( CatalogColumn catalogColumn : catalog.getColumns( catalogTable.id ) ) {
+            columnNames.add( catalogColumn.name );
+            columnIds.add( catalogColumn.id );
+            fieldInfo.add( catalogColumn.name, null, catalogColumn.getRelDataType( typeFactory ) );
+            fieldInfo.nullable( catalogColumn.nullable );
+        }
+        return new LogicalTable(
+                catalogTable.id,
+                catalogTable.getSchemaName(),
+                catalogTable.name,
+                columnIds,
+                columnNames,
+                RelDataTypeImpl.proto( fieldInfo.build() ) );
     }
 
 
@@ -162,8 +279,71 @@ public static String buildAdapterSchemaName( String storeName, String logicalSch
     // Listens on changes to the catalog
     @Override
     public void propertyChange( PropertyChangeEvent evt ) {
-        // Catalog changed, rebuild schema
-        current = buildSchema();
+        synchronized ( this ) {
+            switch ( evt.getPropertyName() ) {
+                case "table":
+                case "column":
+                case "columnPlacement":
+                case "partition":
+                    recordChange( evt.getOldValue() );
+                    recordChange( evt.getNewValue() );
+                    break;
+                case "index":
+                case "foreignKey":
+                case "constraint":
+                case "user":
+                case "queryInterface":
+                    // Not part of the schema
+                    return;
+                default:
+                    // Changes of databases, schemas and adapters as well as rollbacks
+                    rebuildAll = true;
+            }
+
+            if ( RuntimeConfig.SCHEMA_CACHING.getBoolean() ) {
+                current.set( buildSchema() );
+            } else {
+                current.set( null );
+            }
+        }
+    }
+
+
+    private void recordChange( Object entity ) {
+        if ( entity == null ) {
+            return;
+        }
+        if ( entity instanceof CatalogTable ) {
+            changedTables.add( ((CatalogTable) entity).id );
+        } else if ( entity instanceof CatalogColumn ) {
+            changedTables.add( ((CatalogColumn) entity).tableId );
+        } else if ( entity instanceof CatalogColumnPlacement ) {
+            changedTables.add( ((CatalogColumnPlacement) entity).tableId );
+        } else if ( entity instanceof CatalogPartition ) {
+            changedTables.add( ((CatalogPartition) entity).tableId );
+        } else {
+            rebuildAll = true;
+        }
+    }
+
+
+    /**
+     * Schema of an adapter for a logical schema and a physical schema name, together with the tables created by the
+     * adapter in it.
+     */
+    private static class PhysicalSchema {
+
+        private final String name;
+        private final int adapterId;
+        private Schema schema;
+        private final Map<Long, Pair<String, Table>> tables = new HashMap<>(); // tableId -> <tableName, table>
+
+
+        private PhysicalSchema( String name, int adapterId ) {
+            this.name = name;
+            this.adapterId = adapterId;
+        }
+
     }
 
 
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.transaction;
+
+
+import com.google.common.base.Throwables;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.polypheny.db.adapter.Adapter;
+import org.polypheny.db.config.RuntimeConfig;
+
+
+/**
+ * Executes the prepare and the commit phase of transactions on the involved adapters. If enabled, the adapters are
+ * processed in parallel, so that a transaction spanning several adapters only waits for the slowest one.
+ *
+ * In group commit mode, concurrent commits on the same adapter are coalesced: While an adapter is committing, further
+ * transactions queue up and are afterwards committed together by one of the waiting threads. This only applies to
+ * adapters which {@link Adapter#supportsGroupCommit() support} group commits, the others commit every transaction on
+ * its own.
+ */
+@Slf4j
+class AdapterCommitter {
+
+    static final AdapterCommitter INSTANCE = new AdapterCommitter();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool( r -> {
+        Thread thread = new Thread( r, "AdapterCommitter-" + THREAD_COUNTER.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private final Map<Adapter, GroupCommit> groupCommits = new ConcurrentHashMap<>();
+
+    final LongAdder parallelExecutions = new LongAdder();
+    final LongAdder groupCommitBatches = new LongAdder();
+    final LongAdder groupCommitTransactions = new LongAdder();
+
+
+    private AdapterCommitter() {
+    }
+
+
+    /**
+     * Prepares all adapters for committing the transaction.
+     *
+     * @return true if all adapters are ready to commit
+     */
+    boolean prepare( PolyXid xid, List<Adapter> adapters ) {
+        boolean okToCommit = true;
+        for ( boolean ok : execute( adapters, adapter -> adapter.prepare( xid ) ) ) {
+            okToCommit &= ok;
+        }
+        return okToCommit;
+    }
+
+
+    /**
+     * Commits the transaction on all adapters. If the commit fails on an adapter, the exception is thrown once the
+     * commits on all other adapters have finished.
+     */
+    void commit( PolyXid xid, List<Adapter> adapters ) {
+        execute( adapters, adapter -> {
+            if ( RuntimeConfig.GROUP_COMMIT.getBoolean() && adapter.supportsGroupCommit() ) {
+                groupCommits.computeIfAbsent( adapter, GroupCommit::new ).commit( xid );
+            } else {
+                adapter.commit( xid );
+            }
+            return null;
+        } );
+    }
+
+
+    private <T> List<T> execute( List<Adapter> adapters, Function<Adapter, T> action ) {
+        List<T> results = new ArrayList<>( adapters.size() );
+        if ( !RuntimeConfig.PARALLEL_COMMIT.getBoolean() || adapters.size() < 2 ) {
+            for ( Adapter adapter : adapters ) {
+                results.add( action.apply( adapter ) );
+            }
+            return results;
+        }
+
+        parallelExecutions.increment();
+        List<Future<T>> futures = new ArrayList<>( adapters.size() - 1 );
+        for ( Adapter adapter : adapters.subList( 1, adapters.size() ) ) {
+            futures.add( executor.submit( () -> action.apply( adapter ) ) );
+        }
+
+        // The first adapter is processed by the calling thread
+        Throwable failure = null;
+        try {
+            results.add( action.apply( adapters.get( 0 ) ) );
+        } catch ( RuntimeException | Error e ) {
+            failure = e;
+        }
+        boolean interrupted = false;
+        for ( Future<T> future : futures ) {
+            while ( true ) {
+                try {
+                    results.add( future.get() );
+                    break;
+                } catch ( ExecutionException e ) {
+                    failure = failure == null ? e.getCause() : failure;
+                    break;
+                } catch ( InterruptedException e ) {
+                    // The outcome of all adapters is required, continue waiting
+                    interrupted = true;
+                }
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+        if ( failure != null ) {
+            Throwables.throwIfUnchecked( failure );
+            throw new RuntimeException( failure );
+        }
+        return results;
+    }
+
+
+    /**
+     * Coalesces concurrent commits on an adapter.
+     */
+    private class GroupCommit {
+
+        private final Adapter adapter;
+
+        // Guarded by this
+        private final List<Request> pending = new ArrayList<>();
+        private boolean committing = false;
+
+
+        private GroupCommit( Adapter adapter ) {
+            this.adapter = adapter;
+        }
+
+
+        void commit( PolyXid xid ) {
+            Request request = new Request( xid );
+            List<Request> batch = null;
+            boolean interrupted = false;
+            synchronized ( this ) {
+                pending.add( request );
+                // Wait until either another thread has committed the transaction or the adapter is available
+                while ( committing && !request.done ) {
+                    try {
+                        wait();
+                    } catch ( InterruptedException e ) {
+                        interrupted = true;
+                    }
+                }
+                if ( !request.done ) {
+                    committing = true;
+                    batch = new ArrayList<>( pending );
+                    pending.clear();
+                }
+            }
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+
+            if ( batch != null ) {
+                Map<Request, Throwable> failures = commitBatch( batch );
+                synchronized ( this ) {
+                    for ( Request r : batch ) {
+                        r.failure = failures.get( r );
+                        r.done = true;
+                    }
+                    committing = false;
+                    notifyAll();
+                }
+                groupCommitBatches.increment();
+                groupCommitTransactions.add( batch.size() );
+            }
+
+            if ( request.failure != null ) {
+                Throwables.throwIfUnchecked( request.failure );
+                throw new RuntimeException( request.failure );
+            }
+        }
+
+
+        /**
+         * Commits the transactions of the batch together. If this fails, the transactions which the adapter has not
+         * reported as committed are committed one by one, so that only the transactions which cannot be committed are
+         * reported as failed.
+         *
+         * @return the failed requests and the cause of their failure
+         */
+        private Map<Request, Throwable> commitBatch( List<Request> batch ) {
+            Map<Request, Throwable> failures = new HashMap<>();
+            Set<PolyXid> committed = new HashSet<>();
+            try {
+                adapter.commit( batch.stream().map( r -> r.xid ).collect( Collectors.toList() ), committed::add );
+                return failures;
+            } catch ( RuntimeException | Error e ) {
+                if ( batch.size() == 1 ) {
+                    failures.put( batch.get( 0 ), e );
+                    return failures;
+                }
+                log.warn( "Group commit of {} transactions on adapter {} has failed after committing {} of them, committing the others individually.", batch.size(), adapter.getUniqueName(), committed.size(), e );
+            }
+            for ( Request r : batch ) {
+                if ( committed.contains( r.xid ) ) {
+                    continue;
+                }
+                try {
+                    adapter.commit( r.xid );
+                } catch ( RuntimeException | Error e ) {
+                    failures.put( r, e );
+                }
+            }
+            return failures;
+        }
+
+    }
+
+
+    private static class Request {
+
+        private final PolyXid xid;
+
+        // Guarded by the group commit
+        private boolean done = false;
+        private Throwable failure;
+
+
+        private Request( PolyXid xid ) {
+            this.xid = xid;
+        }
+
+    }
+
+}
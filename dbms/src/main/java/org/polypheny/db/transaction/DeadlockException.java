@@ -22,4 +22,9 @@ public class DeadlockException extends Exception {
         super( e );
     }
 
+
+    DeadlockException( String message ) {
+        super( message );
+    }
+
 }
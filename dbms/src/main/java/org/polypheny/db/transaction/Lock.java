@@ -1,5 +1,5 @@
 /*
- * Copyright 2019-2020 The Polypheny Project
+ * Copyright 2019-2021 The Polypheny Project
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,52 +16,101 @@
 
 package org.polypheny.db.transaction;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import lombok.Getter;
+import org.polypheny.db.config.RuntimeConfig;
 
 // Based on code taken from https://github.com/dstibrany/LockManager
 public class Lock {
 
-    private final Set<TransactionImpl> owners = new HashSet<>();
+    @Getter
+    private final LockKey key;
+    private final Map<TransactionImpl, LockMode> owners = new HashMap<>();
+    private final Map<TransactionImpl, LockMode> waiting = new LinkedHashMap<>();
     private final ReentrantLock lock = new ReentrantLock( true );
     private final Condition waiters = lock.newCondition();
     private final WaitForGraph waitForGraph;
-    private int xLockCount = 0;
-    private int sLockCount = 0;
 
-
-    Lock( WaitForGraph waitForGraph ) {
-        this.waitForGraph = waitForGraph;
-    }
+    // Number of transactions owning or waiting for this lock. Guarded by the monitor of the lock table stripe.
+    int pinCount = 0;
 
 
-    void acquire( TransactionImpl txn, LockMode lockMode ) throws InterruptedException {
-        if ( lockMode == LockMode.SHARED ) {
-            acquireSLock( txn );
-        } else if ( lockMode == LockMode.EXCLUSIVE ) {
-            acquireXLock( txn );
-        } else {
-            throw new RuntimeException( "Lock mode does not exist" );
-        }
+    Lock( LockKey key, WaitForGraph waitForGraph ) {
+        this.key = key;
+        this.waitForGraph = waitForGraph;
     }
 
 
-    void release( TransactionImpl txn ) {
+    /**
+     * Acquires this lock in the requested mode. If the transaction already holds the lock, the lock is converted to
+     * the supremum of the held and the requested mode.
+     */
+    void acquire( TransactionImpl txn, LockMode lockMode ) throws InterruptedException, DeadlockException {
+        final boolean backgroundDetection = RuntimeConfig.DEADLOCK_DETECTION_MODE.getEnum() == DeadlockDetectionMode.BACKGROUND;
+        final long timeout = TimeUnit.MILLISECONDS.toNanos( RuntimeConfig.LOCK_WAIT_TIMEOUT.getInteger() );
+        final long deadline = System.nanoTime() + timeout;
         lock.lock();
         try {
-            if ( sLockCount > 0 ) {
-                sLockCount--;
+            LockMode held = owners.get( txn );
+            LockMode target = held == null ? lockMode : held.supremum( lockMode );
+            if ( held == target ) {
+                return;
             }
-            if ( xLockCount == 1 ) {
-                xLockCount = 0;
+            try {
+                // Conversions are only checked against the other owners; new requests additionally queue
+                // behind conflicting waiters so that exclusive requests do not starve.
+                boolean waited = false;
+                while ( !isGrantable( txn, target, held != null ) ) {
+                    if ( !waited ) {
+                        waitForGraph.waits.increment();
+                        waited = true;
+                    }
+                    waiting.put( txn, target );
+                    waitForGraph.add( txn, getBlockers( txn, target ), this );
+                    if ( backgroundDetection ) {
+                        if ( txn.isDeadlockVictim() ) {
+                            throw new DeadlockException( "Transaction has been aborted to resolve a deadlock on " + key );
+                        }
+                    } else {
+                        waitForGraph.detectDeadlock( txn );
+                    }
+                    if ( timeout > 0 ) {
+                        long remaining = deadline - System.nanoTime();
+                        if ( remaining <= 0 ) {
+                            waitForGraph.timeouts.increment();
+                            throw new DeadlockException( "Timeout while waiting for lock on " + key );
+                        }
+                        waiters.awaitNanos( remaining );
+                    } else {
+                        waiters.await();
+                    }
+                }
+            } finally {
+                waiting.remove( txn );
+                waitForGraph.clearWaits( txn );
             }
+            owners.put( txn, target );
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            owners.remove( txn );
-            waitForGraph.remove( txn );
 
+    /**
+     * Wakes up all transactions waiting for this lock, e.g. to let a deadlock victim abort.
+     */
+    void wakeUp() {
+        lock.lock();
+        try {
             waiters.signalAll();
         } finally {
             lock.unlock();
@@ -69,20 +118,12 @@ void release( TransactionImpl txn ) {
     }
 
 
-    void upgrade( TransactionImpl txn ) throws InterruptedException {
+    void release( TransactionImpl txn ) {
         lock.lock();
         try {
-            if ( owners.contains( txn ) && isXLocked() ) {
-                return;
+            if ( owners.remove( txn ) != null ) {
+                waiters.signalAll();
             }
-            while ( isXLocked() || sLockCount > 1 ) {
-                Set<TransactionImpl> ownersWithSelfRemoved = owners.stream().filter( ( ownerTxn ) -> !ownerTxn.equals( txn ) ).collect( Collectors.toSet() );
-                waitForGraph.add( txn, ownersWithSelfRemoved );
-                waitForGraph.detectDeadlock( txn );
-                waiters.await();
-            }
-            sLockCount = 0;
-            xLockCount = 1;
         } finally {
             lock.unlock();
         }
@@ -90,73 +131,135 @@ void upgrade( TransactionImpl txn ) throws InterruptedException {
 
 
     LockMode getMode() {
-        LockMode lockMode = null;
         lock.lock();
-
         try {
-            if ( isXLocked() ) {
-                lockMode = LockMode.EXCLUSIVE;
-            } else if ( isSLocked() ) {
-                lockMode = LockMode.SHARED;
+            LockMode mode = null;
+            for ( LockMode ownerMode : owners.values() ) {
+                mode = mode == null ? ownerMode : mode.supremum( ownerMode );
             }
+            return mode;
         } finally {
             lock.unlock();
         }
-
-        return lockMode;
     }
 
 
-    Set<TransactionImpl> getOwners() {
-        return owners;
-    }
-
-
-    private void acquireSLock( TransactionImpl txn ) throws InterruptedException {
+    LockMode getMode( TransactionImpl txn ) {
         lock.lock();
         try {
-            while ( isXLocked() || lock.hasWaiters( waiters ) ) {
-                waitForGraph.add( txn, owners );
-                waitForGraph.detectDeadlock( txn );
-                waiters.await();
-            }
-            sLockCount++;
-            owners.add( txn );
+            return owners.get( txn );
         } finally {
             lock.unlock();
         }
     }
 
 
-    private void acquireXLock( TransactionImpl txn ) throws InterruptedException {
+    Set<TransactionImpl> getOwners() {
         lock.lock();
         try {
-            while ( isXLocked() || isSLocked() ) {
-                waitForGraph.add( txn, owners );
-                waitForGraph.detectDeadlock( txn );
-                waiters.await();
-            }
-            xLockCount = 1;
-            owners.add( txn );
+            return new HashSet<>( owners.keySet() );
         } finally {
             lock.unlock();
         }
     }
 
 
-    private boolean isXLocked() {
-        return xLockCount == 1;
+    private boolean isGrantable( TransactionImpl txn, LockMode mode, boolean conversion ) {
+        for ( Entry<TransactionImpl, LockMode> owner : owners.entrySet() ) {
+            if ( !owner.getKey().equals( txn ) && !owner.getValue().isCompatible( mode ) ) {
+                return false;
+            }
+        }
+        if ( !conversion ) {
+            for ( Entry<TransactionImpl, LockMode> waiter : waiting.entrySet() ) {
+                if ( waiter.getKey().equals( txn ) ) {
+                    // Everyone queued before us has been checked
+                    break;
+                }
+                if ( !waiter.getValue().isCompatible( mode ) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
 
-    private boolean isSLocked() {
-        return sLockCount > 0;
+    private Set<TransactionImpl> getBlockers( TransactionImpl txn, LockMode mode ) {
+        return owners.entrySet().stream()
+                .filter( e -> !e.getKey().equals( txn ) && !e.getValue().isCompatible( mode ) )
+                .map( Entry::getKey )
+                .collect( Collectors.toSet() );
     }
 
 
+    /**
+     * Lock modes of the multi-granularity locking protocol. Before a transaction can lock an object in a mode, it has
+     * to hold the corresponding intention mode (see {@link #getIntentionMode()}) on all ancestors of the object.
+     */
     public enum LockMode {
+        INTENTION_SHARED,
+        INTENTION_EXCLUSIVE,
         SHARED,
-        EXCLUSIVE
+        SHARED_INTENTION_EXCLUSIVE,
+        EXCLUSIVE;
+
+        //  IS     IX     S      SIX    X
+        private static final boolean[][] COMPATIBILITY = {
+                { true, true, true, true, false }, // IS
+                { true, true, false, false, false }, // IX
+                { true, false, true, false, false }, // S
+                { true, false, false, false, false }, // SIX
+                { false, false, false, false, false } // X
+        };
+
+
+        public boolean isCompatible( LockMode other ) {
+            return COMPATIBILITY[ordinal()][other.ordinal()];
+        }
+
+
+        /**
+         * @return true if holding this mode implies holding the other mode
+         */
+        public boolean covers( LockMode other ) {
+            return supremum( other ) == this;
+        }
+
+
+        /**
+         * @return the weakest mode which covers this and the other mode
+         */
+        public LockMode supremum( LockMode other ) {
+            if ( this == other ) {
+                return this;
+            }
+            if ( this == EXCLUSIVE || other == EXCLUSIVE ) {
+                return EXCLUSIVE;
+            }
+            if ( this == INTENTION_SHARED ) {
+                return other;
+            }
+            if ( other == INTENTION_SHARED ) {
+                return this;
+            }
+            // Any remaining combination of IX, S and SIX
+            return SHARED_INTENTION_EXCLUSIVE;
+        }
+
+
+        /**
+         * @return the mode which has to be held on the ancestors of an object locked in this mode
+         */
+        public LockMode getIntentionMode() {
+            switch ( this ) {
+                case INTENTION_SHARED:
+                case SHARED:
+                    return INTENTION_SHARED;
+                default:
+                    return INTENTION_EXCLUSIVE;
+            }
+        }
     }
 
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.transaction;
+
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+
+/**
+ * Identifies a lockable object in the lock hierarchy: global &rarr; schema &rarr; table &rarr; partition &rarr; key range.
+ * Partitions are only part of the hierarchy for partitioned tables; for all other tables key ranges are direct children
+ * of the table.
+ */
+@Getter
+@EqualsAndHashCode
+public final class LockKey {
+
+    public static final long NONE = -1;
+
+    public enum Granularity {
+        GLOBAL,
+        SCHEMA,
+        TABLE,
+        PARTITION,
+        KEY_RANGE
+    }
+
+
+    private final Granularity granularity;
+    private final long schemaId;
+    private final long tableId;
+    private final long partitionId;
+    private final long keyRange;
+
+
+    private LockKey( Granularity granularity, long schemaId, long tableId, long partitionId, long keyRange ) {
+        this.granularity = granularity;
+        this.schemaId = schemaId;
+        this.tableId = tableId;
+        this.partitionId = partitionId;
+        this.keyRange = keyRange;
+    }
+
+
+    public static LockKey global() {
+        return new LockKey( Granularity.GLOBAL, NONE, NONE, NONE, NONE );
+    }
+
+
+    public static LockKey schema( long schemaId ) {
+        return new LockKey( Granularity.SCHEMA, schemaId, NONE, NONE, NONE );
+    }
+
+
+    public static LockKey table( long schemaId, long tableId ) {
+        return new LockKey( Granularity.TABLE, schemaId, tableId, NONE, NONE );
+    }
+
+
+    public static LockKey partition( long schemaId, long tableId, long partitionId ) {
+        return new LockKey( Granularity.PARTITION, schemaId, tableId, partitionId, NONE );
+    }
+
+
+    /**
+     * @param partitionId the partition containing the key range or {@link #NONE} if the table is not partitioned
+     */
+    public static LockKey keyRange( long schemaId, long tableId, long partitionId, long keyRange ) {
+        return new LockKey( Granularity.KEY_RANGE, schemaId, tableId, partitionId, keyRange );
+    }
+
+
+    /**
+     * @return the next coarser object in the lock hierarchy or null for the global lock
+     */
+    public LockKey getParent() {
+        switch ( granularity ) {
+            case KEY_RANGE:
+                if ( partitionId != NONE ) {
+                    return partition( schemaId, tableId, partitionId );
+                }
+                return table( schemaId, tableId );
+            case PARTITION:
+                return table( schemaId, tableId );
+            case TABLE:
+                return schema( schemaId );
+            case SCHEMA:
+                return global();
+            default:
+                return null;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        switch ( granularity ) {
+            case GLOBAL:
+                return "GLOBAL";
+            case SCHEMA:
+                return "SCHEMA(" + schemaId + ")";
+            case TABLE:
+                return "TABLE(" + tableId + ")";
+            case PARTITION:
+                return "PARTITION(" + tableId + ", " + partitionId + ")";
+            default:
+                return "KEY_RANGE(" + tableId + ", " + partitionId + ", " + keyRange + ")";
+        }
+    }
+
+}
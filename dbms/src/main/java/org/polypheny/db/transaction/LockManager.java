@@ -1,5 +1,5 @@
 /*
- * Copyright 2019-2020 The Polypheny Project
+ * Copyright 2019-2021 The Polypheny Project
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,87 +16,235 @@
 
 package org.polypheny.db.transaction;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.Getter;
 import lombok.NonNull;
-import org.polypheny.db.transaction.TableAccessMap.TableIdentifier;
+import lombok.extern.slf4j.Slf4j;
+import org.polypheny.db.config.Config;
+import org.polypheny.db.config.Config.ConfigListener;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.transaction.Lock.LockMode;
 
+
+/**
+ * Hierarchical lock manager implementing multi-granularity locking (IS, IX, S, SIX, X) on the hierarchy described
+ * in {@link LockKey}. Locking an object implicitly acquires the corresponding intention modes on all its ancestors.
+ *
+ * The lock table is split into stripes, each guarded by its own monitor. Lock objects are reference counted and removed
+ * from their stripe as soon as no transaction owns or waits for them, which keeps the lock table small even if many
+ * different key ranges are locked over time.
+ *
+ * Deadlocks are either detected by the waiting transaction itself or by a background thread, depending on
+ * {@link RuntimeConfig#DEADLOCK_DETECTION_MODE}. The background thread only runs while this mode is selected.
+ */
 // Based on code taken from https://github.com/dstibrany/LockManager
+@Slf4j
 public class LockManager {
 
     public static final LockManager INSTANCE = new LockManager();
-    public static final TableIdentifier GLOBAL_LOCK = new TableIdentifier( -1 ); // For locking whole schema
+    public static final LockKey GLOBAL_LOCK = LockKey.global(); // For locking whole schema
 
-    private final ConcurrentHashMap<TableIdentifier, Lock> lockTable;
+    private final Map<LockKey, Lock>[] stripes;
+    private final int stripeMask;
     @Getter
     private final WaitForGraph waitForGraph;
+    private Thread deadlockDetector = null;
 
 
+    @SuppressWarnings("unchecked")
     private LockManager() {
-        lockTable = new ConcurrentHashMap<>();
+        int numberOfStripes = Integer.highestOneBit( Math.max( 1, Runtime.getRuntime().availableProcessors() ) * 8 - 1 ) << 1;
+        stripes = new Map[numberOfStripes];
+        for ( int i = 0; i < numberOfStripes; i++ ) {
+            stripes[i] = new HashMap<>();
+        }
+        stripeMask = numberOfStripes - 1;
         waitForGraph = new WaitForGraph();
+
+        updateDeadlockDetector( RuntimeConfig.DEADLOCK_DETECTION_MODE.getEnum() );
+        RuntimeConfig.DEADLOCK_DETECTION_MODE.addObserver( new ConfigListener() {
+            @Override
+            public void onConfigChange( Config c ) {
+                updateDeadlockDetector( c.getEnum() );
+            }
+
+
+            @Override
+            public void restart( Config c ) {
+                updateDeadlockDetector( c.getEnum() );
+            }
+        } );
     }
 
 
-    public void lock( @NonNull TableIdentifier tableIdentifier, @NonNull TransactionImpl transaction, @NonNull Lock.LockMode requestedMode ) throws DeadlockException {
-        lockTable.putIfAbsent( tableIdentifier, new Lock( waitForGraph ) );
+    public void lock( @NonNull LockKey key, @NonNull TransactionImpl transaction, @NonNull LockMode requestedMode ) throws DeadlockException {
+        LockMode held = transaction.getLockMode( key );
+        if ( held != null && held.covers( requestedMode ) ) {
+            return;
+        }
 
-        Lock lock = lockTable.get( tableIdentifier );
+        // Acquire the intention locks top-down
+        LockKey parent = key.getParent();
+        if ( parent != null ) {
+            lock( parent, transaction, requestedMode.getIntentionMode() );
+        }
 
+        // Several threads of the transaction may request the same lock, it is nevertheless pinned only once
+        Lock lock = transaction.getOrPinLock( key, this::pin );
         try {
-            if ( hasLock( transaction, tableIdentifier ) && (requestedMode == lock.getMode()) ) {
-                return;
-            } else if ( requestedMode == Lock.LockMode.SHARED && hasLock( transaction, tableIdentifier ) && lock.getMode() == Lock.LockMode.EXCLUSIVE ) {
-                return;
-            } else if ( requestedMode == Lock.LockMode.EXCLUSIVE && hasLock( transaction, tableIdentifier ) && lock.getMode() == Lock.LockMode.SHARED ) {
-                lock.upgrade( transaction );
-            } else {
-                lock.acquire( transaction, requestedMode );
-            }
-        } catch ( InterruptedException e ) {
+            lock.acquire( transaction, requestedMode );
+        } catch ( InterruptedException | DeadlockException e ) {
+            // Also releases and unpins the requested lock
             removeTransaction( transaction );
-            throw new DeadlockException( e );
+            throw e instanceof DeadlockException ? (DeadlockException) e : new DeadlockException( e );
         }
 
-        transaction.addLock( lock );
+        transaction.addLockMode( key, requestedMode );
+    }
+
+
+    /**
+     * Acquires all locks required by a statement. The locks are acquired in a deterministic order to reduce the risk
+     * of deadlocks between statements accessing the same objects.
+     */
+    public void lock( @NonNull Map<LockKey, LockMode> lockRequests, @NonNull TransactionImpl transaction ) throws DeadlockException {
+        List<Map.Entry<LockKey, LockMode>> requests = new ArrayList<>( lockRequests.entrySet() );
+        requests.sort( ( a, b ) -> {
+            int c = Long.compare( a.getKey().getTableId(), b.getKey().getTableId() );
+            if ( c != 0 ) {
+                return c;
+            }
+            c = a.getKey().getGranularity().compareTo( b.getKey().getGranularity() );
+            if ( c != 0 ) {
+                return c;
+            }
+            c = Long.compare( a.getKey().getPartitionId(), b.getKey().getPartitionId() );
+            if ( c != 0 ) {
+                return c;
+            }
+            return Long.compare( a.getKey().getKeyRange(), b.getKey().getKeyRange() );
+        } );
+        for ( Map.Entry<LockKey, LockMode> request : requests ) {
+            lock( request.getKey(), transaction, request.getValue() );
+        }
     }
 
 
-    public void unlock( @NonNull TableIdentifier tableIdentifier, @NonNull TransactionImpl transaction ) {
-        Lock lock = lockTable.get( tableIdentifier );
+    public void unlock( @NonNull LockKey key, @NonNull TransactionImpl transaction ) {
+        Lock lock = transaction.getLock( key );
         if ( lock != null ) {
             lock.release( transaction );
+            transaction.removeLock( key );
+            unpin( lock );
         }
-        transaction.removeLock( lock );
     }
 
 
     public void removeTransaction( @NonNull TransactionImpl transaction ) {
-        Set<Lock> txnLockList = transaction.getLocks();
-        for ( Lock lock : txnLockList ) {
+        for ( Lock lock : transaction.getLocks() ) {
             lock.release( transaction );
+            unpin( lock );
+        }
+        transaction.clearLocks();
+        waitForGraph.remove( transaction );
+    }
+
+
+    public boolean hasLock( @NonNull TransactionImpl transaction, @NonNull LockKey key ) {
+        return transaction.getLockMode( key ) != null;
+    }
+
+
+    LockMode getLockMode( @NonNull LockKey key ) {
+        Map<LockKey, Lock> stripe = getStripe( key );
+        Lock lock;
+        synchronized ( stripe ) {
+            lock = stripe.get( key );
         }
+        return lock == null ? null : lock.getMode();
     }
 
 
-    public boolean hasLock( @NonNull TransactionImpl transaction, @NonNull TableIdentifier tableIdentifier ) {
-        Set<Lock> lockList = transaction.getLocks();
-        if ( lockList == null ) {
-            return false;
+    /**
+     * @return the number of lock objects currently held or waited for
+     */
+    public int getLockTableSize() {
+        int size = 0;
+        for ( Map<LockKey, Lock> stripe : stripes ) {
+            synchronized ( stripe ) {
+                size += stripe.size();
+            }
         }
-        for ( Lock txnLock : lockList ) {
-            if ( txnLock == lockTable.get( tableIdentifier ) ) {
-                return true;
+        return size;
+    }
+
+
+    synchronized boolean isDeadlockDetectorRunning() {
+        return deadlockDetector != null;
+    }
+
+
+    /**
+     * Starts the background deadlock detection if it has been selected and stops it otherwise.
+     */
+    private synchronized void updateDeadlockDetector( Enum mode ) {
+        if ( mode == DeadlockDetectionMode.BACKGROUND && deadlockDetector == null ) {
+            deadlockDetector = new Thread( this::detectDeadlocks, "DeadlockDetector" );
+            deadlockDetector.setDaemon( true );
+            deadlockDetector.start();
+        } else if ( mode != DeadlockDetectionMode.BACKGROUND && deadlockDetector != null ) {
+            deadlockDetector.interrupt();
+            deadlockDetector = null;
+        }
+    }
+
+
+    /**
+     * Background deadlock detection. Searches the wait-for graph in the configured interval until the thread is
+     * interrupted because another detection mode has been selected.
+     */
+    private void detectDeadlocks() {
+        while ( true ) {
+            try {
+                Thread.sleep( Math.max( 1, RuntimeConfig.DEADLOCK_DETECTION_INTERVAL.getInteger() ) );
+            } catch ( InterruptedException e ) {
+                return;
             }
+            try {
+                waitForGraph.resolveDeadlocks();
+            } catch ( Exception e ) {
+                log.error( "Exception while searching for deadlocks", e );
+            }
+        }
+    }
+
+
+    private Lock pin( LockKey key ) {
+        Map<LockKey, Lock> stripe = getStripe( key );
+        synchronized ( stripe ) {
+            Lock lock = stripe.computeIfAbsent( key, k -> new Lock( k, waitForGraph ) );
+            lock.pinCount++;
+            return lock;
         }
-        return false;
     }
 
 
-    Lock.LockMode getLockMode( @NonNull TableIdentifier tableIdentifier ) {
-        return lockTable.get( tableIdentifier ).getMode();
+    private void unpin( Lock lock ) {
+        Map<LockKey, Lock> stripe = getStripe( lock.getKey() );
+        synchronized ( stripe ) {
+            if ( --lock.pinCount == 0 ) {
+                stripe.remove( lock.getKey() );
+            }
+        }
     }
 
 
+    private Map<LockKey, Lock> getStripe( LockKey key ) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2019-2020 The Polypheny Project
+ * Copyright 2019-2021 The Polypheny Project
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,21 +17,46 @@
 package org.polypheny.db.transaction;
 
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
+import org.polypheny.db.catalog.Catalog;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.partition.PartitionManager;
+import org.polypheny.db.partition.PartitionManagerFactory;
 import org.polypheny.db.plan.RelOptTable;
 import org.polypheny.db.plan.RelOptUtil;
 import org.polypheny.db.prepare.RelOptTableImpl;
 import org.polypheny.db.rel.RelNode;
 import org.polypheny.db.rel.RelVisitor;
+import org.polypheny.db.rel.core.Filter;
+import org.polypheny.db.rel.core.Project;
 import org.polypheny.db.rel.core.TableModify;
+import org.polypheny.db.rel.core.TableModify.Operation;
+import org.polypheny.db.rel.core.TableScan;
+import org.polypheny.db.rel.core.Values;
+import org.polypheny.db.rex.RexCall;
+import org.polypheny.db.rex.RexDynamicParam;
+import org.polypheny.db.rex.RexInputRef;
+import org.polypheny.db.rex.RexLiteral;
+import org.polypheny.db.rex.RexNode;
 import org.polypheny.db.schema.LogicalTable;
+import org.polypheny.db.sql.SqlKind;
+import org.polypheny.db.transaction.Lock.LockMode;
+import org.polypheny.db.type.PolyTypeFamily;
+import org.polypheny.db.util.NlsString;
 
 
 /**
@@ -65,14 +90,21 @@ public enum Mode {
     }
 
 
+    // Marker for values which are not known before execution
+    private static final Object UNKNOWN = new Object();
+
     private final Map<TableIdentifier, Mode> accessMap;
 
+    // The locks required for executing the query plan
+    private final Map<LockKey, LockMode> lockRequests;
+
 
     /**
      * Constructs a permanently empty TableAccessMap.
      */
     public TableAccessMap() {
         accessMap = Collections.emptyMap();
+        lockRequests = Collections.emptyMap();
     }
 
 
@@ -82,10 +114,23 @@ public TableAccessMap() {
      * @param rel the RelNode for which to build the map
      */
     public TableAccessMap( RelNode rel ) {
+        this( rel, Collections.emptyList() );
+    }
+
+
+    /**
+     * Constructs a TableAccessMap for all tables accessed by a RelNode and its descendants. The values of the dynamic
+     * parameters are used to determine the partitions and key ranges modified by data manipulation statements.
+     *
+     * @param rel the RelNode for which to build the map
+     * @param parameterValues the values of the dynamic parameters, one map per parameter set
+     */
+    public TableAccessMap( RelNode rel, List<Map<Long, Object>> parameterValues ) {
         // NOTE: This method must NOT retain a reference to the input rel, because we use it for cached statements, and we
         // don't want to retain any rel references after preparation completes.
         accessMap = new HashMap<>();
-        RelOptUtil.go( new TableRelVisitor(), rel );
+        lockRequests = new LinkedHashMap<>();
+        RelOptUtil.go( new TableRelVisitor( parameterValues ), rel );
     }
 
 
@@ -98,6 +143,11 @@ public TableAccessMap( RelNode rel ) {
     public TableAccessMap( TableIdentifier tableIdentifier, Mode mode ) {
         accessMap = new HashMap<>();
         accessMap.put( tableIdentifier, mode );
+        lockRequests = new LinkedHashMap<>();
+        CatalogTable catalogTable = Catalog.getInstance().getTable( tableIdentifier.getTableId() );
+        lockRequests.put(
+                LockKey.table( catalogTable.schemaId, catalogTable.id ),
+                mode == Mode.READ_ACCESS ? LockMode.SHARED : LockMode.EXCLUSIVE );
     }
 
 
@@ -109,6 +159,18 @@ public Set<TableIdentifier> getTablesAccessed() {
     }
 
 
+    /**
+     * Returns the locks which have to be acquired before executing the query plan. Tables are locked as a whole, with
+     * the exception of data manipulation statements for which the affected partitions or primary keys can be determined
+     * from the plan and the parameter values. Those lock only the affected partitions or key ranges.
+     *
+     * @return map of objects to lock and the required lock mode
+     */
+    public Map<LockKey, LockMode> getLockRequests() {
+        return lockRequests;
+    }
+
+
     /**
      * Determines whether a table is accessed at all.
      *
@@ -166,13 +228,18 @@ public Mode getTableAccessMode( @NonNull TableIdentifier tableIdentifier ) {
      * @return qualified name
      */
     public TableIdentifier getQualifiedName( RelOptTable table ) {
+        return new TableIdentifier( getLogicalTable( table ).getTableId() );
+    }
+
+
+    private LogicalTable getLogicalTable( RelOptTable table ) {
         if ( !(table instanceof RelOptTableImpl) ) {
             throw new RuntimeException( "Unexpected table type: " + table.getClass() );
         }
         if ( !(((RelOptTableImpl) table).getTable() instanceof LogicalTable) ) {
             throw new RuntimeException( "Unexpected table type: " + ((RelOptTableImpl) table).getTable().getClass() );
         }
-        return new TableIdentifier( ((LogicalTable) ((RelOptTableImpl) table).getTable()).getTableId() );
+        return (LogicalTable) ((RelOptTableImpl) table).getTable();
     }
 
 
@@ -181,8 +248,23 @@ public TableIdentifier getQualifiedName( RelOptTable table ) {
      */
     private class TableRelVisitor extends RelVisitor {
 
+        private final List<Map<Long, Object>> parameterValues;
+
+        // Scans which only provide the rows for a modification whose affected key ranges have been locked
+        private final Set<RelNode> coveredScans = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+
+        TableRelVisitor( List<Map<Long, Object>> parameterValues ) {
+            this.parameterValues = parameterValues;
+        }
+
+
         @Override
         public void visit( RelNode p, int ordinal, RelNode parent ) {
+            boolean fineGrained = false;
+            if ( p instanceof TableModify && RuntimeConfig.FINE_GRAINED_LOCKING.getBoolean() ) {
+                fineGrained = addFineGrainedLocks( (TableModify) p );
+            }
             super.visit( p, ordinal, parent );
             RelOptTable table = p.getTable();
             if ( table == null ) {
@@ -204,7 +286,238 @@ public void visit( RelNode p, int ordinal, RelNode parent ) {
                 newAccess = Mode.READWRITE_ACCESS;
             }
             accessMap.put( key, newAccess );
+
+            if ( p instanceof TableModify ) {
+                if ( !fineGrained ) {
+                    addLockRequest( getTableKey( key ), LockMode.EXCLUSIVE );
+                }
+            } else if ( !coveredScans.contains( p ) ) {
+                addLockRequest( getTableKey( key ), LockMode.SHARED );
+            }
+        }
+
+
+        /**
+         * Tries to determine the partitions or key ranges affected by a modification.
+         *
+         * @return true if locks on partitions or key ranges have been requested, false if the whole table has to be locked
+         */
+        private boolean addFineGrainedLocks( TableModify modify ) {
+            final Catalog catalog = Catalog.getInstance();
+            final LogicalTable logicalTable = getLogicalTable( modify.getTable() );
+            final CatalogTable catalogTable = catalog.getTable( logicalTable.getTableId() );
+            final List<Long> columnIds = logicalTable.getColumnIds();
+
+            final List<Integer> keyFields = new ArrayList<>();
+            if ( catalogTable.primaryKey != null ) {
+                for ( long columnId : catalog.getPrimaryKey( catalogTable.primaryKey ).columnIds ) {
+                    keyFields.add( columnIds.indexOf( columnId ) );
+                }
+            }
+            if ( keyFields.isEmpty() || keyFields.contains( -1 ) || !hasComparableValues( keyFields, columnIds ) ) {
+                return false;
+            }
+            int partitionField = -1;
+            if ( catalogTable.isPartitioned ) {
+                partitionField = columnIds.indexOf( catalogTable.partitionColumnId );
+                if ( partitionField == -1 ) {
+                    return false;
+                }
+            }
+
+            final List<RexNode[]> rows;
+            RelNode coveredScan = null;
+            if ( modify.getOperation() == Operation.INSERT ) {
+                rows = getRows( modify.getInput() );
+                if ( rows == null || modify.getInput().getRowType().getFieldCount() != columnIds.size() ) {
+                    return false;
+                }
+            } else if ( modify.getOperation() == Operation.UPDATE || modify.getOperation() == Operation.DELETE ) {
+                if ( modify.getOperation() == Operation.UPDATE ) {
+                    // Changing the key or the partition moves the row to another key range or partition
+                    for ( String columnName : modify.getUpdateColumnList() ) {
+                        int field = logicalTable.getLogicalColumnNames().indexOf( columnName );
+                        if ( field == -1 || keyFields.contains( field ) || field == partitionField ) {
+                            return false;
+                        }
+                    }
+                }
+                RelNode input = modify.getInput();
+                while ( input instanceof Project ) {
+                    input = input.getInput( 0 );
+                }
+                if ( !(input instanceof Filter) || !(input.getInput( 0 ) instanceof TableScan) ) {
+                    return false;
+                }
+                coveredScan = input.getInput( 0 );
+                if ( getLogicalTable( coveredScan.getTable() ).getTableId() != logicalTable.getTableId() ) {
+                    return false;
+                }
+                rows = Collections.singletonList( getEqualityConditions( ((Filter) input).getCondition(), columnIds.size() ) );
+            } else {
+                return false;
+            }
+
+            final Set<LockKey> keys = new HashSet<>();
+            final PartitionManager partitionManager = catalogTable.isPartitioned
+                    ? new PartitionManagerFactory().getInstance( catalogTable.partitionType )
+                    : null;
+            final List<Map<Long, Object>> parameterSets = parameterValues.isEmpty()
+                    ? Collections.singletonList( Collections.emptyMap() )
+                    : parameterValues;
+            for ( RexNode[] row : rows ) {
+                for ( Map<Long, Object> parameters : parameterSets ) {
+                    long partitionId = LockKey.NONE;
+                    if ( partitionManager != null ) {
+                        Object partitionValue = resolve( row[partitionField], parameters );
+                        if ( partitionValue == UNKNOWN ) {
+                            return false;
+                        }
+                        partitionId = partitionManager.getTargetPartitionId( catalogTable, String.valueOf( partitionValue ) );
+                    }
+                    List<Object> keyValues = new ArrayList<>( keyFields.size() );
+                    for ( int field : keyFields ) {
+                        keyValues.add( resolve( row[field], parameters ) );
+                    }
+                    if ( !keyValues.contains( UNKNOWN ) ) {
+                        int keyRange = Math.floorMod( keyValues.hashCode(), RuntimeConfig.LOCK_KEY_RANGES.getInteger() );
+                        keys.add( LockKey.keyRange( catalogTable.schemaId, catalogTable.id, partitionId, keyRange ) );
+                    } else if ( partitionManager != null && modify.getOperation() != Operation.INSERT ) {
+                        keys.add( LockKey.partition( catalogTable.schemaId, catalogTable.id, partitionId ) );
+                    } else {
+                        return false;
+                    }
+                    if ( keys.size() > RuntimeConfig.LOCK_ESCALATION_THRESHOLD.getInteger() ) {
+                        return false;
+                    }
+                }
+            }
+
+            keys.forEach( k -> addLockRequest( k, LockMode.EXCLUSIVE ) );
+            if ( coveredScan != null ) {
+                coveredScans.add( coveredScan );
+            }
+            return true;
+        }
+
+
+        /**
+         * Only values of numeric and character columns have a canonical representation which does not depend on whether
+         * they are specified as literal or as parameter.
+         */
+        private boolean hasComparableValues( List<Integer> fields, List<Long> columnIds ) {
+            for ( int field : fields ) {
+                PolyTypeFamily family = Catalog.getInstance().getColumn( columnIds.get( field ) ).type.getFamily();
+                if ( family != PolyTypeFamily.NUMERIC && family != PolyTypeFamily.CHARACTER ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /**
+         * Returns the rows produced by a tree of projections on top of a values node. Fields which cannot be determined
+         * are null.
+         */
+        private List<RexNode[]> getRows( RelNode node ) {
+            if ( node instanceof Values ) {
+                List<RexNode[]> rows = new ArrayList<>();
+                for ( List<RexLiteral> tuple : ((Values) node).getTuples() ) {
+                    rows.add( tuple.toArray( new RexNode[0] ) );
+                }
+                return rows;
+            } else if ( node instanceof Project ) {
+                List<RexNode[]> inputRows = getRows( node.getInput( 0 ) );
+                if ( inputRows == null ) {
+                    return null;
+                }
+                List<RexNode> projects = ((Project) node).getProjects();
+                List<RexNode[]> rows = new ArrayList<>( inputRows.size() );
+                for ( RexNode[] inputRow : inputRows ) {
+                    RexNode[] row = new RexNode[projects.size()];
+                    for ( int i = 0; i < projects.size(); i++ ) {
+                        row[i] = substitute( projects.get( i ), inputRow );
+                    }
+                    rows.add( row );
+                }
+                return rows;
+            }
+            return null;
+        }
+
+
+        private RexNode substitute( RexNode node, RexNode[] inputRow ) {
+            if ( node instanceof RexInputRef ) {
+                return inputRow[((RexInputRef) node).getIndex()];
+            } else if ( node instanceof RexLiteral || node instanceof RexDynamicParam ) {
+                return node;
+            } else if ( node.isA( SqlKind.CAST ) ) {
+                return substitute( ((RexCall) node).getOperands().get( 0 ), inputRow );
+            }
+            return null;
+        }
+
+
+        /**
+         * Returns the values of all fields which are restricted to a single value by the condition.
+         */
+        private RexNode[] getEqualityConditions( RexNode condition, int fieldCount ) {
+            RexNode[] row = new RexNode[fieldCount];
+            for ( RexNode conjunction : RelOptUtil.conjunctions( condition ) ) {
+                if ( !conjunction.isA( SqlKind.EQUALS ) ) {
+                    continue;
+                }
+                List<RexNode> operands = ((RexCall) conjunction).getOperands();
+                for ( int i = 0; i < 2; i++ ) {
+                    RexNode field = operands.get( i );
+                    RexNode value = operands.get( 1 - i );
+                    if ( field.isA( SqlKind.CAST ) ) {
+                        field = ((RexCall) field).getOperands().get( 0 );
+                    }
+                    if ( value.isA( SqlKind.CAST ) ) {
+                        value = ((RexCall) value).getOperands().get( 0 );
+                    }
+                    if ( field instanceof RexInputRef && (value instanceof RexLiteral || value instanceof RexDynamicParam) ) {
+                        row[((RexInputRef) field).getIndex()] = value;
+                    }
+                }
+            }
+            return row;
+        }
+
+
+        /**
+         * Returns a canonical representation of the value of a literal or parameter.
+         */
+        private Object resolve( RexNode node, Map<Long, Object> parameters ) {
+            Object value;
+            if ( node instanceof RexLiteral ) {
+                value = ((RexLiteral) node).getValue();
+            } else if ( node instanceof RexDynamicParam && parameters.containsKey( ((RexDynamicParam) node).getIndex() ) ) {
+                value = parameters.get( ((RexDynamicParam) node).getIndex() );
+            } else {
+                return UNKNOWN;
+            }
+            if ( value instanceof NlsString ) {
+                return ((NlsString) value).getValue();
+            } else if ( value instanceof Number ) {
+                return new BigDecimal( value.toString() ).stripTrailingZeros().toPlainString();
+            }
+            return value == null ? null : value.toString();
+        }
+
+
+        private void addLockRequest( LockKey key, LockMode mode ) {
+            lockRequests.merge( key, mode, LockMode::supremum );
         }
+
+
+        private LockKey getTableKey( TableIdentifier tableIdentifier ) {
+            CatalogTable catalogTable = Catalog.getInstance().getTable( tableIdentifier.getTableId() );
+            return LockKey.table( catalogTable.schemaId, catalogTable.id );
+        }
+
     }
 
 
@@ -18,13 +18,15 @@
 
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -46,6 +48,7 @@
 import org.polypheny.db.schema.PolySchemaBuilder;
 import org.polypheny.db.schema.PolyphenyDbSchema;
 import org.polypheny.db.statistic.StatisticsManager;
+import org.polypheny.db.transaction.Lock.LockMode;
 
 
 @Slf4j
@@ -80,14 +83,18 @@ public class TransactionImpl implements Transaction, Comparable {
     @Getter
     private final boolean analyze;
 
-    private final List<Statement> statements = new ArrayList<>();
+    // Statements of a transaction may be created and executed concurrently (e.g. by the data migrator)
+    private final CopyOnWriteArrayList<Statement> statements = new CopyOnWriteArrayList<>();
 
-    private final List<String> changedTables = new ArrayList<>();
+    private final CopyOnWriteArrayList<String> changedTables = new CopyOnWriteArrayList<>();
 
     @Getter
-    private final List<Adapter> involvedAdapters = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Adapter> involvedAdapters = new CopyOnWriteArrayList<>();
 
-    private final Set<Lock> lockList = new HashSet<>();
+    private final Map<LockKey, Lock> locks = new ConcurrentHashMap<>();
+    private final Map<LockKey, LockMode> lockModes = new ConcurrentHashMap<>();
+
+    private volatile boolean deadlockVictim = false;
 
 
     TransactionImpl(
@@ -125,9 +132,8 @@ public InformationManager getQueryAnalyzer() {
 
     @Override
     public void registerInvolvedAdapter( Adapter adapter ) {
-        if ( !involvedAdapters.contains( adapter ) ) {
-            involvedAdapters.add( adapter );
-        }
+        // Statements of a transaction may be executed concurrently (e.g. by the data migrator)
+        involvedAdapters.addIfAbsent( adapter );
     }
 
 
@@ -139,23 +145,26 @@ public void commit() throws TransactionException {
         }
         // Prepare to commit changes on all involved adapters and the catalog
         boolean okToCommit = true;
+        List<Adapter> adapters = new ArrayList<>( involvedAdapters );
         if ( RuntimeConfig.TWO_PC_MODE.getBoolean() ) {
-            for ( Adapter adapter : involvedAdapters ) {
-                okToCommit &= adapter.prepare( xid );
-            }
+            okToCommit = AdapterCommitter.INSTANCE.prepare( xid, adapters );
         }
 
         if ( okToCommit ) {
-            // Commit changes
-            for ( Adapter adapter : involvedAdapters ) {
-                adapter.commit( xid );
+            // Commit changes. The changes to the indexes are only committed once all adapters have committed.
+            try {
+                AdapterCommitter.INSTANCE.commit( xid, adapters );
+            } catch ( RuntimeException e ) {
+                IndexManager.getInstance().rollback( this.xid );
+                throw e;
             }
+            IndexManager.getInstance().commit( this.xid );
 
+            StatisticsManager.getInstance().commit( xid );
             if ( changedTables.size() > 0 ) {
+                // Reevaluated asynchronously
                 StatisticsManager.getInstance().apply( changedTables );
             }
-
-            IndexManager.getInstance().commit( this.xid );
         } else {
             log.error( "Unable to prepare all involved entities for commit. Rollback changes!" );
             rollback();
@@ -183,6 +192,7 @@ public void rollback() throws TransactionException {
                 adapter.rollback( xid );
             }
             IndexManager.getInstance().rollback( this.xid );
+            StatisticsManager.getInstance().rollback( xid );
             Catalog.getInstance().rollback();
             // Free resources hold by statements
             statements.forEach( Statement::close );
@@ -233,9 +243,8 @@ public StatementImpl createStatement() {
 
     @Override
     public void addChangedTable( String qualifiedTableName ) {
-        if ( !this.changedTables.contains( qualifiedTableName ) ) {
+        if ( this.changedTables.addIfAbsent( qualifiedTableName ) ) {
             log.debug( "Add changed table: {}", qualifiedTableName );
-            this.changedTables.add( qualifiedTableName );
         }
     }
 
@@ -268,18 +277,45 @@ public boolean equals( Object o ) {
     // For locking
 
 
-    Set<Lock> getLocks() {
-        return lockList;
+    Collection<Lock> getLocks() {
+        return locks.values();
+    }
+
+
+    Lock getLock( LockKey key ) {
+        return locks.get( key );
+    }
+
+
+    LockMode getLockMode( LockKey key ) {
+        return lockModes.get( key );
+    }
+
+
+    /**
+     * Returns the lock object of the transaction for the key. If there is none yet, it is pinned by the given function.
+     * This happens atomically, so that concurrent requests of the same lock by several threads pin it only once.
+     */
+    Lock getOrPinLock( LockKey key, Function<LockKey, Lock> pin ) {
+        return locks.computeIfAbsent( key, pin );
+    }
+
+
+    void addLockMode( LockKey key, LockMode mode ) {
+        lockModes.merge( key, mode, LockMode::supremum );
     }
 
 
-    void addLock( Lock lock ) {
-        lockList.add( lock );
+    void removeLock( LockKey key ) {
+        locks.remove( key );
+        lockModes.remove( key );
     }
 
 
-    void removeLock( Lock lock ) {
-        lockList.remove( lock );
+    void clearLocks() {
+        locks.clear();
+        lockModes.clear();
+        deadlockVictim = false;
     }
 
 
@@ -288,6 +324,20 @@ void abort() {
     }
 
 
+    /**
+     * Marks this transaction to be aborted the next time it checks for a lock. Used by the background deadlock detection
+     * which runs in a different thread than the transaction.
+     */
+    void markDeadlockVictim() {
+        deadlockVictim = true;
+    }
+
+
+    boolean isDeadlockVictim() {
+        return deadlockVictim;
+    }
+
+
     @Override
     public long getNumberOfStatements() {
         return statements.size();
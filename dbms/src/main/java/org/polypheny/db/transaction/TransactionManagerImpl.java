@@ -30,6 +30,7 @@
 import org.polypheny.db.catalog.exceptions.UnknownDatabaseException;
 import org.polypheny.db.catalog.exceptions.UnknownSchemaException;
 import org.polypheny.db.catalog.exceptions.UnknownUserException;
+import org.polypheny.db.config.RuntimeConfig;
 import org.polypheny.db.information.InformationGroup;
 import org.polypheny.db.information.InformationManager;
 import org.polypheny.db.information.InformationPage;
@@ -58,7 +59,37 @@ public TransactionManagerImpl() {
                 runningTransactionsGroup,
                 Arrays.asList( "ID", "XID Hash", "Statements", "Analyze", "Involved Adapters", "Origin" ) );
         im.registerInformation( runningTransactionsTable );
+        InformationGroup lockingGroup = new InformationGroup( page, "Locking" );
+        im.addGroup( lockingGroup );
+        InformationTable lockingTable = new InformationTable(
+                lockingGroup,
+                Arrays.asList( "Attribute", "Value" ) );
+        im.registerInformation( lockingTable );
+        InformationGroup commitGroup = new InformationGroup( page, "Commit" );
+        im.addGroup( commitGroup );
+        InformationTable commitTable = new InformationTable(
+                commitGroup,
+                Arrays.asList( "Attribute", "Value" ) );
+        im.registerInformation( commitTable );
         page.setRefreshFunction( () -> {
+            WaitForGraph waitForGraph = LockManager.INSTANCE.getWaitForGraph();
+            lockingTable.reset();
+            lockingTable.addRow( "Deadlock Detection Mode", RuntimeConfig.DEADLOCK_DETECTION_MODE.getEnum().name() );
+            lockingTable.addRow( "Lock Table Size", LockManager.INSTANCE.getLockTableSize() );
+            lockingTable.addRow( "Waiting Transactions", waitForGraph.getNumberOfWaitingTransactions() );
+            lockingTable.addRow( "Lock Waits", waitForGraph.waits.sum() );
+            lockingTable.addRow( "Lock Wait Timeouts", waitForGraph.timeouts.sum() );
+            lockingTable.addRow( "Deadlock Detection Runs", waitForGraph.detectionRuns.sum() );
+            lockingTable.addRow( "Detected Deadlocks", waitForGraph.detectedCycles.sum() );
+            lockingTable.addRow( "Aborted Victims", waitForGraph.victims.sum() );
+
+            commitTable.reset();
+            commitTable.addRow( "Parallel Commit", RuntimeConfig.PARALLEL_COMMIT.getBoolean() );
+            commitTable.addRow( "Group Commit", RuntimeConfig.GROUP_COMMIT.getBoolean() );
+            commitTable.addRow( "Parallel Prepare/Commit Phases", AdapterCommitter.INSTANCE.parallelExecutions.sum() );
+            commitTable.addRow( "Group Commits", AdapterCommitter.INSTANCE.groupCommitBatches.sum() );
+            commitTable.addRow( "Transactions Committed in Groups", AdapterCommitter.INSTANCE.groupCommitTransactions.sum() );
+
             runningTransactionsTable.reset();
             transactions.forEach( ( k, v ) -> runningTransactionsTable.addRow(
                     v.getId(),
@@ -1,5 +1,5 @@
 /*
- * Copyright 2019-2020 The Polypheny Project
+ * Copyright 2019-2021 The Polypheny Project
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,44 +17,51 @@
 package org.polypheny.db.transaction;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.polypheny.db.config.RuntimeConfig;
 
 // Based on code taken from https://github.com/dstibrany/LockManager
+@Slf4j
 public class WaitForGraph {
 
+    // Edges from waiting transactions to the transactions they are waiting for. All modifications are lock-free, readers
+    // (i.e. the deadlock detection) therefore work on a weakly consistent view and have to verify the cycles they find.
     private final ConcurrentMap<TransactionImpl, Set<TransactionImpl>> adjacencyList = new ConcurrentHashMap<>();
-    private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-    private final Lock sharedLock = rwl.readLock();
-    private final Lock exclusiveLock = rwl.readLock();
-
-
-    void add( TransactionImpl predecessor, Set<TransactionImpl> successors ) {
-        sharedLock.lock();
-        try {
-            Set<TransactionImpl> txnList = adjacencyList.getOrDefault( predecessor, new ConcurrentSkipListSet<>() );
-            txnList.addAll( successors );
-            adjacencyList.put( predecessor, txnList );
-        } finally {
-            sharedLock.unlock();
-        }
+    // The lock each waiting transaction is waiting for
+    private final ConcurrentMap<TransactionImpl, Lock> waitingFor = new ConcurrentHashMap<>();
+
+    final LongAdder waits = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder detectionRuns = new LongAdder();
+    final LongAdder detectedCycles = new LongAdder();
+    final LongAdder victims = new LongAdder();
+
+
+    void add( TransactionImpl predecessor, Set<TransactionImpl> successors, Lock lock ) {
+        adjacencyList.computeIfAbsent( predecessor, k -> ConcurrentHashMap.newKeySet() ).addAll( successors );
+        waitingFor.put( predecessor, lock );
     }
 
 
     void remove( TransactionImpl txn ) {
-        sharedLock.lock();
-        try {
-            adjacencyList.remove( txn );
-            removeSuccessor( txn );
-        } finally {
-            sharedLock.unlock();
-        }
+        clearWaits( txn );
+        removeSuccessor( txn );
+    }
+
+
+    /**
+     * Removes the outgoing edges of a transaction which is no longer waiting for a lock.
+     */
+    void clearWaits( TransactionImpl txn ) {
+        adjacencyList.remove( txn );
+        waitingFor.remove( txn );
     }
 
 
@@ -67,36 +74,102 @@ boolean hasEdge( TransactionImpl txn1, TransactionImpl txn2 ) {
     }
 
 
+    int getNumberOfWaitingTransactions() {
+        return adjacencyList.size();
+    }
+
+
     List<List<TransactionImpl>> findCycles() {
-        exclusiveLock.lock();
-        try {
-            DepthFirstSearch dfs = new DepthFirstSearch();
-            dfs.start();
-            return dfs.getCycles();
-        } finally {
-            exclusiveLock.unlock();
-        }
+        DepthFirstSearch dfs = new DepthFirstSearch();
+        dfs.start();
+        return dfs.getCycles();
     }
 
 
+    /**
+     * Checks whether the current transaction is part of a deadlock and aborts it if this is the case. Used in
+     * {@link DeadlockDetectionMode#IMMEDIATE} mode before a transaction starts waiting for a lock.
+     */
     void detectDeadlock( TransactionImpl currentTxn ) {
-        List<List<TransactionImpl>> cycles = findCycles();
+        detectionRuns.increment();
+        if ( isReachable( currentTxn, currentTxn, new HashSet<>() ) ) {
+            detectedCycles.increment();
+            victims.increment();
+            currentTxn.abort();
+        }
+    }
+
 
-        for ( List<TransactionImpl> cycleGroup : cycles ) {
-            if ( cycleGroup.contains( currentTxn ) ) {
-                currentTxn.abort();
+    /**
+     * Searches the whole graph for cycles and aborts one transaction per cycle. Used by the background deadlock detection.
+     */
+    void resolveDeadlocks() {
+        detectionRuns.increment();
+        Set<TransactionImpl> aborted = new HashSet<>();
+        for ( List<TransactionImpl> cycle : findCycles() ) {
+            if ( cycle.stream().anyMatch( aborted::contains ) || !isCycle( cycle ) ) {
+                // Already resolved or a stale view of the graph
+                continue;
+            }
+            detectedCycles.increment();
+            TransactionImpl victim = selectVictim( cycle );
+            Lock lock = waitingFor.get( victim );
+            if ( lock != null ) {
+                log.debug( "Aborting transaction {} to resolve a deadlock", victim.getId() );
+                aborted.add( victim );
+                victims.increment();
+                victim.markDeadlockVictim();
+                lock.wakeUp();
             }
         }
     }
 
 
-    private void removeSuccessor( TransactionImpl txnToRemove ) {
-        for ( TransactionImpl predecessor : adjacencyList.keySet() ) {
-            Set<TransactionImpl> successors = adjacencyList.get( predecessor );
-            if ( successors != null ) {
-                successors.remove( txnToRemove );
+    private TransactionImpl selectVictim( List<TransactionImpl> cycle ) {
+        Comparator<TransactionImpl> comparator;
+        if ( RuntimeConfig.DEADLOCK_VICTIM_SELECTION.getEnum() == DeadlockVictimSelection.LEAST_WORK ) {
+            comparator = Comparator.<TransactionImpl>comparingLong( TransactionImpl::getNumberOfStatements )
+                    .thenComparingInt( t -> t.getLocks().size() )
+                    .reversed();
+        } else {
+            // Transaction ids are increasing, the youngest transaction has the highest id
+            comparator = Comparator.comparingLong( TransactionImpl::getId );
+        }
+        return cycle.stream().max( comparator ).orElseThrow( () -> new RuntimeException( "Empty cycle" ) );
+    }
+
+
+    private boolean isCycle( List<TransactionImpl> cycle ) {
+        for ( int i = 0; i < cycle.size(); i++ ) {
+            if ( !hasEdge( cycle.get( i ), cycle.get( (i + 1) % cycle.size() ) ) ) {
+                return false;
             }
         }
+        return true;
+    }
+
+
+    private boolean isReachable( TransactionImpl from, TransactionImpl target, Set<TransactionImpl> visited ) {
+        Set<TransactionImpl> successors = adjacencyList.get( from );
+        if ( successors == null ) {
+            return false;
+        }
+        for ( TransactionImpl successor : successors ) {
+            if ( successor.equals( target ) ) {
+                return true;
+            }
+            if ( visited.add( successor ) && isReachable( successor, target, visited ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void removeSuccessor( TransactionImpl txnToRemove ) {
+        for ( Set<TransactionImpl> successors : adjacencyList.values() ) {
+            successors.remove( txnToRemove );
+        }
     }
 
 
@@ -308,4 +308,88 @@ public void testRollback() throws SQLException {
         }
     }
 
+    @Test
+    public void testIndex() throws SQLException {
+        try ( JdbcConnection jdbcConnection = new JdbcConnection( false ) ) {
+            Connection connection = jdbcConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                try {
+                    statement.executeUpdate( "CREATE TABLE indexTest (a INTEGER NOT NULL, b INTEGER, c VARCHAR(20), PRIMARY KEY (a)) ON STORE \"mm\"" );
+                    statement.executeUpdate( "INSERT INTO indexTest (a,b,c) VALUES (1,10,'foo'),(2,20,'bar'),(3,30,'baz'),(4,null,'qux')" );
+                    connection.commit();
+                    // the index is built from the existing rows
+                    statement.executeUpdate( "ALTER TABLE indexTest ADD INDEX idx_b ON b USING \"sorted\" ON STORE \"mm\"" );
+                    connection.commit();
+
+                    ResultSet rs = statement.executeQuery( "SELECT a, b FROM indexTest WHERE b >= 20 AND b < 30" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 2, 20 } ) );
+                    rs.close();
+                    rs = statement.executeQuery( "SELECT a, c FROM indexTest WHERE a > 2 ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 3, "baz" }, new Object[]{ 4, "qux" } ) );
+                    rs.close();
+
+                    // changes of the transaction are visible through the index
+                    statement.executeUpdate( "INSERT INTO indexTest (a,b,c) VALUES (5,25,'quux')" );
+                    statement.executeUpdate( "UPDATE indexTest SET b = 35 WHERE a = 2" );
+                    rs = statement.executeQuery( "SELECT a FROM indexTest WHERE b > 20 ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 2 }, new Object[]{ 3 }, new Object[]{ 5 } ) );
+                    rs.close();
+                    connection.rollback();
+
+                    rs = statement.executeQuery( "SELECT a FROM indexTest WHERE b > 20 ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 3 } ) );
+                    rs.close();
+
+                    statement.executeUpdate( "DELETE FROM indexTest WHERE b = 30" );
+                    connection.commit();
+                    rs = statement.executeQuery( "SELECT a FROM indexTest WHERE b >= 10 ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 1 }, new Object[]{ 2 } ) );
+                    rs.close();
+                    connection.commit();
+                } finally {
+                    statement.executeUpdate( "DROP TABLE indexTest" );
+                    connection.commit();
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testSegmentLayout() throws SQLException {
+        try ( JdbcConnection jdbcConnection = new JdbcConnection( false ) ) {
+            Connection connection = jdbcConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "ALTER ADAPTERS ADD \"seg\" USING 'org.polypheny.db.adapter.file.FileStore' WITH '{mode:embedded,layout:Segments}'" );
+                try {
+                    statement.executeUpdate( "CREATE TABLE segmentTest (a INTEGER NOT NULL, b INTEGER, c VARCHAR(20), PRIMARY KEY (a)) ON STORE \"seg\"" );
+                    statement.executeUpdate( "INSERT INTO segmentTest (a,b,c) VALUES (1,2,'foo'),(3,4,'bar'),(5,null,null)" );
+                    connection.commit();
+
+                    ResultSet rs = statement.executeQuery( "SELECT * FROM segmentTest WHERE a >= 3 ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 3, 4, "bar" }, new Object[]{ 5, null, null } ) );
+                    rs.close();
+
+                    // rows of committed segments and rows inserted by the transaction itself
+                    statement.executeUpdate( "INSERT INTO segmentTest (a,b,c) VALUES (6,7,'baz')" );
+                    statement.executeUpdate( "UPDATE segmentTest SET b = 8 WHERE b = 7 OR a = 1" );
+                    statement.executeUpdate( "DELETE FROM segmentTest WHERE c = 'bar'" );
+                    rs = statement.executeQuery( "SELECT a, b FROM segmentTest ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 1, 8 }, new Object[]{ 5, null }, new Object[]{ 6, 8 } ) );
+                    rs.close();
+                    connection.rollback();
+
+                    rs = statement.executeQuery( "SELECT a, b FROM segmentTest WHERE b IS NOT NULL ORDER BY a" );
+                    TestHelper.checkResultSet( rs, ImmutableList.of( new Object[]{ 1, 2 }, new Object[]{ 3, 4 } ) );
+                    rs.close();
+                    connection.commit();
+                } finally {
+                    statement.executeUpdate( "DROP TABLE IF EXISTS segmentTest" );
+                    statement.executeUpdate( "ALTER ADAPTERS DROP seg" );
+                    connection.commit();
+                }
+            }
+        }
+    }
+
 }
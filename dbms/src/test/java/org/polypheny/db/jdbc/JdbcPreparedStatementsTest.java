@@ -31,10 +31,12 @@
 import org.apache.calcite.avatica.SqlType;
 import org.apache.calcite.avatica.util.ArrayFactoryImpl;
 import org.apache.calcite.avatica.util.Unsafe;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.polypheny.db.TestHelper;
 import org.polypheny.db.TestHelper.JdbcConnection;
+import org.polypheny.db.config.RuntimeConfig;
 
 @SuppressWarnings({ "SqlDialectInspection", "SqlNoDataSourceInspection" })
 public class JdbcPreparedStatementsTest {
@@ -148,6 +150,86 @@ public void batchInsertTest() throws SQLException {
     }
 
 
+    @Test
+    public void chunkedBatchInsertTest() throws SQLException {
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( false ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( SCHEMA_SQL );
+
+                int batchSize = RuntimeConfig.BATCH_SIZE.getInteger();
+                RuntimeConfig.BATCH_SIZE.setInteger( 3 );
+                try {
+                    PreparedStatement preparedInsert = connection.prepareStatement( "INSERT INTO pstest(tinteger,tbigint,tvarchar) VALUES (?, ?, ?)" );
+                    for ( int i = 1; i <= 7; i++ ) {
+                        preparedInsert.setInt( 1, i );
+                        if ( i % 2 == 0 ) {
+                            preparedInsert.setNull( 2, Types.BIGINT );
+                        } else {
+                            preparedInsert.setLong( 2, i * 10L );
+                        }
+                        preparedInsert.setString( 3, "Foo" + i );
+                        preparedInsert.addBatch();
+                    }
+
+                    int[] updateCounts = preparedInsert.executeBatch();
+                    connection.commit();
+                    Assert.assertArrayEquals( new int[]{ 1, 1, 1, 1, 1, 1, 1 }, updateCounts );
+
+                    PreparedStatement preparedSelect = connection.prepareStatement( "SELECT tinteger,tbigint,tvarchar FROM pstest WHERE tinteger >= ? ORDER BY tinteger" );
+                    preparedSelect.setInt( 1, 5 );
+                    TestHelper.checkResultSet(
+                            preparedSelect.executeQuery(),
+                            ImmutableList.of(
+                                    new Object[]{ 5, 50L, "Foo5" },
+                                    new Object[]{ 6, null, "Foo6" },
+                                    new Object[]{ 7, 70L, "Foo7" } ) );
+                } finally {
+                    RuntimeConfig.BATCH_SIZE.setInteger( batchSize );
+                    statement.executeUpdate( "DROP TABLE pstest" );
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void batchUpdateCountsTest() throws SQLException {
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( false ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( SCHEMA_SQL );
+                try {
+                    statement.executeUpdate( "INSERT INTO pstest(tinteger,tvarchar) VALUES (1, 'Foo'), (2, 'Foo'), (3, 'Bar')" );
+
+                    // The first parameter set changes two rows, the second one none
+                    PreparedStatement preparedUpdate = connection.prepareStatement( "UPDATE pstest SET tbigint = ? WHERE tvarchar = ?" );
+                    preparedUpdate.setLong( 1, 10L );
+                    preparedUpdate.setString( 2, "Foo" );
+                    preparedUpdate.addBatch();
+                    preparedUpdate.setLong( 1, 20L );
+                    preparedUpdate.setString( 2, "Baz" );
+                    preparedUpdate.addBatch();
+
+                    // The changed rows cannot be attributed to the parameter sets
+                    int[] updateCounts = preparedUpdate.executeBatch();
+                    connection.commit();
+                    Assert.assertArrayEquals( new int[]{ Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO }, updateCounts );
+
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT tinteger,tbigint FROM pstest ORDER BY tinteger" ),
+                            ImmutableList.of(
+                                    new Object[]{ 1, 10L },
+                                    new Object[]{ 2, 10L },
+                                    new Object[]{ 3, null } ) );
+                } finally {
+                    statement.executeUpdate( "DROP TABLE pstest" );
+                }
+            }
+        }
+    }
+
+
     @Test
     public void batchInsertDefaultValuesTest() throws SQLException {
         try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( false ) ) {
@@ -20,10 +20,13 @@
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.polypheny.db.TestHelper;
 import org.polypheny.db.TestHelper.JdbcConnection;
+import org.polypheny.db.config.RuntimeConfig;
 
 @SuppressWarnings({ "SqlDialectInspection", "SqlNoDataSourceInspection" })
 public class DataMigratorTest {
@@ -75,6 +78,54 @@ public void basicTest() throws SQLException {
     }
 
 
+    @Test
+    public void parallelKeyRangesTest() throws SQLException {
+        int parallelism = RuntimeConfig.DATA_MIGRATOR_PARALLELISM.getInteger();
+        int batchSize = RuntimeConfig.DATA_MIGRATOR_BATCH_SIZE.getInteger();
+        RuntimeConfig.DATA_MIGRATOR_PARALLELISM.setInteger( 3 );
+        RuntimeConfig.DATA_MIGRATOR_BATCH_SIZE.setInteger( 4 );
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "CREATE TABLE datamigratortest( "
+                        + "tprimary INTEGER NOT NULL, "
+                        + "tinteger INTEGER NULL, "
+                        + "tvarchar VARCHAR(20) NULL, "
+                        + "PRIMARY KEY (tprimary) )" );
+
+                try {
+                    List<Object[]> expected = new ArrayList<>();
+                    for ( int i = -10; i < 40; i++ ) {
+                        statement.executeUpdate( "INSERT INTO datamigratortest VALUES (" + i + "," + (i * 2) + ",'foo" + i + "')" );
+                        expected.add( new Object[]{ i, i * 2, "foo" + i } );
+                    }
+
+                    // Add data store
+                    statement.executeUpdate( "ALTER ADAPTERS ADD \"store1\" USING 'org.polypheny.db.adapter.jdbc.stores.HsqldbStore'"
+                            + " WITH '{maxConnections:\"25\",trxControlMode:locks,trxIsolationLevel:read_committed,type:Memory,tableType:Memory,mode:embedded}'" );
+                    // Add placement
+                    statement.executeUpdate( "ALTER TABLE \"datamigratortest\" ADD PLACEMENT ON STORE \"store1\"" );
+
+                    // Remove placement on initial store
+                    statement.executeUpdate( "ALTER TABLE \"datamigratortest\" DROP PLACEMENT ON STORE \"hsqldb\"" );
+
+                    // Checks
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM datamigratortest ORDER BY tprimary" ),
+                            expected );
+                } finally {
+                    // Drop table and store
+                    statement.executeUpdate( "DROP TABLE datamigratortest" );
+                    statement.executeUpdate( "ALTER ADAPTERS DROP \"store1\"" );
+                }
+            }
+        } finally {
+            RuntimeConfig.DATA_MIGRATOR_PARALLELISM.setInteger( parallelism );
+            RuntimeConfig.DATA_MIGRATOR_BATCH_SIZE.setInteger( batchSize );
+        }
+    }
+
+
     @Test
     public void partialPlacementsTest() throws SQLException {
         try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
@@ -18,6 +18,7 @@
 
 import com.google.common.collect.ImmutableList;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import org.apache.calcite.avatica.AvaticaSqlException;
@@ -409,4 +410,74 @@ public void rangePartitioningTest() throws SQLException {
         }
     }
 
+
+    @Test
+    public void rangePartitionPruningTest() throws SQLException {
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "CREATE TABLE rangepruning( "
+                        + "tprimary INTEGER NOT NULL, "
+                        + "tinteger INTEGER NULL, "
+                        + "tvarchar VARCHAR(20) NULL, "
+                        + "PRIMARY KEY (tprimary) )"
+                        + "PARTITION BY RANGE (tinteger) "
+                        + "( PARTITION parta VALUES(1,5), "
+                        + "PARTITION partb VALUES(6,10))" );
+
+                try {
+                    // Place the second partition on another store
+                    statement.executeUpdate( "ALTER ADAPTERS ADD \"storerange\" USING 'org.polypheny.db.adapter.jdbc.stores.HsqldbStore'"
+                            + " WITH '{maxConnections:\"25\",path:., trxControlMode:locks,trxIsolationLevel:read_committed,type:Memory,tableType:Memory,mode:embedded}'" );
+                    statement.executeUpdate( "ALTER TABLE \"rangepruning\" ADD PLACEMENT ON STORE \"storerange\"" );
+                    statement.executeUpdate( "ALTER TABLE \"rangepruning\" MODIFY PARTITIONS (1) ON STORE \"storerange\"" );
+
+                    statement.executeUpdate( "INSERT INTO rangepruning VALUES (1, 3, 'hans')" );
+                    statement.executeUpdate( "INSERT INTO rangepruning VALUES (2, 7, 'bob')" );
+                    statement.executeUpdate( "INSERT INTO rangepruning VALUES (3, 12, 'alice')" );
+                    statement.executeUpdate( "INSERT INTO rangepruning VALUES (4, 9, 'eve')" );
+
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM rangepruning WHERE tinteger > 5 ORDER BY tprimary" ),
+                            ImmutableList.of(
+                                    new Object[]{ 2, 7, "bob" },
+                                    new Object[]{ 3, 12, "alice" },
+                                    new Object[]{ 4, 9, "eve" } ) );
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM rangepruning WHERE tinteger BETWEEN 2 AND 8 ORDER BY tprimary" ),
+                            ImmutableList.of(
+                                    new Object[]{ 1, 3, "hans" },
+                                    new Object[]{ 2, 7, "bob" } ) );
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM rangepruning WHERE tinteger IN (3, 9, 12) ORDER BY tprimary" ),
+                            ImmutableList.of(
+                                    new Object[]{ 1, 3, "hans" },
+                                    new Object[]{ 3, 12, "alice" },
+                                    new Object[]{ 4, 9, "eve" } ) );
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM rangepruning WHERE tinteger = 3 AND tinteger = 7" ),
+                            ImmutableList.of() );
+
+                    // Dynamic parameters are evaluated whenever the statement is executed
+                    try ( PreparedStatement preparedStatement = connection.prepareStatement( "SELECT * FROM rangepruning WHERE tinteger <= ? ORDER BY tprimary" ) ) {
+                        preparedStatement.setInt( 1, 7 );
+                        TestHelper.checkResultSet(
+                                preparedStatement.executeQuery(),
+                                ImmutableList.of(
+                                        new Object[]{ 1, 3, "hans" },
+                                        new Object[]{ 2, 7, "bob" } ) );
+                        preparedStatement.setInt( 1, 4 );
+                        TestHelper.checkResultSet(
+                                preparedStatement.executeQuery(),
+                                ImmutableList.of(
+                                        new Object[]{ 1, 3, "hans" } ) );
+                    }
+                } finally {
+                    statement.executeUpdate( "DROP TABLE rangepruning" );
+                    statement.executeUpdate( "ALTER ADAPTERS DROP \"storerange\"" );
+                }
+            }
+        }
+    }
+
 }
@@ -21,10 +21,12 @@
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.polypheny.db.TestHelper;
 import org.polypheny.db.TestHelper.JdbcConnection;
+import org.polypheny.db.config.RuntimeConfig;
 
 @SuppressWarnings({ "SqlDialectInspection", "SqlNoDataSourceInspection" })
 public class VerticalPartitioningTest {
@@ -142,4 +144,133 @@ public void preparedBatchTest() throws SQLException {
         }
     }
 
+
+    @Test
+    public void conditionOnPartitionedColumnTest() throws SQLException {
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "CREATE TABLE partitioningtest( "
+                        + "tprimary INTEGER NOT NULL, "
+                        + "tinteger INTEGER NULL, "
+                        + "tvarchar VARCHAR(20) NULL, "
+                        + "PRIMARY KEY (tprimary) )" );
+
+                try {
+                    // Deploy additional store
+                    statement.executeUpdate( "ALTER ADAPTERS ADD \"store1\" USING 'org.polypheny.db.adapter.jdbc.stores.HsqldbStore'"
+                            + " WITH '{maxConnections:\"25\",trxControlMode:locks,trxIsolationLevel:read_committed,type:Memory,tableType:Memory,mode:embedded}'" );
+
+                    // Add placement
+                    statement.executeUpdate( "ALTER TABLE \"partitioningtest\" ADD PLACEMENT (tvarchar) ON STORE \"store1\"" );
+
+                    // Change placement on initial store
+                    statement.executeUpdate( "ALTER TABLE \"partitioningtest\" MODIFY PLACEMENT (tinteger) ON STORE \"hsqldb\"" );
+
+                    // Insert data
+                    statement.executeUpdate( "INSERT INTO partitioningtest VALUES (1,5,'foo'),(2,22,'bar'),(3,69,'foo'),(4,7,'xyz'),(5,8,'abc')" );
+
+                    // Conditions on columns which are only placed on one of the stores
+                    Assert.assertEquals( 2, statement.executeUpdate( "UPDATE partitioningtest SET tinteger = 33 WHERE tvarchar = 'foo'" ) );
+                    Assert.assertEquals( 0, statement.executeUpdate( "UPDATE partitioningtest SET tinteger = 44 WHERE tvarchar = 'none'" ) );
+                    Assert.assertEquals( 1, statement.executeUpdate( "DELETE FROM partitioningtest WHERE tinteger = 22" ) );
+
+                    // Prepared statement executed with different numbers of affected rows
+                    PreparedStatement preparedUpdate = connection.prepareStatement( "UPDATE partitioningtest SET tinteger = ? WHERE tvarchar = ?" );
+                    preparedUpdate.setInt( 1, 10 );
+                    preparedUpdate.setString( 2, "xyz" );
+                    Assert.assertEquals( 1, preparedUpdate.executeUpdate() );
+                    preparedUpdate.setInt( 1, 11 );
+                    preparedUpdate.setString( 2, "foo" );
+                    Assert.assertEquals( 2, preparedUpdate.executeUpdate() );
+
+                    // Batch with a different set of affected rows for every set of parameters
+                    preparedUpdate.setInt( 1, 12 );
+                    preparedUpdate.setString( 2, "abc" );
+                    preparedUpdate.addBatch();
+                    preparedUpdate.setInt( 1, 13 );
+                    preparedUpdate.setString( 2, "foo" );
+                    preparedUpdate.addBatch();
+                    preparedUpdate.setInt( 1, 14 );
+                    preparedUpdate.setString( 2, "none" );
+                    preparedUpdate.addBatch();
+                    preparedUpdate.executeBatch();
+
+                    // Checks
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM partitioningtest ORDER BY tprimary" ),
+                            ImmutableList.of(
+                                    new Object[]{ 1, 13, "foo" },
+                                    new Object[]{ 3, 13, "foo" },
+                                    new Object[]{ 4, 10, "xyz" },
+                                    new Object[]{ 5, 12, "abc" } ) );
+                } finally {
+                    // Drop table and store
+                    statement.executeUpdate( "DROP TABLE partitioningtest" );
+                    statement.executeUpdate( "ALTER ADAPTERS DROP \"store1\"" );
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void chunkedConditionOnPartitionedColumnTest() throws SQLException {
+        int chunkSize = RuntimeConfig.SEMI_JOIN_REDUCTION_CHUNK_SIZE.getInteger();
+        RuntimeConfig.SEMI_JOIN_REDUCTION_CHUNK_SIZE.setInteger( 2 );
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "CREATE TABLE partitioningtest( "
+                        + "tprimary INTEGER NOT NULL, "
+                        + "tinteger INTEGER NULL, "
+                        + "tvarchar VARCHAR(20) NULL, "
+                        + "PRIMARY KEY (tprimary) )" );
+
+                try {
+                    // Deploy additional store
+                    statement.executeUpdate( "ALTER ADAPTERS ADD \"store1\" USING 'org.polypheny.db.adapter.jdbc.stores.HsqldbStore'"
+                            + " WITH '{maxConnections:\"25\",trxControlMode:locks,trxIsolationLevel:read_committed,type:Memory,tableType:Memory,mode:embedded}'" );
+
+                    // Add placement
+                    statement.executeUpdate( "ALTER TABLE \"partitioningtest\" ADD PLACEMENT (tvarchar) ON STORE \"store1\"" );
+
+                    // Change placement on initial store
+                    statement.executeUpdate( "ALTER TABLE \"partitioningtest\" MODIFY PLACEMENT (tinteger) ON STORE \"hsqldb\"" );
+
+                    // Insert data
+                    statement.executeUpdate( "INSERT INTO partitioningtest VALUES (1,5,'foo'),(2,22,'bar'),(3,69,'foo'),(4,7,'foo'),(5,8,'abc')" );
+
+                    // The keys of the three affected rows are shipped in two chunks
+                    Assert.assertEquals( 3, statement.executeUpdate( "UPDATE partitioningtest SET tinteger = 33 WHERE tvarchar = 'foo'" ) );
+
+                    // Updates of the primary key have to fit into one chunk
+                    Assert.assertEquals( 1, statement.executeUpdate( "UPDATE partitioningtest SET tprimary = 6 WHERE tvarchar = 'abc'" ) );
+                    try {
+                        statement.executeUpdate( "UPDATE partitioningtest SET tprimary = tprimary + 10 WHERE tvarchar = 'foo'" );
+                        Assert.fail( "Expected the update of the primary keys to be rejected" );
+                    } catch ( SQLException e ) {
+                        // Expected
+                    }
+
+                    // Checks
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM partitioningtest ORDER BY tprimary" ),
+                            ImmutableList.of(
+                                    new Object[]{ 1, 33, "foo" },
+                                    new Object[]{ 2, 22, "bar" },
+                                    new Object[]{ 3, 33, "foo" },
+                                    new Object[]{ 4, 33, "foo" },
+                                    new Object[]{ 6, 8, "abc" } ) );
+                } finally {
+                    // Drop table and store
+                    statement.executeUpdate( "DROP TABLE partitioningtest" );
+                    statement.executeUpdate( "ALTER ADAPTERS DROP \"store1\"" );
+                }
+            }
+        } finally {
+            RuntimeConfig.SEMI_JOIN_REDUCTION_CHUNK_SIZE.setInteger( chunkSize );
+        }
+    }
+
 }
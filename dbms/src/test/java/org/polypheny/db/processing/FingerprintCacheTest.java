@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.processing;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+
+public class FingerprintCacheTest {
+
+    private static PlanFingerprint fingerprint( String key, Long... tableIds ) {
+        return new PlanFingerprint( key, ImmutableSet.copyOf( tableIds ), false );
+    }
+
+
+    @Test
+    public void invalidationTest() {
+        FingerprintCache<String> cache = new FingerprintCache<>( () -> 1000, () -> 100_000 );
+        cache.put( fingerprint( "a", 1L ), "a", 1 );
+        cache.put( fingerprint( "b", 1L, 2L ), "b", 1 );
+        cache.put( fingerprint( "c", 2L ), "c", 1 );
+        cache.put( new PlanFingerprint( "d", ImmutableSet.of(), true ), "d", 1 );
+
+        // Plans with unknown dependencies are invalidated by any table
+        assertEquals( 3, cache.invalidate( 1 ) );
+        assertNull( cache.peek( fingerprint( "a" ) ) );
+        assertNull( cache.peek( fingerprint( "b" ) ) );
+        assertNull( cache.peek( fingerprint( "d" ) ) );
+        assertEquals( "c", cache.getIfPresent( fingerprint( "c" ) ) );
+        assertEquals( 1, cache.invalidate( 2 ) );
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.getWeight() );
+        assertEquals( 4, cache.getInvalidations() );
+    }
+
+
+    @Test
+    public void boundsTest() {
+        int segmentSize = 2;
+        FingerprintCache<String> cache = new FingerprintCache<>( () -> segmentSize * FingerprintCache.SEGMENTS, () -> 100_000 );
+        for ( int i = 0; i < 1000; i++ ) {
+            cache.put( fingerprint( "key" + i, (long) i ), "value" + i, 1 );
+        }
+        assertTrue( cache.size() <= segmentSize * FingerprintCache.SEGMENTS );
+        assertEquals( 1000 - cache.size(), cache.getEvictions() );
+
+        FingerprintCache<String> weighted = new FingerprintCache<>( () -> 100_000, () -> 10 * FingerprintCache.SEGMENTS );
+        for ( int i = 0; i < 1000; i++ ) {
+            weighted.put( fingerprint( "key" + i, (long) i ), "value" + i, 5 );
+        }
+        assertTrue( weighted.getWeight() <= 10 * FingerprintCache.SEGMENTS );
+        assertEquals( weighted.size() * 5, weighted.getWeight() );
+    }
+
+
+    @Test
+    public void lruTest() {
+        // A single segment holds at most one entry
+        FingerprintCache<String> cache = new FingerprintCache<>( () -> 1, () -> 100_000 );
+        PlanFingerprint first = fingerprint( "first" );
+        cache.put( first, "first", 1 );
+        // Find another key in the same segment
+        PlanFingerprint second = null;
+        for ( int i = 0; second == null; i++ ) {
+            FingerprintCache<String> probe = new FingerprintCache<>( () -> 1, () -> 100_000 );
+            PlanFingerprint candidate = fingerprint( "second" + i );
+            probe.put( first, "first", 1 );
+            probe.put( candidate, "candidate", 1 );
+            if ( probe.size() == 1 ) {
+                second = candidate;
+            }
+        }
+        cache.put( second, "second", 1 );
+        assertNull( cache.peek( first ) );
+        assertEquals( "second", cache.getIfPresent( second ) );
+        assertEquals( 1, cache.getEvictions() );
+    }
+
+
+    @Test
+    public void concurrentAccessTest() throws InterruptedException {
+        FingerprintCache<String> cache = new FingerprintCache<>( () -> 64, () -> 100_000 );
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for ( int t = 0; t < 8; t++ ) {
+            final int offset = t;
+            Thread thread = new Thread( () -> {
+                try {
+                    for ( int i = 0; i < 5000; i++ ) {
+                        PlanFingerprint fingerprint = fingerprint( "key" + ((i + offset) % 200), (long) (i % 10) );
+                        String value = cache.getIfPresent( fingerprint );
+                        if ( value == null ) {
+                            cache.put( fingerprint, fingerprint.getKey(), 1 );
+                        } else if ( !value.equals( fingerprint.getKey() ) ) {
+                            throw new AssertionError( "Unexpected value " + value );
+                        }
+                        if ( i % 1000 == 0 ) {
+                            cache.invalidate( i % 10 );
+                        }
+                    }
+                } catch ( Throwable e ) {
+                    failure.set( e );
+                }
+            } );
+            threads.add( thread );
+            thread.start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        assertNull( failure.get() );
+        assertEquals( cache.size(), cache.getWeight() );
+
+        // The index of the tables is consistent with the entries
+        for ( long tableId = 0; tableId < 10; tableId++ ) {
+            cache.invalidate( tableId );
+        }
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.getWeight() );
+    }
+
+}
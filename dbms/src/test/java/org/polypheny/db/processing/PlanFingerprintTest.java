@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.processing;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.junit.Test;
+import org.polypheny.db.TestHelper;
+import org.polypheny.db.TestHelper.JdbcConnection;
+import org.polypheny.db.adapter.DataContext.SlimDataContext;
+import org.polypheny.db.adapter.java.JavaTypeFactory;
+import org.polypheny.db.catalog.Catalog;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.jdbc.ContextImpl;
+import org.polypheny.db.jdbc.JavaTypeFactoryImpl;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.schema.PolyphenyDbSchema;
+import org.polypheny.db.schema.SchemaPlus;
+import org.polypheny.db.schemas.HrClusteredSchema;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
+import org.polypheny.db.sql.parser.SqlParser.SqlParserConfig;
+import org.polypheny.db.tools.FrameworkConfig;
+import org.polypheny.db.tools.Frameworks;
+import org.polypheny.db.tools.RelBuilder;
+import org.polypheny.db.type.PolyType;
+
+
+@SuppressWarnings({ "SqlDialectInspection", "SqlNoDataSourceInspection" })
+public class PlanFingerprintTest {
+
+    private static RelBuilder createRelBuilder() {
+        final SchemaPlus rootSchema = Frameworks.createRootSchema( true );
+        final SchemaPlus defSchema = rootSchema.add( "hr", new HrClusteredSchema() );
+        final FrameworkConfig config = Frameworks.newConfigBuilder()
+                .parserConfig( SqlParserConfig.DEFAULT )
+                .defaultSchema( defSchema )
+                .prepareContext( new ContextImpl(
+                        PolyphenyDbSchema.from( rootSchema ),
+                        new SlimDataContext() {
+                            @Override
+                            public JavaTypeFactory getTypeFactory() {
+                                return new JavaTypeFactoryImpl();
+                            }
+                        },
+                        "",
+                        0,
+                        0,
+                        null ) )
+                .build();
+        return RelBuilder.create( config );
+    }
+
+
+    private static RelNode filterPlan( int salary ) {
+        RelBuilder builder = createRelBuilder();
+        return builder.scan( "emps" )
+                .filter( builder.call( SqlStdOperatorTable.GREATER_THAN, builder.field( "salary" ), builder.literal( salary ) ) )
+                .project( builder.field( "empid" ), builder.field( "name" ) )
+                .build();
+    }
+
+
+    private static RelNode parameterPlan( PolyType type ) {
+        RelBuilder builder = createRelBuilder();
+        RelDataType parameterType = builder.getTypeFactory().createPolyType( type );
+        return builder.scan( "emps" )
+                .project( builder.field( "empid" ), builder.getRexBuilder().makeDynamicParam( parameterType, 0 ) )
+                .build();
+    }
+
+
+    @Test
+    public void structuralEqualityTest() {
+        // Plans built independently of each other have the same fingerprint
+        RelNode first = filterPlan( 5000 );
+        RelNode second = filterPlan( 5000 );
+        assertEquals( PlanFingerprint.of( first, first ), PlanFingerprint.of( second, second ) );
+        assertEquals( PlanFingerprint.of( first, first ).hashCode(), PlanFingerprint.of( second, second ).hashCode() );
+
+        // The key does not contain the ids of the operators
+        assertFalse( PlanFingerprint.describe( first ).contains( "#" ) );
+    }
+
+
+    @Test
+    public void distinguishingTest() {
+        // Different literals
+        RelNode first = filterPlan( 5000 );
+        RelNode second = filterPlan( 6000 );
+        assertNotEquals( PlanFingerprint.of( first, first ), PlanFingerprint.of( second, second ) );
+
+        // Dynamic parameters with the same index but a different type
+        RelNode integerParameter = parameterPlan( PolyType.INTEGER );
+        RelNode bigintParameter = parameterPlan( PolyType.BIGINT );
+        assertNotEquals( PlanFingerprint.of( integerParameter, integerParameter ), PlanFingerprint.of( bigintParameter, bigintParameter ) );
+    }
+
+
+    @Test
+    public void unknownDependenciesTest() {
+        // The tables of the HR schema are no catalog tables
+        RelNode plan = filterPlan( 5000 );
+        PlanFingerprint fingerprint = PlanFingerprint.of( plan, plan );
+        assertTrue( fingerprint.isUnknownDependencies() );
+        assertTrue( fingerprint.getTableIds().isEmpty() );
+        assertTrue( fingerprint.dependsOn( 42 ) );
+    }
+
+
+    @Test
+    public void indexLookupDependencyTest() throws SQLException {
+        // Ensures that Polypheny-DB is running
+        //noinspection ResultOfMethodCallIgnored
+        TestHelper.getInstance();
+        boolean simplify = RuntimeConfig.POLYSTORE_INDEXES_SIMPLIFY.getBoolean();
+        boolean planCaching = RuntimeConfig.QUERY_PLAN_CACHING.getBoolean();
+        RuntimeConfig.POLYSTORE_INDEXES_SIMPLIFY.setBoolean( true );
+        RuntimeConfig.QUERY_PLAN_CACHING.setBoolean( true );
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "CREATE TABLE fingerprinttest( id INTEGER NOT NULL, val INTEGER NOT NULL, PRIMARY KEY (id) )" );
+                try {
+                    statement.executeUpdate( "ALTER TABLE fingerprinttest ADD UNIQUE INDEX idx_val ON val" );
+                    statement.executeUpdate( "INSERT INTO fingerprinttest VALUES (1, 10), (2, 20)" );
+                    QueryPlanCache.INSTANCE.reset();
+
+                    // The scan is replaced by the content of the index, the plan nevertheless depends on the table
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT val FROM fingerprinttest ORDER BY val" ),
+                            ImmutableList.of( new Object[]{ 10 }, new Object[]{ 20 } ) );
+                    long tableId = Catalog.getInstance().getTables( null, null, new Catalog.Pattern( "fingerprinttest" ) ).get( 0 ).id;
+                    List<PlanFingerprint> cached = QueryPlanCache.INSTANCE.getMostFrequent( 50 );
+                    assertFalse( cached.isEmpty() );
+                    assertTrue( cached.stream().allMatch( f -> f.dependsOn( tableId ) ) );
+
+                    // Altering the table invalidates the plan
+                    QueryPlanCache.INSTANCE.invalidate( tableId );
+                    assertTrue( QueryPlanCache.INSTANCE.getMostFrequent( 50 ).isEmpty() );
+                } finally {
+                    statement.executeUpdate( "DROP TABLE fingerprinttest" );
+                }
+            }
+        } finally {
+            RuntimeConfig.POLYSTORE_INDEXES_SIMPLIFY.setBoolean( simplify );
+            RuntimeConfig.QUERY_PLAN_CACHING.setBoolean( planCaching );
+        }
+    }
+
+}
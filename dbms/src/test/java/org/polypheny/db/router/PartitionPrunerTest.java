@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.router;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.adapter.DataStore;
+import org.polypheny.db.catalog.Catalog;
+import org.polypheny.db.catalog.Catalog.PartitionType;
+import org.polypheny.db.catalog.Catalog.PlacementType;
+import org.polypheny.db.catalog.Catalog.TableType;
+import org.polypheny.db.catalog.entity.CatalogColumn;
+import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
+import org.polypheny.db.catalog.entity.CatalogPartition;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.partition.HashPartitionManager;
+import org.polypheny.db.partition.ListPartitionManager;
+import org.polypheny.db.partition.PartitionManager;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.volcano.VolcanoPlanner;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelRoot;
+import org.polypheny.db.rel.logical.LogicalValues;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.rel.type.RelDataTypeFactory;
+import org.polypheny.db.rel.type.RelDataTypeSystem;
+import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.sql.SqlOperator;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
+import org.polypheny.db.transaction.Statement;
+import org.polypheny.db.transaction.Transaction;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.type.PolyTypeFactoryImpl;
+
+
+public class PartitionPrunerTest {
+
+    private static final long ID_COLUMN = 10;
+    private static final long NAME_COLUMN = 11;
+
+    private static Catalog previousCatalog;
+
+    private static final RelDataTypeFactory typeFactory = new PolyTypeFactoryImpl( RelDataTypeSystem.DEFAULT );
+    private static final RexBuilder rexBuilder = new RexBuilder( typeFactory );
+    private static final RelDataType intType = typeFactory.createPolyType( PolyType.INTEGER );
+    private static final RelDataType varcharType = typeFactory.createPolyType( PolyType.VARCHAR, 20 );
+
+    // Partition 1 lists the values 1 and 2, partition 2 the value 3 and partition 3 is the unbound partition
+    private static final CatalogTable listTable = partitionedTable( PartitionType.LIST, ImmutableList.of( 1L, 2L, 3L ) );
+    private static final CatalogTable hashTable = partitionedTable( PartitionType.HASH, ImmutableList.of( 21L, 22L, 23L, 24L ) );
+
+
+    @BeforeClass
+    public static void mockCatalog() {
+        // The list partition manager looks up the partitions and the type of the partition column
+        previousCatalog = Catalog.INSTANCE;
+        Catalog catalog = mock( Catalog.class );
+        when( catalog.getColumn( ID_COLUMN ) ).thenReturn( new CatalogColumn( ID_COLUMN, "id", 1, 1, 1, 1, PolyType.INTEGER, null, null, null, null, null, false, null, null ) );
+        when( catalog.getPartition( 1L ) ).thenReturn( new CatalogPartition( 1, "p1", 1, 1, 1, 0, ImmutableList.of( "1", "2" ), false ) );
+        when( catalog.getPartition( 2L ) ).thenReturn( new CatalogPartition( 2, "p2", 1, 1, 1, 0, ImmutableList.of( "3" ), false ) );
+        when( catalog.getPartition( 3L ) ).thenReturn( new CatalogPartition( 3, "unbound", 1, 1, 1, 0, ImmutableList.of(), true ) );
+        Catalog.INSTANCE = catalog;
+    }
+
+
+    @AfterClass
+    public static void restoreCatalog() {
+        Catalog.INSTANCE = previousCatalog;
+    }
+
+
+    private static CatalogTable partitionedTable( PartitionType partitionType, ImmutableList<Long> partitionIds ) {
+        return new CatalogTable(
+                1,
+                "test",
+                ImmutableList.of( ID_COLUMN, NAME_COLUMN ),
+                1,
+                1,
+                1,
+                "pa",
+                TableType.TABLE,
+                null,
+                null,
+                ImmutableMap.of(),
+                true,
+                partitionIds.size(),
+                partitionType,
+                partitionIds,
+                ID_COLUMN );
+    }
+
+
+    private static RexNode id() {
+        return rexBuilder.makeInputRef( intType, 0 );
+    }
+
+
+    private static RexNode name() {
+        return rexBuilder.makeInputRef( varcharType, 1 );
+    }
+
+
+    private static RexNode value( int value ) {
+        return rexBuilder.makeExactLiteral( BigDecimal.valueOf( value ), intType );
+    }
+
+
+    private static RexNode call( SqlOperator operator, RexNode left, RexNode right ) {
+        return rexBuilder.makeCall( operator, left, right );
+    }
+
+
+    private static Set<Long> prune( CatalogTable table, PartitionManager partitionManager, RexNode condition ) {
+        return new PartitionPruner( table, partitionManager, mock( DataContext.class ) ).prune( condition );
+    }
+
+
+    @Test
+    public void listPartitionTest() {
+        ListPartitionManager partitionManager = new ListPartitionManager();
+        assertEquals( ImmutableSet.of( 2L ), prune( listTable, partitionManager, call( SqlStdOperatorTable.EQUALS, id(), value( 3 ) ) ) );
+        // The value is compared to the column
+        assertEquals( ImmutableSet.of( 2L ), prune( listTable, partitionManager, call( SqlStdOperatorTable.EQUALS, value( 3 ), id() ) ) );
+        // Values which are not listed are placed on the unbound partition
+        assertEquals( ImmutableSet.of( 3L ), prune( listTable, partitionManager, call( SqlStdOperatorTable.EQUALS, id(), value( 7 ) ) ) );
+        assertEquals( ImmutableSet.of( 1L, 3L ), prune( listTable, partitionManager, call( SqlStdOperatorTable.LESS_THAN, id(), value( 3 ) ) ) );
+        assertEquals( ImmutableSet.of( 1L, 2L, 3L ), prune( listTable, partitionManager, call( SqlStdOperatorTable.LESS_THAN_OR_EQUAL, id(), value( 3 ) ) ) );
+        assertEquals( ImmutableSet.of( 2L, 3L ), prune( listTable, partitionManager, call( SqlStdOperatorTable.LESS_THAN, value( 2 ), id() ) ) );
+        // Conditions on other columns do not restrict the partitions
+        assertNull( prune( listTable, partitionManager, call( SqlStdOperatorTable.EQUALS, name(), rexBuilder.makeLiteral( "foo" ) ) ) );
+    }
+
+
+    @Test
+    public void dynamicParameterTest() {
+        DataContext dataContext = mock( DataContext.class );
+        when( dataContext.getParameterValues() ).thenReturn( Collections.singletonList( ImmutableMap.<Long, Object>of( 0L, 3 ) ) );
+        when( dataContext.getParameterValue( 0 ) ).thenReturn( 3 );
+        PartitionPruner pruner = new PartitionPruner( listTable, new ListPartitionManager(), dataContext );
+        assertEquals( ImmutableSet.of( 2L ), pruner.prune( call( SqlStdOperatorTable.EQUALS, id(), rexBuilder.makeDynamicParam( intType, 0 ) ) ) );
+
+        // Without the values of a single execution nothing can be pruned
+        when( dataContext.getParameterValues() ).thenReturn( Collections.emptyList() );
+        assertNull( pruner.prune( call( SqlStdOperatorTable.EQUALS, id(), rexBuilder.makeDynamicParam( intType, 0 ) ) ) );
+    }
+
+
+    @Test
+    public void hashPartitionTest() {
+        HashPartitionManager partitionManager = new HashPartitionManager();
+        long target = partitionManager.getTargetPartitionId( hashTable, "42" );
+        assertTrue( hashTable.partitionIds.contains( target ) );
+        assertEquals( ImmutableSet.of( target ), prune( hashTable, partitionManager, call( SqlStdOperatorTable.EQUALS, id(), value( 42 ) ) ) );
+
+        // Hashing does not preserve the order of the values, a range may be on any partition
+        assertEquals( ImmutableSet.copyOf( hashTable.partitionIds ), prune( hashTable, partitionManager, call( SqlStdOperatorTable.GREATER_THAN, id(), value( 42 ) ) ) );
+
+        Set<Long> expected = ImmutableSet.of( partitionManager.getTargetPartitionId( hashTable, "1" ), partitionManager.getTargetPartitionId( hashTable, "2" ) );
+        assertEquals( expected, prune( hashTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.OR, call( SqlStdOperatorTable.EQUALS, id(), value( 1 ) ), call( SqlStdOperatorTable.EQUALS, id(), value( 2 ) ) ) ) );
+    }
+
+
+    @Test
+    public void andOrTest() {
+        ListPartitionManager partitionManager = new ListPartitionManager();
+        RexNode isOne = call( SqlStdOperatorTable.EQUALS, id(), value( 1 ) );
+        RexNode isThree = call( SqlStdOperatorTable.EQUALS, id(), value( 3 ) );
+        RexNode isFoo = call( SqlStdOperatorTable.EQUALS, name(), rexBuilder.makeLiteral( "foo" ) );
+
+        assertEquals( ImmutableSet.of( 1L, 2L ), prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.OR, isOne, isThree ) ) );
+        // A disjunction can not be pruned if one of its operands can not be pruned
+        assertNull( prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.OR, isOne, isFoo ) ) );
+        // Operands of a conjunction which can not be pruned are ignored
+        assertEquals( ImmutableSet.of( 1L ), prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.AND, isFoo, isOne ) ) );
+        assertNull( prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.AND, isFoo, isFoo ) ) );
+        // Contradicting conditions are not satisfied by any partition
+        assertEquals( ImmutableSet.of(), prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.AND, isOne, isThree ) ) );
+
+        RexNode isOneOrThree = rexBuilder.makeCall( SqlStdOperatorTable.OR, isOne, isThree );
+        RexNode greaterTwo = call( SqlStdOperatorTable.GREATER_THAN, id(), value( 2 ) );
+        assertEquals( ImmutableSet.of( 2L ), prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.AND, isOneOrThree, greaterTwo ) ) );
+        RexNode isOneAndFoo = rexBuilder.makeCall( SqlStdOperatorTable.AND, isOne, isFoo );
+        assertEquals( ImmutableSet.of( 1L, 2L ), prune( listTable, partitionManager, rexBuilder.makeCall( SqlStdOperatorTable.OR, isOneAndFoo, isThree ) ) );
+    }
+
+
+    @Test
+    public void partitionConditionFallbackTest() {
+        List<CatalogColumnPlacement> firstPlacements = placements( 1 );
+        List<CatalogColumnPlacement> secondPlacements = placements( 2 );
+        List<CatalogColumnPlacement> fullPlacements = placements( 3 );
+
+        // The partitions are read from different placements but can not be told apart by a condition
+        PartitionManager partitionManager = mock( PartitionManager.class );
+        when( partitionManager.getRelevantPlacements( hashTable, ImmutableList.of( 21L ) ) ).thenReturn( firstPlacements );
+        when( partitionManager.getRelevantPlacements( hashTable, ImmutableList.of( 22L ) ) ).thenReturn( secondPlacements );
+        when( partitionManager.getRelevantPlacements( hashTable, null ) ).thenReturn( fullPlacements );
+
+        Statement statement = mock( Statement.class );
+        when( statement.getTransaction() ).thenReturn( mock( Transaction.class ) );
+        RelOptCluster cluster = RelOptCluster.create( new VolcanoPlanner(), rexBuilder );
+        RelDataType rowType = typeFactory.createStructType( ImmutableList.of( intType, varcharType ), ImmutableList.of( "id", "name" ) );
+
+        List<List<CatalogColumnPlacement>> scanned = new ArrayList<>();
+        AbstractRouter router = new TestRouter() {
+            @Override
+            public RelNode buildJoinedTableScan( Statement statement, RelOptCluster cluster, List<CatalogColumnPlacement> placements ) {
+                scanned.add( placements );
+                return LogicalValues.createEmpty( cluster, rowType );
+            }
+        };
+
+        RelNode scan = router.buildPartitionedTableScan( statement, cluster, hashTable, partitionManager, ImmutableList.of( 21L, 22L ) );
+        assertTrue( scan instanceof LogicalValues );
+        assertSame( fullPlacements, scanned.get( scanned.size() - 1 ) );
+    }
+
+
+    private static List<CatalogColumnPlacement> placements( int adapterId ) {
+        return ImmutableList.of(
+                new CatalogColumnPlacement( 1, ID_COLUMN, adapterId, "store" + adapterId, PlacementType.MANUAL, "public", "test", "id", 0 ),
+                new CatalogColumnPlacement( 1, NAME_COLUMN, adapterId, "store" + adapterId, PlacementType.MANUAL, "public", "test", "name", 1 ) );
+    }
+
+
+    private static class TestRouter extends AbstractRouter {
+
+        @Override
+        protected void analyze( Statement statement, RelRoot logicalRoot ) {
+        }
+
+
+        @Override
+        protected void wrapUp( Statement statement, RelNode routed ) {
+        }
+
+
+        @Override
+        protected List<CatalogColumnPlacement> selectPlacement( RelNode node, CatalogTable catalogTable ) {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public List<DataStore> createTable( long schemaId, Statement statement ) {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public List<DataStore> addColumn( CatalogTable catalogTable, Statement statement ) {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void dropPlacements( List<CatalogColumnPlacement> placements ) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
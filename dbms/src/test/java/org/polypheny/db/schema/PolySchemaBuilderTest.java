@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.schema;
+
+import com.google.common.collect.ImmutableList;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.polypheny.db.TestHelper;
+import org.polypheny.db.TestHelper.JdbcConnection;
+import org.polypheny.db.util.Benchmark;
+
+@SuppressWarnings({ "SqlDialectInspection", "SqlNoDataSourceInspection" })
+public class PolySchemaBuilderTest {
+
+
+    @BeforeClass
+    public static void start() {
+        // Ensures that Polypheny-DB is running
+        //noinspection ResultOfMethodCallIgnored
+        TestHelper.getInstance();
+    }
+
+
+    private static Table getLogicalTable( String tableName ) {
+        PolyphenyDbSchema.TableEntry entry = PolySchemaBuilder.getInstance().getCurrent()
+                .getSubSchema( "public", false )
+                .getTable( tableName, false );
+        return entry == null ? null : entry.getTable();
+    }
+
+
+    @Test
+    public void incrementalUpdateTest() throws SQLException {
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                statement.executeUpdate( "CREATE TABLE schemabuildertest1( tprimary INTEGER NOT NULL, tinteger INTEGER NULL, PRIMARY KEY (tprimary) )" );
+                statement.executeUpdate( "CREATE TABLE schemabuildertest2( tprimary INTEGER NOT NULL, tinteger INTEGER NULL, PRIMARY KEY (tprimary) )" );
+                try {
+                    AbstractPolyphenyDbSchema before = PolySchemaBuilder.getInstance().getCurrent();
+                    Table unaffected = getLogicalTable( "schemabuildertest1" );
+                    Table affected = getLogicalTable( "schemabuildertest2" );
+                    Assert.assertNotNull( unaffected );
+                    Assert.assertNotNull( affected );
+
+                    statement.executeUpdate( "ALTER TABLE schemabuildertest2 ADD COLUMN tvarchar VARCHAR(20) NULL" );
+
+                    // A new tree is published, only the entries of the altered table are rebuilt
+                    Assert.assertNotSame( before, PolySchemaBuilder.getInstance().getCurrent() );
+                    Assert.assertSame( unaffected, getLogicalTable( "schemabuildertest1" ) );
+                    Assert.assertNotSame( affected, getLogicalTable( "schemabuildertest2" ) );
+
+                    statement.executeUpdate( "INSERT INTO schemabuildertest2 VALUES (1, 2, 'foo')" );
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT * FROM schemabuildertest2" ),
+                            ImmutableList.of( new Object[]{ 1, 2, "foo" } ) );
+
+                    statement.executeUpdate( "ALTER TABLE schemabuildertest2 RENAME TO schemabuildertest3" );
+                    Assert.assertNull( getLogicalTable( "schemabuildertest2" ) );
+                    TestHelper.checkResultSet(
+                            statement.executeQuery( "SELECT tvarchar FROM schemabuildertest3" ),
+                            ImmutableList.of( new Object[]{ "foo" } ) );
+                } finally {
+                    statement.executeUpdate( "DROP TABLE schemabuildertest1" );
+                    statement.executeUpdate( "DROP TABLE IF EXISTS schemabuildertest2" );
+                    statement.executeUpdate( "DROP TABLE IF EXISTS schemabuildertest3" );
+                }
+                Assert.assertNull( getLogicalTable( "schemabuildertest1" ) );
+            }
+        }
+    }
+
+
+    /**
+     * Measures the duration of DDL statements depending on the number of tables in the schema.
+     */
+    @Test
+    public void ddlPerformanceTest() throws SQLException {
+        if ( !Benchmark.enabled() ) {
+            return;
+        }
+        try ( JdbcConnection polyphenyDbConnection = new JdbcConnection( true ) ) {
+            Connection connection = polyphenyDbConnection.getConnection();
+            try ( Statement statement = connection.createStatement() ) {
+                int tables = 0;
+                try {
+                    for ( int size : new int[]{ 10, 100, 1000 } ) {
+                        for ( ; tables < size; tables++ ) {
+                            statement.executeUpdate( "CREATE TABLE schemabuilderbench" + tables + "( tprimary INTEGER NOT NULL, tinteger INTEGER NULL, PRIMARY KEY (tprimary) )" );
+                        }
+                        new Benchmark( "add and drop column with " + size + " tables", statistician -> {
+                            try {
+                                long start = System.nanoTime();
+                                statement.executeUpdate( "ALTER TABLE schemabuilderbench0 ADD COLUMN tvarchar VARCHAR(20) NULL" );
+                                statement.executeUpdate( "ALTER TABLE schemabuilderbench0 DROP COLUMN tvarchar" );
+                                statistician.record( start );
+                            } catch ( SQLException e ) {
+                                throw new RuntimeException( e );
+                            }
+                            return null;
+                        }, 10 ).run();
+                    }
+                } finally {
+                    for ( int i = 0; i < tables; i++ ) {
+                        statement.executeUpdate( "DROP TABLE schemabuilderbench" + i );
+                    }
+                }
+            }
+        }
+    }
+
+}
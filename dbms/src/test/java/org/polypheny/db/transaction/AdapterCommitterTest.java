@@ -0,0 +1,367 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.transaction;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.polypheny.db.adapter.Adapter;
+import org.polypheny.db.adapter.Adapter.AdapterProperties;
+import org.polypheny.db.adapter.DeployMode;
+import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.jdbc.Context;
+import org.polypheny.db.schema.Schema;
+import org.polypheny.db.schema.SchemaPlus;
+import org.polypheny.db.schema.Table;
+
+
+public class AdapterCommitterTest {
+
+    private boolean parallelCommit;
+    private boolean groupCommit;
+
+
+    @Before
+    public void saveConfig() {
+        parallelCommit = RuntimeConfig.PARALLEL_COMMIT.getBoolean();
+        groupCommit = RuntimeConfig.GROUP_COMMIT.getBoolean();
+    }
+
+
+    @After
+    public void restoreConfig() {
+        RuntimeConfig.PARALLEL_COMMIT.setBoolean( parallelCommit );
+        RuntimeConfig.GROUP_COMMIT.setBoolean( groupCommit );
+    }
+
+
+    private static PolyXid newXid() {
+        return PolyXid.generateLocalTransactionIdentifier( PUID.randomPUID( PUID.Type.NODE ), PUID.randomPUID( PUID.Type.TRANSACTION ) );
+    }
+
+
+    @Test
+    public void parallelCommitFailureTest() throws InterruptedException {
+        RuntimeConfig.PARALLEL_COMMIT.setBoolean( true );
+        RuntimeConfig.GROUP_COMMIT.setBoolean( false );
+
+        PolyXid xid = newXid();
+        TestAdapter failing = new TestAdapter( 1 );
+        failing.failing.add( xid );
+        TestAdapter slow = new TestAdapter( 2 );
+        slow.commitDelay = 200;
+
+        try {
+            AdapterCommitter.INSTANCE.commit( xid, ImmutableList.of( failing, slow ) );
+            fail( "Expected the commit to fail" );
+        } catch ( IllegalStateException e ) {
+            // The failure is only reported once all adapters have finished
+            assertTrue( slow.committed.contains( xid ) );
+        }
+        assertTrue( failing.committed.isEmpty() );
+    }
+
+
+    @Test
+    public void groupCommitSingleFailureTest() {
+        RuntimeConfig.PARALLEL_COMMIT.setBoolean( false );
+        RuntimeConfig.GROUP_COMMIT.setBoolean( true );
+
+        PolyXid xid = newXid();
+        TestAdapter adapter = new TestAdapter( 3 );
+        adapter.failing.add( xid );
+
+        try {
+            AdapterCommitter.INSTANCE.commit( xid, ImmutableList.of( adapter ) );
+            fail( "Expected the commit to fail" );
+        } catch ( IllegalStateException e ) {
+            // Expected
+        }
+
+        // The adapter is available for further commits
+        PolyXid other = newXid();
+        AdapterCommitter.INSTANCE.commit( other, ImmutableList.of( adapter ) );
+        assertEquals( ImmutableList.of( other ), ImmutableList.copyOf( adapter.committed ) );
+    }
+
+
+    @Test
+    public void groupCommitFailureTest() throws InterruptedException {
+        RuntimeConfig.PARALLEL_COMMIT.setBoolean( false );
+        RuntimeConfig.GROUP_COMMIT.setBoolean( true );
+
+        TestAdapter adapter = new TestAdapter( 4 );
+        adapter.failGroups = true;
+        PolyXid first = newXid();
+        PolyXid succeeding = newXid();
+        PolyXid failing = newXid();
+        adapter.failing.add( failing );
+
+        List<Throwable> results = commitAsGroup( adapter, first, succeeding, failing );
+
+        // The failed group has been committed transaction by transaction
+        assertNull( results.get( 0 ) );
+        assertTrue( results.get( 1 ) instanceof IllegalStateException );
+        assertTrue( adapter.committed.contains( first ) );
+        assertTrue( adapter.committed.contains( succeeding ) );
+        assertEquals( 2, adapter.committed.size() );
+    }
+
+
+    @Test
+    public void groupCommitPartialFailureTest() throws InterruptedException {
+        RuntimeConfig.PARALLEL_COMMIT.setBoolean( false );
+        RuntimeConfig.GROUP_COMMIT.setBoolean( true );
+
+        TestAdapter adapter = new TestAdapter( 5 );
+        adapter.failGroups = true;
+        adapter.failGroupsAfter = 1;
+        PolyXid first = newXid();
+        PolyXid second = newXid();
+        PolyXid third = newXid();
+
+        List<Throwable> results = commitAsGroup( adapter, first, second, third );
+
+        assertNull( results.get( 0 ) );
+        assertNull( results.get( 1 ) );
+        assertEquals( ImmutableSet.of( first, second, third ), adapter.committed );
+        // The transaction committed before the group has failed is not committed again
+        assertEquals( 1, adapter.groups.size() );
+        PolyXid committedByGroup = adapter.groups.get( 0 ).get( 0 );
+        assertEquals( 1, adapter.commitCalls.stream().filter( committedByGroup::equals ).count() );
+        assertEquals( 3, adapter.commitCalls.size() );
+    }
+
+
+    @Test
+    public void noGroupCommitTest() throws InterruptedException {
+        RuntimeConfig.PARALLEL_COMMIT.setBoolean( false );
+        RuntimeConfig.GROUP_COMMIT.setBoolean( true );
+
+        // Adapters which do not support group commits commit concurrent transactions independently
+        TestAdapter adapter = new TestAdapter( 6 );
+        adapter.groupCommit = false;
+        PolyXid first = newXid();
+        CountDownLatch blocked = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        adapter.blocking = first;
+        adapter.blocked = blocked;
+        adapter.release = release;
+
+        Thread firstThread = new Thread( () -> AdapterCommitter.INSTANCE.commit( first, ImmutableList.of( adapter ) ) );
+        firstThread.start();
+        assertTrue( blocked.await( 10, TimeUnit.SECONDS ) );
+
+        // Not blocked by the first commit
+        PolyXid second = newXid();
+        AdapterCommitter.INSTANCE.commit( second, ImmutableList.of( adapter ) );
+        assertEquals( ImmutableSet.of( second ), adapter.committed );
+
+        release.countDown();
+        firstThread.join( 10_000 );
+        assertEquals( ImmutableSet.of( first, second ), adapter.committed );
+        assertTrue( adapter.groups.isEmpty() );
+    }
+
+
+    /**
+     * Blocks the adapter with the commit of the first transaction, so that the other two are committed as a group.
+     *
+     * @return the failures of the commits of the other two transactions
+     */
+    private static List<Throwable> commitAsGroup( TestAdapter adapter, PolyXid first, PolyXid second, PolyXid third ) throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        adapter.blocking = first;
+        adapter.blocked = blocked;
+        adapter.release = release;
+
+        Thread firstThread = new Thread( () -> AdapterCommitter.INSTANCE.commit( first, ImmutableList.of( adapter ) ) );
+        firstThread.start();
+        assertTrue( blocked.await( 10, TimeUnit.SECONDS ) );
+
+        AtomicReference<Throwable> secondResult = new AtomicReference<>();
+        AtomicReference<Throwable> thirdResult = new AtomicReference<>();
+        Thread secondThread = commitInThread( second, adapter, secondResult );
+        Thread thirdThread = commitInThread( third, adapter, thirdResult );
+        awaitWaiting( secondThread );
+        awaitWaiting( thirdThread );
+
+        release.countDown();
+        firstThread.join( 10_000 );
+        secondThread.join( 10_000 );
+        thirdThread.join( 10_000 );
+        return Arrays.asList( secondResult.get(), thirdResult.get() );
+    }
+
+
+    private static Thread commitInThread( PolyXid xid, TestAdapter adapter, AtomicReference<Throwable> result ) {
+        Thread thread = new Thread( () -> {
+            try {
+                AdapterCommitter.INSTANCE.commit( xid, ImmutableList.of( adapter ) );
+            } catch ( Throwable t ) {
+                result.set( t );
+            }
+        } );
+        thread.start();
+        return thread;
+    }
+
+
+    private static void awaitWaiting( Thread thread ) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ( thread.getState() != Thread.State.WAITING ) {
+            if ( System.currentTimeMillis() > deadline ) {
+                fail( "Thread did not start waiting for the group commit" );
+            }
+            Thread.sleep( 10 );
+        }
+    }
+
+
+    @AdapterProperties(
+            name = "CommitTest",
+            description = "Records the committed transactions",
+            usedModes = DeployMode.EMBEDDED)
+    private static class TestAdapter extends Adapter {
+
+        private final Set<PolyXid> committed = ConcurrentHashMap.newKeySet();
+        private final Set<PolyXid> failing = ConcurrentHashMap.newKeySet();
+        private final List<PolyXid> commitCalls = new CopyOnWriteArrayList<>();
+        private final List<List<PolyXid>> groups = new CopyOnWriteArrayList<>();
+        private volatile long commitDelay = 0;
+        private volatile boolean groupCommit = true;
+        private volatile boolean failGroups = false;
+        private volatile int failGroupsAfter = 0;
+        private volatile PolyXid blocking;
+        private volatile CountDownLatch blocked;
+        private volatile CountDownLatch release;
+
+
+        TestAdapter( int adapterId ) {
+            super( adapterId, "commitTest" + adapterId, ImmutableMap.of( "mode", "embedded" ) );
+        }
+
+
+        @Override
+        public void commit( PolyXid xid ) {
+            commitCalls.add( xid );
+            if ( xid.equals( blocking ) ) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch ( InterruptedException e ) {
+                    throw new RuntimeException( e );
+                }
+            }
+            if ( commitDelay > 0 ) {
+                try {
+                    Thread.sleep( commitDelay );
+                } catch ( InterruptedException e ) {
+                    throw new RuntimeException( e );
+                }
+            }
+            if ( failing.contains( xid ) ) {
+                throw new IllegalStateException( "Commit of " + xid + " has failed" );
+            }
+            committed.add( xid );
+        }
+
+
+        @Override
+        public boolean supportsGroupCommit() {
+            return groupCommit;
+        }
+
+
+        @Override
+        public void commit( List<PolyXid> xids, Consumer<PolyXid> committed ) {
+            groups.add( xids );
+            if ( failGroups && xids.size() > 1 ) {
+                // Commits the first transactions of the group before failing
+                super.commit( xids.subList( 0, failGroupsAfter ), committed );
+                throw new IllegalStateException( "Group commit has failed" );
+            }
+            super.commit( xids, committed );
+        }
+
+
+        @Override
+        public boolean prepare( PolyXid xid ) {
+            return true;
+        }
+
+
+        @Override
+        public void rollback( PolyXid xid ) {
+        }
+
+
+        @Override
+        public void createNewSchema( SchemaPlus rootSchema, String name ) {
+        }
+
+
+        @Override
+        public Table createTableSchema( CatalogTable combinedTable, List<CatalogColumnPlacement> columnPlacementsOnStore ) {
+            return null;
+        }
+
+
+        @Override
+        public Schema getCurrentSchema() {
+            return null;
+        }
+
+
+        @Override
+        public void truncate( Context context, CatalogTable table ) {
+        }
+
+
+        @Override
+        public void shutdown() {
+        }
+
+
+        @Override
+        protected void reloadSettings( List<String> updatedSettings ) {
+        }
+
+    }
+
+}
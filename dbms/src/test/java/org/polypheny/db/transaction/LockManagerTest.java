@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.transaction;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.transaction.Lock.LockMode;
+
+
+public class LockManagerTest {
+
+    private static final TransactionManagerImpl transactionManager = new TransactionManagerImpl();
+
+
+    private static TransactionImpl startTransaction() {
+        return (TransactionImpl) transactionManager.startTransaction( null, null, null, false, "LockManagerTest" );
+    }
+
+
+    @Test
+    public void lockModeTest() {
+        assertTrue( LockMode.INTENTION_SHARED.isCompatible( LockMode.INTENTION_EXCLUSIVE ) );
+        assertTrue( LockMode.INTENTION_EXCLUSIVE.isCompatible( LockMode.INTENTION_EXCLUSIVE ) );
+        assertFalse( LockMode.SHARED.isCompatible( LockMode.INTENTION_EXCLUSIVE ) );
+        assertFalse( LockMode.SHARED_INTENTION_EXCLUSIVE.isCompatible( LockMode.SHARED ) );
+        assertFalse( LockMode.EXCLUSIVE.isCompatible( LockMode.INTENTION_SHARED ) );
+
+        assertEquals( LockMode.SHARED_INTENTION_EXCLUSIVE, LockMode.SHARED.supremum( LockMode.INTENTION_EXCLUSIVE ) );
+        assertEquals( LockMode.SHARED, LockMode.INTENTION_SHARED.supremum( LockMode.SHARED ) );
+        assertTrue( LockMode.EXCLUSIVE.covers( LockMode.SHARED_INTENTION_EXCLUSIVE ) );
+        assertFalse( LockMode.SHARED.covers( LockMode.INTENTION_EXCLUSIVE ) );
+    }
+
+
+    @Test
+    public void disjointKeyRangesTest() throws DeadlockException {
+        TransactionImpl t1 = startTransaction();
+        TransactionImpl t2 = startTransaction();
+        try {
+            LockManager.INSTANCE.lock( LockKey.keyRange( 0, 1, LockKey.NONE, 1 ), t1, LockMode.EXCLUSIVE );
+            LockManager.INSTANCE.lock( LockKey.keyRange( 0, 1, LockKey.NONE, 2 ), t2, LockMode.EXCLUSIVE );
+
+            // Both transactions hold intention locks on all ancestors
+            assertEquals( LockMode.INTENTION_EXCLUSIVE, t1.getLockMode( LockKey.table( 0, 1 ) ) );
+            assertEquals( LockMode.INTENTION_EXCLUSIVE, t2.getLockMode( LockKey.schema( 0 ) ) );
+            assertEquals( LockMode.INTENTION_EXCLUSIVE, LockManager.INSTANCE.getLockMode( LockManager.GLOBAL_LOCK ) );
+        } finally {
+            LockManager.INSTANCE.removeTransaction( t1 );
+            LockManager.INSTANCE.removeTransaction( t2 );
+        }
+        assertNull( LockManager.INSTANCE.getLockMode( LockKey.table( 0, 1 ) ) );
+    }
+
+
+    @Test
+    public void conflictingTableLockTest() throws Exception {
+        TransactionImpl t1 = startTransaction();
+        TransactionImpl t2 = startTransaction();
+        CountDownLatch acquired = new CountDownLatch( 1 );
+        LockManager.INSTANCE.lock( LockKey.keyRange( 0, 2, LockKey.NONE, 7 ), t1, LockMode.EXCLUSIVE );
+        Thread reader = new Thread( () -> {
+            try {
+                LockManager.INSTANCE.lock( LockKey.table( 0, 2 ), t2, LockMode.SHARED );
+                acquired.countDown();
+            } catch ( DeadlockException e ) {
+                throw new RuntimeException( e );
+            }
+        } );
+        try {
+            reader.start();
+            // The shared table lock conflicts with the intention exclusive lock of the first transaction
+            assertFalse( acquired.await( 200, TimeUnit.MILLISECONDS ) );
+            LockManager.INSTANCE.removeTransaction( t1 );
+            assertTrue( acquired.await( 5, TimeUnit.SECONDS ) );
+            assertEquals( LockMode.SHARED, t2.getLockMode( LockKey.table( 0, 2 ) ) );
+        } finally {
+            LockManager.INSTANCE.removeTransaction( t1 );
+            reader.join();
+            LockManager.INSTANCE.removeTransaction( t2 );
+        }
+    }
+
+
+    @Test
+    public void backgroundDeadlockDetectionTest() throws Exception {
+        RuntimeConfig.DEADLOCK_DETECTION_MODE.setEnum( DeadlockDetectionMode.BACKGROUND );
+        TransactionImpl older = startTransaction();
+        TransactionImpl younger = startTransaction();
+        AtomicReference<Exception> olderResult = new AtomicReference<>();
+        AtomicReference<Exception> youngerResult = new AtomicReference<>();
+        try {
+            LockManager.INSTANCE.lock( LockKey.table( 0, 4 ), older, LockMode.EXCLUSIVE );
+            LockManager.INSTANCE.lock( LockKey.table( 0, 5 ), younger, LockMode.EXCLUSIVE );
+            Thread t1 = lockInThread( LockKey.table( 0, 5 ), older, olderResult );
+            Thread t2 = lockInThread( LockKey.table( 0, 4 ), younger, youngerResult );
+            t1.join( 10000 );
+            t2.join( 10000 );
+            // The younger transaction is the victim, the older one gets the lock
+            assertNull( olderResult.get() );
+            assertTrue( youngerResult.get() instanceof DeadlockException );
+            assertEquals( LockMode.EXCLUSIVE, older.getLockMode( LockKey.table( 0, 5 ) ) );
+        } finally {
+            RuntimeConfig.DEADLOCK_DETECTION_MODE.setEnum( DeadlockDetectionMode.IMMEDIATE );
+            LockManager.INSTANCE.removeTransaction( older );
+            LockManager.INSTANCE.removeTransaction( younger );
+        }
+    }
+
+
+    @Test
+    public void deadlockDetectorThreadTest() {
+        // The background thread only runs while the background detection is selected
+        assertFalse( LockManager.INSTANCE.isDeadlockDetectorRunning() );
+        RuntimeConfig.DEADLOCK_DETECTION_MODE.setEnum( DeadlockDetectionMode.BACKGROUND );
+        try {
+            assertTrue( LockManager.INSTANCE.isDeadlockDetectorRunning() );
+        } finally {
+            RuntimeConfig.DEADLOCK_DETECTION_MODE.setEnum( DeadlockDetectionMode.IMMEDIATE );
+        }
+        assertFalse( LockManager.INSTANCE.isDeadlockDetectorRunning() );
+    }
+
+
+    @Test
+    public void lockWaitTimeoutTest() throws Exception {
+        RuntimeConfig.LOCK_WAIT_TIMEOUT.setInteger( 100 );
+        TransactionImpl t1 = startTransaction();
+        TransactionImpl t2 = startTransaction();
+        try {
+            LockManager.INSTANCE.lock( LockKey.table( 0, 6 ), t1, LockMode.SHARED );
+            try {
+                LockManager.INSTANCE.lock( LockKey.table( 0, 6 ), t2, LockMode.EXCLUSIVE );
+                fail( "Expected lock wait timeout" );
+            } catch ( DeadlockException e ) {
+                // Expected
+            }
+            // The aborted transaction has released its locks
+            assertNull( t2.getLockMode( LockKey.schema( 0 ) ) );
+        } finally {
+            RuntimeConfig.LOCK_WAIT_TIMEOUT.setInteger( 0 );
+            LockManager.INSTANCE.removeTransaction( t1 );
+            LockManager.INSTANCE.removeTransaction( t2 );
+        }
+    }
+
+
+    private static Thread lockInThread( LockKey key, TransactionImpl transaction, AtomicReference<Exception> result ) {
+        Thread thread = new Thread( () -> {
+            try {
+                LockManager.INSTANCE.lock( key, transaction, LockMode.EXCLUSIVE );
+            } catch ( DeadlockException e ) {
+                result.set( e );
+            }
+        } );
+        thread.start();
+        return thread;
+    }
+
+
+    @Test
+    public void lockConversionTest() throws DeadlockException {
+        TransactionImpl t1 = startTransaction();
+        try {
+            LockManager.INSTANCE.lock( LockKey.table( 0, 3 ), t1, LockMode.SHARED );
+            LockManager.INSTANCE.lock( LockKey.keyRange( 0, 3, LockKey.NONE, 1 ), t1, LockMode.EXCLUSIVE );
+            assertEquals( LockMode.SHARED_INTENTION_EXCLUSIVE, t1.getLockMode( LockKey.table( 0, 3 ) ) );
+            assertTrue( LockManager.INSTANCE.hasLock( t1, LockKey.keyRange( 0, 3, LockKey.NONE, 1 ) ) );
+        } finally {
+            LockManager.INSTANCE.removeTransaction( t1 );
+        }
+    }
+
+
+    @Test
+    public void sameTransactionConcurrentLockTest() throws Exception {
+        int lockTableSize = LockManager.INSTANCE.getLockTableSize();
+        for ( int round = 0; round < 50; round++ ) {
+            TransactionImpl t1 = startTransaction();
+            CountDownLatch start = new CountDownLatch( 1 );
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] threads = new Thread[8];
+            for ( int i = 0; i < threads.length; i++ ) {
+                LockKey key = LockKey.keyRange( 0, 4, LockKey.NONE, i % 2 );
+                threads[i] = new Thread( () -> {
+                    try {
+                        start.await();
+                        LockManager.INSTANCE.lock( key, t1, LockMode.SHARED );
+                    } catch ( Throwable t ) {
+                        failure.set( t );
+                    }
+                } );
+                threads[i].start();
+            }
+            start.countDown();
+            for ( Thread thread : threads ) {
+                thread.join( 10_000 );
+            }
+            assertNull( failure.get() );
+            assertEquals( LockMode.SHARED, t1.getLockMode( LockKey.keyRange( 0, 4, LockKey.NONE, 1 ) ) );
+            LockManager.INSTANCE.removeTransaction( t1 );
+
+            // Every lock object has been pinned once by the transaction and is removed again
+            assertEquals( lockTableSize, LockManager.INSTANCE.getLockTableSize() );
+        }
+    }
+
+}
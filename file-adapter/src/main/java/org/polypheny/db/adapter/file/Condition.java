@@ -218,13 +218,57 @@ public boolean matches( final Object[] columnValues, final PolyType[] columnType
             //WHERE x = null is always false, see https://stackoverflow.com/questions/9581745/sql-is-null-and-null
             return false;
         }
+        int comparison = compare( columnValue, parameterValue, polyType );
+
+        switch ( operator ) {
+            case AND:
+                for ( Condition c : operands ) {
+                    if ( !c.matches( columnValues, columnTypes, dataContext ) ) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for ( Condition c : operands ) {
+                    if ( c.matches( columnValues, columnTypes, dataContext ) ) {
+                        return true;
+                    }
+                }
+                return false;
+            case EQUALS:
+                return comparison == 0;
+            case NOT_EQUALS:
+                return comparison != 0;
+            case GREATER_THAN:
+                return comparison > 0;
+            case GREATER_THAN_OR_EQUAL:
+                return comparison >= 0;
+            case LESS_THAN:
+                return comparison < 0;
+            case LESS_THAN_OR_EQUAL:
+                return comparison <= 0;
+            case LIKE:
+                //todo maybe replace '%' by '(.*)' etc.
+                Pattern pattern = Pattern.compile( parameterValue.toString() );
+                Matcher matcher = pattern.matcher( columnValue.toString() );
+                return matcher.matches();
+            default:
+                throw new RuntimeException( operator + " comparison not supported by file adapter." );
+        }
+    }
+
+
+    /**
+     * Compares a column value with the value of the condition parameter or with another value of the same column
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static int compare( Comparable columnValue, Object parameterValue, final PolyType polyType ) {
         if ( columnValue instanceof Number && parameterValue instanceof Number ) {
             columnValue = ((Number) columnValue).doubleValue();
             parameterValue = ((Number) parameterValue).doubleValue();
         }
 
         int comparison;
-
         if ( parameterValue instanceof Calendar ) {
             //could be improved with precision..
             switch ( polyType ) {
@@ -258,40 +302,151 @@ public boolean matches( final Object[] columnValues, final PolyType[] columnType
             comparison = columnValue.compareTo( parameterValue );
         }
 
-        switch ( operator ) {
-            case AND:
-                for ( Condition c : operands ) {
-                    if ( !c.matches( columnValues, columnTypes, dataContext ) ) {
-                        return false;
+        return comparison;
+    }
+
+
+    /**
+     * Determines whether any row with column values within the given bounds could match the condition. It is used to
+     * skip segments whose zone maps rule out a match. The result is {@code true} if this cannot be determined.
+     *
+     * @param minValues Minimal values of the columns, {@code null} entries for unknown bounds
+     * @param maxValues Maximal values of the columns, {@code null} entries for unknown bounds
+     * @param nullOnly Columns that only contain null values
+     */
+    public boolean mayMatch( final Object[] minValues, final Object[] maxValues, final boolean[] nullOnly, final PolyType[] columnTypes, final DataContext dataContext ) {
+        if ( columnReference == null ) {
+            switch ( operator ) {
+                case AND:
+                    for ( Condition c : operands ) {
+                        if ( !c.mayMatch( minValues, maxValues, nullOnly, columnTypes, dataContext ) ) {
+                            return false;
+                        }
                     }
-                }
-                return true;
-            case OR:
-                for ( Condition c : operands ) {
-                    if ( c.matches( columnValues, columnTypes, dataContext ) ) {
-                        return true;
+                    return true;
+                case OR:
+                    for ( Condition c : operands ) {
+                        if ( c.mayMatch( minValues, maxValues, nullOnly, columnTypes, dataContext ) ) {
+                            return true;
+                        }
                     }
+                    return false;
+                default:
+                    return true;
+            }
+        }
+        switch ( operator ) {
+            case IS_NULL:
+                return true;
+            case IS_NOT_NULL:
+                return !nullOnly[columnReference];
+            case EQUALS:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                break;
+            default:
+                return !nullOnly[columnReference];
+        }
+        if ( nullOnly[columnReference] ) {
+            // Comparisons with null values are never true
+            return false;
+        }
+        Object min = minValues[columnReference];
+        Object max = maxValues[columnReference];
+        if ( !(min instanceof Comparable) || !(max instanceof Comparable) ) {
+            return true;
+        }
+        Object parameterValue = getParamValue( dataContext, columnTypes[columnReference] );
+        if ( parameterValue == null ) {
+            return false;
+        }
+        try {
+            int minComparison = compare( (Comparable) min, parameterValue, columnTypes[columnReference] );
+            int maxComparison = compare( (Comparable) max, parameterValue, columnTypes[columnReference] );
+            switch ( operator ) {
+                case EQUALS:
+                    return minComparison <= 0 && maxComparison >= 0;
+                case GREATER_THAN:
+                    return maxComparison > 0;
+                case GREATER_THAN_OR_EQUAL:
+                    return maxComparison >= 0;
+                case LESS_THAN:
+                    return minComparison < 0;
+                default:
+                    return minComparison <= 0;
+            }
+        } catch ( ClassCastException e ) {
+            return true;
+        }
+    }
+
+
+    /**
+     * Derives the range of values a column can have in the rows matching the condition. It is used to scan an index
+     * instead of all rows, the rows returned by the index still have to be checked with {@link #matches}.
+     *
+     * @param column Reference of the column
+     * @return {@code Null} if the condition does not restrict the values of the column
+     */
+    @Nullable
+    public KeyRange getKeyRange( final int column, final PolyType polyType, final DataContext dataContext ) {
+        if ( columnReference == null ) {
+            if ( operator != SqlKind.AND ) {
+                return null;
+            }
+            KeyRange range = null;
+            for ( Condition c : operands ) {
+                KeyRange operandRange = c.getKeyRange( column, polyType, dataContext );
+                if ( operandRange != null ) {
+                    range = range == null ? operandRange : range.intersect( operandRange );
                 }
-                return false;
+            }
+            return range;
+        }
+        if ( columnReference != column ) {
+            return null;
+        }
+        Object parameterValue;
+        switch ( operator ) {
             case EQUALS:
-                return comparison == 0;
-            case NOT_EQUALS:
-                return comparison != 0;
             case GREATER_THAN:
-                return comparison > 0;
             case GREATER_THAN_OR_EQUAL:
-                return comparison >= 0;
             case LESS_THAN:
-                return comparison < 0;
             case LESS_THAN_OR_EQUAL:
-                return comparison <= 0;
-            case LIKE:
-                //todo maybe replace '%' by '(.*)' etc.
-                Pattern pattern = Pattern.compile( parameterValue.toString() );
-                Matcher matcher = pattern.matcher( columnValue.toString() );
-                return matcher.matches();
+                parameterValue = getParamValue( dataContext, polyType );
+                break;
             default:
-                throw new RuntimeException( operator + " comparison not supported by file adapter." );
+                return null;
+        }
+        if ( !(parameterValue instanceof Comparable) ) {
+            return null;
+        }
+        switch ( operator ) {
+            case EQUALS:
+                return new KeyRange( parameterValue, true, parameterValue, true, polyType );
+            case GREATER_THAN:
+                return new KeyRange( parameterValue, false, null, false, polyType );
+            case GREATER_THAN_OR_EQUAL:
+                return new KeyRange( parameterValue, true, null, false, polyType );
+            case LESS_THAN:
+                return new KeyRange( null, false, parameterValue, false, polyType );
+            default:
+                return new KeyRange( null, false, parameterValue, true, polyType );
+        }
+    }
+
+
+    /**
+     * Adds the indexes of all columns referenced by the condition to the set
+     */
+    public void collectColumnReferences( final Set<Integer> columnReferences ) {
+        if ( columnReference != null ) {
+            columnReferences.add( columnReference );
+        }
+        for ( Condition operand : operands ) {
+            operand.collectColumnReferences( columnReferences );
         }
     }
 
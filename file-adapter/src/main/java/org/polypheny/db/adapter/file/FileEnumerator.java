@@ -27,6 +27,7 @@
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +37,9 @@
 import org.apache.commons.io.FileUtils;
 import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.adapter.file.FileRel.FileImplementor.Operation;
+import org.polypheny.db.adapter.file.index.FileIndex;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.transaction.PolyXid;
 import org.polypheny.db.transaction.Transaction.MultimediaFlavor;
 import org.polypheny.db.type.PolyType;
 import org.polypheny.db.type.PolyTypeFamily;
@@ -62,6 +66,13 @@ public class FileEnumerator implements Enumerator<Object> {
     final Map<Integer, Value> updates = new HashMap<>();
     final Integer[] pkMapping;
     final File hardlinkFolder;
+    final String rootPath;
+    final Long[] columnIds;
+    final PolyXid xid;
+    final List<FileIndex> indexes;
+    final boolean indexScan; // Whether the fileList has been determined with an index
+    final boolean parallel; // Whether a SELECT is executed by a parallel scan
+    ParallelScan parallelScan;
 
 
     /**
@@ -76,6 +87,7 @@ public class FileEnumerator implements Enumerator<Object> {
      * In case of an UPDATE operation, the projectionMapping represents the indexes of the columns that will be updated, e.g. [2,3] means that b and c will be updated.
      * @param dataContext DataContext
      * @param condition Condition that can be {@code null}. The columnReferences in the filter point to the columns coming from the tableScan, not from the projection
+     * @param indexes Indexes of the table, they are used to find the rows matching the condition and are updated by modifications
      */
     public FileEnumerator( final Operation operation,
             final String rootPath,
@@ -85,9 +97,14 @@ public FileEnumerator( final Operation operation,
             final Integer[] projectionMapping,
             final DataContext dataContext,
             final Condition condition,
-            final Value[] updates ) {
+            final Value[] updates,
+            final List<FileIndex> indexes ) {
 
         this.operation = operation;
+        this.rootPath = rootPath;
+        this.columnIds = columnIds;
+        this.indexes = indexes;
+        this.xid = dataContext.getStatement().getTransaction().getXid();
         if ( operation == Operation.DELETE || operation == Operation.UPDATE ) {
             //fix to make sure current is never null
             current = Long.valueOf( 0L );
@@ -138,7 +155,11 @@ public FileEnumerator( final Operation operation,
             File columnFolder = FileStore.getColumnFolder( rootPath, colId );
             columnFolders.add( columnFolder );
         }
-        if ( columnsToIterate.length == 1 ) {
+        File[] indexedFiles = condition == null ? null : scanIndex( xidHash, pkIds, columnTypes );
+        this.indexScan = indexedFiles != null;
+        if ( indexScan ) {
+            this.fileList = indexedFiles;
+        } else if ( columnsToIterate.length == 1 ) {
             // If we go over a single column, we can iterate it, even if null values are not present as files
             this.fileList = FileStore.getColumnFolder( rootPath, columnsToIterate[0] ).listFiles( fileFilter );
         } else {
@@ -154,6 +175,90 @@ public FileEnumerator( final Operation operation,
                 throw new RuntimeException( "Could not create hardlink directory " + hardlinkFolder.getAbsolutePath() );
             }
         }
+        this.parallel = operation == Operation.SELECT && ParallelScan.isApplicable( this );
+    }
+
+
+    /**
+     * Determines the files of the rows that can match the condition with the most selective index.
+     *
+     * @return {@code Null} if there is no index the condition can be answered with
+     */
+    @Nullable
+    private File[] scanIndex( final String xidHash, final List<Long> pkIds, final PolyType[] allColumnTypes ) {
+        List<Long> columns = Arrays.asList( columnIds );
+        FileIndex bestIndex = null;
+        List<KeyRange> bestRanges = null;
+        int bestScore = 0;
+        for ( FileIndex index : indexes ) {
+            List<KeyRange> ranges = new ArrayList<>();
+            int score = 0;
+            for ( Long columnId : index.getColumnIds() ) {
+                int position = columns.indexOf( columnId );
+                KeyRange range = position < 0 ? null : condition.getKeyRange( position, allColumnTypes[position], dataContext );
+                if ( range == null ) {
+                    break;
+                }
+                ranges.add( range );
+                score += range.isPoint() ? 2 : 1;
+                if ( !range.isPoint() ) {
+                    break;
+                }
+            }
+            if ( index.isUnique() && score == 2 * index.getColumnIds().size() ) {
+                // Lookup of a single row
+                score = Integer.MAX_VALUE;
+            }
+            if ( score > bestScore ) {
+                bestIndex = index;
+                bestRanges = ranges;
+                bestScore = score;
+            }
+        }
+        if ( bestIndex == null ) {
+            return null;
+        }
+        Set<String> fileNames;
+        try {
+            fileNames = bestIndex.lookup( xid, bestRanges );
+        } catch ( ClassCastException | NumberFormatException e ) {
+            log.debug( "Could not compare the condition with the index {}, scanning all files", bestIndex.getFolder().getName(), e );
+            return null;
+        }
+        // The files of a row inserted by this transaction are not yet committed
+        File pkFolder = FileStore.getColumnFolder( rootPath, pkIds.get( 0 ) );
+        Map<String, File> files = new LinkedHashMap<>();
+        for ( String fileName : fileNames ) {
+            File committed = new File( pkFolder, fileName );
+            File inserted = new File( pkFolder, "_ins_" + xidHash + "_" + fileName );
+            if ( committed.exists() ) {
+                files.put( fileName, committed );
+            } else if ( inserted.exists() ) {
+                files.put( fileName, inserted );
+            }
+        }
+        return files.values().toArray( new File[0] );
+    }
+
+
+    /**
+     * Reads the values of the indexed columns of a row from the column files.
+     */
+    String[] readKey( final FileIndex index, final String fileName ) throws IOException {
+        String[] key = new String[index.getColumnIds().size()];
+        for ( int i = 0; i < key.length; i++ ) {
+            File file = new File( FileStore.getColumnFolder( rootPath, index.getColumnIds().get( i ) ), fileName );
+            key[i] = file.exists() ? new String( Files.readAllBytes( file.toPath() ), FileStore.CHARSET ) : null;
+        }
+        return key;
+    }
+
+
+    /**
+     * @return the name of the files of a row once they are committed
+     */
+    static String getCommittedName( final String fileName ) {
+        return fileName.startsWith( "_ins_" ) ? fileName.substring( 70 ) : fileName;
     }
 
 
@@ -165,6 +270,16 @@ public Object current() {
 
     @Override
     public boolean moveNext() {
+        if ( parallel ) {
+            if ( parallelScan == null ) {
+                parallelScan = new ParallelScan( this, RuntimeConfig.FILE_SCAN_PARALLELISM.getInteger() );
+            }
+            if ( parallelScan.moveNext() ) {
+                current = parallelScan.current();
+                return true;
+            }
+            return false;
+        }
         //todo make sure that all requirements of the interface are satisfied
         try {
             outer:
@@ -198,7 +313,8 @@ else if ( fileListPosition < 0 ) {
                 Object curr;
 
                 if ( condition != null ) {
-                    Object pkLookup = condition.getPKLookup( new HashSet<>( Arrays.asList( pkMapping ) ), columnTypes, numOfCols, dataContext );
+                    // The index scan already restricted the files, otherwise a PK lookup might be possible
+                    Object pkLookup = indexScan ? null : condition.getPKLookup( new HashSet<>( Arrays.asList( pkMapping ) ), columnTypes, numOfCols, dataContext );
                     if ( pkLookup != null ) {
                         int hash = hashRow( pkLookup );
                         File lookupFile = new File( FileStore.SHA.hashString( String.valueOf( hash ), FileStore.CHARSET ).toString() );
@@ -264,6 +380,9 @@ else if ( fileListPosition < 0 ) {
                     fileListPosition++;
                     return true;
                 } else if ( operation == Operation.DELETE ) {
+                    for ( FileIndex index : indexes ) {
+                        index.delete( xid, readKey( index, currentFile.getName() ), getCommittedName( currentFile.getName() ) );
+                    }
                     for ( File colFolder : columnFolders ) {
                         File source = new File( colFolder, currentFile.getName() );
                         File target = new File( colFolder, getNewFileName( Operation.DELETE, currentFile.getName() ) );
@@ -289,6 +408,9 @@ else if ( fileListPosition < 0 ) {
                     }
                     int newHash = hashRow( updateObj );
                     String oldFileName = FileStore.SHA.hashString( String.valueOf( hashRow( curr ) ), FileStore.CHARSET ).toString();
+                    for ( FileIndex index : indexes ) {
+                        index.delete( xid, readKey( index, currentFile.getName() ), oldFileName );
+                    }
 
                     int j = 0;
                     for ( File colFolder : columnFolders ) {
@@ -325,6 +447,10 @@ else if ( fileListPosition < 0 ) {
                         }
                         j++;
                     }
+                    String newFileName = FileStore.SHA.hashString( String.valueOf( newHash ), FileStore.CHARSET ).toString();
+                    for ( FileIndex index : indexes ) {
+                        index.insert( xid, readKey( index, getNewFileName( Operation.INSERT, String.valueOf( newHash ) ) ), newFileName );
+                    }
 
                     updateDeleteCount++;
                     current = Long.valueOf( updateDeleteCount );
@@ -349,53 +475,50 @@ else if ( fileListPosition < 0 ) {
     @Nullable
     private Object fileToRow( final File currentFile ) throws IOException {
         Object[] curr = new Object[numOfCols];
-        int i = 0;
         boolean allNull = true;
-        for ( File colFolder : columnFolders ) {
-            File f = new File( colFolder, currentFile.getName() );
-            String s = null;
-            byte[] encoded = null;
-            Byte[] encoded2 = null;
-            if ( f.exists() ) {
-                if ( columnTypes[i].getFamily() == PolyTypeFamily.MULTIMEDIA ) {
-                    if ( dataContext.getStatement().getTransaction().getFlavor() == MultimediaFlavor.DEFAULT ) {
-                        encoded = Files.readAllBytes( f.toPath() );
-                    }
-                } else {
-                    s = new String( Files.readAllBytes( f.toPath() ), FileStore.CHARSET );
-                    if ( s.equals( "" ) ) {
-                        curr[i] = null;
-                        i++;
-                        continue;
-                    }
-                }
-            } else {
-                curr[i] = null;
-                i++;
-                continue;
-            }
-            allNull = false;
-            if ( columnTypes[i].getFamily() == PolyTypeFamily.MULTIMEDIA ) {
-                if ( dataContext.getStatement().getTransaction().getFlavor() == MultimediaFlavor.DEFAULT ) {
-                    curr[i] = encoded;
-                } else {
-                    File hardLink = new File( hardlinkFolder, colFolder.getName() + "_" + f.getName() );
-                    if ( !hardLink.exists() ) {
-                        Files.createLink( hardLink.toPath(), f.toPath() );
-                    }
-                    //curr[i] = f;
-                    curr[i] = hardLink;
-                }
-            } else {
-                curr[i] = PolyTypeUtil.stringToObject( s, columnTypes[i] );
+        for ( int i = 0; i < numOfCols; i++ ) {
+            curr[i] = readValue( i, currentFile.getName() );
+            if ( curr[i] != null ) {
+                allNull = false;
             }
-            i++;
         }
         return allNull ? null : curr;
     }
 
 
-    private Object project( final Object o1 ) {
+    /**
+     * Reads a single value of a row
+     *
+     * @param column Index of the column in the {@code columnFolders}
+     * @param fileName Name of the files of the row
+     * @return Null if the file does not exist or is empty, otherwise the value
+     */
+    @Nullable
+    Object readValue( final int column, final String fileName ) throws IOException {
+        File colFolder = columnFolders.get( column );
+        File f = new File( colFolder, fileName );
+        if ( !f.exists() ) {
+            return null;
+        }
+        if ( columnTypes[column].getFamily() == PolyTypeFamily.MULTIMEDIA ) {
+            if ( dataContext.getStatement().getTransaction().getFlavor() == MultimediaFlavor.DEFAULT ) {
+                return Files.readAllBytes( f.toPath() );
+            }
+            File hardLink = new File( hardlinkFolder, colFolder.getName() + "_" + f.getName() );
+            if ( !hardLink.exists() ) {
+                Files.createLink( hardLink.toPath(), f.toPath() );
+            }
+            return hardLink;
+        }
+        String s = new String( Files.readAllBytes( f.toPath() ), FileStore.CHARSET );
+        if ( s.equals( "" ) ) {
+            return null;
+        }
+        return PolyTypeUtil.stringToObject( s, columnTypes[column] );
+    }
+
+
+    Object project( final Object o1 ) {
         Object[] o = (Object[]) o1;
         assert (projectionMapping != null);
         Object[] out = new Object[projectionMapping.length];
@@ -409,12 +532,16 @@ private Object project( final Object o1 ) {
     @Override
     public void reset() {
         fileListPosition = 0;
+        close();
     }
 
 
     @Override
     public void close() {
-
+        if ( parallelScan != null ) {
+            parallelScan.close();
+            parallelScan = null;
+        }
     }
 
 
@@ -47,6 +47,17 @@ static boolean isSqlDateOrTimeOrTS( final Object o ) {
     }
 
 
+    /**
+     * @return the content of the file storing a value which is neither a multimedia object nor null
+     */
+    static String toFileString( final Object o ) {
+        if ( isSqlDateOrTimeOrTS( o ) ) {
+            return sqlToLong( o ).toString();
+        }
+        return o.toString();
+    }
+
+
     static Long sqlToLong( final Object o ) {
         if ( o instanceof Time ) {
             return sqlToLong( (Time) o );
@@ -22,10 +22,12 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.io.IOUtils;
 import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.adapter.file.FileRel.FileImplementor.Operation;
+import org.polypheny.db.adapter.file.index.FileIndex;
 import org.polypheny.db.type.PolyType;
 import org.polypheny.db.util.FileInputHandle;
 
@@ -43,8 +45,9 @@ public FileModifier( final Operation operation,
             final List<Long> pkIds,
             final DataContext dataContext,
             final Object[] insertValues,
-            final Condition condition ) {
-        super( operation, rootPath, columnIds, columnTypes, pkIds, null, dataContext, condition, null );
+            final Condition condition,
+            final List<FileIndex> indexes ) {
+        super( operation, rootPath, columnIds, columnTypes, pkIds, null, dataContext, condition, null, indexes );
         this.insertValues = insertValues;
     }
 
@@ -74,6 +77,13 @@ public boolean moveNext() {
                 for ( insertPosition = 0; insertPosition < insertValues.length; insertPosition++ ) {
                     Object[] currentRow = (Object[]) insertValues[insertPosition];
                     int hash = hashRow( currentRow );
+                    String[][] keys = new String[indexes.size()][];
+                    for ( int k = 0; k < keys.length; k++ ) {
+                        keys[k] = getKey( indexes.get( k ), currentRow );
+                        if ( indexes.get( k ).isUnique() && indexes.get( k ).contains( xid, keys[k] ) ) {
+                            throw new RuntimeException( "Unique constraint violation! You are trying to insert a row with a key that already exists." );
+                        }
+                    }
                     for ( int i = 0; i < currentRow.length; i++ ) {
                         Object value = currentRow[i];
                         if ( value == null ) {
@@ -100,15 +110,15 @@ public boolean moveNext() {
                             try ( InputStream is = (InputStream) value; FileOutputStream os = new FileOutputStream( newFile ) ) {
                                 IOUtils.copyLarge( is, os );
                             }
-                        } else if ( FileHelper.isSqlDateOrTimeOrTS( value ) ) {
-                            Long l = FileHelper.sqlToLong( value );
-                            Files.write( newFile.toPath(), l.toString().getBytes( FileStore.CHARSET ) );
                         } else {
-                            String writeString = value.toString();
-                            Files.write( newFile.toPath(), writeString.getBytes( FileStore.CHARSET ) );
+                            Files.write( newFile.toPath(), FileHelper.toFileString( value ).getBytes( FileStore.CHARSET ) );
                         }
 
                     }
+                    String fileName = FileStore.SHA.hashString( String.valueOf( hash ), FileStore.CHARSET ).toString();
+                    for ( int k = 0; k < keys.length; k++ ) {
+                        indexes.get( k ).insert( xid, keys[k], fileName );
+                    }
                 }
                 current = Long.valueOf( insertPosition );
                 inserted = true;
@@ -120,6 +130,16 @@ public boolean moveNext() {
     }
 
 
+    private String[] getKey( final FileIndex index, final Object[] row ) {
+        String[] key = new String[index.getColumnIds().size()];
+        for ( int i = 0; i < key.length; i++ ) {
+            Object value = row[Arrays.asList( columnIds ).indexOf( index.getColumnIds().get( i ) )];
+            key[i] = value == null ? null : FileHelper.toFileString( value );
+        }
+        return key;
+    }
+
+
     @Override
     public void reset() {
         //insertPosition = 0;
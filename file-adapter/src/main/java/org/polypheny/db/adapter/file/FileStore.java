@@ -15,8 +15,12 @@
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.DecoderException;
@@ -24,8 +28,11 @@
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.SystemUtils;
 import org.polypheny.db.adapter.Adapter.AdapterProperties;
+import org.polypheny.db.adapter.Adapter.AdapterSettingList;
 import org.polypheny.db.adapter.DataStore;
 import org.polypheny.db.adapter.DeployMode;
+import org.polypheny.db.adapter.file.index.FileIndex;
+import org.polypheny.db.adapter.file.segment.SegmentTable;
 import org.polypheny.db.catalog.Catalog;
 import org.polypheny.db.catalog.entity.CatalogColumn;
 import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
@@ -42,6 +49,7 @@
 import org.polypheny.db.schema.Table;
 import org.polypheny.db.transaction.PolyXid;
 import org.polypheny.db.type.PolyType;
+import org.polypheny.db.type.PolyTypeFamily;
 import org.polypheny.db.util.FileSystemManager;
 
 
@@ -50,6 +58,8 @@
         name = "File",
         description = "An adapter that stores all data as files. It is especially suitable for multimedia collections.",
         usedModes = DeployMode.EMBEDDED)
+@AdapterSettingList(name = "layout", options = { "Files", "Segments" }, required = false, position = 1,
+        description = "Files stores every value in a separate file. Segments stores the values of a table in columnar segment files, which is faster for scans and bulk inserts.")
 public class FileStore extends DataStore {
 
     // Standards
@@ -68,6 +78,11 @@ public class FileStore extends DataStore {
 
     private final File WAL; // A folder containing the write ahead log
 
+    @Getter
+    private final boolean segmentLayout;
+    private final Map<Long, SegmentTable> segmentTables = new ConcurrentHashMap<>();
+    private final Map<String, FileIndex> indexes = new ConcurrentHashMap<>(); // By the name of the index folder
+
 
     public FileStore( final int storeId, final String uniqueName, final Map<String, String> settings ) {
         super( storeId, uniqueName, settings, true );
@@ -88,7 +103,31 @@ public FileStore( final int storeId, final String uniqueName, final Map<String,
             }
         }
 
+        segmentLayout = "Segments".equals( settings.get( "layout" ) );
+        if ( segmentLayout ) {
+            File[] tableFolders = rootDir.listFiles( f -> f.isDirectory() && f.getName().startsWith( "tab" ) );
+            if ( tableFolders != null ) {
+                for ( File tableFolder : tableFolders ) {
+                    long tableId = Long.parseLong( tableFolder.getName().substring( 3 ) );
+                    segmentTables.put( tableId, SegmentTable.open( tableId, tableFolder ) );
+                }
+            }
+        }
+
+        File[] indexFolders = rootDir.listFiles( f -> f.isDirectory() && (f.getName().startsWith( "pk" ) || f.getName().startsWith( "idx" )) );
+        if ( indexFolders != null ) {
+            for ( File indexFolder : indexFolders ) {
+                FileIndex index = FileIndex.open( indexFolder );
+                if ( index != null ) {
+                    indexes.put( indexFolder.getName(), index );
+                }
+            }
+        }
+
         trxRecovery();
+        // Remove the changes of transactions which did not reach the WAL
+        segmentTables.values().forEach( SegmentTable::recover );
+        indexes.values().forEach( FileIndex::recover );
         setInformationPage();
     }
 
@@ -157,12 +196,20 @@ public void createTable( Context context, CatalogTable catalogTable ) {
                     getPhysicalColumnName( placement.columnId ),
                     true );
         }
+        if ( segmentLayout ) {
+            getSegmentTable( catalogTable.id );
+            return;
+        }
         for ( Long colId : catalogTable.columnIds ) {
             File newColumnFolder = getColumnFolder( colId );
             if ( !newColumnFolder.mkdir() ) {
                 throw new RuntimeException( "Could not create column folder " + newColumnFolder.getAbsolutePath() );
             }
         }
+        if ( catalogTable.primaryKey != null ) {
+            List<Long> pkIds = catalog.getPrimaryKey( catalogTable.primaryKey ).columnIds;
+            createIndex( getPrimaryKeyIndexName( catalogTable.id ), catalogTable.id, pkIds, true );
+        }
     }
 
 
@@ -170,6 +217,15 @@ public void createTable( Context context, CatalogTable catalogTable ) {
     public void dropTable( Context context, CatalogTable catalogTable ) {
         context.getStatement().getTransaction().registerInvolvedAdapter( this );
         //todo check if it is on this store?
+        for ( FileIndex index : getIndexes( catalogTable.id ) ) {
+            index.drop();
+            indexes.remove( index.getFolder().getName() );
+        }
+        if ( segmentLayout ) {
+            getSegmentTable( catalogTable.id ).drop();
+            segmentTables.remove( catalogTable.id );
+            return;
+        }
         for ( Long colId : catalogTable.columnIds ) {
             File f = getColumnFolder( colId );
             try {
@@ -184,9 +240,12 @@ public void dropTable( Context context, CatalogTable catalogTable ) {
     @Override
     public void addColumn( Context context, CatalogTable catalogTable, CatalogColumn catalogColumn ) {
         context.getStatement().getTransaction().registerInvolvedAdapter( this );
-        File newColumnFolder = getColumnFolder( catalogColumn.id );
-        if ( !newColumnFolder.mkdir() ) {
-            throw new RuntimeException( "Could not create column folder " + newColumnFolder.getName() );
+        // Segments written before the column was added do not contain it, its values are null
+        if ( !segmentLayout ) {
+            File newColumnFolder = getColumnFolder( catalogColumn.id );
+            if ( !newColumnFolder.mkdir() ) {
+                throw new RuntimeException( "Could not create column folder " + newColumnFolder.getName() );
+            }
         }
         catalog.updateColumnPlacementPhysicalNames(
                 getAdapterId(),
@@ -201,6 +260,10 @@ public void addColumn( Context context, CatalogTable catalogTable, CatalogColumn
     @Override
     public void dropColumn( Context context, CatalogColumnPlacement columnPlacement ) {
         context.getStatement().getTransaction().registerInvolvedAdapter( this );
+        if ( segmentLayout ) {
+            getSegmentTable( columnPlacement.tableId ).dropColumn( columnPlacement.columnId );
+            return;
+        }
         File columnFile = getColumnFolder( columnPlacement.columnId );
         try {
             FileUtils.deleteDirectory( columnFile );
@@ -212,13 +275,67 @@ public void dropColumn( Context context, CatalogColumnPlacement columnPlacement
 
     @Override
     public void addIndex( Context context, CatalogIndex catalogIndex ) {
-        throw new RuntimeException( "File adapter does not support adding indexes" );
+        if ( segmentLayout ) {
+            throw new RuntimeException( "File adapter does not support adding indexes to tables with the segment layout" );
+        }
+        context.getStatement().getTransaction().registerInvolvedAdapter( this );
+        String physicalIndexName = getPhysicalIndexName( catalogIndex.id );
+        FileIndex index = createIndex( physicalIndexName, catalogIndex.key.tableId, catalogIndex.key.columnIds, catalogIndex.unique );
+
+        // Index the committed rows
+        List<Long> pkIds = catalog.getPrimaryKey( catalog.getTable( catalogIndex.key.tableId ).primaryKey ).columnIds;
+        File[] rows = getColumnFolder( pkIds.get( 0 ) ).listFiles( f -> !f.isHidden() && !f.getName().startsWith( "_" ) && !f.getName().startsWith( "~$" ) );
+        List<String[]> keys = new ArrayList<>();
+        List<String> fileNames = new ArrayList<>();
+        try {
+            for ( File row : rows == null ? new File[0] : rows ) {
+                String[] key = new String[catalogIndex.key.columnIds.size()];
+                for ( int i = 0; i < key.length; i++ ) {
+                    File file = new File( getColumnFolder( catalogIndex.key.columnIds.get( i ) ), row.getName() );
+                    key[i] = file.exists() ? new String( Files.readAllBytes( file.toPath() ), CHARSET ) : null;
+                }
+                keys.add( key );
+                fileNames.add( row.getName() );
+            }
+        } catch ( IOException e ) {
+            index.drop();
+            indexes.remove( physicalIndexName );
+            throw new RuntimeException( "Could not build index " + catalogIndex.name, e );
+        }
+        index.build( keys, fileNames );
+        catalog.setIndexPhysicalName( catalogIndex.id, physicalIndexName );
+    }
+
+
+    private FileIndex createIndex( final String name, final long tableId, final List<Long> columnIds, final boolean unique ) {
+        List<PolyType> columnTypes = new ArrayList<>();
+        for ( long columnId : columnIds ) {
+            CatalogColumn column = catalog.getColumn( columnId );
+            if ( column.type.getFamily() == PolyTypeFamily.MULTIMEDIA ) {
+                throw new RuntimeException( "File adapter does not support indexes on multimedia columns" );
+            }
+            columnTypes.add( column.collectionsType != null ? PolyType.ARRAY : column.type );
+        }
+        FileIndex index = FileIndex.create( new File( rootDir, name ), tableId, columnIds, columnTypes, unique );
+        indexes.put( name, index );
+        return index;
     }
 
 
     @Override
     public void dropIndex( Context context, CatalogIndex catalogIndex ) {
-        throw new RuntimeException( "File adapter does not support dropping indexes" );
+        FileIndex index = indexes.remove( getPhysicalIndexName( catalogIndex.id ) );
+        if ( index != null ) {
+            index.drop();
+        }
+    }
+
+
+    /**
+     * @return the indexes of a table, including the index on the primary key
+     */
+    public List<FileIndex> getIndexes( final long tableId ) {
+        return indexes.values().stream().filter( index -> index.getTableId() == tableId ).collect( Collectors.toList() );
     }
 
 
@@ -230,12 +347,36 @@ public boolean prepare( PolyXid xid ) {
 
     @Override
     public void commit( PolyXid xid ) {
+        flush( xid );
         addWAL( xid, "commit" );
         commitOrRollback( xid, true );
         removeWAL( xid );
     }
 
 
+    @Override
+    public boolean supportsGroupCommit() {
+        return true;
+    }
+
+
+    /**
+     * Commits a group of transactions with a single pass over the column folders.
+     */
+    @Override
+    public void commit( List<PolyXid> xids, Consumer<PolyXid> committed ) {
+        for ( PolyXid xid : xids ) {
+            flush( xid );
+            addWAL( xid, "commit" );
+        }
+        commitOrRollback( xids, true );
+        for ( PolyXid xid : xids ) {
+            removeWAL( xid );
+            committed.accept( xid );
+        }
+    }
+
+
     @Override
     public void rollback( PolyXid xid ) {
         addWAL( xid, "rollback" );
@@ -244,6 +385,20 @@ public void rollback( PolyXid xid ) {
     }
 
 
+    /**
+     * Writes the changes of the transaction to the segment tables and indexes, so that the commit can be completed
+     * after a crash once it has been recorded in the WAL.
+     */
+    private void flush( final PolyXid xid ) {
+        for ( SegmentTable table : segmentTables.values() ) {
+            table.flush( xid );
+        }
+        for ( FileIndex index : indexes.values() ) {
+            index.flush( xid );
+        }
+    }
+
+
     void addWAL( final PolyXid key, final String value ) {
         String fileName = SHA.hashString( key.toString(), CHARSET ).toString();
         File wal = new File( WAL, fileName );
@@ -303,24 +458,51 @@ void trxRecovery() {
 
 
     public void commitOrRollback( final PolyXid xid, final boolean commit ) {
-        String xidHash = SHA.hashString( xid.toString(), CHARSET ).toString();
-        final String deletePrefix;
-        final String movePrefix;
-        if ( commit ) {
-            deletePrefix = "_del_" + xidHash;
-            movePrefix = "_ins_" + xidHash;
-        } else {
-            deletePrefix = "_ins_" + xidHash;
-            movePrefix = "_del_" + xidHash;
+        commitOrRollback( Collections.singletonList( xid ), commit );
+    }
+
+
+    private void commitOrRollback( final List<PolyXid> xids, final boolean commit ) {
+        if ( segmentLayout ) {
+            for ( SegmentTable table : segmentTables.values() ) {
+                if ( commit ) {
+                    table.commit( xids );
+                } else {
+                    xids.forEach( table::rollback );
+                }
+            }
+            for ( PolyXid xid : xids ) {
+                cleanupHardlinks( xid );
+            }
+            return;
+        }
+        for ( FileIndex index : indexes.values() ) {
+            if ( commit ) {
+                index.commit( xids );
+            } else {
+                xids.forEach( index::rollback );
+            }
+        }
+        final List<String> deletePrefixes = new ArrayList<>( xids.size() );
+        final List<String> movePrefixes = new ArrayList<>( xids.size() );
+        for ( PolyXid xid : xids ) {
+            String xidHash = SHA.hashString( xid.toString(), CHARSET ).toString();
+            if ( commit ) {
+                deletePrefixes.add( "_del_" + xidHash );
+                movePrefixes.add( "_ins_" + xidHash );
+            } else {
+                deletePrefixes.add( "_ins_" + xidHash );
+                movePrefixes.add( "_del_" + xidHash );
+            }
         }
         if ( rootDir.listFiles() != null ) {
             for ( File columnFolder : rootDir.listFiles( f -> f.isDirectory() ) ) {
-                for ( File data : columnFolder.listFiles( f -> !f.isHidden() && f.getName().startsWith( deletePrefix ) ) ) {
+                for ( File data : columnFolder.listFiles( f -> !f.isHidden() && startsWithAny( f.getName(), deletePrefixes ) ) ) {
                     data.delete();
                 }
                 File data = null;
                 File target = null;
-                File[] fileList = columnFolder.listFiles( f -> !f.isHidden() && f.getName().startsWith( movePrefix ) );
+                File[] fileList = columnFolder.listFiles( f -> !f.isHidden() && startsWithAny( f.getName(), movePrefixes ) );
                 if ( fileList == null ) {
                     return;
                 }
@@ -345,7 +527,19 @@ public void commitOrRollback( final PolyXid xid, final boolean commit ) {
                 }
             }
         }
-        cleanupHardlinks( xid );
+        for ( PolyXid xid : xids ) {
+            cleanupHardlinks( xid );
+        }
+    }
+
+
+    private static boolean startsWithAny( String name, List<String> prefixes ) {
+        for ( String prefix : prefixes ) {
+            if ( name.startsWith( prefix ) ) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -364,6 +558,13 @@ private void cleanupHardlinks( final PolyXid xid ) {
     @Override
     public void truncate( Context context, CatalogTable table ) {
         //context.getStatement().getTransaction().registerInvolvedStore( this );
+        if ( segmentLayout ) {
+            getSegmentTable( table.id ).truncate();
+            return;
+        }
+        for ( FileIndex index : getIndexes( table.id ) ) {
+            index.truncate();
+        }
         FileTranslatableTable fileTable = (FileTranslatableTable) currentSchema.getTable( table.name );
         try {
             for ( String colName : fileTable.getColumnNames() ) {
@@ -385,13 +586,19 @@ public void updateColumnType( Context context, CatalogColumnPlacement placement,
 
     @Override
     public List<AvailableIndexMethod> getAvailableIndexMethods() {
-        return new ArrayList<>();
+        if ( segmentLayout ) {
+            return new ArrayList<>();
+        }
+        return ImmutableList.of( new AvailableIndexMethod( "sorted", "Sorted Runs" ) );
     }
 
 
     @Override
     public AvailableIndexMethod getDefaultIndexMethod() {
-        throw new RuntimeException( "File adapter does not support adding indexes" );
+        if ( segmentLayout ) {
+            throw new RuntimeException( "File adapter does not support adding indexes to tables with the segment layout" );
+        }
+        return getAvailableIndexMethods().get( 0 );
     }
 
 
@@ -407,6 +614,9 @@ public List<FunctionalIndexInfo> getFunctionalIndexes( CatalogTable catalogTable
     public void shutdown() {
         log.info( "shutting down file store '{}'", getUniqueName() );
         removeInformationPage();
+        // Releases the mappings of the segment files
+        segmentTables.values().forEach( SegmentTable::drop );
+        segmentTables.clear();
         try {
             FileHelper.deleteDirRecursively( rootDir );
         } catch ( IOException e ) {
@@ -421,11 +631,29 @@ protected void reloadSettings( List<String> updatedSettings ) {
     }
 
 
+    /**
+     * @return the segment table storing the data of a table, only available with the segment layout
+     */
+    public SegmentTable getSegmentTable( final long tableId ) {
+        return segmentTables.computeIfAbsent( tableId, id -> SegmentTable.open( id, new File( rootDir, getPhysicalTableName( id ) ) ) );
+    }
+
+
     protected static String getPhysicalTableName( long tableId ) {
         return "tab" + tableId;
     }
 
 
+    protected static String getPhysicalIndexName( long indexId ) {
+        return "idx" + indexId;
+    }
+
+
+    protected static String getPrimaryKeyIndexName( long tableId ) {
+        return "pk" + tableId;
+    }
+
+
     protected static String getPhysicalColumnName( long columnId ) {
         return "col" + columnId;
     }
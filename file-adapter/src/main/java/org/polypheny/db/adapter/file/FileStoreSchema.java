@@ -31,6 +31,10 @@
 import org.polypheny.db.adapter.AdapterManager;
 import org.polypheny.db.adapter.DataContext;
 import org.polypheny.db.adapter.file.FileRel.FileImplementor.Operation;
+import org.polypheny.db.adapter.file.index.FileIndex;
+import org.polypheny.db.adapter.file.segment.SegmentEnumerator;
+import org.polypheny.db.adapter.file.segment.SegmentModifier;
+import org.polypheny.db.adapter.file.segment.SegmentTable;
 import org.polypheny.db.catalog.Catalog;
 import org.polypheny.db.catalog.entity.CatalogColumn;
 import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
@@ -135,11 +139,23 @@ public Table createFileTable( CatalogTable catalogTable, List<CatalogColumnPlace
      * see {@link FileMethod#EXECUTE} and {@link org.polypheny.db.adapter.file.rel.FileToEnumerableConverter#implement}
      */
     public static Enumerable<Object> execute( final Operation operation, final Integer adapterId, final DataContext dataContext, final String path, final Long[] columnIds, final PolyType[] columnTypes, final List<Long> pkIds, final Integer[] projectionMapping, final Condition condition, final Value[] updates ) {
-        dataContext.getStatement().getTransaction().registerInvolvedAdapter( AdapterManager.getInstance().getAdapter( adapterId ) );
+        FileStore store = (FileStore) AdapterManager.getInstance().getAdapter( adapterId );
+        dataContext.getStatement().getTransaction().registerInvolvedAdapter( store );
+        final long tableId = Catalog.getInstance().getColumn( columnIds[0] ).tableId;
+        if ( store.isSegmentLayout() ) {
+            SegmentTable table = store.getSegmentTable( tableId );
+            return new AbstractEnumerable<Object>() {
+                @Override
+                public Enumerator<Object> enumerator() {
+                    return new SegmentEnumerator( operation, table, path, columnIds, columnTypes, pkIds, projectionMapping, dataContext, condition, updates );
+                }
+            };
+        }
+        final List<FileIndex> indexes = store.getIndexes( tableId );
         return new AbstractEnumerable<Object>() {
             @Override
             public Enumerator<Object> enumerator() {
-                return new FileEnumerator( operation, path, columnIds, columnTypes, pkIds, projectionMapping, dataContext, condition, updates );
+                return new FileEnumerator( operation, path, columnIds, columnTypes, pkIds, projectionMapping, dataContext, condition, updates, indexes );
             }
         };
     }
@@ -151,7 +167,8 @@ public Enumerator<Object> enumerator() {
      * see {@link FileMethod#EXECUTE_MODIFY} and {@link org.polypheny.db.adapter.file.rel.FileToEnumerableConverter#implement}
      */
     public static Enumerable<Object> executeModify( final Operation operation, final Integer adapterId, final DataContext dataContext, final String path, final Long[] columnIds, final PolyType[] columnTypes, final List<Long> pkIds, final Boolean isBatch, final Object[] insertValues, final Condition condition ) {
-        dataContext.getStatement().getTransaction().registerInvolvedAdapter( AdapterManager.getInstance().getAdapter( adapterId ) );
+        FileStore store = (FileStore) AdapterManager.getInstance().getAdapter( adapterId );
+        dataContext.getStatement().getTransaction().registerInvolvedAdapter( store );
         final Object[] insert;
 
         ArrayList<Object[]> rows = new ArrayList<>();
@@ -180,10 +197,21 @@ public static Enumerable<Object> executeModify( final Operation operation, final
         }
         insert = rows.toArray( new Object[0] );
 
+        final long tableId = Catalog.getInstance().getColumn( columnIds[0] ).tableId;
+        if ( store.isSegmentLayout() ) {
+            SegmentTable table = store.getSegmentTable( tableId );
+            return new AbstractEnumerable<Object>() {
+                @Override
+                public Enumerator<Object> enumerator() {
+                    return new SegmentModifier( table, columnIds, columnTypes, pkIds, dataContext, insert );
+                }
+            };
+        }
+        final List<FileIndex> indexes = store.getIndexes( tableId );
         return new AbstractEnumerable<Object>() {
             @Override
             public Enumerator<Object> enumerator() {
-                return new FileModifier( operation, path, columnIds, columnTypes, pkIds, dataContext, insert, condition );
+                return new FileModifier( operation, path, columnIds, columnTypes, pkIds, dataContext, insert, condition, indexes );
             }
         };
     }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file;
+
+
+import lombok.Getter;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * Range of values of a column, derived from a {@link Condition}. The bounds are values of the condition parameters,
+ * they are compared with column values like in {@link Condition#matches}. A {@code null} bound means unbounded.
+ */
+public class KeyRange {
+
+    @Getter
+    private final Object lower;
+    private final boolean lowerInclusive;
+    @Getter
+    private final Object upper;
+    private final boolean upperInclusive;
+    private final PolyType polyType;
+
+
+    KeyRange( final Object lower, final boolean lowerInclusive, final Object upper, final boolean upperInclusive, final PolyType polyType ) {
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+        this.polyType = polyType;
+    }
+
+
+    /**
+     * @return whether the range consists of a single value
+     */
+    public boolean isPoint() {
+        return lower != null && lower == upper && lowerInclusive && upperInclusive;
+    }
+
+
+    public boolean isAboveLower( final Comparable<?> value ) {
+        if ( lower == null ) {
+            return true;
+        }
+        int comparison = Condition.compare( value, lower, polyType );
+        return comparison > 0 || (comparison == 0 && lowerInclusive);
+    }
+
+
+    public boolean isBelowUpper( final Comparable<?> value ) {
+        if ( upper == null ) {
+            return true;
+        }
+        int comparison = Condition.compare( value, upper, polyType );
+        return comparison < 0 || (comparison == 0 && upperInclusive);
+    }
+
+
+    /**
+     * Intersects two ranges of the same column. If two bounds cannot be compared, the bound of this range is kept,
+     * which results in a range that is too large but still contains all matching values.
+     */
+    KeyRange intersect( final KeyRange other ) {
+        if ( isPoint() ) {
+            return this;
+        } else if ( other.isPoint() ) {
+            return other;
+        }
+        Object newLower = lower;
+        boolean newLowerInclusive = lowerInclusive;
+        Object newUpper = upper;
+        boolean newUpperInclusive = upperInclusive;
+        try {
+            if ( other.lower != null && (lower == null || isTighter( other.lower, lower, true )) ) {
+                newLower = other.lower;
+                newLowerInclusive = other.lowerInclusive;
+            }
+            if ( other.upper != null && (upper == null || isTighter( other.upper, upper, false )) ) {
+                newUpper = other.upper;
+                newUpperInclusive = other.upperInclusive;
+            }
+        } catch ( ClassCastException e ) {
+            return this;
+        }
+        return new KeyRange( newLower, newLowerInclusive, newUpper, newUpperInclusive, polyType );
+    }
+
+
+    private boolean isTighter( final Object bound, final Object current, final boolean isLower ) {
+        if ( !(bound instanceof Comparable) ) {
+            return false;
+        }
+        int comparison = Condition.compare( (Comparable<?>) bound, current, polyType );
+        return isLower ? comparison > 0 : comparison < 0;
+    }
+
+}
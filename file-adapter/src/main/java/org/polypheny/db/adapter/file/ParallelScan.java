@@ -0,0 +1,333 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.adapter.file;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.polypheny.db.config.Config;
+import org.polypheny.db.config.Config.ConfigListener;
+import org.polypheny.db.config.RuntimeConfig;
+
+
+/**
+ * Parallel SELECT scan over the file list of a {@link FileEnumerator}. The file store keeps one file per row and column,
+ * the file list therefore contains one file per row. It is split into ranges which are read and filtered by workers of a
+ * shared pool, which has as many threads as configured by {@link RuntimeConfig#FILE_SCAN_PARALLELISM}. The workers evaluate the condition on a batch of rows for
+ * which only the referenced columns have been loaded, the other columns are only loaded for the matching rows.
+ * The results are handed to the consumer in batches through a bounded queue. The order of the rows is not preserved.
+ */
+class ParallelScan {
+
+    /**
+     * Maximal number of files a worker processes at once. Smaller file lists are split into smaller ranges, so that
+     * every worker gets a range.
+     */
+    static final int RANGE_SIZE = 1024;
+
+    private static final List<Object> END = Collections.emptyList();
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadPoolExecutor POOL = createPool();
+
+    private final FileEnumerator enumerator;
+    private final File[] fileList;
+    private final int rangeSize;
+    private final int numOfRanges;
+    private final int parallelism;
+    private final int[] conditionColumns;
+    private final int[] otherColumns;
+
+    private final BlockingQueue<List<Object>> queue;
+    private final AtomicInteger nextRange = new AtomicInteger();
+    private final AtomicBoolean aborted = new AtomicBoolean( false );
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    private List<Object> batch = Collections.emptyList();
+    private Object current;
+    private int batchPosition = 0;
+    private boolean started = false;
+    private boolean finished = false;
+
+
+    ParallelScan( final FileEnumerator enumerator, final int parallelism ) {
+        this.enumerator = enumerator;
+        this.fileList = enumerator.fileList;
+        this.rangeSize = getRangeSize( fileList.length, parallelism );
+        this.numOfRanges = (fileList.length + rangeSize - 1) / rangeSize;
+        this.parallelism = Math.max( 1, Math.min( parallelism, numOfRanges ) );
+        this.queue = new ArrayBlockingQueue<>( 2 * this.parallelism );
+
+        Set<Integer> referenced = new HashSet<>();
+        if ( enumerator.condition != null ) {
+            enumerator.condition.collectColumnReferences( referenced );
+        }
+        List<Integer> conditionColumns = new ArrayList<>();
+        List<Integer> otherColumns = new ArrayList<>();
+        for ( int c = 0; c < enumerator.numOfCols; c++ ) {
+            if ( referenced.contains( c ) ) {
+                conditionColumns.add( c );
+            } else {
+                otherColumns.add( c );
+            }
+        }
+        this.conditionColumns = conditionColumns.stream().mapToInt( Integer::intValue ).toArray();
+        this.otherColumns = otherColumns.stream().mapToInt( Integer::intValue ).toArray();
+    }
+
+
+    private static ThreadPoolExecutor createPool() {
+        int size = Math.max( 1, RuntimeConfig.FILE_SCAN_PARALLELISM.getInteger() );
+        ThreadPoolExecutor pool = new ThreadPoolExecutor( size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread( r, "FileScan-" + THREAD_COUNTER.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        pool.allowCoreThreadTimeOut( true );
+        RuntimeConfig.FILE_SCAN_PARALLELISM.addObserver( new ConfigListener() {
+            @Override
+            public void onConfigChange( Config c ) {
+                resize( pool, c.getInt() );
+            }
+
+
+            @Override
+            public void restart( Config c ) {
+                resize( pool, c.getInt() );
+            }
+        } );
+        return pool;
+    }
+
+
+    private static synchronized void resize( final ThreadPoolExecutor pool, final int parallelism ) {
+        int size = Math.max( 1, parallelism );
+        // The core size must never exceed the maximal size
+        if ( size > pool.getMaximumPoolSize() ) {
+            pool.setMaximumPoolSize( size );
+            pool.setCorePoolSize( size );
+        } else {
+            pool.setCorePoolSize( size );
+            pool.setMaximumPoolSize( size );
+        }
+    }
+
+
+    /**
+     * @return the number of files of a range, such that there is a range for every worker, but no range is larger than {@link #RANGE_SIZE}
+     */
+    static int getRangeSize( final int numOfFiles, final int parallelism ) {
+        int perWorker = (numOfFiles + Math.max( 1, parallelism ) - 1) / Math.max( 1, parallelism );
+        return Math.max( 1, Math.min( RANGE_SIZE, perWorker ) );
+    }
+
+
+    /**
+     * Whether a SELECT of the enumerator should be executed by a parallel scan. A scan is only parallelized if it reads
+     * at least {@link RuntimeConfig#FILE_SCAN_PARALLEL_THRESHOLD} rows and the rows are not looked up by their
+     * primary key.
+     */
+    static boolean isApplicable( final FileEnumerator enumerator ) {
+        if ( enumerator.fileList == null || enumerator.fileList.length < Math.max( 2, RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.getInteger() ) ) {
+            return false;
+        }
+        if ( RuntimeConfig.FILE_SCAN_PARALLELISM.getInteger() < 2 ) {
+            return false;
+        }
+        return enumerator.condition == null
+                || enumerator.indexScan
+                || enumerator.condition.getPKLookup( new HashSet<>( Arrays.asList( enumerator.pkMapping ) ), enumerator.columnTypes, enumerator.numOfCols, enumerator.dataContext ) == null;
+    }
+
+
+    /**
+     * Moves to the next row, see {@link org.apache.calcite.linq4j.Enumerator#moveNext()}.
+     *
+     * @return {@code false} if there are no more rows or the transaction has been cancelled
+     */
+    boolean moveNext() {
+        if ( !started ) {
+            start();
+        }
+        try {
+            while ( batchPosition >= batch.size() ) {
+                if ( finished ) {
+                    return false;
+                }
+                if ( enumerator.dataContext.getStatement().getTransaction().getCancelFlag().get() ) {
+                    close();
+                    return false;
+                }
+                List<Object> next = queue.poll( 100, TimeUnit.MILLISECONDS );
+                if ( error.get() != null ) {
+                    close();
+                    throw new RuntimeException( error.get() );
+                }
+                if ( next == END ) {
+                    finished = true;
+                } else if ( next != null ) {
+                    batch = next;
+                    batchPosition = 0;
+                }
+            }
+        } catch ( InterruptedException e ) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        current = batch.get( batchPosition++ );
+        return true;
+    }
+
+
+    Object current() {
+        return current;
+    }
+
+
+    private void start() {
+        started = true;
+        AtomicInteger running = new AtomicInteger( parallelism );
+        for ( int i = 0; i < parallelism; i++ ) {
+            POOL.submit( () -> {
+                try {
+                    int range;
+                    while ( (range = nextRange.getAndIncrement()) < numOfRanges && !isCancelled() ) {
+                        List<Object> rows = scanRange( range * rangeSize, Math.min( fileList.length, (range + 1) * rangeSize ) );
+                        if ( !rows.isEmpty() && !offer( rows ) ) {
+                            return;
+                        }
+                    }
+                } catch ( Throwable t ) {
+                    error.compareAndSet( null, t );
+                    aborted.set( true );
+                } finally {
+                    if ( running.decrementAndGet() == 0 && !aborted.get() ) {
+                        offer( END );
+                    }
+                }
+            } );
+        }
+    }
+
+
+    /**
+     * Reads and filters the rows of the files {@code from} (inclusive) to {@code to} (exclusive) of the file list.
+     * The columns referenced by the condition are loaded and evaluated first, the remaining columns are only
+     * loaded for the matching rows.
+     */
+    private List<Object> scanRange( final int from, final int to ) throws Exception {
+        int size = to - from;
+        Object[][] rows = new Object[size][enumerator.numOfCols];
+        boolean[] selected = new boolean[size];
+        Arrays.fill( selected, true );
+        if ( enumerator.condition != null ) {
+            for ( int column : conditionColumns ) {
+                for ( int r = 0; r < size; r++ ) {
+                    rows[r][column] = enumerator.readValue( column, fileList[from + r].getName() );
+                }
+            }
+            for ( int r = 0; r < size; r++ ) {
+                selected[r] = enumerator.condition.matches( rows[r], enumerator.columnTypes, enumerator.dataContext );
+            }
+        }
+        for ( int column : otherColumns ) {
+            if ( isCancelled() ) {
+                return Collections.emptyList();
+            }
+            for ( int r = 0; r < size; r++ ) {
+                if ( selected[r] ) {
+                    rows[r][column] = enumerator.readValue( column, fileList[from + r].getName() );
+                }
+            }
+        }
+        List<Object> out = new ArrayList<>();
+        for ( int r = 0; r < size; r++ ) {
+            if ( !selected[r] || isAllNull( rows[r] ) ) {
+                // All values can be null if we iterate over multiple nullable columns, because the fileList comes from a PK-column
+                continue;
+            }
+            Object[] row = rows[r];
+            if ( enumerator.projectionMapping != null && enumerator.condition != null ) {
+                row = (Object[]) enumerator.project( row );
+            }
+            out.add( row.length == 1 ? row[0] : row );
+        }
+        return out;
+    }
+
+
+    private static boolean isAllNull( final Object[] row ) {
+        for ( Object value : row ) {
+            if ( value != null ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private boolean isCancelled() {
+        return aborted.get() || enumerator.dataContext.getStatement().getTransaction().getCancelFlag().get();
+    }
+
+
+    /**
+     * Waits until the batch can be added to the queue.
+     *
+     * @return {@code false} if the scan has been aborted or cancelled in the meantime
+     */
+    private boolean offer( final List<Object> rows ) {
+        try {
+            while ( !queue.offer( rows, 100, TimeUnit.MILLISECONDS ) ) {
+                if ( isCancelled() ) {
+                    return false;
+                }
+            }
+            return true;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    /**
+     * Stops the workers and releases the buffered rows
+     */
+    void close() {
+        aborted.set( true );
+        finished = true;
+        queue.clear();
+        batch = Collections.emptyList();
+    }
+
+}
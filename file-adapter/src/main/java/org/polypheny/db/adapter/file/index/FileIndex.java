@@ -0,0 +1,500 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.adapter.file.index;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.polypheny.db.adapter.file.Condition;
+import org.polypheny.db.adapter.file.FileStore;
+import org.polypheny.db.adapter.file.KeyRange;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * A persistent index of the file store, which maps the values of one or more columns to the names of the files
+ * containing the rows. It supports point lookups and range scans.
+ *
+ * The index consists of immutable sorted runs. Every commit which changes the index adds a new run, deletions are
+ * stored as entries which hide the older entries of the row. Lookups merge the runs from the newest to the oldest.
+ * If there are too many runs, they are merged into a single base run which replaces all older runs.
+ *
+ * The changes of a transaction are kept in memory. Before the commit is written to the WAL of the store, they are
+ * written to an uncommitted run ({@code _idx_<xid hash>}), which is renamed to a committed run by the commit. This
+ * allows to repeat the commit after a crash.
+ *
+ * Rows with null values in one of the indexed columns are not indexed, since they can never match a condition that
+ * can be answered by the index.
+ */
+@Slf4j
+public class FileIndex {
+
+    private static final String META_FILE = "index.json";
+    private static final String RUN_PREFIX = "run";
+    private static final String BASE_PREFIX = "base";
+    private static final String UNCOMMITTED_PREFIX = "_idx_";
+
+    // Number of runs which triggers a merge
+    private static final int MAX_RUNS = 8;
+
+    private static final Gson GSON = new Gson();
+
+    @Getter
+    private final File folder;
+    @Getter
+    private final long tableId;
+    @Getter
+    private final List<Long> columnIds;
+    private final PolyType[] columnTypes;
+    @Getter
+    private final boolean unique;
+
+    private volatile List<SortedRun> runs; // Newest run first
+    private long nextRun; // Guarded by this
+    private final Map<PolyXid, Map<String, IndexEntry>> pending = new ConcurrentHashMap<>();
+
+
+    private FileIndex( final File folder, final Meta meta ) throws IOException {
+        this.folder = folder;
+        this.tableId = meta.tableId;
+        this.columnIds = ImmutableList.copyOf( meta.columnIds );
+        this.columnTypes = meta.columnTypes.toArray( new PolyType[0] );
+        this.unique = meta.unique;
+        loadRuns();
+    }
+
+
+    /**
+     * Creates a new, empty index in the folder.
+     */
+    public static FileIndex create( final File folder, final long tableId, final List<Long> columnIds, final List<PolyType> columnTypes, final boolean unique ) {
+        try {
+            if ( !folder.exists() && !folder.mkdirs() ) {
+                throw new IOException( "Could not create index folder " + folder.getAbsolutePath() );
+            }
+            Meta meta = new Meta( tableId, columnIds, columnTypes, unique );
+            File tmp = new File( folder, META_FILE + ".tmp" );
+            try ( FileOutputStream fos = new FileOutputStream( tmp ); Writer writer = new OutputStreamWriter( fos, FileStore.CHARSET ) ) {
+                GSON.toJson( meta, writer );
+                writer.flush();
+                fos.getFD().sync();
+            }
+            Files.move( tmp.toPath(), new File( folder, META_FILE ).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+            return new FileIndex( folder, meta );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not create index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    /**
+     * Opens an existing index.
+     *
+     * @return {@code null} if the folder does not contain a complete index
+     */
+    public static FileIndex open( final File folder ) {
+        File metaFile = new File( folder, META_FILE );
+        if ( !metaFile.exists() ) {
+            return null;
+        }
+        try {
+            Meta meta = GSON.fromJson( new String( Files.readAllBytes( metaFile.toPath() ), FileStore.CHARSET ), Meta.class );
+            return new FileIndex( folder, meta );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not open index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    private synchronized void loadRuns() throws IOException {
+        long base = -1;
+        long maxRun = -1;
+        File[] files = folder.listFiles( f -> f.getName().startsWith( RUN_PREFIX ) || f.getName().startsWith( BASE_PREFIX ) );
+        files = files == null ? new File[0] : files;
+        for ( File file : files ) {
+            if ( file.getName().endsWith( ".tmp" ) ) {
+                continue;
+            }
+            if ( file.getName().startsWith( BASE_PREFIX ) ) {
+                base = Math.max( base, getRunNumber( file ) );
+            }
+            maxRun = Math.max( maxRun, getRunNumber( file ) );
+        }
+        List<File> newer = new ArrayList<>();
+        for ( File file : files ) {
+            boolean isBase = file.getName().equals( BASE_PREFIX + base );
+            if ( file.getName().endsWith( ".tmp" ) || (!isBase && getRunNumber( file ) <= base) ) {
+                // Left over by an interrupted merge
+                Files.delete( file.toPath() );
+            } else if ( !isBase ) {
+                newer.add( file );
+            }
+        }
+        newer.sort( ( a, b ) -> Long.compare( getRunNumber( b ), getRunNumber( a ) ) );
+        List<SortedRun> loaded = new ArrayList<>();
+        for ( File file : newer ) {
+            loaded.add( new SortedRun( file, columnTypes ) );
+        }
+        if ( base >= 0 ) {
+            loaded.add( new SortedRun( new File( folder, BASE_PREFIX + base ), columnTypes ) );
+        }
+        runs = ImmutableList.copyOf( loaded );
+        nextRun = maxRun + 1;
+    }
+
+
+    private static long getRunNumber( final File file ) {
+        String name = file.getName();
+        int start = name.startsWith( BASE_PREFIX ) ? BASE_PREFIX.length() : RUN_PREFIX.length();
+        int end = name.indexOf( '.' );
+        return Long.parseLong( end < 0 ? name.substring( start ) : name.substring( start, end ) );
+    }
+
+
+    /**
+     * Fills the empty index with the rows already stored in the table.
+     */
+    public synchronized void build( final List<String[]> keys, final List<String> fileNames ) {
+        List<IndexEntry> entries = new ArrayList<>( keys.size() );
+        for ( int i = 0; i < keys.size(); i++ ) {
+            if ( isIndexable( keys.get( i ) ) ) {
+                entries.add( new IndexEntry( keys.get( i ), fileNames.get( i ), false, columnTypes ) );
+            }
+        }
+        try {
+            writeBase( entries );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not build index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    private static boolean isIndexable( final String[] key ) {
+        for ( String value : key ) {
+            if ( value == null || value.isEmpty() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Adds a row to the uncommitted changes of the transaction.
+     *
+     * @param key Values of the indexed columns as stored in the column files
+     * @param fileName Name of the committed files of the row
+     */
+    public void insert( final PolyXid xid, final String[] key, final String fileName ) {
+        add( xid, key, fileName, false );
+    }
+
+
+    /**
+     * Removes a row, see {@link #insert}.
+     */
+    public void delete( final PolyXid xid, final String[] key, final String fileName ) {
+        add( xid, key, fileName, true );
+    }
+
+
+    private void add( final PolyXid xid, final String[] key, final String fileName, final boolean deleted ) {
+        if ( !isIndexable( key ) ) {
+            return;
+        }
+        IndexEntry entry = new IndexEntry( key, fileName, deleted, columnTypes );
+        // The last change of a row within a transaction wins
+        pending.computeIfAbsent( xid, k -> new ConcurrentHashMap<>() ).put( entry.getId(), entry );
+    }
+
+
+    /**
+     * Checks whether the transaction sees a row with this key. Rows with null values are never found.
+     */
+    public boolean contains( final PolyXid xid, final String[] key ) {
+        if ( !isIndexable( key ) ) {
+            return false;
+        }
+        final Comparable<?>[] values = new IndexEntry( key, "", false, columnTypes ).values;
+        return !search( xid, entry -> {
+            for ( int i = 0; i < columnTypes.length; i++ ) {
+                int comparison = Condition.compare( entry.values[i], values[i], columnTypes[i] );
+                if ( comparison != 0 ) {
+                    return Integer.signum( comparison );
+                }
+            }
+            return 0;
+        } ).isEmpty();
+    }
+
+
+    /**
+     * Returns the names of the files of all rows visible to the transaction whose keys lie within the ranges.
+     *
+     * @param ranges Ranges of the leading indexed columns; all ranges except the last one have to be points
+     */
+    public Set<String> lookup( final PolyXid xid, final List<KeyRange> ranges ) {
+        return search( xid, entry -> {
+            for ( int i = 0; i < ranges.size(); i++ ) {
+                KeyRange range = ranges.get( i );
+                if ( !range.isAboveLower( entry.values[i] ) ) {
+                    return -1;
+                }
+                if ( !range.isBelowUpper( entry.values[i] ) ) {
+                    return 1;
+                }
+                if ( !range.isPoint() ) {
+                    return 0;
+                }
+            }
+            return 0;
+        } );
+    }
+
+
+    /**
+     * @param position Returns a negative value for entries before the searched range, zero for entries within and a
+     * positive value for entries after it
+     */
+    private Set<String> search( final PolyXid xid, final ToIntFunction<IndexEntry> position ) {
+        Set<String> visited = new HashSet<>();
+        Set<String> fileNames = new LinkedHashSet<>();
+        Map<String, IndexEntry> own = xid == null ? null : pending.get( xid );
+        if ( own != null ) {
+            for ( IndexEntry entry : own.values() ) {
+                if ( position.applyAsInt( entry ) == 0 ) {
+                    visit( entry, visited, fileNames );
+                }
+            }
+        }
+        for ( SortedRun run : runs ) {
+            int low = 0;
+            int high = run.getSize();
+            while ( low < high ) {
+                int middle = (low + high) >>> 1;
+                if ( position.applyAsInt( run.get( middle ) ) < 0 ) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for ( int i = low; i < run.getSize(); i++ ) {
+                IndexEntry entry = run.get( i );
+                if ( position.applyAsInt( entry ) > 0 ) {
+                    break;
+                }
+                visit( entry, visited, fileNames );
+            }
+        }
+        return fileNames;
+    }
+
+
+    private static void visit( final IndexEntry entry, final Set<String> visited, final Set<String> fileNames ) {
+        // Only the newest entry of a row counts
+        if ( visited.add( entry.getId() ) && !entry.deleted ) {
+            fileNames.add( entry.fileName );
+        }
+    }
+
+
+    private String getUncommittedName( final PolyXid xid ) {
+        return UNCOMMITTED_PREFIX + FileStore.SHA.hashString( xid.toString(), FileStore.CHARSET ).toString();
+    }
+
+
+    /**
+     * Writes the changes of the transaction to an uncommitted run. Has to be invoked before the commit is recorded
+     * in the WAL of the store.
+     */
+    public void flush( final PolyXid xid ) {
+        Map<String, IndexEntry> own = pending.get( xid );
+        if ( own == null || own.isEmpty() ) {
+            return;
+        }
+        List<IndexEntry> entries = new ArrayList<>( own.values() );
+        entries.sort( ( a, b ) -> IndexEntry.compare( a, b, columnTypes ) );
+        try {
+            File tmp = new File( folder, getUncommittedName( xid ) + ".tmp" );
+            SortedRun.write( tmp, entries );
+            Files.move( tmp.toPath(), new File( folder, getUncommittedName( xid ) ).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not write changes to index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    /**
+     * Turns the uncommitted runs of the transactions into committed runs. This is idempotent.
+     */
+    public synchronized void commit( final List<PolyXid> xids ) {
+        try {
+            List<SortedRun> committed = new ArrayList<>();
+            for ( PolyXid xid : xids ) {
+                pending.remove( xid );
+                File uncommitted = new File( folder, getUncommittedName( xid ) );
+                if ( uncommitted.exists() ) {
+                    File run = new File( folder, RUN_PREFIX + nextRun++ );
+                    Files.move( uncommitted.toPath(), run.toPath(), StandardCopyOption.ATOMIC_MOVE );
+                    committed.add( 0, new SortedRun( run, columnTypes ) );
+                }
+            }
+            if ( committed.isEmpty() ) {
+                return;
+            }
+            committed.addAll( runs );
+            runs = ImmutableList.copyOf( committed );
+            if ( runs.size() > MAX_RUNS ) {
+                merge();
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not commit changes of index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    public void rollback( final PolyXid xid ) {
+        pending.remove( xid );
+        try {
+            Files.deleteIfExists( new File( folder, getUncommittedName( xid ) ).toPath() );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not rollback changes of index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    /**
+     * Removes the uncommitted runs of transactions which have not been committed before a crash. Has to be invoked
+     * after the WAL of the store has been processed.
+     */
+    public synchronized void recover() {
+        File[] uncommitted = folder.listFiles( f -> f.getName().startsWith( UNCOMMITTED_PREFIX ) );
+        if ( uncommitted != null ) {
+            for ( File file : uncommitted ) {
+                if ( !file.delete() ) {
+                    log.warn( "Could not delete uncommitted index run {}", file.getAbsolutePath() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Merges all runs into a single base run. Entries of deleted rows are dropped.
+     */
+    private void merge() throws IOException {
+        Set<String> visited = new HashSet<>();
+        List<IndexEntry> entries = new ArrayList<>();
+        for ( SortedRun run : runs ) {
+            for ( int i = 0; i < run.getSize(); i++ ) {
+                IndexEntry entry = run.get( i );
+                if ( visited.add( entry.getId() ) && !entry.deleted ) {
+                    entries.add( entry );
+                }
+            }
+        }
+        entries.sort( ( a, b ) -> IndexEntry.compare( a, b, columnTypes ) );
+        writeBase( entries );
+        log.debug( "Merged runs of index {}", folder.getName() );
+    }
+
+
+    /**
+     * Replaces all runs by a base run with the entries. The base run is numbered like the newest run it replaces,
+     * which allows to remove the replaced runs when the index is opened after a crash.
+     */
+    private void writeBase( final List<IndexEntry> entries ) throws IOException {
+        long number = nextRun++;
+        File base = new File( folder, BASE_PREFIX + number );
+        File tmp = new File( folder, BASE_PREFIX + number + ".tmp" );
+        SortedRun.write( tmp, entries );
+        Files.move( tmp.toPath(), base.toPath(), StandardCopyOption.ATOMIC_MOVE );
+        List<SortedRun> replaced = runs;
+        runs = ImmutableList.of( new SortedRun( base, columnTypes ) );
+        for ( SortedRun run : replaced ) {
+            // Lookups might still read the replaced runs, they stay accessible via their memory mappings
+            if ( !run.getFile().delete() ) {
+                log.warn( "Could not delete index run {}", run.getFile().getAbsolutePath() );
+            }
+        }
+    }
+
+
+    /**
+     * Removes all rows. Not transactional, like the other schema changes of the file store.
+     */
+    public synchronized void truncate() {
+        try {
+            writeBase( new ArrayList<>() );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not truncate index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    public synchronized void drop() {
+        pending.clear();
+        try {
+            FileUtils.deleteDirectory( folder );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not drop index " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    /**
+     * The definition of the index, stored in the index folder.
+     */
+    private static final class Meta {
+
+        final long tableId;
+        final List<Long> columnIds;
+        final List<PolyType> columnTypes;
+        final boolean unique;
+
+
+        Meta( final long tableId, final List<Long> columnIds, final List<PolyType> columnTypes, final boolean unique ) {
+            this.tableId = tableId;
+            this.columnIds = columnIds;
+            this.columnTypes = columnTypes;
+            this.unique = unique;
+        }
+
+    }
+
+}
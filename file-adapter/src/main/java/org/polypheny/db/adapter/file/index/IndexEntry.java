@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.adapter.file.index;
+
+
+import java.util.Arrays;
+import org.polypheny.db.adapter.file.Condition;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.type.PolyTypeUtil;
+
+
+/**
+ * An entry of a {@link FileIndex}: the key of a row and the name of the files containing the row. Deletions are stored
+ * as entries as well, they hide older entries with the same key and file name.
+ */
+final class IndexEntry {
+
+    final String[] key; // Values as stored in the column files
+    final Comparable<?>[] values; // Decoded values, used for the ordering
+    final String fileName;
+    final boolean deleted;
+
+
+    IndexEntry( final String[] key, final String fileName, final boolean deleted, final PolyType[] types ) {
+        this.key = key;
+        this.fileName = fileName;
+        this.deleted = deleted;
+        this.values = new Comparable[key.length];
+        for ( int i = 0; i < key.length; i++ ) {
+            values[i] = (Comparable<?>) PolyTypeUtil.stringToObject( key[i], types[i] );
+        }
+    }
+
+
+    /**
+     * @return the identity of the indexed row, which is independent of whether the entry is a deletion
+     */
+    String getId() {
+        return Arrays.toString( key ) + fileName;
+    }
+
+
+    /**
+     * Orders entries by their decoded key values and file names.
+     */
+    static int compare( final IndexEntry a, final IndexEntry b, final PolyType[] types ) {
+        for ( int i = 0; i < types.length; i++ ) {
+            int comparison = Condition.compare( a.values[i], b.values[i], types[i] );
+            if ( comparison != 0 ) {
+                return comparison;
+            }
+        }
+        return a.fileName.compareTo( b.fileName );
+    }
+
+}
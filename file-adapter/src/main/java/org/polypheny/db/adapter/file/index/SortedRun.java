@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.adapter.file.index;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import lombok.Getter;
+import org.polypheny.db.adapter.file.FileStore;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * A sorted run of a {@link FileIndex}. A run is written once and never modified afterwards, it is read via a read-only
+ * memory mapping. Lookups use a binary search over the offsets of the entries.
+ *
+ * Layout:
+ * <pre>
+ * entries: for every entry: byte deleted, int number of key values, for every key value: int length (-1 for null) and bytes, int length and bytes of the file name
+ * offsets: for every entry: long offset of the entry
+ * trailer: int entry count, long start of the offsets, int magic number
+ * </pre>
+ */
+final class SortedRun {
+
+    private static final int MAGIC = 0x49445831; // "IDX1"
+    private static final int TRAILER_SIZE = 4 + 8 + 4;
+
+    @Getter
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final long offsetsStart;
+    @Getter
+    private final int size;
+    private final PolyType[] types;
+
+
+    SortedRun( final File file, final PolyType[] types ) throws IOException {
+        this.file = file;
+        this.types = types;
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            // The mapping stays valid after the channel has been closed
+            buffer = channel.map( MapMode.READ_ONLY, 0, channel.size() );
+        }
+        int trailer = buffer.capacity() - TRAILER_SIZE;
+        if ( trailer < 0 || buffer.getInt( trailer + 12 ) != MAGIC ) {
+            throw new IOException( "Not a valid index run: " + file.getAbsolutePath() );
+        }
+        size = buffer.getInt( trailer );
+        offsetsStart = buffer.getLong( trailer + 4 );
+    }
+
+
+    /**
+     * Writes the entries, which have to be sorted, to a new file.
+     */
+    static void write( final File file, final List<IndexEntry> entries ) throws IOException {
+        final long[] offsets = new long[entries.size()];
+        long position = 0;
+        try ( FileOutputStream fos = new FileOutputStream( file ); DataOutputStream out = new DataOutputStream( new BufferedOutputStream( fos, 1 << 16 ) ) ) {
+            for ( int i = 0; i < entries.size(); i++ ) {
+                offsets[i] = position;
+                IndexEntry entry = entries.get( i );
+                out.writeByte( entry.deleted ? 1 : 0 );
+                out.writeInt( entry.key.length );
+                position += 5;
+                for ( String value : entry.key ) {
+                    position += writeString( out, value );
+                }
+                position += writeString( out, entry.fileName );
+            }
+            if ( position > Integer.MAX_VALUE ) {
+                throw new IOException( "Index run exceeds the maximal size: " + file.getAbsolutePath() );
+            }
+            for ( long offset : offsets ) {
+                out.writeLong( offset );
+            }
+            out.writeInt( entries.size() );
+            out.writeLong( position );
+            out.writeInt( MAGIC );
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+
+    private static int writeString( final DataOutputStream out, final String value ) throws IOException {
+        if ( value == null ) {
+            out.writeInt( -1 );
+            return 4;
+        }
+        byte[] bytes = value.getBytes( FileStore.CHARSET );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+        return 4 + bytes.length;
+    }
+
+
+    private static String readString( final ByteBuffer view ) {
+        int length = view.getInt();
+        if ( length < 0 ) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        view.get( bytes );
+        return new String( bytes, FileStore.CHARSET );
+    }
+
+
+    IndexEntry get( final int position ) {
+        ByteBuffer view = buffer.duplicate();
+        view.position( (int) buffer.getLong( (int) (offsetsStart + 8L * position) ) );
+        boolean deleted = view.get() == 1;
+        String[] key = new String[view.getInt()];
+        for ( int i = 0; i < key.length; i++ ) {
+            key[i] = readString( view );
+        }
+        return new IndexEntry( key, readString( view ), deleted, types );
+    }
+
+}
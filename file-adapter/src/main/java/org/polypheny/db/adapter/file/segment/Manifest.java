@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import org.polypheny.db.adapter.file.FileStore;
+
+
+/**
+ * Immutable list of the committed segments of a table. A new version of the manifest is installed by atomically
+ * replacing the manifest file, which makes all changes of a commit durable and visible at once.
+ */
+final class Manifest {
+
+    static final String FILE_NAME = "manifest.json";
+
+    private static final Gson GSON = new Gson();
+
+    final long nextSegmentId;
+    final List<Segment> segments;
+    final List<Long> obsolete; // Ids of segments which have been replaced by a compaction and whose files can be deleted
+
+
+    Manifest( final long nextSegmentId, final List<Segment> segments, final List<Long> obsolete ) {
+        this.nextSegmentId = nextSegmentId;
+        this.segments = ImmutableList.copyOf( segments );
+        this.obsolete = ImmutableList.copyOf( obsolete );
+    }
+
+
+    static Manifest empty() {
+        return new Manifest( 0, ImmutableList.of(), ImmutableList.of() );
+    }
+
+
+    static Manifest read( final File folder ) throws IOException {
+        File file = new File( folder, FILE_NAME );
+        if ( !file.exists() ) {
+            return empty();
+        }
+        Manifest manifest = GSON.fromJson( new String( Files.readAllBytes( file.toPath() ), FileStore.CHARSET ), Manifest.class );
+        // Restore the immutable lists
+        return new Manifest( manifest.nextSegmentId, manifest.segments, manifest.obsolete );
+    }
+
+
+    void write( final File folder ) throws IOException {
+        File tmp = new File( folder, FILE_NAME + ".tmp" );
+        try ( FileOutputStream fos = new FileOutputStream( tmp ); Writer writer = new OutputStreamWriter( fos, FileStore.CHARSET ) ) {
+            GSON.toJson( this, writer );
+            writer.flush();
+            fos.getFD().sync();
+        }
+        Files.move( tmp.toPath(), new File( folder, FILE_NAME ).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+    }
+
+
+    Segment getSegment( final long segmentId ) {
+        for ( Segment segment : segments ) {
+            if ( segment.id == segmentId ) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+}
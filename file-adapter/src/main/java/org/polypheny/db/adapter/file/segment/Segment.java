@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+
+/**
+ * Immutable description of a committed segment as stored in the manifest of a table. A row of a segment is identified
+ * by its position in the segment.
+ */
+final class Segment {
+
+    final long id;
+    final int rows;
+    final long[] columns; // Ids of the columns stored in this segment, values of other columns are null
+    final int[] deleted; // Sorted positions of the deleted rows
+
+
+    Segment( final long id, final int rows, final long[] columns, final int[] deleted ) {
+        this.id = id;
+        this.rows = rows;
+        this.columns = columns;
+        this.deleted = deleted;
+    }
+
+
+    boolean isDeleted( final int position ) {
+        return deleted.length > 0 && Arrays.binarySearch( deleted, position ) >= 0;
+    }
+
+
+    int getLiveRows() {
+        return rows - deleted.length;
+    }
+
+
+    boolean hasColumn( final long columnId ) {
+        for ( long column : columns ) {
+            if ( column == columnId ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    Segment withDeleted( final Collection<Integer> positions ) {
+        TreeSet<Integer> all = new TreeSet<>( positions );
+        for ( int position : deleted ) {
+            all.add( position );
+        }
+        return new Segment( id, rows, columns, all.stream().mapToInt( Integer::intValue ).toArray() );
+    }
+
+
+    Segment withoutColumn( final long columnId ) {
+        return new Segment( id, rows, Arrays.stream( columns ).filter( c -> c != columnId ).toArray(), deleted );
+    }
+
+
+    static String getFileName( final long segmentId, final long columnId ) {
+        return "seg" + segmentId + ".col" + columnId;
+    }
+
+}
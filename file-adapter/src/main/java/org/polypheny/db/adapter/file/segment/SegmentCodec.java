@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import org.apache.commons.io.IOUtils;
+import org.polypheny.db.adapter.file.FileStore;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.type.PolyTypeFamily;
+import org.polypheny.db.type.PolyTypeUtil;
+import org.polypheny.db.util.FileInputHandle;
+
+
+/**
+ * Converts values to the binary representation stored in segment files and back. Apart from multimedia objects,
+ * which are stored as they are, the representation is the same as the content of the files of the one-file-per-value
+ * layout of the file store.
+ */
+final class SegmentCodec {
+
+    private SegmentCodec() {
+    }
+
+
+    static byte[] encode( final Object value ) throws IOException {
+        if ( value == null ) {
+            return null;
+        } else if ( value instanceof byte[] ) {
+            return (byte[]) value;
+        } else if ( value instanceof FileInputHandle ) {
+            try ( InputStream is = ((FileInputHandle) value).getData() ) {
+                return IOUtils.toByteArray( is );
+            }
+        } else if ( value instanceof InputStream ) {
+            try ( InputStream is = (InputStream) value ) {
+                return IOUtils.toByteArray( is );
+            }
+        } else if ( value instanceof File ) {
+            return Files.readAllBytes( ((File) value).toPath() );
+        } else if ( value instanceof Time ) {
+            return String.valueOf( ((Time) value).getTime() ).getBytes( FileStore.CHARSET );
+        } else if ( value instanceof Date ) {
+            return String.valueOf( ((Date) value).toLocalDate().toEpochDay() ).getBytes( FileStore.CHARSET );
+        } else if ( value instanceof Timestamp ) {
+            return String.valueOf( ((Timestamp) value).toInstant().toEpochMilli() ).getBytes( FileStore.CHARSET );
+        }
+        return value.toString().getBytes( FileStore.CHARSET );
+    }
+
+
+    /**
+     * Decodes a value that is not a multimedia object.
+     */
+    static Object decode( final byte[] bytes, final PolyType type ) {
+        if ( bytes == null ) {
+            return null;
+        }
+        String s = new String( bytes, FileStore.CHARSET );
+        if ( type.getFamily() == PolyTypeFamily.CHARACTER ) {
+            // Unlike the one-file-per-value layout, the segments distinguish empty strings from null values
+            return s;
+        }
+        return PolyTypeUtil.stringToObject( s, type );
+    }
+
+
+    static boolean isMultimedia( final PolyType type ) {
+        return type.getFamily() == PolyTypeFamily.MULTIMEDIA;
+    }
+
+
+    /**
+     * @return whether zone maps are maintained for columns of this type
+     */
+    static boolean hasZoneMap( final PolyType type ) {
+        return !isMultimedia( type ) && type != PolyType.ARRAY && type != PolyType.BOOLEAN;
+    }
+
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static int compare( final Object a, final Object b ) {
+        return ((Comparable) a).compareTo( b );
+    }
+
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.calcite.linq4j.Enumerator;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.adapter.file.Condition;
+import org.polypheny.db.adapter.file.FileRel.FileImplementor.Operation;
+import org.polypheny.db.adapter.file.FileStore;
+import org.polypheny.db.adapter.file.Value;
+import org.polypheny.db.adapter.file.segment.SegmentTable.Batch;
+import org.polypheny.db.adapter.file.segment.SegmentTable.Pending;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.transaction.Transaction.MultimediaFlavor;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * Executes SELECT, UPDATE and DELETE operations on a {@link SegmentTable}. The committed segments are scanned
+ * sequentially, followed by the rows inserted by the transaction itself. Segments are skipped if their zone maps show
+ * that none of their rows can match the condition.
+ *
+ * The parameters have the same meaning as for the {@link org.polypheny.db.adapter.file.FileEnumerator}.
+ */
+public class SegmentEnumerator implements Enumerator<Object> {
+
+    private final Operation operation;
+    private final SegmentTable table;
+    private final DataContext dataContext;
+    private final PolyXid xid;
+    private final long[] columns; // Columns to read
+    private final PolyType[] columnTypes;
+    private final Integer[] projectionMapping;
+    private final long[] pkColumns;
+    private final Integer[] pkMapping;
+    private final Condition condition;
+    private final boolean[] conditionColumns;
+    private final Map<Integer, Value> updates = new HashMap<>();
+    private final File hardlinkFolder;
+
+    // Snapshot of the data visible to the transaction
+    private final Manifest manifest;
+    private final Pending pending;
+
+    // Position of the scan
+    private int segmentIndex = -1;
+    private Segment segment;
+    private SegmentFile.Reader[] readers;
+    private int batchIndex = -1;
+    private Batch batch;
+    private int[] batchMapping;
+    private int row;
+    private int rows;
+    private final byte[][] raw;
+
+    private Object current;
+    private boolean done = false;
+    private boolean closed = false;
+
+
+    public SegmentEnumerator(
+            final Operation operation,
+            final SegmentTable table,
+            final String rootPath,
+            final Long[] columnIds,
+            final PolyType[] columnTypes,
+            final List<Long> pkIds,
+            final Integer[] projectionMapping,
+            final DataContext dataContext,
+            final Condition condition,
+            final Value[] updates ) {
+        this.operation = operation;
+        this.table = table;
+        this.dataContext = dataContext;
+        this.xid = dataContext.getStatement().getTransaction().getXid();
+        this.condition = condition;
+        this.projectionMapping = projectionMapping;
+        if ( updates != null ) {
+            for ( Value update : updates ) {
+                this.updates.put( update.getColumnReference(), update );
+            }
+        }
+
+        // Like the FileEnumerator, only the projected columns are read if there is no condition
+        if ( condition == null && projectionMapping != null && operation != Operation.UPDATE ) {
+            this.columns = new long[projectionMapping.length];
+            this.columnTypes = new PolyType[projectionMapping.length];
+            for ( int i = 0; i < projectionMapping.length; i++ ) {
+                this.columns[i] = columnIds[projectionMapping[i]];
+                this.columnTypes[i] = columnTypes[projectionMapping[i]];
+            }
+        } else {
+            this.columns = new long[columnIds.length];
+            for ( int i = 0; i < columnIds.length; i++ ) {
+                this.columns[i] = columnIds[i];
+            }
+            this.columnTypes = columnTypes;
+        }
+        this.pkColumns = new long[pkIds.size()];
+        this.pkMapping = new Integer[pkIds.size()];
+        for ( int i = 0; i < pkIds.size(); i++ ) {
+            pkColumns[i] = pkIds.get( i );
+            for ( int c = 0; c < columns.length; c++ ) {
+                if ( columns[c] == pkIds.get( i ) ) {
+                    pkMapping[i] = c;
+                }
+            }
+        }
+        this.conditionColumns = new boolean[columns.length];
+        if ( condition != null ) {
+            Set<Integer> references = new HashSet<>();
+            condition.collectColumnReferences( references );
+            for ( int reference : references ) {
+                conditionColumns[reference] = true;
+            }
+        }
+        this.raw = new byte[columns.length][];
+
+        String xidHash = FileStore.SHA.hashString( xid.toString(), FileStore.CHARSET ).toString();
+        this.hardlinkFolder = new File( rootPath, "hardlinks/" + xidHash );
+
+        // Modifications register the transaction first, which prevents a compaction from moving the rows of the snapshot
+        this.pending = operation == Operation.SELECT ? table.getPending( xid ) : table.getOrCreatePending( xid );
+        this.manifest = table.getManifest();
+        table.openReader();
+    }
+
+
+    @Override
+    public Object current() {
+        return current;
+    }
+
+
+    @Override
+    public boolean moveNext() {
+        if ( done ) {
+            return false;
+        }
+        try {
+            if ( operation == Operation.SELECT ) {
+                while ( nextRow() ) {
+                    Object[] values = new Object[columns.length];
+                    if ( condition != null ) {
+                        decode( values, true );
+                        if ( !condition.matches( values, columnTypes, dataContext ) ) {
+                            continue;
+                        }
+                    }
+                    decode( values, false );
+                    if ( projectionMapping != null && condition != null ) {
+                        Object[] projected = new Object[projectionMapping.length];
+                        for ( int i = 0; i < projectionMapping.length; i++ ) {
+                            projected[i] = values[projectionMapping[i]];
+                        }
+                        values = projected;
+                    }
+                    current = values.length == 1 ? values[0] : values;
+                    return true;
+                }
+                done = true;
+                return false;
+            } else if ( operation == Operation.DELETE || operation == Operation.UPDATE ) {
+                // The whole modification is executed by the first call, the second call returns false
+                current = modify();
+                done = true;
+                return true;
+            }
+            throw new RuntimeException( operation + " operation is not supported in SegmentEnumerator" );
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    private long modify() throws IOException {
+        long count = 0;
+        List<byte[][]> updated = new ArrayList<>();
+        while ( nextRow() ) {
+            if ( condition != null ) {
+                Object[] values = new Object[columns.length];
+                decode( values, true );
+                if ( !condition.matches( values, columnTypes, dataContext ) ) {
+                    continue;
+                }
+            }
+            if ( operation == Operation.UPDATE ) {
+                byte[][] newRow = new byte[columns.length][];
+                for ( int c = 0; c < columns.length; c++ ) {
+                    newRow[c] = updates.containsKey( c ) ? SegmentCodec.encode( updates.get( c ).getValue( dataContext, 0 ) ) : raw[c];
+                }
+                updated.add( newRow );
+            }
+            if ( segment != null ) {
+                pending.delete( segment.id, row );
+            } else {
+                pending.delete( batch, row );
+            }
+            count++;
+        }
+        // Inserted after the scan, so that updated rows are not visited again
+        if ( !updated.isEmpty() ) {
+            boolean checkPrimaryKey = updatesPrimaryKey();
+            for ( byte[][] newRow : updated ) {
+                ByteBuffer key = getPrimaryKey( newRow );
+                // The old rows have already been deleted, the key only conflicts with rows which have not been updated
+                // or with another updated row
+                if ( checkPrimaryKey && table.containsPrimaryKey( xid, pkColumns, key ) ) {
+                    throw new RuntimeException( "Primary key conflict! You are trying to update a row to a primary key that already exists." );
+                }
+                table.insert( pending, pending.getBatch( columns, columnTypes ), newRow, key );
+            }
+        }
+        return count;
+    }
+
+
+    private boolean updatesPrimaryKey() {
+        for ( Integer column : pkMapping ) {
+            if ( updates.containsKey( column ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private ByteBuffer getPrimaryKey( final byte[][] values ) {
+        if ( pkMapping.length == 0 ) {
+            return null;
+        }
+        byte[][] key = new byte[pkMapping.length][];
+        for ( int i = 0; i < pkMapping.length; i++ ) {
+            key[i] = values[pkMapping[i]];
+        }
+        return SegmentTable.primaryKey( key );
+    }
+
+
+    /**
+     * Advances to the next row visible to the transaction and reads its encoded values.
+     */
+    private boolean nextRow() throws IOException {
+        while ( true ) {
+            if ( dataContext.getStatement().getTransaction().getCancelFlag().get() ) {
+                return false;
+            }
+            row++;
+            if ( row >= rows && !nextSource() ) {
+                return false;
+            }
+            if ( segment != null ) {
+                if ( segment.isDeleted( row ) || (pending != null && pending.isDeleted( segment.id, row )) ) {
+                    continue;
+                }
+                for ( int c = 0; c < columns.length; c++ ) {
+                    raw[c] = readers[c] == null ? null : readers[c].get( row );
+                }
+            } else {
+                if ( pending.isDeleted( batch, row ) ) {
+                    continue;
+                }
+                byte[][] values = pending.getRow( batch, row );
+                if ( values == null ) {
+                    // The batch has been written as a segment, possibly after the scan has reached it
+                    if ( readers == null ) {
+                        readers = new SegmentFile.Reader[columns.length];
+                        for ( int c = 0; c < columns.length; c++ ) {
+                            SegmentFile file = table.getFile( batch.segment, columns[c] );
+                            readers[c] = file == null ? null : file.reader();
+                        }
+                    }
+                    for ( int c = 0; c < columns.length; c++ ) {
+                        raw[c] = readers[c] == null ? null : readers[c].get( row );
+                    }
+                } else {
+                    for ( int c = 0; c < columns.length; c++ ) {
+                        raw[c] = batchMapping[c] < 0 ? null : values[batchMapping[c]];
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Moves to the next segment which might contain matching rows or to the next batch of rows inserted by the transaction.
+     */
+    private boolean nextSource() throws IOException {
+        row = 0;
+        while ( ++segmentIndex < manifest.segments.size() ) {
+            segment = manifest.segments.get( segmentIndex );
+            rows = segment.rows;
+            readers = new SegmentFile.Reader[columns.length];
+            SegmentFile[] files = new SegmentFile[columns.length];
+            for ( int c = 0; c < columns.length; c++ ) {
+                files[c] = table.getFile( segment, columns[c] );
+                readers[c] = files[c] == null ? null : files[c].reader();
+            }
+            if ( rows > segment.deleted.length && (condition == null || mayMatch( files )) ) {
+                return true;
+            }
+        }
+        segment = null;
+        readers = null;
+        if ( pending == null ) {
+            return false;
+        }
+        while ( (batch = pending.getBatch( ++batchIndex )) != null ) {
+            // Rows inserted into the batch after this point are not visited
+            rows = pending.size( batch );
+            readers = null;
+            batchMapping = new int[columns.length];
+            for ( int c = 0; c < columns.length; c++ ) {
+                batchMapping[c] = -1;
+                for ( int i = 0; i < batch.columns.length; i++ ) {
+                    if ( batch.columns[i] == columns[c] ) {
+                        batchMapping[c] = i;
+                    }
+                }
+            }
+            if ( rows > 0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Checks the zone maps of the segment.
+     */
+    private boolean mayMatch( final SegmentFile[] files ) {
+        Object[] min = new Object[columns.length];
+        Object[] max = new Object[columns.length];
+        boolean[] nullOnly = new boolean[columns.length];
+        for ( int c = 0; c < columns.length; c++ ) {
+            if ( !conditionColumns[c] ) {
+                continue;
+            }
+            if ( files[c] == null ) {
+                nullOnly[c] = true;
+            } else if ( files[c].getNullCount() == files[c].getRowCount() ) {
+                nullOnly[c] = true;
+            } else if ( SegmentCodec.hasZoneMap( columnTypes[c] ) ) {
+                min[c] = SegmentCodec.decode( files[c].getMin(), columnTypes[c] );
+                max[c] = SegmentCodec.decode( files[c].getMax(), columnTypes[c] );
+            }
+        }
+        return condition.mayMatch( min, max, nullOnly, columnTypes, dataContext );
+    }
+
+
+    /**
+     * Decodes the values of the current row.
+     *
+     * @param conditionOnly Whether only the values of the columns referenced by the condition are required
+     */
+    private void decode( final Object[] values, final boolean conditionOnly ) throws IOException {
+        for ( int c = 0; c < columns.length; c++ ) {
+            // Values of the columns referenced by the condition are decoded first
+            if ( conditionOnly ? !conditionColumns[c] : conditionColumns[c] ) {
+                continue;
+            }
+            if ( raw[c] == null ) {
+                values[c] = null;
+            } else if ( SegmentCodec.isMultimedia( columnTypes[c] ) ) {
+                if ( dataContext.getStatement().getTransaction().getFlavor() == MultimediaFlavor.DEFAULT ) {
+                    values[c] = raw[c];
+                } else {
+                    values[c] = materialize( c );
+                }
+            } else {
+                values[c] = SegmentCodec.decode( raw[c], columnTypes[c] );
+            }
+        }
+    }
+
+
+    /**
+     * Provides a multimedia object as a file. The files are deleted when the transaction ends.
+     */
+    private File materialize( final int column ) throws IOException {
+        if ( !hardlinkFolder.exists() && !hardlinkFolder.mkdirs() ) {
+            throw new IOException( "Could not create hardlink directory " + hardlinkFolder.getAbsolutePath() );
+        }
+        String name = segment != null
+                ? "seg" + segment.id + "_" + columns[column] + "_" + row
+                : "trx" + batchIndex + "_" + columns[column] + "_" + row;
+        File file = new File( hardlinkFolder, name );
+        if ( !file.exists() ) {
+            Files.write( file.toPath(), raw[column] );
+        }
+        return file;
+    }
+
+
+    @Override
+    public void reset() {
+        segmentIndex = -1;
+        batchIndex = -1;
+        row = 0;
+        rows = 0;
+        done = false;
+    }
+
+
+    @Override
+    public void close() {
+        if ( !closed ) {
+            closed = true;
+            table.closeReader();
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * The values of one column of a segment. A segment file is written once and never modified afterwards. It is read via
+ * a read-only memory mapping, which is released by {@link #close()} once no reader accesses the file anymore.
+ *
+ * Layout:
+ * <pre>
+ * values:  for every row: int length (-1 for null), bytes
+ * offsets: for every row: long offset of the value
+ * zone:    int length, bytes of the minimal value; int length, bytes of the maximal value (-1 if not maintained)
+ * trailer: int row count, int null count, long start of the offsets, int magic number
+ * </pre>
+ */
+@Slf4j
+final class SegmentFile {
+
+    private static final int MAGIC = 0x53454731; // "SEG1"
+    private static final int TRAILER_SIZE = 4 + 4 + 8 + 4;
+
+    private final MappedByteBuffer buffer;
+    private final long offsetsStart;
+    @Getter
+    private final int rowCount;
+    @Getter
+    private final int nullCount;
+    @Getter
+    private final byte[] min;
+    @Getter
+    private final byte[] max;
+
+
+    SegmentFile( final File file ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            // The mapping stays valid after the channel has been closed
+            buffer = channel.map( MapMode.READ_ONLY, 0, channel.size() );
+        }
+        int trailer = buffer.capacity() - TRAILER_SIZE;
+        if ( trailer < 0 || buffer.getInt( trailer + 16 ) != MAGIC ) {
+            throw new IOException( "Not a valid segment file: " + file.getAbsolutePath() );
+        }
+        rowCount = buffer.getInt( trailer );
+        nullCount = buffer.getInt( trailer + 4 );
+        offsetsStart = buffer.getLong( trailer + 8 );
+        ByteBuffer zone = buffer.duplicate();
+        zone.position( (int) (offsetsStart + 8L * rowCount) );
+        min = readValue( zone );
+        max = readValue( zone );
+    }
+
+
+    /**
+     * Writes a segment file. The file must not exist yet.
+     *
+     * @param min Encoded minimal value, {@code null} if no zone map is maintained for the column
+     * @param max Encoded maximal value, {@code null} if no zone map is maintained for the column
+     */
+    static void write( final File file, final List<byte[]> values, final byte[] min, final byte[] max ) throws IOException {
+        final long[] offsets = new long[values.size()];
+        int nullCount = 0;
+        long position = 0;
+        try ( FileOutputStream fos = new FileOutputStream( file ); DataOutputStream out = new DataOutputStream( new BufferedOutputStream( fos, 1 << 16 ) ) ) {
+            for ( int i = 0; i < values.size(); i++ ) {
+                offsets[i] = position;
+                byte[] value = values.get( i );
+                if ( value == null ) {
+                    out.writeInt( -1 );
+                    nullCount++;
+                    position += 4;
+                } else {
+                    out.writeInt( value.length );
+                    out.write( value );
+                    position += 4 + value.length;
+                }
+            }
+            if ( position > Integer.MAX_VALUE ) {
+                throw new IOException( "Segment file exceeds the maximal size: " + file.getAbsolutePath() );
+            }
+            for ( long offset : offsets ) {
+                out.writeLong( offset );
+            }
+            writeValue( out, min );
+            writeValue( out, max );
+            out.writeInt( values.size() );
+            out.writeInt( nullCount );
+            out.writeLong( position );
+            out.writeInt( MAGIC );
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+
+    private static void writeValue( final DataOutputStream out, final byte[] value ) throws IOException {
+        if ( value == null ) {
+            out.writeInt( -1 );
+        } else {
+            out.writeInt( value.length );
+            out.write( value );
+        }
+    }
+
+
+    private static byte[] readValue( final ByteBuffer buffer ) {
+        int length = buffer.getInt();
+        if ( length < 0 ) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get( value );
+        return value;
+    }
+
+
+    /**
+     * Unmaps the file. Accessing the file afterwards crashes the JVM, the caller therefore has to make sure that no
+     * reader is still in use. If the mapping cannot be released explicitly, it is released by the garbage collector.
+     */
+    void close() {
+        try {
+            unmap( buffer );
+        } catch ( ReflectiveOperationException | RuntimeException e ) {
+            log.debug( "Could not unmap segment file", e );
+        }
+    }
+
+
+    private static void unmap( final MappedByteBuffer buffer ) throws ReflectiveOperationException {
+        Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+        Method invokeCleaner;
+        try {
+            invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+        } catch ( NoSuchMethodException e ) {
+            // Java 8
+            Method cleaner = buffer.getClass().getMethod( "cleaner" );
+            cleaner.setAccessible( true );
+            Object clean = cleaner.invoke( buffer );
+            if ( clean != null ) {
+                clean.getClass().getMethod( "clean" ).invoke( clean );
+            }
+            return;
+        }
+        Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+        theUnsafe.setAccessible( true );
+        invokeCleaner.invoke( theUnsafe.get( null ), buffer );
+    }
+
+
+    /**
+     * @return a reader on this file; readers must not be shared between threads
+     */
+    Reader reader() {
+        return new Reader();
+    }
+
+
+    class Reader {
+
+        private final ByteBuffer view = buffer.duplicate();
+
+
+        /**
+         * @return the encoded value of the row, {@code null} for null values
+         */
+        byte[] get( final int row ) {
+            view.position( (int) buffer.getLong( (int) (offsetsStart + 8L * row) ) );
+            return readValue( view );
+        }
+
+    }
+
+}
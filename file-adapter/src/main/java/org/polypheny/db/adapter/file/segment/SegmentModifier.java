@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.calcite.linq4j.Enumerator;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.adapter.file.segment.SegmentTable.Pending;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * Executes INSERT operations on a {@link SegmentTable}. The rows are added to the uncommitted changes of the
+ * transaction and written to a new segment when the transaction commits.
+ */
+public class SegmentModifier implements Enumerator<Object> {
+
+    private final SegmentTable table;
+    private final DataContext dataContext;
+    private final long[] columns;
+    private final PolyType[] columnTypes;
+    private final long[] pkColumns;
+    private final int[] pkMapping;
+    private final Object[] insertValues;
+
+    private Object current;
+    private boolean inserted = false;
+
+
+    public SegmentModifier(
+            final SegmentTable table,
+            final Long[] columnIds,
+            final PolyType[] columnTypes,
+            final List<Long> pkIds,
+            final DataContext dataContext,
+            final Object[] insertValues ) {
+        this.table = table;
+        this.dataContext = dataContext;
+        this.columnTypes = columnTypes;
+        this.insertValues = insertValues;
+        this.columns = new long[columnIds.length];
+        for ( int i = 0; i < columnIds.length; i++ ) {
+            this.columns[i] = columnIds[i];
+        }
+        this.pkColumns = new long[pkIds.size()];
+        this.pkMapping = new int[pkIds.size()];
+        for ( int i = 0; i < pkIds.size(); i++ ) {
+            pkColumns[i] = pkIds.get( i );
+            for ( int c = 0; c < columns.length; c++ ) {
+                if ( columns[c] == pkColumns[i] ) {
+                    pkMapping[i] = c;
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public Object current() {
+        return current;
+    }
+
+
+    /**
+     * First call: inserts all rows, sets current to the number of inserted rows and returns true.
+     * Second call: returns false
+     */
+    @Override
+    public boolean moveNext() {
+        if ( dataContext.getStatement().getTransaction().getCancelFlag().get() || inserted ) {
+            return false;
+        }
+        try {
+            PolyXid xid = dataContext.getStatement().getTransaction().getXid();
+            Pending pending = table.getOrCreatePending( xid );
+            for ( Object insertRow : insertValues ) {
+                Object[] values = (Object[]) insertRow;
+                byte[][] row = new byte[columns.length][];
+                for ( int c = 0; c < columns.length; c++ ) {
+                    row[c] = SegmentCodec.encode( values[c] );
+                }
+                ByteBuffer key = null;
+                if ( pkColumns.length > 0 ) {
+                    byte[][] pk = new byte[pkColumns.length][];
+                    for ( int i = 0; i < pkColumns.length; i++ ) {
+                        pk[i] = row[pkMapping[i]];
+                    }
+                    key = SegmentTable.primaryKey( pk );
+                    if ( table.containsPrimaryKey( xid, pkColumns, key ) ) {
+                        throw new RuntimeException( "Primary key conflict! You are trying to insert a row with a primary key that already exists." );
+                    }
+                }
+                table.insert( pending, pending.getBatch( columns, columnTypes ), row, key );
+            }
+            current = Long.valueOf( insertValues.length );
+            inserted = true;
+            return true;
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    @Override
+    public void reset() {
+    }
+
+
+    @Override
+    public void close() {
+    }
+
+}
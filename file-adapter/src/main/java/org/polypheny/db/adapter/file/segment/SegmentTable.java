@@ -0,0 +1,821 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file.segment;
+
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.polypheny.db.adapter.file.FileStore;
+import org.polypheny.db.catalog.Catalog;
+import org.polypheny.db.catalog.entity.CatalogColumn;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * A table of the file store using the segment layout. The rows of the table are stored in append-only columnar
+ * segments: Every segment consists of one file per column (see {@link SegmentFile}) and contains up to
+ * {@link #SEGMENT_ROWS} rows. The committed segments and the positions of their deleted rows are listed in the
+ * {@link Manifest} of the table.
+ *
+ * Changes of a transaction are kept in memory until it commits, apart from full batches of inserted rows, which are
+ * written as segments right away. The commit writes the remaining segments and a transaction log containing the new
+ * segments and the deleted rows, before the write-ahead log of the file store is updated.
+ * Afterwards, the transaction log is applied to the manifest. Applying a transaction log is idempotent, which allows
+ * to repeat it during the recovery.
+ */
+@Slf4j
+public class SegmentTable {
+
+    static final int SEGMENT_ROWS = 1 << 16;
+
+    // Number of small segments which triggers a compaction of the small segments
+    private static final int COMPACTION_THRESHOLD = 8;
+
+    private static final Gson GSON = new Gson();
+
+    @Getter
+    private final long tableId;
+    @Getter
+    private final File folder;
+
+    @Getter
+    private volatile Manifest manifest;
+    private long nextSegmentId; // Guarded by this
+    private final Map<String, SegmentFile> files = new ConcurrentHashMap<>();
+    private final Map<PolyXid, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger openReaders = new AtomicInteger();
+
+    // Locations of the committed rows by primary key, built on demand. Guarded by this.
+    private long[] primaryKeyColumns;
+    private Map<ByteBuffer, Long> primaryKeys;
+
+
+    SegmentTable( final long tableId, final File folder ) throws IOException {
+        this.tableId = tableId;
+        this.folder = folder;
+        this.manifest = Manifest.read( folder );
+        this.nextSegmentId = manifest.nextSegmentId;
+        // Segments of transactions which have not yet been committed have ids beyond the one in the manifest
+        File[] segmentFiles = folder.listFiles( f -> f.getName().startsWith( "seg" ) );
+        if ( segmentFiles != null ) {
+            for ( File file : segmentFiles ) {
+                nextSegmentId = Math.max( nextSegmentId, getSegmentId( file.getName() ) + 1 );
+            }
+        }
+    }
+
+
+    /**
+     * Opens the table stored in the folder, or creates a new, empty table if the folder does not exist.
+     */
+    public static SegmentTable open( final long tableId, final File folder ) {
+        try {
+            if ( !folder.exists() ) {
+                if ( !folder.mkdirs() ) {
+                    throw new IOException( "Could not create table folder " + folder.getAbsolutePath() );
+                }
+                Manifest.empty().write( folder );
+            }
+            return new SegmentTable( tableId, folder );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not open segment table " + folder.getAbsolutePath(), e );
+        }
+    }
+
+
+    private static long getSegmentId( final String fileName ) {
+        return Long.parseLong( fileName.substring( 3, fileName.indexOf( '.' ) ) );
+    }
+
+
+    /**
+     * @return the file containing the values of a column of a segment, {@code null} if the segment does not contain the column
+     */
+    SegmentFile getFile( final Segment segment, final long columnId ) throws IOException {
+        if ( !segment.hasColumn( columnId ) ) {
+            return null;
+        }
+        String name = Segment.getFileName( segment.id, columnId );
+        SegmentFile file = files.get( name );
+        if ( file == null ) {
+            SegmentFile mapped = new SegmentFile( new File( folder, name ) );
+            file = files.putIfAbsent( name, mapped );
+            if ( file == null ) {
+                file = mapped;
+            } else {
+                // Another thread has mapped the file concurrently
+                mapped.close();
+            }
+        }
+        return file;
+    }
+
+
+    void openReader() {
+        openReaders.incrementAndGet();
+    }
+
+
+    void closeReader() {
+        openReaders.decrementAndGet();
+    }
+
+
+    /**
+     * @return the uncommitted changes of the transaction, {@code null} if there are none
+     */
+    Pending getPending( final PolyXid xid ) {
+        return pending.get( xid );
+    }
+
+
+    /**
+     * Synchronized with the compaction, which is only executed if there are no uncommitted changes.
+     */
+    synchronized Pending getOrCreatePending( final PolyXid xid ) {
+        return pending.computeIfAbsent( xid, k -> new Pending() );
+    }
+
+
+    /**
+     * Checks whether a row with this primary key is visible to the transaction.
+     */
+    synchronized boolean containsPrimaryKey( final PolyXid xid, final long[] pkColumns, final ByteBuffer key ) throws IOException {
+        Pending trx = pending.get( xid );
+        if ( trx != null && trx.containsPrimaryKey( key ) ) {
+            return true;
+        }
+        if ( primaryKeys == null || !Arrays.equals( pkColumns, primaryKeyColumns ) ) {
+            buildPrimaryKeys( pkColumns );
+        }
+        Long location = primaryKeys.get( key );
+        if ( location == null ) {
+            return false;
+        }
+        return trx == null || !trx.isDeleted( location >>> 32, (int) (location & 0xFFFFFFFFL) );
+    }
+
+
+    private void buildPrimaryKeys( final long[] pkColumns ) throws IOException {
+        Map<ByteBuffer, Long> keys = new HashMap<>();
+        for ( Segment segment : manifest.segments ) {
+            SegmentFile.Reader[] readers = getReaders( segment, pkColumns );
+            for ( int row = 0; row < segment.rows; row++ ) {
+                if ( !segment.isDeleted( row ) ) {
+                    keys.put( primaryKey( read( readers, row ) ), location( segment.id, row ) );
+                }
+            }
+        }
+        primaryKeyColumns = pkColumns;
+        primaryKeys = keys;
+    }
+
+
+    static ByteBuffer primaryKey( final byte[][] values ) {
+        int size = 0;
+        for ( byte[] value : values ) {
+            size += 4 + (value == null ? 0 : value.length);
+        }
+        ByteBuffer key = ByteBuffer.allocate( size );
+        for ( byte[] value : values ) {
+            if ( value == null ) {
+                key.putInt( -1 );
+            } else {
+                key.putInt( value.length ).put( value );
+            }
+        }
+        key.flip();
+        return key;
+    }
+
+
+    private static long location( final long segmentId, final int position ) {
+        return (segmentId << 32) | position;
+    }
+
+
+    private String getLogName( final PolyXid xid ) {
+        return "_trx_" + FileStore.SHA.hashString( xid.toString(), FileStore.CHARSET ).toString();
+    }
+
+
+    /**
+     * Writes the changes of the transaction to disk, so that they can be applied by {@link #commit}, even after a crash.
+     * Has to be invoked before the commit is recorded in the write-ahead log of the store.
+     */
+    public void flush( final PolyXid xid ) {
+        Pending trx = pending.get( xid );
+        if ( trx == null ) {
+            return;
+        }
+        synchronized ( trx ) {
+            flush( xid, trx );
+        }
+    }
+
+
+    private void flush( final PolyXid xid, final Pending trx ) {
+        if ( trx.log != null ) {
+            return;
+        }
+        try {
+            List<Segment> segments = new ArrayList<>();
+            for ( Batch batch : trx.batches ) {
+                if ( batch.segment != null ) {
+                    // Already written when the batch became full
+                    segments.add( batch.segment.withDeleted( batch.deleted.stream().boxed().collect( Collectors.toList() ) ) );
+                    continue;
+                }
+                List<byte[][]> rows = new ArrayList<>( batch.rows.size() );
+                for ( int i = 0; i < batch.rows.size(); i++ ) {
+                    if ( !batch.deleted.get( i ) ) {
+                        rows.add( batch.rows.get( i ) );
+                    }
+                }
+                if ( !rows.isEmpty() ) {
+                    segments.add( writeSegment( allocateSegmentId(), batch.columns, batch.types, rows ) );
+                }
+            }
+            TransactionLog log = new TransactionLog( segments, trx.deletes );
+            File file = new File( folder, getLogName( xid ) );
+            File tmp = new File( folder, getLogName( xid ) + ".tmp" );
+            try ( FileOutputStream fos = new FileOutputStream( tmp ); Writer writer = new OutputStreamWriter( fos, FileStore.CHARSET ) ) {
+                GSON.toJson( log, writer );
+                writer.flush();
+                fos.getFD().sync();
+            }
+            Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+            trx.log = log;
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not write segments of table " + tableId, e );
+        }
+    }
+
+
+    /**
+     * Adds a row to the uncommitted changes of a transaction. Batches which have reached the size of a segment are
+     * written to disk, so that the memory consumption of large transactions is bounded.
+     */
+    void insert( final Pending trx, final Batch batch, final byte[][] row, final ByteBuffer primaryKey ) throws IOException {
+        synchronized ( trx ) {
+            trx.insert( batch, row, primaryKey );
+            if ( batch.rows.size() >= SEGMENT_ROWS ) {
+                batch.segment = writeSegment( allocateSegmentId(), batch.columns, batch.types, batch.rows );
+                batch.rows = null;
+            }
+        }
+    }
+
+
+    private synchronized long allocateSegmentId() {
+        return nextSegmentId++;
+    }
+
+
+    private Segment writeSegment( final long segmentId, final long[] columns, final PolyType[] types, final List<byte[][]> rows ) throws IOException {
+        for ( int c = 0; c < columns.length; c++ ) {
+            List<byte[]> values = new ArrayList<>( rows.size() );
+            byte[] min = null;
+            byte[] max = null;
+            Object minValue = null;
+            Object maxValue = null;
+            boolean zoneMap = SegmentCodec.hasZoneMap( types[c] );
+            for ( byte[][] row : rows ) {
+                byte[] value = row[c];
+                values.add( value );
+                if ( zoneMap && value != null ) {
+                    Object decoded = SegmentCodec.decode( value, types[c] );
+                    if ( !(decoded instanceof Comparable) ) {
+                        zoneMap = false;
+                        min = null;
+                        max = null;
+                        continue;
+                    }
+                    if ( minValue == null || SegmentCodec.compare( decoded, minValue ) < 0 ) {
+                        minValue = decoded;
+                        min = value;
+                    }
+                    if ( maxValue == null || SegmentCodec.compare( decoded, maxValue ) > 0 ) {
+                        maxValue = decoded;
+                        max = value;
+                    }
+                }
+            }
+            SegmentFile.write( new File( folder, Segment.getFileName( segmentId, columns[c] ) ), values, min, max );
+        }
+        return new Segment( segmentId, rows.size(), columns, new int[0] );
+    }
+
+
+    private TransactionLog readLog( final PolyXid xid ) throws IOException {
+        Pending trx = pending.get( xid );
+        if ( trx != null && trx.log != null ) {
+            return trx.log;
+        }
+        File file = new File( folder, getLogName( xid ) );
+        if ( !file.exists() ) {
+            return null;
+        }
+        return GSON.fromJson( new String( Files.readAllBytes( file.toPath() ), FileStore.CHARSET ), TransactionLog.class );
+    }
+
+
+    /**
+     * Applies the changes of the transactions to the manifest. The changes must have been flushed before.
+     */
+    public synchronized void commit( final List<PolyXid> xids ) {
+        try {
+            List<Segment> segments = new ArrayList<>( manifest.segments );
+            Map<Long, Set<Integer>> deletes = new HashMap<>();
+            List<TransactionLog> logs = new ArrayList<>();
+            for ( PolyXid xid : xids ) {
+                TransactionLog log = readLog( xid );
+                if ( log == null ) {
+                    continue;
+                }
+                logs.add( log );
+                for ( Segment segment : log.segments ) {
+                    // The segment is already part of the manifest if a crash occurred after the manifest has been written
+                    if ( manifest.getSegment( segment.id ) == null ) {
+                        segments.add( segment );
+                    }
+                }
+                log.deletes.forEach( ( segmentId, positions ) -> deletes.computeIfAbsent( segmentId, k -> new HashSet<>() ).addAll( positions ) );
+            }
+            if ( !logs.isEmpty() ) {
+                for ( int i = 0; i < segments.size(); i++ ) {
+                    Set<Integer> positions = deletes.get( segments.get( i ).id );
+                    if ( positions != null ) {
+                        segments.set( i, segments.get( i ).withDeleted( positions ) );
+                    }
+                }
+                long next = manifest.nextSegmentId;
+                for ( Segment segment : segments ) {
+                    next = Math.max( next, segment.id + 1 );
+                }
+                Manifest committed = new Manifest( next, segments, manifest.obsolete );
+                committed.write( folder );
+                Manifest previous = manifest;
+                manifest = committed;
+                updatePrimaryKeys( previous, logs, deletes );
+            }
+            for ( PolyXid xid : xids ) {
+                Files.deleteIfExists( new File( folder, getLogName( xid ) ).toPath() );
+                pending.remove( xid );
+            }
+            if ( !logs.isEmpty() ) {
+                compact();
+            }
+            deleteObsolete();
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not commit changes of table " + tableId, e );
+        }
+    }
+
+
+    private void updatePrimaryKeys( final Manifest previous, final List<TransactionLog> logs, final Map<Long, Set<Integer>> deletes ) throws IOException {
+        if ( primaryKeys == null ) {
+            return;
+        }
+        for ( Map.Entry<Long, Set<Integer>> entry : deletes.entrySet() ) {
+            Segment segment = manifest.getSegment( entry.getKey() );
+            if ( segment == null || previous.getSegment( segment.id ) == null ) {
+                // Rows inserted and deleted by the same transaction never have been part of the map
+                continue;
+            }
+            SegmentFile.Reader[] readers = getReaders( segment, primaryKeyColumns );
+            for ( int position : entry.getValue() ) {
+                primaryKeys.remove( primaryKey( read( readers, position ) ) );
+            }
+        }
+        for ( TransactionLog log : logs ) {
+            for ( Segment segment : log.segments ) {
+                segment = manifest.getSegment( segment.id );
+                SegmentFile.Reader[] readers = getReaders( segment, primaryKeyColumns );
+                for ( int row = 0; row < segment.rows; row++ ) {
+                    if ( !segment.isDeleted( row ) ) {
+                        primaryKeys.put( primaryKey( read( readers, row ) ), location( segment.id, row ) );
+                    }
+                }
+            }
+        }
+    }
+
+
+    private SegmentFile.Reader[] getReaders( final Segment segment, final long[] columns ) throws IOException {
+        SegmentFile.Reader[] readers = new SegmentFile.Reader[columns.length];
+        for ( int i = 0; i < columns.length; i++ ) {
+            SegmentFile file = getFile( segment, columns[i] );
+            readers[i] = file == null ? null : file.reader();
+        }
+        return readers;
+    }
+
+
+    private static byte[][] read( final SegmentFile.Reader[] readers, final int row ) {
+        byte[][] values = new byte[readers.length][];
+        for ( int i = 0; i < readers.length; i++ ) {
+            values[i] = readers[i] == null ? null : readers[i].get( row );
+        }
+        return values;
+    }
+
+
+    /**
+     * Discards the changes of the transaction.
+     */
+    public void rollback( final PolyXid xid ) {
+        try {
+            Pending trx = pending.get( xid );
+            if ( trx != null ) {
+                for ( Batch batch : trx.getBatches() ) {
+                    if ( batch.segment != null ) {
+                        deleteSegmentFiles( batch.segment.id );
+                    }
+                }
+            }
+            TransactionLog log = readLog( xid );
+            if ( log != null ) {
+                deleteSegmentFiles( log.segments );
+                Files.deleteIfExists( new File( folder, getLogName( xid ) ).toPath() );
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not rollback changes of table " + tableId, e );
+        } finally {
+            pending.remove( xid );
+        }
+    }
+
+
+    /**
+     * Rolls back all transactions which have been flushed but not committed and deletes files which are not referenced
+     * anymore. Has to be invoked after the write-ahead log of the store has been processed.
+     */
+    public synchronized void recover() {
+        try {
+            Set<Long> referenced = new HashSet<>();
+            File[] logs = folder.listFiles( f -> f.getName().startsWith( "_trx_" ) );
+            if ( logs != null ) {
+                for ( File file : logs ) {
+                    if ( !file.getName().endsWith( ".tmp" ) ) {
+                        TransactionLog log = GSON.fromJson( new String( Files.readAllBytes( file.toPath() ), FileStore.CHARSET ), TransactionLog.class );
+                        for ( Segment segment : log.segments ) {
+                            if ( manifest.getSegment( segment.id ) != null ) {
+                                referenced.add( segment.id );
+                            }
+                        }
+                    }
+                    Files.delete( file.toPath() );
+                }
+            }
+            for ( Segment segment : manifest.segments ) {
+                referenced.add( segment.id );
+            }
+            File[] segmentFiles = folder.listFiles( f -> f.getName().startsWith( "seg" ) );
+            if ( segmentFiles != null ) {
+                for ( File file : segmentFiles ) {
+                    if ( !referenced.contains( getSegmentId( file.getName() ) ) ) {
+                        Files.delete( file.toPath() );
+                    }
+                }
+            }
+            if ( !manifest.obsolete.isEmpty() ) {
+                manifest = new Manifest( manifest.nextSegmentId, manifest.segments, new ArrayList<>() );
+                manifest.write( folder );
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not recover table " + tableId, e );
+        }
+    }
+
+
+    /**
+     * Merges small segments and segments with many deleted rows, unless other transactions have uncommitted changes.
+     */
+    private void compact() throws IOException {
+        if ( !pending.isEmpty() ) {
+            return;
+        }
+        List<Segment> candidates = new ArrayList<>();
+        for ( Segment segment : manifest.segments ) {
+            if ( segment.getLiveRows() < SEGMENT_ROWS / 4 || segment.deleted.length > segment.rows / 2 ) {
+                candidates.add( segment );
+            }
+        }
+        if ( candidates.size() < COMPACTION_THRESHOLD ) {
+            return;
+        }
+
+        Set<Long> columnSet = new HashSet<>();
+        for ( Segment segment : candidates ) {
+            for ( long column : segment.columns ) {
+                columnSet.add( column );
+            }
+        }
+        long[] columns = columnSet.stream().mapToLong( Long::longValue ).sorted().toArray();
+        PolyType[] types = new PolyType[columns.length];
+        for ( int i = 0; i < columns.length; i++ ) {
+            CatalogColumn column = Catalog.getInstance().getColumn( columns[i] );
+            types[i] = column.collectionsType != null ? PolyType.ARRAY : column.type;
+        }
+        List<Segment> segments = new ArrayList<>( manifest.segments );
+        segments.removeAll( candidates );
+        List<byte[][]> rows = new ArrayList<>();
+        for ( Segment segment : candidates ) {
+            SegmentFile.Reader[] readers = getReaders( segment, columns );
+            for ( int row = 0; row < segment.rows; row++ ) {
+                if ( !segment.isDeleted( row ) ) {
+                    rows.add( read( readers, row ) );
+                }
+                if ( rows.size() == SEGMENT_ROWS ) {
+                    segments.add( writeSegment( allocateSegmentId(), columns, types, rows ) );
+                    rows.clear();
+                }
+            }
+        }
+        if ( !rows.isEmpty() ) {
+            segments.add( writeSegment( allocateSegmentId(), columns, types, rows ) );
+        }
+
+        List<Long> obsolete = new ArrayList<>( manifest.obsolete );
+        for ( Segment segment : candidates ) {
+            obsolete.add( segment.id );
+        }
+        manifest = new Manifest( nextSegmentId, segments, obsolete );
+        manifest.write( folder );
+        // The locations of the rows have changed
+        primaryKeys = null;
+        log.debug( "Compacted {} segments of table {}", candidates.size(), tableId );
+    }
+
+
+    /**
+     * Deletes the files of segments which have been replaced by a compaction, if no scan might still access them.
+     */
+    private void deleteObsolete() throws IOException {
+        if ( manifest.obsolete.isEmpty() || openReaders.get() > 0 ) {
+            return;
+        }
+        for ( long segmentId : manifest.obsolete ) {
+            deleteSegmentFiles( segmentId );
+        }
+        manifest = new Manifest( manifest.nextSegmentId, manifest.segments, new ArrayList<>() );
+        manifest.write( folder );
+    }
+
+
+    private void deleteSegmentFiles( final Collection<Segment> segments ) throws IOException {
+        for ( Segment segment : segments ) {
+            deleteSegmentFiles( segment.id );
+        }
+    }
+
+
+    private void deleteSegmentFiles( final long segmentId ) throws IOException {
+        File[] segmentFiles = folder.listFiles( f -> f.getName().startsWith( "seg" + segmentId + "." ) );
+        if ( segmentFiles != null ) {
+            for ( File file : segmentFiles ) {
+                closeFile( file.getName() );
+                Files.deleteIfExists( file.toPath() );
+            }
+        }
+    }
+
+
+    /**
+     * Removes a file from the cache and unmaps it. Only invoked if no scan can access the file anymore.
+     */
+    private void closeFile( final String name ) {
+        SegmentFile file = files.remove( name );
+        if ( file != null ) {
+            file.close();
+        }
+    }
+
+
+    /**
+     * Removes a column from all segments. Not transactional, like the other schema changes of the file store.
+     */
+    public synchronized void dropColumn( final long columnId ) {
+        try {
+            List<Segment> segments = new ArrayList<>();
+            for ( Segment segment : manifest.segments ) {
+                segments.add( segment.withoutColumn( columnId ) );
+            }
+            manifest = new Manifest( manifest.nextSegmentId, segments, manifest.obsolete );
+            manifest.write( folder );
+            primaryKeys = null;
+            File[] columnFiles = folder.listFiles( f -> f.getName().endsWith( ".col" + columnId ) );
+            if ( columnFiles != null && openReaders.get() == 0 ) {
+                for ( File file : columnFiles ) {
+                    closeFile( file.getName() );
+                    Files.deleteIfExists( file.toPath() );
+                }
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not drop column " + columnId, e );
+        }
+    }
+
+
+    /**
+     * Removes all rows. Not transactional, like the other schema changes of the file store.
+     */
+    public synchronized void truncate() {
+        try {
+            List<Long> obsolete = new ArrayList<>( manifest.obsolete );
+            for ( Segment segment : manifest.segments ) {
+                obsolete.add( segment.id );
+            }
+            manifest = new Manifest( manifest.nextSegmentId, new ArrayList<>(), obsolete );
+            manifest.write( folder );
+            primaryKeys = null;
+            deleteObsolete();
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not truncate table " + tableId, e );
+        }
+    }
+
+
+    public synchronized void drop() {
+        try {
+            if ( openReaders.get() == 0 ) {
+                files.values().forEach( SegmentFile::close );
+            }
+            files.clear();
+            pending.clear();
+            FileUtils.deleteDirectory( folder );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Could not drop table " + tableId, e );
+        }
+    }
+
+
+    /**
+     * Rows inserted by a transaction with the same set of columns. A batch is kept in memory until it is full and then
+     * written as a segment which is not yet part of the manifest.
+     */
+    static final class Batch {
+
+        final long[] columns;
+        final PolyType[] types;
+        List<byte[][]> rows = new ArrayList<>(); // Null if the batch has been written
+        Segment segment; // The uncommitted segment the batch has been written to
+        final BitSet deleted = new BitSet(); // Positions of the rows deleted by the transaction
+
+
+        Batch( final long[] columns, final PolyType[] types ) {
+            this.columns = columns;
+            this.types = types;
+        }
+
+
+        int size() {
+            return segment != null ? segment.rows : rows.size();
+        }
+
+    }
+
+
+    /**
+     * The uncommitted changes of a transaction. Accessed concurrently by the threads of parallel scans and by the
+     * committing thread, the changes and the batches are therefore guarded by the monitor of this object.
+     */
+    static final class Pending {
+
+        private final List<Batch> batches = new ArrayList<>();
+        private final Map<Long, Set<Integer>> deletes = new HashMap<>(); // Positions of deleted rows of committed segments
+        private final Map<ByteBuffer, long[]> primaryKeys = new HashMap<>(); // Batch and row of the inserted rows
+        private volatile TransactionLog log; // Set when the changes have been flushed
+
+
+        synchronized Batch getBatch( final long[] columns, final PolyType[] types ) {
+            if ( !batches.isEmpty() ) {
+                Batch last = batches.get( batches.size() - 1 );
+                if ( last.segment == null && Arrays.equals( last.columns, columns ) ) {
+                    return last;
+                }
+            }
+            Batch batch = new Batch( columns, types );
+            batches.add( batch );
+            return batch;
+        }
+
+
+        /**
+         * @return the batch at the index, {@code null} if there is no such batch
+         */
+        synchronized Batch getBatch( final int index ) {
+            return index < batches.size() ? batches.get( index ) : null;
+        }
+
+
+        synchronized List<Batch> getBatches() {
+            return new ArrayList<>( batches );
+        }
+
+
+        synchronized int size( final Batch batch ) {
+            return batch.size();
+        }
+
+
+        /**
+         * @return the values of a row of the batch, {@code null} if the batch has already been written as a segment
+         */
+        synchronized byte[][] getRow( final Batch batch, final int position ) {
+            return batch.rows == null ? null : batch.rows.get( position );
+        }
+
+
+        synchronized void insert( final Batch batch, final byte[][] row, final ByteBuffer primaryKey ) {
+            batch.rows.add( row );
+            if ( primaryKey != null ) {
+                primaryKeys.put( primaryKey, new long[]{ batches.indexOf( batch ), batch.rows.size() - 1 } );
+            }
+        }
+
+
+        synchronized void delete( final long segmentId, final int position ) {
+            deletes.computeIfAbsent( segmentId, k -> new HashSet<>() ).add( position );
+        }
+
+
+        synchronized void delete( final Batch batch, final int position ) {
+            batch.deleted.set( position );
+        }
+
+
+        synchronized boolean isDeleted( final long segmentId, final int position ) {
+            Set<Integer> positions = deletes.get( segmentId );
+            return positions != null && positions.contains( position );
+        }
+
+
+        synchronized boolean isDeleted( final Batch batch, final int position ) {
+            return batch.deleted.get( position );
+        }
+
+
+        synchronized boolean containsPrimaryKey( final ByteBuffer key ) {
+            long[] location = primaryKeys.get( key );
+            return location != null && !batches.get( (int) location[0] ).deleted.get( (int) location[1] );
+        }
+
+    }
+
+
+    /**
+     * The changes of a transaction as written to disk before the commit.
+     */
+    private static final class TransactionLog {
+
+        final List<Segment> segments;
+        final Map<Long, Set<Integer>> deletes;
+
+
+        TransactionLog( final List<Segment> segments, final Map<Long, Set<Integer>> deletes ) {
+            this.segments = segments;
+            this.deletes = deletes;
+        }
+
+    }
+
+}
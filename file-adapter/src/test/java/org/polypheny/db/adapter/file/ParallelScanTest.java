@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.adapter.file;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.polypheny.db.adapter.DataContext;
+import org.polypheny.db.adapter.file.FileRel.FileImplementor.Operation;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.sql.SqlKind;
+import org.polypheny.db.transaction.PUID;
+import org.polypheny.db.transaction.PolyXid;
+import org.polypheny.db.transaction.Statement;
+import org.polypheny.db.transaction.Transaction;
+import org.polypheny.db.type.PolyType;
+
+
+/**
+ * Tests the {@link ParallelScan} on a table with an integer primary key (column 1) and an integer value (column 2).
+ * The results of the parallel scans are compared with the results of sequential scans.
+ */
+public class ParallelScanTest {
+
+    private static final Long[] COLUMN_IDS = new Long[]{ 1L, 2L };
+    private static final PolyType[] COLUMN_TYPES = new PolyType[]{ PolyType.INTEGER, PolyType.INTEGER };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private int oldParallelism;
+    private int oldThreshold;
+    private DataContext dataContext;
+    private AtomicBoolean cancelFlag;
+
+
+    @Before
+    public void setUp() {
+        oldParallelism = RuntimeConfig.FILE_SCAN_PARALLELISM.getInteger();
+        oldThreshold = RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.getInteger();
+        RuntimeConfig.FILE_SCAN_PARALLELISM.setInteger( 4 );
+
+        PolyXid xid = PolyXid.generateLocalTransactionIdentifier( PUID.randomPUID( PUID.Type.NODE ), PUID.randomPUID( PUID.Type.TRANSACTION ) );
+        cancelFlag = new AtomicBoolean( false );
+        Transaction transaction = mock( Transaction.class );
+        when( transaction.getXid() ).thenReturn( xid );
+        when( transaction.getCancelFlag() ).thenReturn( cancelFlag );
+        Statement statement = mock( Statement.class );
+        when( statement.getTransaction() ).thenReturn( transaction );
+        dataContext = mock( DataContext.class );
+        when( dataContext.getStatement() ).thenReturn( statement );
+    }
+
+
+    @After
+    public void tearDown() {
+        RuntimeConfig.FILE_SCAN_PARALLELISM.setInteger( oldParallelism );
+        RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.setInteger( oldThreshold );
+    }
+
+
+    /**
+     * Creates a table with one file per row and column. The value of every row is its key modulo 10.
+     */
+    private String createTable( int rows ) throws Exception {
+        File root = temporaryFolder.newFolder();
+        File pkFolder = FileStore.getColumnFolder( root.getAbsolutePath(), COLUMN_IDS[0] );
+        File valueFolder = FileStore.getColumnFolder( root.getAbsolutePath(), COLUMN_IDS[1] );
+        assertTrue( pkFolder.mkdirs() );
+        assertTrue( valueFolder.mkdirs() );
+        for ( int i = 0; i < rows; i++ ) {
+            Files.write( new File( pkFolder, "row" + i ).toPath(), String.valueOf( i ).getBytes( FileStore.CHARSET ) );
+            Files.write( new File( valueFolder, "row" + i ).toPath(), String.valueOf( i % 10 ).getBytes( FileStore.CHARSET ) );
+        }
+        return root.getAbsolutePath();
+    }
+
+
+    private FileEnumerator enumerator( String rootPath, Integer[] projectionMapping, Condition condition ) {
+        return new FileEnumerator(
+                Operation.SELECT,
+                rootPath,
+                COLUMN_IDS,
+                COLUMN_TYPES,
+                Collections.singletonList( COLUMN_IDS[0] ),
+                projectionMapping,
+                dataContext,
+                condition,
+                null,
+                Collections.emptyList() );
+    }
+
+
+    private static List<String> read( FileEnumerator enumerator ) {
+        List<String> rows = new ArrayList<>();
+        while ( enumerator.moveNext() ) {
+            Object current = enumerator.current();
+            rows.add( current instanceof Object[] ? Arrays.toString( (Object[]) current ) : String.valueOf( current ) );
+        }
+        enumerator.close();
+        // The parallel scan does not preserve the order of the rows
+        Collections.sort( rows );
+        return rows;
+    }
+
+
+    /**
+     * Scans the table sequentially and in parallel and checks that both scans return the same rows.
+     */
+    private List<String> check( String rootPath, Integer[] projectionMapping, Condition condition ) {
+        RuntimeConfig.FILE_SCAN_PARALLELISM.setInteger( 1 );
+        FileEnumerator sequential = enumerator( rootPath, projectionMapping, condition );
+        assertFalse( sequential.parallel );
+        List<String> expected = read( sequential );
+
+        RuntimeConfig.FILE_SCAN_PARALLELISM.setInteger( 4 );
+        FileEnumerator parallel = enumerator( rootPath, projectionMapping, condition );
+        assertTrue( parallel.parallel );
+        assertEquals( expected, read( parallel ) );
+        return expected;
+    }
+
+
+    @Test
+    public void rangeSizeTest() {
+        assertEquals( 25, ParallelScan.getRangeSize( 100, 4 ) );
+        assertEquals( 26, ParallelScan.getRangeSize( 101, 4 ) );
+        assertEquals( ParallelScan.RANGE_SIZE, ParallelScan.getRangeSize( 100_000, 4 ) );
+        assertEquals( 1, ParallelScan.getRangeSize( 3, 4 ) );
+        assertEquals( 1, ParallelScan.getRangeSize( 0, 4 ) );
+    }
+
+
+    @Test
+    public void thresholdTest() throws Exception {
+        String rootPath = createTable( 200 );
+        // Thresholds below the maximal range size are respected
+        RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.setInteger( 100 );
+        assertTrue( enumerator( rootPath, null, null ).parallel );
+        RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.setInteger( 201 );
+        assertFalse( enumerator( rootPath, null, null ).parallel );
+    }
+
+
+    @Test
+    public void scanTest() throws Exception {
+        RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.setInteger( 10 );
+        String rootPath = createTable( 3000 );
+        assertEquals( 3000, check( rootPath, null, null ).size() );
+        // Projection without a condition: Only the files of the projected column are read
+        assertEquals( 3000, check( rootPath, new Integer[]{ 1 }, null ).size() );
+    }
+
+
+    @Test
+    public void conditionTest() throws Exception {
+        RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.setInteger( 10 );
+        String rootPath = createTable( 500 );
+        Condition condition = new Condition( SqlKind.EQUALS, 1, null, 7, new Condition[0] );
+        List<String> rows = check( rootPath, new Integer[]{ 0 }, condition );
+        assertEquals( 50, rows.size() );
+        assertTrue( rows.contains( "7" ) );
+        assertTrue( rows.contains( "497" ) );
+    }
+
+
+    @Test
+    public void cancelTest() throws Exception {
+        RuntimeConfig.FILE_SCAN_PARALLEL_THRESHOLD.setInteger( 10 );
+        String rootPath = createTable( 100 );
+        FileEnumerator enumerator = enumerator( rootPath, null, null );
+        assertTrue( enumerator.parallel );
+        cancelFlag.set( true );
+        assertFalse( enumerator.moveNext() );
+        enumerator.close();
+    }
+
+}
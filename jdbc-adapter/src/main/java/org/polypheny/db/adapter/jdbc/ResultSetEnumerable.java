@@ -414,9 +414,12 @@ private Enumerator<T> enumeratorBasedOnPreparedStatement() {
             setTimeoutIfPossible( preparedStatement );
             if ( preparedStatementEnricher.enrich( preparedStatement, connectionHandler ) ) {
                 // batch
-                preparedStatement.executeBatch();
-                Integer updateCount = preparedStatement.getUpdateCount();
-                return Linq4j.singletonEnumerator( (T) updateCount );
+                // The update count of the statement is undefined after executing a batch, sum up the counts of the batch entries
+                int updateCount = 0;
+                for ( int count : preparedStatement.executeBatch() ) {
+                    updateCount += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                return Linq4j.singletonEnumerator( (T) Integer.valueOf( updateCount ) );
             } else {
                 if ( preparedStatement.execute() ) {
                     final ResultSet resultSet = preparedStatement.getResultSet();
@@ -57,7 +57,7 @@ public TransactionalConnectionFactory( BasicDataSource dataSource, int maxConnec
 
 
     @Override
-    public TransactionalConnectionHandler getOrCreateConnectionHandler( Xid xid ) throws ConnectionHandlerException {
+    public synchronized TransactionalConnectionHandler getOrCreateConnectionHandler( Xid xid ) throws ConnectionHandlerException {
         if ( !activeInstances.containsKey( xid ) ) {
             TransactionalConnectionHandler transactionHandler = getFreeTransactionHandler();
             transactionHandler.xid = xid;
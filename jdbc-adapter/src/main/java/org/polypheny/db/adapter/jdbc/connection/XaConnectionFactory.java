@@ -60,7 +60,7 @@ public XaConnectionFactory( XADataSource dataSource, int maxConnections, SqlDial
 
 
     @Override
-    public XaConnectionHandler getOrCreateConnectionHandler( Xid xid ) throws ConnectionHandlerException {
+    public synchronized XaConnectionHandler getOrCreateConnectionHandler( Xid xid ) throws ConnectionHandlerException {
         if ( !activeInstances.containsKey( xid ) ) {
             XaConnectionHandler xaConnectionHandler = getFreeTransactionHandler();
             xaConnectionHandler.init( xid );
@@ -118,6 +118,8 @@ private ConnectionFactory createConnectionFactory() {
         dataSource.setPassword( settings.get( "password" ) );
         dataSource.setDefaultAutoCommit( false );
         dataSource.setDefaultTransactionIsolation( Connection.TRANSACTION_READ_UNCOMMITTED );
+        // Let the driver rewrite batched inserts into multi-row inserts
+        dataSource.addConnectionProperty( "reWriteBatchedInserts", "true" );
         return new TransactionalConnectionFactory( dataSource, Integer.parseInt( settings.get( "maxConnections" ) ), dialect );
     }
 
@@ -36,7 +36,6 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -98,6 +97,7 @@
 import org.polypheny.db.rel.type.RelDataTypeField;
 import org.polypheny.db.rel.type.RelDataTypeSystem;
 import org.polypheny.db.routing.ExecutionTimeMonitor;
+import org.polypheny.db.sql.SqlInsert;
 import org.polypheny.db.sql.SqlKind;
 import org.polypheny.db.sql.SqlNode;
 import org.polypheny.db.transaction.Transaction;
@@ -859,6 +859,10 @@ public MetaResultSet getPseudoColumns( final ConnectionHandle ch, final String c
     /**
      * Executes a batch of commands on a prepared statement.
      *
+     * The batch is executed in chunks of {@link RuntimeConfig#BATCH_SIZE} parameter sets, every chunk is executed as a
+     * separate statement of the current transaction. If a chunk fails, the changes of the previous chunks are not
+     * undone; they remain part of the transaction until it is rolled back.
+     *
      * @param h Statement handle
      * @param parameterValues A collection of list of typed values, one list per batch
      * @return An array of update counts containing one element for each command in the batch.
@@ -866,53 +870,93 @@ public MetaResultSet getPseudoColumns( final ConnectionHandle ch, final String c
     @Override
     public ExecuteBatchResult executeBatchProtobuf( final StatementHandle h, final List<UpdateBatch> parameterValues ) throws NoSuchStatementException {
         final PolyphenyDbConnectionHandle connection = openConnections.get( h.connectionId );
-        synchronized ( connection ) {
-            if ( log.isTraceEnabled() ) {
-                log.trace( "executeBatchProtobuf( StatementHandle {}, List<UpdateBatch> {} )", h, parameterValues );
-            }
+        if ( log.isTraceEnabled() ) {
+            log.trace( "executeBatchProtobuf( StatementHandle {}, List<UpdateBatch> {} )", h, parameterValues );
+        }
 
-            final PolyphenyDbStatementHandle statementHandle = getPolyphenyDbStatementHandle( h );
+        final PolyphenyDbStatementHandle statementHandle = getPolyphenyDbStatementHandle( h );
 
-            long[] updateCounts = new long[parameterValues.size()];
-            Map<Long, List<Object>> values = new HashMap<>();
-            for ( UpdateBatch updateBatch : parameterValues ) {
-                List<Common.TypedValue> list = updateBatch.getParameterValuesList();
-                long index = 0;
-                for ( Common.TypedValue v : list ) {
-                    long i = index++;
-                    if ( !values.containsKey( i ) ) {
-                        values.put( i, new LinkedList<>() );
-                    }
-                    if ( "ARRAY".equals( v.getType().name() ) ) {
-                        values.get( i ).add( convertList( (List<Object>) TypedValue.fromProto( v ).toLocal() ) );
-                    } else {
-                        values.get( i ).add( TypedValue.fromProto( v ).toJdbc( calendar ) );
-                    }
-                }
+        // The batch is executed in chunks. The parameter values of a chunk are decoded into a column-wise buffer which
+        // is reused for all chunks, the monitor of the connection is only held while executing a chunk.
+        final long[] updateCounts = new long[parameterValues.size()];
+        final ParameterBatch batch = new ParameterBatch(
+                Math.max( 1, Math.min( RuntimeConfig.BATCH_SIZE.getInteger(), parameterValues.size() ) ),
+                this::toJdbc );
+        int offset = 0;
+        try {
+            final boolean insertValues;
+            synchronized ( connection ) {
+                insertValues = isInsertValues( connection.getCurrentOrCreateNewTransaction().getSqlProcessor().parse( statementHandle.getPreparedQuery() ) );
             }
-
-            try {
-                if ( values.size() == 0 ) {
+            for ( UpdateBatch updateBatch : parameterValues ) {
+                batch.add( updateBatch.getParameterValuesList() );
+                if ( batch.getNumberOfParameters() == 0 ) {
                     // Nothing to execute
                     return new ExecuteBatchResult( new long[0] );
                 }
-                statementHandle.setStatement( connection.getCurrentOrCreateNewTransaction().createStatement() );
-                for ( Entry<Long, List<Object>> valuesList : values.entrySet() ) {
-                    statementHandle.getStatement().getDataContext().addParameterValues( valuesList.getKey(), null, valuesList.getValue() );
+                if ( batch.isFull() ) {
+                    executeBatch( h, connection, statementHandle, batch, updateCounts, offset, insertValues );
+                    offset += batch.getSize();
+                    batch.clear();
                 }
-                prepare( h, statementHandle.getPreparedQuery() );
-                updateCounts[0] = execute( h, connection, statementHandle, -1 ).size();
-            } catch ( Throwable e ) {
-                log.error( "Exception while preparing query", e );
-                String message = e.getLocalizedMessage();
-                throw new AvaticaRuntimeException( message == null ? "null" : message, -1, "", AvaticaSeverity.ERROR );
             }
+            if ( batch.getSize() > 0 ) {
+                executeBatch( h, connection, statementHandle, batch, updateCounts, offset, insertValues );
+            }
+        } catch ( Throwable e ) {
+            log.error( "Exception while executing batch, the first {} parameter sets have been executed", offset, e );
+            String message = e.getLocalizedMessage();
+            throw new AvaticaRuntimeException( message == null ? "null" : message, -1, "", AvaticaSeverity.ERROR );
+        }
 
-            return new ExecuteBatchResult( updateCounts );
+        return new ExecuteBatchResult( updateCounts );
+    }
+
+
+    /**
+     * Executes the statement for all parameter sets buffered in the batch and stores the update counts of the
+     * parameter sets starting at the given offset.
+     *
+     * @param insertValues whether the statement is an INSERT of a VALUES clause, which inserts the same number of rows
+     * for every parameter set
+     */
+    private void executeBatch( StatementHandle h, PolyphenyDbConnectionHandle connection, PolyphenyDbStatementHandle statementHandle, ParameterBatch batch, long[] updateCounts, int offset, boolean insertValues ) throws NoSuchStatementException {
+        synchronized ( connection ) {
+            statementHandle.setStatement( connection.getCurrentOrCreateNewTransaction().createStatement() );
+            final DataContext dataContext = statementHandle.getStatement().getDataContext();
+            for ( int i = 0; i < batch.getNumberOfParameters(); i++ ) {
+                dataContext.addParameterValues( i, null, batch.getValues( i ) );
+            }
+            // Subsequent chunks are served by the query plan and implementation cache
+            prepare( h, statementHandle.getPreparedQuery() );
+            final int rows = batch.getSize();
+            if ( statementHandle.getSignature().statementType == StatementType.IS_DML ) {
+                int rowsChanged = executeDml( statementHandle );
+                if ( rows == 1 ) {
+                    updateCounts[offset] = rowsChanged;
+                } else if ( rowsChanged == 0 ) {
+                    // No parameter set has changed a row
+                    Arrays.fill( updateCounts, offset, offset + rows, 0 );
+                } else if ( insertValues && rowsChanged % rows == 0 ) {
+                    // Every parameter set has inserted the rows of the VALUES clause
+                    Arrays.fill( updateCounts, offset, offset + rows, rowsChanged / rows );
+                } else {
+                    // The total is known but it cannot be attributed to the individual parameter sets
+                    Arrays.fill( updateCounts, offset, offset + rows, Statement.SUCCESS_NO_INFO );
+                }
+            } else {
+                execute( h, connection, statementHandle, -1 );
+                Arrays.fill( updateCounts, offset, offset + rows, Statement.SUCCESS_NO_INFO );
+            }
         }
     }
 
 
+    private static boolean isInsertValues( SqlNode node ) {
+        return node.getKind() == SqlKind.INSERT && ((SqlInsert) node).getSource().getKind() == SqlKind.VALUES;
+    }
+
+
     /**
      * Creates an iterable for a result set.
      *
@@ -1252,30 +1296,7 @@ private List<MetaResultSet> execute( StatementHandle h, PolyphenyDbConnectionHan
             resultSets = ImmutableList.of( resultSet );
             commit( connection.getHandle() );
         } else if ( statementHandle.getSignature().statementType == StatementType.IS_DML ) {
-            Iterator<?> iterator = statementHandle.getSignature().enumerable( statementHandle.getStatement().getDataContext() ).iterator();
-            Object object = null;
-            int rowsChanged = -1;
-            while ( iterator.hasNext() ) {
-                object = iterator.next();
-                int num;
-                if ( object == null ) {
-                    throw new NullPointerException();
-                } else if ( object.getClass().isArray() ) {
-                    num = ((Number) ((Object[]) object)[0]).intValue();
-                } else {
-                    num = ((Number) object).intValue();
-                }
-                // Check if num is equal for all adapters
-                /*if ( rowsChanged != -1 && rowsChanged != num ) {
-                    throw new RuntimeException( "The number of changed rows is not equal for all stores!" );
-                }*/
-                rowsChanged = num;
-            }
-
-            // Some stores do not correctly report the number of changed rows (set to zero to avoid assertion error in the MetaResultSet.count() method)
-            if ( rowsChanged < 0 ) {
-                rowsChanged = 0;
-            }
+            int rowsChanged = executeDml( statementHandle );
 
             MetaResultSet metaResultSet = MetaResultSet.count( h.connectionId, h.id, rowsChanged );
             resultSets = ImmutableList.of( metaResultSet );
@@ -1302,6 +1323,46 @@ private List<MetaResultSet> execute( StatementHandle h, PolyphenyDbConnectionHan
     }
 
 
+    /**
+     * Executes a prepared data manipulation statement and returns the number of changed rows.
+     */
+    private int executeDml( PolyphenyDbStatementHandle statementHandle ) {
+        Iterator<?> iterator = statementHandle.getSignature().enumerable( statementHandle.getStatement().getDataContext() ).iterator();
+        Object object = null;
+        int rowsChanged = -1;
+        while ( iterator.hasNext() ) {
+            object = iterator.next();
+            int num;
+            if ( object == null ) {
+                throw new NullPointerException();
+            } else if ( object.getClass().isArray() ) {
+                num = ((Number) ((Object[]) object)[0]).intValue();
+            } else {
+                num = ((Number) object).intValue();
+            }
+            // Check if num is equal for all adapters
+            /*if ( rowsChanged != -1 && rowsChanged != num ) {
+                throw new RuntimeException( "The number of changed rows is not equal for all stores!" );
+            }*/
+            rowsChanged = num;
+        }
+
+        // Some stores do not correctly report the number of changed rows (set to zero to avoid assertion error in the MetaResultSet.count() method)
+        if ( rowsChanged < 0 ) {
+            rowsChanged = 0;
+        }
+        return rowsChanged;
+    }
+
+
+    private Object toJdbc( Common.TypedValue value ) {
+        if ( "ARRAY".equals( value.getType().name() ) ) {
+            return convertList( (List<Object>) TypedValue.fromProto( value ).toLocal() );
+        }
+        return TypedValue.fromProto( value ).toJdbc( calendar );
+    }
+
+
     /**
      * Called during the creation of a statement to allocate a new handle.
      *
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.jdbc;
+
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+import lombok.Getter;
+import org.apache.calcite.avatica.proto.Common;
+import org.apache.calcite.avatica.proto.Common.Rep;
+
+
+/**
+ * Column-wise buffer for the parameter sets of a JDBC batch. Booleans and integral or double values are stored unboxed
+ * in a primitive array per parameter; all other values are converted using the provided converter. The buffer holds at
+ * most {@code capacity} parameter sets and is reused for all chunks of a batch.
+ */
+class ParameterBatch {
+
+    private final int capacity;
+    private final Function<Common.TypedValue, Object> converter;
+    private final List<Column> columns = new ArrayList<>();
+
+    @Getter
+    private int size = 0;
+
+
+    ParameterBatch( int capacity, Function<Common.TypedValue, Object> converter ) {
+        this.capacity = capacity;
+        this.converter = converter;
+    }
+
+
+    void add( List<Common.TypedValue> parameterValues ) {
+        if ( columns.isEmpty() ) {
+            for ( int i = 0; i < parameterValues.size(); i++ ) {
+                columns.add( new Column() );
+            }
+        }
+        if ( parameterValues.size() != columns.size() ) {
+            throw new RuntimeException( "Expecting " + columns.size() + " parameters but " + parameterValues.size() + " values specified!" );
+        }
+        if ( isFull() ) {
+            throw new RuntimeException( "The parameter batch is full" );
+        }
+        for ( int i = 0; i < parameterValues.size(); i++ ) {
+            columns.get( i ).set( size, parameterValues.get( i ) );
+        }
+        size++;
+    }
+
+
+    boolean isFull() {
+        return size >= capacity;
+    }
+
+
+    int getNumberOfParameters() {
+        return columns.size();
+    }
+
+
+    /**
+     * Returns a view on the buffered values of a parameter. Primitive values are boxed on access. The view is only
+     * valid until the batch is cleared.
+     */
+    List<Object> getValues( int index ) {
+        return columns.get( index );
+    }
+
+
+    void clear() {
+        size = 0;
+        for ( Column column : columns ) {
+            column.clear();
+        }
+    }
+
+
+    private static boolean isPrimitive( Rep rep ) {
+        switch ( rep ) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INTEGER:
+            case LONG:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    private class Column extends AbstractList<Object> {
+
+        // Representation of the values stored in the primitive array; null as long as only null values have been added
+        private Rep rep = null;
+        private long[] primitives = null;
+        // Only used if a non-primitive value has been added
+        private Object[] objects = null;
+        private final BitSet nulls = new BitSet();
+
+
+        void set( int row, Common.TypedValue value ) {
+            if ( value.getNull() || value.getType() == Rep.NULL ) {
+                nulls.set( row );
+                if ( objects != null ) {
+                    objects[row] = null;
+                }
+                return;
+            }
+            nulls.clear( row );
+            if ( objects == null && isPrimitive( value.getType() ) && (rep == null || rep == value.getType()) ) {
+                if ( primitives == null ) {
+                    primitives = new long[capacity];
+                }
+                rep = value.getType();
+                switch ( rep ) {
+                    case BOOLEAN:
+                        primitives[row] = value.getBoolValue() ? 1 : 0;
+                        break;
+                    case DOUBLE:
+                        primitives[row] = Double.doubleToRawLongBits( value.getDoubleValue() );
+                        break;
+                    default:
+                        primitives[row] = value.getNumberValue();
+                }
+            } else {
+                if ( objects == null ) {
+                    // Mixed representations, box the values buffered so far
+                    Object[] boxed = new Object[capacity];
+                    for ( int i = 0; i < row; i++ ) {
+                        boxed[i] = get( i );
+                    }
+                    objects = boxed;
+                }
+                objects[row] = converter.apply( value );
+            }
+        }
+
+
+        @Override
+        public Object get( int row ) {
+            if ( nulls.get( row ) ) {
+                return null;
+            }
+            if ( objects != null ) {
+                return objects[row];
+            }
+            long bits = primitives[row];
+            switch ( rep ) {
+                case BOOLEAN:
+                    return bits != 0;
+                case BYTE:
+                    return (byte) bits;
+                case SHORT:
+                    return (short) bits;
+                case INTEGER:
+                    return (int) bits;
+                case DOUBLE:
+                    return Double.longBitsToDouble( bits );
+                default:
+                    return bits;
+            }
+        }
+
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+
+        @Override
+        public void clear() {
+            rep = null;
+            objects = null;
+            nulls.clear();
+        }
+
+    }
+
+}
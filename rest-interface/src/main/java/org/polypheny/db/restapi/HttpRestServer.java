@@ -37,13 +37,16 @@
 import javax.servlet.ServletException;
 import javax.servlet.http.Part;
 import lombok.extern.slf4j.Slf4j;
+import org.polypheny.db.catalog.Catalog;
 import org.polypheny.db.catalog.entity.CatalogUser;
+import org.polypheny.db.config.RuntimeConfig;
 import org.polypheny.db.iface.Authenticator;
 import org.polypheny.db.iface.QueryInterface;
 import org.polypheny.db.information.InformationGraph;
 import org.polypheny.db.information.InformationGraph.GraphData;
 import org.polypheny.db.information.InformationGraph.GraphType;
 import org.polypheny.db.information.InformationGroup;
+import org.polypheny.db.information.InformationKeyValue;
 import org.polypheny.db.information.InformationManager;
 import org.polypheny.db.information.InformationPage;
 import org.polypheny.db.information.InformationTable;
@@ -86,6 +89,8 @@ public class HttpRestServer extends QueryInterface {
     private final AtomicLong patchCounter = new AtomicLong();
     private final AtomicLong postCounter = new AtomicLong();
 
+    private final RestPlanCache planCache = new RestPlanCache();
+
     private final MonitoringPage monitoringPage;
 
     private Service restServer;
@@ -100,6 +105,8 @@ public HttpRestServer( TransactionManager transactionManager, Authenticator auth
             // Port is already in use
             throw new RuntimeException( "Unable to start " + INTERFACE_NAME + " on port " + port + "! The port is already in use." );
         }
+        // Cached plans are invalidated by any change of the catalog
+        Catalog.getInstance().addObserver( planCache );
         // Add information page
         monitoringPage = new MonitoringPage();
     }
@@ -110,7 +117,7 @@ public void run() {
         restServer = Service.ignite();
         restServer.port( port );
 
-        Rest rest = new Rest( transactionManager, "pa", "APP" );
+        Rest rest = new Rest( transactionManager, "pa", "APP", planCache );
         restRoutes( restServer, rest );
 
         log.info( "{} started and is listening on port {}.", INTERFACE_NAME, port );
@@ -299,6 +306,7 @@ public List<QueryInterfaceSetting> getAvailableSettings() {
     @Override
     public void shutdown() {
         restServer.stop();
+        Catalog.getInstance().removeObserver( planCache );
         monitoringPage.remove();
         log.info( "{} stopped.", INTERFACE_NAME );
     }
@@ -322,6 +330,9 @@ private class MonitoringPage {
         private final InformationGroup informationGroupRequests;
         private final InformationGraph counterGraph;
         private final InformationTable counterTable;
+        private final InformationGroup informationGroupPlanCache;
+        private final InformationKeyValue planCacheKv;
+        private final InformationTable planCacheTable;
 
 
         public MonitoringPage() {
@@ -349,6 +360,22 @@ public MonitoringPage() {
             im.registerInformation( counterTable );
 
             informationGroupRequests.setRefreshFunction( this::update );
+
+            informationGroupPlanCache = new InformationGroup( informationPage, "Plan Cache" );
+            im.addGroup( informationGroupPlanCache );
+
+            planCacheKv = new InformationKeyValue( informationGroupPlanCache );
+            planCacheKv.setOrder( 1 );
+            im.registerInformation( planCacheKv );
+
+            planCacheTable = new InformationTable(
+                    informationGroupPlanCache,
+                    Arrays.asList( "Attribute", "Percent", "Absolute" )
+            );
+            planCacheTable.setOrder( 2 );
+            im.registerInformation( planCacheTable );
+
+            informationGroupPlanCache.setRefreshFunction( this::updatePlanCache );
         }
 
 
@@ -375,10 +402,29 @@ public void update() {
         }
 
 
+        public void updatePlanCache() {
+            long hits = planCache.getHitsCounter().get();
+            long misses = planCache.getMissesCounter().get();
+            double total = hits + misses;
+
+            planCacheKv.putPair( "Status", RuntimeConfig.REST_PLAN_CACHING.getBoolean() ? "Active" : "Disabled" );
+            planCacheKv.putPair( "Current Cache Size", planCache.size() + "" );
+            planCacheKv.putPair( "Maximum Cache Size", RuntimeConfig.REST_PLAN_CACHING_SIZE.getInteger() + "" );
+
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+            symbols.setDecimalSeparator( '.' );
+            DecimalFormat df = new DecimalFormat( "0.0", symbols );
+            planCacheTable.reset();
+            planCacheTable.addRow( "Hits", df.format( total == 0 ? 0 : (hits / total) * 100 ) + " %", hits );
+            planCacheTable.addRow( "Misses", df.format( total == 0 ? 0 : (misses / total) * 100 ) + " %", misses );
+        }
+
+
         public void remove() {
             InformationManager im = InformationManager.getInstance();
-            im.removeInformation( counterGraph, counterTable );
+            im.removeInformation( counterGraph, counterTable, planCacheKv, planCacheTable );
             im.removeGroup( informationGroupRequests );
+            im.removeGroup( informationGroupPlanCache );
             im.removePage( informationPage );
         }
 
@@ -56,6 +56,9 @@ public enum ParserErrorCode {
     VALUE_MISSING( 8002, "value", "MissingValue", "The values statement is missing." ),
     VALUE_UNKNOWN_COLUMN( 8003, "value", "UnknownColumnValue", "The column provided by the user is unknown." ),
     VALUE_( 8004, "value", "", "" ),
+
+    FORMAT_GENERIC( 9000, "format", "GenericFormat", "Something went wrong while parsing the result format." ),
+    FORMAT_UNKNOWN( 9001, "format", "UnknownFormat", "The result format provided by the user is unknown." ),
     ;
 
     public final int code;
@@ -28,6 +28,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -153,7 +154,9 @@ public ResourceGetRequest parseGetResourceRequest( Request request, String resou
 
         Filters filters = this.parseFilters( getFilterMap( request ), nameMapping );
 
-        return new ResourceGetRequest( tables, requestColumns, nameMapping, groupings, limit, offset, sorting, filters );
+        ResultFormat resultFormat = this.parseResultFormat( request );
+
+        return new ResourceGetRequest( tables, requestColumns, nameMapping, groupings, limit, offset, sorting, filters, resultFormat );
     }
 
 
@@ -514,6 +517,30 @@ Integer parseLimit( Request request ) throws ParserException {
     }
 
 
+    /**
+     * Parses the format of the result, which is either given by the parameter {@code _format} or, for newline
+     * delimited JSON, by the {@code Accept} header.
+     */
+    @VisibleForTesting
+    ResultFormat parseResultFormat( Request request ) throws ParserException {
+        if ( !request.queryMap().hasKey( "_format" ) ) {
+            String accept = request.headers( "Accept" );
+            if ( accept != null && accept.contains( "application/x-ndjson" ) ) {
+                return ResultFormat.NDJSON;
+            }
+            return ResultFormat.JSON;
+        }
+        String format = request.queryMap().get( "_format" ).values()[0];
+        try {
+            log.debug( "Parsed result format: {}.", format );
+            return ResultFormat.valueOf( format.toUpperCase( Locale.ROOT ) );
+        } catch ( IllegalArgumentException e ) {
+            log.warn( "Unable to parse result format: {}", format );
+            throw new ParserException( ParserErrorCode.FORMAT_UNKNOWN, format );
+        }
+    }
+
+
     @VisibleForTesting
     Integer parseOffset( Request request ) throws ParserException {
         if ( !request.queryMap().hasKey( "_offset" ) ) {
@@ -19,9 +19,12 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
 import java.io.InputStream;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -59,6 +62,7 @@
 import org.polypheny.db.rex.RexBuilder;
 import org.polypheny.db.rex.RexLiteral;
 import org.polypheny.db.rex.RexNode;
+import org.polypheny.db.runtime.SqlFunctions;
 import org.polypheny.db.sql.SqlKind;
 import org.polypheny.db.sql.SqlOperator;
 import org.polypheny.db.sql.fun.SqlStdOperatorTable;
@@ -69,6 +73,7 @@
 import org.polypheny.db.transaction.Transaction.MultimediaFlavor;
 import org.polypheny.db.transaction.TransactionException;
 import org.polypheny.db.transaction.TransactionManager;
+import org.polypheny.db.type.PolyType;
 import org.polypheny.db.type.PolyTypeFamily;
 import org.polypheny.db.util.DateString;
 import org.polypheny.db.util.FileInputHandle;
@@ -87,12 +92,14 @@ public class Rest {
     private final TransactionManager transactionManager;
     private final String databaseName;
     private final String userName;
+    private final RestPlanCache planCache;
 
 
-    Rest( final TransactionManager transactionManager, final String userName, final String databaseName ) {
+    Rest( final TransactionManager transactionManager, final String userName, final String databaseName, final RestPlanCache planCache ) {
         this.transactionManager = transactionManager;
         this.databaseName = databaseName;
         this.userName = userName;
+        this.planCache = planCache;
     }
 
 
@@ -100,6 +107,14 @@ String processGetResource( final ResourceGetRequest resourceGetRequest, final Re
         log.debug( "Starting to process get resource request. Session ID: {}.", req.session().id() );
         Transaction transaction = getTransaction();
         Statement statement = transaction.createStatement();
+
+        String shape = RestPlanCache.shapeOf( resourceGetRequest );
+        List<Object> parameterValues = parameterValues( resourceGetRequest.filters, null );
+        RelRoot cachedRoot = this.cachedPlan( shape, statement, parameterValues );
+        if ( cachedRoot != null ) {
+            return executeAndTransformRelAlg( cachedRoot, statement, res, resourceGetRequest.resultFormat );
+        }
+
         RelBuilder relBuilder = RelBuilder.create( statement );
         JavaTypeFactory typeFactory = transaction.getTypeFactory();
         RexBuilder rexBuilder = new RexBuilder( typeFactory );
@@ -137,14 +152,24 @@ String processGetResource( final ResourceGetRequest resourceGetRequest, final Re
                         : RelCollations.EMPTY;
         RelRoot root = new RelRoot( relNode, relNode.getRowType(), SqlKind.SELECT, fields, collation );
         log.debug( "RelRoot was built." );
+        RestPlanCache.CachedPlan plan = this.preparePlan( root, statement, parameterValues.size() );
 
-        return executeAndTransformRelAlg( root, statement, res );
+        return executeAndTransformRelAlg( root, statement, res, resourceGetRequest.resultFormat, () -> this.cachePlan( shape, plan ) );
     }
 
 
     String processPatchResource( final ResourcePatchRequest resourcePatchRequest, final Request req, final Response res, Map<String, InputStream> inputStreams ) throws RestException {
         Transaction transaction = getTransaction();
         Statement statement = transaction.createStatement();
+
+        // Requests with multimedia data bind input streams and are not cached
+        String shape = inputStreams == null ? RestPlanCache.shapeOf( resourcePatchRequest ) : null;
+        List<Object> parameterValues = parameterValues( resourcePatchRequest.filters, resourcePatchRequest.values );
+        RelRoot cachedRoot = shape == null ? null : this.cachedPlan( shape, statement, parameterValues );
+        if ( cachedRoot != null ) {
+            return executeAndTransformRelAlg( cachedRoot, statement, res );
+        }
+
         RelBuilder relBuilder = RelBuilder.create( statement );
         JavaTypeFactory typeFactory = transaction.getTypeFactory();
         RexBuilder rexBuilder = new RexBuilder( typeFactory );
@@ -172,7 +197,8 @@ String processPatchResource( final ResourcePatchRequest resourcePatchRequest, fi
         RelDataType tableRowType = table.getRowType();
         List<RelDataTypeField> tableRows = tableRowType.getFieldList();
         List<String> valueColumnNames = this.valuesColumnNames( resourcePatchRequest.values );
-        List<RexNode> rexValues = this.valuesNode( statement, relBuilder, rexBuilder, resourcePatchRequest, tableRows, inputStreams ).get( 0 );
+        int firstValueIndex = filters == null ? 0 : filters.size();
+        List<RexNode> rexValues = this.valuesNode( statement, relBuilder, rexBuilder, resourcePatchRequest, tableRows, inputStreams, firstValueIndex ).get( 0 );
 
         RelNode relNode = relBuilder.build();
         TableModify tableModify = new LogicalTableModify(
@@ -196,14 +222,23 @@ String processPatchResource( final ResourcePatchRequest resourcePatchRequest, fi
                         : RelCollations.EMPTY;
         RelRoot root = new RelRoot( tableModify, rowType, SqlKind.UPDATE, fields, collation );
         log.debug( "RelRoot was built." );
+        RestPlanCache.CachedPlan plan = shape == null ? null : this.preparePlan( root, statement, parameterValues.size() );
 
-        return executeAndTransformRelAlg( root, statement, res );
+        return executeAndTransformRelAlg( root, statement, res, ResultFormat.JSON, () -> this.cachePlan( shape, plan ) );
     }
 
 
     String processDeleteResource( final ResourceDeleteRequest resourceDeleteRequest, final Request req, final Response res ) throws RestException {
         Transaction transaction = getTransaction();
         Statement statement = transaction.createStatement();
+
+        String shape = RestPlanCache.shapeOf( resourceDeleteRequest );
+        List<Object> parameterValues = parameterValues( resourceDeleteRequest.filters, null );
+        RelRoot cachedRoot = this.cachedPlan( shape, statement, parameterValues );
+        if ( cachedRoot != null ) {
+            return executeAndTransformRelAlg( cachedRoot, statement, res );
+        }
+
         RelBuilder relBuilder = RelBuilder.create( statement );
         JavaTypeFactory typeFactory = transaction.getTypeFactory();
         RexBuilder rexBuilder = new RexBuilder( typeFactory );
@@ -249,14 +284,24 @@ String processDeleteResource( final ResourceDeleteRequest resourceDeleteRequest,
                         : RelCollations.EMPTY;
         RelRoot root = new RelRoot( tableModify, rowType, SqlKind.DELETE, fields, collation );
         log.debug( "RelRoot was built." );
+        RestPlanCache.CachedPlan plan = this.preparePlan( root, statement, parameterValues.size() );
 
-        return executeAndTransformRelAlg( root, statement, res );
+        return executeAndTransformRelAlg( root, statement, res, ResultFormat.JSON, () -> this.cachePlan( shape, plan ) );
     }
 
 
     String processPostResource( final ResourcePostRequest insertValueRequest, final Request req, final Response res, Map<String, InputStream> inputStreams ) throws RestException {
         Transaction transaction = getTransaction();
         Statement statement = transaction.createStatement();
+
+        // Requests with multimedia data bind input streams and are not cached
+        String shape = inputStreams == null ? RestPlanCache.shapeOf( insertValueRequest ) : null;
+        List<Object> parameterValues = parameterValues( null, insertValueRequest.values );
+        RelRoot cachedRoot = shape == null ? null : this.cachedPlan( shape, statement, parameterValues );
+        if ( cachedRoot != null ) {
+            return executeAndTransformRelAlg( cachedRoot, statement, res );
+        }
+
         RelBuilder relBuilder = RelBuilder.create( statement );
         JavaTypeFactory typeFactory = transaction.getTypeFactory();
         RexBuilder rexBuilder = new RexBuilder( typeFactory );
@@ -274,7 +319,7 @@ String processPostResource( final ResourcePostRequest insertValueRequest, final
         RelOptCluster cluster = RelOptCluster.create( planner, rexBuilder );
 
         List<String> valueColumnNames = this.valuesColumnNames( insertValueRequest.values );
-        List<RexNode> rexValues = this.valuesNode( statement, relBuilder, rexBuilder, insertValueRequest, tableRows, inputStreams ).get( 0 );
+        List<RexNode> rexValues = this.valuesNode( statement, relBuilder, rexBuilder, insertValueRequest, tableRows, inputStreams, 0 ).get( 0 );
         relBuilder.push( LogicalValues.createOneRow( cluster ) );
         relBuilder.project( rexValues, valueColumnNames );
 
@@ -301,8 +346,9 @@ String processPostResource( final ResourcePostRequest insertValueRequest, final
                         : RelCollations.EMPTY;
         RelRoot root = new RelRoot( tableModify, rowType, SqlKind.INSERT, fields, collation );
         log.debug( "RelRoot was built." );
+        RestPlanCache.CachedPlan plan = shape == null ? null : this.preparePlan( root, statement, parameterValues.size() );
 
-        return executeAndTransformRelAlg( root, statement, res );
+        return executeAndTransformRelAlg( root, statement, res, ResultFormat.JSON, () -> this.cachePlan( shape, plan ) );
     }
 
 
@@ -336,24 +382,16 @@ List<RexNode> filters( Statement statement, RelBuilder relBuilder, RexBuilder re
             Map<String, RelDataTypeField> filterMap = new HashMap<>();
             filtersRows.forEach( ( r ) -> filterMap.put( r.getKey(), r ) );
             int index = 0;
-            for ( RequestColumn column : filters.literalFilters.keySet() ) {
-                for ( Pair<SqlOperator, Object> filterOperationPair : filters.literalFilters.get( column ) ) {
-                    RelDataTypeField typeField = filterMap.get( column.getFullyQualifiedName() );
-                    RexNode inputRef = rexBuilder.makeInputRef( baseNodeForFilters, typeField.getIndex() );
-                    Object param = filterOperationPair.right;
-                    if ( param instanceof TimestampString ) {
-                        param = ((TimestampString) param).toCalendar();
-                    } else if ( param instanceof TimeString ) {
-                        param = ((TimeString) param).toCalendar();
-                    } else if ( param instanceof DateString ) {
-                        param = ((DateString) param).toCalendar();
-                    }
-                    statement.getDataContext().addParameterValues( index, typeField.getType(), ImmutableList.of( param ) );
-                    RexNode rightHandSide = rexBuilder.makeDynamicParam( typeField.getType(), index );
-                    index++;
-                    RexNode call = rexBuilder.makeCall( filterOperationPair.left, inputRef, rightHandSide );
-                    filterNodes.add( call );
-                }
+            for ( Pair<RequestColumn, Pair<SqlOperator, Object>> filter : orderedFilters( filters ) ) {
+                Pair<SqlOperator, Object> filterOperationPair = filter.right;
+                RelDataTypeField typeField = filterMap.get( filter.left.getFullyQualifiedName() );
+                RexNode inputRef = rexBuilder.makeInputRef( baseNodeForFilters, typeField.getIndex() );
+                Object param = toFilterParameterValue( filterOperationPair.right );
+                statement.getDataContext().addParameterValues( index, typeField.getType(), ImmutableList.of( param ) );
+                RexNode rightHandSide = rexBuilder.makeDynamicParam( typeField.getType(), index );
+                index++;
+                RexNode call = rexBuilder.makeCall( filterOperationPair.left, inputRef, rightHandSide );
+                filterNodes.add( call );
             }
 
             if ( req != null ) {
@@ -384,10 +422,14 @@ List<String> valuesColumnNames( List<List<Pair<RequestColumn, Object>>> values )
     }
 
 
-    List<List<RexNode>> valuesNode( Statement statement, RelBuilder relBuilder, RexBuilder rexBuilder, ResourceValuesRequest request, List<RelDataTypeField> tableRows, Map<String, InputStream> inputStreams ) {
+    /**
+     * Creates the expressions for the values to insert or update. Values are bound as dynamic parameters, starting at
+     * the specified index.
+     */
+    List<List<RexNode>> valuesNode( Statement statement, RelBuilder relBuilder, RexBuilder rexBuilder, ResourceValuesRequest request, List<RelDataTypeField> tableRows, Map<String, InputStream> inputStreams, int firstParameterIndex ) {
         List<List<Pair<RequestColumn, Object>>> values = request.values;
         List<List<RexNode>> wrapperList = new ArrayList<>();
-        int index = 0;
+        int index = firstParameterIndex;
         for ( List<Pair<RequestColumn, Object>> rowsToInsert : values ) {
             List<RexNode> rexValues = new ArrayList<>();
             for ( Pair<RequestColumn, Object> insertValue : rowsToInsert ) {
@@ -398,8 +440,13 @@ List<List<RexNode>> valuesNode( Statement statement, RelBuilder relBuilder, RexB
                     statement.getDataContext().addParameterValues( index, typeField.getType(), ImmutableList.of( fih ) );
                     rexValues.add( rexBuilder.makeDynamicParam( typeField.getType(), index ) );
                     index++;
+                } else if ( insertValue.right == null ) {
+                    rexValues.add( rexBuilder.makeLiteral( null, typeField.getType(), true ) );
                 } else {
-                    rexValues.add( rexBuilder.makeLiteral( insertValue.right, typeField.getType(), true ) );
+                    Object param = toValueParameterValue( insertValue.right, typeField.getType().getPolyType() );
+                    statement.getDataContext().addParameterValues( index, typeField.getType(), ImmutableList.of( param ) );
+                    rexValues.add( rexBuilder.makeDynamicParam( typeField.getType(), index ) );
+                    index++;
                 }
             }
             wrapperList.add( rexValues );
@@ -527,6 +574,136 @@ RelBuilder sort( RelBuilder relBuilder, RexBuilder rexBuilder, List<Pair<Request
     }
 
 
+    /**
+     * @return the literal filters in a deterministic order, which is also the order of their dynamic parameters
+     */
+    static List<Pair<RequestColumn, Pair<SqlOperator, Object>>> orderedFilters( Filters filters ) {
+        List<Pair<RequestColumn, Pair<SqlOperator, Object>>> ordered = new ArrayList<>();
+        if ( filters == null || filters.literalFilters == null ) {
+            return ordered;
+        }
+        List<RequestColumn> columns = new ArrayList<>( filters.literalFilters.keySet() );
+        columns.sort( Comparator.comparing( RequestColumn::getAlias ) );
+        for ( RequestColumn column : columns ) {
+            for ( Pair<SqlOperator, Object> filterOperationPair : filters.literalFilters.get( column ) ) {
+                ordered.add( new Pair<>( column, filterOperationPair ) );
+            }
+        }
+        return ordered;
+    }
+
+
+    /**
+     * @return the values of the dynamic parameters of the plan built for a request, in the order of their indexes
+     */
+    static List<Object> parameterValues( Filters filters, List<List<Pair<RequestColumn, Object>>> values ) {
+        List<Object> parameterValues = new ArrayList<>();
+        for ( Pair<RequestColumn, Pair<SqlOperator, Object>> filter : orderedFilters( filters ) ) {
+            parameterValues.add( toFilterParameterValue( filter.right.right ) );
+        }
+        if ( values != null ) {
+            // Only the first row is inserted or used for updating
+            for ( Pair<RequestColumn, Object> value : values.get( 0 ) ) {
+                if ( value.right != null ) {
+                    parameterValues.add( toValueParameterValue( value.right, value.left.getColumn().type ) );
+                }
+            }
+        }
+        return parameterValues;
+    }
+
+
+    private static Object toFilterParameterValue( Object param ) {
+        if ( param instanceof TimestampString ) {
+            return ((TimestampString) param).toCalendar();
+        } else if ( param instanceof TimeString ) {
+            return ((TimeString) param).toCalendar();
+        } else if ( param instanceof DateString ) {
+            return ((DateString) param).toCalendar();
+        }
+        return param;
+    }
+
+
+    /**
+     * Converts a parsed value into the Java representation expected for a dynamic parameter of the specified type.
+     */
+    @VisibleForTesting
+    static Object toValueParameterValue( Object value, PolyType type ) {
+        if ( value instanceof DateString ) {
+            return SqlFunctions.internalToDate( ((DateString) value).getDaysSinceEpoch() );
+        } else if ( value instanceof TimeString ) {
+            return SqlFunctions.internalToTime( ((TimeString) value).getMillisOfDay() );
+        } else if ( value instanceof TimestampString ) {
+            return SqlFunctions.internalToTimestamp( ((TimestampString) value).getMillisSinceEpoch() );
+        } else if ( value instanceof Number ) {
+            Number number = (Number) value;
+            switch ( type ) {
+                case TINYINT:
+                    return number.byteValue();
+                case SMALLINT:
+                    return number.shortValue();
+                case INTEGER:
+                    return number.intValue();
+                case BIGINT:
+                    return number.longValue();
+                case REAL:
+                    return number.floatValue();
+                case FLOAT:
+                case DOUBLE:
+                    return number.doubleValue();
+                case DECIMAL:
+                    return number instanceof BigDecimal ? number : new BigDecimal( number.toString() );
+            }
+        }
+        if ( type.getFamily() == PolyTypeFamily.CHARACTER && !(value instanceof String) ) {
+            return value.toString();
+        }
+        return value;
+    }
+
+
+    /**
+     * Looks up the plan for the specified request shape and binds the parameter values of the request.
+     *
+     * @return a copy of the cached plan for the statement or {@code null} if there is none
+     */
+    private RelRoot cachedPlan( String shape, Statement statement, List<Object> parameterValues ) {
+        RestPlanCache.CachedPlan plan = planCache.getIfPresent( shape );
+        if ( plan == null ) {
+            return null;
+        }
+        log.debug( "Using cached plan for request shape {}.", shape );
+        for ( int i = 0; i < parameterValues.size(); i++ ) {
+            statement.getDataContext().addParameterValues( i, plan.parameterTypes.get( i ), ImmutableList.of( parameterValues.get( i ) ) );
+        }
+        RelOptCluster cluster = RelOptCluster.create( statement.getQueryProcessor().getPlanner(), new RexBuilder( statement.getTransaction().getTypeFactory() ) );
+        return RestPlanCache.copy( plan.root, cluster, statement.getTransaction().getCatalogReader() );
+    }
+
+
+    /**
+     * Creates the entry of the plan cache for a plan which has just been built. The types of the parameters are only
+     * known before the plan is executed.
+     *
+     * @return the plan to cache once it has been executed successfully or {@code null} if it can not be cached
+     */
+    private RestPlanCache.CachedPlan preparePlan( RelRoot root, Statement statement, int parameterCount ) {
+        List<RelDataType> parameterTypes = new ArrayList<>( parameterCount );
+        for ( int i = 0; i < parameterCount; i++ ) {
+            parameterTypes.add( statement.getDataContext().getParameterType( i ) );
+        }
+        return planCache.prepare( root, parameterTypes, statement.getTransaction().getCatalogReader() );
+    }
+
+
+    private void cachePlan( String shape, RestPlanCache.CachedPlan plan ) {
+        if ( plan != null ) {
+            planCache.put( shape, plan );
+        }
+    }
+
+
     private Transaction getTransaction() {
         try {
             return transactionManager.startTransaction( userName, databaseName, false, "REST Interface", MultimediaFlavor.FILE );
@@ -537,6 +714,26 @@ private Transaction getTransaction() {
 
 
     String executeAndTransformRelAlg( RelRoot relRoot, final Statement statement, final Response res ) {
+        return executeAndTransformRelAlg( relRoot, statement, res, ResultFormat.JSON );
+    }
+
+
+    String executeAndTransformRelAlg( RelRoot relRoot, final Statement statement, final Response res, final ResultFormat format ) {
+        return executeAndTransformRelAlg( relRoot, statement, res, format, null );
+    }
+
+
+    /**
+     * Executes the query and writes the result in the requested format. Except for the {@link ResultFormat#JSON JSON}
+     * format, the rows are written to the response while they are fetched from the stores, without materializing
+     * the whole result. Results containing multimedia data are always materialized, since they are returned as zip file.
+     *
+     * @param onCommit invoked once the transaction has been committed, i.e. only if the query has been executed successfully
+     */
+    String executeAndTransformRelAlg( RelRoot relRoot, final Statement statement, final Response res, final ResultFormat format, final Runnable onCommit ) {
+        if ( format != ResultFormat.JSON && !relRoot.kind.belongsTo( SqlKind.DML ) && RestResult.isStreamable( relRoot.validatedRowType ) ) {
+            return executeAndStreamRelAlg( relRoot, statement, res, format == ResultFormat.NDJSON, onCommit );
+        }
         RestResult restResult;
         try {
             // Prepare
@@ -560,7 +757,65 @@ String executeAndTransformRelAlg( RelRoot relRoot, final Statement statement, fi
             }
             return null;
         }
+        if ( onCommit != null ) {
+            onCommit.run();
+        }
         return restResult.getResult( res );
     }
 
+
+    private String executeAndStreamRelAlg( RelRoot relRoot, final Statement statement, final Response res, final boolean ndjson, final Runnable onCommit ) {
+        Iterator<Object> iterator = null;
+        boolean committed = false;
+        try {
+            // Prepare
+            PolyphenyDbSignature signature = statement.getQueryProcessor().prepareQuery( relRoot );
+            log.debug( "RelRoot was prepared." );
+
+            @SuppressWarnings("unchecked") final Iterable<Object> iterable = signature.enumerable( statement.getDataContext() );
+            iterator = iterable.iterator();
+            // Fetch the first row before the headers are sent, most errors of the execution are reported with it
+            iterator.hasNext();
+            RestResult restResult = new RestResult( relRoot.kind, iterator, signature.rowType, signature.columns );
+            restResult.stream( res, ndjson );
+            signature.getExecutionTimeMonitor().setExecutionTime( restResult.getExecutionTime() );
+            statement.getTransaction().commit();
+            committed = true;
+        } catch ( Throwable e ) {
+            log.error( "Error during execution of REST query", e );
+            try {
+                statement.getTransaction().rollback();
+            } catch ( TransactionException transactionException ) {
+                log.error( "Could not rollback", e );
+            }
+            if ( !res.raw().isCommitted() ) {
+                // Nothing has been sent yet, discard the buffered output and report the error
+                res.raw().reset();
+                res.status( 500 );
+                res.type( "application/json" );
+                Map<String, Object> bodyReturn = new HashMap<>();
+                bodyReturn.put( "system", "rest" );
+                bodyReturn.put( "subsystem", RestErrorCode.GENERIC.subsystem );
+                bodyReturn.put( "error_code", RestErrorCode.GENERIC.code );
+                bodyReturn.put( "error", RestErrorCode.GENERIC.name );
+                bodyReturn.put( "error_description", e.getMessage() == null ? RestErrorCode.GENERIC.description : e.getMessage() );
+                return new Gson().toJson( bodyReturn );
+            }
+            // Parts of the result have already been sent, the response is therefore truncated.
+        } finally {
+            if ( iterator instanceof AutoCloseable ) {
+                try {
+                    ((AutoCloseable) iterator).close();
+                } catch ( Exception e ) {
+                    log.error( "Exception while closing result iterator", e );
+                }
+            }
+        }
+        if ( committed && onCommit != null ) {
+            onCommit.run();
+        }
+        // The result has already been written to the response
+        return "";
+    }
+
 }
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.restapi;
+
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelOptTable;
+import org.polypheny.db.plan.hep.HepPlanner;
+import org.polypheny.db.plan.hep.HepProgram;
+import org.polypheny.db.prepare.PolyphenyDbCatalogReader;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelRoot;
+import org.polypheny.db.rel.logical.LogicalAggregate;
+import org.polypheny.db.rel.logical.LogicalFilter;
+import org.polypheny.db.rel.logical.LogicalJoin;
+import org.polypheny.db.rel.logical.LogicalProject;
+import org.polypheny.db.rel.logical.LogicalSort;
+import org.polypheny.db.rel.logical.LogicalTableModify;
+import org.polypheny.db.rel.logical.LogicalTableScan;
+import org.polypheny.db.rel.logical.LogicalValues;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.restapi.RequestParser.Filters;
+import org.polypheny.db.restapi.models.requests.ResourceDeleteRequest;
+import org.polypheny.db.restapi.models.requests.ResourceGetRequest;
+import org.polypheny.db.restapi.models.requests.ResourcePatchRequest;
+import org.polypheny.db.restapi.models.requests.ResourcePostRequest;
+import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.sql.SqlOperator;
+import org.polypheny.db.util.Pair;
+
+
+/**
+ * Cache for the logical plans built for REST requests. Plans are keyed by the shape of the request, i.e. the resource,
+ * the projections, the structure of the filters, the sorting and the aggregates. All literal values of filters and
+ * inserted or updated values are dynamic parameters in the cached plans, thus requests which only differ in these values
+ * share a plan. Since the parameterized plan is also the key of the implementation cache, a repeated request shape skips
+ * building as well as optimizing the plan.
+ *
+ * The cache is invalidated whenever the catalog changes.
+ */
+class RestPlanCache implements PropertyChangeListener {
+
+    // Access ordered, the first entry is the least recently used one
+    private final LinkedHashMap<String, CachedPlan> plans = new LinkedHashMap<>( 16, 0.75f, true );
+
+    @Getter
+    private final AtomicLong hitsCounter = new AtomicLong(); // Number of requests for which the cache contained a plan
+    @Getter
+    private final AtomicLong missesCounter = new AtomicLong(); // Number of requests for which a plan had to be built
+
+
+    /**
+     * @return the cached plan for the specified request shape or {@code null} if there is none
+     */
+    CachedPlan getIfPresent( String shape ) {
+        if ( !RuntimeConfig.REST_PLAN_CACHING.getBoolean() ) {
+            return null;
+        }
+        CachedPlan plan;
+        synchronized ( plans ) {
+            plan = plans.get( shape );
+        }
+        if ( plan == null ) {
+            missesCounter.incrementAndGet();
+        } else {
+            hitsCounter.incrementAndGet();
+        }
+        return plan;
+    }
+
+
+    /**
+     * Creates a copy of the specified plan which can be cached if it only consists of operators the REST interface
+     * builds. The copy is detached from the planner of the statement which has built the plan, it is therefore not
+     * affected by the execution of the plan.
+     *
+     * @param parameterTypes the types of the dynamic parameters of the plan
+     * @return the plan to cache or {@code null} if the plan can not be cached
+     */
+    CachedPlan prepare( RelRoot root, List<RelDataType> parameterTypes, PolyphenyDbCatalogReader catalogReader ) {
+        if ( !RuntimeConfig.REST_PLAN_CACHING.getBoolean() || !isCacheable( root.rel ) ) {
+            return null;
+        }
+        RelOptCluster cluster = RelOptCluster.create( new HepPlanner( HepProgram.builder().build() ), new RexBuilder( root.rel.getCluster().getTypeFactory() ) );
+        return new CachedPlan( copy( root, cluster, catalogReader ), ImmutableList.copyOf( parameterTypes ) );
+    }
+
+
+    /**
+     * Caches a plan created by {@link #prepare}. Plans should only be cached once they have been executed successfully.
+     */
+    void put( String shape, CachedPlan plan ) {
+        if ( !RuntimeConfig.REST_PLAN_CACHING.getBoolean() ) {
+            return;
+        }
+        synchronized ( plans ) {
+            plans.put( shape, plan );
+            int maximumSize = RuntimeConfig.REST_PLAN_CACHING_SIZE.getInteger();
+            while ( plans.size() > maximumSize ) {
+                plans.remove( plans.keySet().iterator().next() );
+            }
+        }
+    }
+
+
+    int size() {
+        synchronized ( plans ) {
+            return plans.size();
+        }
+    }
+
+
+    void reset() {
+        synchronized ( plans ) {
+            plans.clear();
+        }
+        hitsCounter.set( 0 );
+        missesCounter.set( 0 );
+    }
+
+
+    /**
+     * Cached plans reference catalog entities, any change of the catalog therefore invalidates all of them.
+     */
+    @Override
+    public void propertyChange( PropertyChangeEvent evt ) {
+        synchronized ( plans ) {
+            plans.clear();
+        }
+    }
+
+
+    static String shapeOf( ResourceGetRequest request ) {
+        StringBuilder sb = new StringBuilder( "GET" );
+        appendTables( sb, request.tables );
+        appendColumns( sb, request.requestColumns );
+        appendFilters( sb, request.filters );
+        sb.append( "|group" );
+        for ( RequestColumn column : request.groupings ) {
+            sb.append( ':' ).append( column.getAlias() );
+        }
+        sb.append( "|sort" );
+        if ( request.sorting != null ) {
+            for ( Pair<RequestColumn, Boolean> sort : request.sorting ) {
+                sb.append( ':' ).append( sort.left.getLogicalIndex() ).append( sort.right ? " DESC" : " ASC" );
+            }
+        }
+        return sb.append( "|limit:" ).append( request.limit ).append( "|offset:" ).append( request.offset ).toString();
+    }
+
+
+    static String shapeOf( ResourcePatchRequest request ) {
+        StringBuilder sb = new StringBuilder( "PATCH" );
+        appendTables( sb, request.tables );
+        appendColumns( sb, request.requestColumns );
+        appendFilters( sb, request.filters );
+        appendValues( sb, request.values );
+        return sb.toString();
+    }
+
+
+    static String shapeOf( ResourceDeleteRequest request ) {
+        StringBuilder sb = new StringBuilder( "DELETE" );
+        appendTables( sb, request.tables );
+        appendColumns( sb, request.requestColumns );
+        appendFilters( sb, request.filters );
+        return sb.toString();
+    }
+
+
+    static String shapeOf( ResourcePostRequest request ) {
+        StringBuilder sb = new StringBuilder( "POST" );
+        appendTables( sb, request.tables );
+        appendValues( sb, request.values );
+        return sb.toString();
+    }
+
+
+    private static void appendTables( StringBuilder sb, List<CatalogTable> tables ) {
+        sb.append( "|tables" );
+        for ( CatalogTable table : tables ) {
+            sb.append( ':' ).append( table.id );
+        }
+    }
+
+
+    private static void appendColumns( StringBuilder sb, List<RequestColumn> columns ) {
+        sb.append( "|columns" );
+        for ( RequestColumn column : columns ) {
+            sb.append( ':' ).append( column.getColumn().id )
+                    .append( ',' ).append( column.getTableScanIndex() )
+                    .append( ',' ).append( column.getLogicalIndex() )
+                    .append( ',' ).append( column.getAlias() )
+                    .append( ',' ).append( column.isAggregateColumn() ? column.getAggregate().getName() : "-" )
+                    .append( ',' ).append( column.isExplicit() );
+        }
+    }
+
+
+    private static void appendFilters( StringBuilder sb, Filters filters ) {
+        sb.append( "|filters" );
+        for ( Pair<RequestColumn, Pair<SqlOperator, Object>> filter : Rest.orderedFilters( filters ) ) {
+            sb.append( ':' ).append( filter.left.getAlias() ).append( ' ' ).append( filter.right.left.getName() );
+        }
+    }
+
+
+    private static void appendValues( StringBuilder sb, List<List<Pair<RequestColumn, Object>>> values ) {
+        // Only the first row is inserted or used for updating
+        sb.append( "|values" );
+        for ( Pair<RequestColumn, Object> value : values.get( 0 ) ) {
+            sb.append( ':' ).append( value.left.getColumn().id ).append( value.right == null ? "=NULL" : "=?" );
+        }
+    }
+
+
+    /**
+     * Checks whether the plan only consists of operators which {@link #copy} is able to copy.
+     */
+    private static boolean isCacheable( RelNode node ) {
+        if ( !(node instanceof LogicalTableScan
+                || node instanceof LogicalProject
+                || node instanceof LogicalFilter
+                || node instanceof LogicalJoin
+                || node instanceof LogicalAggregate
+                || node instanceof LogicalSort
+                || node instanceof LogicalValues
+                || node instanceof LogicalTableModify) ) {
+            return false;
+        }
+        for ( RelNode input : node.getInputs() ) {
+            if ( !isCacheable( input ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Copies a cached plan into the cluster of the statement executing it. Plans are optimized using the cluster of
+     * their nodes, a cached plan can therefore not be used by multiple statements concurrently. The tables are looked
+     * up in the catalog reader of the executing transaction.
+     */
+    static RelRoot copy( RelRoot root, RelOptCluster cluster, PolyphenyDbCatalogReader catalogReader ) {
+        return new RelRoot( copy( root.rel, cluster, catalogReader ), root.validatedRowType, root.kind, root.fields, root.collation );
+    }
+
+
+    private static RelNode copy( RelNode node, RelOptCluster cluster, PolyphenyDbCatalogReader catalogReader ) {
+        List<RelNode> inputs = new ArrayList<>( node.getInputs().size() );
+        for ( RelNode input : node.getInputs() ) {
+            inputs.add( copy( input, cluster, catalogReader ) );
+        }
+        if ( node instanceof LogicalTableScan ) {
+            return LogicalTableScan.create( cluster, lookup( node.getTable(), catalogReader ) );
+        } else if ( node instanceof LogicalProject ) {
+            LogicalProject project = (LogicalProject) node;
+            return LogicalProject.create( inputs.get( 0 ), project.getProjects(), project.getRowType() );
+        } else if ( node instanceof LogicalFilter ) {
+            LogicalFilter filter = (LogicalFilter) node;
+            return LogicalFilter.create( inputs.get( 0 ), filter.getCondition(), ImmutableSet.copyOf( filter.getVariablesSet() ) );
+        } else if ( node instanceof LogicalJoin ) {
+            LogicalJoin join = (LogicalJoin) node;
+            return LogicalJoin.create( inputs.get( 0 ), inputs.get( 1 ), join.getCondition(), join.getVariablesSet(), join.getJoinType(), join.isSemiJoinDone(), ImmutableList.copyOf( join.getSystemFieldList() ) );
+        } else if ( node instanceof LogicalAggregate ) {
+            LogicalAggregate aggregate = (LogicalAggregate) node;
+            return LogicalAggregate.create( inputs.get( 0 ), aggregate.getGroupSet(), aggregate.getGroupSets(), aggregate.getAggCallList() );
+        } else if ( node instanceof LogicalSort ) {
+            LogicalSort sort = (LogicalSort) node;
+            return LogicalSort.create( inputs.get( 0 ), sort.getCollation(), sort.offset, sort.fetch );
+        } else if ( node instanceof LogicalValues ) {
+            return LogicalValues.create( cluster, node.getRowType(), ((LogicalValues) node).getTuples() );
+        } else if ( node instanceof LogicalTableModify ) {
+            LogicalTableModify modify = (LogicalTableModify) node;
+            return LogicalTableModify.create(
+                    lookup( modify.getTable(), catalogReader ),
+                    catalogReader,
+                    inputs.get( 0 ),
+                    modify.getOperation(),
+                    modify.getUpdateColumnList(),
+                    modify.getSourceExpressionList(),
+                    modify.isFlattened() );
+        }
+        throw new IllegalStateException( "Unexpected operator in cached REST plan: " + node.getRelTypeName() );
+    }
+
+
+    private static RelOptTable lookup( RelOptTable table, PolyphenyDbCatalogReader catalogReader ) {
+        RelOptTable current = catalogReader.getTable( table.getQualifiedName() );
+        if ( current == null ) {
+            throw new IllegalStateException( "Table of cached REST plan does not exist anymore: " + table.getQualifiedName() );
+        }
+        return current;
+    }
+
+
+    /**
+     * A cached plan and the types of its dynamic parameters.
+     */
+    static class CachedPlan {
+
+        final RelRoot root;
+        final ImmutableList<RelDataType> parameterTypes;
+
+
+        private CachedPlan( RelRoot root, ImmutableList<RelDataType> parameterTypes ) {
+            this.root = root;
+            this.parameterTypes = parameterTypes;
+        }
+
+    }
+
+}
@@ -18,15 +18,19 @@
 
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import com.j256.simplemagic.ContentInfo;
 import com.j256.simplemagic.ContentInfoUtil;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.sql.Blob;
 import java.time.LocalDateTime;
@@ -55,11 +59,17 @@
 @Slf4j
 public class RestResult {
 
+    private static final Gson GSON = new Gson();
+
     private final SqlKind sqlKind;
     private final Iterator<Object> iterator;
     private final RelDataType dataType;
     List<ColumnMetaData> columns;
     private List<Map<String, Object>> result;
+
+    // Names and types of the columns, computed once for all rows
+    private final String[] columnNames;
+    private final PolyType[] columnTypes;
     @Getter
     private long executionTime;
 
@@ -74,6 +84,26 @@ public RestResult( SqlKind sqlKind, Iterator<Object> iterator, RelDataType dataT
         this.iterator = iterator;
         this.dataType = dataType;
         this.columns = columns;
+        List<RelDataTypeField> fields = dataType.getFieldList();
+        this.columnNames = new String[fields.size()];
+        this.columnTypes = new PolyType[fields.size()];
+        for ( int i = 0; i < fields.size(); i++ ) {
+            columnNames[i] = columns.get( i ).columnName;
+            columnTypes[i] = fields.get( i ).getType().getPolyType();
+        }
+    }
+
+
+    /**
+     * @return whether the result can be streamed, which is not the case if it contains multimedia data
+     */
+    public static boolean isStreamable( RelDataType dataType ) {
+        for ( RelDataTypeField field : dataType.getFieldList() ) {
+            if ( field.getType().getPolyType().getFamily() == PolyTypeFamily.MULTIMEDIA ) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -120,18 +150,11 @@ private void transformNonDML() {
         stopWatch.start();
         List<Map<String, Object>> result = new ArrayList<>();
         while ( iterator.hasNext() ) {
-            Object next = iterator.next();
-            Object[] row;
-            if ( next.getClass().isArray() ) {
-                row = (Object[]) next;
-            } else {
-                row = new Object[]{ next };
-            }
+            Object[] row = toRow( iterator.next() );
             HashMap<String, Object> temp = new HashMap<>();
-            int i = 0;
-            for ( RelDataTypeField type : dataType.getFieldList() ) {
+            for ( int i = 0; i < columnNames.length; i++ ) {
                 Object o = row[i];
-                if ( type.getType().getPolyType().getFamily() == PolyTypeFamily.MULTIMEDIA ) {
+                if ( columnTypes[i].getFamily() == PolyTypeFamily.MULTIMEDIA ) {
                     if ( o instanceof File ) {
                         o = addZipEntry( o );
                     } else if ( o instanceof InputStream || o instanceof Blob ) {
@@ -139,19 +162,10 @@ private void transformNonDML() {
                     } else if ( o instanceof byte[] ) {
                         o = addZipEntry( o );
                     }
-                    temp.put( columns.get( i ).columnName, o );
+                    temp.put( columnNames[i], o );
                 } else {
-                    if ( type.getType().getPolyType().equals( PolyType.TIMESTAMP ) ) {
-                        Long nanoSeconds = (Long) o;
-                        LocalDateTime localDateTime = LocalDateTime.ofEpochSecond( nanoSeconds / 1000L, (int) ((nanoSeconds % 1000) * 1000), ZoneOffset.UTC );
-                        temp.put( columns.get( i ).columnName, localDateTime.toString() );
-                    } else if ( type.getType().getPolyType().equals( PolyType.TIME ) ) {
-                        temp.put( columns.get( i ).columnName, o.toString() );
-                    } else {
-                        temp.put( columns.get( i ).columnName, o );
-                    }
+                    temp.put( columnNames[i], toJsonValue( o, columnTypes[i] ) );
                 }
-                i++;
             }
             result.add( temp );
         }
@@ -161,6 +175,82 @@ private void transformNonDML() {
     }
 
 
+    /**
+     * Writes the rows to the response while they are fetched. Either a JSON document equal to the one returned by
+     * {@link #getResult(Response)} or newline delimited JSON with one object per row is written.
+     */
+    public void stream( final Response res, final boolean ndjson ) throws IOException {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        res.status( 200 );
+        res.type( ndjson ? "application/x-ndjson" : "application/json" );
+        Writer writer = new BufferedWriter( new OutputStreamWriter( res.raw().getOutputStream(), StandardCharsets.UTF_8 ), 1 << 16 );
+        JsonWriter jsonWriter = GSON.newJsonWriter( writer );
+        long size = 0;
+        if ( !ndjson ) {
+            jsonWriter.beginObject();
+            jsonWriter.name( "result" );
+            jsonWriter.beginArray();
+        }
+        while ( iterator.hasNext() ) {
+            Object[] row = toRow( iterator.next() );
+            jsonWriter.beginObject();
+            for ( int i = 0; i < columnNames.length; i++ ) {
+                jsonWriter.name( columnNames[i] );
+                Object value = toJsonValue( row[i], columnTypes[i] );
+                if ( value == null ) {
+                    jsonWriter.nullValue();
+                } else {
+                    GSON.toJson( value, value.getClass(), jsonWriter );
+                }
+            }
+            jsonWriter.endObject();
+            if ( ndjson ) {
+                // The JSON writer does not allow multiple top-level values
+                jsonWriter.flush();
+                writer.write( '\n' );
+                jsonWriter = GSON.newJsonWriter( writer );
+            }
+            if ( size++ == 0 ) {
+                // Send the first row immediately
+                writer.flush();
+            }
+        }
+        if ( !ndjson ) {
+            jsonWriter.endArray();
+            jsonWriter.name( "size" ).value( size );
+            jsonWriter.endObject();
+        }
+        jsonWriter.flush();
+        writer.flush();
+        stopWatch.stop();
+        this.executionTime = stopWatch.getNanoTime();
+    }
+
+
+    private static Object[] toRow( Object next ) {
+        if ( next.getClass().isArray() ) {
+            return (Object[]) next;
+        } else {
+            return new Object[]{ next };
+        }
+    }
+
+
+    private static Object toJsonValue( Object o, PolyType type ) {
+        if ( o == null ) {
+            return null;
+        } else if ( type == PolyType.TIMESTAMP ) {
+            Long nanoSeconds = (Long) o;
+            LocalDateTime localDateTime = LocalDateTime.ofEpochSecond( nanoSeconds / 1000L, (int) ((nanoSeconds % 1000) * 1000), ZoneOffset.UTC );
+            return localDateTime.toString();
+        } else if ( type == PolyType.TIME ) {
+            return o.toString();
+        }
+        return o;
+    }
+
+
     private String addZipEntry( final Object data ) {
         //see https://www.baeldung.com/java-compress-and-uncompress
         containsFiles = true;
@@ -231,7 +321,7 @@ private String getContentType( Object o ) {
 
 
     public String getResult( final Response res ) {
-        Gson gson = new Gson();
+        Gson gson = GSON;
         Map<String, Object> finalResult = new HashMap<>();
         finalResult.put( "result", result );
         finalResult.put( "size", result.size() );
@@ -23,6 +23,7 @@
 import org.polypheny.db.catalog.entity.CatalogTable;
 import org.polypheny.db.restapi.RequestColumn;
 import org.polypheny.db.restapi.RequestParser.Filters;
+import org.polypheny.db.restapi.ResultFormat;
 import org.polypheny.db.util.Pair;
 
 
@@ -38,4 +39,5 @@ public class ResourceGetRequest {
     public final int offset;
     public final List<Pair<RequestColumn, Boolean>> sorting;
     public final Filters filters;
+    public final ResultFormat resultFormat;
 }
@@ -18,6 +18,7 @@
 
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,8 +31,11 @@
 import org.polypheny.db.catalog.exceptions.UnknownDatabaseException;
 import org.polypheny.db.catalog.exceptions.UnknownSchemaException;
 import org.polypheny.db.catalog.exceptions.UnknownTableException;
+import org.polypheny.db.restapi.exception.ParserException;
 import org.polypheny.db.restapi.exception.UnauthorizedAccessException;
 import org.polypheny.db.util.Pair;
+import spark.QueryParamsMap;
+import spark.Request;
 
 
 public class RequestParserTest {
@@ -65,4 +69,27 @@ public void testParseCatalogTableName() throws UnknownTableException, UnknownSch
         verify( mockedCatalog ).getTable( "testdb", "schema1", "table1" );
     }
 
+
+    @Test
+    public void testParseResultFormat() throws ParserException {
+        RequestParser requestParser = new RequestParser( mock( Catalog.class ), null, null, "testdb", "username" );
+
+        Request request = mock( Request.class, RETURNS_DEEP_STUBS );
+        when( request.queryMap().hasKey( "_format" ) ).thenReturn( false );
+        assertEquals( ResultFormat.JSON, requestParser.parseResultFormat( request ) );
+
+        when( request.headers( "Accept" ) ).thenReturn( "application/x-ndjson" );
+        assertEquals( ResultFormat.NDJSON, requestParser.parseResultFormat( request ) );
+
+        QueryParamsMap format = mock( QueryParamsMap.class );
+        when( format.values() ).thenReturn( new String[]{ "stream" } );
+        when( request.queryMap().hasKey( "_format" ) ).thenReturn( true );
+        when( request.queryMap().get( "_format" ) ).thenReturn( format );
+        assertEquals( ResultFormat.STREAM, requestParser.parseResultFormat( request ) );
+
+        when( format.values() ).thenReturn( new String[]{ "xml" } );
+        thrown.expect( ParserException.class );
+        requestParser.parseResultFormat( request );
+    }
+
 }
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.restapi;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.polypheny.db.catalog.Catalog;
+import org.polypheny.db.catalog.Catalog.SchemaType;
+import org.polypheny.db.catalog.Catalog.TableType;
+import org.polypheny.db.catalog.entity.CatalogColumn;
+import org.polypheny.db.catalog.entity.CatalogSchema;
+import org.polypheny.db.catalog.entity.CatalogTable;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.jdbc.JavaTypeFactoryImpl;
+import org.polypheny.db.plan.RelOptCluster;
+import org.polypheny.db.plan.RelOptUtil;
+import org.polypheny.db.plan.hep.HepPlanner;
+import org.polypheny.db.plan.hep.HepProgram;
+import org.polypheny.db.processing.QueryProcessor;
+import org.polypheny.db.rel.RelCollations;
+import org.polypheny.db.rel.RelNode;
+import org.polypheny.db.rel.RelRoot;
+import org.polypheny.db.rel.logical.LogicalFilter;
+import org.polypheny.db.rel.logical.LogicalProject;
+import org.polypheny.db.rel.logical.LogicalSort;
+import org.polypheny.db.rel.logical.LogicalUnion;
+import org.polypheny.db.rel.logical.LogicalValues;
+import org.polypheny.db.rel.type.RelDataType;
+import org.polypheny.db.restapi.RequestParser.Filters;
+import org.polypheny.db.restapi.models.requests.ResourceDeleteRequest;
+import org.polypheny.db.rex.RexBuilder;
+import org.polypheny.db.runtime.SqlFunctions;
+import org.polypheny.db.sql.SqlKind;
+import org.polypheny.db.sql.SqlOperator;
+import org.polypheny.db.sql.fun.SqlStdOperatorTable;
+import org.polypheny.db.transaction.Statement;
+import org.polypheny.db.transaction.Transaction;
+import org.polypheny.db.transaction.TransactionManager;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.util.DateString;
+import org.polypheny.db.util.Pair;
+
+
+public class RestPlanCacheTest {
+
+    private static Catalog previousCatalog;
+
+    private RequestColumn columnA;
+    private RequestColumn columnB;
+
+    private final JavaTypeFactoryImpl typeFactory = new JavaTypeFactoryImpl();
+    private final RelDataType bigintType = typeFactory.createPolyType( PolyType.BIGINT );
+    private final int cacheSize = RuntimeConfig.REST_PLAN_CACHING_SIZE.getInteger();
+
+
+    @BeforeClass
+    public static void mockCatalog() {
+        // Request columns look up the names of their schema and table
+        previousCatalog = Catalog.INSTANCE;
+        Catalog catalog = mock( Catalog.class );
+        when( catalog.getSchema( anyLong() ) ).thenReturn( new CatalogSchema( 1, "public", 1, 1, "pa", SchemaType.RELATIONAL ) );
+        when( catalog.getTable( anyLong() ) ).thenReturn( new CatalogTable( 1, "test", ImmutableList.of( 1L, 2L ), 1, 1, 1, "pa", TableType.TABLE, null, null, ImmutableMap.of(), true ) );
+        Catalog.INSTANCE = catalog;
+    }
+
+
+    @AfterClass
+    public static void restoreCatalog() {
+        Catalog.INSTANCE = previousCatalog;
+    }
+
+
+    @Before
+    public void createColumns() {
+        columnA = requestColumn( 1, "a" );
+        columnB = requestColumn( 2, "b" );
+    }
+
+
+    @After
+    public void restoreConfig() {
+        RuntimeConfig.REST_PLAN_CACHING_SIZE.setInteger( cacheSize );
+    }
+
+
+    private static RequestColumn requestColumn( long id, String name ) {
+        CatalogColumn catalogColumn = new CatalogColumn( id, name, 1, 1, 1, (int) id, PolyType.BIGINT, null, null, null, null, null, false, null, null );
+        return new RequestColumn( catalogColumn, (int) id - 1, (int) id - 1, null, null );
+    }
+
+
+    private RelOptCluster cluster() {
+        return RelOptCluster.create( new HepPlanner( HepProgram.builder().build() ), new RexBuilder( typeFactory ) );
+    }
+
+
+    /**
+     * Builds the plan of a request filtering column {@code a} by a dynamic parameter.
+     */
+    private RelRoot plan( RelOptCluster cluster ) {
+        RexBuilder rexBuilder = cluster.getRexBuilder();
+        RelDataType rowType = typeFactory.createStructType( ImmutableList.of( bigintType ), ImmutableList.of( "a" ) );
+        RelNode values = LogicalValues.create( cluster, rowType, ImmutableList.of( ImmutableList.of( rexBuilder.makeExactLiteral( BigDecimal.ONE, bigintType ) ) ) );
+        RelNode filter = LogicalFilter.create( values, rexBuilder.makeCall( SqlStdOperatorTable.EQUALS, rexBuilder.makeInputRef( values, 0 ), rexBuilder.makeDynamicParam( bigintType, 0 ) ) );
+        RelNode project = LogicalProject.create( filter, ImmutableList.of( rexBuilder.makeInputRef( filter, 0 ) ), ImmutableList.of( "a" ) );
+        return RelRoot.of( LogicalSort.create( project, RelCollations.of( 0 ), null, null ), SqlKind.SELECT );
+    }
+
+
+    private static void assertCluster( RelOptCluster cluster, RelNode node ) {
+        assertSame( cluster, node.getCluster() );
+        for ( RelNode input : node.getInputs() ) {
+            assertCluster( cluster, input );
+        }
+    }
+
+
+    private ResourceDeleteRequest deleteRequest( Filters filters ) {
+        return new ResourceDeleteRequest( new ArrayList<>(), Arrays.asList( columnA, columnB ), new HashMap<>(), filters );
+    }
+
+
+    private Filters filters( boolean aFirst, SqlOperator operatorA, Object valueA, Object valueB ) {
+        Map<RequestColumn, List<Pair<SqlOperator, Object>>> literalFilters = new LinkedHashMap<>();
+        if ( aFirst ) {
+            literalFilters.put( columnA, ImmutableList.of( new Pair<>( operatorA, valueA ) ) );
+            literalFilters.put( columnB, ImmutableList.of( new Pair<>( SqlStdOperatorTable.EQUALS, valueB ) ) );
+        } else {
+            literalFilters.put( columnB, ImmutableList.of( new Pair<>( SqlStdOperatorTable.EQUALS, valueB ) ) );
+            literalFilters.put( columnA, ImmutableList.of( new Pair<>( operatorA, valueA ) ) );
+        }
+        return new Filters( literalFilters, new HashMap<>() );
+    }
+
+
+    @Test
+    public void testShapeIgnoresLiterals() {
+        String shape = RestPlanCache.shapeOf( deleteRequest( filters( true, SqlStdOperatorTable.LESS_THAN, 10L, "x" ) ) );
+        assertEquals( shape, RestPlanCache.shapeOf( deleteRequest( filters( true, SqlStdOperatorTable.LESS_THAN, 20L, "y" ) ) ) );
+        assertEquals( shape, RestPlanCache.shapeOf( deleteRequest( filters( false, SqlStdOperatorTable.LESS_THAN, 20L, "y" ) ) ) );
+        assertNotEquals( shape, RestPlanCache.shapeOf( deleteRequest( filters( true, SqlStdOperatorTable.GREATER_THAN, 10L, "x" ) ) ) );
+        assertNotEquals( shape, RestPlanCache.shapeOf( deleteRequest( new Filters( null, null ) ) ) );
+    }
+
+
+    @Test
+    public void testParameterOrder() {
+        // The order of the parameters must not depend on the order in which the filters have been parsed
+        List<Object> expected = Arrays.asList( 10L, "x" );
+        assertEquals( expected, Rest.parameterValues( filters( true, SqlStdOperatorTable.LESS_THAN, 10L, "x" ), null ) );
+        assertEquals( expected, Rest.parameterValues( filters( false, SqlStdOperatorTable.LESS_THAN, 10L, "x" ), null ) );
+    }
+
+
+    @Test
+    public void testValueParameterConversion() {
+        assertEquals( 5, Rest.toValueParameterValue( 5.0, PolyType.INTEGER ) );
+        assertEquals( 5L, Rest.toValueParameterValue( 5.0, PolyType.BIGINT ) );
+        assertEquals( new BigDecimal( "2.5" ), Rest.toValueParameterValue( 2.5, PolyType.DECIMAL ) );
+        assertEquals( "2.5", Rest.toValueParameterValue( 2.5, PolyType.VARCHAR ) );
+
+        DateString date = new DateString( "2021-03-04" );
+        Object parameter = Rest.toValueParameterValue( date, PolyType.DATE );
+        assertEquals( date.getDaysSinceEpoch(), SqlFunctions.toInt( (java.sql.Date) parameter ) );
+    }
+
+
+    @Test
+    public void testCacheHit() {
+        RestPlanCache planCache = new RestPlanCache();
+        RelOptCluster cluster = cluster();
+        RelRoot root = plan( cluster );
+        RestPlanCache.CachedPlan plan = planCache.prepare( root, ImmutableList.of( bigintType ), null );
+        assertNotNull( plan );
+        assertEquals( ImmutableList.of( bigintType ), plan.parameterTypes );
+
+        // Prepared plans are only available once they have been put into the cache
+        assertNull( planCache.getIfPresent( "shape" ) );
+        planCache.put( "shape", plan );
+        assertSame( plan, planCache.getIfPresent( "shape" ) );
+        assertEquals( 1, planCache.getHitsCounter().get() );
+        assertEquals( 1, planCache.getMissesCounter().get() );
+
+        // The cached plan is detached from the planner of the statement which has built it
+        assertNotSame( cluster, plan.root.rel.getCluster() );
+        assertCluster( plan.root.rel.getCluster(), plan.root.rel );
+        assertEquals( RelOptUtil.toString( root.rel ), RelOptUtil.toString( plan.root.rel ) );
+
+        planCache.propertyChange( null );
+        assertNull( planCache.getIfPresent( "shape" ) );
+    }
+
+
+    @Test
+    public void testCopy() {
+        RestPlanCache planCache = new RestPlanCache();
+        RestPlanCache.CachedPlan plan = planCache.prepare( plan( cluster() ), ImmutableList.of( bigintType ), null );
+
+        // Every statement executes its own copy of the cached plan
+        RelOptCluster cluster = cluster();
+        RelRoot copy = RestPlanCache.copy( plan.root, cluster, null );
+        assertCluster( cluster, copy.rel );
+        assertNotSame( plan.root.rel, copy.rel );
+        assertEquals( RelOptUtil.toString( plan.root.rel ), RelOptUtil.toString( copy.rel ) );
+        assertEquals( plan.root.kind, copy.kind );
+        assertEquals( plan.root.fields, copy.fields );
+        assertEquals( plan.root.collation, copy.collation );
+        assertNotSame( copy.rel, RestPlanCache.copy( plan.root, cluster(), null ).rel );
+    }
+
+
+    @Test
+    public void testNotCacheable() {
+        RestPlanCache planCache = new RestPlanCache();
+        RelNode input = plan( cluster() ).rel;
+        RelRoot union = RelRoot.of( LogicalUnion.create( ImmutableList.of( input, input ), true ), SqlKind.SELECT );
+        assertNull( planCache.prepare( union, ImmutableList.of( bigintType, bigintType ), null ) );
+    }
+
+
+    @Test
+    public void testEviction() {
+        RuntimeConfig.REST_PLAN_CACHING_SIZE.setInteger( 1 );
+        RestPlanCache planCache = new RestPlanCache();
+        RestPlanCache.CachedPlan plan = planCache.prepare( plan( cluster() ), ImmutableList.of( bigintType ), null );
+        planCache.put( "first", plan );
+        planCache.put( "second", plan );
+        assertEquals( 1, planCache.size() );
+        assertNull( planCache.getIfPresent( "first" ) );
+        assertSame( plan, planCache.getIfPresent( "second" ) );
+    }
+
+
+    @Test
+    public void testFailedExecution() throws Throwable {
+        RelRoot root = plan( cluster() );
+        Transaction transaction = mock( Transaction.class );
+        QueryProcessor queryProcessor = mock( QueryProcessor.class );
+        when( queryProcessor.prepareQuery( any( RelRoot.class ) ) ).thenThrow( new RuntimeException( "Execution failed" ) );
+        Statement statement = mock( Statement.class );
+        when( statement.getTransaction() ).thenReturn( transaction );
+        when( statement.getQueryProcessor() ).thenReturn( queryProcessor );
+
+        // Plans of failed requests must not be cached
+        AtomicBoolean committed = new AtomicBoolean();
+        Rest rest = new Rest( mock( TransactionManager.class ), "pa", "APP", new RestPlanCache() );
+        assertNull( rest.executeAndTransformRelAlg( root, statement, null, ResultFormat.JSON, () -> committed.set( true ) ) );
+        assertFalse( committed.get() );
+        verify( transaction ).rollback();
+    }
+
+}
@@ -19,7 +19,6 @@
 
 import com.google.gson.annotations.Expose;
 import lombok.extern.slf4j.Slf4j;
-import org.polypheny.db.config.RuntimeConfig;
 import org.polypheny.db.type.PolyType;
 
 
@@ -46,13 +45,7 @@ public AlphabeticStatisticColumn( String[] splitColumn, PolyType type ) {
 
     @Override
     public void insert( T val ) {
-        if ( uniqueValues.size() < RuntimeConfig.STATISTIC_BUFFER.getInteger() ) {
-            if ( !uniqueValues.contains( val ) ) {
-                uniqueValues.add( val );
-            }
-        } else {
-            isFull = true;
-        }
+        addUniqueValue( val );
     }
 
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.statistic;
+
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Equi-depth histogram of a numerical column. Until it is built, the histogram collects a reservoir sample of the added
+ * values; the bucket boundaries are the quantiles of this sample. Afterwards, added values only increase the count of
+ * their bucket, the boundaries are adjusted when the data is reevaluated. Histograms with different boundaries are merged
+ * by distributing the counts of the other buckets proportionally to their overlap, assuming uniformly distributed values
+ * within a bucket.
+ */
+public class EquiDepthHistogram {
+
+    private final int buckets;
+    private final int sampleSize;
+    private double[] sample = new double[16];
+    private int sampled = 0;
+    private long seen = 0;
+
+    private double[] bounds; // Null until the histogram is built, then buckets + 1 ascending boundaries
+    private double[] counts;
+
+
+    public EquiDepthHistogram( final int buckets, final int sampleSize ) {
+        this.buckets = Math.max( 1, buckets );
+        this.sampleSize = Math.max( this.buckets, sampleSize );
+    }
+
+
+    public synchronized void add( final double value ) {
+        if ( bounds != null ) {
+            counts[findBucket( value )]++;
+            return;
+        }
+        seen++;
+        if ( sampled < sampleSize ) {
+            if ( sampled == sample.length ) {
+                sample = Arrays.copyOf( sample, Math.min( sampleSize, 2 * sample.length ) );
+            }
+            sample[sampled++] = value;
+        } else {
+            long position = ThreadLocalRandom.current().nextLong( seen );
+            if ( position < sampleSize ) {
+                sample[(int) position] = value;
+            }
+        }
+    }
+
+
+    /**
+     * Determines the bucket boundaries from the sample collected so far. Does nothing if the histogram has already
+     * been built or no value has been added.
+     */
+    public synchronized void build() {
+        if ( bounds != null || sampled == 0 ) {
+            return;
+        }
+        double[] sorted = Arrays.copyOf( sample, sampled );
+        Arrays.sort( sorted );
+        bounds = new double[buckets + 1];
+        for ( int i = 0; i <= buckets; i++ ) {
+            bounds[i] = sorted[(int) ((long) i * (sorted.length - 1) / buckets)];
+        }
+        counts = new double[buckets];
+        double weight = (double) seen / sorted.length;
+        for ( double value : sorted ) {
+            counts[findBucket( value )] += weight;
+        }
+    }
+
+
+    public void merge( final EquiDepthHistogram other ) {
+        other.build();
+        double[][] snapshot = other.snapshot();
+        if ( snapshot == null ) {
+            return;
+        }
+        double[] otherBounds = snapshot[0];
+        double[] otherCounts = snapshot[1];
+        synchronized ( this ) {
+            build();
+            if ( bounds == null ) {
+                bounds = otherBounds;
+                counts = otherCounts;
+                return;
+            }
+            bounds[0] = Math.min( bounds[0], otherBounds[0] );
+            bounds[counts.length] = Math.max( bounds[counts.length], otherBounds[otherBounds.length - 1] );
+            for ( int j = 0; j < otherCounts.length; j++ ) {
+                double low = otherBounds[j];
+                double high = otherBounds[j + 1];
+                if ( high <= low ) {
+                    counts[findBucket( low )] += otherCounts[j];
+                    continue;
+                }
+                for ( int i = 0; i < counts.length; i++ ) {
+                    double overlap = Math.min( high, bounds[i + 1] ) - Math.max( low, bounds[i] );
+                    if ( overlap > 0 ) {
+                        counts[i] += otherCounts[j] * overlap / (high - low);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Multiplies the counts of the buckets, e.g. to extrapolate a histogram built from a sample of the table
+     */
+    public synchronized void scale( final double factor ) {
+        build();
+        if ( counts != null ) {
+            for ( int i = 0; i < counts.length; i++ ) {
+                counts[i] *= factor;
+            }
+        }
+    }
+
+
+    /**
+     * @return the estimated number of values smaller than the given value
+     */
+    public synchronized double estimateBelow( final double value ) {
+        if ( bounds == null ) {
+            long below = 0;
+            for ( int i = 0; i < sampled; i++ ) {
+                if ( sample[i] < value ) {
+                    below++;
+                }
+            }
+            return sampled == 0 ? 0 : (double) below * seen / sampled;
+        }
+        double below = 0;
+        for ( int i = 0; i < counts.length; i++ ) {
+            if ( bounds[i + 1] <= value ) {
+                below += counts[i];
+            } else if ( bounds[i] < value ) {
+                below += counts[i] * (value - bounds[i]) / (bounds[i + 1] - bounds[i]);
+            }
+        }
+        return below;
+    }
+
+
+    /**
+     * @return the estimated fraction of the values within the range, {@code null} bounds are unbounded
+     */
+    public synchronized double estimateRange( final Double lower, final Double upper ) {
+        double total = getTotal();
+        if ( total == 0 ) {
+            return 0;
+        }
+        double high = upper == null ? total : estimateBelow( upper );
+        double low = lower == null ? 0 : estimateBelow( lower );
+        return Math.max( 0, Math.min( 1, (high - low) / total ) );
+    }
+
+
+    public synchronized double getTotal() {
+        if ( bounds == null ) {
+            return seen;
+        }
+        double total = 0;
+        for ( double count : counts ) {
+            total += count;
+        }
+        return total;
+    }
+
+
+    /**
+     * @return the boundaries and counts of the buckets or {@code null} if the histogram has not been built
+     */
+    synchronized double[][] snapshot() {
+        return bounds == null ? null : new double[][]{ bounds.clone(), counts.clone() };
+    }
+
+
+    /**
+     * Finds the bucket of a value and extends the outermost buckets if the value is outside the boundaries
+     */
+    private int findBucket( final double value ) {
+        if ( value <= bounds[0] ) {
+            bounds[0] = value;
+            return 0;
+        }
+        int last = counts.length;
+        if ( value >= bounds[last] ) {
+            bounds[last] = value;
+            return last - 1;
+        }
+        int index = Arrays.binarySearch( bounds, value );
+        if ( index < 0 ) {
+            index = -index - 2;
+        }
+        return Math.min( index, last - 1 );
+    }
+
+}
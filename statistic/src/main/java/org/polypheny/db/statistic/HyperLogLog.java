@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.statistic;
+
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values of a column. Two sketches are merged by taking the
+ * maximum of every register, which makes it possible to combine the sketches of different transactions or placements.
+ * With a precision of 12 bits the sketch uses 4 KB and has a standard error of about 1.6%.
+ */
+public class HyperLogLog {
+
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    @SuppressWarnings("UnstableApiUsage")
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final byte[] registers = new byte[REGISTERS];
+
+
+    @SuppressWarnings("UnstableApiUsage")
+    public synchronized void add( final String value ) {
+        long hash = HASH.hashString( value, StandardCharsets.UTF_8 ).asLong();
+        int register = (int) (hash >>> (Long.SIZE - PRECISION));
+        // Guard bit, so that the rank is at most 64 - PRECISION + 1
+        long remaining = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros( remaining ) + 1);
+        if ( rank > registers[register] ) {
+            registers[register] = rank;
+        }
+    }
+
+
+    public synchronized void merge( final HyperLogLog other ) {
+        byte[] otherRegisters = other.copyRegisters();
+        for ( int i = 0; i < REGISTERS; i++ ) {
+            if ( otherRegisters[i] > registers[i] ) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+    }
+
+
+    /**
+     * @return the estimated number of distinct values added to this sketch
+     */
+    public synchronized long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for ( byte register : registers ) {
+            sum += 1.0 / (1L << register);
+            if ( register == 0 ) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if ( estimate <= 2.5 * REGISTERS && zeros > 0 ) {
+            // Linear counting is more accurate for small cardinalities
+            estimate = REGISTERS * Math.log( (double) REGISTERS / zeros );
+        }
+        return Math.round( estimate );
+    }
+
+
+    private synchronized byte[] copyRegisters() {
+        return registers.clone();
+    }
+
+}
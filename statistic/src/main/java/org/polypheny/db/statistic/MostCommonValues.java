@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.statistic;
+
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+
+/**
+ * Most common values of a column, tracked with the Space-Saving algorithm: If a value which is not yet tracked is added
+ * to a full sketch, it replaces the value with the smallest count and inherits its count as possible error. The reported
+ * counts are the guaranteed lower bounds (count minus error). Twice the requested number of values is tracked to make the
+ * top values reliable.
+ */
+public class MostCommonValues {
+
+    private final int capacity;
+    private final Map<String, long[]> counts = new HashMap<>(); // Value -> { count, error }
+
+
+    public MostCommonValues( final int size ) {
+        this.capacity = Math.max( 1, 2 * size );
+    }
+
+
+    public synchronized void add( final String value, final long count ) {
+        long[] current = counts.get( value );
+        if ( current != null ) {
+            current[0] += count;
+        } else if ( counts.size() < capacity ) {
+            counts.put( value, new long[]{ count, 0 } );
+        } else {
+            String minValue = null;
+            long min = Long.MAX_VALUE;
+            for ( Entry<String, long[]> entry : counts.entrySet() ) {
+                if ( entry.getValue()[0] < min ) {
+                    min = entry.getValue()[0];
+                    minValue = entry.getKey();
+                }
+            }
+            counts.remove( minValue );
+            counts.put( value, new long[]{ min + count, min } );
+        }
+    }
+
+
+    public synchronized void merge( final MostCommonValues other ) {
+        for ( Entry<String, Long> entry : other.getCounts().entrySet() ) {
+            if ( entry.getValue() > 0 ) {
+                add( entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+
+    /**
+     * Multiplies the counts of all tracked values, e.g. to extrapolate the counts of a sample of the table
+     */
+    public synchronized void scale( final double factor ) {
+        for ( long[] count : counts.values() ) {
+            count[0] = Math.round( count[0] * factor );
+            count[1] = Math.round( count[1] * factor );
+        }
+    }
+
+
+    /**
+     * @return the estimated number of occurrences of the value or {@code null} if it is not tracked
+     */
+    public synchronized Long getCount( final String value ) {
+        long[] count = counts.get( value );
+        return count == null ? null : count[0] - count[1];
+    }
+
+
+    /**
+     * @return the tracked values and their counts, ordered by descending count
+     */
+    public synchronized Map<String, Long> getCounts() {
+        List<Entry<String, Long>> entries = new ArrayList<>();
+        counts.forEach( ( value, count ) -> entries.add( new SimpleEntry<>( value, count[0] - count[1] ) ) );
+        entries.sort( ( a, b ) -> Long.compare( b.getValue(), a.getValue() ) );
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        entries.forEach( e -> sorted.put( e.getKey(), e.getValue() ) );
+        return sorted;
+    }
+
+
+    public synchronized int size() {
+        return counts.size();
+    }
+
+}
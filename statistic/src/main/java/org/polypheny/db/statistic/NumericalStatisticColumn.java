@@ -18,6 +18,7 @@
 
 
 import com.google.gson.annotations.Expose;
+import java.math.BigDecimal;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -45,6 +46,9 @@
     @Setter
     private T max;
 
+    @Getter
+    private final EquiDepthHistogram histogram = new EquiDepthHistogram( RuntimeConfig.STATISTIC_HISTOGRAM_BUCKETS.getInteger(), RuntimeConfig.STATISTIC_SAMPLE_SIZE.getInteger() );
+
 
     public NumericalStatisticColumn( String schema, String table, String column, PolyType type ) {
         super( schema, table, column, type );
@@ -58,21 +62,92 @@ public NumericalStatisticColumn( String[] splitColumn, PolyType type ) {
 
     @Override
     public void insert( T val ) {
-        if ( uniqueValues.size() < RuntimeConfig.STATISTIC_BUFFER.getInteger() ) {
-            if ( !uniqueValues.contains( val ) ) {
-                uniqueValues.add( val );
-            }
-        } else {
-            isFull = true;
-        }
+        addUniqueValue( val );
         if ( min == null ) {
             min = val;
             max = val;
-        } else if ( val.compareTo( min ) < 0 ) {
+        } else if ( compare( val, min ) < 0 ) {
             this.min = val;
-        } else if ( val.compareTo( max ) > 0 ) {
+        } else if ( compare( val, max ) > 0 ) {
             this.max = val;
         }
+        double value = toDouble( val );
+        if ( !Double.isNaN( value ) ) {
+            histogram.add( value );
+        }
+    }
+
+
+    /**
+     * Numbers are normalized to their plain representation without trailing zeros, so that e.g. {@code 1.50} and
+     * {@code 1.5} are tracked as the same value.
+     */
+    @Override
+    String normalize( Object value ) {
+        try {
+            return new BigDecimal( value.toString() ).stripTrailingZeros().toPlainString();
+        } catch ( NumberFormatException e ) {
+            return value.toString();
+        }
+    }
+
+
+    @Override
+    public synchronized void merge( StatisticColumn<T> other ) {
+        super.merge( other );
+        NumericalStatisticColumn<T> numerical = (NumericalStatisticColumn<T>) other;
+        if ( numerical.min != null && (min == null || compare( numerical.min, min ) < 0) ) {
+            min = numerical.min;
+        }
+        if ( numerical.max != null && (max == null || compare( numerical.max, max ) > 0) ) {
+            max = numerical.max;
+        }
+        histogram.merge( numerical.histogram );
+    }
+
+
+    @Override
+    public void finish() {
+        histogram.build();
+    }
+
+
+    @Override
+    public synchronized void scale( long sampledRows, long rowCount ) {
+        super.scale( sampledRows, rowCount );
+        if ( sampledRows > 0 && rowCount > sampledRows ) {
+            histogram.scale( (double) rowCount / sampledRows );
+        }
+    }
+
+
+    /**
+     * Estimates the fraction of rows within the range, {@code null} bounds are unbounded
+     */
+    @Override
+    public Double getRangeSelectivity( Double lower, Double upper ) {
+        long rowCount = getRowCount();
+        if ( rowCount == 0 ) {
+            return 0.0;
+        }
+        return histogram.estimateRange( lower, upper ) * count / rowCount;
+    }
+
+
+    private static int compare( Object a, Object b ) {
+        return Double.compare( toDouble( a ), toDouble( b ) );
+    }
+
+
+    static double toDouble( Object value ) {
+        if ( value instanceof Number ) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return Double.parseDouble( value.toString() );
+        } catch ( NumberFormatException e ) {
+            return Double.NaN;
+        }
     }
 
 
@@ -19,16 +19,19 @@
 
 import com.google.gson.annotations.Expose;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
+import org.polypheny.db.config.RuntimeConfig;
+import org.polypheny.db.rel.metadata.StatisticsSource.ColumnStatistic;
 import org.polypheny.db.type.PolyType;
 
 
 /**
  * Stores the available statistic data of a specific column
  */
-public abstract class StatisticColumn<T extends Comparable<T>> {
+public abstract class StatisticColumn<T extends Comparable<T>> implements ColumnStatistic {
 
     @Expose
     @Getter
@@ -63,6 +66,22 @@
     @Setter
     public int count;
 
+    @Expose
+    @Getter
+    public int nullCount;
+
+    @Getter
+    private final HyperLogLog distinctValues = new HyperLogLog();
+
+    @Getter
+    private final MostCommonValues mostCommonValues = new MostCommonValues( RuntimeConfig.STATISTIC_MOST_COMMON_VALUES.getInteger() );
+
+    // Rows deleted or overwritten by the changes of a transaction
+    private long removedRows;
+
+    // Extrapolates the distinct values of a sample to the whole table
+    private double distinctFactor = 1;
+
 
     public StatisticColumn( String schema, String table, String column, PolyType type ) {
         this.schema = schema.replace( "\\", "" ).replace( "\"", "" );
@@ -84,6 +103,180 @@ public String getQualifiedTableName() {
     }
 
 
+    /**
+     * Adds the value of a row to the statistics of the column. Values are tracked by their normalized string representation.
+     *
+     * @param value the value, {@code null} values only count towards the null fraction
+     */
+    public void add( Object value ) {
+        add( value, 1 );
+    }
+
+
+    /**
+     * Adds a value which is contained in several rows, e.g. the value assigned by an UPDATE. The histogram only
+     * receives the value once.
+     *
+     * @param value the value, {@code null} values only count towards the null fraction
+     * @param rows number of rows containing the value
+     */
+    public synchronized void add( Object value, long rows ) {
+        if ( value == null ) {
+            nullCount += rows;
+            return;
+        }
+        String normalized = normalize( value );
+        count += rows;
+        distinctValues.add( normalized );
+        mostCommonValues.add( normalized, rows );
+        //noinspection unchecked
+        insert( (T) normalized );
+    }
+
+
+    String normalize( Object value ) {
+        return value.toString();
+    }
+
+
+    /**
+     * Records rows which have been deleted or overwritten by the changes of a transaction. Their values are unknown,
+     * merging the changes therefore reduces the counts proportionally. The distinct values, the most common values and
+     * the histogram keep the removed values until the column is reevaluated.
+     */
+    public synchronized void remove( long rows ) {
+        removedRows += rows;
+    }
+
+
+    /**
+     * Merges the statistics of the same column, e.g. the changes of a transaction or the statistics of another placement
+     */
+    public synchronized void merge( StatisticColumn<T> other ) {
+        if ( other.removedRows > 0 ) {
+            long rowCount = getRowCount();
+            double remaining = rowCount == 0 ? 0 : Math.max( 0, rowCount - other.removedRows ) / (double) rowCount;
+            count = (int) Math.round( count * remaining );
+            nullCount = (int) Math.round( nullCount * remaining );
+        }
+        count += other.count;
+        nullCount += other.nullCount;
+        distinctValues.merge( other.distinctValues );
+        mostCommonValues.merge( other.mostCommonValues );
+        for ( T value : new ArrayList<>( other.uniqueValues ) ) {
+            addUniqueValue( value );
+        }
+        if ( other.isFull ) {
+            isFull = true;
+        }
+    }
+
+
+    /**
+     * Completes the statistics after all values of a reevaluation have been added
+     */
+    public void finish() {
+    }
+
+
+    /**
+     * Extrapolates statistics which have been built from the first rows of a table to all rows of the table. Counts
+     * are scaled linearly. The distinct values are only scaled if almost all sampled values are distinct, i.e., if the
+     * column looks like a key; otherwise the sample is assumed to contain most of the distinct values.
+     *
+     * @param sampledRows number of rows the statistics have been built from
+     * @param rowCount number of rows of the table
+     */
+    public synchronized void scale( long sampledRows, long rowCount ) {
+        if ( sampledRows <= 0 || rowCount <= sampledRows ) {
+            return;
+        }
+        double factor = (double) rowCount / sampledRows;
+        if ( count > 0 && distinctValues.estimate() >= 0.9 * count ) {
+            distinctFactor = factor;
+        }
+        count = (int) Math.round( count * factor );
+        nullCount = (int) Math.round( nullCount * factor );
+        mostCommonValues.scale( factor );
+        if ( !uniqueValues.isEmpty() && getDistinctCount() > uniqueValues.size() ) {
+            isFull = true;
+        }
+    }
+
+
+    void addUniqueValue( T val ) {
+        if ( uniqueValues.size() < RuntimeConfig.STATISTIC_BUFFER.getInteger() ) {
+            if ( !uniqueValues.contains( val ) ) {
+                uniqueValues.add( val );
+            }
+        } else if ( !uniqueValues.contains( val ) ) {
+            isFull = true;
+        }
+    }
+
+
+    /**
+     * Derives the unique values from the most common values, e.g. after the size of the buffer has been changed
+     */
+    synchronized void resetUniqueValues( int buffer ) {
+        if ( getDistinctCount() <= buffer && mostCommonValues.size() <= buffer ) {
+            //noinspection unchecked
+            uniqueValues = new ArrayList<>( (Collection<T>) mostCommonValues.getCounts().keySet() );
+            isFull = false;
+        } else {
+            isFull = true;
+        }
+    }
+
+
+    @Override
+    public long getRowCount() {
+        return (long) count + nullCount;
+    }
+
+
+    @Override
+    public double getNullFraction() {
+        long rowCount = getRowCount();
+        return rowCount == 0 ? 0 : (double) nullCount / rowCount;
+    }
+
+
+    /**
+     * @return the estimated number of distinct non-null values
+     */
+    @Override
+    public long getDistinctCount() {
+        if ( count == 0 ) {
+            return 0;
+        }
+        return Math.max( 1, Math.min( count, Math.round( distinctValues.estimate() * distinctFactor ) ) );
+    }
+
+
+    /**
+     * Estimates the fraction of rows which are equal to the value. Values which are not among the most common values
+     * are assumed to share the remaining rows uniformly.
+     */
+    @Override
+    public double getEqualSelectivity( Object value ) {
+        long rowCount = getRowCount();
+        if ( rowCount == 0 || value == null ) {
+            return 0;
+        }
+        Long valueCount = mostCommonValues.getCount( normalize( value ) );
+        if ( valueCount != null ) {
+            return Math.min( 1, (double) valueCount / rowCount );
+        }
+        long tracked = 0;
+        for ( Long trackedCount : mostCommonValues.getCounts().values() ) {
+            tracked += trackedCount;
+        }
+        long remainingDistinct = Math.max( 1, getDistinctCount() - mostCommonValues.size() );
+        return (double) Math.max( 0, count - tracked ) / remainingDistinct / rowCount;
+    }
+
+
     public abstract void insert( T val );
 
     public abstract String toString();
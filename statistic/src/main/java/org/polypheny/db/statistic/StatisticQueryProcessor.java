@@ -20,6 +20,7 @@
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.calcite.avatica.ColumnMetaData;
@@ -311,6 +312,65 @@ private PolyphenyDbSignature processQuery( Statement statement, String sql ) {
     }
 
 
+    /**
+     * Streams the first rows of the given columns of a table to the consumer, without materializing the result.
+     *
+     * @param limit maximum number of rows to read
+     * @return {@code false} if the table could not be scanned
+     */
+    public boolean scanTable( String schema, String table, List<String> columns, int limit, Consumer<Object[]> consumer ) {
+        String query = "SELECT "
+                + columns.stream().map( c -> buildQualifiedName( schema, table, c ) ).collect( Collectors.joining( ", " ) )
+                + " FROM " + buildQualifiedName( schema, table )
+                + " LIMIT " + limit;
+        return stream( schema, table, query, consumer );
+    }
+
+
+    /**
+     * @return the number of rows of the table, {@code -1} if they could not be counted
+     */
+    public long countRows( String schema, String table ) {
+        long[] count = { -1 };
+        boolean counted = stream( schema, table, "SELECT COUNT(*) FROM " + buildQualifiedName( schema, table ), row -> count[0] = ((Number) row[0]).longValue() );
+        return counted ? count[0] : -1;
+    }
+
+
+    private boolean stream( String schema, String table, String query, Consumer<Object[]> consumer ) {
+        Transaction transaction = getTransaction();
+        Statement statement = transaction.createStatement();
+        Iterator<Object> iterator = null;
+        try {
+            PolyphenyDbSignature signature = processQuery( statement, query );
+            //noinspection unchecked
+            iterator = signature.enumerable( statement.getDataContext() ).iterator();
+            while ( iterator.hasNext() ) {
+                Object row = iterator.next();
+                consumer.accept( row instanceof Object[] ? (Object[]) row : new Object[]{ row } );
+            }
+            ((AutoCloseable) iterator).close();
+            transaction.commit();
+            return true;
+        } catch ( Throwable t ) {
+            log.error( "Caught exception while scanning the table {}.{} for statistics", schema, table, t );
+            if ( iterator != null ) {
+                try {
+                    ((AutoCloseable) iterator).close();
+                } catch ( Exception e ) {
+                    log.error( "Exception while closing result iterator", e );
+                }
+            }
+            try {
+                transaction.rollback();
+            } catch ( TransactionException e ) {
+                log.error( "Caught exception while rollback", e );
+            }
+            return false;
+        }
+    }
+
+
     /**
      * Get the page
      */
@@ -17,15 +17,22 @@
 package org.polypheny.db.statistic;
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.polypheny.db.catalog.Catalog;
+import org.polypheny.db.catalog.entity.CatalogAdapter;
+import org.polypheny.db.catalog.entity.CatalogColumnPlacement;
+import org.polypheny.db.catalog.entity.CatalogTable;
 import org.polypheny.db.config.Config;
 import org.polypheny.db.config.Config.ConfigListener;
 import org.polypheny.db.config.RuntimeConfig;
@@ -33,6 +40,8 @@
 import org.polypheny.db.information.InformationManager;
 import org.polypheny.db.information.InformationPage;
 import org.polypheny.db.information.InformationTable;
+import org.polypheny.db.rel.metadata.StatisticsSource;
+import org.polypheny.db.transaction.PolyXid;
 import org.polypheny.db.type.PolyType;
 import org.polypheny.db.type.PolyTypeFamily;
 import org.polypheny.db.util.background.BackgroundTask.TaskPriority;
@@ -43,9 +52,13 @@
 /**
  * Stores all available statistics and updates INSERTs dynamically
  * DELETEs and UPDATEs should wait to be reprocessed
+ *
+ * The statistics of a column consist of mergeable sketches (distinct values, most common values, histogram). The values
+ * inserted by a transaction are collected in separate sketches, which are merged into the statistics when the transaction
+ * commits. A reevaluation rebuilds the statistics of a table with a single scan.
  */
 @Slf4j
-public class StatisticsManager<T extends Comparable<T>> {
+public class StatisticsManager<T extends Comparable<T>> extends StatisticsSource {
 
     private static volatile StatisticsManager<?> instance = null;
 
@@ -58,6 +71,9 @@
 
     private int buffer = RuntimeConfig.STATISTIC_BUFFER.getInteger();
 
+    // Statistics of the values inserted by a transaction, by qualified column name
+    private final Map<PolyXid, Map<String, StatisticColumn<T>>> transactionChanges = new ConcurrentHashMap<>();
+
     @Setter
     @Getter
     private String revalId = null;
@@ -68,6 +84,7 @@ private StatisticsManager() {
         displayInformation();
         registerTaskTracking();
         registerIsFullTracking();
+        StatisticsSource.setInstance( this );
     }
 
 
@@ -132,6 +149,82 @@ private StatisticColumn<T> getColumn( String schema, String table, String column
     }
 
 
+    @Override
+    public Double getRowCount( List<String> qualifiedTableName ) {
+        Map<String, StatisticColumn<T>> columns = getTableColumns( qualifiedTableName );
+        if ( columns == null || columns.isEmpty() ) {
+            return null;
+        }
+        long rowCount = 0;
+        for ( StatisticColumn<T> column : columns.values() ) {
+            rowCount = Math.max( rowCount, column.getRowCount() );
+        }
+        return (double) rowCount;
+    }
+
+
+    @Override
+    public StatisticColumn<T> getColumnStatistic( List<String> qualifiedTableName, String columnName ) {
+        Map<String, StatisticColumn<T>> columns = getTableColumns( qualifiedTableName );
+        return columns == null ? null : columns.get( columnName );
+    }
+
+
+    /**
+     * Resolves the statistics of a table by its qualified name. This is either the logical name or the name of a
+     * placement, which is resolved to its logical table through the catalog.
+     */
+    private Map<String, StatisticColumn<T>> getTableColumns( List<String> qualifiedTableName ) {
+        String table = qualifiedTableName.get( qualifiedTableName.size() - 1 );
+        if ( qualifiedTableName.size() < 2 ) {
+            Map<String, StatisticColumn<T>> found = null;
+            for ( HashMap<String, HashMap<String, StatisticColumn<T>>> tables : statisticSchemaMap.values() ) {
+                if ( tables.containsKey( table ) ) {
+                    if ( found != null ) {
+                        // Ambiguous
+                        return null;
+                    }
+                    found = tables.get( table );
+                }
+            }
+            return found;
+        }
+        String schema = qualifiedTableName.get( qualifiedTableName.size() - 2 );
+        if ( statisticSchemaMap.containsKey( schema ) ) {
+            return statisticSchemaMap.get( schema ).get( table );
+        }
+        CatalogTable catalogTable = getPlacedTable( schema, table );
+        if ( catalogTable != null && statisticSchemaMap.containsKey( catalogTable.getSchemaName() ) ) {
+            return statisticSchemaMap.get( catalogTable.getSchemaName() ).get( catalogTable.name );
+        }
+        return null;
+    }
+
+
+    /**
+     * Finds the logical table of a placement. The schemas of the placements are named after the adapter, the logical
+     * schema and the physical schema of the placement.
+     *
+     * @return the logical table or {@code null} if there is no such placement
+     */
+    private CatalogTable getPlacedTable( String schema, String table ) {
+        Catalog catalog = Catalog.getInstance();
+        for ( CatalogAdapter adapter : catalog.getAdapters() ) {
+            if ( !schema.startsWith( adapter.uniqueName + "_" ) ) {
+                continue;
+            }
+            for ( CatalogColumnPlacement placement : catalog.getColumnPlacementsOnAdapter( adapter.id ) ) {
+                CatalogTable catalogTable = catalog.getTable( placement.tableId );
+                if ( (catalogTable.name.equals( table ) || table.equals( placement.physicalTableName ))
+                        && schema.equals( adapter.uniqueName + "_" + catalogTable.getSchemaName() + "_" + placement.physicalSchemaName ) ) {
+                    return catalogTable;
+                }
+            }
+        }
+        return null;
+    }
+
+
     /**
      * Adds a new column to the tracked columns and sorts it correctly
      *
@@ -140,11 +233,25 @@ private StatisticColumn<T> getColumn( String schema, String table, String column
      */
     private void addColumn( String qualifiedColumn, PolyType type ) {
         String[] splits = QueryColumn.getSplitColumn( qualifiedColumn );
+        StatisticColumn<T> column = createColumn( splits[0], splits[1], splits[2], type );
+        if ( column != null ) {
+            put( splits[0], splits[1], splits[2], column );
+        }
+    }
+
+
+    /**
+     * Creates empty statistics for a column
+     *
+     * @return {@code null} if no statistics are collected for columns of this type
+     */
+    private StatisticColumn<T> createColumn( String schema, String table, String column, PolyType type ) {
         if ( type.getFamily() == PolyTypeFamily.NUMERIC ) {
-            put( splits[0], splits[1], splits[2], new NumericalStatisticColumn<>( splits, type ) );
+            return new NumericalStatisticColumn<>( schema, table, column, type );
         } else if ( type.getFamily() == PolyTypeFamily.CHARACTER ) {
-            put( splits[0], splits[1], splits[2], new AlphabeticStatisticColumn<>( splits, type ) );
+            return new AlphabeticStatisticColumn<>( schema, table, column, type );
         }
+        return null;
     }
 
 
@@ -158,12 +265,14 @@ private void reevaluateAllStatistics() {
         log.debug( "Resetting StatisticManager." );
         ConcurrentHashMap<String, HashMap<String, HashMap<String, StatisticColumn<T>>>> statisticSchemaMapCopy = new ConcurrentHashMap<>();
 
+        Map<String, List<QueryColumn>> tables = new LinkedHashMap<>();
         for ( QueryColumn column : this.sqlQueryInterface.getAllColumns() ) {
-            StatisticColumn<T> col = reevaluateColumn( column );
-            if ( col != null ) {
-                put( statisticSchemaMapCopy, column.getSchema(), column.getTable(), column.getName(), col );
+            tables.computeIfAbsent( column.getQualifiedTableName(), t -> new ArrayList<>() ).add( column );
+        }
+        for ( List<QueryColumn> columns : tables.values() ) {
+            for ( StatisticColumn<T> col : reevaluateColumns( columns ) ) {
+                put( statisticSchemaMapCopy, col.getSchema(), col.getTable(), col.getColumn(), col );
             }
-
         }
         replaceStatistics( statisticSchemaMapCopy );
         log.debug( "Finished resetting StatisticManager." );
@@ -171,9 +280,7 @@ private void reevaluateAllStatistics() {
 
 
     private void resetAllIsFull() {
-        this.statisticSchemaMap.values().forEach( s -> s.values().forEach( t -> t.values().forEach( c -> {
-            assignUnique( c, this.getUniqueValues( c.getQualifiedTableName(), c.getQualifiedColumnName() ) );
-        } ) ) );
+        this.statisticSchemaMap.values().forEach( s -> s.values().forEach( t -> t.values().forEach( c -> c.resetUniqueValues( buffer ) ) ) );
     }
 
 
@@ -191,15 +298,12 @@ private void reevaluateTable( String qualifiedTable ) {
         if ( splits.length != 2 ) {
             return;
         }
-        deleteTable( splits[0], splits[1] );
-        List<QueryColumn> res = this.sqlQueryInterface.getAllColumns( splits[0], splits[1] );
-
-        for ( QueryColumn column : res ) {
-            StatisticColumn<T> col = reevaluateColumn( column );
-            if ( col != null ) {
-                put( column.getSchema(), column.getTable(), column.getName(), col );
+        List<StatisticColumn<T>> columns = reevaluateColumns( this.sqlQueryInterface.getAllColumns( splits[0], splits[1] ) );
+        synchronized ( this ) {
+            deleteTable( splits[0], splits[1] );
+            for ( StatisticColumn<T> col : columns ) {
+                put( col.getSchema(), col.getTable(), col.getColumn(), col );
             }
-
         }
 
     }
@@ -221,78 +325,45 @@ private synchronized void replaceStatistics( ConcurrentHashMap<String, HashMap<S
 
 
     /**
-     * Method to sort a column into the different kinds of column types and hands it to the specific reevaluation
-     */
-    private StatisticColumn<T> reevaluateColumn( QueryColumn column ) {
-        if ( !this.sqlQueryInterface.hasData( column.getSchema(), column.getTable(), column.getName() ) ) {
-            return null;
-        }
-        if ( column.getType().getFamily() == PolyTypeFamily.NUMERIC ) {
-            return this.reevaluateNumericalColumn( column );
-        } else if ( column.getType().getFamily() == PolyTypeFamily.CHARACTER ) {
-            return this.reevaluateAlphabeticalColumn( column );
-        }
-        return null;
-    }
-
-
-    /**
-     * Reevaluates a numerical column, with the configured statistics
+     * Rebuilds the statistics of the columns of a table with a single scan over the table. At most
+     * {@link RuntimeConfig#STATISTIC_SCAN_LIMIT} rows are read, the statistics of larger tables are extrapolated to
+     * the row count of the table.
+     *
+     * @param columns columns of the same table
+     * @return the statistics of the columns, empty if the table contains no data
      */
-    private StatisticColumn<T> reevaluateNumericalColumn( QueryColumn column ) {
-        StatisticQueryColumn min = this.getAggregateColumn( column, "MIN" );
-        StatisticQueryColumn max = this.getAggregateColumn( column, "MAX" );
-        Integer count = this.getCount( column );
-        NumericalStatisticColumn<T> statisticColumn = new NumericalStatisticColumn<>( QueryColumn.getSplitColumn( column.getQualifiedColumnName() ), column.getType() );
-        if ( min != null ) {
-            //noinspection unchecked
-            statisticColumn.setMin( (T) min.getData()[0] );
+    private List<StatisticColumn<T>> reevaluateColumns( List<QueryColumn> columns ) {
+        List<StatisticColumn<T>> statisticColumns = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for ( QueryColumn column : columns ) {
+            StatisticColumn<T> statisticColumn = createColumn( column.getSchema(), column.getTable(), column.getName(), column.getType() );
+            if ( statisticColumn != null ) {
+                statisticColumns.add( statisticColumn );
+                names.add( column.getName() );
+            }
         }
-        if ( max != null ) {
-            //noinspection unchecked
-            statisticColumn.setMax( (T) max.getData()[0] );
+        if ( statisticColumns.isEmpty() ) {
+            return statisticColumns;
         }
-
-        StatisticQueryColumn unique = this.getUniqueValues( column );
-        assignUnique( statisticColumn, unique );
-
-        statisticColumn.setCount( count );
-
-        return statisticColumn;
-    }
-
-
-    /**
-     * Helper method tho assign unique values or set isFull if too much exist
-     *
-     * @param column the column in which the values should be inserted
-     */
-    private void assignUnique( StatisticColumn<T> column, StatisticQueryColumn unique ) {
-        if ( unique == null || unique.getData() == null ) {
-            return;
+        String schema = columns.get( 0 ).getSchema();
+        String table = columns.get( 0 ).getTable();
+        int limit = RuntimeConfig.STATISTIC_SCAN_LIMIT.getInteger();
+        long[] rows = { 0 };
+        boolean scanned = this.sqlQueryInterface.scanTable( schema, table, names, limit, row -> {
+            for ( int i = 0; i < statisticColumns.size(); i++ ) {
+                statisticColumns.get( i ).add( row[i] );
+            }
+            rows[0]++;
+        } );
+        if ( !scanned || rows[0] == 0 ) {
+            return new ArrayList<>();
         }
-        if ( unique.getData().length <= this.buffer ) {
-            //noinspection unchecked
-            column.setUniqueValues( Arrays.asList( (T[]) unique.getData() ) );
-        } else {
-            column.setFull( true );
+        statisticColumns.forEach( StatisticColumn::finish );
+        if ( rows[0] >= limit ) {
+            long rowCount = this.sqlQueryInterface.countRows( schema, table );
+            statisticColumns.forEach( c -> c.scale( rows[0], rowCount ) );
         }
-    }
-
-
-    /**
-     * Reevaluates an alphabetical column, with the configured statistics
-     */
-    private StatisticColumn<T> reevaluateAlphabeticalColumn( QueryColumn column ) {
-        StatisticQueryColumn unique = this.getUniqueValues( column );
-        Integer count = this.getCount( column );
-
-        AlphabeticStatisticColumn<T> statisticColumn = new AlphabeticStatisticColumn<>( QueryColumn.getSplitColumn( column.getQualifiedColumnName() ), column.getType() );
-        assignUnique( statisticColumn, unique );
-        statisticColumn.setCount( count );
-
-        return statisticColumn;
-
+        return statisticColumns;
     }
 
 
@@ -321,76 +392,6 @@ private void put( String schema, String table, String column, StatisticColumn<T>
     }
 
 
-    /**
-     * Method to get a generic Aggregate Stat
-     * null if no result is available
-     *
-     * @return a StatQueryColumn which contains the requested value
-     */
-    private StatisticQueryColumn getAggregateColumn( QueryColumn column, String aggregate ) {
-        return getAggregateColumn( column.getSchema(), column.getTable(), column.getName(), aggregate );
-    }
-
-
-    /**
-     * Queries the database with a aggregate query
-     *
-     * @param aggregate the aggregate function to us
-     */
-    private StatisticQueryColumn getAggregateColumn( String schema, String table, String column, String aggregate ) {
-        String query = "SELECT " + aggregate + " (" + StatisticQueryProcessor.buildQualifiedName( schema, table, column ) + ") FROM " + StatisticQueryProcessor.buildQualifiedName( schema, table ) + getStatQueryLimit();
-        return this.sqlQueryInterface.selectOneStat( query );
-    }
-
-
-    /**
-     * Gets the configured amount + 1 of unique values per column
-     *
-     * @return the unique values
-     */
-    private StatisticQueryColumn getUniqueValues( QueryColumn column ) {
-        String qualifiedTableName = StatisticQueryProcessor.buildQualifiedName( column.getSchema(), column.getTable() );
-        String qualifiedColumnName = StatisticQueryProcessor.buildQualifiedName( column.getSchema(), column.getTable(), column.getName() );
-        return getUniqueValues( qualifiedTableName, qualifiedColumnName );
-    }
-
-
-    private StatisticQueryColumn getUniqueValues( String qualifiedTableName, String qualifiedColumnName ) {
-        String query = "SELECT " + qualifiedColumnName + " FROM " + qualifiedTableName + " GROUP BY " + qualifiedColumnName + getStatQueryLimit( 1 );
-        return this.sqlQueryInterface.selectOneStat( query );
-    }
-
-
-    /**
-     * Gets the amount of entries for a column
-     */
-    private Integer getCount( QueryColumn column ) {
-        String tableName = StatisticQueryProcessor.buildQualifiedName( column.getSchema(), column.getTable() );
-        String columnName = StatisticQueryProcessor.buildQualifiedName( column.getSchema(), column.getTable(), column.getName() );
-        String query = "SELECT COUNT(" + columnName + ") FROM " + tableName;
-        StatisticQueryColumn res = this.sqlQueryInterface.selectOneStat( query );
-
-        if ( res != null && res.getData() != null && res.getData().length != 0 ) {
-            try {
-                return Integer.parseInt( res.getData()[0] );
-            } catch ( NumberFormatException e ) {
-                log.error( "Count could not be parsed for column {}.", column.getQualifiedColumnName(), e );
-            }
-        }
-        return 0;
-    }
-
-
-    private String getStatQueryLimit() {
-        return getStatQueryLimit( 0 );
-    }
-
-
-    private String getStatQueryLimit( int add ) {
-        return " LIMIT " + (RuntimeConfig.STATISTIC_BUFFER.getInteger() + add);
-    }
-
-
     public void setSqlQueryInterface( StatisticQueryProcessor statisticQueryProcessor ) {
         this.sqlQueryInterface = statisticQueryProcessor;
 
@@ -484,6 +485,105 @@ public void applyTable( String changedQualifiedTable ) {
     }
 
 
+    /**
+     * Adds the values of rows inserted by a transaction to its changes
+     *
+     * @param columnNames names of the columns of the table, in the order of the values of the rows
+     * @param rows inserted rows
+     */
+    public void insert( PolyXid xid, String schema, String table, List<String> columnNames, List<PolyType> types, List<Object[]> rows ) {
+        Map<String, StatisticColumn<T>> changes = transactionChanges.computeIfAbsent( xid, x -> new ConcurrentHashMap<>() );
+        for ( int i = 0; i < columnNames.size(); i++ ) {
+            final int index = i;
+            StatisticColumn<T> column = changes.computeIfAbsent(
+                    schema + "." + table + "." + columnNames.get( i ),
+                    c -> createColumn( schema, table, columnNames.get( index ), types.get( index ) ) );
+            if ( column != null ) {
+                rows.forEach( row -> column.add( row[index] ) );
+            }
+        }
+    }
+
+
+    /**
+     * Adds rows deleted by a transaction to its changes. The statistics of tables without statistics are not changed.
+     *
+     * @param rows number of deleted rows
+     */
+    public void delete( PolyXid xid, String schema, String table, long rows ) {
+        Map<String, StatisticColumn<T>> columns = getTableColumns( Arrays.asList( schema, table ) );
+        if ( columns == null || rows <= 0 ) {
+            return;
+        }
+        Map<String, StatisticColumn<T>> changes = transactionChanges.computeIfAbsent( xid, x -> new ConcurrentHashMap<>() );
+        for ( StatisticColumn<T> column : columns.values() ) {
+            StatisticColumn<T> change = changes.computeIfAbsent(
+                    schema + "." + table + "." + column.getColumn(),
+                    c -> createColumn( schema, table, column.getColumn(), column.getType() ) );
+            if ( change != null ) {
+                change.remove( rows );
+            }
+        }
+    }
+
+
+    /**
+     * Adds the values assigned by an UPDATE of a transaction to its changes. They replace the values of the updated
+     * rows of the updated columns.
+     *
+     * @param columnNames names of the updated columns, in the order of the values
+     * @param values assigned values, one array per set of parameter values
+     * @param rows number of updated rows
+     */
+    public void update( PolyXid xid, String schema, String table, List<String> columnNames, List<PolyType> types, List<Object[]> values, long rows ) {
+        if ( getTableColumns( Arrays.asList( schema, table ) ) == null || rows <= 0 ) {
+            return;
+        }
+        Map<String, StatisticColumn<T>> changes = transactionChanges.computeIfAbsent( xid, x -> new ConcurrentHashMap<>() );
+        // The number of rows updated by each set of parameter values is unknown, they are assumed to be equal
+        long rowsPerSet = Math.max( 1, rows / values.size() );
+        for ( int i = 0; i < columnNames.size(); i++ ) {
+            final int index = i;
+            StatisticColumn<T> change = changes.computeIfAbsent(
+                    schema + "." + table + "." + columnNames.get( i ),
+                    c -> createColumn( schema, table, columnNames.get( index ), types.get( index ) ) );
+            if ( change != null ) {
+                change.remove( rows );
+                for ( Object[] value : values ) {
+                    change.add( value[index], rowsPerSet );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Merges the changes of a transaction into the statistics
+     */
+    public void commit( PolyXid xid ) {
+        Map<String, StatisticColumn<T>> changes = transactionChanges.remove( xid );
+        if ( changes == null ) {
+            return;
+        }
+        synchronized ( this ) {
+            for ( StatisticColumn<T> change : changes.values() ) {
+                StatisticColumn<T> column = getColumn( change.getSchema(), change.getTable(), change.getColumn() );
+                if ( column != null ) {
+                    column.merge( change );
+                } else if ( change.getRowCount() > 0 ) {
+                    change.finish();
+                    put( change.getSchema(), change.getTable(), change.getColumn(), change );
+                }
+            }
+        }
+    }
+
+
+    public void rollback( PolyXid xid ) {
+        transactionChanges.remove( xid );
+    }
+
+
     /**
      * This class reevaluates if background tracking should be stopped or restarted depending on the state of the ConfigManager
      */
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.statistic;
+
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.polypheny.db.type.PolyType;
+
+
+public class StatisticColumnTest {
+
+    private static NumericalStatisticColumn<Integer> column() {
+        return new NumericalStatisticColumn<>( "public", "emps", "salary", PolyType.INTEGER );
+    }
+
+
+    @Test
+    public void removedRowsTest() {
+        NumericalStatisticColumn<Integer> column = column();
+        for ( int i = 0; i < 80; i++ ) {
+            column.add( i );
+        }
+        for ( int i = 0; i < 20; i++ ) {
+            column.add( null );
+        }
+        column.finish();
+
+        // A transaction deletes half of the rows and inserts a new one
+        NumericalStatisticColumn<Integer> changes = column();
+        changes.remove( 50 );
+        changes.add( 1000 );
+        column.merge( changes );
+
+        assertEquals( 41, column.getCount() );
+        assertEquals( 10, column.getNullCount() );
+        assertEquals( 51, column.getRowCount() );
+    }
+
+
+    @Test
+    public void updatedRowsTest() {
+        NumericalStatisticColumn<Integer> column = column();
+        for ( int i = 0; i < 10; i++ ) {
+            column.add( i );
+        }
+        column.finish();
+
+        // An UPDATE assigns the same value to five rows
+        NumericalStatisticColumn<Integer> changes = column();
+        changes.remove( 5 );
+        changes.add( 42, 5 );
+        column.merge( changes );
+
+        assertEquals( 10, column.getRowCount() );
+        assertEquals( 0.5, column.getEqualSelectivity( 42 ), 0.01 );
+    }
+
+
+    @Test
+    public void scaledSampleTest() {
+        // The first 1000 of 10000 rows of a key column and of a column with five values
+        NumericalStatisticColumn<Integer> key = column();
+        NumericalStatisticColumn<Integer> category = column();
+        for ( int i = 0; i < 1000; i++ ) {
+            key.add( i );
+            category.add( i % 5 );
+        }
+        key.finish();
+        category.finish();
+        key.scale( 1000, 10000 );
+        category.scale( 1000, 10000 );
+
+        assertEquals( 10000, key.getRowCount() );
+        assertEquals( 10000, key.getDistinctCount(), 500 );
+        assertEquals( 0.5, key.getRangeSelectivity( null, 499.5 ), 0.05 );
+
+        assertEquals( 10000, category.getRowCount() );
+        assertEquals( 5, category.getDistinctCount() );
+        assertEquals( 0.2, category.getEqualSelectivity( 3 ), 0.01 );
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.webui;
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.type.PolyTypeFamily;
+import org.polypheny.db.util.DateTimeStringUtils;
+import org.polypheny.db.webui.TableExportWriter.ColumnarWriter;
+
+
+/**
+ * Reads the files written by the {@link ColumnarWriter}. Only the current block is held in memory. NULL values are
+ * returned as {@code null}, all other values are converted into the text written by the CSV export.
+ */
+public class ColumnarReader implements TableImportReader {
+
+    private final CountingInputStream counter;
+    private final DataInputStream in;
+    private final PolyType[] types;
+
+    private String[][] block = new String[0][];
+    private int position = 0;
+    private boolean finished = false;
+
+
+    public ColumnarReader( final InputStream in ) throws IOException {
+        this.counter = new CountingInputStream( in );
+        this.in = new DataInputStream( new BufferedInputStream( counter, 1 << 16 ) );
+        if ( this.in.readInt() != ColumnarWriter.MAGIC ) {
+            throw new IOException( "Not a file of the columnar export format" );
+        }
+        short version = this.in.readShort();
+        if ( version > ColumnarWriter.VERSION ) {
+            throw new IOException( "Unsupported version of the columnar export format: " + version );
+        }
+        this.types = new PolyType[this.in.readInt()];
+        for ( int i = 0; i < types.length; i++ ) {
+            this.in.readUTF(); // Name of the column
+            PolyType type = PolyType.get( this.in.readUTF() );
+            types[i] = type == null ? PolyType.ANY : type;
+        }
+    }
+
+
+    @Override
+    public String[] readNext() throws IOException {
+        while ( position >= block.length ) {
+            if ( finished ) {
+                return null;
+            }
+            int rows = in.readInt();
+            if ( rows == 0 ) {
+                // End of the file
+                finished = true;
+                return null;
+            }
+            readBlock( rows );
+        }
+        return block[position++];
+    }
+
+
+    private void readBlock( final int rows ) throws IOException {
+        block = new String[rows][types.length];
+        position = 0;
+        byte[] nulls = new byte[(rows + 7) / 8];
+        for ( int c = 0; c < types.length; c++ ) {
+            in.readFully( nulls );
+            for ( int r = 0; r < rows; r++ ) {
+                if ( (nulls[r / 8] & (1 << (r % 8))) == 0 ) {
+                    block[r][c] = readValue( types[c] );
+                }
+            }
+        }
+    }
+
+
+    private String readValue( final PolyType type ) throws IOException {
+        switch ( type ) {
+            case BOOLEAN:
+                return String.valueOf( in.readBoolean() );
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+                return String.valueOf( in.readInt() );
+            case DATE:
+            case TIME:
+                return DateTimeStringUtils.longToAdjustedString( in.readInt(), type );
+            case BIGINT:
+                return String.valueOf( in.readLong() );
+            case TIMESTAMP:
+                return DateTimeStringUtils.longToAdjustedString( in.readLong(), type );
+            case REAL:
+            case FLOAT:
+            case DOUBLE:
+                return String.valueOf( in.readDouble() );
+            default:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully( bytes );
+                // Binary values are written as Base64 by the CSV export
+                return type.getFamily() == PolyTypeFamily.BINARY ? Base64.getEncoder().encodeToString( bytes ) : new String( bytes, StandardCharsets.UTF_8 );
+        }
+    }
+
+
+    @Override
+    public long getBytesRead() {
+        return counter.count;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+
+    /**
+     * Counts the bytes read from the input
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+
+        CountingInputStream( final InputStream in ) {
+            super( in );
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if ( b >= 0 ) {
+                count++;
+            }
+            return b;
+        }
+
+
+        @Override
+        public int read( final byte[] b, final int off, final int len ) throws IOException {
+            int n = super.read( b, off, len );
+            if ( n > 0 ) {
+                count += n;
+            }
+            return n;
+        }
+
+
+        @Override
+        public long skip( final long n ) throws IOException {
+            long skipped = super.skip( n );
+            count += skipped;
+            return skipped;
+        }
+
+    }
+
+}
@@ -17,7 +17,6 @@
 package org.polypheny.db.webui;
 
 
-import au.com.bytecode.opencsv.CSVReader;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
@@ -35,7 +34,6 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -43,7 +41,6 @@
 import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
 import java.io.RandomAccessFile;
-import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -74,6 +71,7 @@
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -90,7 +88,6 @@
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.ArrayUtils;
-import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.eclipse.jetty.websocket.api.Session;
 import org.polypheny.db.adapter.Adapter;
@@ -173,6 +170,7 @@
 import org.polypheny.db.util.Pair;
 import org.polypheny.db.webui.SchemaToJsonMapper.JsonColumn;
 import org.polypheny.db.webui.SchemaToJsonMapper.JsonTable;
+import org.polypheny.db.webui.TableExportWriter.ExportFormat;
 import org.polypheny.db.webui.models.AdapterModel;
 import org.polypheny.db.webui.models.DbColumn;
 import org.polypheny.db.webui.models.DbTable;
@@ -2887,8 +2885,8 @@ HubResult importDataset( final spark.Request req, final spark.Response res ) {
                     return createdTableError;
                     //todo check
                 }
-                // import data from .csv file
-                importCsvFile( m.initialName + ".csv", table, transaction, extractedFolder, request, newName, status, ithTable++ );
+                // import data from the table file
+                importTableFile( m.initialName, table, transaction, extractedFolder, request, newName, status, ithTable++ );
             }
 
             transaction.commit();
@@ -2943,68 +2941,130 @@ private HubResult createTableFromJson( final String json, final String newName,
     }
 
 
-    private void importCsvFile( final String csvFileName, final JsonTable table, final Transaction transaction, final File extractedFolder, final HubRequest request, final String tableName, final Status status, final int ithTable ) throws IOException, QueryExecutionException {
+    /**
+     * Imports the rows of a table from the data file of the dataset, which may have been written in any of the export
+     * formats, with or without compression.
+     */
+    private void importTableFile( final String initialName, final JsonTable table, final Transaction transaction, final File extractedFolder, final HubRequest request, final String tableName, final Status status, final int ithTable ) throws IOException, QueryExecutionException {
+        List<JsonColumn> jsonColumns = table.getColumns();
         StringJoiner columnJoiner = new StringJoiner( ",", "(", ")" );
-        for ( JsonColumn col : table.getColumns() ) {
-            columnJoiner.add( "\"" + col.columnName + "\"" );
+        StringJoiner parameterJoiner = new StringJoiner( ",", "(", ")" );
+        PolyType[] types = new PolyType[jsonColumns.size()];
+        for ( int i = 0; i < jsonColumns.size(); i++ ) {
+            columnJoiner.add( "\"" + jsonColumns.get( i ).columnName + "\"" );
+            parameterJoiner.add( "?" );
+            types[i] = PolyType.get( jsonColumns.get( i ).type );
         }
-        String columns = columnJoiner.toString();
-        StringJoiner valueJoiner = new StringJoiner( ",", "VALUES", "" );
-        StringJoiner rowJoiner;
-
-        //see https://www.callicoder.com/java-read-write-csv-file-opencsv/
+        // The same query is used for all batches, it is therefore only planned and implemented once
+        String insertQuery = String.format( "INSERT INTO \"%s\".\"%s\" %s VALUES %s", request.schema, tableName, columnJoiner.toString(), parameterJoiner.toString() );
 
         final int BATCH_SIZE = RuntimeConfig.HUB_IMPORT_BATCH_SIZE.getInteger();
-        long csvCounter = 0;
-        try (
-                Reader reader = new BufferedReader( new FileReader( new File( extractedFolder, csvFileName ) ) );
-                CSVReader csvReader = new CSVReader( reader )
-        ) {
-            long lineCount = Files.lines( new File( extractedFolder, csvFileName ).toPath() ).count();
+        File dataFile = null;
+        ExportFormat format = null;
+        boolean compressed = false;
+        search:
+        for ( ExportFormat f : ExportFormat.values() ) {
+            for ( boolean compress : new boolean[]{ false, true } ) {
+                File candidate = new File( extractedFolder, f.getFileName( initialName, compress ) );
+                if ( candidate.exists() ) {
+                    dataFile = candidate;
+                    format = f;
+                    compressed = compress;
+                    break search;
+                }
+            }
+        }
+        if ( dataFile == null ) {
+            throw new IOException( "The dataset does not contain the data of table " + initialName );
+        }
+        final long fileSize = dataFile.length();
+        // Column-wise buffer for the parameter values of a batch
+        final Object[][] batch = new Object[types.length][BATCH_SIZE];
+        int batchSize = 0;
+        long rowCounter = 0;
+        final FileInputStream fileStream = new FileInputStream( dataFile );
+        try ( TableImportReader reader = TableImportReader.create( format, compressed ? new GZIPInputStream( fileStream ) : fileStream ) ) {
             String[] nextRecord;
-            while ( (nextRecord = csvReader.readNext()) != null ) {
-                rowJoiner = new StringJoiner( ",", "(", ")" );
-                for ( int i = 0; i < table.getColumns().size(); i++ ) {
-                    if ( PolyType.get( table.getColumns().get( i ).type ).getFamily() == PolyTypeFamily.CHARACTER ) {
-                        rowJoiner.add( "'" + StringEscapeUtils.escapeSql( nextRecord[i] ) + "'" );
-                    } else if ( PolyType.get( table.getColumns().get( i ).type ) == PolyType.DATE ) {
-                        rowJoiner.add( "date '" + StringEscapeUtils.escapeSql( nextRecord[i] ) + "'" );
-                    } else if ( PolyType.get( table.getColumns().get( i ).type ) == PolyType.TIME ) {
-                        rowJoiner.add( "time '" + StringEscapeUtils.escapeSql( nextRecord[i] ) + "'" );
-                    } else if ( PolyType.get( table.getColumns().get( i ).type ) == PolyType.TIMESTAMP ) {
-                        rowJoiner.add( "timestamp '" + StringEscapeUtils.escapeSql( nextRecord[i] ) + "'" );
-                    } else {
-                        rowJoiner.add( nextRecord[i] );
-                    }
-                }
-                valueJoiner.add( rowJoiner.toString() );
-                csvCounter++;
-                if ( csvCounter % BATCH_SIZE == 0 && csvCounter != 0 ) {
-                    String insertQuery = String.format( "INSERT INTO \"%s\".\"%s\" %s %s", request.schema, tableName, columns, valueJoiner.toString() );
-                    executeSqlUpdate( transaction, insertQuery );
-                    valueJoiner = new StringJoiner( ",", "VALUES", "" );
-                    status.setStatus( csvCounter, lineCount, ithTable );
+            while ( (nextRecord = reader.readNext()) != null ) {
+                for ( int i = 0; i < types.length; i++ ) {
+                    batch[i][batchSize] = toParameterValue( i < nextRecord.length ? nextRecord[i] : null, types[i] );
+                }
+                batchSize++;
+                rowCounter++;
+                if ( batchSize == BATCH_SIZE ) {
+                    executeInsertBatch( transaction, insertQuery, batch, batchSize );
+                    batchSize = 0;
+                    status.setProgress( rowCounter, compressed ? fileStream.getChannel().position() : reader.getBytesRead(), fileSize, ithTable );
                     WebSocket.broadcast( gson.toJson( status, Status.class ) );
                 }
             }
-            if ( csvCounter % BATCH_SIZE != 0 ) {
-                String insertQuery = String.format( "INSERT INTO \"%s\".\"%s\" %s %s", request.schema, tableName, columns, valueJoiner.toString() );
-                executeSqlUpdate( transaction, insertQuery );
-                status.setStatus( csvCounter, lineCount, ithTable );
+            if ( batchSize > 0 ) {
+                executeInsertBatch( transaction, insertQuery, batch, batchSize );
+                status.setProgress( rowCounter, compressed ? fileStream.getChannel().position() : reader.getBytesRead(), fileSize, ithTable );
                 WebSocket.broadcast( gson.toJson( status, Status.class ) );
             }
         }
     }
 
 
+    /**
+     * Executes a parameterized INSERT for the first {@code size} parameter sets of the column-wise batch
+     */
+    private void executeInsertBatch( final Transaction transaction, final String insertQuery, final Object[][] batch, final int size ) throws QueryExecutionException {
+        Statement statement = transaction.createStatement();
+        for ( int i = 0; i < batch.length; i++ ) {
+            statement.getDataContext().addParameterValues( i, null, Arrays.asList( batch[i] ).subList( 0, size ) );
+        }
+        executeSqlUpdate( statement, transaction, insertQuery );
+    }
+
+
+    /**
+     * Converts a value of a table file, in the text representation of the CSV export, into the value of a parameter of the given type.
+     * NULL values are read as {@code null}. Empty values of columns which are not of a character type are treated as NULL as well.
+     */
+    private static Object toParameterValue( final String value, final PolyType type ) {
+        if ( value == null || (value.isEmpty() && type.getFamily() != PolyTypeFamily.CHARACTER) ) {
+            return null;
+        }
+        switch ( type ) {
+            case BOOLEAN:
+                return Boolean.valueOf( value );
+            case TINYINT:
+                return Byte.valueOf( value );
+            case SMALLINT:
+                return Short.valueOf( value );
+            case INTEGER:
+                return Integer.valueOf( value );
+            case BIGINT:
+                return Long.valueOf( value );
+            case REAL:
+                return Float.valueOf( value );
+            case FLOAT:
+            case DOUBLE:
+                return Double.valueOf( value );
+            case DECIMAL:
+                return new BigDecimal( value );
+            case DATE:
+                return java.sql.Date.valueOf( value );
+            case TIME:
+                return java.sql.Time.valueOf( value );
+            case TIMESTAMP:
+                return java.sql.Timestamp.valueOf( value );
+            default:
+                return value;
+        }
+    }
+
+
     /**
      * Export a table into a .zip consisting of a json file containing information of the table and columns and a csv files with the data
      */
     Result exportTable( final Request req, final Response res ) {
         HubRequest request = gson.fromJson( req.body(), HubRequest.class );
         Transaction transaction = getTransaction( false );
-        Statement statement = transaction.createStatement();
-        HubMeta metaData = new HubMeta( request.schema );
+        ExportFormat format = request.exportFormat != null ? request.exportFormat : ExportFormat.CSV;
+        HubMeta metaData = new HubMeta( request.schema, format, request.compress );
 
         String randomFileName = UUID.randomUUID().toString();
         final Charset charset = StandardCharsets.UTF_8;
@@ -3018,17 +3078,15 @@ Result exportTable( final Request req, final Response res ) {
         File catalogFile;
         ArrayList<File> tableFiles = new ArrayList<>();
         ArrayList<File> catalogFiles = new ArrayList<>();
-        final int BATCH_SIZE = RuntimeConfig.HUB_IMPORT_BATCH_SIZE.getInteger();
         int ithTable = 0;
         Status status = new Status( "tableExport", request.tables.size() );
         try {
             for ( TableMapping table : request.tables.values() ) {
-                tableFile = new File( tempDir, table.initialName + ".csv" );
+                tableFile = new File( tempDir, format.getFileName( table.initialName, request.compress ) );
                 catalogFile = new File( tempDir, table.initialName + ".json" );
                 tableFiles.add( tableFile );
                 catalogFiles.add( catalogFile );
                 OutputStreamWriter catalogWriter = new OutputStreamWriter( new FileOutputStream( catalogFile ), charset );
-                FileOutputStream tableStream = new FileOutputStream( tableFile );
                 log.info( String.format( "Exporting %s.%s", request.schema, table.initialName ) );
                 CatalogTable catalogTable = catalog.getTable( this.databaseName, request.schema, table.initialName );
 
@@ -3036,37 +3094,10 @@ Result exportTable( final Request req, final Response res ) {
                 catalogWriter.flush();
                 catalogWriter.close();
 
+                String countQuery = String.format( "SELECT COUNT(*) FROM \"%s\".\"%s\"", request.schema, table.initialName );
+                long totalRows = Long.parseLong( executeSqlSelect( transaction.createStatement(), new UIRequest(), countQuery ).getData()[0][0] );
                 String query = String.format( "SELECT * FROM \"%s\".\"%s\"", request.schema, table.initialName );
-                // TODO use iterator instead of Result
-                Result tableData = executeSqlSelect( statement, new UIRequest(), query, true );
-
-                int totalRows = tableData.getData().length;
-                int counter = 0;
-                for ( String[] row : tableData.getData() ) {
-                    int cols = row.length;
-                    for ( int i = 0; i < cols; i++ ) {
-                        if ( row[i].contains( "\n" ) ) {
-                            String line = String.format( "\"%s\"", row[i] );
-                            tableStream.write( line.getBytes( charset ) );
-                        } else {
-                            tableStream.write( row[i].getBytes( charset ) );
-                        }
-                        if ( i != cols - 1 ) {
-                            tableStream.write( ",".getBytes( charset ) );
-                        } else {
-                            tableStream.write( "\n".getBytes( charset ) );
-                        }
-                    }
-                    counter++;
-                    if ( counter % BATCH_SIZE == 0 ) {
-                        status.setStatus( counter, totalRows, ithTable );
-                        WebSocket.broadcast( gson.toJson( status, Status.class ) );
-                    }
-                }
-                status.setStatus( counter, totalRows, ithTable );
-                WebSocket.broadcast( gson.toJson( status, Status.class ) );
-                tableStream.flush();
-                tableStream.close();
+                int counter = (int) exportTableData( transaction.createStatement(), query, tableFile, format, request.compress, status, ithTable, totalRows );
                 metaData.addTable( table.initialName, counter );
                 ithTable++;
             }
@@ -3147,6 +3178,42 @@ Result exportTable( final Request req, final Response res ) {
     }
 
 
+    /**
+     * Executes the query and writes its result into the file. The result is fetched and written in batches,
+     * the memory usage therefore does not depend on the size of the table.
+     *
+     * @return the number of exported rows
+     */
+    private long exportTableData( final Statement statement, final String query, final File file, final ExportFormat format, final boolean compress, final Status status, final int ithTable, final long totalRows ) throws QueryExecutionException, IOException {
+        PolyphenyDbSignature signature;
+        try {
+            signature = processQuery( statement, query );
+        } catch ( Throwable t ) {
+            throw new QueryExecutionException( t );
+        }
+        final int BATCH_SIZE = RuntimeConfig.HUB_IMPORT_BATCH_SIZE.getInteger();
+        long counter = 0;
+        //noinspection unchecked
+        Iterator<Object> iterator = signature.enumerable( statement.getDataContext() ).iterator();
+        try ( TableExportWriter writer = TableExportWriter.create( format, file, signature.columns, compress ) ) {
+            while ( iterator.hasNext() ) {
+                List<List<Object>> rows = MetaImpl.collect( signature.cursorFactory, LimitIterator.of( iterator, BATCH_SIZE ), new ArrayList<>() );
+                writer.writeBatch( rows );
+                counter += rows.size();
+                status.setStatus( counter, totalRows, ithTable );
+                WebSocket.broadcast( gson.toJson( status, Status.class ) );
+            }
+        } finally {
+            try {
+                ((AutoCloseable) iterator).close();
+            } catch ( Exception e ) {
+                log.error( "Exception while closing result iterator", e );
+            }
+        }
+        return counter;
+    }
+
+
     String getFile( final Request req, final Response res ) {
         String fileName = req.params( "file" );
         File f = new File( System.getProperty( "user.home" ), ".polypheny/tmp/" + fileName );
@@ -3543,9 +3610,10 @@ private PolyphenyDbSignature processQuery( Statement statement, String sql ) {
         } else {
             Pair<SqlNode, RelDataType> validated = sqlProcessor.validate( statement.getTransaction(), parsed, RuntimeConfig.ADD_DEFAULT_VALUES_IN_INSERTS.getBoolean() );
             RelRoot logicalRoot = sqlProcessor.translate( statement, validated.left );
+            RelDataType parameterRowType = sqlProcessor.getParameterRowType( validated.left );
 
             // Prepare
-            signature = statement.getQueryProcessor().prepareQuery( logicalRoot );
+            signature = statement.getQueryProcessor().prepareQuery( logicalRoot, parameterRowType, false );
         }
         return signature;
     }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.webui;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+
+
+/**
+ * Reads the records of a UTF-8 encoded CSV file. The file is parsed directly from a byte buffer, the only allocations
+ * per record are the strings of the fields. It accepts the same input as the OpenCSV reader with default settings:
+ * fields are separated by commas and can be enclosed in double quotes, within quotes a double quote is escaped by a
+ * second double quote or a backslash. An empty field is read as NULL, unless it is quoted ({@code ""}), which is
+ * read as the empty string.
+ */
+public class CsvStreamReader implements TableImportReader {
+
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Number of bytes of the input which have been consumed, used to report the progress
+     */
+    @Getter
+    private long bytesRead = 0;
+
+    private byte[] field = new byte[256];
+    private int fieldLength = 0;
+    private boolean fieldQuoted = false;
+    private final List<String> record = new ArrayList<>();
+
+
+    public CsvStreamReader( InputStream in ) {
+        this.in = in;
+    }
+
+
+    /**
+     * @return the fields of the next record or {@code null} if the end of the input is reached
+     */
+    @Override
+    public String[] readNext() throws IOException {
+        record.clear();
+        fieldLength = 0;
+        fieldQuoted = false;
+        boolean quoted = false;
+        boolean emptyLine = true;
+        int b;
+        while ( (b = read()) != -1 ) {
+            if ( quoted ) {
+                if ( b == QUOTE ) {
+                    if ( peek() == QUOTE ) {
+                        append( read() );
+                    } else {
+                        quoted = false;
+                    }
+                } else if ( b == ESCAPE && (peek() == QUOTE || peek() == ESCAPE) ) {
+                    append( read() );
+                } else {
+                    append( b );
+                }
+            } else if ( b == SEPARATOR ) {
+                endField();
+                emptyLine = false;
+            } else if ( b == '\n' ) {
+                if ( emptyLine ) {
+                    // Skip blank lines
+                    continue;
+                }
+                endField();
+                return record.toArray( new String[0] );
+            } else if ( b == '\r' ) {
+                if ( peek() != '\n' ) {
+                    append( b );
+                    emptyLine = false;
+                }
+            } else if ( b == QUOTE && fieldLength == 0 ) {
+                quoted = true;
+                fieldQuoted = true;
+                emptyLine = false;
+            } else {
+                append( b );
+                emptyLine = false;
+            }
+        }
+        if ( emptyLine ) {
+            return null;
+        }
+        endField();
+        return record.toArray( new String[0] );
+    }
+
+
+    private void endField() {
+        record.add( fieldLength == 0 && !fieldQuoted ? null : new String( field, 0, fieldLength, StandardCharsets.UTF_8 ) );
+        fieldLength = 0;
+        fieldQuoted = false;
+    }
+
+
+    private void append( int b ) {
+        if ( fieldLength == field.length ) {
+            byte[] larger = new byte[field.length * 2];
+            System.arraycopy( field, 0, larger, 0, fieldLength );
+            field = larger;
+        }
+        field[fieldLength++] = (byte) b;
+    }
+
+
+    private int read() throws IOException {
+        if ( position == limit && !fill() ) {
+            return -1;
+        }
+        bytesRead++;
+        return buffer[position++] & 0xFF;
+    }
+
+
+    private int peek() throws IOException {
+        if ( position == limit && !fill() ) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+
+    private boolean fill() throws IOException {
+        int n = in.read( buffer, 0, buffer.length );
+        if ( n <= 0 ) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
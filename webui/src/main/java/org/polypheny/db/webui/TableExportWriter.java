@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.webui;
+
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import lombok.Getter;
+import org.apache.calcite.avatica.ColumnMetaData;
+import org.polypheny.db.type.PolyType;
+import org.polypheny.db.util.DateTimeStringUtils;
+
+
+/**
+ * Writes the rows of a table into a file. The rows are written in batches, only the current batch is held in memory.
+ * The file is written through a buffer and can be compressed with gzip.
+ */
+public abstract class TableExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    protected final DataOutputStream out;
+    protected final PolyType[] types;
+
+
+    protected TableExportWriter( final File file, final List<ColumnMetaData> columns, final boolean compress ) throws IOException {
+        OutputStream stream = new FileOutputStream( file );
+        if ( compress ) {
+            stream = new GZIPOutputStream( stream, BUFFER_SIZE );
+        }
+        this.out = new DataOutputStream( new BufferedOutputStream( stream, BUFFER_SIZE ) );
+        this.types = new PolyType[columns.size()];
+        for ( int i = 0; i < columns.size(); i++ ) {
+            types[i] = PolyType.get( columns.get( i ).type.name );
+        }
+    }
+
+
+    public static TableExportWriter create( final ExportFormat format, final File file, final List<ColumnMetaData> columns, final boolean compress ) throws IOException {
+        switch ( format ) {
+            case CSV:
+                return new CsvWriter( file, columns, compress );
+            case COLUMNAR:
+                return new ColumnarWriter( file, columns, compress );
+            default:
+                throw new RuntimeException( "Unknown export format: " + format );
+        }
+    }
+
+
+    /**
+     * Writes a batch of rows, the values of the rows are in the order of the columns
+     */
+    public abstract void writeBatch( List<List<Object>> rows ) throws IOException;
+
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+
+    public enum ExportFormat {
+        CSV( ".csv" ),
+        COLUMNAR( ".col" );
+
+        @Getter
+        private final String fileExtension;
+
+
+        ExportFormat( final String fileExtension ) {
+            this.fileExtension = fileExtension;
+        }
+
+
+        public String getFileName( final String tableName, final boolean compress ) {
+            return tableName + fileExtension + (compress ? ".gz" : "");
+        }
+    }
+
+
+    /**
+     * Writes the rows in the CSV format read by the Hub import. NULL is written as an empty field, the empty string as
+     * an empty quoted field ({@code ""}).
+     */
+    static class CsvWriter extends TableExportWriter {
+
+        CsvWriter( final File file, final List<ColumnMetaData> columns, final boolean compress ) throws IOException {
+            super( file, columns, compress );
+        }
+
+
+        @Override
+        public void writeBatch( final List<List<Object>> rows ) throws IOException {
+            for ( List<Object> row : rows ) {
+                for ( int i = 0; i < row.size(); i++ ) {
+                    if ( i > 0 ) {
+                        out.write( ',' );
+                    }
+                    Object value = row.get( i );
+                    if ( value != null ) {
+                        writeField( toText( value, types[i] ) );
+                    }
+                }
+                out.write( '\n' );
+            }
+        }
+
+
+        private void writeField( final String value ) throws IOException {
+            boolean quote = value.isEmpty();
+            for ( int i = 0; i < value.length() && !quote; i++ ) {
+                char c = value.charAt( i );
+                quote = c == ',' || c == '"' || c == '\\' || c == '\n' || c == '\r';
+            }
+            if ( !quote ) {
+                out.write( value.getBytes( StandardCharsets.UTF_8 ) );
+                return;
+            }
+            StringBuilder sb = new StringBuilder( value.length() + 8 ).append( '"' );
+            for ( int i = 0; i < value.length(); i++ ) {
+                char c = value.charAt( i );
+                if ( c == '"' || c == '\\' ) {
+                    sb.append( c );
+                }
+                sb.append( c );
+            }
+            out.write( sb.append( '"' ).toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+
+        private static String toText( final Object value, final PolyType type ) {
+            if ( value instanceof byte[] ) {
+                return Base64.getEncoder().encodeToString( (byte[]) value );
+            } else if ( type != null && value instanceof Number ) {
+                switch ( type ) {
+                    case DATE:
+                    case TIME:
+                    case TIMESTAMP:
+                        return DateTimeStringUtils.longToAdjustedString( (Number) value, type );
+                }
+            }
+            return value.toString();
+        }
+
+    }
+
+
+    /**
+     * Writes the rows in a binary columnar format. The file starts with a header consisting of a magic number, the
+     * version and the names and types of the columns. It is followed by blocks, one for every batch. A block starts
+     * with the number of rows and contains every column as a null bitmap followed by the non-null values.
+     * The file ends with an empty block.
+     */
+    static class ColumnarWriter extends TableExportWriter {
+
+        static final int MAGIC = 0x50434f4c;
+        static final short VERSION = 1;
+
+
+        ColumnarWriter( final File file, final List<ColumnMetaData> columns, final boolean compress ) throws IOException {
+            super( file, columns, compress );
+            out.writeInt( MAGIC );
+            out.writeShort( VERSION );
+            out.writeInt( columns.size() );
+            for ( ColumnMetaData column : columns ) {
+                out.writeUTF( column.columnName == null ? "" : column.columnName );
+                out.writeUTF( column.type.name );
+            }
+        }
+
+
+        @Override
+        public void writeBatch( final List<List<Object>> rows ) throws IOException {
+            if ( rows.isEmpty() ) {
+                return;
+            }
+            out.writeInt( rows.size() );
+            byte[] nulls = new byte[(rows.size() + 7) / 8];
+            for ( int c = 0; c < types.length; c++ ) {
+                Arrays.fill( nulls, (byte) 0 );
+                for ( int r = 0; r < rows.size(); r++ ) {
+                    if ( rows.get( r ).get( c ) == null ) {
+                        nulls[r / 8] |= 1 << (r % 8);
+                    }
+                }
+                out.write( nulls );
+                for ( List<Object> row : rows ) {
+                    Object value = row.get( c );
+                    if ( value != null ) {
+                        writeValue( value, types[c] );
+                    }
+                }
+            }
+        }
+
+
+        private void writeValue( final Object value, final PolyType type ) throws IOException {
+            switch ( type == null ? PolyType.ANY : type ) {
+                case BOOLEAN:
+                    out.writeBoolean( (Boolean) value );
+                    break;
+                case TINYINT:
+                case SMALLINT:
+                case INTEGER:
+                case DATE:
+                case TIME:
+                    out.writeInt( ((Number) value).intValue() );
+                    break;
+                case BIGINT:
+                case TIMESTAMP:
+                    out.writeLong( ((Number) value).longValue() );
+                    break;
+                case REAL:
+                case FLOAT:
+                case DOUBLE:
+                    out.writeDouble( ((Number) value).doubleValue() );
+                    break;
+                default:
+                    byte[] bytes = value instanceof byte[] ? (byte[]) value : value.toString().getBytes( StandardCharsets.UTF_8 );
+                    out.writeInt( bytes.length );
+                    out.write( bytes );
+            }
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            // End of the file
+            out.writeInt( 0 );
+            super.close();
+        }
+
+    }
+
+}
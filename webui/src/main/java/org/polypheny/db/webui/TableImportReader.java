@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.polypheny.db.webui;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import org.polypheny.db.webui.TableExportWriter.ExportFormat;
+
+
+/**
+ * Reads the rows of a table file written by a {@link TableExportWriter}. The values are returned in the text
+ * representation of the CSV export, so that the rows of all formats are imported the same way.
+ */
+public interface TableImportReader extends Closeable {
+
+    static TableImportReader create( final ExportFormat format, final InputStream in ) throws IOException {
+        switch ( format ) {
+            case CSV:
+                return new CsvStreamReader( in );
+            case COLUMNAR:
+                return new ColumnarReader( in );
+            default:
+                throw new RuntimeException( "Unknown export format: " + format );
+        }
+    }
+
+    /**
+     * @return the values of the next row, {@code null} if the end of the input is reached
+     */
+    String[] readNext() throws IOException;
+
+    /**
+     * @return the number of bytes of the input which have been consumed, used to report the progress
+     */
+    long getBytesRead();
+
+}
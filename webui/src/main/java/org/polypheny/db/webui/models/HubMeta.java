@@ -20,19 +20,25 @@
 import java.util.HashMap;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.polypheny.db.webui.TableExportWriter.ExportFormat;
 
 
 @Accessors(chain = true)
 public class HubMeta {
 
     private final String schema;
+    // Format of the data files of the tables, the import also detects it by the file names
+    private final ExportFormat format;
+    private final boolean compressed;
     private int numberOfRows;
     @Setter
     private long fileSize;
     private final HashMap<String, TableMapping> tables = new HashMap<>();
 
-    public HubMeta( String schema ) {
+    public HubMeta( String schema, ExportFormat format, boolean compressed ) {
         this.schema = schema;
+        this.format = format;
+        this.compressed = compressed;
     }
 
     public HubMeta addTable( final String table, final int numberOfRows ) {
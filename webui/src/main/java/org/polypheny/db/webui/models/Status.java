@@ -49,6 +49,18 @@ public void setStatus( final long currentRow, final long totalRows, final int it
         this.status = ( (ithTable / (float)nTables) + ( currentRow / (float)totalRows ) * ( 1 / (float)nTables ) );
     }
 
+    /**
+     * Set the current status, with the progress of the current table given by the bytes of its file that have been processed
+     * @param currentRow The current row of the table that is currently being processed
+     * @param processedBytes The number of bytes of the file that have been processed
+     * @param totalBytes The size of the file in bytes
+     * @param ithTable Counter to specify which table is currently being processed
+     */
+    public void setProgress( final long currentRow, final long processedBytes, final long totalBytes, final int ithTable ) {
+        this.currentRow = currentRow;
+        this.status = ( (ithTable / (float)nTables) + ( processedBytes / (float)Math.max( 1, totalBytes ) ) * ( 1 / (float)nTables ) );
+    }
+
     /**
      * Set the status to 100%
      */
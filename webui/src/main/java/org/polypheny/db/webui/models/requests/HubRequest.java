@@ -18,6 +18,7 @@
 
 
 import java.util.HashMap;
+import org.polypheny.db.webui.TableExportWriter.ExportFormat;
 import org.polypheny.db.webui.models.HubMeta.TableMapping;
 
 
@@ -55,6 +56,8 @@ public class HubRequest {
     //schema
     public HashMap<String, TableMapping> tables;
     public String hubLink;
+    public ExportFormat exportFormat;
+    public boolean compress;
 
     //delete user
     public int deleteUser;
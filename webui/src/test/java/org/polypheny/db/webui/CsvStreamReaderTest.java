@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.webui;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CsvStreamReaderTest {
+
+
+    private static CsvStreamReader reader( String csv ) {
+        return new CsvStreamReader( new ByteArrayInputStream( csv.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+
+    @Test
+    public void simpleRecordsTest() throws IOException {
+        try ( CsvStreamReader reader = reader( "1,abc,2.5\n2,,3\r\n\n3,x,\n" ) ) {
+            Assert.assertArrayEquals( new String[]{ "1", "abc", "2.5" }, reader.readNext() );
+            Assert.assertArrayEquals( new String[]{ "2", null, "3" }, reader.readNext() );
+            Assert.assertArrayEquals( new String[]{ "3", "x", null }, reader.readNext() );
+            Assert.assertNull( reader.readNext() );
+        }
+    }
+
+
+    @Test
+    public void quotedFieldsTest() throws IOException {
+        try ( CsvStreamReader reader = reader( "\"a,b\",\"line\nbreak\",\"say \"\"hi\"\"\",\"back\\\\slash \\\"q\\\"\"\nlast,\"\"" ) ) {
+            Assert.assertArrayEquals( new String[]{ "a,b", "line\nbreak", "say \"hi\"", "back\\slash \"q\"" }, reader.readNext() );
+            Assert.assertArrayEquals( new String[]{ "last", "" }, reader.readNext() );
+            Assert.assertNull( reader.readNext() );
+        }
+    }
+
+
+    @Test
+    public void nullAndEmptyFieldsTest() throws IOException {
+        try ( CsvStreamReader reader = reader( ","",
+"",,""""
+" ) ) {
+            Assert.assertArrayEquals( new String[]{ null, "", null }, reader.readNext() );
+            Assert.assertArrayEquals( new String[]{ "", null, "\"" }, reader.readNext() );
+            Assert.assertNull( reader.readNext() );
+        }
+    }
+
+
+    @Test
+    public void bytesReadTest() throws IOException {
+        String csv = "ä,ö\nü,\"é\"\n";
+        try ( CsvStreamReader reader = reader( csv ) ) {
+            Assert.assertArrayEquals( new String[]{ "ä", "ö" }, reader.readNext() );
+            Assert.assertEquals( "ä,ö\n".getBytes( StandardCharsets.UTF_8 ).length, reader.getBytesRead() );
+            Assert.assertArrayEquals( new String[]{ "ü", "é" }, reader.readNext() );
+            Assert.assertNull( reader.readNext() );
+            Assert.assertEquals( csv.getBytes( StandardCharsets.UTF_8 ).length, reader.getBytesRead() );
+        }
+    }
+
+}
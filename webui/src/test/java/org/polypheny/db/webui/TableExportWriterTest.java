@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019-2021 The Polypheny Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.polypheny.db.webui;
+
+
+import com.google.common.collect.ImmutableList;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.calcite.avatica.ColumnMetaData;
+import org.apache.calcite.avatica.ColumnMetaData.Rep;
+import org.junit.Assert;
+import org.junit.Test;
+import org.polypheny.db.webui.TableExportWriter.ExportFormat;
+
+
+public class TableExportWriterTest {
+
+    private static final List<ColumnMetaData> COLUMNS = ImmutableList.of(
+            ColumnMetaData.dummy( ColumnMetaData.scalar( Types.INTEGER, "INTEGER", Rep.INTEGER ), false ),
+            ColumnMetaData.dummy( ColumnMetaData.scalar( Types.VARCHAR, "VARCHAR", Rep.STRING ), true ),
+            ColumnMetaData.dummy( ColumnMetaData.scalar( Types.DATE, "DATE", Rep.INTEGER ), true ) );
+
+    private static final List<List<Object>> ROWS = ImmutableList.of(
+            Arrays.asList( 1, "plain", 0 ),
+            Arrays.asList( 2, "with, \"quotes\"\nand \\ newline", null ),
+            Arrays.asList( 3, null, 18262 ),
+            Arrays.asList( 4, "", null ) );
+
+
+    @Test
+    public void csvRoundTripTest() throws IOException {
+        File file = File.createTempFile( "export", ".csv.gz" );
+        try {
+            try ( TableExportWriter writer = TableExportWriter.create( ExportFormat.CSV, file, COLUMNS, true ) ) {
+                writer.writeBatch( ROWS );
+            }
+            try ( CsvStreamReader reader = new CsvStreamReader( new GZIPInputStream( new FileInputStream( file ) ) ) ) {
+                Assert.assertArrayEquals( new String[]{ "1", "plain", "1970-01-01" }, reader.readNext() );
+                Assert.assertArrayEquals( new String[]{ "2", "with, \"quotes\"\nand \\ newline", null }, reader.readNext() );
+                // NULL and the empty string are kept apart
+                Assert.assertArrayEquals( new String[]{ "3", null, "2020-01-01" }, reader.readNext() );
+                Assert.assertArrayEquals( new String[]{ "4", "", null }, reader.readNext() );
+                Assert.assertNull( reader.readNext() );
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    @Test
+    public void columnarRoundTripTest() throws IOException {
+        File file = File.createTempFile( "export", ".col.gz" );
+        try {
+            try ( TableExportWriter writer = TableExportWriter.create( ExportFormat.COLUMNAR, file, COLUMNS, true ) ) {
+                writer.writeBatch( ROWS );
+                writer.writeBatch( ROWS.subList( 0, 1 ) );
+            }
+            // The values are read in the representation of the CSV export, NULL values are kept
+            try ( TableImportReader reader = TableImportReader.create( ExportFormat.COLUMNAR, new GZIPInputStream( new FileInputStream( file ) ) ) ) {
+                Assert.assertArrayEquals( new String[]{ "1", "plain", "1970-01-01" }, reader.readNext() );
+                Assert.assertArrayEquals( new String[]{ "2", "with, \"quotes\"\nand \\ newline", null }, reader.readNext() );
+                Assert.assertArrayEquals( new String[]{ "3", null, "2020-01-01" }, reader.readNext() );
+                Assert.assertArrayEquals( new String[]{ "4", "", null }, reader.readNext() );
+                Assert.assertArrayEquals( new String[]{ "1", "plain", "1970-01-01" }, reader.readNext() );
+                Assert.assertNull( reader.readNext() );
+                Assert.assertNull( reader.readNext() );
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    @Test
+    public void columnarLayoutTest() throws IOException {
+        File file = File.createTempFile( "export", ".col" );
+        try {
+            try ( TableExportWriter writer = TableExportWriter.create( ExportFormat.COLUMNAR, file, COLUMNS, false ) ) {
+                writer.writeBatch( ROWS.subList( 0, 3 ) );
+                writer.writeBatch( ROWS.subList( 0, 1 ) );
+            }
+            try ( DataInputStream in = new DataInputStream( new FileInputStream( file ) ) ) {
+                Assert.assertEquals( TableExportWriter.ColumnarWriter.MAGIC, in.readInt() );
+                Assert.assertEquals( TableExportWriter.ColumnarWriter.VERSION, in.readShort() );
+                Assert.assertEquals( 3, in.readInt() );
+                for ( int i = 0; i < 3; i++ ) {
+                    in.readUTF();
+                    Assert.assertEquals( COLUMNS.get( i ).type.name, in.readUTF() );
+                }
+                // First block: integer column without nulls
+                Assert.assertEquals( 3, in.readInt() );
+                Assert.assertEquals( 0, in.readByte() );
+                Assert.assertEquals( 1, in.readInt() );
+                Assert.assertEquals( 2, in.readInt() );
+                Assert.assertEquals( 3, in.readInt() );
+                // Varchar column, the third value is null
+                Assert.assertEquals( 0b100, in.readByte() );
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully( bytes );
+                Assert.assertEquals( "plain", new String( bytes ) );
+                in.skipBytes( in.readInt() );
+                // Date column, the second value is null
+                Assert.assertEquals( 0b10, in.readByte() );
+                Assert.assertEquals( 0, in.readInt() );
+                Assert.assertEquals( 18262, in.readInt() );
+                // Second block
+                Assert.assertEquals( 1, in.readInt() );
+                in.skipBytes( 1 + 4 + 1 + 4 + 5 + 1 + 4 );
+                // End of the file
+                Assert.assertEquals( 0, in.readInt() );
+                Assert.assertEquals( -1, in.read() );
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+}